@@ -0,0 +1,159 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.benchmarks;
+
+
+import java.io.File;
+
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.server.core.DefaultDirectoryService;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.partition.Partition;
+import org.apache.directory.server.core.factory.DefaultDirectoryServiceFactory;
+import org.apache.directory.server.core.factory.PartitionFactory;
+import org.apache.directory.server.core.partition.impl.btree.AbstractBTreePartition;
+
+
+/**
+ * An embedded DirectoryService, with a partition of a given type holding a generated
+ * dataset. The instance directory is created in the <em>workingDirectory</em> if this
+ * system property is set, in the temporary directory otherwise, and it is wiped when
+ * the service is started.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class BenchmarkDirectory
+{
+    /** The benchmarked partition id */
+    public static final String PARTITION_ID = "example";
+
+    /** The cache size of the partition and its indexes */
+    private static final int CACHE_SIZE = 10000;
+
+    /** The type of the benchmarked partition */
+    private final PartitionType partitionType;
+
+    /** The number of generated users */
+    private final int nbEntries;
+
+    /** The started service */
+    private DirectoryService directoryService;
+
+    /** The benchmarked partition */
+    private AbstractBTreePartition partition;
+
+
+    /**
+     * Creates a new BenchmarkDirectory
+     *
+     * @param partitionType The type of the partitions
+     * @param nbEntries The number of generated users
+     */
+    public BenchmarkDirectory( PartitionType partitionType, int nbEntries )
+    {
+        this.partitionType = partitionType;
+        this.nbEntries = nbEntries;
+    }
+
+
+    /**
+     * Starts the service, and loads the dataset.
+     *
+     * @throws Exception If the service can't be started or the entries can't be added
+     */
+    public void startup() throws Exception
+    {
+        PartitionFactory partitionFactory = partitionType.createPartitionFactory();
+        DirectoryService service = new DefaultDirectoryService();
+        service.setShutdownHookEnabled( false );
+        service.getChangeLog().setEnabled( false );
+
+        DefaultDirectoryServiceFactory factory = new DefaultDirectoryServiceFactory( service, partitionFactory );
+        factory.init( "benchmark-" + Strings.toLowerCaseAscii( partitionType.name() ) );
+
+        Partition dataPartition = partitionFactory.createPartition( service.getSchemaManager(),
+            service.getDnFactory(), PARTITION_ID, DatasetGenerator.SUFFIX, CACHE_SIZE,
+            new File( service.getInstanceLayout().getPartitionsDirectory(), PARTITION_ID ) );
+
+        for ( String attribute : DatasetGenerator.INDEXED_ATTRIBUTES )
+        {
+            partitionFactory.addIndex( dataPartition, attribute, CACHE_SIZE );
+        }
+
+        service.addPartition( dataPartition );
+
+        directoryService = service;
+        partition = ( AbstractBTreePartition ) dataPartition;
+
+        DatasetGenerator.load( service.getAdminSession(), nbEntries );
+    }
+
+
+    /**
+     * Stops the service.
+     *
+     * @throws Exception If the service can't be stopped
+     */
+    public void shutdown() throws Exception
+    {
+        if ( directoryService != null )
+        {
+            directoryService.shutdown();
+            directoryService = null;
+            partition = null;
+        }
+    }
+
+
+    /**
+     * @return The started service
+     */
+    public DirectoryService getDirectoryService()
+    {
+        return directoryService;
+    }
+
+
+    /**
+     * @return The partition holding the dataset
+     */
+    public AbstractBTreePartition getPartition()
+    {
+        return partition;
+    }
+
+
+    /**
+     * @return The type of the partitions
+     */
+    public PartitionType getPartitionType()
+    {
+        return partitionType;
+    }
+
+
+    /**
+     * @return The number of generated users
+     */
+    public int getNbEntries()
+    {
+        return nbEntries;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.benchmarks;
+
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+/**
+ * Runs the JMH benchmarks. The JMH command line options are accepted, for instance :
+ * <pre>
+ * java -jar benchmarks.jar CoreOperationsBenchmark -p partitionType=JDBM -p nbEntries=100000
+ * </pre>
+ * Unless another format or file is given with the <em>-rf</em> and <em>-rff</em> options,
+ * the results are written in JSON in the <em>jmh-result.json</em> file, so that they can
+ * be compared from one build to the other.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public final class BenchmarkRunner
+{
+    /** The default results file */
+    public static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+
+    private BenchmarkRunner()
+    {
+    }
+
+
+    public static void main( String[] args ) throws Exception
+    {
+        CommandLineOptions commandLineOptions = new CommandLineOptions( args );
+
+        if ( commandLineOptions.shouldHelp() || commandLineOptions.shouldList()
+            || commandLineOptions.shouldListWithParams() || commandLineOptions.shouldListProfilers()
+            || commandLineOptions.shouldListResultFormats() )
+        {
+            Main.main( args );
+
+            return;
+        }
+
+        ChainedOptionsBuilder options = new OptionsBuilder().parent( commandLineOptions );
+
+        if ( !commandLineOptions.getResultFormat().hasValue() )
+        {
+            options.resultFormat( ResultFormatType.JSON );
+        }
+
+        if ( !commandLineOptions.getResult().hasValue() )
+        {
+            options.result( DEFAULT_RESULT_FILE );
+        }
+
+        new Runner( options.build() ).run();
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.benchmarks;
+
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.directory.api.ldap.model.cursor.EntryCursor;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.name.Rdn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.core.api.LdapCoreSessionConnection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Benchmarks the LDAP operations through the whole interceptor chain, using a
+ * {@link LdapCoreSessionConnection} on an embedded DirectoryService : no network,
+ * no codec. Each benchmark thread has its own connections, bound as the administrator.
+ * <br>
+ * The dataset is generated when the trial starts, and the entries added by the
+ * <em>add</em> benchmark are kept until the end of the trial.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CoreOperationsBenchmark
+{
+    /** The type of the partitions */
+    @Param({ "JDBM", "MAVIBOT", "AVL" })
+    public PartitionType partitionType;
+
+    /** The number of generated users */
+    @Param({ "10000" })
+    public int nbEntries;
+
+    /** The embedded directory */
+    private BenchmarkDirectory directory;
+
+    /** The Dn of the generated users, parsed once */
+    private Dn[] userDns;
+
+    /** The number of the next added entry */
+    private final AtomicInteger addedCounter = new AtomicInteger();
+
+    /** The number of the next renamed entry */
+    private final AtomicInteger renamedCounter = new AtomicInteger();
+
+
+    /**
+     * The connections of a benchmark thread
+     */
+    @State(Scope.Thread)
+    public static class ConnectionState
+    {
+        /** The connection used by all the operations but the binds */
+        private LdapCoreSessionConnection connection;
+
+        /** The connection used by the binds */
+        private LdapCoreSessionConnection bindConnection;
+
+        /** The Dn of the entry renamed by this thread */
+        private Dn renamedDn;
+
+        /** The two names of the entry renamed by this thread */
+        private Rdn[] renamedRdns;
+
+        /** The number of renames done by this thread */
+        private int nbRenames;
+
+        /** The number of modifications done by this thread */
+        private int nbModifications;
+
+
+        @Setup(Level.Trial)
+        public void open( CoreOperationsBenchmark benchmark ) throws Exception
+        {
+            connection = new LdapCoreSessionConnection( benchmark.directory.getDirectoryService() );
+            connection.bind( "uid=admin,ou=system", "secret" );
+            bindConnection = new LdapCoreSessionConnection( benchmark.directory.getDirectoryService() );
+
+            SchemaManager schemaManager = connection.getSchemaManager();
+            int number = benchmark.renamedCounter.getAndIncrement();
+            renamedRdns = new Rdn[]
+                {
+                    new Rdn( schemaManager, "ou=renamed." + number + ".a" ),
+                    new Rdn( schemaManager, "ou=renamed." + number + ".b" )
+                };
+
+            renamedDn = new Dn( schemaManager, renamedRdns[0].getName() + "," + DatasetGenerator.ADDED );
+            connection.add( new DefaultEntry( schemaManager, renamedDn,
+                "objectClass: top",
+                "objectClass: organizationalUnit",
+                "ou", renamedRdns[0].getValue() ) );
+        }
+
+
+        @TearDown(Level.Trial)
+        public void close() throws Exception
+        {
+            connection.close();
+            bindConnection.close();
+        }
+    }
+
+
+    @Setup(Level.Trial)
+    public void startup() throws Exception
+    {
+        directory = new BenchmarkDirectory( partitionType, nbEntries );
+        directory.startup();
+
+        SchemaManager schemaManager = directory.getDirectoryService().getSchemaManager();
+        userDns = new Dn[nbEntries];
+
+        for ( int i = 0; i < nbEntries; i++ )
+        {
+            userDns[i] = new Dn( schemaManager, DatasetGenerator.getUserDn( i ) );
+        }
+    }
+
+
+    @TearDown(Level.Trial)
+    public void shutdown() throws Exception
+    {
+        directory.shutdown();
+    }
+
+
+    private int randomUser()
+    {
+        return ThreadLocalRandom.current().nextInt( nbEntries );
+    }
+
+
+    /**
+     * Reads all the entries returned by a search
+     */
+    private int count( EntryCursor cursor ) throws Exception
+    {
+        int count = 0;
+
+        try
+        {
+            while ( cursor.next() )
+            {
+                cursor.get();
+                count++;
+            }
+        }
+        finally
+        {
+            cursor.close();
+        }
+
+        return count;
+    }
+
+
+    @Benchmark
+    public void bind( ConnectionState state ) throws Exception
+    {
+        state.bindConnection.bind( userDns[randomUser()], DatasetGenerator.PASSWORD );
+    }
+
+
+    @Benchmark
+    public Entry lookup( ConnectionState state ) throws Exception
+    {
+        return state.connection.lookup( userDns[randomUser()] );
+    }
+
+
+    @Benchmark
+    public int searchIndexed( ConnectionState state ) throws Exception
+    {
+        return count( state.connection.search( DatasetGenerator.PEOPLE, "(cn=user" + randomUser() + ")",
+            SearchScope.SUBTREE ) );
+    }
+
+
+    @Benchmark
+    public int searchUnindexed( ConnectionState state ) throws Exception
+    {
+        return count( state.connection.search( DatasetGenerator.PEOPLE, "(employeeNumber=" + randomUser() + ")",
+            SearchScope.SUBTREE ) );
+    }
+
+
+    @Benchmark
+    public void add( ConnectionState state ) throws Exception
+    {
+        int number = nbEntries + addedCounter.getAndIncrement();
+
+        state.connection.add( DatasetGenerator.createUser( state.connection.getSchemaManager(),
+            DatasetGenerator.ADDED, number ) );
+    }
+
+
+    @Benchmark
+    public void modify( ConnectionState state ) throws Exception
+    {
+        state.connection.modify( userDns[randomUser()], new DefaultModification(
+            ModificationOperation.REPLACE_ATTRIBUTE, "description", "Modified " + state.nbModifications++ ) );
+    }
+
+
+    @Benchmark
+    public void rename( ConnectionState state ) throws Exception
+    {
+        Rdn newRdn = state.renamedRdns[( state.nbRenames + 1 ) % 2];
+        state.connection.rename( state.renamedDn, newRdn, true );
+        state.renamedDn = state.renamedDn.getParent().add( newRdn );
+        state.nbRenames++;
+    }
+}
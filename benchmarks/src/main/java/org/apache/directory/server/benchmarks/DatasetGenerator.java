@@ -0,0 +1,149 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.benchmarks;
+
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.core.api.CoreSession;
+
+
+/**
+ * Generates the entries the benchmarks are run on : a context entry, an
+ * organizationalUnit for the users, and as many inetOrgPerson entries as requested.
+ * The users are numbered, so that a benchmark can pick a random existing entry
+ * without having to look it up first.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public final class DatasetGenerator
+{
+    /** The suffix of the benchmarked partition */
+    public static final String SUFFIX = "dc=example,dc=com";
+
+    /** The parent of the generated users */
+    public static final String PEOPLE = "ou=People," + SUFFIX;
+
+    /** The parent of the entries added by the benchmarks */
+    public static final String ADDED = "ou=Added," + SUFFIX;
+
+    /** The password of every generated user */
+    public static final String PASSWORD = "secret";
+
+    /** The indexed attributes */
+    public static final String[] INDEXED_ATTRIBUTES =
+        { "objectClass", "uid", "cn", "sn" };
+
+
+    private DatasetGenerator()
+    {
+    }
+
+
+    /**
+     * @param index The user number
+     * @return The Dn of a generated user
+     */
+    public static String getUserDn( int index )
+    {
+        return getUserDn( PEOPLE, index );
+    }
+
+
+    /**
+     * @param parentDn The Dn of the user parent
+     * @param index The user number
+     * @return The Dn of a user
+     */
+    public static String getUserDn( String parentDn, int index )
+    {
+        return "uid=user." + index + "," + parentDn;
+    }
+
+
+    /**
+     * Creates a user entry. The <em>cn</em> and <em>sn</em> attributes are indexed,
+     * the <em>description</em> and <em>employeeNumber</em> attributes are not.
+     *
+     * @param schemaManager The SchemaManager
+     * @param parentDn The Dn of the user parent
+     * @param index The user number
+     * @return The user entry
+     * @throws LdapException If the entry can't be created
+     */
+    public static Entry createUser( SchemaManager schemaManager, String parentDn, int index ) throws LdapException
+    {
+        return new DefaultEntry(
+            schemaManager,
+            getUserDn( parentDn, index ),
+            "objectClass: top",
+            "objectClass: person",
+            "objectClass: organizationalPerson",
+            "objectClass: inetOrgPerson",
+            "uid", "user." + index,
+            "cn", "user" + index,
+            "sn", "Surname" + ( index % 100 ),
+            "givenName: Aaccf",
+            "initials: AA",
+            "mail", "user." + index + "@example.com",
+            "userPassword", PASSWORD,
+            "telephoneNumber: 314-796-3178",
+            "employeeNumber", Integer.toString( index ),
+            "l: Augusta",
+            "st: MN",
+            "postalCode: 30667",
+            "description", "Description of the user number " + index );
+    }
+
+
+    /**
+     * Adds the context entry, the organizationalUnits and the users.
+     *
+     * @param session The session used to add the entries
+     * @param nbEntries The number of users
+     * @throws LdapException If an entry can't be added
+     */
+    public static void load( CoreSession session, int nbEntries ) throws LdapException
+    {
+        SchemaManager schemaManager = session.getDirectoryService().getSchemaManager();
+
+        session.add( new DefaultEntry( schemaManager, SUFFIX,
+            "objectClass: top",
+            "objectClass: domain",
+            "dc: example" ) );
+
+        session.add( new DefaultEntry( schemaManager, PEOPLE,
+            "objectClass: top",
+            "objectClass: organizationalUnit",
+            "ou: People" ) );
+
+        session.add( new DefaultEntry( schemaManager, ADDED,
+            "objectClass: top",
+            "objectClass: organizationalUnit",
+            "ou: Added" ) );
+
+        for ( int i = 0; i < nbEntries; i++ )
+        {
+            session.add( createUser( schemaManager, PEOPLE, i ) );
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.benchmarks;
+
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.filter.ExprNode;
+import org.apache.directory.api.ldap.model.filter.FilterParser;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.core.partition.impl.btree.AbstractBTreePartition;
+import org.apache.directory.server.xdbm.search.Evaluator;
+import org.apache.directory.server.xdbm.search.impl.EvaluatorBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Benchmarks the evaluation of a filter against an entry, as done for each candidate
+ * of a search. The evaluation does not depend on the partition type, so the entries
+ * are read from an AVL partition.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FilterEvaluationBenchmark
+{
+    /** The evaluated filter */
+    @Param({ "(cn=user42)", "(cn=user1*)", "(&(objectClass=person)(sn=Surname42))",
+        "(|(employeeNumber=42)(description=*number 4*))", "(!(l=Augusta))" })
+    public String filter;
+
+    /** The number of entries the filter is evaluated against */
+    @Param({ "1000" })
+    public int nbEntries;
+
+    /** The embedded directory */
+    private BenchmarkDirectory directory;
+
+    /** The entries the filter is evaluated against */
+    private Entry[] entries;
+
+    /** The evaluator of the filter */
+    private Evaluator<? extends ExprNode> evaluator;
+
+
+    @Setup(Level.Trial)
+    public void startup() throws Exception
+    {
+        directory = new BenchmarkDirectory( PartitionType.AVL, nbEntries );
+        directory.startup();
+
+        AbstractBTreePartition partition = directory.getPartition();
+        SchemaManager schemaManager = directory.getDirectoryService().getSchemaManager();
+        entries = new Entry[nbEntries];
+
+        try ( PartitionTxn partitionTxn = partition.beginReadTransaction() )
+        {
+            for ( int i = 0; i < nbEntries; i++ )
+            {
+                Dn dn = new Dn( schemaManager, DatasetGenerator.getUserDn( i ) );
+                entries[i] = partition.fetch( partitionTxn, partition.getEntryId( partitionTxn, dn ), dn );
+            }
+
+            ExprNode filterNode = FilterParser.parse( schemaManager, filter );
+            evaluator = new EvaluatorBuilder( partition, schemaManager ).build( partitionTxn, filterNode );
+        }
+    }
+
+
+    @TearDown(Level.Trial)
+    public void shutdown() throws Exception
+    {
+        directory.shutdown();
+    }
+
+
+    @Benchmark
+    public boolean evaluate() throws Exception
+    {
+        return evaluator.evaluate( entries[ThreadLocalRandom.current().nextInt( nbEntries )] );
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.benchmarks;
+
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.core.partition.impl.btree.AbstractBTreePartition;
+import org.apache.directory.server.xdbm.Index;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Benchmarks the partition directly, below the interceptor chain : the Dn to id
+ * resolution, the entry fetch and a user index lookup.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PartitionBenchmark
+{
+    /** The type of the partitions */
+    @Param({ "JDBM", "MAVIBOT", "AVL" })
+    public PartitionType partitionType;
+
+    /** The number of generated users */
+    @Param({ "10000" })
+    public int nbEntries;
+
+    /** The embedded directory */
+    private BenchmarkDirectory directory;
+
+    /** The benchmarked partition */
+    private AbstractBTreePartition partition;
+
+    /** The Dn of the generated users */
+    private Dn[] userDns;
+
+    /** The id of the generated users */
+    private String[] userIds;
+
+    /** The normalized cn of the generated users */
+    private String[] cnKeys;
+
+    /** The cn index */
+    private Index<String, String> cnIndex;
+
+
+    @SuppressWarnings("unchecked")
+    @Setup(Level.Trial)
+    public void startup() throws Exception
+    {
+        directory = new BenchmarkDirectory( partitionType, nbEntries );
+        directory.startup();
+        partition = directory.getPartition();
+
+        SchemaManager schemaManager = directory.getDirectoryService().getSchemaManager();
+        AttributeType cnAT = schemaManager.lookupAttributeTypeRegistry( "cn" );
+        cnIndex = ( Index<String, String> ) partition.getUserIndex( cnAT );
+
+        userDns = new Dn[nbEntries];
+        userIds = new String[nbEntries];
+        cnKeys = new String[nbEntries];
+
+        try ( PartitionTxn partitionTxn = partition.beginReadTransaction() )
+        {
+            for ( int i = 0; i < nbEntries; i++ )
+            {
+                userDns[i] = new Dn( schemaManager, DatasetGenerator.getUserDn( i ) );
+                userIds[i] = partition.getEntryId( partitionTxn, userDns[i] );
+                cnKeys[i] = new Value( cnAT, "user" + i ).getNormalized();
+            }
+        }
+    }
+
+
+    @TearDown(Level.Trial)
+    public void shutdown() throws Exception
+    {
+        directory.shutdown();
+    }
+
+
+    private int randomUser()
+    {
+        return ThreadLocalRandom.current().nextInt( nbEntries );
+    }
+
+
+    @Benchmark
+    public String getEntryId() throws Exception
+    {
+        try ( PartitionTxn partitionTxn = partition.beginReadTransaction() )
+        {
+            return partition.getEntryId( partitionTxn, userDns[randomUser()] );
+        }
+    }
+
+
+    @Benchmark
+    public Entry fetch() throws Exception
+    {
+        try ( PartitionTxn partitionTxn = partition.beginReadTransaction() )
+        {
+            return partition.fetch( partitionTxn, userIds[randomUser()] );
+        }
+    }
+
+
+    @Benchmark
+    public String indexLookup() throws Exception
+    {
+        try ( PartitionTxn partitionTxn = partition.beginReadTransaction() )
+        {
+            return cnIndex.forwardLookup( partitionTxn, cnKeys[randomUser()] );
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.benchmarks;
+
+
+import org.apache.directory.server.core.factory.AvlPartitionFactory;
+import org.apache.directory.server.core.factory.JdbmPartitionFactory;
+import org.apache.directory.server.core.factory.MavibotPartitionFactory;
+import org.apache.directory.server.core.factory.PartitionFactory;
+
+
+/**
+ * The partition implementations the benchmarks can be run on.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public enum PartitionType
+{
+    /** The JDBM partition, the default one */
+    JDBM,
+
+    /** The Mavibot partition */
+    MAVIBOT,
+
+    /** The in-memory AVL partition */
+    AVL;
+
+    /**
+     * @return A new factory for this type of partition
+     */
+    public PartitionFactory createPartitionFactory()
+    {
+        switch ( this )
+        {
+            case MAVIBOT:
+                return new MavibotPartitionFactory();
+
+            case AVL:
+                return new AvlPartitionFactory();
+
+            default:
+                return new JdbmPartitionFactory();
+        }
+    }
+}
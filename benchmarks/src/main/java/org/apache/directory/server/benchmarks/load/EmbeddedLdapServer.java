@@ -0,0 +1,120 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.benchmarks.load;
+
+
+import org.apache.directory.server.annotations.CreateLdapServer;
+import org.apache.directory.server.annotations.CreateTransport;
+import org.apache.directory.server.benchmarks.DatasetGenerator;
+import org.apache.directory.server.core.annotations.CreateDS;
+import org.apache.directory.server.core.annotations.CreateIndex;
+import org.apache.directory.server.core.annotations.CreatePartition;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.factory.DSAnnotationProcessor;
+import org.apache.directory.server.factory.ServerAnnotationProcessor;
+import org.apache.directory.server.ldap.LdapServer;
+
+
+/**
+ * An LdapServer started in the load generator JVM, configured with the same annotations
+ * as the integration tests, and loaded with the generated users. It listens on a free
+ * port of the loopback interface.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@CreateDS(
+    name = "LoadGeneratorDS",
+    enableChangeLog = false,
+    partitions =
+        {
+            @CreatePartition(
+                name = "example",
+                suffix = DatasetGenerator.SUFFIX,
+                cacheSize = 10000,
+                indexes =
+                    {
+                        @CreateIndex(attribute = "objectClass"),
+                        @CreateIndex(attribute = "uid"),
+                        @CreateIndex(attribute = "cn"),
+                        @CreateIndex(attribute = "sn")
+                })
+    })
+@CreateLdapServer(
+    transports =
+        {
+            @CreateTransport(protocol = "LDAP")
+    })
+public class EmbeddedLdapServer
+{
+    /** The started DirectoryService */
+    private DirectoryService directoryService;
+
+    /** The started LdapServer */
+    private LdapServer ldapServer;
+
+
+    /**
+     * Starts the DirectoryService, adds the generated users, and starts the LdapServer
+     *
+     * @param nbEntries The number of generated users
+     * @throws Exception If the server can't be started
+     */
+    public void startup( int nbEntries ) throws Exception
+    {
+        directoryService = DSAnnotationProcessor.createDS( EmbeddedLdapServer.class.getAnnotation( CreateDS.class ) );
+        directoryService.setShutdownHookEnabled( false );
+
+        DatasetGenerator.load( directoryService.getAdminSession(), nbEntries );
+
+        ldapServer = ServerAnnotationProcessor.instantiateLdapServer(
+            EmbeddedLdapServer.class.getAnnotation( CreateLdapServer.class ), directoryService );
+        ldapServer.start();
+    }
+
+
+    /**
+     * Stops the LdapServer and the DirectoryService
+     *
+     * @throws Exception If the DirectoryService can't be stopped
+     */
+    public void shutdown() throws Exception
+    {
+        if ( ldapServer != null )
+        {
+            ldapServer.stop();
+            ldapServer = null;
+        }
+
+        if ( directoryService != null )
+        {
+            directoryService.shutdown();
+            directoryService = null;
+        }
+    }
+
+
+    /**
+     * @return The port the LdapServer listens on
+     */
+    public int getPort()
+    {
+        return ldapServer.getPort();
+    }
+}
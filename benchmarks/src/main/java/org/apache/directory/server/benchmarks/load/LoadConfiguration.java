@@ -0,0 +1,600 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.benchmarks.load;
+
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.directory.api.util.Network;
+import org.apache.directory.api.util.Strings;
+
+
+/**
+ * The configuration of a load generator run. It is read from the command line :
+ * <pre>
+ * -host &lt;host&gt;           the server host (localhost)
+ * -port &lt;port&gt;           the server port (10389)
+ * -embedded              starts an embedded server loaded with the generated users, and ignores -host and -port
+ * -entries &lt;n&gt;          the number of generated users in the server (10000)
+ * -bindDn &lt;dn&gt;          the Dn the connections are first bound with (uid=admin,ou=system)
+ * -password &lt;pwd&gt;       the password of this Dn (secret)
+ * -connections &lt;n&gt;      the number of connections (8)
+ * -pipeline &lt;n&gt;         the maximum number of outstanding requests per connection (1)
+ * -rate &lt;n&gt;             the target number of requests per second, over all the connections. With 0, each
+ *                        request is sent as soon as the pipeline allows it (0)
+ * -mix &lt;mix&gt;            the weight of each operation (bind=5,search=80,modify=10,add=5)
+ * -warmup &lt;s&gt;           the warmup duration, in seconds, not counted in the results (10)
+ * -duration &lt;s&gt;         the measured duration, in seconds (60)
+ * -interval &lt;s&gt;         the interval between two progress reports, in seconds (5)
+ * -timeout &lt;ms&gt;         the time after which a request is considered as failed, in milliseconds (30000)
+ * -histogramLog &lt;file&gt;  an HdrHistogram log file the interval histograms are written to
+ * </pre>
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LoadConfiguration
+{
+    /** The default operation mix */
+    public static final String DEFAULT_MIX = "bind=5,search=80,modify=10,add=5";
+
+    /** The server host */
+    private String host = Network.LOOPBACK_HOSTNAME;
+
+    /** The server port */
+    private int port = 10389;
+
+    /** Tells if an embedded server must be started */
+    private boolean embedded = false;
+
+    /** The number of generated users */
+    private int nbEntries = 10000;
+
+    /** The Dn the connections are bound with */
+    private String bindDn = "uid=admin,ou=system";
+
+    /** The password of the bind Dn */
+    private String password = "secret";
+
+    /** The number of connections */
+    private int nbConnections = 8;
+
+    /** The maximum number of outstanding requests per connection */
+    private int pipelineDepth = 1;
+
+    /** The target number of requests per second, 0 for no target */
+    private int rate = 0;
+
+    /** The weight of each operation */
+    private final Map<LoadOperation, Integer> mix = new EnumMap<>( LoadOperation.class );
+
+    /** The sum of the weights */
+    private int totalWeight;
+
+    /** The warmup duration, in seconds */
+    private int warmup = 10;
+
+    /** The measured duration, in seconds */
+    private int duration = 60;
+
+    /** The report interval, in seconds */
+    private int interval = 5;
+
+    /** The request timeout, in milliseconds */
+    private long timeout = 30000L;
+
+    /** The HdrHistogram log file, if any */
+    private String histogramLog;
+
+
+    /**
+     * Creates a configuration with the default values
+     */
+    public LoadConfiguration()
+    {
+        setMix( DEFAULT_MIX );
+    }
+
+
+    /**
+     * Reads a configuration from the command line arguments
+     *
+     * @param args The arguments
+     * @return The configuration
+     * @throws IllegalArgumentException If an argument is not valid
+     */
+    public static LoadConfiguration parse( String[] args )
+    {
+        LoadConfiguration configuration = new LoadConfiguration();
+        int i = 0;
+
+        while ( i < args.length )
+        {
+            String option = args[i++];
+
+            if ( "-embedded".equals( option ) )
+            {
+                configuration.embedded = true;
+
+                continue;
+            }
+
+            if ( i == args.length )
+            {
+                throw new IllegalArgumentException( "Missing value for the option " + option );
+            }
+
+            String value = args[i++];
+
+            switch ( option )
+            {
+                case "-host":
+                    configuration.host = value;
+                    break;
+
+                case "-port":
+                    configuration.port = parsePositive( option, value );
+                    break;
+
+                case "-entries":
+                    configuration.nbEntries = parsePositive( option, value );
+                    break;
+
+                case "-bindDn":
+                    configuration.bindDn = value;
+                    break;
+
+                case "-password":
+                    configuration.password = value;
+                    break;
+
+                case "-connections":
+                    configuration.nbConnections = parsePositive( option, value );
+                    break;
+
+                case "-pipeline":
+                    configuration.pipelineDepth = parsePositive( option, value );
+                    break;
+
+                case "-rate":
+                    configuration.rate = parseInt( option, value );
+                    break;
+
+                case "-mix":
+                    configuration.setMix( value );
+                    break;
+
+                case "-warmup":
+                    configuration.warmup = parseInt( option, value );
+                    break;
+
+                case "-duration":
+                    configuration.duration = parsePositive( option, value );
+                    break;
+
+                case "-interval":
+                    configuration.interval = parsePositive( option, value );
+                    break;
+
+                case "-timeout":
+                    configuration.timeout = parsePositive( option, value );
+                    break;
+
+                case "-histogramLog":
+                    configuration.histogramLog = value;
+                    break;
+
+                default:
+                    throw new IllegalArgumentException( "Unknown option " + option );
+            }
+        }
+
+        return configuration;
+    }
+
+
+    private static int parseInt( String option, String value )
+    {
+        try
+        {
+            int result = Integer.parseInt( value );
+
+            if ( result < 0 )
+            {
+                throw new IllegalArgumentException( "The value of " + option + " must not be negative" );
+            }
+
+            return result;
+        }
+        catch ( NumberFormatException nfe )
+        {
+            throw new IllegalArgumentException( "The value of " + option + " is not a number : " + value );
+        }
+    }
+
+
+    private static int parsePositive( String option, String value )
+    {
+        int result = parseInt( option, value );
+
+        if ( result == 0 )
+        {
+            throw new IllegalArgumentException( "The value of " + option + " must be positive" );
+        }
+
+        return result;
+    }
+
+
+    /**
+     * Sets the operation mix, a comma separated list of &lt;operation&gt;=&lt;weight&gt;. The
+     * operations which are not listed are not sent.
+     *
+     * @param value The operation mix
+     * @throws IllegalArgumentException If the mix is not valid
+     */
+    public void setMix( String value )
+    {
+        Map<LoadOperation, Integer> newMix = new EnumMap<>( LoadOperation.class );
+        int newTotal = 0;
+
+        for ( String element : value.split( "," ) )
+        {
+            int pos = element.indexOf( '=' );
+
+            if ( pos < 0 )
+            {
+                throw new IllegalArgumentException( "Invalid operation weight : " + element );
+            }
+
+            LoadOperation operation;
+
+            try
+            {
+                operation = LoadOperation.valueOf( Strings.toUpperCaseAscii( element.substring( 0, pos ).trim() ) );
+            }
+            catch ( IllegalArgumentException iae )
+            {
+                throw new IllegalArgumentException( "Unknown operation : " + element );
+            }
+
+            int weight = parseInt( "-mix", element.substring( pos + 1 ).trim() );
+            newMix.put( operation, weight );
+            newTotal += weight;
+        }
+
+        if ( newTotal == 0 )
+        {
+            throw new IllegalArgumentException( "The operation mix is empty : " + value );
+        }
+
+        mix.clear();
+        mix.putAll( newMix );
+        totalWeight = newTotal;
+    }
+
+
+    /**
+     * Picks an operation, according to the mix weights
+     *
+     * @param random The random generator
+     * @return The operation
+     */
+    public LoadOperation pickOperation( Random random )
+    {
+        int pick = random.nextInt( totalWeight );
+
+        for ( Map.Entry<LoadOperation, Integer> weight : mix.entrySet() )
+        {
+            pick -= weight.getValue();
+
+            if ( pick < 0 )
+            {
+                return weight.getKey();
+            }
+        }
+
+        // Not reachable, the weights sum up to totalWeight
+        return LoadOperation.SEARCH;
+    }
+
+
+    /**
+     * @return The weight of each operation
+     */
+    public Map<LoadOperation, Integer> getMix()
+    {
+        return mix;
+    }
+
+
+    /**
+     * @return The server host
+     */
+    public String getHost()
+    {
+        return host;
+    }
+
+
+    /**
+     * @param host The server host
+     */
+    public void setHost( String host )
+    {
+        this.host = host;
+    }
+
+
+    /**
+     * @return The server port
+     */
+    public int getPort()
+    {
+        return port;
+    }
+
+
+    /**
+     * @param port The server port
+     */
+    public void setPort( int port )
+    {
+        this.port = port;
+    }
+
+
+    /**
+     * @return <tt>true</tt> if an embedded server must be started
+     */
+    public boolean isEmbedded()
+    {
+        return embedded;
+    }
+
+
+    /**
+     * @param embedded <tt>true</tt> to start an embedded server
+     */
+    public void setEmbedded( boolean embedded )
+    {
+        this.embedded = embedded;
+    }
+
+
+    /**
+     * @return The number of generated users
+     */
+    public int getNbEntries()
+    {
+        return nbEntries;
+    }
+
+
+    /**
+     * @param nbEntries The number of generated users
+     */
+    public void setNbEntries( int nbEntries )
+    {
+        this.nbEntries = nbEntries;
+    }
+
+
+    /**
+     * @return The Dn the connections are bound with
+     */
+    public String getBindDn()
+    {
+        return bindDn;
+    }
+
+
+    /**
+     * @param bindDn The Dn the connections are bound with
+     */
+    public void setBindDn( String bindDn )
+    {
+        this.bindDn = bindDn;
+    }
+
+
+    /**
+     * @return The password of the bind Dn
+     */
+    public String getPassword()
+    {
+        return password;
+    }
+
+
+    /**
+     * @param password The password of the bind Dn
+     */
+    public void setPassword( String password )
+    {
+        this.password = password;
+    }
+
+
+    /**
+     * @return The number of connections
+     */
+    public int getNbConnections()
+    {
+        return nbConnections;
+    }
+
+
+    /**
+     * @param nbConnections The number of connections
+     */
+    public void setNbConnections( int nbConnections )
+    {
+        this.nbConnections = nbConnections;
+    }
+
+
+    /**
+     * @return The maximum number of outstanding requests per connection
+     */
+    public int getPipelineDepth()
+    {
+        return pipelineDepth;
+    }
+
+
+    /**
+     * @param pipelineDepth The maximum number of outstanding requests per connection
+     */
+    public void setPipelineDepth( int pipelineDepth )
+    {
+        this.pipelineDepth = pipelineDepth;
+    }
+
+
+    /**
+     * @return The target number of requests per second, 0 for no target
+     */
+    public int getRate()
+    {
+        return rate;
+    }
+
+
+    /**
+     * @param rate The target number of requests per second, 0 for no target
+     */
+    public void setRate( int rate )
+    {
+        this.rate = rate;
+    }
+
+
+    /**
+     * @return The warmup duration, in seconds
+     */
+    public int getWarmup()
+    {
+        return warmup;
+    }
+
+
+    /**
+     * @param warmup The warmup duration, in seconds
+     */
+    public void setWarmup( int warmup )
+    {
+        this.warmup = warmup;
+    }
+
+
+    /**
+     * @return The measured duration, in seconds
+     */
+    public int getDuration()
+    {
+        return duration;
+    }
+
+
+    /**
+     * @param duration The measured duration, in seconds
+     */
+    public void setDuration( int duration )
+    {
+        this.duration = duration;
+    }
+
+
+    /**
+     * @return The report interval, in seconds
+     */
+    public int getInterval()
+    {
+        return interval;
+    }
+
+
+    /**
+     * @param interval The report interval, in seconds
+     */
+    public void setInterval( int interval )
+    {
+        this.interval = interval;
+    }
+
+
+    /**
+     * @return The request timeout, in milliseconds
+     */
+    public long getTimeout()
+    {
+        return timeout;
+    }
+
+
+    /**
+     * @param timeout The request timeout, in milliseconds
+     */
+    public void setTimeout( long timeout )
+    {
+        this.timeout = timeout;
+    }
+
+
+    /**
+     * @return The HdrHistogram log file, or null
+     */
+    public String getHistogramLog()
+    {
+        return histogramLog;
+    }
+
+
+    /**
+     * @param histogramLog The HdrHistogram log file, or null
+     */
+    public void setHistogramLog( String histogramLog )
+    {
+        this.histogramLog = histogramLog;
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append( "server : " ).append( embedded ? "embedded" : host + ":" + port );
+        sb.append( ", " ).append( nbEntries ).append( " users" );
+        sb.append( ", " ).append( nbConnections ).append( " connections" );
+        sb.append( ", pipeline : " ).append( pipelineDepth );
+        sb.append( ", rate : " ).append( rate == 0 ? "unbounded" : rate + "/s" );
+        sb.append( ", mix : " ).append( mix );
+        sb.append( ", warmup : " ).append( warmup ).append( "s" );
+        sb.append( ", duration : " ).append( duration ).append( "s" );
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,414 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.benchmarks.load;
+
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.message.AddRequest;
+import org.apache.directory.api.ldap.model.message.AddRequestImpl;
+import org.apache.directory.api.ldap.model.message.BindRequest;
+import org.apache.directory.api.ldap.model.message.BindRequestImpl;
+import org.apache.directory.api.ldap.model.message.ModifyRequest;
+import org.apache.directory.api.ldap.model.message.ModifyRequestImpl;
+import org.apache.directory.api.ldap.model.message.Response;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.ResultResponse;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.ldap.client.api.LdapNetworkConnection;
+import org.apache.directory.ldap.client.api.future.ResponseFuture;
+import org.apache.directory.server.benchmarks.DatasetGenerator;
+
+
+/**
+ * A connection of the load generator. A sender thread writes the requests without
+ * waiting for their responses, up to the pipeline depth, and a receiver thread collects
+ * the responses in the order the requests were sent.
+ * <br>
+ * When a target rate is given, each request has an intended send time, and its latency
+ * is measured from this time rather than from the moment it was actually sent : a server
+ * which falls behind the rate is charged for the time the requests waited on the client
+ * side.
+ * <br>
+ * As a bind changes the connection identity, a bind is only sent once all the previous
+ * requests have completed, and the following requests wait for it to complete.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LoadConnection
+{
+    /** The marker put in the queue to stop the receiver */
+    private static final PendingRequest STOP = new PendingRequest( null, null, 0L, 0 );
+
+    /** The connection number */
+    private final int number;
+
+    /** The configuration */
+    private final LoadConfiguration configuration;
+
+    /** The statistics the latencies are recorded in */
+    private final LoadStatistics statistics;
+
+    /** The number of the next added user, shared by all the connections */
+    private final AtomicInteger addedCounter;
+
+    /** The free slots of the pipeline */
+    private final Semaphore pipeline;
+
+    /** The requests sent and not yet completed, in the order they were sent */
+    private final BlockingQueue<PendingRequest> pendingRequests = new LinkedBlockingQueue<>();
+
+    /** The random generator of the sender thread */
+    private final Random random;
+
+    /** The Dn of the users parent */
+    private final Dn peopleDn;
+
+    /** The LDAP connection */
+    private LdapNetworkConnection connection;
+
+    /** The sender thread */
+    private Thread sender;
+
+    /** The receiver thread */
+    private Thread receiver;
+
+    /** Tells the sender to stop */
+    private volatile boolean running;
+
+
+    /**
+     * A request sent and not yet completed
+     */
+    private static final class PendingRequest
+    {
+        /** The operation */
+        private final LoadOperation operation;
+
+        /** The future of the response */
+        private final ResponseFuture<? extends Response> future;
+
+        /** The time the request was intended to be sent */
+        private final long intendedTime;
+
+        /** The number of pipeline slots the request holds */
+        private final int permits;
+
+
+        private PendingRequest( LoadOperation operation, ResponseFuture<? extends Response> future,
+            long intendedTime, int permits )
+        {
+            this.operation = operation;
+            this.future = future;
+            this.intendedTime = intendedTime;
+            this.permits = permits;
+        }
+    }
+
+
+    /**
+     * Creates a new LoadConnection
+     *
+     * @param number The connection number
+     * @param configuration The configuration
+     * @param statistics The statistics the latencies are recorded in
+     * @param addedCounter The number of the next added user
+     * @throws LdapException If the users parent Dn is invalid
+     */
+    public LoadConnection( int number, LoadConfiguration configuration, LoadStatistics statistics,
+        AtomicInteger addedCounter ) throws LdapException
+    {
+        this.number = number;
+        this.configuration = configuration;
+        this.statistics = statistics;
+        this.addedCounter = addedCounter;
+        this.pipeline = new Semaphore( configuration.getPipelineDepth() );
+        this.random = new Random( number );
+        this.peopleDn = new Dn( DatasetGenerator.PEOPLE );
+    }
+
+
+    /**
+     * Opens and binds the connection
+     *
+     * @param port The server port
+     * @throws LdapException If the connection can't be opened or bound
+     */
+    public void open( int port ) throws LdapException
+    {
+        connection = new LdapNetworkConnection( configuration.getHost(), port );
+        connection.setTimeOut( configuration.getTimeout() );
+        connection.bind( configuration.getBindDn(), configuration.getPassword() );
+    }
+
+
+    /**
+     * Starts the sender and the receiver threads
+     *
+     * @param startTime The time the first requests are intended to be sent, as given by System.nanoTime()
+     * @param period The interval between two requests of this connection, in nanoseconds, or 0 to
+     * send the requests as fast as the pipeline allows it
+     */
+    public void start( final long startTime, final long period )
+    {
+        running = true;
+
+        sender = new Thread( new Runnable()
+        {
+            public void run()
+            {
+                send( startTime, period );
+            }
+        }, "load-sender-" + number );
+
+        receiver = new Thread( new Runnable()
+        {
+            public void run()
+            {
+                receive();
+            }
+        }, "load-receiver-" + number );
+
+        receiver.setDaemon( true );
+        sender.setDaemon( true );
+        receiver.start();
+        sender.start();
+    }
+
+
+    /**
+     * Stops sending requests, waits for the pending ones and closes the connection
+     *
+     * @throws InterruptedException If the current thread is interrupted while waiting
+     */
+    public void stop() throws InterruptedException
+    {
+        running = false;
+
+        if ( sender != null )
+        {
+            sender.interrupt();
+            sender.join();
+            pendingRequests.put( STOP );
+            receiver.join();
+        }
+
+        if ( connection != null )
+        {
+            try
+            {
+                connection.unBind();
+                connection.close();
+            }
+            catch ( LdapException | IOException e )
+            {
+                // Nothing to do, the run is over
+            }
+        }
+    }
+
+
+    /**
+     * The sender loop
+     */
+    private void send( long startTime, long period )
+    {
+        // Spread the connections over the period, so that they don't send their requests together
+        long next = startTime + ( period * number ) / configuration.getNbConnections();
+
+        while ( running )
+        {
+            long intendedTime = next;
+
+            if ( period > 0L )
+            {
+                long now = System.nanoTime();
+
+                while ( now < next )
+                {
+                    LockSupport.parkNanos( next - now );
+
+                    if ( !running )
+                    {
+                        return;
+                    }
+
+                    now = System.nanoTime();
+                }
+
+                next += period;
+            }
+
+            LoadOperation operation = configuration.pickOperation( random );
+            int permits = ( operation == LoadOperation.BIND ) ? configuration.getPipelineDepth() : 1;
+
+            try
+            {
+                pipeline.acquire( permits );
+            }
+            catch ( InterruptedException ie )
+            {
+                return;
+            }
+
+            if ( period == 0L )
+            {
+                intendedTime = System.nanoTime();
+            }
+
+            try
+            {
+                pendingRequests.add( new PendingRequest( operation, sendRequest( operation ), intendedTime,
+                    permits ) );
+            }
+            catch ( LdapException le )
+            {
+                statistics.record( operation, System.nanoTime() - intendedTime, false );
+                pipeline.release( permits );
+            }
+        }
+    }
+
+
+    /**
+     * Sends a request, without waiting for the response
+     */
+    private ResponseFuture<? extends Response> sendRequest( LoadOperation operation ) throws LdapException
+    {
+        int user = random.nextInt( configuration.getNbEntries() );
+
+        switch ( operation )
+        {
+            case BIND:
+                BindRequest bindRequest = new BindRequestImpl();
+                bindRequest.setDn( new Dn( DatasetGenerator.getUserDn( user ) ) );
+                bindRequest.setCredentials( DatasetGenerator.PASSWORD );
+
+                return connection.bindAsync( bindRequest );
+
+            case MODIFY:
+                ModifyRequest modifyRequest = new ModifyRequestImpl();
+                modifyRequest.setName( new Dn( DatasetGenerator.getUserDn( user ) ) );
+                modifyRequest.replace( "description", "Modified by the connection " + number );
+
+                return connection.modifyAsync( modifyRequest );
+
+            case ADD:
+                AddRequest addRequest = new AddRequestImpl();
+                addRequest.setEntry( DatasetGenerator.createUser( null, DatasetGenerator.ADDED,
+                    addedCounter.getAndIncrement() ) );
+
+                return connection.addAsync( addRequest );
+
+            default:
+                SearchRequest searchRequest = new SearchRequestImpl();
+                searchRequest.setBase( peopleDn );
+                searchRequest.setScope( SearchScope.SUBTREE );
+                searchRequest.setFilter( "(cn=user" + user + ")" );
+                searchRequest.addAttributes( "*" );
+
+                return connection.searchAsync( searchRequest );
+        }
+    }
+
+
+    /**
+     * The receiver loop
+     */
+    private void receive()
+    {
+        while ( true )
+        {
+            PendingRequest pendingRequest;
+
+            try
+            {
+                pendingRequest = pendingRequests.take();
+            }
+            catch ( InterruptedException ie )
+            {
+                return;
+            }
+
+            if ( pendingRequest == STOP )
+            {
+                return;
+            }
+
+            boolean success = waitForResult( pendingRequest );
+            statistics.record( pendingRequest.operation, System.nanoTime() - pendingRequest.intendedTime, success );
+            pipeline.release( pendingRequest.permits );
+        }
+    }
+
+
+    /**
+     * Waits for the final response of a request. The entries returned by a search are
+     * read and discarded.
+     *
+     * @return <tt>true</tt> if the request succeeded
+     */
+    private boolean waitForResult( PendingRequest pendingRequest )
+    {
+        try
+        {
+            Response response;
+
+            do
+            {
+                response = pendingRequest.future.get( configuration.getTimeout(), TimeUnit.MILLISECONDS );
+            }
+            while ( ( response != null ) && !( response instanceof ResultResponse ) );
+
+            if ( response == null )
+            {
+                // Timed out
+                pendingRequest.future.cancel( true );
+
+                return false;
+            }
+
+            return ( ( ResultResponse ) response ).getLdapResult().getResultCode() == ResultCodeEnum.SUCCESS;
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+
+            return false;
+        }
+        catch ( ExecutionException | TimeoutException e )
+        {
+            return false;
+        }
+    }
+}
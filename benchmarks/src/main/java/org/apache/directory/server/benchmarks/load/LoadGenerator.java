@@ -0,0 +1,295 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.benchmarks.load;
+
+
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.apache.directory.api.util.Network;
+import org.apache.directory.api.util.Strings;
+
+
+/**
+ * A load generator sending a mix of binds, searches, modifications and additions to an
+ * LDAP server, over several connections, and reporting the throughput and the latency
+ * percentiles of each operation. The server must hold the users created by the
+ * {@link org.apache.directory.server.benchmarks.DatasetGenerator}, or the generator can
+ * start an embedded server loaded with them :
+ * <pre>
+ * java -cp benchmarks.jar org.apache.directory.server.benchmarks.load.LoadGenerator -embedded -connections 16
+ * </pre>
+ * The users added during a run are created under <em>ou=Added</em>, numbered from the number
+ * of generated users : this subtree must be emptied before running the generator twice
+ * against the same server. See {@link LoadConfiguration} for the options.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public final class LoadGenerator
+{
+    /** The number of nanoseconds in a millisecond, to report the latencies */
+    private static final double NANOS_PER_MILLI = 1000000d;
+
+
+    private LoadGenerator()
+    {
+    }
+
+
+    public static void main( String[] args ) throws Exception
+    {
+        LoadConfiguration configuration;
+
+        try
+        {
+            configuration = LoadConfiguration.parse( args );
+        }
+        catch ( IllegalArgumentException iae )
+        {
+            System.err.println( iae.getMessage() );
+            System.err.println( "Usage : LoadGenerator [-host <host>] [-port <port>] [-embedded] [-entries <n>] "
+                + "[-bindDn <dn>] [-password <pwd>] [-connections <n>] [-pipeline <n>] [-rate <n>] "
+                + "[-mix bind=<w>,search=<w>,modify=<w>,add=<w>] [-warmup <s>] [-duration <s>] [-interval <s>] "
+                + "[-timeout <ms>] [-histogramLog <file>]" );
+            System.exit( 1 );
+
+            return;
+        }
+
+        EmbeddedLdapServer embeddedServer = null;
+        int port = configuration.getPort();
+
+        if ( configuration.isEmbedded() )
+        {
+            System.out.println( "Starting the embedded server with " + configuration.getNbEntries() + " users..." );
+            embeddedServer = new EmbeddedLdapServer();
+            embeddedServer.startup( configuration.getNbEntries() );
+            configuration.setHost( Network.LOOPBACK_HOSTNAME );
+            port = embeddedServer.getPort();
+        }
+
+        try
+        {
+            run( configuration, port );
+        }
+        finally
+        {
+            if ( embeddedServer != null )
+            {
+                embeddedServer.shutdown();
+            }
+        }
+    }
+
+
+    /**
+     * Opens the connections, sends the requests during the warmup and the measured
+     * durations, and prints the reports
+     */
+    private static void run( LoadConfiguration configuration, int port ) throws Exception
+    {
+        System.out.println( configuration );
+
+        LoadStatistics statistics = new LoadStatistics();
+        AtomicInteger addedCounter = new AtomicInteger( configuration.getNbEntries() );
+        List<LoadConnection> connections = new ArrayList<>();
+
+        for ( int i = 0; i < configuration.getNbConnections(); i++ )
+        {
+            LoadConnection connection = new LoadConnection( i, configuration, statistics, addedCounter );
+            connections.add( connection );
+            connection.open( port );
+        }
+
+        PrintStream histogramStream = null;
+        HistogramLogWriter histogramLogWriter = null;
+
+        if ( configuration.getHistogramLog() != null )
+        {
+            histogramStream = new PrintStream( new FileOutputStream( configuration.getHistogramLog() ), false,
+                StandardCharsets.UTF_8.name() );
+            histogramLogWriter = new HistogramLogWriter( histogramStream );
+            histogramLogWriter.outputLogFormatVersion();
+        }
+
+        try
+        {
+            long period = 0L;
+
+            if ( configuration.getRate() > 0 )
+            {
+                period = TimeUnit.SECONDS.toNanos( configuration.getNbConnections() ) / configuration.getRate();
+            }
+
+            long startTime = System.nanoTime();
+
+            for ( LoadConnection connection : connections )
+            {
+                connection.start( startTime, period );
+            }
+
+            if ( configuration.getWarmup() > 0 )
+            {
+                System.out.println( "Warming up for " + configuration.getWarmup() + "s..." );
+                Thread.sleep( TimeUnit.SECONDS.toMillis( configuration.getWarmup() ) );
+            }
+
+            statistics.reset();
+
+            if ( histogramLogWriter != null )
+            {
+                long now = System.currentTimeMillis();
+                histogramLogWriter.outputStartTime( now );
+                histogramLogWriter.setBaseTime( now );
+                histogramLogWriter.outputLegend();
+            }
+
+            long measureStart = System.nanoTime();
+            long measureEnd = measureStart + TimeUnit.SECONDS.toNanos( configuration.getDuration() );
+            long intervalNanos = TimeUnit.SECONDS.toNanos( Math.max( 1, configuration.getInterval() ) );
+            long nextReport = measureStart + intervalNanos;
+            long lastReport = measureStart;
+
+            while ( lastReport < measureEnd )
+            {
+                long reportTime = Math.min( nextReport, measureEnd );
+                long now = System.nanoTime();
+
+                if ( now < reportTime )
+                {
+                    TimeUnit.NANOSECONDS.sleep( reportTime - now );
+                    now = System.nanoTime();
+                }
+
+                Map<LoadOperation, Histogram> intervals = statistics.sample();
+                printInterval( ( now - measureStart ) / 1e9d, ( now - lastReport ) / 1e9d, intervals );
+
+                if ( histogramLogWriter != null )
+                {
+                    for ( Histogram interval : intervals.values() )
+                    {
+                        if ( interval.getTotalCount() > 0 )
+                        {
+                            histogramLogWriter.outputIntervalHistogram( interval );
+                        }
+                    }
+                }
+
+                lastReport = now;
+                nextReport += intervalNanos;
+            }
+
+            printSummary( statistics, ( lastReport - measureStart ) / 1e9d );
+        }
+        finally
+        {
+            for ( LoadConnection connection : connections )
+            {
+                connection.stop();
+            }
+
+            if ( histogramStream != null )
+            {
+                histogramStream.close();
+            }
+        }
+    }
+
+
+    /**
+     * Prints the throughput and the latencies of an interval, on one line per operation
+     */
+    private static void printInterval( double elapsed, double seconds, Map<LoadOperation, Histogram> intervals )
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append( String.format( Locale.ROOT, "[%7.1fs]", elapsed ) );
+
+        for ( Map.Entry<LoadOperation, Histogram> interval : intervals.entrySet() )
+        {
+            Histogram histogram = interval.getValue();
+
+            if ( histogram.getTotalCount() == 0 )
+            {
+                continue;
+            }
+
+            sb.append( String.format( Locale.ROOT, " %s %.0f/s p50=%.2fms p99=%.2fms p99.9=%.2fms",
+                Strings.toLowerCaseAscii( interval.getKey().name() ),
+                histogram.getTotalCount() / seconds,
+                histogram.getValueAtPercentile( 50d ) / NANOS_PER_MILLI,
+                histogram.getValueAtPercentile( 99d ) / NANOS_PER_MILLI,
+                histogram.getValueAtPercentile( 99.9d ) / NANOS_PER_MILLI ) );
+        }
+
+        System.out.println( sb );
+    }
+
+
+    /**
+     * Prints the totals of the measured duration
+     */
+    private static void printSummary( LoadStatistics statistics, double seconds )
+    {
+        System.out.println();
+        System.out.println( String.format( Locale.ROOT, "%-8s %10s %10s %9s %9s %9s %9s %9s %9s %8s",
+            "op", "count", "ops/s", "mean(ms)", "p50", "p90", "p99", "p99.9", "max", "errors" ) );
+
+        long totalCount = 0L;
+        long totalErrors = 0L;
+
+        for ( LoadOperation operation : LoadOperation.values() )
+        {
+            Histogram histogram = statistics.getTotal( operation );
+            long errors = statistics.getErrors( operation );
+            totalCount += histogram.getTotalCount();
+            totalErrors += errors;
+
+            if ( histogram.getTotalCount() == 0 )
+            {
+                continue;
+            }
+
+            System.out.println( String.format( Locale.ROOT,
+                "%-8s %10d %10.0f %9.3f %9.3f %9.3f %9.3f %9.3f %9.3f %8d",
+                Strings.toLowerCaseAscii( operation.name() ),
+                histogram.getTotalCount(),
+                histogram.getTotalCount() / seconds,
+                histogram.getMean() / NANOS_PER_MILLI,
+                histogram.getValueAtPercentile( 50d ) / NANOS_PER_MILLI,
+                histogram.getValueAtPercentile( 90d ) / NANOS_PER_MILLI,
+                histogram.getValueAtPercentile( 99d ) / NANOS_PER_MILLI,
+                histogram.getValueAtPercentile( 99.9d ) / NANOS_PER_MILLI,
+                histogram.getMaxValue() / NANOS_PER_MILLI,
+                errors ) );
+        }
+
+        System.out.println( String.format( Locale.ROOT, "%-8s %10d %10.0f %59s %8d",
+            "total", totalCount, totalCount / seconds, "", totalErrors ) );
+    }
+}
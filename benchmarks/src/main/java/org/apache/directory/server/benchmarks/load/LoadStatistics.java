@@ -0,0 +1,143 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.benchmarks.load;
+
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+
+/**
+ * The latencies and the errors of the requests, per operation. The latencies are
+ * recorded in nanoseconds in HdrHistogram recorders, which the reporting thread samples
+ * at each interval without blocking the connections.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LoadStatistics
+{
+    /** The highest recorded latency. Longer latencies are recorded as this value. */
+    private static final long HIGHEST_LATENCY = TimeUnit.MINUTES.toNanos( 5L );
+
+    /** The number of significant digits of the histograms */
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    /** The latency recorders */
+    private final Map<LoadOperation, Recorder> recorders = new EnumMap<>( LoadOperation.class );
+
+    /** The latencies since the last reset */
+    private final Map<LoadOperation, Histogram> totals = new EnumMap<>( LoadOperation.class );
+
+    /** The errors since the last reset */
+    private final Map<LoadOperation, LongAdder> errors = new EnumMap<>( LoadOperation.class );
+
+
+    /**
+     * Creates the statistics of all the operations
+     */
+    public LoadStatistics()
+    {
+        for ( LoadOperation operation : LoadOperation.values() )
+        {
+            recorders.put( operation, new Recorder( HIGHEST_LATENCY, SIGNIFICANT_DIGITS ) );
+            totals.put( operation, new Histogram( HIGHEST_LATENCY, SIGNIFICANT_DIGITS ) );
+            errors.put( operation, new LongAdder() );
+        }
+    }
+
+
+    /**
+     * Records a completed request. A request which failed is counted as an error, and
+     * its latency is recorded too.
+     *
+     * @param operation The request operation
+     * @param latency The request latency, in nanoseconds
+     * @param success <tt>true</tt> if the request succeeded
+     */
+    public void record( LoadOperation operation, long latency, boolean success )
+    {
+        recorders.get( operation ).recordValue( Math.min( Math.max( latency, 0L ), HIGHEST_LATENCY ) );
+
+        if ( !success )
+        {
+            errors.get( operation ).increment();
+        }
+    }
+
+
+    /**
+     * Gets the latencies recorded since the previous sample, and adds them to the totals
+     *
+     * @return The interval histograms
+     */
+    public synchronized Map<LoadOperation, Histogram> sample()
+    {
+        Map<LoadOperation, Histogram> intervals = new EnumMap<>( LoadOperation.class );
+
+        for ( LoadOperation operation : LoadOperation.values() )
+        {
+            Histogram interval = recorders.get( operation ).getIntervalHistogram();
+            interval.setTag( operation.name() );
+            totals.get( operation ).add( interval );
+            intervals.put( operation, interval );
+        }
+
+        return intervals;
+    }
+
+
+    /**
+     * Discards everything recorded so far, at the end of the warmup
+     */
+    public synchronized void reset()
+    {
+        for ( LoadOperation operation : LoadOperation.values() )
+        {
+            recorders.get( operation ).reset();
+            totals.get( operation ).reset();
+            errors.get( operation ).reset();
+        }
+    }
+
+
+    /**
+     * @param operation The operation
+     * @return The latencies of the operation since the last reset
+     */
+    public synchronized Histogram getTotal( LoadOperation operation )
+    {
+        return totals.get( operation ).copy();
+    }
+
+
+    /**
+     * @param operation The operation
+     * @return The number of errors of the operation since the last reset
+     */
+    public long getErrors( LoadOperation operation )
+    {
+        return errors.get( operation ).sum();
+    }
+}
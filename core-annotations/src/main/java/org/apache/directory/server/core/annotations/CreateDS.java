@@ -57,6 +57,10 @@ public @interface CreateDS
     boolean enableChangeLog() default true;
 
 
+    /** @return flag to publish the metrics through JMX and under cn=monitor, default is false */
+    boolean enableMonitor() default false;
+
+
     /** @return The list of partitions to create */
     CreatePartition[] partitions() default
         {};
@@ -99,6 +99,7 @@ public final class DSAnnotationProcessor
         service.setAccessControlEnabled( dsBuilder.enableAccessControl() );
         service.setAllowAnonymousAccess( dsBuilder.allowAnonAccess() );
         service.getChangeLog().setEnabled( dsBuilder.enableChangeLog() );
+        service.setMonitorEnabled( dsBuilder.enableMonitor() );
 
         dsf.init( dsBuilder.name() );
 
@@ -46,6 +46,7 @@ import org.apache.directory.api.ldap.model.name.Rdn;
 import org.apache.directory.server.constants.ServerDNConstants;
 import org.apache.directory.server.core.api.changelog.LogChange;
 import org.apache.directory.server.core.api.interceptor.context.OperationContext;
+import org.apache.directory.server.core.api.interceptor.context.SearchBudget;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
 
@@ -792,6 +793,33 @@ public interface CoreSession
     Cursor<Entry> search( SearchRequest searchRequest ) throws LdapException;
 
 
+    /**
+     * Searches the directory, the search being stopped when it has consumed its budget, even
+     * if it does not return any entry.
+     *
+     * @param searchRequest The search request
+     * @param budget The time and candidates the search may consume, null if unlimited
+     * @return A cursor to browse the search results
+     * @throws LdapException if the search fails
+     */
+    Cursor<Entry> search( SearchRequest searchRequest, SearchBudget budget ) throws LdapException;
+
+
+    /**
+     * Searches the directory, restarting after a given entry. The entries are returned in the
+     * order of their IDs : the candidates up to the given ID are skipped, even if this entry
+     * has been deleted. The search base must not be the RootDSE.
+     *
+     * @param searchRequest The search request
+     * @param budget The time and candidates the search may consume, null if unlimited
+     * @param resumeAfterId The ID of the entry the search restarts after, null to get all the entries
+     * @return A cursor to browse the search results
+     * @throws LdapException if the search fails
+     */
+    Cursor<Entry> search( SearchRequest searchRequest, SearchBudget budget, String resumeAfterId )
+        throws LdapException;
+
+
     /**
      * Unbind from the current LdapSession.
      * 
@@ -42,6 +42,8 @@ import org.apache.directory.server.core.api.entry.ServerEntryFactory;
 import org.apache.directory.server.core.api.event.EventService;
 import org.apache.directory.server.core.api.interceptor.Interceptor;
 import org.apache.directory.server.core.api.journal.Journal;
+import org.apache.directory.server.core.api.metrics.InterceptorTimings;
+import org.apache.directory.server.core.api.metrics.MetricsRegistry;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionNexus;
 import org.apache.directory.server.core.api.schema.SchemaPartition;
@@ -655,4 +657,35 @@ public interface DirectoryService extends ServerEntryFactory
      * @param timeProvider the time provider
      */
     void setTimeProvider( TimeProvider timeProvider );
+
+
+    /**
+     * Gets the registry of the metrics of this service.
+     * 
+     * @return the metrics registry
+     */
+    MetricsRegistry getMetricsRegistry();
+
+
+    /**
+     * @return true if the metrics are published through JMX and under cn=monitor
+     */
+    boolean isMonitorEnabled();
+
+
+    /**
+     * Tells if the metrics are published through JMX and under the cn=monitor partition.
+     * Must be set before the service is started.
+     * 
+     * @param monitorEnabled true to publish the metrics
+     */
+    void setMonitorEnabled( boolean monitorEnabled );
+
+
+    /**
+     * Gets the timings of the interceptors, recorded when the monitor is enabled.
+     * 
+     * @return the interceptor timings, or null if the interceptors are not timed
+     */
+    InterceptorTimings getInterceptorTimings();
 }
@@ -33,9 +33,8 @@ import org.apache.directory.api.ldap.model.name.Dn;
 public interface ReferralManager
 {
     /**
-     * Get a read-lock on the referralManager.
-     * No read operation can be done on the referralManager if this
-     * method is not called before.
+     * Get a read-lock on the referralManager. An implementation whose lookups
+     * don't need any lock may do nothing.
      */
     void lockRead();
 
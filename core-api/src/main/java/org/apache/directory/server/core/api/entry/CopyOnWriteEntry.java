@@ -0,0 +1,502 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.entry;
+
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+
+
+/**
+ * A ClonedServerEntry which doesn't copy the original entry upfront. Only the attribute
+ * map is copied : the attributes are shared with the original entry until they are
+ * modified, or handed to the caller, who may modify them. Adding, replacing or removing
+ * whole attributes never copies anything.
+ * <p>
+ * This is what the partitions return when an entry is fetched : most of the entries are
+ * only read, or stripped of the attributes the user hasn't requested, so copying all their
+ * attributes and values is a waste.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class CopyOnWriteEntry extends ClonedServerEntry
+{
+    /** Set when none of the attributes is shared with the original entry anymore */
+    private boolean copied;
+
+
+    /**
+     * Creates a new instance of CopyOnWriteEntry.
+     *
+     * @param originalEntry The original entry, which must not be modified
+     */
+    public CopyOnWriteEntry( Entry originalEntry )
+    {
+        this.originalEntry = originalEntry;
+        this.clonedEntry = originalEntry.shallowClone();
+    }
+
+
+    /**
+     * Tells if an attribute is still the one stored in the original entry
+     */
+    private boolean isShared( Attribute attribute )
+    {
+        if ( ( attribute == null ) || copied )
+        {
+            return false;
+        }
+
+        AttributeType attributeType = attribute.getAttributeType();
+
+        if ( attributeType != null )
+        {
+            return originalEntry.get( attributeType ) == attribute;
+        }
+        else
+        {
+            return originalEntry.get( attribute.getUpId() ) == attribute;
+        }
+    }
+
+
+    /**
+     * Replaces an attribute shared with the original entry by a copy
+     *
+     * @param attribute The attribute
+     * @return The attribute which can be modified
+     */
+    private Attribute copy( Attribute attribute )
+    {
+        if ( !isShared( attribute ) )
+        {
+            return attribute;
+        }
+
+        Attribute copy = attribute.clone();
+
+        try
+        {
+            clonedEntry.put( copy );
+        }
+        catch ( LdapException le )
+        {
+            // Can't happen, the attribute comes from the entry
+            throw new IllegalStateException( le.getMessage(), le );
+        }
+
+        return copy;
+    }
+
+
+    /**
+     * Copy the attribute with the given type, if it's shared
+     */
+    private void copy( AttributeType attributeType )
+    {
+        copy( clonedEntry.get( attributeType ) );
+    }
+
+
+    /**
+     * Copy the attribute with the given ID, if it's shared
+     */
+    private void copy( String upId )
+    {
+        copy( clonedEntry.get( upId ) );
+    }
+
+
+    /**
+     * Copy all the attributes still shared with the original entry
+     */
+    private void copyAll()
+    {
+        if ( copied )
+        {
+            return;
+        }
+
+        for ( Attribute attribute : new ArrayList<>( clonedEntry.getAttributes() ) )
+        {
+            copy( attribute );
+        }
+
+        copied = true;
+    }
+
+
+    /**
+     * An attribute removed from this entry may still be in the original entry : the caller
+     * gets a copy of it
+     */
+    private Attribute detach( Attribute attribute )
+    {
+        if ( isShared( attribute ) )
+        {
+            return attribute.clone();
+        }
+
+        return attribute;
+    }
+
+
+    private List<Attribute> detach( List<Attribute> attributes )
+    {
+        if ( copied || ( attributes == null ) )
+        {
+            return attributes;
+        }
+
+        List<Attribute> result = new ArrayList<>( attributes.size() );
+
+        for ( Attribute attribute : attributes )
+        {
+            result.add( detach( attribute ) );
+        }
+
+        return result;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * All the attributes still shared with the original entry are copied first.
+     */
+    @Override
+    public Entry getClonedEntry()
+    {
+        copyAll();
+
+        return clonedEntry;
+    }
+
+
+    /**
+     * Gives access to the content of this entry without copying the attributes shared with
+     * the original entry : the returned entry can have attributes added or removed, but its
+     * attributes must not be modified. This is meant for the code serializing the entry.
+     *
+     * @return The entry, which attributes may be shared with the original entry
+     */
+    public Entry getSharedEntry()
+    {
+        return clonedEntry;
+    }
+
+
+    @Override
+    public Entry add( AttributeType attributeType, byte[]... values ) throws LdapException
+    {
+        copy( attributeType );
+
+        return clonedEntry.add( attributeType, values );
+    }
+
+
+    @Override
+    public Entry add( AttributeType attributeType, String... values ) throws LdapException
+    {
+        copy( attributeType );
+
+        return clonedEntry.add( attributeType, values );
+    }
+
+
+    @Override
+    public Entry add( AttributeType attributeType, Value... values ) throws LdapException
+    {
+        copy( attributeType );
+
+        return clonedEntry.add( attributeType, values );
+    }
+
+
+    @Override
+    public Entry add( String upId, AttributeType attributeType, byte[]... values ) throws LdapException
+    {
+        copy( attributeType );
+
+        return clonedEntry.add( attributeType, values );
+    }
+
+
+    @Override
+    public Entry add( String upId, AttributeType attributeType, String... values ) throws LdapException
+    {
+        copy( attributeType );
+
+        return clonedEntry.add( attributeType, values );
+    }
+
+
+    @Override
+    public Entry add( String upId, AttributeType attributeType, Value... values ) throws LdapException
+    {
+        copy( attributeType );
+
+        return clonedEntry.add( attributeType, values );
+    }
+
+
+    @Override
+    public Entry add( Attribute... attributes ) throws LdapException
+    {
+        for ( Attribute attribute : attributes )
+        {
+            if ( attribute.getAttributeType() != null )
+            {
+                copy( attribute.getAttributeType() );
+            }
+            else
+            {
+                copy( attribute.getUpId() );
+            }
+        }
+
+        return clonedEntry.add( attributes );
+    }
+
+
+    @Override
+    public Entry add( String upId, String... values ) throws LdapException
+    {
+        copy( upId );
+
+        return clonedEntry.add( upId, values );
+    }
+
+
+    @Override
+    public Entry add( String upId, byte[]... values ) throws LdapException
+    {
+        copy( upId );
+
+        return clonedEntry.add( upId, values );
+    }
+
+
+    @Override
+    public Entry add( String upId, Value... values ) throws LdapException
+    {
+        copy( upId );
+
+        return clonedEntry.add( upId, values );
+    }
+
+
+    @Override
+    public Attribute get( AttributeType attributeType )
+    {
+        return copy( clonedEntry.get( attributeType ) );
+    }
+
+
+    @Override
+    public Attribute get( String alias )
+    {
+        return copy( clonedEntry.get( alias ) );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Collection<Attribute> getAttributes()
+    {
+        copyAll();
+
+        return clonedEntry.getAttributes();
+    }
+
+
+    @Override
+    public Iterator<Attribute> iterator()
+    {
+        copyAll();
+
+        return clonedEntry.iterator();
+    }
+
+
+    @Override
+    public Attribute put( AttributeType attributeType, byte[]... values ) throws LdapException
+    {
+        return detach( clonedEntry.put( attributeType, values ) );
+    }
+
+
+    @Override
+    public Attribute put( AttributeType attributeType, String... values ) throws LdapException
+    {
+        return detach( clonedEntry.put( attributeType, values ) );
+    }
+
+
+    @Override
+    public Attribute put( AttributeType attributeType, Value... values ) throws LdapException
+    {
+        return detach( clonedEntry.put( attributeType, values ) );
+    }
+
+
+    @Override
+    public Attribute put( String upId, AttributeType attributeType, byte[]... values ) throws LdapException
+    {
+        return detach( clonedEntry.put( attributeType, values ) );
+    }
+
+
+    @Override
+    public Attribute put( String upId, AttributeType attributeType, String... values ) throws LdapException
+    {
+        return detach( clonedEntry.put( upId, attributeType, values ) );
+    }
+
+
+    @Override
+    public Attribute put( String upId, AttributeType attributeType, Value... values ) throws LdapException
+    {
+        return detach( clonedEntry.put( upId, attributeType, values ) );
+    }
+
+
+    @Override
+    public List<Attribute> put( Attribute... attributes ) throws LdapException
+    {
+        return detach( clonedEntry.put( attributes ) );
+    }
+
+
+    @Override
+    public Attribute put( String upId, byte[]... values )
+    {
+        return detach( clonedEntry.put( upId, values ) );
+    }
+
+
+    @Override
+    public Attribute put( String upId, String... values )
+    {
+        return detach( clonedEntry.put( upId, values ) );
+    }
+
+
+    @Override
+    public Attribute put( String upId, Value... values )
+    {
+        return detach( clonedEntry.put( upId, values ) );
+    }
+
+
+    @Override
+    public boolean remove( AttributeType attributeType, byte[]... values ) throws LdapException
+    {
+        copy( attributeType );
+
+        return clonedEntry.remove( attributeType, values );
+    }
+
+
+    @Override
+    public boolean remove( AttributeType attributeType, String... values ) throws LdapException
+    {
+        copy( attributeType );
+
+        return clonedEntry.remove( attributeType, values );
+    }
+
+
+    @Override
+    public boolean remove( AttributeType attributeType, Value... values ) throws LdapException
+    {
+        copy( attributeType );
+
+        return clonedEntry.remove( attributeType, values );
+    }
+
+
+    @Override
+    public List<Attribute> remove( Attribute... attributes ) throws LdapException
+    {
+        return detach( clonedEntry.remove( attributes ) );
+    }
+
+
+    @Override
+    public boolean remove( String upId, byte[]... values ) throws LdapException
+    {
+        copy( upId );
+
+        return clonedEntry.remove( upId, values );
+    }
+
+
+    @Override
+    public boolean remove( String upId, String... values ) throws LdapException
+    {
+        copy( upId );
+
+        return clonedEntry.remove( upId, values );
+    }
+
+
+    @Override
+    public boolean remove( String upId, Value... values ) throws LdapException
+    {
+        copy( upId );
+
+        return clonedEntry.remove( upId, values );
+    }
+
+
+    @Override
+    public Entry toClientEntry() throws LdapException
+    {
+        // Copy the Dn
+        Entry clientEntry = new DefaultEntry( clonedEntry.getDn() );
+
+        // Convert each attribute, without copying the shared ones first
+        for ( Attribute attribute : clonedEntry )
+        {
+            clientEntry.add( attribute.clone() );
+        }
+
+        return clientEntry;
+    }
+
+
+    @Override
+    public Entry shallowClone()
+    {
+        return getClonedEntry().shallowClone();
+    }
+}
@@ -36,7 +36,9 @@ import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.exception.OperationAbandonedException;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.server.core.api.entry.ClonedServerEntry;
+import org.apache.directory.server.core.api.entry.CopyOnWriteEntry;
 import org.apache.directory.server.core.api.entry.ServerEntryUtils;
+import org.apache.directory.server.core.api.interceptor.context.SearchBudget;
 import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -398,9 +400,16 @@ public class EntryFilteringCursorImpl extends AbstractCursor<Entry> implements E
         }
 
         Entry tempResult = null;
+        SearchBudget budget = operationContext.getBudget();
 
         outer: while ( wrapped.next() )
         {
+            // The candidates may all be rejected : check the budget for each of them
+            if ( budget != null )
+            {
+                budget.examine();
+            }
+
             Entry tempEntry = wrapped.get();
 
             if ( tempEntry == null )
@@ -415,7 +424,7 @@ public class EntryFilteringCursorImpl extends AbstractCursor<Entry> implements E
             }
             else
             {
-                tempResult = new ClonedServerEntry( tempEntry );
+                tempResult = new CopyOnWriteEntry( tempEntry );
             }
 
             /*
@@ -492,9 +501,15 @@ public class EntryFilteringCursorImpl extends AbstractCursor<Entry> implements E
         }
 
         Entry tempResult = null;
+        SearchBudget budget = operationContext.getBudget();
 
         outer: while ( wrapped.previous() )
         {
+            if ( budget != null )
+            {
+                budget.examine();
+            }
+
             Entry entry = wrapped.get();
 
             if ( entry == null )
@@ -502,7 +517,14 @@ public class EntryFilteringCursorImpl extends AbstractCursor<Entry> implements E
                 continue;
             }
 
-            tempResult = new ClonedServerEntry/*Search*/( entry );
+            if ( entry instanceof ClonedServerEntry )
+            {
+                tempResult = entry;
+            }
+            else
+            {
+                tempResult = new CopyOnWriteEntry( entry );
+            }
 
             /*
              * O P T I M I Z A T I O N
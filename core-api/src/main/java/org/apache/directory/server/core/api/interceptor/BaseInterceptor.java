@@ -31,6 +31,7 @@ import org.apache.directory.server.core.api.DirectoryService;
 import org.apache.directory.server.core.api.DnFactory;
 import org.apache.directory.server.core.api.InterceptorEnum;
 import org.apache.directory.server.core.api.LdapPrincipal;
+import org.apache.directory.server.core.api.OperationEnum;
 import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
 import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.BindOperationContext;
@@ -46,6 +47,7 @@ import org.apache.directory.server.core.api.interceptor.context.OperationContext
 import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.UnbindOperationContext;
+import org.apache.directory.server.core.api.metrics.InterceptorTimings;
 import org.apache.directory.server.core.api.partition.PartitionNexus;
 
 
@@ -316,6 +318,46 @@ public abstract class BaseInterceptor implements Interceptor
     }
 
 
+    /**
+     * Starts timing the call to the next interceptor, if the interceptors are timed
+     * 
+     * @param operationContext The operation context
+     * @return The timing token
+     */
+    private long startTiming( OperationContext operationContext )
+    {
+        InterceptorTimings timings = getInterceptorTimings();
+
+        return ( timings == null ) ? 0L : timings.start( operationContext );
+    }
+
+
+    /**
+     * Records the time spent in the next interceptor, if the interceptors are timed
+     * 
+     * @param operationContext The operation context
+     * @param interceptor The called interceptor
+     * @param operation The operation
+     * @param token The token returned when the call started
+     */
+    private void stopTiming( OperationContext operationContext, Interceptor interceptor, OperationEnum operation,
+        long token )
+    {
+        InterceptorTimings timings = getInterceptorTimings();
+
+        if ( timings != null )
+        {
+            timings.stop( operationContext, interceptor, operation, token );
+        }
+    }
+
+
+    private InterceptorTimings getInterceptorTimings()
+    {
+        return ( directoryService == null ) ? null : directoryService.getInterceptorTimings();
+    }
+
+
     // ------------------------------------------------------------------------
     // Interceptor's Invoke Method
     // ------------------------------------------------------------------------
@@ -337,8 +379,16 @@ public abstract class BaseInterceptor implements Interceptor
     protected final void next( AddOperationContext addContext ) throws LdapException
     {
         Interceptor interceptor = getNextInterceptor( addContext );
+        long token = startTiming( addContext );
 
-        interceptor.add( addContext );
+        try
+        {
+            interceptor.add( addContext );
+        }
+        finally
+        {
+            stopTiming( addContext, interceptor, OperationEnum.ADD, token );
+        }
     }
 
 
@@ -360,8 +410,16 @@ public abstract class BaseInterceptor implements Interceptor
     protected final void next( BindOperationContext bindContext ) throws LdapException
     {
         Interceptor interceptor = getNextInterceptor( bindContext );
+        long token = startTiming( bindContext );
 
-        interceptor.bind( bindContext );
+        try
+        {
+            interceptor.bind( bindContext );
+        }
+        finally
+        {
+            stopTiming( bindContext, interceptor, OperationEnum.BIND, token );
+        }
     }
 
 
@@ -382,8 +440,16 @@ public abstract class BaseInterceptor implements Interceptor
     protected final boolean next( CompareOperationContext compareContext ) throws LdapException
     {
         Interceptor interceptor = getNextInterceptor( compareContext );
+        long token = startTiming( compareContext );
 
-        return interceptor.compare( compareContext );
+        try
+        {
+            return interceptor.compare( compareContext );
+        }
+        finally
+        {
+            stopTiming( compareContext, interceptor, OperationEnum.COMPARE, token );
+        }
     }
 
 
@@ -405,8 +471,16 @@ public abstract class BaseInterceptor implements Interceptor
     protected final void next( DeleteOperationContext deleteContext ) throws LdapException
     {
         Interceptor interceptor = getNextInterceptor( deleteContext );
+        long token = startTiming( deleteContext );
 
-        interceptor.delete( deleteContext );
+        try
+        {
+            interceptor.delete( deleteContext );
+        }
+        finally
+        {
+            stopTiming( deleteContext, interceptor, OperationEnum.DELETE, token );
+        }
     }
 
 
@@ -430,8 +504,16 @@ public abstract class BaseInterceptor implements Interceptor
     protected final Entry next( GetRootDseOperationContext getRootDseContext ) throws LdapException
     {
         Interceptor interceptor = getNextInterceptor( getRootDseContext );
+        long token = startTiming( getRootDseContext );
 
-        return interceptor.getRootDse( getRootDseContext );
+        try
+        {
+            return interceptor.getRootDse( getRootDseContext );
+        }
+        finally
+        {
+            stopTiming( getRootDseContext, interceptor, OperationEnum.GET_ROOT_DSE, token );
+        }
     }
 
 
@@ -455,8 +537,16 @@ public abstract class BaseInterceptor implements Interceptor
     protected final boolean next( HasEntryOperationContext hasEntryContext ) throws LdapException
     {
         Interceptor interceptor = getNextInterceptor( hasEntryContext );
+        long token = startTiming( hasEntryContext );
 
-        return interceptor.hasEntry( hasEntryContext );
+        try
+        {
+            return interceptor.hasEntry( hasEntryContext );
+        }
+        finally
+        {
+            stopTiming( hasEntryContext, interceptor, OperationEnum.HAS_ENTRY, token );
+        }
     }
 
 
@@ -479,8 +569,16 @@ public abstract class BaseInterceptor implements Interceptor
     protected final Entry next( LookupOperationContext lookupContext ) throws LdapException
     {
         Interceptor interceptor = getNextInterceptor( lookupContext );
+        long token = startTiming( lookupContext );
 
-        return interceptor.lookup( lookupContext );
+        try
+        {
+            return interceptor.lookup( lookupContext );
+        }
+        finally
+        {
+            stopTiming( lookupContext, interceptor, OperationEnum.LOOKUP, token );
+        }
     }
 
 
@@ -502,8 +600,16 @@ public abstract class BaseInterceptor implements Interceptor
     protected final void next( ModifyOperationContext modifyContext ) throws LdapException
     {
         Interceptor interceptor = getNextInterceptor( modifyContext );
+        long token = startTiming( modifyContext );
 
-        interceptor.modify( modifyContext );
+        try
+        {
+            interceptor.modify( modifyContext );
+        }
+        finally
+        {
+            stopTiming( modifyContext, interceptor, OperationEnum.MODIFY, token );
+        }
     }
 
 
@@ -525,8 +631,16 @@ public abstract class BaseInterceptor implements Interceptor
     protected final void next( MoveOperationContext moveContext ) throws LdapException
     {
         Interceptor interceptor = getNextInterceptor( moveContext );
+        long token = startTiming( moveContext );
 
-        interceptor.move( moveContext );
+        try
+        {
+            interceptor.move( moveContext );
+        }
+        finally
+        {
+            stopTiming( moveContext, interceptor, OperationEnum.MOVE, token );
+        }
     }
 
 
@@ -545,8 +659,16 @@ public abstract class BaseInterceptor implements Interceptor
     protected final void next( MoveAndRenameOperationContext moveAndRenameContext ) throws LdapException
     {
         Interceptor interceptor = getNextInterceptor( moveAndRenameContext );
+        long token = startTiming( moveAndRenameContext );
 
-        interceptor.moveAndRename( moveAndRenameContext );
+        try
+        {
+            interceptor.moveAndRename( moveAndRenameContext );
+        }
+        finally
+        {
+            stopTiming( moveAndRenameContext, interceptor, OperationEnum.MOVE_AND_RENAME, token );
+        }
     }
 
 
@@ -568,8 +690,16 @@ public abstract class BaseInterceptor implements Interceptor
     protected final void next( RenameOperationContext renameContext ) throws LdapException
     {
         Interceptor interceptor = getNextInterceptor( renameContext );
+        long token = startTiming( renameContext );
 
-        interceptor.rename( renameContext );
+        try
+        {
+            interceptor.rename( renameContext );
+        }
+        finally
+        {
+            stopTiming( renameContext, interceptor, OperationEnum.RENAME, token );
+        }
     }
 
 
@@ -592,8 +722,16 @@ public abstract class BaseInterceptor implements Interceptor
     protected final EntryFilteringCursor next( SearchOperationContext searchContext ) throws LdapException
     {
         Interceptor interceptor = getNextInterceptor( searchContext );
+        long token = startTiming( searchContext );
 
-        return interceptor.search( searchContext );
+        try
+        {
+            return interceptor.search( searchContext );
+        }
+        finally
+        {
+            stopTiming( searchContext, interceptor, OperationEnum.SEARCH, token );
+        }
     }
 
 
@@ -615,7 +753,15 @@ public abstract class BaseInterceptor implements Interceptor
     protected final void next( UnbindOperationContext unbindContext ) throws LdapException
     {
         Interceptor interceptor = getNextInterceptor( unbindContext );
+        long token = startTiming( unbindContext );
 
-        interceptor.unbind( unbindContext );
+        try
+        {
+            interceptor.unbind( unbindContext );
+        }
+        finally
+        {
+            stopTiming( unbindContext, interceptor, OperationEnum.UNBIND, token );
+        }
     }
 }
@@ -69,6 +69,9 @@ public abstract class AbstractOperationContext implements OperationContext
     /** The current interceptor position */
     protected int currentInterceptor;
 
+    /** The time accumulated by the timed interceptor calls */
+    private long nestedNanos;
+
     protected LdapPrincipal authorizedPrincipal;
 
     /** The core session */
@@ -358,6 +361,26 @@ public abstract class AbstractOperationContext implements OperationContext
     }
 
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getNestedNanos()
+    {
+        return nestedNanos;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setNestedNanos( long nestedNanos )
+    {
+        this.nestedNanos = nestedNanos;
+    }
+
+
     private void setup( AbstractOperationContext opContext )
     {
         opContext.setAuthorizedPrincipal( authorizedPrincipal );
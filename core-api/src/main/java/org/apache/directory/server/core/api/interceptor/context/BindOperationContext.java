@@ -67,6 +67,12 @@ public class BindOperationContext extends AbstractOperationContext
     /** The LDAP Principal */
     private Entry principal;
 
+    /** Tells if the caller is able to delay the response itself */
+    private boolean responseDelayDeferred;
+
+    /** The delay to apply before sending back the response, in milliseconds */
+    private long responseDelay;
+
 
     /**
      * Creates a new instance of BindOperationContext.
@@ -309,4 +315,41 @@ public class BindOperationContext extends AbstractOperationContext
     {
         this.principal = principal;
     }
+
+
+    /**
+     * @return <tt>true</tt> if the caller delays the bind response itself, instead of
+     * having the bind operation blocking until the delay has expired
+     */
+    public boolean isResponseDelayDeferred()
+    {
+        return responseDelayDeferred;
+    }
+
+
+    /**
+     * @param responseDelayDeferred Tells if the caller delays the bind response itself
+     */
+    public void setResponseDelayDeferred( boolean responseDelayDeferred )
+    {
+        this.responseDelayDeferred = responseDelayDeferred;
+    }
+
+
+    /**
+     * @return The delay to apply before sending back the bind response, in milliseconds
+     */
+    public long getResponseDelay()
+    {
+        return responseDelay;
+    }
+
+
+    /**
+     * @param responseDelay The delay to apply before sending back the bind response, in milliseconds
+     */
+    public void setResponseDelay( long responseDelay )
+    {
+        this.responseDelay = responseDelay;
+    }
 }
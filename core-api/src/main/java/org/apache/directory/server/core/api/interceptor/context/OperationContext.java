@@ -55,6 +55,21 @@ public interface OperationContext
     void setCurrentInterceptor( int currentInterceptor );
 
 
+    /**
+     * @return The time accumulated by the timed interceptor calls, in nanoseconds
+     */
+    long getNestedNanos();
+
+
+    /**
+     * Sets the time accumulated by the timed interceptor calls. Only used by the
+     * {@link org.apache.directory.server.core.api.metrics.InterceptorTimings}.
+     * 
+     * @param nestedNanos The accumulated time, in nanoseconds
+     */
+    void setNestedNanos( long nestedNanos );
+
+
     /**
      * Gets the effective principal for this operation which may not be the
      * same as the authenticated principal when the session for this context
@@ -0,0 +1,257 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.interceptor.context;
+
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.directory.api.ldap.model.exception.LdapAdminLimitExceededException;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapTimeLimitExceededException;
+import org.apache.directory.api.ldap.model.exception.OperationAbandonedException;
+
+
+/**
+ * The time and the number of candidates a search is allowed to consume. The loops which
+ * read the candidates, in the partitions and in the filtering cursor, call {@link #examine()}
+ * or {@link #tick()}, so that a search rejecting most of its candidates stops when its time
+ * limit is exceeded or when it is abandoned, even if it does not return any entry.
+ * <p>
+ * The time is only checked every {@value #CHECK_INTERVAL} calls, to keep the cost of the
+ * checks negligible. A budget is used by a single thread at a time, except for
+ * {@link #abandon()} which can be called by any thread.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SearchBudget
+{
+    /** No limit on the time or on the number of candidates */
+    public static final long NO_LIMIT = 0L;
+
+    /** The number of calls between two checks of the time */
+    public static final int CHECK_INTERVAL = 256;
+
+    /** The maximum number of examined candidates */
+    private final long maxCandidates;
+
+    /** The counters updated when a search is stopped, may be null */
+    private final Statistics statistics;
+
+    /** The System.nanoTime() after which the search must stop */
+    private volatile long deadline;
+
+    /** The number of examined candidates */
+    private long examined;
+
+    /** The number of calls since the last time check */
+    private int ticks;
+
+    /** Set when the search has been abandoned */
+    private volatile boolean abandoned;
+
+
+    /**
+     * The number of searches stopped by their budget
+     */
+    public static final class Statistics
+    {
+        /** The number of searches stopped because they examined too many candidates */
+        private final AtomicLong nbCandidateLimitExceeded = new AtomicLong();
+
+        /** The number of searches stopped while examining candidates because of their time limit */
+        private final AtomicLong nbTimeLimitExceeded = new AtomicLong();
+
+        /** The number of searches stopped while examining candidates because they were abandoned */
+        private final AtomicLong nbAbandoned = new AtomicLong();
+
+
+        /**
+         * @return The number of searches stopped because they examined too many candidates
+         */
+        public long getNbCandidateLimitExceeded()
+        {
+            return nbCandidateLimitExceeded.get();
+        }
+
+
+        /**
+         * @return The number of searches stopped while examining candidates because of their time limit
+         */
+        public long getNbTimeLimitExceeded()
+        {
+            return nbTimeLimitExceeded.get();
+        }
+
+
+        /**
+         * @return The number of searches stopped while examining candidates because they were abandoned
+         */
+        public long getNbAbandoned()
+        {
+            return nbAbandoned.get();
+        }
+
+
+        /**
+         * @see Object#toString()
+         */
+        @Override
+        public String toString()
+        {
+            return "Searches stopped : " + nbCandidateLimitExceeded + " candidate limit exceeded, "
+                + nbTimeLimitExceeded + " time limit exceeded, " + nbAbandoned + " abandoned";
+        }
+    }
+
+
+    /**
+     * Creates a new instance of SearchBudget.
+     *
+     * @param timeLimit The time limit in milliseconds, or NO_LIMIT
+     * @param maxCandidates The maximum number of examined candidates, or NO_LIMIT
+     * @param statistics The counters to update when the search is stopped, may be null
+     */
+    public SearchBudget( long timeLimit, long maxCandidates, Statistics statistics )
+    {
+        this.maxCandidates = maxCandidates;
+        this.statistics = statistics;
+        restart( timeLimit );
+    }
+
+
+    /**
+     * Gives a new budget to the search, typically before reading the next page of a paged search
+     *
+     * @param timeLimit The time limit in milliseconds, or NO_LIMIT
+     */
+    public void restart( long timeLimit )
+    {
+        examined = 0L;
+        ticks = 0;
+
+        if ( timeLimit > NO_LIMIT )
+        {
+            deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( timeLimit );
+        }
+        else
+        {
+            deadline = Long.MAX_VALUE;
+        }
+    }
+
+
+    /**
+     * Counts a candidate, and checks the budget is not exhausted.
+     *
+     * @throws LdapException If too many candidates have been examined, if the time limit is
+     * exceeded, or if the search has been abandoned
+     */
+    public void examine() throws LdapException
+    {
+        examined++;
+
+        if ( ( maxCandidates > NO_LIMIT ) && ( examined > maxCandidates ) )
+        {
+            if ( statistics != null )
+            {
+                statistics.nbCandidateLimitExceeded.incrementAndGet();
+            }
+
+            throw new LdapAdminLimitExceededException( "The search has examined more than " + maxCandidates
+                + " candidates" );
+        }
+
+        tick();
+    }
+
+
+    /**
+     * Checks, from time to time, that the search is not abandoned and that its time limit is
+     * not exceeded.
+     *
+     * @throws LdapException If the time limit is exceeded, or if the search has been abandoned
+     */
+    public void tick() throws LdapException
+    {
+        if ( ++ticks >= CHECK_INTERVAL )
+        {
+            ticks = 0;
+            check();
+        }
+    }
+
+
+    /**
+     * Checks that the search is not abandoned and that its time limit is not exceeded.
+     *
+     * @throws LdapException If the time limit is exceeded, or if the search has been abandoned
+     */
+    public void check() throws LdapException
+    {
+        if ( abandoned )
+        {
+            if ( statistics != null )
+            {
+                statistics.nbAbandoned.incrementAndGet();
+            }
+
+            throw new OperationAbandonedException();
+        }
+
+        if ( System.nanoTime() > deadline )
+        {
+            if ( statistics != null )
+            {
+                statistics.nbTimeLimitExceeded.incrementAndGet();
+            }
+
+            throw new LdapTimeLimitExceededException( "The search time limit has been exceeded after "
+                + examined + " candidates" );
+        }
+    }
+
+
+    /**
+     * Abandons the search : the thread running it will stop at its next check.
+     */
+    public void abandon()
+    {
+        abandoned = true;
+    }
+
+
+    /**
+     * @return <tt>true</tt> if the search has been abandoned
+     */
+    public boolean isAbandoned()
+    {
+        return abandoned;
+    }
+
+
+    /**
+     * @return The number of candidates examined since the budget was (re)started
+     */
+    public long getExamined()
+    {
+        return examined;
+    }
+}
@@ -65,6 +65,12 @@ public class SearchOperationContext extends FilteringOperationContext
 
     /** flag to indicate if this search is done for replication */
     private boolean syncreplSearch;
+
+    /** The time and candidates this search may consume, null if unlimited */
+    private SearchBudget budget;
+
+    /** The ID of the entry the search restarts after, null to start from the first candidate */
+    private String resumeAfterId;
     
     /**
      * Creates a new instance of SearchOperationContext.
@@ -299,7 +305,7 @@ public class SearchOperationContext extends FilteringOperationContext
      */
     public boolean isAbandoned()
     {
-        return abandoned;
+        return abandoned || ( ( budget != null ) && budget.isAbandoned() );
     }
 
 
@@ -312,6 +318,46 @@ public class SearchOperationContext extends FilteringOperationContext
     }
 
 
+    /**
+     * @return The time and candidates this search may consume, null if unlimited
+     */
+    public SearchBudget getBudget()
+    {
+        return budget;
+    }
+
+
+    /**
+     * @param budget The time and candidates this search may consume
+     */
+    public void setBudget( SearchBudget budget )
+    {
+        this.budget = budget;
+    }
+
+
+    /**
+     * @return The ID of the entry the search restarts after, null to start from the first candidate
+     */
+    public String getResumeAfterId()
+    {
+        return resumeAfterId;
+    }
+
+
+    /**
+     * Restarts the search after a given entry. The candidates are returned in the order of their
+     * IDs, so the ones up to this ID are skipped without being fetched, even if this entry does
+     * not exist anymore. This is only meaningful for a search in a single partition.
+     *
+     * @param resumeAfterId The ID of the entry the search restarts after
+     */
+    public void setResumeAfterId( String resumeAfterId )
+    {
+        this.resumeAfterId = resumeAfterId;
+    }
+
+
     /**
      * @see Object#toString()
      */
@@ -0,0 +1,134 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.metrics;
+
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.directory.server.core.api.OperationEnum;
+import org.apache.directory.server.core.api.interceptor.Interceptor;
+import org.apache.directory.server.core.api.interceptor.context.OperationContext;
+
+
+/**
+ * Records the time each interceptor spends on its own work, in the
+ * <em>interceptor.&lt;name&gt;.&lt;operation&gt;</em> histograms. The time spent in the
+ * interceptors called through <em>next()</em> is not counted in the caller's time :
+ * the operation context accumulates the time of the nested calls, which is subtracted
+ * from the time of the calling interceptor. The <em>FINAL</em> interceptor holds the
+ * time spent in the partitions.
+ * <br>
+ * A timed call is surrounded by {@link #start(OperationContext)} and
+ * {@link #stop(OperationContext, Interceptor, OperationEnum, long)} :
+ * <pre>
+ * long token = timings.start( opContext );
+ *
+ * try
+ * {
+ *     interceptor.add( opContext );
+ * }
+ * finally
+ * {
+ *     timings.stop( opContext, interceptor, OperationEnum.ADD, token );
+ * }
+ * </pre>
+ * The search time only covers the creation of the cursor, not the reading of the entries.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class InterceptorTimings
+{
+    /** The registry holding the histograms */
+    private final MetricsRegistry registry;
+
+    /** The histograms of each interceptor, indexed by the operation ordinal */
+    private final ConcurrentMap<String, LatencyHistogram[]> histograms = new ConcurrentHashMap<>();
+
+
+    /**
+     * Creates a new InterceptorTimings
+     *
+     * @param registry The registry holding the histograms
+     */
+    public InterceptorTimings( MetricsRegistry registry )
+    {
+        this.registry = registry;
+    }
+
+
+    /**
+     * Starts timing an interceptor call
+     *
+     * @param opContext The operation context
+     * @return The token to give to {@link #stop(OperationContext, Interceptor, OperationEnum, long)}
+     */
+    public long start( OperationContext opContext )
+    {
+        // The start time minus the nested time already accumulated : enough to
+        // compute both the time of the nested calls and the new accumulated time
+        return System.nanoTime() - opContext.getNestedNanos();
+    }
+
+
+    /**
+     * Stops timing an interceptor call, records its own time, and adds its whole
+     * time to the nested time of the calling interceptor
+     *
+     * @param opContext The operation context
+     * @param interceptor The called interceptor
+     * @param operation The operation
+     * @param token The token returned by {@link #start(OperationContext)}
+     */
+    public void stop( OperationContext opContext, Interceptor interceptor, OperationEnum operation, long token )
+    {
+        long now = System.nanoTime();
+
+        getHistograms( interceptor.getName() )[operation.ordinal()].record( now - opContext.getNestedNanos() - token );
+        opContext.setNestedNanos( now - token );
+    }
+
+
+    private LatencyHistogram[] getHistograms( String name )
+    {
+        LatencyHistogram[] interceptorHistograms = histograms.get( name );
+
+        if ( interceptorHistograms == null )
+        {
+            OperationEnum[] operations = OperationEnum.values();
+            interceptorHistograms = new LatencyHistogram[operations.length];
+
+            for ( OperationEnum operation : operations )
+            {
+                interceptorHistograms[operation.ordinal()] = registry.getHistogram(
+                    MetricsRegistry.INTERCEPTOR_PREFIX + name + '.' + operation.getMethodName() );
+            }
+
+            LatencyHistogram[] existing = histograms.putIfAbsent( name, interceptorHistograms );
+
+            if ( existing != null )
+            {
+                interceptorHistograms = existing;
+            }
+        }
+
+        return interceptorHistograms;
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.metrics;
+
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * A lock-free histogram of latencies, in nanoseconds. The values are counted in
+ * buckets whose width grows with the value : each power of two is split in 8 buckets,
+ * so a percentile is known within 12.5%, whatever the magnitude of the latencies.
+ * <br>
+ * Recording a value costs a few atomic additions, and never allocates.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LatencyHistogram
+{
+    /** The number of bits of a value used to select its bucket in a power of two */
+    private static final int SUB_BUCKET_BITS = 3;
+
+    /** The number of buckets in a power of two */
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /** The number of buckets, enough for any positive long */
+    static final int BUCKET_COUNT = ( Long.SIZE - SUB_BUCKET_BITS ) * SUB_BUCKET_COUNT;
+
+    /** The number of values recorded in each bucket */
+    private final AtomicLongArray buckets = new AtomicLongArray( BUCKET_COUNT );
+
+    /** The number of recorded values */
+    private final LongAdder count = new LongAdder();
+
+    /** The sum of the recorded values */
+    private final LongAdder sum = new LongAdder();
+
+    /** The highest recorded value */
+    private final AtomicLong max = new AtomicLong();
+
+
+    /**
+     * Records a latency
+     *
+     * @param nanos The latency, in nanoseconds. A negative value is recorded as 0.
+     */
+    public void record( long nanos )
+    {
+        long value = Math.max( nanos, 0L );
+
+        buckets.incrementAndGet( bucketIndex( value ) );
+        count.increment();
+        sum.add( value );
+
+        long currentMax = max.get();
+
+        while ( ( value > currentMax ) && !max.compareAndSet( currentMax, value ) )
+        {
+            currentMax = max.get();
+        }
+    }
+
+
+    /**
+     * @return The number of recorded values
+     */
+    public long getCount()
+    {
+        return count.sum();
+    }
+
+
+    /**
+     * Takes a copy of the histogram. The values recorded while the copy is taken
+     * may be partially included.
+     *
+     * @return The recorded values
+     */
+    public Snapshot snapshot()
+    {
+        long[] counts = new long[BUCKET_COUNT];
+
+        for ( int i = 0; i < BUCKET_COUNT; i++ )
+        {
+            counts[i] = buckets.get( i );
+        }
+
+        return new Snapshot( counts, count.sum(), sum.sum(), max.get() );
+    }
+
+
+    /**
+     * Gets the bucket a value is counted in
+     *
+     * @param value The positive value
+     * @return The bucket index
+     */
+    static int bucketIndex( long value )
+    {
+        if ( value < SUB_BUCKET_COUNT )
+        {
+            return ( int ) value;
+        }
+
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros( value );
+        int subBucket = ( int ) ( value >>> ( exponent - SUB_BUCKET_BITS ) ) & ( SUB_BUCKET_COUNT - 1 );
+
+        return ( exponent - SUB_BUCKET_BITS + 1 ) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+
+    /**
+     * Gets the highest value counted in a bucket
+     *
+     * @param index The bucket index
+     * @return The highest value of this bucket
+     */
+    static long bucketHighestValue( int index )
+    {
+        if ( index < SUB_BUCKET_COUNT )
+        {
+            return index;
+        }
+
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long lowest = ( long ) ( SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT ) << shift;
+
+        return lowest + ( 1L << shift ) - 1L;
+    }
+
+
+    /**
+     * A copy of the values recorded in a histogram
+     */
+    public static final class Snapshot
+    {
+        /** The number of values in each bucket */
+        private final long[] counts;
+
+        /** The number of values */
+        private final long count;
+
+        /** The sum of the values */
+        private final long sum;
+
+        /** The highest value */
+        private final long max;
+
+
+        private Snapshot( long[] counts, long count, long sum, long max )
+        {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+
+        /**
+         * @return The number of values
+         */
+        public long getCount()
+        {
+            return count;
+        }
+
+
+        /**
+         * @return The mean of the values, in nanoseconds, or 0 if there is none
+         */
+        public long getMean()
+        {
+            return ( count == 0L ) ? 0L : sum / count;
+        }
+
+
+        /**
+         * @return The highest value, in nanoseconds
+         */
+        public long getMax()
+        {
+            return max;
+        }
+
+
+        /**
+         * Gets the value below which the given percentage of the values fall
+         *
+         * @param percentile The percentage, between 0 and 100
+         * @return The highest value of the bucket holding this percentile, in nanoseconds,
+         * or 0 if there is no value
+         */
+        public long getValueAtPercentile( double percentile )
+        {
+            long total = 0L;
+
+            for ( long bucketCount : counts )
+            {
+                total += bucketCount;
+            }
+
+            if ( total == 0L )
+            {
+                return 0L;
+            }
+
+            long rank = Math.max( 1L, ( long ) Math.ceil( total * Math.min( percentile, 100d ) / 100d ) );
+            long seen = 0L;
+
+            for ( int i = 0; i < counts.length; i++ )
+            {
+                seen += counts[i];
+
+                if ( seen >= rank )
+                {
+                    return Math.min( bucketHighestValue( i ), max );
+                }
+            }
+
+            return max;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.metrics;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ReflectionException;
+
+
+/**
+ * The JMX view of a {@link MetricsRegistry}. Each gauge is a read-only attribute, and
+ * each histogram is published as the attributes <em>&lt;name&gt;.count</em>,
+ * <em>&lt;name&gt;.meanMicros</em>, <em>&lt;name&gt;.p50Micros</em>, <em>&lt;name&gt;.p99Micros</em>,
+ * <em>&lt;name&gt;.p999Micros</em> and <em>&lt;name&gt;.maxMicros</em>. The attributes are listed
+ * again each time the MBean info is requested, as the metrics of the partitions come and go.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class MetricsMBean implements DynamicMBean
+{
+    /** The statistics published for each histogram */
+    private static final String[] HISTOGRAM_STATISTICS =
+        { "count", "meanMicros", "p50Micros", "p99Micros", "p999Micros", "maxMicros" };
+
+    /** The published registry */
+    private final MetricsRegistry registry;
+
+
+    /**
+     * Creates a new MetricsMBean
+     *
+     * @param registry The published registry
+     */
+    public MetricsMBean( MetricsRegistry registry )
+    {
+        this.registry = registry;
+    }
+
+
+    /**
+     * Gets a statistic of a histogram
+     *
+     * @param snapshot The histogram values
+     * @param statistic The statistic name
+     * @return The statistic value, or null if the statistic is unknown
+     */
+    public static Long getStatistic( LatencyHistogram.Snapshot snapshot, String statistic )
+    {
+        switch ( statistic )
+        {
+            case "count":
+                return snapshot.getCount();
+
+            case "meanMicros":
+                return TimeUnit.NANOSECONDS.toMicros( snapshot.getMean() );
+
+            case "p50Micros":
+                return TimeUnit.NANOSECONDS.toMicros( snapshot.getValueAtPercentile( 50d ) );
+
+            case "p99Micros":
+                return TimeUnit.NANOSECONDS.toMicros( snapshot.getValueAtPercentile( 99d ) );
+
+            case "p999Micros":
+                return TimeUnit.NANOSECONDS.toMicros( snapshot.getValueAtPercentile( 99.9d ) );
+
+            case "maxMicros":
+                return TimeUnit.NANOSECONDS.toMicros( snapshot.getMax() );
+
+            default:
+                return null;
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object getAttribute( String attribute ) throws AttributeNotFoundException
+    {
+        Gauge gauge = registry.getGauges().get( attribute );
+
+        if ( gauge != null )
+        {
+            return gauge.getValue();
+        }
+
+        int pos = attribute.lastIndexOf( '.' );
+
+        if ( pos > 0 )
+        {
+            LatencyHistogram histogram = registry.getHistograms().get( attribute.substring( 0, pos ) );
+
+            if ( histogram != null )
+            {
+                Long value = getStatistic( histogram.snapshot(), attribute.substring( pos + 1 ) );
+
+                if ( value != null )
+                {
+                    return value;
+                }
+            }
+        }
+
+        throw new AttributeNotFoundException( attribute );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AttributeList getAttributes( String[] attributes )
+    {
+        AttributeList list = new AttributeList();
+
+        for ( String attribute : attributes )
+        {
+            try
+            {
+                list.add( new Attribute( attribute, getAttribute( attribute ) ) );
+            }
+            catch ( AttributeNotFoundException anfe )
+            {
+                // The metric has been removed, skip it
+            }
+        }
+
+        return list;
+    }
+
+
+    /**
+     * The metrics are read-only
+     */
+    @Override
+    public void setAttribute( Attribute attribute ) throws AttributeNotFoundException
+    {
+        throw new AttributeNotFoundException( "The metric " + attribute.getName() + " is read-only" );
+    }
+
+
+    /**
+     * The metrics are read-only
+     */
+    @Override
+    public AttributeList setAttributes( AttributeList attributes )
+    {
+        return new AttributeList();
+    }
+
+
+    /**
+     * There is no operation
+     */
+    @Override
+    public Object invoke( String actionName, Object[] params, String[] signature ) throws ReflectionException
+    {
+        throw new ReflectionException( new NoSuchMethodException( actionName ) );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MBeanInfo getMBeanInfo()
+    {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+
+        for ( String name : registry.getGauges().keySet() )
+        {
+            attributes.add( new MBeanAttributeInfo( name, Long.class.getName(), name, true, false, false ) );
+        }
+
+        for ( Map.Entry<String, LatencyHistogram> histogram : registry.getHistograms().entrySet() )
+        {
+            for ( String statistic : HISTOGRAM_STATISTICS )
+            {
+                String name = histogram.getKey() + '.' + statistic;
+                attributes.add( new MBeanAttributeInfo( name, Long.class.getName(), name, true, false, false ) );
+            }
+        }
+
+        return new MBeanInfo( MetricsMBean.class.getName(), "The ApacheDS metrics",
+            attributes.toArray( new MBeanAttributeInfo[attributes.size()] ), null, null, null );
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.metrics;
+
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.benmanes.caffeine.cache.Cache;
+
+
+/**
+ * The metrics of a DirectoryService : latency histograms, and gauges read when the
+ * metrics are published. Each metric has a dotted name, whose first part tells which
+ * component it belongs to :
+ * <ul>
+ *   <li><em>operation.&lt;operation&gt;</em> : the core operations, as processed by the OperationManager</li>
+ *   <li><em>interceptor.&lt;interceptor&gt;.&lt;operation&gt;</em> : the time spent in each
+ *   interceptor, excluding the interceptors it calls, when the monitor is enabled</li>
+ *   <li><em>lock.*</em> : the time spent waiting for the OperationManager lock</li>
+ *   <li><em>partition.&lt;id&gt;.*</em> : the partition caches</li>
+ *   <li><em>dnFactory.*</em> : the Dn cache</li>
+ *   <li><em>ldap.*</em> : the LDAP requests and sessions</li>
+ *   <li><em>replication.*</em> : the replication provider and consumers</li>
+ * </ul>
+ * The components get their histograms once, and record in them without any lookup.
+ * The metrics can be published as a JMX MBean, and under the <em>cn=monitor</em>
+ * partition.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class MetricsRegistry
+{
+    /** The logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( MetricsRegistry.class );
+
+    /** The prefix of the core operations metrics */
+    public static final String OPERATION_PREFIX = "operation.";
+
+    /** The prefix of the interceptors metrics */
+    public static final String INTERCEPTOR_PREFIX = "interceptor.";
+
+    /** The prefix of the OperationManager lock metrics */
+    public static final String LOCK_PREFIX = "lock.";
+
+    /** The prefix of the partitions metrics */
+    public static final String PARTITION_PREFIX = "partition.";
+
+    /** The prefix of the LDAP server metrics */
+    public static final String LDAP_PREFIX = "ldap.";
+
+    /** The prefix of the replication metrics */
+    public static final String REPLICATION_PREFIX = "replication.";
+
+    /** The JMX domain of the metrics MBeans */
+    public static final String JMX_DOMAIN = "org.apache.directory.server";
+
+    /** The histograms, sorted by name */
+    private final NavigableMap<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<>();
+
+    /** The gauges, sorted by name */
+    private final NavigableMap<String, Gauge> gauges = new ConcurrentSkipListMap<>();
+
+    /** The name of the registered MBean, if any */
+    private ObjectName mbeanName;
+
+
+    /**
+     * Gets a histogram, creating it if it does not exist yet
+     *
+     * @param name The histogram name
+     * @return The histogram
+     */
+    public LatencyHistogram getHistogram( String name )
+    {
+        LatencyHistogram histogram = histograms.get( name );
+
+        if ( histogram == null )
+        {
+            LatencyHistogram newHistogram = new LatencyHistogram();
+            histogram = histograms.putIfAbsent( name, newHistogram );
+
+            if ( histogram == null )
+            {
+                histogram = newHistogram;
+            }
+        }
+
+        return histogram;
+    }
+
+
+    /**
+     * Registers a gauge. A gauge already registered with the same name is replaced.
+     *
+     * @param name The gauge name
+     * @param gauge The gauge
+     */
+    public void registerGauge( String name, Gauge gauge )
+    {
+        gauges.put( name, gauge );
+    }
+
+
+    /**
+     * Registers the gauges of a cache built with statistics recording : <em>&lt;name&gt;.hits</em>,
+     * <em>&lt;name&gt;.misses</em> and <em>&lt;name&gt;.size</em>.
+     *
+     * @param name The cache name
+     * @param cache The cache
+     */
+    public void registerCache( String name, final Cache<?, ?> cache )
+    {
+        registerGauge( name + ".hits", new Gauge()
+        {
+            @Override
+            public long getValue()
+            {
+                return cache.stats().hitCount();
+            }
+        } );
+
+        registerGauge( name + ".misses", new Gauge()
+        {
+            @Override
+            public long getValue()
+            {
+                return cache.stats().missCount();
+            }
+        } );
+
+        registerGauge( name + ".size", new Gauge()
+        {
+            @Override
+            public long getValue()
+            {
+                return cache.estimatedSize();
+            }
+        } );
+    }
+
+
+    /**
+     * Removes all the histograms and the gauges whose name starts with a prefix
+     *
+     * @param prefix The prefix
+     */
+    public void unregisterAll( String prefix )
+    {
+        removeAll( histograms, prefix );
+        removeAll( gauges, prefix );
+    }
+
+
+    private static void removeAll( NavigableMap<String, ?> metrics, String prefix )
+    {
+        Iterator<String> names = metrics.tailMap( prefix, true ).keySet().iterator();
+
+        while ( names.hasNext() )
+        {
+            if ( !names.next().startsWith( prefix ) )
+            {
+                break;
+            }
+
+            names.remove();
+        }
+    }
+
+
+    /**
+     * @return The histograms, sorted by name
+     */
+    public NavigableMap<String, LatencyHistogram> getHistograms()
+    {
+        return Collections.unmodifiableNavigableMap( histograms );
+    }
+
+
+    /**
+     * @return The gauges, sorted by name
+     */
+    public NavigableMap<String, Gauge> getGauges()
+    {
+        return Collections.unmodifiableNavigableMap( gauges );
+    }
+
+
+    /**
+     * Registers the metrics as a MBean of the platform MBeanServer, named
+     * <em>org.apache.directory.server:type=Metrics,instance=&lt;instanceId&gt;</em>. A failure
+     * is logged, and does not prevent the server from running.
+     *
+     * @param instanceId The DirectoryService instance identifier
+     */
+    public synchronized void registerMBean( String instanceId )
+    {
+        if ( mbeanName != null )
+        {
+            return;
+        }
+
+        try
+        {
+            ObjectName name = new ObjectName( JMX_DOMAIN + ":type=Metrics,instance="
+                + ObjectName.quote( String.valueOf( instanceId ) ) );
+            ManagementFactory.getPlatformMBeanServer().registerMBean( new MetricsMBean( this ), name );
+            mbeanName = name;
+        }
+        catch ( JMException jme )
+        {
+            LOG.warn( "Cannot register the metrics MBean of the instance {}", instanceId, jme );
+        }
+    }
+
+
+    /**
+     * Unregisters the MBean, if it has been registered
+     */
+    public synchronized void unregisterMBean()
+    {
+        if ( mbeanName == null )
+        {
+            return;
+        }
+
+        try
+        {
+            MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+
+            if ( mbeanServer.isRegistered( mbeanName ) )
+            {
+                mbeanServer.unregisterMBean( mbeanName );
+            }
+        }
+        catch ( JMException jme )
+        {
+            LOG.warn( "Cannot unregister the metrics MBean {}", mbeanName, jme );
+        }
+
+        mbeanName = null;
+    }
+
+
+    /**
+     * @return The name of the registered MBean, or null if it's not registered
+     */
+    public synchronized ObjectName getMBeanName()
+    {
+        return mbeanName;
+    }
+}
@@ -20,6 +20,8 @@
 package org.apache.directory.server.core.api.partition;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * The Write Transaction interface
@@ -28,11 +30,119 @@ import java.io.IOException;
  */
 public class PartitionWriteTxn implements PartitionTxn
 {
+    /** The actions to run once the transaction has been committed */
+    private List<Runnable> commitActions;
+
+    /** The actions to run once the transaction has been aborted */
+    private List<Runnable> abortActions;
+
+
+    /**
+     * Registers an action to run once the changes have been committed, like the update of
+     * some in-memory state reflecting the content of the partition.
+     *
+     * @param action The action to run
+     */
+    public synchronized void onCommit( Runnable action )
+    {
+        if ( commitActions == null )
+        {
+            commitActions = new ArrayList<>();
+        }
+
+        commitActions.add( action );
+    }
+
+
+    /**
+     * Registers an action to run if the changes are aborted, like the invalidation of
+     * some in-memory state already updated with the changes.
+     *
+     * @param action The action to run
+     */
+    public synchronized void onAbort( Runnable action )
+    {
+        if ( abortActions == null )
+        {
+            abortActions = new ArrayList<>();
+        }
+
+        abortActions.add( action );
+    }
+
+
+    /**
+     * Runs the actions registered with {@link #onCommit(Runnable)}. Must be called by the
+     * partitions once the changes have been committed.
+     */
+    protected void committed()
+    {
+        runActions( true );
+    }
+
+
+    /**
+     * Runs the actions registered with {@link #onAbort(Runnable)}. Must be called by the
+     * partitions once the changes have been aborted.
+     */
+    protected void aborted()
+    {
+        runActions( false );
+    }
+
+
+    private void runActions( boolean commit )
+    {
+        List<Runnable> actions;
+
+        synchronized ( this )
+        {
+            actions = commit ? commitActions : abortActions;
+            commitActions = null;
+            abortActions = null;
+        }
+
+        if ( actions != null )
+        {
+            for ( Runnable action : actions )
+            {
+                action.run();
+            }
+        }
+    }
+
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void commit() throws IOException
+    {
+        committed();
+    }
+
+
+    /**
+     * Commit the changes, without waiting for them to be written on disk when the partition
+     * is able to write the changes of concurrent transactions at once. The caller must then
+     * call {@link #awaitDurability()}, once it has released the locks preventing the other
+     * transactions from being committed. By default, this is a plain commit.
+     *
+     * @throws IOException If the commit failed
+     */
+    public void commitNoWait() throws IOException
+    {
+        commit();
+    }
+
+
+    /**
+     * Wait until the changes committed by {@link #commitNoWait()} have been written on disk.
+     * Does nothing by default.
+     *
+     * @throws IOException If the changes can't be written on disk
+     */
+    public void awaitDurability() throws IOException
     {
     }
 
@@ -43,6 +153,7 @@ public class PartitionWriteTxn implements PartitionTxn
     @Override
     public void abort() throws IOException
     {
+        aborted();
     }
 
 
@@ -20,12 +20,18 @@
 package org.apache.directory.server.core.api.subtree;
 
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
 import org.apache.directory.api.ldap.model.subtree.Subentry;
 
 
@@ -33,7 +39,10 @@ import org.apache.directory.api.ldap.model.subtree.Subentry;
  * A cache for subtree specifications. It associates a Subentry with a Dn,
  * representing its position in the DIT.<br>
  * This cache has a size limit set to 1000 at the moment. We should add a configuration
- * parameter to manage its size.
+ * parameter to manage its size.<br>
+ * The cache also holds, for each collectiveAttributeSubentry, the collective attributes
+ * it contains, so that they can be injected into the returned entries without having to
+ * lookup the subentry.
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -51,6 +60,9 @@ public class SubentryCache implements Iterable<Dn>
     /** The Subentry cache */
     private final Map<Dn, Subentry> cache;
 
+    /** The collective attributes overlay, per collectiveAttributeSubentry */
+    private final Map<Dn, List<Attribute>> collectiveAttributes;
+
 
     /**
      * Creates a new instance of SubentryCache with a default maximum size.
@@ -58,6 +70,7 @@ public class SubentryCache implements Iterable<Dn>
     public SubentryCache()
     {
         cache = new ConcurrentHashMap<>();
+        collectiveAttributes = new ConcurrentHashMap<>();
         cacheSize = new AtomicInteger( 0 );
     }
 
@@ -70,6 +83,7 @@ public class SubentryCache implements Iterable<Dn>
     public SubentryCache( int maxSize )
     {
         cache = new ConcurrentHashMap<>();
+        collectiveAttributes = new ConcurrentHashMap<>();
         cacheSize = new AtomicInteger( 0 );
         cacheMaxSize = maxSize;
     }
@@ -97,6 +111,7 @@ public class SubentryCache implements Iterable<Dn>
     public final Subentry removeSubentry( Dn dn )
     {
         Subentry oldSubentry = cache.remove( dn );
+        collectiveAttributes.remove( dn );
 
         if ( oldSubentry != null )
         {
@@ -143,6 +158,56 @@ public class SubentryCache implements Iterable<Dn>
     }
 
 
+    /**
+     * Retrieve the collective attributes stored in a collectiveAttributeSubentry. If the
+     * Dn is not associated with a cached collectiveAttributeSubentry, null will be returned.
+     *
+     * @param dn The collectiveAttributeSubentry Dn
+     * @return The unmodifiable list of collective attributes, or null
+     */
+    public List<Attribute> getCollectiveAttributes( Dn dn )
+    {
+        return collectiveAttributes.get( dn );
+    }
+
+
+    /**
+     * Stores the collective attributes contained in a subentry. Only the collective
+     * attributes are kept, as copies, so that the stored list is not impacted by
+     * any further modification done on the subentry.
+     *
+     * @param dn The subentry Dn
+     * @param subentry The subentry to extract the collective attributes from
+     */
+    public void setCollectiveAttributes( Dn dn, Entry subentry )
+    {
+        List<Attribute> attributes = new ArrayList<>();
+
+        for ( Attribute attribute : subentry )
+        {
+            AttributeType attributeType = attribute.getAttributeType();
+
+            if ( ( attributeType != null ) && attributeType.isCollective() )
+            {
+                attributes.add( attribute.clone() );
+            }
+        }
+
+        collectiveAttributes.put( dn, Collections.unmodifiableList( attributes ) );
+    }
+
+
+    /**
+     * Remove the collective attributes associated with a subentry
+     *
+     * @param dn The subentry Dn
+     */
+    public void removeCollectiveAttributes( Dn dn )
+    {
+        collectiveAttributes.remove( dn );
+    }
+
+
     /**
      * @return An Iterator over the Subentry's DNs 
      */
@@ -67,6 +67,7 @@ import org.apache.directory.server.core.api.interceptor.context.MoveAndRenameOpe
 import org.apache.directory.server.core.api.interceptor.context.MoveOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.OperationContext;
 import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.SearchBudget;
 import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.UnbindOperationContext;
 import org.apache.directory.server.core.api.partition.Partition;
@@ -932,8 +933,29 @@ public class MockCoreSession implements CoreSession
 
 
     public Cursor<Entry> search( SearchRequest searchRequest ) throws LdapException
+    {
+        return search( searchRequest, null );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Cursor<Entry> search( SearchRequest searchRequest, SearchBudget budget ) throws LdapException
+    {
+        return search( searchRequest, budget, null );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Cursor<Entry> search( SearchRequest searchRequest, SearchBudget budget, String resumeAfterId )
+        throws LdapException
     {
         SearchOperationContext searchContext = new SearchOperationContext( this, searchRequest );
+        searchContext.setBudget( budget );
+        searchContext.setResumeAfterId( resumeAfterId );
         OperationManager operationManager = directoryService.getOperationManager();
         EntryFilteringCursor cursor = operationManager.search( searchContext );
         searchRequest.getResultResponse().addAllControls( searchContext.getResponseControls() );
@@ -45,6 +45,8 @@ import org.apache.directory.server.core.api.changelog.ChangeLog;
 import org.apache.directory.server.core.api.event.EventService;
 import org.apache.directory.server.core.api.interceptor.Interceptor;
 import org.apache.directory.server.core.api.journal.Journal;
+import org.apache.directory.server.core.api.metrics.InterceptorTimings;
+import org.apache.directory.server.core.api.metrics.MetricsRegistry;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionNexus;
 import org.apache.directory.server.core.api.schema.SchemaPartition;
@@ -636,4 +638,31 @@ public class MockDirectoryService implements DirectoryService
     {
         // TODO Auto-generated method stub
     }
+
+
+    @Override
+    public MetricsRegistry getMetricsRegistry()
+    {
+        return null;
+    }
+
+
+    @Override
+    public boolean isMonitorEnabled()
+    {
+        return false;
+    }
+
+
+    @Override
+    public void setMonitorEnabled( boolean monitorEnabled )
+    {
+    }
+
+
+    @Override
+    public InterceptorTimings getInterceptorTimings()
+    {
+        return null;
+    }
 }
@@ -244,6 +244,19 @@ public class MockOperation implements OperationContext
     }
 
 
+    @Override
+    public long getNestedNanos()
+    {
+        return 0L;
+    }
+
+
+    @Override
+    public void setNestedNanos( long nestedNanos )
+    {
+    }
+
+
     @Override
     public PartitionTxn getTransaction()
     {
@@ -0,0 +1,155 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.entry;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Unit tests class CopyOnWriteEntry : the original entry must never be modified.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class CopyOnWriteEntryTest
+{
+    private Entry original;
+
+
+    @BeforeEach
+    public void init() throws Exception
+    {
+        original = new DefaultEntry( "cn=test,dc=example,dc=com",
+            "objectClass: top",
+            "objectClass: person",
+            "cn: test",
+            "sn: test",
+            "description: a",
+            "description: b" );
+    }
+
+
+    @Test
+    public void testSharedUntilModified() throws Exception
+    {
+        CopyOnWriteEntry entry = new CopyOnWriteEntry( original );
+
+        // Nothing is copied upfront
+        assertSame( original.get( "description" ), entry.getSharedEntry().get( "description" ) );
+        assertTrue( entry.contains( "description", "a" ) );
+        assertEquals( 4, entry.size() );
+
+        // Removing a value copies the attribute
+        entry.remove( "description", "a" );
+
+        assertFalse( entry.contains( "description", "a" ) );
+        assertTrue( original.contains( "description", "a", "b" ) );
+        assertNotSame( original.get( "description" ), entry.getSharedEntry().get( "description" ) );
+
+        // The other attributes are still shared
+        assertSame( original.get( "sn" ), entry.getSharedEntry().get( "sn" ) );
+    }
+
+
+    @Test
+    public void testModifyThroughGet() throws Exception
+    {
+        CopyOnWriteEntry entry = new CopyOnWriteEntry( original );
+
+        Attribute description = entry.get( "description" );
+        description.clear();
+        description.add( "c" );
+
+        assertTrue( entry.contains( "description", "c" ) );
+        assertTrue( original.contains( "description", "a", "b" ) );
+        assertFalse( original.contains( "description", "c" ) );
+
+        // Modifying the attribute again doesn't copy it twice
+        assertSame( description, entry.get( "description" ) );
+    }
+
+
+    @Test
+    public void testAddValues() throws Exception
+    {
+        CopyOnWriteEntry entry = new CopyOnWriteEntry( original );
+
+        entry.add( "description", "c" );
+        entry.add( "mail", "test@example.com" );
+
+        assertTrue( entry.contains( "description", "a", "b", "c" ) );
+        assertTrue( entry.containsAttribute( "mail" ) );
+        assertEquals( 2, original.get( "description" ).size() );
+        assertFalse( original.containsAttribute( "mail" ) );
+    }
+
+
+    @Test
+    public void testStructuralChanges() throws Exception
+    {
+        CopyOnWriteEntry entry = new CopyOnWriteEntry( original );
+
+        entry.removeAttributes( "sn" );
+        entry.put( "cn", "other" );
+        entry.setDn( "cn=other,dc=example,dc=com" );
+
+        assertFalse( entry.containsAttribute( "sn" ) );
+        assertTrue( entry.contains( "cn", "other" ) );
+        assertTrue( original.containsAttribute( "sn" ) );
+        assertTrue( original.contains( "cn", "test" ) );
+        assertEquals( "cn=test,dc=example,dc=com", original.getDn().getName() );
+
+        // The replaced attribute is handed back as a copy
+        Attribute previous = entry.put( "description", "c" );
+        previous.clear();
+
+        assertTrue( original.contains( "description", "a", "b" ) );
+    }
+
+
+    @Test
+    public void testIterate() throws Exception
+    {
+        CopyOnWriteEntry entry = new CopyOnWriteEntry( original );
+
+        for ( Attribute attribute : entry )
+        {
+            attribute.clear();
+        }
+
+        assertEquals( 2, original.get( "objectClass" ).size() );
+        assertEquals( 2, original.get( "description" ).size() );
+        assertEquals( 0, entry.get( "description" ).size() );
+
+        // The cloned entry can be modified too
+        entry.getClonedEntry().get( "cn" ).add( "test2" );
+        assertFalse( original.contains( "cn", "test2" ) );
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.interceptor.context;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.apache.directory.api.ldap.model.exception.LdapAdminLimitExceededException;
+import org.apache.directory.api.ldap.model.exception.LdapTimeLimitExceededException;
+import org.apache.directory.api.ldap.model.exception.OperationAbandonedException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+
+/**
+ * Tests the SearchBudget.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SearchBudgetTest
+{
+    @Test
+    public void testCandidateLimit() throws Exception
+    {
+        SearchBudget.Statistics statistics = new SearchBudget.Statistics();
+        final SearchBudget budget = new SearchBudget( SearchBudget.NO_LIMIT, 1000L, statistics );
+
+        for ( int i = 0; i < 1000; i++ )
+        {
+            budget.examine();
+        }
+
+        assertThrows( LdapAdminLimitExceededException.class, new Executable()
+        {
+            @Override
+            public void execute() throws Throwable
+            {
+                budget.examine();
+            }
+        } );
+
+        assertEquals( 1L, statistics.getNbCandidateLimitExceeded() );
+
+        // A restarted budget can examine new candidates
+        budget.restart( SearchBudget.NO_LIMIT );
+        budget.examine();
+        assertEquals( 1L, budget.getExamined() );
+    }
+
+
+    @Test
+    public void testTimeLimit() throws Exception
+    {
+        SearchBudget.Statistics statistics = new SearchBudget.Statistics();
+        final SearchBudget budget = new SearchBudget( 1L, SearchBudget.NO_LIMIT, statistics );
+
+        Thread.sleep( 10L );
+
+        // The time is only checked every CHECK_INTERVAL candidates
+        for ( int i = 0; i < SearchBudget.CHECK_INTERVAL - 1; i++ )
+        {
+            budget.examine();
+        }
+
+        assertThrows( LdapTimeLimitExceededException.class, new Executable()
+        {
+            @Override
+            public void execute() throws Throwable
+            {
+                budget.examine();
+            }
+        } );
+
+        assertEquals( 1L, statistics.getNbTimeLimitExceeded() );
+    }
+
+
+    @Test
+    public void testAbandon() throws Exception
+    {
+        SearchBudget.Statistics statistics = new SearchBudget.Statistics();
+        final SearchBudget budget = new SearchBudget( SearchBudget.NO_LIMIT, SearchBudget.NO_LIMIT, statistics );
+
+        // The abandon comes from another thread
+        Thread thread = new Thread( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                budget.abandon();
+            }
+        } );
+
+        thread.start();
+        thread.join();
+
+        assertThrows( OperationAbandonedException.class, new Executable()
+        {
+            @Override
+            public void execute() throws Throwable
+            {
+                for ( int i = 0; i < SearchBudget.CHECK_INTERVAL; i++ )
+                {
+                    budget.tick();
+                }
+            }
+        } );
+
+        assertEquals( 1L, statistics.getNbAbandoned() );
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.metrics;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.server.core.api.OperationEnum;
+import org.apache.directory.server.core.api.interceptor.BaseInterceptor;
+import org.apache.directory.server.core.api.interceptor.Interceptor;
+import org.apache.directory.server.core.api.interceptor.context.LookupOperationContext;
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Tests the InterceptorTimings.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class InterceptorTimingsTest
+{
+    @Test
+    public void testNestedCallsExcluded() throws Exception
+    {
+        MetricsRegistry registry = new MetricsRegistry();
+        InterceptorTimings timings = new InterceptorTimings( registry );
+        LookupOperationContext lookupContext = new LookupOperationContext( null );
+        Interceptor outer = new BaseInterceptor( "outer" )
+        {
+        };
+        Interceptor inner = new BaseInterceptor( "inner" )
+        {
+        };
+
+        long outerToken = timings.start( lookupContext );
+        Thread.sleep( 5L );
+
+        // The outer interceptor calls the inner one
+        long innerToken = timings.start( lookupContext );
+        Thread.sleep( 200L );
+        timings.stop( lookupContext, inner, OperationEnum.LOOKUP, innerToken );
+
+        Thread.sleep( 5L );
+        timings.stop( lookupContext, outer, OperationEnum.LOOKUP, outerToken );
+
+        LatencyHistogram.Snapshot outerTime = registry.getHistograms().get( "interceptor.outer.lookup" ).snapshot();
+        LatencyHistogram.Snapshot innerTime = registry.getHistograms().get( "interceptor.inner.lookup" ).snapshot();
+
+        assertEquals( 1L, outerTime.getCount() );
+        assertEquals( 1L, innerTime.getCount() );
+        assertTrue( innerTime.getMax() >= TimeUnit.MILLISECONDS.toNanos( 200L ) );
+        assertTrue( outerTime.getMax() >= TimeUnit.MILLISECONDS.toNanos( 10L ) );
+        assertTrue( outerTime.getMax() < TimeUnit.MILLISECONDS.toNanos( 200L ) );
+
+        // The whole time of the outer call is accumulated for its caller
+        assertTrue( lookupContext.getNestedNanos() >= TimeUnit.MILLISECONDS.toNanos( 210L ) );
+    }
+
+
+    @Test
+    public void testHistogramsRegisteredPerOperation()
+    {
+        MetricsRegistry registry = new MetricsRegistry();
+        InterceptorTimings timings = new InterceptorTimings( registry );
+        LookupOperationContext lookupContext = new LookupOperationContext( null );
+        Interceptor interceptor = new BaseInterceptor( "test" )
+        {
+        };
+
+        timings.stop( lookupContext, interceptor, OperationEnum.ADD, timings.start( lookupContext ) );
+        timings.stop( lookupContext, interceptor, OperationEnum.ADD, timings.start( lookupContext ) );
+
+        assertEquals( OperationEnum.values().length, registry.getHistograms().size() );
+        assertEquals( 2L, registry.getHistograms().get( "interceptor.test.add" ).getCount() );
+        assertEquals( 0L, registry.getHistograms().get( "interceptor.test.search" ).getCount() );
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.metrics;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Tests the LatencyHistogram.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LatencyHistogramTest
+{
+    @Test
+    public void testBuckets()
+    {
+        int previousIndex = 0;
+
+        for ( long value = 0L; value < 1000000L; value++ )
+        {
+            int index = LatencyHistogram.bucketIndex( value );
+            long highest = LatencyHistogram.bucketHighestValue( index );
+
+            // The buckets are sorted, and hold the value within 12.5%
+            assertTrue( index >= previousIndex );
+            assertTrue( highest >= value );
+            assertTrue( highest - value <= value / 8L );
+
+            if ( index > 0 )
+            {
+                assertTrue( LatencyHistogram.bucketHighestValue( index - 1 ) < value );
+            }
+
+            previousIndex = index;
+        }
+
+        assertEquals( LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketIndex( Long.MAX_VALUE ) );
+        assertEquals( Long.MAX_VALUE, LatencyHistogram.bucketHighestValue( LatencyHistogram.BUCKET_COUNT - 1 ) );
+    }
+
+
+    @Test
+    public void testEmpty()
+    {
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+
+        assertEquals( 0L, snapshot.getCount() );
+        assertEquals( 0L, snapshot.getMean() );
+        assertEquals( 0L, snapshot.getMax() );
+        assertEquals( 0L, snapshot.getValueAtPercentile( 99d ) );
+    }
+
+
+    @Test
+    public void testPercentiles()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        // 1 to 1000 microseconds
+        for ( long i = 1L; i <= 1000L; i++ )
+        {
+            histogram.record( i * 1000L );
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals( 1000L, snapshot.getCount() );
+        assertEquals( 500500L, snapshot.getMean() );
+        assertEquals( 1000000L, snapshot.getMax() );
+
+        assertWithin( 500000L, snapshot.getValueAtPercentile( 50d ) );
+        assertWithin( 990000L, snapshot.getValueAtPercentile( 99d ) );
+        assertEquals( 1000000L, snapshot.getValueAtPercentile( 99.9d ) );
+        assertEquals( 1000000L, snapshot.getValueAtPercentile( 100d ) );
+        assertWithin( 1000L, snapshot.getValueAtPercentile( 0d ) );
+    }
+
+
+    @Test
+    public void testNegativeValue()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record( -10L );
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals( 1L, snapshot.getCount() );
+        assertEquals( 0L, snapshot.getMax() );
+        assertEquals( 0L, snapshot.getValueAtPercentile( 50d ) );
+    }
+
+
+    @Test
+    public void testConcurrentRecords() throws Exception
+    {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+
+        for ( int i = 0; i < threads.length; i++ )
+        {
+            final long value = ( i + 1 ) * 100L;
+
+            threads[i] = new Thread( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    for ( int j = 0; j < 10000; j++ )
+                    {
+                        histogram.record( value );
+                    }
+                }
+            } );
+
+            threads[i].start();
+        }
+
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals( 40000L, snapshot.getCount() );
+        assertEquals( 250L, snapshot.getMean() );
+        assertEquals( 400L, snapshot.getMax() );
+    }
+
+
+    /**
+     * Checks that a percentile is the expected value, within the 12.5% precision of the histogram
+     */
+    private static void assertWithin( long expected, long actual )
+    {
+        assertTrue( actual >= expected, actual + " < " + expected );
+        assertTrue( actual <= expected + expected / 8L, actual + " > " + expected + " + 12.5%" );
+    }
+}
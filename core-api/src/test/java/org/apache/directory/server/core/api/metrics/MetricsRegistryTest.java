@@ -0,0 +1,172 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.metrics;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.AttributeNotFoundException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+
+/**
+ * Tests the MetricsRegistry and its MBean.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class MetricsRegistryTest
+{
+    /**
+     * Creates a gauge returning a constant value
+     */
+    private static Gauge constant( final long value )
+    {
+        return new Gauge()
+        {
+            @Override
+            public long getValue()
+            {
+                return value;
+            }
+        };
+    }
+
+
+    @Test
+    public void testGetHistogram()
+    {
+        MetricsRegistry registry = new MetricsRegistry();
+
+        LatencyHistogram histogram = registry.getHistogram( "operation.add" );
+
+        assertSame( histogram, registry.getHistogram( "operation.add" ) );
+        assertEquals( 1, registry.getHistograms().size() );
+    }
+
+
+    @Test
+    public void testUnregisterAll()
+    {
+        MetricsRegistry registry = new MetricsRegistry();
+
+        registry.getHistogram( "operation.add" );
+        registry.getHistogram( "partition.example.lookup" );
+        registry.registerGauge( "partition.example.dnCache.size", constant( 1L ) );
+        registry.registerGauge( "partition.examples.dnCache.size", constant( 2L ) );
+        registry.registerGauge( "partition.system.dnCache.size", constant( 3L ) );
+
+        registry.unregisterAll( "partition.example." );
+
+        assertTrue( registry.getHistograms().containsKey( "operation.add" ) );
+        assertFalse( registry.getHistograms().containsKey( "partition.example.lookup" ) );
+        assertFalse( registry.getGauges().containsKey( "partition.example.dnCache.size" ) );
+        assertTrue( registry.getGauges().containsKey( "partition.examples.dnCache.size" ) );
+        assertTrue( registry.getGauges().containsKey( "partition.system.dnCache.size" ) );
+    }
+
+
+    @Test
+    public void testRegisterCache()
+    {
+        MetricsRegistry registry = new MetricsRegistry();
+        Cache<String, String> cache = Caffeine.newBuilder().maximumSize( 10L ).recordStats().build();
+        registry.registerCache( "partition.example.dnCache", cache );
+
+        assertNull( cache.getIfPresent( "a" ) );
+        cache.put( "a", "A" );
+        assertNotNull( cache.getIfPresent( "a" ) );
+        assertNotNull( cache.getIfPresent( "a" ) );
+
+        assertEquals( 2L, registry.getGauges().get( "partition.example.dnCache.hits" ).getValue() );
+        assertEquals( 1L, registry.getGauges().get( "partition.example.dnCache.misses" ).getValue() );
+        assertEquals( 1L, registry.getGauges().get( "partition.example.dnCache.size" ).getValue() );
+    }
+
+
+    @Test
+    public void testMBeanAttributes() throws Exception
+    {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.registerGauge( "ldap.sessions", constant( 5L ) );
+        LatencyHistogram histogram = registry.getHistogram( "operation.search" );
+        histogram.record( 2000L );
+        histogram.record( 4000L );
+
+        final MetricsMBean mbean = new MetricsMBean( registry );
+
+        assertEquals( 5L, mbean.getAttribute( "ldap.sessions" ) );
+        assertEquals( 2L, mbean.getAttribute( "operation.search.count" ) );
+        assertEquals( 3L, mbean.getAttribute( "operation.search.meanMicros" ) );
+        assertEquals( 4L, mbean.getAttribute( "operation.search.maxMicros" ) );
+
+        // One attribute per gauge, and six per histogram
+        assertEquals( 7, mbean.getMBeanInfo().getAttributes().length );
+
+        assertThrows( AttributeNotFoundException.class, new Executable()
+        {
+            @Override
+            public void execute() throws Throwable
+            {
+                mbean.getAttribute( "operation.search.unknown" );
+            }
+        } );
+    }
+
+
+    @Test
+    public void testRegisterMBean() throws Exception
+    {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.registerGauge( "ldap.sessions", constant( 5L ) );
+        MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+
+        registry.registerMBean( "MetricsRegistryTest" );
+
+        try
+        {
+            ObjectName name = registry.getMBeanName();
+
+            assertNotNull( name );
+            assertTrue( mbeanServer.isRegistered( name ) );
+            assertEquals( 5L, mbeanServer.getAttribute( name, "ldap.sessions" ) );
+        }
+        finally
+        {
+            registry.unregisterMBean();
+        }
+
+        assertNull( registry.getMBeanName() );
+    }
+}
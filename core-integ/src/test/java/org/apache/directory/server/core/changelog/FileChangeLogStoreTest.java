@@ -0,0 +1,417 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.changelog;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.constants.AuthenticationLevel;
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.filter.FilterParser;
+import org.apache.directory.api.ldap.model.ldif.ChangeType;
+import org.apache.directory.api.ldap.model.ldif.LdifEntry;
+import org.apache.directory.api.ldap.model.ldif.LdifRevertor;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.extractor.SchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.extractor.impl.DefaultSchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.loader.LdifSchemaLoader;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.api.util.exception.Exceptions;
+import org.apache.directory.server.core.DefaultDirectoryService;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.InstanceLayout;
+import org.apache.directory.server.core.api.LdapPrincipal;
+import org.apache.directory.server.core.api.changelog.ChangeLogEvent;
+import org.apache.directory.server.core.api.changelog.ChangeLogSearchEngine;
+import org.apache.directory.server.core.api.changelog.RevisionOrder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Tests the FileChangeLogStore : the events must survive a restart of the store, and
+ * the indexes used by its search engine must be rebuilt from the segment files.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class FileChangeLogStoreTest
+{
+    private static DirectoryService directoryService;
+
+    private static SchemaManager schemaManager;
+
+    private static LdapPrincipal admin;
+
+    private static LdapPrincipal anonymous;
+
+    private FileChangeLogStore store;
+
+
+    @BeforeClass
+    public static void setUp() throws Exception
+    {
+        // setup working directory
+        directoryService = new DefaultDirectoryService();
+        String tmpDirPath = System.getProperty( "workingDirectory", System.getProperty( "java.io.tmpdir" ) );
+        File workingDirectory = new File( tmpDirPath + "/server-work-"
+            + FileChangeLogStoreTest.class.getSimpleName() );
+        InstanceLayout instanceLayout = new InstanceLayout( workingDirectory );
+        directoryService.setInstanceLayout( instanceLayout );
+
+        if ( !workingDirectory.exists() )
+        {
+            workingDirectory.mkdirs();
+        }
+
+        directoryService.getInstanceLayout().setPartitionsDir( workingDirectory );
+
+        // --------------------------------------------------------------------
+        // Load the bootstrap schemas to start up the schema partition
+        // --------------------------------------------------------------------
+
+        File schemaRepository = new File( workingDirectory, "schema" );
+        SchemaLdifExtractor extractor = new DefaultSchemaLdifExtractor( workingDirectory );
+        extractor.extractOrCopy( true );
+        LdifSchemaLoader loader = new LdifSchemaLoader( schemaRepository );
+        schemaManager = new DefaultSchemaManager( loader );
+
+        boolean loaded = schemaManager.loadAllEnabled();
+
+        if ( !loaded )
+        {
+            fail( "Schema load failed : " + Exceptions.printErrors( schemaManager.getErrors() ) );
+        }
+
+        directoryService.setSchemaManager( schemaManager );
+
+        admin = new LdapPrincipal( schemaManager, new Dn( schemaManager, "uid=admin,ou=system" ),
+            AuthenticationLevel.SIMPLE, Strings.getBytesUtf8( "secret" ) );
+        anonymous = new LdapPrincipal( schemaManager );
+    }
+
+
+    @Before
+    public void openStore() throws Exception
+    {
+        // Start each test with an empty changelog
+        File[] files = getChangeLogDirectory().listFiles();
+
+        if ( files != null )
+        {
+            for ( File file : files )
+            {
+                file.delete();
+            }
+        }
+
+        store = new FileChangeLogStore();
+        store.init( directoryService );
+    }
+
+
+    @After
+    public void closeStore() throws Exception
+    {
+        store.destroy();
+    }
+
+
+    private static File getChangeLogDirectory()
+    {
+        return new File( directoryService.getInstanceLayout().getLogDirectory(), FileChangeLogStore.CHANGELOG_DIR );
+    }
+
+
+    /**
+     * Closes the store, and opens a new one on the same files
+     */
+    private void reopenStore() throws Exception
+    {
+        store.destroy();
+        store = new FileChangeLogStore();
+        store.init( directoryService );
+    }
+
+
+    private ChangeLogEvent logAdd( LdapPrincipal principal, String dn ) throws Exception
+    {
+        LdifEntry forward = new LdifEntry();
+        forward.setDn( dn );
+        forward.setChangeType( ChangeType.Add );
+        forward.putAttribute( "objectClass", "organizationalUnit" );
+        forward.putAttribute( "ou", new Dn( dn ).getRdn().getValue() );
+
+        LdifEntry reverse = LdifRevertor.reverseAdd( forward.getDn() );
+
+        return store.log( principal, forward, reverse );
+    }
+
+
+    private ChangeLogEvent logDelete( LdapPrincipal principal, String dn ) throws Exception
+    {
+        LdifEntry forward = new LdifEntry();
+        forward.setDn( dn );
+        forward.setChangeType( ChangeType.Delete );
+
+        LdifEntry reverse = new LdifEntry();
+        reverse.setDn( dn );
+        reverse.setChangeType( ChangeType.Add );
+        reverse.putAttribute( "objectClass", "organizationalUnit" );
+        reverse.putAttribute( "ou", new Dn( dn ).getRdn().getValue() );
+
+        return store.log( principal, forward, reverse );
+    }
+
+
+    private List<Long> getRevisions( Cursor<ChangeLogEvent> cursor ) throws Exception
+    {
+        List<Long> revisions = new ArrayList<>();
+
+        try
+        {
+            while ( cursor.next() )
+            {
+                revisions.add( cursor.get().getRevision() );
+            }
+        }
+        finally
+        {
+            cursor.close();
+        }
+
+        return revisions;
+    }
+
+
+    private List<Long> revisions( long... values )
+    {
+        List<Long> revisions = new ArrayList<>();
+
+        for ( long value : values )
+        {
+            revisions.add( value );
+        }
+
+        return revisions;
+    }
+
+
+    /**
+     * Logs the same set of changes in every test
+     */
+    private void logChanges() throws Exception
+    {
+        logAdd( admin, "ou=people,ou=system" );
+        logAdd( admin, "ou=alice,ou=people,ou=system" );
+        logAdd( anonymous, "ou=groups,ou=system" );
+        logAdd( admin, "ou=bob,ou=people,ou=system" );
+        logDelete( anonymous, "ou=alice,ou=people,ou=system" );
+        logAdd( admin, "ou=carol,ou=staff,ou=people,ou=system" );
+    }
+
+
+    @Test
+    public void testLogLookup() throws Exception
+    {
+        assertEquals( 0, store.getCurrentRevision() );
+
+        logChanges();
+        assertEquals( 6, store.getCurrentRevision() );
+        assertEquals( 1, store.getFirstRevision() );
+
+        ChangeLogEvent event = store.lookup( 2 );
+        assertNotNull( event );
+        assertEquals( 2, event.getRevision() );
+        assertEquals( ChangeType.Add, event.getForwardLdif().getChangeType() );
+        assertEquals( new Dn( "ou=alice,ou=people,ou=system" ), event.getForwardLdif().getDn() );
+        assertEquals( admin.getDn(), event.getCommitterPrincipal().getDn() );
+
+        assertEquals( revisions( 1, 2, 3, 4, 5, 6 ), getRevisions( store.find() ) );
+        assertEquals( revisions( 1, 2, 3 ), getRevisions( store.findBefore( 3 ) ) );
+        assertEquals( revisions( 4, 5, 6 ), getRevisions( store.findAfter( 3 ) ) );
+        assertEquals( revisions( 2, 3, 4 ), getRevisions( store.find( 2, 4 ) ) );
+    }
+
+
+    @Test
+    public void testCursorPositioning() throws Exception
+    {
+        logChanges();
+
+        Cursor<ChangeLogEvent> cursor = store.getChangeLogSearchEngine().find( RevisionOrder.DescendingOrder );
+
+        try
+        {
+            assertTrue( cursor.last() );
+            assertEquals( 1, cursor.get().getRevision() );
+            assertTrue( cursor.first() );
+            assertEquals( 6, cursor.get().getRevision() );
+
+            cursor.after( store.lookup( 4 ) );
+            assertTrue( cursor.next() );
+            assertEquals( 3, cursor.get().getRevision() );
+
+            cursor.before( store.lookup( 4 ) );
+            assertTrue( cursor.previous() );
+            assertEquals( 5, cursor.get().getRevision() );
+
+            cursor.afterLast();
+            assertFalse( cursor.next() );
+            assertTrue( cursor.isAfterLast() );
+        }
+        finally
+        {
+            cursor.close();
+        }
+    }
+
+
+    @Test
+    public void testSearchEngine() throws Exception
+    {
+        logChanges();
+
+        ChangeLogSearchEngine engine = store.getChangeLogSearchEngine();
+        RevisionOrder order = RevisionOrder.AscendingOrder;
+        Dn people = new Dn( schemaManager, "ou=people,ou=system" );
+
+        assertEquals( revisions( 2, 5 ),
+            getRevisions( engine.find( new Dn( schemaManager, "ou=Alice,ou=People,ou=system" ), order ) ) );
+        assertEquals( revisions( 1 ), getRevisions( engine.find( people, SearchScope.OBJECT, order ) ) );
+        assertEquals( revisions( 2, 4, 5 ), getRevisions( engine.find( people, SearchScope.ONELEVEL, order ) ) );
+        assertEquals( revisions( 1, 2, 4, 5, 6 ),
+            getRevisions( engine.find( people, SearchScope.SUBTREE, order ) ) );
+
+        assertEquals( revisions( 5, 3 ),
+            getRevisions( engine.find( anonymous, RevisionOrder.DescendingOrder ) ) );
+        assertEquals( revisions( 5 ), getRevisions( engine.find( ChangeType.Delete, order ) ) );
+
+        assertEquals( revisions( 4 ), getRevisions( engine.find(
+            FilterParser.parse( "(&(ndn=ou=bob,ou=people,ou=system)(changeType=add))" ), order ) ) );
+        assertEquals( revisions( 3, 5 ), getRevisions( engine.find(
+            FilterParser.parse( "(|(changeType=delete)(ndn=ou=groups,ou=system))" ), order ) ) );
+        assertEquals( revisions( 2, 3, 4 ), getRevisions( engine.find(
+            FilterParser.parse( "(&(revision>=2)(revision<=4))" ), order ) ) );
+    }
+
+
+    @Test
+    public void testReopen() throws Exception
+    {
+        logChanges();
+        store.tag( 3, "before bob" );
+
+        reopenStore();
+
+        assertEquals( 1, store.getFirstRevision() );
+        assertEquals( 6, store.getCurrentRevision() );
+        assertEquals( 3, store.getLatest().getRevision() );
+        assertEquals( "before bob", store.getLatest().getDescription() );
+
+        // The indexes have been rebuilt from the segments
+        ChangeLogSearchEngine engine = store.getChangeLogSearchEngine();
+        assertEquals( revisions( 2, 4, 5 ), getRevisions( engine.find(
+            new Dn( schemaManager, "ou=people,ou=system" ), SearchScope.ONELEVEL, RevisionOrder.AscendingOrder ) ) );
+
+        // New events follow the recovered revisions
+        assertEquals( 7, logAdd( admin, "ou=dave,ou=people,ou=system" ).getRevision() );
+    }
+
+
+    @Test
+    public void testTornTailIsTruncated() throws Exception
+    {
+        logChanges();
+        store.destroy();
+
+        // Simulate a crash in the middle of an append
+        File[] segments = getChangeLogDirectory().listFiles();
+        File last = null;
+
+        for ( File segment : segments )
+        {
+            if ( segment.getName().endsWith( ".log" ) && ( ( last == null ) || ( segment.compareTo( last ) > 0 ) ) )
+            {
+                last = segment;
+            }
+        }
+
+        long length = last.length();
+
+        try ( FileOutputStream out = new FileOutputStream( last, true ) )
+        {
+            out.write( new byte[]
+                { 0, 0, 1, 0, 1, 2, 3, 4, 5 } );
+        }
+
+        store = new FileChangeLogStore();
+        store.init( directoryService );
+
+        assertEquals( 6, store.getCurrentRevision() );
+        assertEquals( length, last.length() );
+        assertEquals( 7, logAdd( admin, "ou=dave,ou=people,ou=system" ).getRevision() );
+
+        reopenStore();
+        assertEquals( new Dn( "ou=dave,ou=people,ou=system" ), store.lookup( 7 ).getForwardLdif().getDn() );
+    }
+
+
+    @Test
+    public void testTrim() throws Exception
+    {
+        // One event per segment, so that the retention can drop any revision
+        store.setSegmentSize( 1L );
+        store.setMaxRevisions( 3L );
+
+        logChanges();
+
+        assertEquals( 6, store.getCurrentRevision() );
+        assertTrue( store.getFirstRevision() > 1 );
+        assertTrue( store.getCurrentRevision() - store.getFirstRevision() + 1 <= 4 );
+        assertNull( store.lookup( 1 ) );
+
+        List<Long> remaining = getRevisions( store.find() );
+        assertEquals( store.getFirstRevision(), remaining.get( 0 ).longValue() );
+        assertEquals( 6L, remaining.get( remaining.size() - 1 ).longValue() );
+
+        // The trimmed revisions have been removed from the indexes too
+        assertFalse( getRevisions( store.getChangeLogSearchEngine().find(
+            new Dn( schemaManager, "ou=people,ou=system" ), SearchScope.OBJECT, RevisionOrder.AscendingOrder ) )
+                .contains( 1L ) );
+
+        reopenStore();
+        assertEquals( remaining, getRevisions( store.find() ) );
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.number;
+
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.ldap.client.api.LdapConnection;
+import org.apache.directory.server.core.annotations.ContextEntry;
+import org.apache.directory.server.core.annotations.CreateDS;
+import org.apache.directory.server.core.annotations.CreateIndex;
+import org.apache.directory.server.core.annotations.CreatePartition;
+import org.apache.directory.server.core.annotations.LoadSchema;
+import org.apache.directory.server.core.integ.AbstractLdapTestUnit;
+import org.apache.directory.server.core.integ.FrameworkRunner;
+import org.apache.directory.server.core.integ.IntegrationUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Test the add operation performances when the uidNumber values are allocated by the
+ * NumberIncrementingInterceptor, with and without reserving ranges of values.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(FrameworkRunner.class)
+@CreateDS(
+    name = "NumberIncrementingPerfDS",
+    loadedSchemas =
+        { @LoadSchema(name = "nis", enabled = true) },
+    partitions =
+        {
+            @CreatePartition(
+                name = "example",
+                suffix = "dc=example,dc=com",
+                contextEntry = @ContextEntry(
+                    entryLdif =
+                    "dn: dc=example,dc=com\n" +
+                        "dc: example\n" +
+                        "objectClass: top\n" +
+                        "objectClass: domain\n\n"),
+                indexes =
+                    {
+                        @CreateIndex(attribute = "objectClass"),
+                        @CreateIndex(attribute = "uidNumber")
+                })
+    },
+    enableChangeLog = false)
+public class NumberIncrementingPerfIT extends AbstractLdapTestUnit
+{
+    private static final int NB_ITERATIONS = 10000;
+
+
+    /**
+     * Add a batch of accounts, and return the number of adds per second
+     */
+    private long addAccounts( LdapConnection connection, String prefix ) throws Exception
+    {
+        Entry[] entries = new Entry[NB_ITERATIONS];
+
+        for ( int i = 0; i < NB_ITERATIONS; i++ )
+        {
+            String name = prefix + i;
+
+            entries[i] = new DefaultEntry( getService().getSchemaManager(),
+                "uid=" + name + ",dc=example,dc=com",
+                "ObjectClass: top",
+                "ObjectClass: account",
+                "ObjectClass: posixAccount",
+                "uid", name,
+                "cn", name,
+                "uidNumber: 0",
+                "gidNumber: 100",
+                "homeDirectory", "/home/" + name );
+        }
+
+        long t0 = System.currentTimeMillis();
+
+        for ( int i = 0; i < NB_ITERATIONS; i++ )
+        {
+            connection.add( entries[i] );
+        }
+
+        long t1 = System.currentTimeMillis();
+        long delta = Math.max( 1L, t1 - t0 );
+
+        return ( NB_ITERATIONS * 1000L ) / delta;
+    }
+
+
+    /**
+     * Compare the add throughput when the holder entry is updated for every add, and
+     * when ranges of 1000 values are reserved.
+     */
+    @Test
+    public void testProvisioningPerf() throws Exception
+    {
+        LdapConnection connection = IntegrationUtils.getAdminConnection( getService() );
+
+        connection.add( new DefaultEntry( getService().getSchemaManager(),
+            "ou=autoIncDataHolder,ou=system",
+            "ObjectClass: top",
+            "ObjectClass: organizationalUnit",
+            "ObjectClass: extensibleObject",
+            "ou: autoIncDataHolder",
+            "uidNumber: 1000" ) );
+
+        NumberIncrementingInterceptor interceptor = new NumberIncrementingInterceptor();
+        interceptor.setReservationSize( 1 );
+        getService().addLast( interceptor );
+
+        // Warm up
+        addAccounts( connection, "warmup" );
+
+        long perSecondNoReservation = addAccounts( connection, "single" );
+
+        interceptor.setReservationSize( NumberIncrementingInterceptor.DEFAULT_RESERVATION_SIZE );
+
+        long perSecondReservation = addAccounts( connection, "reserved" );
+
+        System.out.println( "Adds per second, one holder update per add : " + perSecondNoReservation );
+        System.out.println( "Adds per second, " + NumberIncrementingInterceptor.DEFAULT_RESERVATION_SIZE
+            + " values reserved at once : " + perSecondReservation );
+
+        // The values are unique and consecutive, as long as the server is not restarted
+        Entry first = connection.lookup( new Dn( "uid=warmup0,dc=example,dc=com" ) );
+        Entry last = connection.lookup( new Dn( "uid=reserved" + ( NB_ITERATIONS - 1 ) + ",dc=example,dc=com" ) );
+
+        assertEquals( "1001", first.get( "uidNumber" ).getString() );
+        assertEquals( String.valueOf( 1000 + 3 * NB_ITERATIONS ), last.get( "uidNumber" ).getString() );
+
+        connection.close();
+    }
+}
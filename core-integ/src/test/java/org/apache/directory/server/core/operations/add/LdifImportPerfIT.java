@@ -0,0 +1,146 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.operations.add;
+
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.server.core.annotations.CreateDS;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.core.integ.AbstractLdapTestUnit;
+import org.apache.directory.server.core.integ.FrameworkRunner;
+import org.apache.directory.server.core.partition.impl.btree.jdbm.JdbmPartition;
+import org.apache.directory.server.protocol.shared.store.LdifFileLoader;
+import org.apache.directory.server.protocol.shared.store.ParallelLdifFileLoader;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Compare the import rate of the LdifFileLoader and of the ParallelLdifFileLoader. The number
+ * of imported entries can be set with the ldifImport.nbEntries system property.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(FrameworkRunner.class)
+@CreateDS(name = "LdifImportPerfDS", enableChangeLog = false)
+public class LdifImportPerfIT extends AbstractLdapTestUnit
+{
+    /** The number of persons in the LDIF file */
+    private static final int NB_ENTRIES = Integer.getInteger( "ldifImport.nbEntries", 20000 );
+
+
+    /**
+     * Creates and registers a JDBM partition
+     */
+    private JdbmPartition createPartition( String id ) throws Exception
+    {
+        JdbmPartition partition = new JdbmPartition( getService().getSchemaManager(), getService().getDnFactory() );
+        partition.setId( id );
+        partition.setSuffixDn( new Dn( getService().getSchemaManager(), "ou=" + id ) );
+        partition.setPartitionPath( new File( getService().getInstanceLayout().getPartitionsDirectory(), id ).toURI() );
+
+        getService().addPartition( partition );
+
+        return partition;
+    }
+
+
+    /**
+     * Writes a LDIF file with a context entry, a few organizational units, and the persons
+     */
+    private File writeLdif( String id ) throws Exception
+    {
+        File ldif = File.createTempFile( id, ".ldif" );
+        ldif.deleteOnExit();
+
+        try ( BufferedWriter writer = Files.newBufferedWriter( ldif.toPath(), StandardCharsets.UTF_8 ) )
+        {
+            writer.write( "version: 1\n\n" );
+            writer.write( "dn: ou=" + id + "\nobjectClass: top\nobjectClass: organizationalUnit\nou: " + id + "\n\n" );
+
+            for ( int i = 0; i < NB_ENTRIES; i++ )
+            {
+                int unit = i % 10;
+
+                if ( i < 10 )
+                {
+                    writer.write( "dn: ou=unit" + unit + ",ou=" + id + "\n" );
+                    writer.write( "objectClass: top\nobjectClass: organizationalUnit\n" );
+                    writer.write( "ou: unit" + unit + "\n\n" );
+                }
+
+                writer.write( "dn: cn=user" + i + ",ou=unit" + unit + ",ou=" + id + "\n" );
+                writer.write( "objectClass: top\nobjectClass: person\n" );
+                writer.write( "cn: user" + i + "\n" );
+                writer.write( "sn: surname" + i + "\n" );
+                writer.write( "description: imported entry number " + i + "\n\n" );
+            }
+        }
+
+        return ldif;
+    }
+
+
+    private long count( JdbmPartition partition ) throws Exception
+    {
+        try ( PartitionTxn partitionTxn = partition.beginReadTransaction() )
+        {
+            return partition.count( partitionTxn );
+        }
+    }
+
+
+    @Test
+    public void testImportPerf() throws Exception
+    {
+        // The sequential loader
+        JdbmPartition partition = createPartition( "sequential" );
+        File ldif = writeLdif( "sequential" );
+
+        long t0 = System.currentTimeMillis();
+        new LdifFileLoader( getService().getAdminSession(), ldif.getAbsolutePath() ).execute();
+        long delta = Math.max( 1L, System.currentTimeMillis() - t0 );
+
+        assertEquals( NB_ENTRIES + 11L, count( partition ) );
+        System.out.println( "LdifFileLoader : " + ( ( NB_ENTRIES + 11L ) * 1000L ) / delta + " entries per second" );
+
+        // The parallel loader
+        partition = createPartition( "parallel" );
+        ldif = writeLdif( "parallel" );
+
+        ParallelLdifFileLoader loader = new ParallelLdifFileLoader( getService().getAdminSession(), ldif );
+
+        t0 = System.currentTimeMillis();
+        long nbAdded = loader.execute();
+        delta = Math.max( 1L, System.currentTimeMillis() - t0 );
+
+        assertEquals( NB_ENTRIES + 11L, nbAdded );
+        assertEquals( 0L, loader.getNbFailed() );
+        assertEquals( NB_ENTRIES + 11L, count( partition ) );
+        System.out.println( "ParallelLdifFileLoader : " + ( nbAdded * 1000L ) / delta + " entries per second" );
+    }
+}
@@ -0,0 +1,372 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.operations.add;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.exception.LdapSchemaViolationException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.server.core.annotations.CreateDS;
+import org.apache.directory.server.core.integ.AbstractLdapTestUnit;
+import org.apache.directory.server.core.integ.FrameworkRunner;
+import org.apache.directory.server.protocol.shared.store.LdifImportListener;
+import org.apache.directory.server.protocol.shared.store.ParallelLdifFileLoader;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Test the ParallelLdifFileLoader : rejection of the faulty entries, replay of a failed
+ * transaction, restart from a checkpoint, and entries coming before their parent.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(FrameworkRunner.class)
+@CreateDS(name = "ParallelLdifFileLoaderIT")
+public class ParallelLdifFileLoaderIT extends AbstractLdapTestUnit
+{
+    /**
+     * A listener keeping the outcome of each record
+     */
+    private static class Outcomes implements LdifImportListener
+    {
+        private final List<Long> added = new ArrayList<>();
+        private final Map<Long, Exception> failed = new TreeMap<>();
+        private final List<Long> checkpoints = new ArrayList<>();
+
+
+        @Override
+        public void entryAdded( long recordNumber, Dn dn )
+        {
+            added.add( recordNumber );
+        }
+
+
+        @Override
+        public void entryFailed( long recordNumber, Dn dn, Exception cause )
+        {
+            failed.put( recordNumber, cause );
+        }
+
+
+        @Override
+        public void committed( long checkpoint )
+        {
+            checkpoints.add( checkpoint );
+        }
+    }
+
+
+    private File writeLdif( String... lines ) throws Exception
+    {
+        File ldif = File.createTempFile( "import", ".ldif" );
+        ldif.deleteOnExit();
+
+        StringBuilder sb = new StringBuilder();
+
+        for ( String line : lines )
+        {
+            sb.append( line ).append( '\n' );
+        }
+
+        Files.write( ldif.toPath(), sb.toString().getBytes( StandardCharsets.UTF_8 ) );
+
+        return ldif;
+    }
+
+
+    private boolean exists( String dn ) throws Exception
+    {
+        return getService().getAdminSession().exists( new Dn( getService().getSchemaManager(), dn ) );
+    }
+
+
+    /**
+     * An entry violating the schema is rejected before being added, the others are imported
+     */
+    @Test
+    public void testRejectedEntry() throws Exception
+    {
+        File ldif = writeLdif(
+            "dn: ou=rejected,ou=system",
+            "objectClass: top",
+            "objectClass: organizationalUnit",
+            "ou: rejected",
+            "",
+            "dn: cn=user1,ou=rejected,ou=system",
+            "objectClass: top",
+            "objectClass: person",
+            "cn: user1",
+            "sn: user1",
+            "",
+            // No sn
+            "dn: cn=user2,ou=rejected,ou=system",
+            "objectClass: top",
+            "objectClass: person",
+            "cn: user2",
+            "",
+            "dn: cn=user3,ou=rejected,ou=system",
+            "objectClass: top",
+            "objectClass: person",
+            "cn: user3",
+            "sn: user3",
+            "" );
+
+        Outcomes outcomes = new Outcomes();
+        ParallelLdifFileLoader loader = new ParallelLdifFileLoader( getService().getAdminSession(), ldif );
+        loader.setListener( outcomes );
+
+        assertEquals( 3L, loader.execute() );
+        assertEquals( 1L, loader.getNbFailed() );
+        assertEquals( 1, outcomes.failed.size() );
+        assertTrue( outcomes.failed.get( 2L ) instanceof LdapSchemaViolationException );
+
+        assertTrue( exists( "cn=user1,ou=rejected,ou=system" ) );
+        assertFalse( exists( "cn=user2,ou=rejected,ou=system" ) );
+        assertTrue( exists( "cn=user3,ou=rejected,ou=system" ) );
+    }
+
+
+    /**
+     * An entry which passes the early checks but is refused by the server makes the whole
+     * transaction being rolled back : its other entries are added again, one by one.
+     */
+    @Test
+    public void testReplayAfterFailedBatch() throws Exception
+    {
+        File ldif = writeLdif(
+            "dn: ou=replay,ou=system",
+            "objectClass: top",
+            "objectClass: organizationalUnit",
+            "ou: replay",
+            "",
+            "dn: cn=user1,ou=replay,ou=system",
+            "objectClass: top",
+            "objectClass: person",
+            "cn: user1",
+            "sn: user1",
+            "",
+            // The mail attribute is not allowed in a person
+            "dn: cn=user2,ou=replay,ou=system",
+            "objectClass: top",
+            "objectClass: person",
+            "cn: user2",
+            "sn: user2",
+            "mail: user2@example.com",
+            "",
+            "dn: cn=user3,ou=replay,ou=system",
+            "objectClass: top",
+            "objectClass: person",
+            "cn: user3",
+            "sn: user3",
+            "" );
+
+        Outcomes outcomes = new Outcomes();
+        ParallelLdifFileLoader loader = new ParallelLdifFileLoader( getService().getAdminSession(), ldif );
+        loader.setBatchSize( 10 );
+        loader.setListener( outcomes );
+
+        assertEquals( 3L, loader.execute() );
+        assertEquals( 1, outcomes.failed.size() );
+        assertTrue( outcomes.failed.containsKey( 2L ) );
+
+        // The entries of the rolled back transaction have been added again
+        assertTrue( outcomes.added.contains( 0L ) );
+        assertTrue( outcomes.added.contains( 1L ) );
+        assertTrue( outcomes.added.contains( 3L ) );
+        assertTrue( exists( "ou=replay,ou=system" ) );
+        assertTrue( exists( "cn=user1,ou=replay,ou=system" ) );
+        assertFalse( exists( "cn=user2,ou=replay,ou=system" ) );
+        assertTrue( exists( "cn=user3,ou=replay,ou=system" ) );
+
+        // The session is usable again, and the write lock has been released
+        assertFalse( getService().getAdminSession().hasSessionTransaction() );
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try
+        {
+            executor.submit( new Callable<Void>()
+            {
+                @Override
+                public Void call() throws Exception
+                {
+                    getService().getAdminSession().add( new DefaultEntry( getService().getSchemaManager(),
+                        "cn=user4,ou=replay,ou=system",
+                        "objectClass: top",
+                        "objectClass: person",
+                        "cn: user4",
+                        "sn: user4" ) );
+
+                    return null;
+                }
+            } ).get( 10L, TimeUnit.SECONDS );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        assertTrue( exists( "cn=user4,ou=replay,ou=system" ) );
+    }
+
+
+    /**
+     * An import interrupted after a commit restarts from its checkpoint : the records before
+     * it are not read again, and the entries committed after it are skipped.
+     */
+    @Test
+    public void testRestartFromCheckpoint() throws Exception
+    {
+        List<String> lines = new ArrayList<>();
+        lines.add( "dn: ou=restart,ou=system" );
+        lines.add( "objectClass: top" );
+        lines.add( "objectClass: organizationalUnit" );
+        lines.add( "ou: restart" );
+        lines.add( "" );
+
+        for ( int i = 1; i < 6; i++ )
+        {
+            lines.add( "dn: cn=user" + i + ",ou=restart,ou=system" );
+            lines.add( "objectClass: top" );
+            lines.add( "objectClass: person" );
+            lines.add( "cn: user" + i );
+            lines.add( "sn: user" + i );
+            lines.add( "" );
+        }
+
+        File ldif = writeLdif( lines.toArray( new String[0] ) );
+        File checkpointFile = File.createTempFile( "import", ".checkpoint" );
+        checkpointFile.delete();
+        checkpointFile.deleteOnExit();
+
+        // Interrupt the import once the second transaction has been committed, before its checkpoint
+        // has been stored
+        ParallelLdifFileLoader loader = new ParallelLdifFileLoader( getService().getAdminSession(), ldif );
+        loader.setBatchSize( 2 );
+        loader.setCheckpointFile( checkpointFile );
+        loader.setListener( new Outcomes()
+        {
+            @Override
+            public void entryAdded( long recordNumber, Dn dn )
+            {
+                if ( recordNumber == 2L )
+                {
+                    throw new IllegalStateException( "Interrupted" );
+                }
+            }
+        } );
+
+        try
+        {
+            loader.execute();
+            fail();
+        }
+        catch ( IllegalStateException ise )
+        {
+            // Expected
+        }
+
+        assertEquals( "2", new String( Files.readAllBytes( checkpointFile.toPath() ), StandardCharsets.UTF_8 ) );
+        assertTrue( exists( "cn=user3,ou=restart,ou=system" ) );
+        assertFalse( exists( "cn=user4,ou=restart,ou=system" ) );
+
+        // Restart the import
+        Outcomes outcomes = new Outcomes();
+        loader = new ParallelLdifFileLoader( getService().getAdminSession(), ldif );
+        loader.setBatchSize( 2 );
+        loader.setCheckpointFile( checkpointFile );
+        loader.setListener( outcomes );
+
+        assertEquals( 2L, loader.execute() );
+        assertEquals( 2L, loader.getNbSkipped() );
+        assertEquals( 0L, loader.getNbFailed() );
+        assertEquals( 4L, outcomes.added.get( 0 ).longValue() );
+        assertEquals( 5L, outcomes.added.get( 1 ).longValue() );
+        assertEquals( "6", new String( Files.readAllBytes( checkpointFile.toPath() ), StandardCharsets.UTF_8 ) );
+
+        for ( int i = 1; i < 6; i++ )
+        {
+            assertTrue( exists( "cn=user" + i + ",ou=restart,ou=system" ) );
+        }
+    }
+
+
+    /**
+     * The entries coming before their parent in the file are added once the parent has been added
+     */
+    @Test
+    public void testChildrenBeforeParents() throws Exception
+    {
+        File ldif = writeLdif(
+            "dn: cn=leaf,ou=sub,ou=order,ou=system",
+            "objectClass: top",
+            "objectClass: person",
+            "cn: leaf",
+            "sn: leaf",
+            "",
+            "dn: ou=order,ou=system",
+            "objectClass: top",
+            "objectClass: organizationalUnit",
+            "ou: order",
+            "",
+            "dn: ou=sub,ou=order,ou=system",
+            "objectClass: top",
+            "objectClass: organizationalUnit",
+            "ou: sub",
+            "" );
+
+        Outcomes outcomes = new Outcomes();
+        ParallelLdifFileLoader loader = new ParallelLdifFileLoader( getService().getAdminSession(), ldif );
+        loader.setBatchSize( 1 );
+        loader.setListener( outcomes );
+
+        assertEquals( 3L, loader.execute() );
+        assertEquals( 0L, loader.getNbFailed() );
+
+        // The leaf is added right after its parent
+        assertEquals( 1L, outcomes.added.get( 0 ).longValue() );
+        assertEquals( 2L, outcomes.added.get( 1 ).longValue() );
+        assertEquals( 0L, outcomes.added.get( 2 ).longValue() );
+
+        // The checkpoint does not go past the leaf while it is waiting for its parent
+        assertEquals( 0L, outcomes.checkpoints.get( 0 ).longValue() );
+        assertEquals( 3L, outcomes.checkpoints.get( outcomes.checkpoints.size() - 1 ).longValue() );
+
+        assertTrue( exists( "cn=leaf,ou=sub,ou=order,ou=system" ) );
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.operations.search;
+
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.management.ManagementFactory;
+
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.filter.FilterParser;
+import org.apache.directory.api.ldap.model.message.AliasDerefMode;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.server.core.annotations.ContextEntry;
+import org.apache.directory.server.core.annotations.CreateDS;
+import org.apache.directory.server.core.annotations.CreateIndex;
+import org.apache.directory.server.core.annotations.CreatePartition;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.entry.ClonedServerEntry;
+import org.apache.directory.server.core.integ.AbstractLdapTestUnit;
+import org.apache.directory.server.core.integ.FrameworkRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Reports the number of bytes allocated per entry returned by a search, the entries being
+ * in the partition cache. The deep copy of each entry the partition used to do is measured
+ * too, for comparison.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(FrameworkRunner.class)
+@CreateDS(
+    name = "SearchEntryAllocationPerfDS",
+    partitions =
+        {
+            @CreatePartition(
+                cacheSize = 12000,
+                name = "example",
+                suffix = "dc=example,dc=com",
+                contextEntry = @ContextEntry(
+                    entryLdif =
+                    "dn: dc=example,dc=com\n" +
+                        "dc: example\n" +
+                        "objectClass: top\n" +
+                        "objectClass: domain\n\n"),
+                indexes =
+                    {
+                        @CreateIndex(attribute = "objectClass"),
+                        @CreateIndex(attribute = "cn")
+                })
+    },
+    enableChangeLog = false)
+public class SearchEntryAllocationPerfIT extends AbstractLdapTestUnit
+{
+    /** The number of entries in the partition */
+    private static final int NB_ENTRIES = 5000;
+
+    /** The number of searches per run */
+    private static final int NB_SEARCHES = 20;
+
+
+    /**
+     * @return The number of bytes allocated by the current thread so far
+     */
+    private long getAllocatedBytes()
+    {
+        com.sun.management.ThreadMXBean threadMXBean = ( com.sun.management.ThreadMXBean ) ManagementFactory
+            .getThreadMXBean();
+
+        return threadMXBean.getThreadAllocatedBytes( Thread.currentThread().getId() );
+    }
+
+
+    /**
+     * Search all the entries, and return the number of returned entries
+     */
+    private int search( CoreSession session, Dn baseDn, String... attributes ) throws Exception
+    {
+        Cursor<Entry> cursor = session.search( baseDn, SearchScope.ONELEVEL,
+            FilterParser.parse( getService().getSchemaManager(), "(objectClass=person)" ),
+            AliasDerefMode.NEVER_DEREF_ALIASES, attributes );
+
+        int count = 0;
+
+        while ( cursor.next() )
+        {
+            cursor.get();
+            count++;
+        }
+
+        cursor.close();
+
+        return count;
+    }
+
+
+    private void report( CoreSession session, Dn baseDn, String label, String... attributes ) throws Exception
+    {
+        // Warm up, and load the entries in the cache
+        search( session, baseDn, attributes );
+
+        long allocated = getAllocatedBytes();
+        long count = 0L;
+
+        for ( int i = 0; i < NB_SEARCHES; i++ )
+        {
+            count += search( session, baseDn, attributes );
+        }
+
+        allocated = getAllocatedBytes() - allocated;
+
+        assertEquals( ( long ) NB_ENTRIES * NB_SEARCHES, count );
+        System.out.println( label + " : " + ( allocated / count ) + " bytes allocated per entry" );
+    }
+
+
+    @Test
+    public void testSearchAllocations() throws Exception
+    {
+        CoreSession session = getService().getAdminSession();
+        Dn baseDn = new Dn( getService().getSchemaManager(), "dc=example,dc=com" );
+
+        for ( int i = 0; i < NB_ENTRIES; i++ )
+        {
+            String name = "user" + i;
+
+            session.add( new DefaultEntry( getService().getSchemaManager(),
+                "cn=" + name + ",dc=example,dc=com",
+                "objectClass: top",
+                "objectClass: inetOrgPerson",
+                "cn", name,
+                "sn", name,
+                "givenName", name,
+                "mail", name + "@example.com",
+                "description: A person with a few attributes",
+                "telephoneNumber: +1 408 555 1212",
+                "employeeNumber", Integer.toString( i ) ) );
+        }
+
+        report( session, baseDn, "Search, all the user attributes", "*" );
+        report( session, baseDn, "Search, all the attributes", "*", "+" );
+        report( session, baseDn, "Search, one attribute", "cn" );
+
+        // What a deep copy of each returned entry costs
+        Cursor<Entry> cursor = session.search( baseDn, SearchScope.ONELEVEL,
+            FilterParser.parse( getService().getSchemaManager(), "(objectClass=person)" ),
+            AliasDerefMode.NEVER_DEREF_ALIASES, "*", "+" );
+        Entry[] entries = new Entry[NB_ENTRIES];
+        int count = 0;
+
+        while ( cursor.next() )
+        {
+            entries[count++] = ( ( ClonedServerEntry ) cursor.get() ).getOriginalEntry();
+        }
+
+        cursor.close();
+
+        long allocated = getAllocatedBytes();
+
+        for ( int i = 0; i < NB_SEARCHES; i++ )
+        {
+            for ( Entry entry : entries )
+            {
+                new ClonedServerEntry( entry );
+            }
+        }
+
+        allocated = getAllocatedBytes() - allocated;
+
+        System.out.println( "Deep copy of an entry : " + ( allocated / ( ( long ) NB_ENTRIES * NB_SEARCHES ) )
+            + " bytes allocated per entry" );
+    }
+}
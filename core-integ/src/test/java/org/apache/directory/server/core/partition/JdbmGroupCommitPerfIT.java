@@ -0,0 +1,180 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.server.core.annotations.CreateDS;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.integ.AbstractLdapTestUnit;
+import org.apache.directory.server.core.integ.FrameworkRunner;
+import org.apache.directory.server.core.partition.impl.btree.jdbm.JdbmPartition;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Compare the add and modify throughput of concurrent clients on a JDBM partition, without
+ * syncOnWrite, with syncOnWrite and a log synchronization per operation, and with syncOnWrite
+ * and the group commit.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(FrameworkRunner.class)
+@CreateDS(name = "JdbmGroupCommitPerfDS", enableChangeLog = false)
+public class JdbmGroupCommitPerfIT extends AbstractLdapTestUnit
+{
+    /** The number of concurrent clients */
+    private static final int NB_THREADS = 16;
+
+    /** The number of entries added, then modified, by each client */
+    private static final int NB_ENTRIES = 500;
+
+
+    /**
+     * Creates and registers a JDBM partition
+     */
+    private JdbmPartition createPartition( String id, boolean syncOnWrite, long groupCommitWindow ) throws Exception
+    {
+        JdbmPartition partition = new JdbmPartition( getService().getSchemaManager(), getService().getDnFactory() );
+        partition.setId( id );
+        partition.setSuffixDn( new Dn( getService().getSchemaManager(), "ou=" + id ) );
+        partition.setPartitionPath( new File( getService().getInstanceLayout().getPartitionsDirectory(), id ).toURI() );
+        partition.setSyncOnWrite( syncOnWrite );
+        partition.setGroupCommitWindow( groupCommitWindow );
+
+        getService().addPartition( partition );
+
+        getService().getAdminSession().add( new DefaultEntry( getService().getSchemaManager(),
+            "ou=" + id,
+            "objectClass: top",
+            "objectClass: organizationalUnit",
+            "ou", id ) );
+
+        return partition;
+    }
+
+
+    /**
+     * Runs the clients, each one adding or modifying its own entries, and returns the number of
+     * operations per second
+     */
+    private long run( final String id, final boolean modify ) throws Exception
+    {
+        final CoreSession session = getService().getAdminSession();
+        ExecutorService executor = Executors.newFixedThreadPool( NB_THREADS );
+        List<Future<Void>> futures = new ArrayList<>();
+
+        long t0 = System.currentTimeMillis();
+
+        for ( int i = 0; i < NB_THREADS; i++ )
+        {
+            final int thread = i;
+
+            futures.add( executor.submit( new Callable<Void>()
+            {
+                @Override
+                public Void call() throws Exception
+                {
+                    for ( int j = 0; j < NB_ENTRIES; j++ )
+                    {
+                        String name = "user" + thread + "-" + j;
+                        String dn = "cn=" + name + ",ou=" + id;
+
+                        if ( modify )
+                        {
+                            session.modify( new Dn( getService().getSchemaManager(), dn ),
+                                new DefaultModification( ModificationOperation.REPLACE_ATTRIBUTE, "description",
+                                    "modified " + j ) );
+                        }
+                        else
+                        {
+                            session.add( new DefaultEntry( getService().getSchemaManager(),
+                                dn,
+                                "objectClass: top",
+                                "objectClass: person",
+                                "cn", name,
+                                "sn", name ) );
+                        }
+                    }
+
+                    return null;
+                }
+            } ) );
+        }
+
+        for ( Future<Void> future : futures )
+        {
+            future.get();
+        }
+
+        long delta = Math.max( 1L, System.currentTimeMillis() - t0 );
+        executor.shutdown();
+
+        return ( NB_THREADS * NB_ENTRIES * 1000L ) / delta;
+    }
+
+
+    private void runAll( String label, String id, boolean syncOnWrite, long groupCommitWindow ) throws Exception
+    {
+        JdbmPartition partition = createPartition( id, syncOnWrite, groupCommitWindow );
+
+        long adds = run( id, false );
+        long modifies = run( id, true );
+
+        System.out.println( label + " : " + adds + " adds per second, " + modifies + " modifies per second" );
+
+        if ( partition.getGroupCommit() != null )
+        {
+            assertTrue( partition.getGroupCommit().getNbSyncs() > 0L );
+            System.out.println( "    " + partition.getGroupCommit() );
+        }
+
+        assertEquals( NB_THREADS * NB_ENTRIES + 1L, partition.count( partition.beginReadTransaction() ) );
+
+        getService().removePartition( partition );
+    }
+
+
+    @Test
+    public void testWritePerf() throws Exception
+    {
+        // Warm up
+        runAll( "Warm up", "warmup", false, 0L );
+
+        runAll( "No syncOnWrite", "nosync", false, 0L );
+        runAll( "syncOnWrite, one log synchronization per operation", "sync", true, 0L );
+        runAll( "syncOnWrite, group commit within 2 ms", "groupsync", true, 2L );
+    }
+}
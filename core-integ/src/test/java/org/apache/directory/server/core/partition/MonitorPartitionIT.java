@@ -0,0 +1,176 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.directory.api.ldap.model.cursor.EntryCursor;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapUnwillingToPerformException;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.ldap.client.api.LdapConnection;
+import org.apache.directory.server.core.annotations.CreateDS;
+import org.apache.directory.server.core.integ.AbstractLdapTestUnit;
+import org.apache.directory.server.core.integ.FrameworkRunner;
+import org.apache.directory.server.core.integ.IntegrationUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Tests the metrics published under cn=monitor and through JMX.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(FrameworkRunner.class)
+@CreateDS(name = "MonitorPartitionIT", enableMonitor = true)
+public class MonitorPartitionIT extends AbstractLdapTestUnit
+{
+    /**
+     * Gets the children of cn=monitor, with their operational attributes
+     */
+    private Map<String, Entry> getMetrics( LdapConnection connection, String filter ) throws Exception
+    {
+        Map<String, Entry> metrics = new HashMap<String, Entry>();
+        EntryCursor cursor = connection.search( "cn=monitor", filter, SearchScope.ONELEVEL, "*", "+" );
+
+        while ( cursor.next() )
+        {
+            Entry entry = cursor.get();
+            metrics.put( entry.get( "cn" ).getString(), entry );
+        }
+
+        cursor.close();
+
+        return metrics;
+    }
+
+
+    @Test
+    public void testMonitorEntries() throws Exception
+    {
+        LdapConnection connection = IntegrationUtils.getAdminConnection( getService() );
+
+        assertNotNull( connection.lookup( "ou=system" ) );
+
+        Entry monitor = connection.lookup( "cn=monitor", "*", "+" );
+        assertNotNull( monitor );
+        assertTrue( monitor.contains( "objectClass", "applicationProcess" ) );
+
+        Map<String, Entry> metrics = getMetrics( connection, "(objectClass=*)" );
+
+        // A histogram
+        Entry lookup = metrics.get( "operation.lookup" );
+        assertNotNull( lookup );
+        assertTrue( Long.parseLong( lookup.get( "apacheMonitorCount" ).getString() ) >= 1L );
+        assertNotNull( lookup.get( "apacheMonitorP99Micros" ) );
+        assertNull( lookup.get( "apacheMonitorValue" ) );
+
+        // A gauge
+        Entry queueLength = metrics.get( "lock.queueLength" );
+        assertNotNull( queueLength );
+        assertNotNull( queueLength.get( "apacheMonitorValue" ) );
+
+        // The time spent in the partitions, below the interceptors
+        Entry finalLookup = metrics.get( "interceptor.FINAL.lookup" );
+        assertNotNull( finalLookup );
+        assertTrue( Long.parseLong( finalLookup.get( "apacheMonitorCount" ).getString() ) >= 1L );
+
+        // The caches of the system partition
+        assertTrue( metrics.containsKey( "partition.system.dnCache.hits" ) );
+
+        // The operational attributes are only returned when requested
+        lookup = connection.lookup( "cn=operation.lookup,cn=monitor", "cn" );
+        assertNotNull( lookup );
+        assertNull( lookup.get( "apacheMonitorCount" ) );
+
+        connection.close();
+    }
+
+
+    @Test
+    public void testSearchFilter() throws Exception
+    {
+        LdapConnection connection = IntegrationUtils.getAdminConnection( getService() );
+
+        Map<String, Entry> metrics = getMetrics( connection, "(cn=operation.search)" );
+
+        assertEquals( 1, metrics.size() );
+        assertTrue( metrics.containsKey( "operation.search" ) );
+
+        assertTrue( getMetrics( connection, "(cn=unknown)" ).isEmpty() );
+
+        connection.close();
+    }
+
+
+    @Test
+    public void testReadOnly() throws Exception
+    {
+        LdapConnection connection = IntegrationUtils.getAdminConnection( getService() );
+
+        try
+        {
+            connection.add( new DefaultEntry( "cn=test,cn=monitor",
+                "objectClass: top",
+                "objectClass: applicationProcess",
+                "cn: test" ) );
+            fail( "cn=monitor should be read only" );
+        }
+        catch ( LdapUnwillingToPerformException lutpe )
+        {
+            // Expected
+        }
+
+        assertFalse( connection.exists( "cn=test,cn=monitor" ) );
+
+        connection.close();
+    }
+
+
+    @Test
+    public void testMBean() throws Exception
+    {
+        LdapConnection connection = IntegrationUtils.getAdminConnection( getService() );
+        connection.lookup( "ou=system" );
+        connection.close();
+
+        ObjectName name = getService().getMetricsRegistry().getMBeanName();
+        assertNotNull( name );
+
+        MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        assertTrue( mbeanServer.isRegistered( name ) );
+        assertTrue( ( Long ) mbeanServer.getAttribute( name, "operation.lookup.count" ) >= 1L );
+    }
+}
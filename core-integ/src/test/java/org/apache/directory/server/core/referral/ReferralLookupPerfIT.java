@@ -0,0 +1,168 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.referral;
+
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.server.core.annotations.CreateDS;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.ReferralManager;
+import org.apache.directory.server.core.integ.AbstractLdapTestUnit;
+import org.apache.directory.server.core.integ.FrameworkRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Measure the throughput of concurrent referral lookups, and of concurrent compare
+ * operations (which check the referrals first), without and with referrals in the server.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(FrameworkRunner.class)
+@CreateDS(name = "ReferralLookupPerfDS", enableChangeLog = false)
+public class ReferralLookupPerfIT extends AbstractLdapTestUnit
+{
+    /** The number of concurrent threads */
+    private static final int NB_THREADS = 16;
+
+    /** The number of referral lookups per thread */
+    private static final int NB_LOOKUPS = 1000000;
+
+    /** The number of compare operations per thread */
+    private static final int NB_COMPARES = 20000;
+
+
+    /**
+     * Run the task on all the threads, and return the number of operations per second
+     */
+    private long run( Callable<Void> task, long nbOperations ) throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool( NB_THREADS );
+        List<Future<Void>> futures = new ArrayList<>();
+
+        long t0 = System.currentTimeMillis();
+
+        for ( int i = 0; i < NB_THREADS; i++ )
+        {
+            futures.add( executor.submit( task ) );
+        }
+
+        for ( Future<Void> future : futures )
+        {
+            future.get();
+        }
+
+        long delta = Math.max( 1L, System.currentTimeMillis() - t0 );
+        executor.shutdown();
+
+        return ( NB_THREADS * nbOperations * 1000L ) / delta;
+    }
+
+
+    private void report( String label ) throws Exception
+    {
+        final ReferralManager referralManager = getService().getReferralManager();
+        final CoreSession session = getService().getAdminSession();
+        final Dn dn = new Dn( getService().getSchemaManager(), "uid=admin,ou=system" );
+
+        long lookups = run( new Callable<Void>()
+        {
+            @Override
+            public Void call() throws Exception
+            {
+                for ( int i = 0; i < NB_LOOKUPS; i++ )
+                {
+                    referralManager.lockRead();
+
+                    try
+                    {
+                        referralManager.getParentReferral( dn );
+                    }
+                    finally
+                    {
+                        referralManager.unlock();
+                    }
+                }
+
+                return null;
+            }
+        }, NB_LOOKUPS );
+
+        long compares = run( new Callable<Void>()
+        {
+            @Override
+            public Void call() throws Exception
+            {
+                for ( int i = 0; i < NB_COMPARES; i++ )
+                {
+                    session.compare( dn, "uid", "admin" );
+                }
+
+                return null;
+            }
+        }, NB_COMPARES );
+
+        System.out.println( label + " : " + lookups + " referral lookups per second, " + compares
+            + " compares per second" );
+    }
+
+
+    @Test
+    public void testReferralLookupPerf() throws Exception
+    {
+        CoreSession session = getService().getAdminSession();
+        ReferralManager referralManager = getService().getReferralManager();
+
+        // Warm up
+        report( "Warm up" );
+
+        report( "No referral" );
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            session.add( new DefaultEntry( getService().getSchemaManager(),
+                "ou=referral" + i + ",ou=system",
+                "objectClass: top",
+                "objectClass: referral",
+                "objectClass: extensibleObject",
+                "ou", "referral" + i,
+                "ref", "ldap://localhost:10389/ou=remote" + i + ",dc=example,dc=com" ) );
+        }
+
+        assertNotNull( referralManager.getParentReferral(
+            new Dn( getService().getSchemaManager(), "cn=test,ou=referral10,ou=system" ) ) );
+        assertNull( referralManager.getParentReferral(
+            new Dn( getService().getSchemaManager(), "uid=admin,ou=system" ) ) );
+
+        report( "100 referrals" );
+    }
+}
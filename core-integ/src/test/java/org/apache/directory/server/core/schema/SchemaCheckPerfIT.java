@@ -0,0 +1,147 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.schema;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.ldap.client.api.LdapConnection;
+import org.apache.directory.server.core.annotations.CreateDS;
+import org.apache.directory.server.core.api.InterceptorEnum;
+import org.apache.directory.server.core.integ.AbstractLdapTestUnit;
+import org.apache.directory.server.core.integ.FrameworkRunner;
+import org.apache.directory.server.core.integ.IntegrationUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Compare the add throughput of inetOrgPerson entries, with the schema checks computed
+ * for each entry, and with the schema check templates.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(FrameworkRunner.class)
+@CreateDS(name = "SchemaCheckPerfDS", enableChangeLog = false)
+public class SchemaCheckPerfIT extends AbstractLdapTestUnit
+{
+    /** The number of entries added per run */
+    private static final int NB_ENTRIES = 10000;
+
+
+    /**
+     * Add NB_ENTRIES entries, and return the number of adds per second
+     */
+    private long add( LdapConnection connection, String prefix ) throws Exception
+    {
+        Entry[] entries = new Entry[NB_ENTRIES];
+
+        for ( int i = 0; i < NB_ENTRIES; i++ )
+        {
+            String name = prefix + i;
+
+            entries[i] = new DefaultEntry( getService().getSchemaManager(),
+                "cn=" + name + ",ou=system",
+                "objectClass: top",
+                "objectClass: inetOrgPerson",
+                "cn", name,
+                "sn", name,
+                "givenName", name,
+                "mail", name + "@example.com",
+                "telephoneNumber: +1 408 555 1212",
+                "employeeNumber", Integer.toString( i ) );
+        }
+
+        long t0 = System.currentTimeMillis();
+
+        for ( Entry entry : entries )
+        {
+            connection.add( entry );
+        }
+
+        long delta = Math.max( 1L, System.currentTimeMillis() - t0 );
+
+        return ( NB_ENTRIES * 1000L ) / delta;
+    }
+
+
+    @Test
+    public void testAddPerf() throws Exception
+    {
+        LdapConnection connection = IntegrationUtils.getAdminConnection( getService() );
+        SchemaInterceptor schemaInterceptor = ( SchemaInterceptor ) getService().getInterceptor(
+            InterceptorEnum.SCHEMA_INTERCEPTOR.getName() );
+
+        // Warm up
+        add( connection, "warmup" );
+
+        schemaInterceptor.setSchemaCheckTemplateCacheSize( 0 );
+        long perSecondNoTemplate = add( connection, "notemplate" );
+        assertEquals( 0, schemaInterceptor.getSchemaCheckTemplateCount() );
+
+        schemaInterceptor.setSchemaCheckTemplateCacheSize( SchemaInterceptor.DEFAULT_SCHEMA_CHECK_TEMPLATE_CACHE_SIZE );
+        long perSecondTemplate = add( connection, "template" );
+        assertTrue( schemaInterceptor.getSchemaCheckTemplateCount() > 0 );
+
+        System.out.println( "Adds per second, schema checks computed per entry : " + perSecondNoTemplate );
+        System.out.println( "Adds per second, schema check templates : " + perSecondTemplate );
+
+        connection.close();
+    }
+
+
+    @Test
+    public void testTemplateSharedByObjectClassNames() throws Exception
+    {
+        LdapConnection connection = IntegrationUtils.getAdminConnection( getService() );
+        SchemaInterceptor schemaInterceptor = ( SchemaInterceptor ) getService().getInterceptor(
+            InterceptorEnum.SCHEMA_INTERCEPTOR.getName() );
+
+        // Start with an empty cache
+        schemaInterceptor.setSchemaCheckTemplateCacheSize( SchemaInterceptor.DEFAULT_SCHEMA_CHECK_TEMPLATE_CACHE_SIZE );
+        assertEquals( 0, schemaInterceptor.getSchemaCheckTemplateCount() );
+
+        // The person ObjectClass, by name in various cases, and by OID
+        String[] objectClasses = { "person", "Person", "PERSON", "2.5.6.6" };
+
+        for ( int i = 0; i < objectClasses.length; i++ )
+        {
+            connection.add( new DefaultEntry(
+                "cn=person" + i + ",ou=system",
+                "objectClass: top",
+                "objectClass", objectClasses[i],
+                "cn", "person" + i,
+                "sn", "person" + i ) );
+        }
+
+        assertEquals( 1, schemaInterceptor.getSchemaCheckTemplateCount() );
+
+        // The given value is kept, and the ObjectClass is not added again under another name
+        Attribute objectClass = connection.lookup( "cn=person3,ou=system" ).get( "objectClass" );
+        assertEquals( 2, objectClass.size() );
+        assertTrue( objectClass.contains( "2.5.6.6" ) );
+
+        connection.close();
+    }
+}
@@ -0,0 +1,341 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.subtree;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.model.subtree.SubtreeSpecificationParser;
+import org.apache.directory.server.core.annotations.ApplyLdifs;
+import org.apache.directory.server.core.annotations.CreateDS;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.OperationManager;
+import org.apache.directory.server.core.api.partition.PartitionWriteTxn;
+import org.apache.directory.server.core.integ.AbstractLdapTestUnit;
+import org.apache.directory.server.core.integ.FrameworkRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Test the resumption of the background subentry retagging jobs.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(FrameworkRunner.class)
+@CreateDS(name = "SubentryRetaggerIT")
+@ApplyLdifs(
+    {
+        "dn: dc=retag,ou=system",
+        "objectClass: top",
+        "objectClass: domain",
+        "dc: retag",
+        "",
+        "dn: cn=user1,dc=retag,ou=system",
+        "objectClass: top",
+        "objectClass: person",
+        "cn: user1",
+        "sn: user1",
+        "",
+        "dn: cn=user2,dc=retag,ou=system",
+        "objectClass: top",
+        "objectClass: person",
+        "cn: user2",
+        "sn: user2",
+        "",
+        "dn: cn=user3,dc=retag,ou=system",
+        "objectClass: top",
+        "objectClass: person",
+        "cn: user3",
+        "sn: user3",
+        "",
+        "dn: cn=user4,dc=retag,ou=system",
+        "objectClass: top",
+        "objectClass: person",
+        "cn: user4",
+        "sn: user4",
+        "",
+        "dn: cn=user5,dc=retag,ou=system",
+        "objectClass: top",
+        "objectClass: person",
+        "cn: user5",
+        "sn: user5",
+        "",
+        "dn: cn=user6,dc=retag,ou=system",
+        "objectClass: top",
+        "objectClass: person",
+        "cn: user6",
+        "sn: user6",
+        "",
+        "dn: cn=user7,dc=retag,ou=system",
+        "objectClass: top",
+        "objectClass: person",
+        "cn: user7",
+        "sn: user7",
+        "",
+        "dn: cn=user8,dc=retag,ou=system",
+        "objectClass: top",
+        "objectClass: person",
+        "cn: user8",
+        "sn: user8",
+        "",
+        "dn: cn=user9,dc=retag,ou=system",
+        "objectClass: top",
+        "objectClass: person",
+        "cn: user9",
+        "sn: user9",
+        "",
+        "dn: cn=user10,dc=retag,ou=system",
+        "objectClass: top",
+        "objectClass: person",
+        "cn: user10",
+        "sn: user10",
+        "",
+        "dn: cn=user11,dc=retag,ou=system",
+        "objectClass: top",
+        "objectClass: person",
+        "cn: user11",
+        "sn: user11",
+        "",
+        "dn: cn=user12,dc=retag,ou=system",
+        "objectClass: top",
+        "objectClass: person",
+        "cn: user12",
+        "sn: user12",
+        "",
+        "dn: cn=user13,dc=retag,ou=system",
+        "objectClass: top",
+        "objectClass: person",
+        "cn: user13",
+        "sn: user13",
+        "",
+        "dn: cn=user14,dc=retag,ou=system",
+        "objectClass: top",
+        "objectClass: person",
+        "cn: user14",
+        "sn: user14",
+        "",
+        "dn: cn=user15,dc=retag,ou=system",
+        "objectClass: top",
+        "objectClass: person",
+        "cn: user15",
+        "sn: user15",
+        "",
+        "dn: cn=user16,dc=retag,ou=system",
+        "objectClass: top",
+        "objectClass: person",
+        "cn: user16",
+        "sn: user16",
+        "",
+        "dn: cn=user17,dc=retag,ou=system",
+        "objectClass: top",
+        "objectClass: person",
+        "cn: user17",
+        "sn: user17",
+        "",
+        "dn: cn=user18,dc=retag,ou=system",
+        "objectClass: top",
+        "objectClass: person",
+        "cn: user18",
+        "sn: user18",
+        "",
+        "dn: cn=user19,dc=retag,ou=system",
+        "objectClass: top",
+        "objectClass: person",
+        "cn: user19",
+        "sn: user19",
+        "",
+        "dn: cn=user20,dc=retag,ou=system",
+        "objectClass: top",
+        "objectClass: person",
+        "cn: user20",
+        "sn: user20"
+    })
+public class SubentryRetaggerIT extends AbstractLdapTestUnit
+{
+    /** The number of entries modified in a single transaction */
+    private static final int BATCH_SIZE = 5;
+
+    /** The AP and its 20 children */
+    private static final int NB_ENTRIES = 21;
+
+    /** The maximum time we wait for a job */
+    private static final long TIMEOUT = 30000L;
+
+    private static final String SUBENTRY_DN = "cn=retagging,dc=retag,ou=system";
+
+    private static final String COMMITTED_SUBENTRY_DN = "cn=committed,dc=retag,ou=system";
+
+
+    /**
+     * Interrupt a job once its first batch has been committed, and check that the resumed
+     * job restarts after the last entry of this batch.
+     */
+    @Test
+    public void testResumeAfterInterruption() throws Exception
+    {
+        SchemaManager schemaManager = getService().getSchemaManager();
+        SubtreeSpecificationParser ssParser = new SubtreeSpecificationParser( schemaManager );
+        Dn subentryDn = new Dn( schemaManager, SUBENTRY_DN );
+        List<AttributeType> attributeTypes = Collections.singletonList( getService().getAtProvider()
+            .getCollectiveAttributeSubentries() );
+        OperationManager operationManager = getService().getOperationManager();
+
+        SubentryRetagger retagger = new SubentryRetagger( getService(), BATCH_SIZE );
+        SubentryRetaggingJob job;
+
+        // Hold the write lock, so that the first batch can't be applied before the retagger is stopped
+        operationManager.lockWrite();
+
+        try
+        {
+            job = retagger.submit( null, SubentryRetaggingJob.Operation.ADD, subentryDn, "{}",
+                ssParser.parse( "{}" ), attributeTypes );
+
+            long deadline = System.currentTimeMillis() + TIMEOUT;
+
+            while ( ( job.getExamined() < BATCH_SIZE ) && ( System.currentTimeMillis() < deadline ) )
+            {
+                Thread.sleep( 10L );
+            }
+
+            assertEquals( BATCH_SIZE, job.getExamined() );
+            retagger.stop();
+        }
+        finally
+        {
+            operationManager.unlockWrite();
+        }
+
+        waitForJobs( retagger );
+
+        // The first batch has been committed, then the job has been interrupted
+        assertEquals( SubentryRetaggingJob.State.RUNNING, job.getState() );
+        assertEquals( BATCH_SIZE, job.getModified() );
+        assertNotNull( job.getLastDn() );
+        assertEquals( BATCH_SIZE, countTagged( SUBENTRY_DN ) );
+
+        // Resume the job, as it would be on the next start
+        SubentryRetagger resumedRetagger = new SubentryRetagger( getService(), BATCH_SIZE );
+        resumedRetagger.resume( ssParser );
+
+        assertEquals( 1, resumedRetagger.getJobs().size() );
+        SubentryRetaggingJob resumedJob = resumedRetagger.getJobs().get( 0 );
+        waitForJobs( resumedRetagger );
+
+        assertEquals( SubentryRetaggingJob.State.COMPLETED, resumedJob.getState() );
+        assertEquals( job.getId(), resumedJob.getId() );
+        assertEquals( job.getLastDn(), resumedJob.getResumeDn() );
+
+        // The entries of the first batch have been skipped, and not examined again
+        assertEquals( BATCH_SIZE, resumedJob.getSkipped() );
+        assertEquals( NB_ENTRIES, resumedJob.getExamined() );
+        assertEquals( NB_ENTRIES, resumedJob.getModified() );
+        assertEquals( NB_ENTRIES, countTagged( SUBENTRY_DN ) );
+
+        resumedRetagger.stop();
+    }
+
+
+    /**
+     * Check that a job submitted within a write transaction is only started once this transaction
+     * has been committed, and is discarded if it has been aborted.
+     */
+    @Test
+    public void testSubmitOnCommit() throws Exception
+    {
+        SchemaManager schemaManager = getService().getSchemaManager();
+        SubtreeSpecificationParser ssParser = new SubtreeSpecificationParser( schemaManager );
+        Dn subentryDn = new Dn( schemaManager, COMMITTED_SUBENTRY_DN );
+        List<AttributeType> attributeTypes = Collections.singletonList( getService().getAtProvider()
+            .getCollectiveAttributeSubentries() );
+
+        SubentryRetagger retagger = new SubentryRetagger( getService(), BATCH_SIZE );
+
+        PartitionWriteTxn abortedTxn = new PartitionWriteTxn();
+        retagger.submit( abortedTxn, SubentryRetaggingJob.Operation.ADD, subentryDn, "{}",
+            ssParser.parse( "{}" ), attributeTypes );
+        abortedTxn.abort();
+
+        assertTrue( retagger.getJobs().isEmpty() );
+
+        PartitionWriteTxn committedTxn = new PartitionWriteTxn();
+        SubentryRetaggingJob job = retagger.submit( committedTxn, SubentryRetaggingJob.Operation.ADD, subentryDn,
+            "{}", ssParser.parse( "{}" ), attributeTypes );
+
+        assertTrue( retagger.getJobs().isEmpty() );
+
+        committedTxn.commit();
+        waitForJobs( retagger );
+
+        assertEquals( SubentryRetaggingJob.State.COMPLETED, job.getState() );
+        assertEquals( NB_ENTRIES, countTagged( COMMITTED_SUBENTRY_DN ) );
+
+        retagger.stop();
+    }
+
+
+    private void waitForJobs( SubentryRetagger retagger ) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+
+        while ( retagger.hasActiveJobs() && ( System.currentTimeMillis() < deadline ) )
+        {
+            Thread.sleep( 10L );
+        }
+
+        assertFalse( "A retagging job is still running", retagger.hasActiveJobs() );
+    }
+
+
+    /**
+     * @return The number of entries referencing a subentry
+     */
+    private int countTagged( String subentryDn ) throws Exception
+    {
+        CoreSession session = getService().getAdminSession();
+        int tagged = 0;
+
+        for ( int i = 0; i < NB_ENTRIES; i++ )
+        {
+            String dn = ( i == 0 ) ? "dc=retag,ou=system" : "cn=user" + i + ",dc=retag,ou=system";
+            Entry entry = session.lookup( new Dn( getService().getSchemaManager(), dn ), "+" );
+            Attribute subentries = entry.get( getService().getAtProvider().getCollectiveAttributeSubentries() );
+
+            if ( ( subentries != null ) && subentries.contains( subentryDn ) )
+            {
+                tagged++;
+            }
+        }
+
+        return tagged;
+    }
+}
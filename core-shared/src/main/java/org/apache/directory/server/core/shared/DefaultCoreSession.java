@@ -91,6 +91,7 @@ import org.apache.directory.server.core.api.interceptor.context.MoveAndRenameOpe
 import org.apache.directory.server.core.api.interceptor.context.MoveOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.OperationContext;
 import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.SearchBudget;
 import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.UnbindOperationContext;
 import org.apache.directory.server.core.api.partition.Partition;
@@ -1184,8 +1185,31 @@ public class DefaultCoreSession implements CoreSession
      */
     @Override
     public Cursor<Entry> search( SearchRequest searchRequest ) throws LdapException
+    {
+        return search( searchRequest, null );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cursor<Entry> search( SearchRequest searchRequest, SearchBudget budget ) throws LdapException
+    {
+        return search( searchRequest, budget, null );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cursor<Entry> search( SearchRequest searchRequest, SearchBudget budget, String resumeAfterId )
+        throws LdapException
     {
         SearchOperationContext searchContext = new SearchOperationContext( this, searchRequest );
+        searchContext.setBudget( budget );
+        searchContext.setResumeAfterId( resumeAfterId );
         searchContext.setSyncreplSearch( searchRequest.getControls().containsKey( SyncRequestValue.OID ) );
 
         OperationManager operationManager = directoryService.getOperationManager();
@@ -1528,7 +1552,9 @@ public class DefaultCoreSession implements CoreSession
                 partitionTxn.getValue().abort();
             }
         }
-        
+
+        // The next session transaction must not reuse the ended transactions
+        transactionMap.clear();
         hasSessionTransaction = false;
     }
 
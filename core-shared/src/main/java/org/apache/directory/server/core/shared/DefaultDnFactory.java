@@ -27,6 +27,8 @@ import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
 import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.server.core.api.DnFactory;
+import org.apache.directory.server.core.api.metrics.MetricsRegistry;
+import org.apache.directory.server.core.api.metrics.MetricsSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,7 +41,7 @@ import com.github.benmanes.caffeine.cache.Caffeine;
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
-public class DefaultDnFactory implements DnFactory
+public class DefaultDnFactory implements DnFactory, MetricsSource
 {
     private static final Logger LOG = LoggerFactory.getLogger( DefaultDnFactory.class );
 
@@ -67,7 +69,17 @@ public class DefaultDnFactory implements DnFactory
     {
         this.schemaManager = schemaManager;
         this.dnCache = Caffeine.newBuilder().maximumSize( cacheSize ).expireAfterAccess( Duration.ofMinutes( 10L ) )
-            .build();
+            .recordStats().build();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void registerMetrics( MetricsRegistry registry, String prefix )
+    {
+        registry.registerCache( prefix + "cache", dnCache );
     }
 
 
@@ -21,8 +21,11 @@ package org.apache.directory.server.core.shared;
 
 
 import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.naming.directory.SearchControls;
 
@@ -53,16 +56,29 @@ import org.apache.directory.server.core.api.partition.PartitionTxn;
  * <br>
  * Referrals are stored in a tree, where leaves are the referrals. We are using
  * the very same structure than for the partition manager.
+ * <br>
+ * The tree used by the lookups is never modified : each time the referrals are updated,
+ * a new tree is built and published when the write lock is released. The lookups don't
+ * need any lock, and they return immediately when the server has no referral at all.
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
 public class ReferralManagerImpl implements ReferralManager
 {
-    /** The referrals tree */
-    private DnNode<Entry> referrals;
+    /** The referrals tree used by the lookups, never modified. Null if there are no referrals */
+    private volatile DnNode<Entry> referrals;
+
+    /** The referrals tree being updated, only accessed with the write lock */
+    private DnNode<Entry> workingReferrals;
+
+    /** The referrals accepted in the working tree, in the order they were added */
+    private Map<Dn, Entry> referralEntries = new LinkedHashMap<>();
 
-    /** A lock to guarantee the manager consistency */
-    private ReentrantReadWriteLock mutex = new ReentrantReadWriteLock();
+    /** Tells if the working tree has been modified since the last publication */
+    private boolean modified;
+
+    /** A lock serializing the referrals updates */
+    private ReentrantLock mutex = new ReentrantLock();
 
     /** A storage for the ObjectClass attributeType */
     private AttributeType objectClassAT;
@@ -81,7 +97,7 @@ public class ReferralManagerImpl implements ReferralManager
 
         try
         {
-            referrals = new DnNode<>();
+            workingReferrals = new DnNode<>();
             PartitionNexus nexus = directoryService.getPartitionNexus();
     
             Set<String> suffixes = nexus.listSuffixes();
@@ -98,14 +114,13 @@ public class ReferralManagerImpl implements ReferralManager
 
 
     /**
-     * Get a read-lock on the referralManager.
-     * No read operation can be done on the referralManager if this
-     * method is not called before.
+     * The lookups are done on an immutable tree : they don't need any lock. This
+     * method does nothing.
      */
     @Override
     public void lockRead()
     {
-        mutex.readLock().lock();
+        // Nothing to do
     }
 
 
@@ -117,26 +132,65 @@ public class ReferralManagerImpl implements ReferralManager
     @Override
     public void lockWrite()
     {
-        mutex.writeLock().lock();
+        mutex.lock();
     }
 
 
     /**
-     * Release the read-write lock on the referralManager.
-     * This method must be called after having read or modified the
-     * ReferralManager
+     * Release the write lock on the referralManager. If the referrals have been
+     * modified, the new referrals tree is published when the outermost write lock
+     * is released. Does nothing if the current thread does not hold the write lock.
      */
     @Override
     public void unlock()
     {
-        if ( mutex.isWriteLockedByCurrentThread() )
+        if ( mutex.isHeldByCurrentThread() )
         {
-            mutex.writeLock().unlock();
+            try
+            {
+                if ( ( mutex.getHoldCount() == 1 ) && modified )
+                {
+                    publish();
+                }
+            }
+            finally
+            {
+                mutex.unlock();
+            }
         }
-        else
+    }
+
+
+    /**
+     * Build a new referrals tree from the accepted referrals, and make it visible to
+     * the lookups. Must be called with the write lock.
+     */
+    private void publish()
+    {
+        modified = false;
+
+        if ( referralEntries.isEmpty() )
+        {
+            referrals = null;
+
+            return;
+        }
+
+        DnNode<Entry> snapshot = new DnNode<>();
+
+        for ( Map.Entry<Dn, Entry> referral : referralEntries.entrySet() )
         {
-            mutex.readLock().unlock();
+            try
+            {
+                snapshot.add( referral.getKey(), referral.getValue() );
+            }
+            catch ( LdapException le )
+            {
+                // Can't happen, they have been accepted in the same order in the working tree
+            }
         }
+
+        referrals = snapshot;
     }
 
 
@@ -146,14 +200,22 @@ public class ReferralManagerImpl implements ReferralManager
     @Override
     public void addReferral( Entry entry )
     {
+        lockWrite();
+
         try
         {
-            referrals.add( entry.getDn(), entry );
+            workingReferrals.add( entry.getDn(), entry );
+            referralEntries.put( entry.getDn(), entry );
+            modified = true;
         }
         catch ( LdapException ne )
         {
             // Do nothing
         }
+        finally
+        {
+            unlock();
+        }
     }
 
 
@@ -174,58 +236,57 @@ public class ReferralManagerImpl implements ReferralManager
         CoreSession adminSession = directoryService.getAdminSession();
         PartitionNexus nexus = directoryService.getPartitionNexus();
 
-        for ( String suffix : suffixes )
+        // The new referrals are published once all the partitions have been read
+        lockWrite();
+
+        try
         {
-            // We will store each entry's Dn into the Referral tree
-            Dn suffixDn = directoryService.getDnFactory().create( suffix );
+            for ( String suffix : suffixes )
+            {
+                // We will store each entry's Dn into the Referral tree
+                Dn suffixDn = directoryService.getDnFactory().create( suffix );
 
-            SearchOperationContext searchOperationContext = new SearchOperationContext( adminSession, suffixDn,
-                referralFilter, searchControl );
+                SearchOperationContext searchOperationContext = new SearchOperationContext( adminSession, suffixDn,
+                    referralFilter, searchControl );
             
-            Partition partition = nexus.getPartition( suffixDn );
+                Partition partition = nexus.getPartition( suffixDn );
             
-            try ( PartitionTxn partitionTxn = partition.beginReadTransaction() )
-            {
-                searchOperationContext.setAliasDerefMode( AliasDerefMode.DEREF_ALWAYS );
-                searchOperationContext.setTransaction( partitionTxn );
-                searchOperationContext.setPartition( partition );
-                EntryFilteringCursor cursor = nexus.search( searchOperationContext );
-    
-                try
+                try ( PartitionTxn partitionTxn = partition.beginReadTransaction() )
                 {
-                    // Move to the first entry in the cursor
-                    cursor.beforeFirst();
+                    searchOperationContext.setAliasDerefMode( AliasDerefMode.DEREF_ALWAYS );
+                    searchOperationContext.setTransaction( partitionTxn );
+                    searchOperationContext.setPartition( partition );
+                    EntryFilteringCursor cursor = nexus.search( searchOperationContext );
     
-                    while ( cursor.next() )
+                    try
                     {
-                        Entry entry = cursor.get();
+                        // Move to the first entry in the cursor
+                        cursor.beforeFirst();
     
-                        // Lock the referralManager
-                        lockWrite();
-    
-                        try
+                        while ( cursor.next() )
                         {
+                            Entry entry = cursor.get();
+    
                             // Add it at the right place
                             addReferral( entry );
                         }
-                        finally
-                        { 
-                            // Unlock the referralManager
-                            unlock();
-                        }
-                    }
     
-                    cursor.close();
+                        cursor.close();
+                    }
+                    catch ( Exception e )
+                    {
+                        throw new LdapOperationException( e.getMessage(), e );
+                    }
                 }
-                catch ( Exception e )
+                catch ( IOException ioe )
                 {
-                    throw new LdapOperationException( e.getMessage(), e );
+                    throw new LdapOtherException( ioe.getMessage(), ioe );
                 }
             }
-            catch ( IOException ioe )
-            {
-                throw new LdapOtherException( ioe.getMessage(), ioe );
-            }
+        }
+        finally
+        {
+            unlock();
         }
     }
 
@@ -261,13 +322,21 @@ public class ReferralManagerImpl implements ReferralManager
     
             // Move to the first entry in the cursor
             cursor.beforeFirst();
+            lockWrite();
     
-            while ( cursor.next() )
+            try
             {
-                Entry entry = cursor.get();
-    
-                // Add it at the right place
-                removeReferral( entry );
+                while ( cursor.next() )
+                {
+                    Entry entry = cursor.get();
+        
+                    // Add it at the right place
+                    removeReferral( entry );
+                }
+            }
+            finally
+            {
+                unlock();
             }
         } 
     }
@@ -279,7 +348,18 @@ public class ReferralManagerImpl implements ReferralManager
     @Override
     public boolean hasParentReferral( Dn dn )
     {
-        DnNode<Entry> referral = referrals.getNode( dn );
+        return hasParentReferral( referrals, dn );
+    }
+
+
+    private boolean hasParentReferral( DnNode<Entry> snapshot, Dn dn )
+    {
+        if ( snapshot == null )
+        {
+            return false;
+        }
+
+        DnNode<Entry> referral = snapshot.getNode( dn );
 
         return ( referral != null ) && referral.isLeaf();
     }
@@ -291,12 +371,15 @@ public class ReferralManagerImpl implements ReferralManager
     @Override
     public Entry getParentReferral( Dn dn )
     {
-        if ( !hasParentReferral( dn ) )
+        // Use the same tree for both lookups
+        DnNode<Entry> snapshot = referrals;
+
+        if ( !hasParentReferral( snapshot, dn ) )
         {
             return null;
         }
 
-        return referrals.getElement( dn );
+        return snapshot.getElement( dn );
     }
 
 
@@ -306,7 +389,14 @@ public class ReferralManagerImpl implements ReferralManager
     @Override
     public boolean isReferral( Dn dn )
     {
-        Entry parent = referrals.getElement( dn );
+        DnNode<Entry> snapshot = referrals;
+
+        if ( snapshot == null )
+        {
+            return false;
+        }
+
+        Entry parent = snapshot.getElement( dn );
 
         if ( parent != null )
         {
@@ -325,6 +415,31 @@ public class ReferralManagerImpl implements ReferralManager
     @Override
     public void removeReferral( Entry entry ) throws LdapException
     {
-        referrals.remove( entry.getDn() );
+        lockWrite();
+
+        try
+        {
+            workingReferrals.remove( entry.getDn() );
+            referralEntries.remove( entry.getDn() );
+
+            // Removing a node may have removed the referrals below it
+            Iterator<Entry> iterator = referralEntries.values().iterator();
+
+            while ( iterator.hasNext() )
+            {
+                Entry referral = iterator.next();
+
+                if ( workingReferrals.getElement( referral.getDn() ) != referral )
+                {
+                    iterator.remove();
+                }
+            }
+
+            modified = true;
+        }
+        finally
+        {
+            unlock();
+        }
     }
 }
@@ -78,6 +78,8 @@ import org.apache.directory.server.core.api.interceptor.context.MoveOperationCon
 import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.UnbindOperationContext;
+import org.apache.directory.server.core.api.metrics.MetricsRegistry;
+import org.apache.directory.server.core.api.metrics.MetricsSource;
 import org.apache.directory.server.core.api.partition.AbstractPartition;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionNexus;
@@ -846,6 +848,13 @@ public class DefaultPartitionNexus extends AbstractPartition implements Partitio
             partitions.put( partitionSuffix.getNormName(), partition );
             partitionLookupTree.add( partition.getSuffixDn(), partition );
 
+            if ( ( partition instanceof MetricsSource ) && ( directoryService != null )
+                && ( directoryService.getMetricsRegistry() != null ) )
+            {
+                ( ( MetricsSource ) partition ).registerMetrics( directoryService.getMetricsRegistry(),
+                    MetricsRegistry.PARTITION_PREFIX + partition.getId() + '.' );
+            }
+
             Attribute namingContexts = rootDse.get( SchemaConstants.NAMING_CONTEXTS_AT );
 
             if ( namingContexts == null )
@@ -920,6 +929,12 @@ public class DefaultPartitionNexus extends AbstractPartition implements Partitio
 
         partitions.remove( partitionDn );
 
+        if ( ( directoryService != null ) && ( directoryService.getMetricsRegistry() != null ) )
+        {
+            directoryService.getMetricsRegistry().unregisterAll(
+                MetricsRegistry.PARTITION_PREFIX + partition.getId() + '.' );
+        }
+
         try
         {
             partition.destroy( partition.beginReadTransaction() );
@@ -0,0 +1,494 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.shared.partition;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.cursor.ListCursor;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
+import org.apache.directory.api.ldap.model.exception.LdapNoSuchObjectException;
+import org.apache.directory.api.ldap.model.exception.LdapUnwillingToPerformException;
+import org.apache.directory.api.ldap.model.filter.ExprNode;
+import org.apache.directory.api.ldap.model.filter.ObjectClassNode;
+import org.apache.directory.api.ldap.model.filter.UndefinedNode;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.name.Rdn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.model.schema.UsageEnum;
+import org.apache.directory.server.core.api.event.ExpressionEvaluator;
+import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
+import org.apache.directory.server.core.api.filtering.EntryFilteringCursorImpl;
+import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.DeleteOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.HasEntryOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.LookupOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.ModifyOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.MoveAndRenameOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.MoveOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.UnbindOperationContext;
+import org.apache.directory.server.core.api.metrics.Gauge;
+import org.apache.directory.server.core.api.metrics.LatencyHistogram;
+import org.apache.directory.server.core.api.metrics.MetricsMBean;
+import org.apache.directory.server.core.api.metrics.MetricsRegistry;
+import org.apache.directory.server.core.api.partition.AbstractPartition;
+import org.apache.directory.server.core.api.partition.PartitionReadTxn;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.core.api.partition.PartitionWriteTxn;
+import org.apache.directory.server.core.api.partition.Subordinates;
+
+
+/**
+ * A read-only partition exposing the metrics of a {@link MetricsRegistry} under
+ * <em>cn=monitor</em>. Each metric is an entry named after it, for instance
+ * <em>cn=operation.search,cn=monitor</em>, whose values are operational attributes :
+ * <ul>
+ *   <li><em>apacheMonitorValue</em> for a gauge</li>
+ *   <li><em>apacheMonitorCount</em>, <em>apacheMonitorMeanMicros</em>, <em>apacheMonitorP50Micros</em>,
+ *   <em>apacheMonitorP99Micros</em>, <em>apacheMonitorP999Micros</em> and <em>apacheMonitorMaxMicros</em>
+ *   for a histogram</li>
+ * </ul>
+ * They are only returned when requested, with '+' or by name. The entries are built
+ * from the current metrics on each request, so nothing is stored. The attribute types
+ * are added to the schema when the partition is initialized, if they are not already
+ * defined.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class MonitorPartition extends AbstractPartition
+{
+    /** The partition ID */
+    public static final String ID = "monitor";
+
+    /** The partition suffix */
+    public static final String SUFFIX = "cn=monitor";
+
+    /** The gauge value attribute type */
+    public static final String MONITOR_VALUE_AT = "apacheMonitorValue";
+
+    /** The structural ObjectClass of the monitor entries */
+    private static final String APPLICATION_PROCESS_OC = "applicationProcess";
+
+    /** The OID arc of the monitor attribute types */
+    private static final String MONITOR_OID_ARC = "1.3.6.1.4.1.18060.0.4.1.10.";
+
+    /**
+     * The monitor attribute types : OID, name, published histogram statistic, description.
+     * The first one holds the gauges value.
+     */
+    private static final String[][] MONITOR_ATTRIBUTE_TYPES =
+        {
+            { MONITOR_OID_ARC + "1", MONITOR_VALUE_AT, null, "The current value of a gauge" },
+            { MONITOR_OID_ARC + "2", "apacheMonitorCount", "count", "The number of recorded latencies" },
+            { MONITOR_OID_ARC + "3", "apacheMonitorMeanMicros", "meanMicros", "The mean latency, in microseconds" },
+            { MONITOR_OID_ARC + "4", "apacheMonitorP50Micros", "p50Micros", "The median latency, in microseconds" },
+            { MONITOR_OID_ARC + "5", "apacheMonitorP99Micros", "p99Micros",
+                "The 99th percentile of the latencies, in microseconds" },
+            { MONITOR_OID_ARC + "6", "apacheMonitorP999Micros", "p999Micros",
+                "The 99.9th percentile of the latencies, in microseconds" },
+            { MONITOR_OID_ARC + "7", "apacheMonitorMaxMicros", "maxMicros", "The highest latency, in microseconds" }
+    };
+
+    /** The published metrics */
+    private final MetricsRegistry registry;
+
+    /** The monitor attribute types, in the MONITOR_ATTRIBUTE_TYPES order */
+    private final AttributeType[] monitorAttributeTypes = new AttributeType[MONITOR_ATTRIBUTE_TYPES.length];
+
+    /** The evaluator of the search filters */
+    private ExpressionEvaluator evaluator;
+
+
+    /**
+     * Creates a new MonitorPartition
+     *
+     * @param schemaManager The SchemaManager instance
+     * @param registry The published metrics
+     * @throws LdapInvalidDnException If the suffix can't be parsed
+     */
+    public MonitorPartition( SchemaManager schemaManager, MetricsRegistry registry ) throws LdapInvalidDnException
+    {
+        this.schemaManager = schemaManager;
+        this.registry = registry;
+        this.id = ID;
+        this.suffixDn = new Dn( schemaManager, SUFFIX );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doInit() throws LdapException
+    {
+        for ( int i = 0; i < MONITOR_ATTRIBUTE_TYPES.length; i++ )
+        {
+            String[] definition = MONITOR_ATTRIBUTE_TYPES[i];
+            AttributeType attributeType = schemaManager.getAttributeType( definition[0] );
+
+            if ( attributeType == null )
+            {
+                attributeType = new AttributeType( definition[0] );
+                attributeType.setNames( definition[1] );
+                attributeType.setDescription( definition[3] );
+                attributeType.setSyntaxOid( SchemaConstants.INTEGER_SYNTAX );
+                attributeType.setEqualityOid( SchemaConstants.INTEGER_MATCH_MR_OID );
+                attributeType.setOrderingOid( SchemaConstants.INTEGER_ORDERING_MATCH_MR_OID );
+                attributeType.setSingleValued( true );
+                attributeType.setUserModifiable( false );
+                attributeType.setUsage( UsageEnum.DSA_OPERATION );
+                attributeType.setEnabled( true );
+
+                schemaManager.add( attributeType );
+                attributeType = schemaManager.lookupAttributeTypeRegistry( definition[0] );
+            }
+
+            monitorAttributeTypes[i] = attributeType;
+        }
+
+        evaluator = new ExpressionEvaluator( schemaManager );
+    }
+
+
+    /**
+     * Builds the context entry and the entries of all the metrics
+     */
+    private List<Entry> buildEntries() throws LdapException
+    {
+        Map<String, Gauge> gauges = registry.getGauges();
+        Map<String, LatencyHistogram> histograms = registry.getHistograms();
+        List<Entry> entries = new ArrayList<>( gauges.size() + histograms.size() + 1 );
+
+        entries.add( new DefaultEntry( schemaManager, suffixDn,
+            SchemaConstants.OBJECT_CLASS_AT, SchemaConstants.TOP_OC,
+            SchemaConstants.OBJECT_CLASS_AT, APPLICATION_PROCESS_OC,
+            SchemaConstants.CN_AT, ID,
+            SchemaConstants.DESCRIPTION_AT, "The ApacheDS metrics" ) );
+
+        for ( Map.Entry<String, Gauge> gauge : gauges.entrySet() )
+        {
+            Entry entry = createMetricEntry( gauge.getKey() );
+            entry.add( monitorAttributeTypes[0], Long.toString( gauge.getValue().getValue() ) );
+            entries.add( entry );
+        }
+
+        for ( Map.Entry<String, LatencyHistogram> histogram : histograms.entrySet() )
+        {
+            Entry entry = createMetricEntry( histogram.getKey() );
+            LatencyHistogram.Snapshot snapshot = histogram.getValue().snapshot();
+
+            for ( int i = 1; i < MONITOR_ATTRIBUTE_TYPES.length; i++ )
+            {
+                Long value = MetricsMBean.getStatistic( snapshot, MONITOR_ATTRIBUTE_TYPES[i][2] );
+                entry.add( monitorAttributeTypes[i], value.toString() );
+            }
+
+            entries.add( entry );
+        }
+
+        return entries;
+    }
+
+
+    private Entry createMetricEntry( String name ) throws LdapException
+    {
+        Dn dn = new Dn( schemaManager, SchemaConstants.CN_AT + '=' + Rdn.escapeValue( name ) + ',' + SUFFIX );
+
+        return new DefaultEntry( schemaManager, dn,
+            SchemaConstants.OBJECT_CLASS_AT, SchemaConstants.TOP_OC,
+            SchemaConstants.OBJECT_CLASS_AT, APPLICATION_PROCESS_OC,
+            SchemaConstants.CN_AT, name );
+    }
+
+
+    /**
+     * Finds the entry with the given Dn
+     */
+    private Entry findEntry( Dn dn ) throws LdapException
+    {
+        if ( !dn.isDescendantOf( suffixDn ) && !dn.equals( suffixDn ) )
+        {
+            return null;
+        }
+
+        for ( Entry entry : buildEntries() )
+        {
+            if ( entry.getDn().equals( dn ) )
+            {
+                return entry;
+            }
+        }
+
+        return null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public EntryFilteringCursor search( SearchOperationContext searchContext ) throws LdapException
+    {
+        Dn baseDn = searchContext.getDn();
+        List<Entry> entries = buildEntries();
+        boolean baseFound = false;
+
+        for ( Entry entry : entries )
+        {
+            if ( entry.getDn().equals( baseDn ) )
+            {
+                baseFound = true;
+                break;
+            }
+        }
+
+        if ( !baseFound )
+        {
+            throw new LdapNoSuchObjectException( "The entry " + baseDn.getName() + " does not exist" );
+        }
+
+        List<Entry> selected = new ArrayList<>();
+        ExprNode filter = searchContext.getFilter();
+
+        for ( Entry entry : entries )
+        {
+            if ( isInScope( searchContext, entry.getDn() ) && matches( filter, entry ) )
+            {
+                selected.add( entry );
+            }
+        }
+
+        return new EntryFilteringCursorImpl( new ListCursor<Entry>( selected ), searchContext, schemaManager );
+    }
+
+
+    private boolean isInScope( SearchOperationContext searchContext, Dn dn )
+    {
+        Dn baseDn = searchContext.getDn();
+
+        switch ( searchContext.getScope() )
+        {
+            case OBJECT:
+                return dn.equals( baseDn );
+
+            case ONELEVEL:
+                return dn.isDescendantOf( baseDn ) && ( dn.size() == baseDn.size() + 1 );
+
+            default:
+                return dn.equals( baseDn ) || dn.isDescendantOf( baseDn );
+        }
+    }
+
+
+    private boolean matches( ExprNode filter, Entry entry ) throws LdapException
+    {
+        if ( ( filter == null ) || ( filter instanceof ObjectClassNode ) )
+        {
+            return true;
+        }
+
+        if ( filter instanceof UndefinedNode )
+        {
+            return false;
+        }
+
+        return evaluator.evaluate( filter, entry.getDn(), entry );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Entry lookup( LookupOperationContext lookupContext ) throws LdapException
+    {
+        return findEntry( lookupContext.getDn() );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasEntry( HasEntryOperationContext hasEntryContext ) throws LdapException
+    {
+        return findEntry( hasEntryContext.getDn() ) != null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Subordinates getSubordinates( PartitionTxn partitionTxn, Entry entry ) throws LdapException
+    {
+        Subordinates subordinates = new Subordinates();
+
+        if ( entry.getDn().equals( suffixDn ) )
+        {
+            long nbMetrics = registry.getGauges().size() + ( long ) registry.getHistograms().size();
+            subordinates.setNbChildren( nbMetrics );
+            subordinates.setNbSubordinates( nbMetrics );
+        }
+        else
+        {
+            subordinates.setNbChildren( 0L );
+            subordinates.setNbSubordinates( 0L );
+        }
+
+        return subordinates;
+    }
+
+
+    private LdapUnwillingToPerformException readOnly()
+    {
+        return new LdapUnwillingToPerformException( ResultCodeEnum.UNWILLING_TO_PERFORM,
+            "The " + SUFFIX + " partition is read only" );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Entry delete( DeleteOperationContext deleteContext ) throws LdapException
+    {
+        throw readOnly();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void add( AddOperationContext addContext ) throws LdapException
+    {
+        throw readOnly();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void modify( ModifyOperationContext modifyContext ) throws LdapException
+    {
+        throw readOnly();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void rename( RenameOperationContext renameContext ) throws LdapException
+    {
+        throw readOnly();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void move( MoveOperationContext moveContext ) throws LdapException
+    {
+        throw readOnly();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void moveAndRename( MoveAndRenameOperationContext moveAndRenameContext ) throws LdapException
+    {
+        throw readOnly();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void unbind( UnbindOperationContext unbindContext ) throws LdapException
+    {
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PartitionReadTxn beginReadTransaction()
+    {
+        return new PartitionReadTxn();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PartitionWriteTxn beginWriteTransaction()
+    {
+        return new PartitionWriteTxn();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void saveContextCsn( PartitionTxn partitionTxn ) throws LdapException
+    {
+        // Nothing is stored
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doRepair() throws LdapException
+    {
+        // Nothing is stored
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doDestroy( PartitionTxn partitionTxn ) throws LdapException
+    {
+        // Nothing is stored
+    }
+}
@@ -100,6 +100,9 @@ import org.apache.directory.server.core.api.interceptor.context.HasEntryOperatio
 import org.apache.directory.server.core.api.interceptor.context.LookupOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.OperationContext;
 import org.apache.directory.server.core.api.journal.Journal;
+import org.apache.directory.server.core.api.metrics.InterceptorTimings;
+import org.apache.directory.server.core.api.metrics.MetricsRegistry;
+import org.apache.directory.server.core.api.metrics.MetricsSource;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionNexus;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
@@ -124,6 +127,7 @@ import org.apache.directory.server.core.schema.SchemaInterceptor;
 import org.apache.directory.server.core.shared.DefaultCoreSession;
 import org.apache.directory.server.core.shared.DefaultDnFactory;
 import org.apache.directory.server.core.shared.partition.DefaultPartitionNexus;
+import org.apache.directory.server.core.shared.partition.MonitorPartition;
 import org.apache.directory.server.core.subtree.SubentryInterceptor;
 import org.apache.directory.server.core.trigger.TriggerInterceptor;
 import org.apache.directory.server.i18n.I18n;
@@ -164,6 +168,15 @@ public class DefaultDirectoryService implements DirectoryService
     /** the journal service */
     private Journal journal;
 
+    /** The runtime metrics, created before the OperationManager which records in it */
+    private final MetricsRegistry metricsRegistry = new MetricsRegistry();
+
+    /** Tells if the metrics are published through JMX and under cn=monitor */
+    private boolean monitorEnabled;
+
+    /** The interceptor timings, only recorded when the monitor is enabled */
+    private InterceptorTimings interceptorTimings;
+
     /**
      * the interface used to perform various operations on this
      * DirectoryService
@@ -266,6 +279,9 @@ public class DefaultDirectoryService implements DirectoryService
 
     private static final String LOCK_FILE_NAME = ".dirservice.lock";
 
+    /** The prefix of the DnFactory metrics */
+    private static final String DN_FACTORY_METRICS_PREFIX = "dnFactory.";
+
     /** The AccessControl AdministrativePoint cache */
     private DnNode<AccessControlAdministrativePoint> accessControlAPCache;
 
@@ -395,6 +411,46 @@ public class DefaultDirectoryService implements DirectoryService
     }
 
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MetricsRegistry getMetricsRegistry()
+    {
+        return metricsRegistry;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isMonitorEnabled()
+    {
+        return monitorEnabled;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setMonitorEnabled( boolean monitorEnabled )
+    {
+        this.monitorEnabled = monitorEnabled;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InterceptorTimings getInterceptorTimings()
+    {
+        return interceptorTimings;
+    }
+
+
     /**
      * Returns <tt>true</tt> if anonymous access is allowed on entries besides the RootDSE.
      * If the access control subsystem is enabled then access to some entries may not be
@@ -1321,8 +1377,11 @@ public class DefaultDirectoryService implements DirectoryService
         // And shutdown the server
         // --------------------------------------------------------------------
         LOG.debug( "---Deleting the DnCache" );
+        metricsRegistry.unregisterAll( DN_FACTORY_METRICS_PREFIX );
         dnFactory = null;
 
+        metricsRegistry.unregisterMBean();
+
         if ( lockFile != null )
         {
             try
@@ -1967,6 +2026,11 @@ public class DefaultDirectoryService implements DirectoryService
             dnFactory = new DefaultDnFactory( schemaManager, 10000 );
         }
 
+        if ( dnFactory instanceof MetricsSource )
+        {
+            ( ( MetricsSource ) dnFactory ).registerMetrics( metricsRegistry, DN_FACTORY_METRICS_PREFIX );
+        }
+
         // triggers partition to load schema fully from schema partition
         schemaPartition.initialize();
         partitions.add( schemaPartition );
@@ -1985,6 +2049,13 @@ public class DefaultDirectoryService implements DirectoryService
         partitionNexus.setDirectoryService( this );
         partitionNexus.initialize();
 
+        if ( monitorEnabled )
+        {
+            interceptorTimings = new InterceptorTimings( metricsRegistry );
+            partitionNexus.addContextPartition( new MonitorPartition( schemaManager, metricsRegistry ) );
+            metricsRegistry.registerMBean( instanceId );
+        }
+
         try
         {
             initializeSystemPartition();
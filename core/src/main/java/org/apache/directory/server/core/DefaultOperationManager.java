@@ -22,7 +22,9 @@ package org.apache.directory.server.core;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -52,6 +54,7 @@ import org.apache.directory.api.ldap.model.url.LdapUrl;
 import org.apache.directory.server.constants.ApacheSchemaConstants;
 import org.apache.directory.server.core.api.CoreSession;
 import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.OperationEnum;
 import org.apache.directory.server.core.api.OperationManager;
 import org.apache.directory.server.core.api.ReferralManager;
 import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
@@ -70,8 +73,13 @@ import org.apache.directory.server.core.api.interceptor.context.OperationContext
 import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.UnbindOperationContext;
+import org.apache.directory.server.core.api.metrics.Gauge;
+import org.apache.directory.server.core.api.metrics.InterceptorTimings;
+import org.apache.directory.server.core.api.metrics.LatencyHistogram;
+import org.apache.directory.server.core.api.metrics.MetricsRegistry;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.core.api.partition.PartitionWriteTxn;
 import org.apache.directory.server.i18n.I18n;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -102,17 +110,52 @@ public class DefaultOperationManager implements OperationManager
     private final DirectoryService directoryService;
 
     /** A lock used to protect against concurrent operations */
-    private ReadWriteLock rwLock = new ReentrantReadWriteLock( true );
+    private final ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock( true );
 
     /** A reference to the ObjectClass AT */
     protected AttributeType objectClassAT;
     
     /** The nbChildren count attributeType */
     protected AttributeType nbChildrenAT;
-    
+
+    /** The latencies of the completed operations */
+    private final Map<OperationEnum, LatencyHistogram> operationLatencies = new EnumMap<>( OperationEnum.class );
+
+    /** The time spent waiting for the read lock */
+    private final LatencyHistogram readLockWait;
+
+    /** The time spent waiting for the write lock */
+    private final LatencyHistogram writeLockWait;
+
     public DefaultOperationManager( DirectoryService directoryService )
     {
         this.directoryService = directoryService;
+
+        MetricsRegistry metricsRegistry = directoryService.getMetricsRegistry();
+
+        if ( metricsRegistry == null )
+        {
+            // Nothing will be published, but we still can record
+            metricsRegistry = new MetricsRegistry();
+        }
+
+        for ( OperationEnum operation : OperationEnum.getOperations() )
+        {
+            operationLatencies.put( operation,
+                metricsRegistry.getHistogram( MetricsRegistry.OPERATION_PREFIX + operation.getMethodName() ) );
+        }
+
+        readLockWait = metricsRegistry.getHistogram( MetricsRegistry.LOCK_PREFIX + "read.wait" );
+        writeLockWait = metricsRegistry.getHistogram( MetricsRegistry.LOCK_PREFIX + "write.wait" );
+
+        metricsRegistry.registerGauge( MetricsRegistry.LOCK_PREFIX + "queueLength", new Gauge()
+        {
+            @Override
+            public long getValue()
+            {
+                return rwLock.getQueueLength();
+            }
+        } );
     }
 
 
@@ -130,7 +173,9 @@ public class DefaultOperationManager implements OperationManager
      */
     public void lockRead()
     {
+        long start = System.nanoTime();
         rwLock.readLock().lock();
+        readLockWait.record( System.nanoTime() - start );
     }
 
 
@@ -139,7 +184,9 @@ public class DefaultOperationManager implements OperationManager
      */
     public void lockWrite()
     {
+        long start = System.nanoTime();
         rwLock.writeLock().lock();
+        writeLockWait.record( System.nanoTime() - start );
     }
 
 
@@ -161,6 +208,32 @@ public class DefaultOperationManager implements OperationManager
     }
 
 
+    /**
+     * Starts timing the call to the first interceptor, if the interceptors are timed
+     */
+    private long startTiming( OperationContext opContext )
+    {
+        InterceptorTimings timings = directoryService.getInterceptorTimings();
+
+        return ( timings == null ) ? 0L : timings.start( opContext );
+    }
+
+
+    /**
+     * Records the time spent in the first interceptor, if the interceptors are timed. A failed
+     * call is not recorded, as for the operation latencies.
+     */
+    private void stopTiming( OperationContext opContext, Interceptor head, OperationEnum operation, long token )
+    {
+        InterceptorTimings timings = directoryService.getInterceptorTimings();
+
+        if ( timings != null )
+        {
+            timings.stop( opContext, head, operation, token );
+        }
+    }
+
+
     /**
      * Eagerly populates fields of operation contexts so multiple Interceptors
      * in the processing pathway can reuse this value without performing a
@@ -356,12 +429,7 @@ public class DefaultOperationManager implements OperationManager
             OPERATION_LOG.debug( ">> AddOperation : {}", addContext );
         }
 
-        long addStart = 0L;
-
-        if ( IS_TIME )
-        {
-            addStart = System.nanoTime();
-        }
+        long addStart = System.nanoTime();
 
         ensureStarted();
 
@@ -383,9 +451,10 @@ public class DefaultOperationManager implements OperationManager
 
         try
         {
-            if ( directoryService.getReferralManager().hasParentReferral( dn ) )
+            Entry parentEntry = directoryService.getReferralManager().getParentReferral( dn );
+
+            if ( parentEntry != null )
             {
-                Entry parentEntry = directoryService.getReferralManager().getParentReferral( dn );
                 Dn childDn = dn.getDescendantOf( parentEntry.getDn() );
 
                 // Depending on the Context.REFERRAL property value, we will throw
@@ -428,11 +497,13 @@ public class DefaultOperationManager implements OperationManager
             
             addContext.setTransaction( transaction );
 
+            long timingToken = startTiming( addContext );
             head.add( addContext );
+            stopTiming( addContext, head, OperationEnum.ADD, timingToken );
             
             if ( !addContext.getSession().hasSessionTransaction() )
             {
-                transaction.commit();
+                commit( transaction );
             }
         }
         catch ( LdapException le )
@@ -469,14 +540,19 @@ public class DefaultOperationManager implements OperationManager
             unlockWrite();
         }
 
+        awaitDurability( addContext, transaction );
+
         if ( IS_DEBUG )
         {
             OPERATION_LOG.debug( "<< AddOperation successful" );
         }
 
+        long opDuration = System.nanoTime() - addStart;
+        operationLatencies.get( OperationEnum.ADD ).record( opDuration );
+
         if ( IS_TIME )
         {
-            OPERATION_TIME.debug( "Add operation took {} ns", ( System.nanoTime() - addStart ) );
+            OPERATION_TIME.debug( "Add operation took {} ns", opDuration );
         }
     }
 
@@ -491,12 +567,7 @@ public class DefaultOperationManager implements OperationManager
             OPERATION_LOG.debug( ">> BindOperation : {}", bindContext );
         }
 
-        long opStart = 0L;
-
-        if ( IS_TIME )
-        {
-            opStart = System.nanoTime();
-        }
+        long opStart = System.nanoTime();
 
         ensureStarted();
 
@@ -523,7 +594,9 @@ public class DefaultOperationManager implements OperationManager
                 bindContext.setPartition( partition );
                 bindContext.setTransaction( partitionTxn );
                 
+                long timingToken = startTiming( bindContext );
                 head.bind( bindContext );
+                stopTiming( bindContext, head, OperationEnum.BIND, timingToken );
             }
             catch ( IOException ioe )
             {
@@ -540,9 +613,12 @@ public class DefaultOperationManager implements OperationManager
             OPERATION_LOG.debug( "<< BindOperation successful" );
         }
 
+        long opDuration = System.nanoTime() - opStart;
+        operationLatencies.get( OperationEnum.BIND ).record( opDuration );
+
         if ( IS_TIME )
         {
-            OPERATION_TIME.debug( "Bind operation took {} ns", ( System.nanoTime() - opStart )  );
+            OPERATION_TIME.debug( "Bind operation took {} ns", opDuration );
         }
     }
 
@@ -557,12 +633,7 @@ public class DefaultOperationManager implements OperationManager
             OPERATION_LOG.debug( ">> CompareOperation : {}", compareContext );
         }
 
-        long opStart = 0L;
-
-        if ( IS_TIME )
-        {
-            opStart = System.nanoTime();
-        }
+        long opStart = System.nanoTime();
 
         ensureStarted();
         
@@ -638,7 +709,9 @@ public class DefaultOperationManager implements OperationManager
                 compareContext.setPartition( partition );
                 compareContext.setTransaction( partitionTxn );
                 
+                long timingToken = startTiming( compareContext );
                 result = head.compare( compareContext );
+                stopTiming( compareContext, head, OperationEnum.COMPARE, timingToken );
             }
             catch ( IOException ioe )
             {
@@ -655,9 +728,12 @@ public class DefaultOperationManager implements OperationManager
             OPERATION_LOG.debug( "<< CompareOperation successful" );
         }
 
+        long opDuration = System.nanoTime() - opStart;
+        operationLatencies.get( OperationEnum.COMPARE ).record( opDuration );
+
         if ( IS_TIME )
         {
-            OPERATION_TIME.debug( "Compare operation took {} ns", ( System.nanoTime() - opStart ) );
+            OPERATION_TIME.debug( "Compare operation took {} ns", opDuration );
         }
 
         return result;
@@ -675,7 +751,9 @@ public class DefaultOperationManager implements OperationManager
         // Call the Delete method
         Interceptor head = directoryService.getInterceptor( deleteContext.getNextInterceptor() );
 
+        long timingToken = startTiming( entryDeleteContext );
         head.delete( entryDeleteContext );
+        stopTiming( entryDeleteContext, head, OperationEnum.DELETE, timingToken );
     }
     
     
@@ -729,12 +807,7 @@ public class DefaultOperationManager implements OperationManager
             OPERATION_LOG.debug( ">> DeleteOperation : {}", deleteContext );
         }
 
-        long opStart = 0L;
-
-        if ( IS_TIME )
-        {
-            opStart = System.nanoTime();
-        }
+        long opStart = System.nanoTime();
 
         ensureStarted();
 
@@ -823,7 +896,7 @@ public class DefaultOperationManager implements OperationManager
 
                     if ( !deleteContext.getSession().hasSessionTransaction() )
                     {
-                        transaction.commit();
+                        commit( transaction );
                     }
                 }
                 catch ( CursorException ce )
@@ -850,11 +923,13 @@ public class DefaultOperationManager implements OperationManager
                 // Call the Delete method
                 Interceptor head = directoryService.getInterceptor( deleteContext.getNextInterceptor() );
     
+                long timingToken = startTiming( deleteContext );
                 head.delete( deleteContext );
+                stopTiming( deleteContext, head, OperationEnum.DELETE, timingToken );
     
                 if ( !deleteContext.getSession().hasSessionTransaction() )
                 {
-                    transaction.commit();
+                    commit( transaction );
                 }
             }
         }
@@ -892,14 +967,19 @@ public class DefaultOperationManager implements OperationManager
             unlockWrite();
         }
 
+        awaitDurability( deleteContext, transaction );
+
         if ( IS_DEBUG )
         {
             OPERATION_LOG.debug( "<< DeleteOperation successful" );
         }
 
+        long opDuration = System.nanoTime() - opStart;
+        operationLatencies.get( OperationEnum.DELETE ).record( opDuration );
+
         if ( IS_TIME )
         {
-            OPERATION_TIME.debug( "Delete operation took {} ns", ( System.nanoTime() - opStart ) );
+            OPERATION_TIME.debug( "Delete operation took {} ns", opDuration );
         }
     }
 
@@ -914,12 +994,7 @@ public class DefaultOperationManager implements OperationManager
             OPERATION_LOG.debug( ">> GetRootDseOperation : {}", getRootDseContext );
         }
 
-        long opStart = 0L;
-
-        if ( IS_TIME )
-        {
-            opStart = System.nanoTime();
-        }
+        long opStart = System.nanoTime();
 
         ensureStarted();
 
@@ -937,7 +1012,9 @@ public class DefaultOperationManager implements OperationManager
                 getRootDseContext.setPartition( partition );
                 getRootDseContext.setTransaction( partitionTxn );
                 
+                long timingToken = startTiming( getRootDseContext );
                 root = head.getRootDse( getRootDseContext );
+                stopTiming( getRootDseContext, head, OperationEnum.GET_ROOT_DSE, timingToken );
             }
             catch ( IOException ioe )
             {
@@ -954,9 +1031,12 @@ public class DefaultOperationManager implements OperationManager
             OPERATION_LOG.debug( "<< getRootDseOperation successful" );
         }
 
+        long opDuration = System.nanoTime() - opStart;
+        operationLatencies.get( OperationEnum.GET_ROOT_DSE ).record( opDuration );
+
         if ( IS_TIME )
         {
-            OPERATION_TIME.debug( "GetRootDSE operation took {} ns", ( System.nanoTime() - opStart ) );
+            OPERATION_TIME.debug( "GetRootDSE operation took {} ns", opDuration );
         }
 
         return root;
@@ -973,12 +1053,7 @@ public class DefaultOperationManager implements OperationManager
             OPERATION_LOG.debug( ">> hasEntryOperation : {}", hasEntryContext );
         }
 
-        long opStart = 0L;
-
-        if ( IS_TIME )
-        {
-            opStart = System.nanoTime();
-        }
+        long opStart = System.nanoTime();
 
         ensureStarted();
 
@@ -1006,7 +1081,9 @@ public class DefaultOperationManager implements OperationManager
                 hasEntryContext.setPartition( partition );
                 hasEntryContext.setTransaction( partitionTxn );
 
+                long timingToken = startTiming( hasEntryContext );
                 result = head.hasEntry( hasEntryContext );
+                stopTiming( hasEntryContext, head, OperationEnum.HAS_ENTRY, timingToken );
             }
             catch ( IOException ioe )
             {
@@ -1023,9 +1100,12 @@ public class DefaultOperationManager implements OperationManager
             OPERATION_LOG.debug( "<< HasEntryOperation successful" );
         }
 
+        long opDuration = System.nanoTime() - opStart;
+        operationLatencies.get( OperationEnum.HAS_ENTRY ).record( opDuration );
+
         if ( IS_TIME )
         {
-            OPERATION_TIME.debug( "HasEntry operation took {} ns", ( System.nanoTime() - opStart ) );
+            OPERATION_TIME.debug( "HasEntry operation took {} ns", opDuration );
         }
 
         return result;
@@ -1042,12 +1122,7 @@ public class DefaultOperationManager implements OperationManager
             OPERATION_LOG.debug( ">> LookupOperation : {}", lookupContext );
         }
 
-        long opStart = 0L;
-
-        if ( IS_TIME )
-        {
-            opStart = System.nanoTime();
-        }
+        long opStart = System.nanoTime();
 
         ensureStarted();
 
@@ -1076,7 +1151,9 @@ public class DefaultOperationManager implements OperationManager
     
             try
             {
+                long timingToken = startTiming( lookupContext );
                 entry = head.lookup( lookupContext );
+                stopTiming( lookupContext, head, OperationEnum.LOOKUP, timingToken );
             }
             finally
             {
@@ -1093,9 +1170,12 @@ public class DefaultOperationManager implements OperationManager
             OPERATION_LOG.debug( "<< LookupOperation successful" );
         }
 
+        long opDuration = System.nanoTime() - opStart;
+        operationLatencies.get( OperationEnum.LOOKUP ).record( opDuration );
+
         if ( IS_TIME )
         {
-            OPERATION_TIME.debug( "Lookup operation took {} ns", ( System.nanoTime() - opStart ) );
+            OPERATION_TIME.debug( "Lookup operation took {} ns", opDuration );
         }
 
         return entry;
@@ -1112,12 +1192,7 @@ public class DefaultOperationManager implements OperationManager
             OPERATION_LOG.debug( ">> ModifyOperation : {}", modifyContext );
         }
 
-        long opStart = 0L;
-
-        if ( IS_TIME )
-        {
-            opStart = System.nanoTime();
-        }
+        long opStart = System.nanoTime();
 
         ensureStarted();
 
@@ -1212,11 +1287,13 @@ public class DefaultOperationManager implements OperationManager
             // Call the Modify method
             Interceptor head = directoryService.getInterceptor( modifyContext.getNextInterceptor() );
 
+            long timingToken = startTiming( modifyContext );
             head.modify( modifyContext );
+            stopTiming( modifyContext, head, OperationEnum.MODIFY, timingToken );
             
             if ( !modifyContext.getSession().hasSessionTransaction() )
             {
-                transaction.commit();
+                commit( transaction );
             }
         }
         catch ( LdapException le )
@@ -1253,14 +1330,19 @@ public class DefaultOperationManager implements OperationManager
             unlockWrite();
         }
 
+        awaitDurability( modifyContext, transaction );
+
         if ( IS_DEBUG )
         {
             OPERATION_LOG.debug( "<< ModifyOperation successful" );
         }
 
+        long opDuration = System.nanoTime() - opStart;
+        operationLatencies.get( OperationEnum.MODIFY ).record( opDuration );
+
         if ( IS_TIME )
         {
-            OPERATION_TIME.debug( "Modify operation took {} ns", ( System.nanoTime() - opStart ) );
+            OPERATION_TIME.debug( "Modify operation took {} ns", opDuration );
         }
     }
 
@@ -1275,12 +1357,7 @@ public class DefaultOperationManager implements OperationManager
             OPERATION_LOG.debug( ">> MoveOperation : {}", moveContext );
         }
 
-        long opStart = 0L;
-
-        if ( IS_TIME )
-        {
-            opStart = System.nanoTime();
-        }
+        long opStart = System.nanoTime();
 
         ensureStarted();
 
@@ -1387,11 +1464,13 @@ public class DefaultOperationManager implements OperationManager
             // Call the Move method
             Interceptor head = directoryService.getInterceptor( moveContext.getNextInterceptor() );
 
+            long timingToken = startTiming( moveContext );
             head.move( moveContext );
+            stopTiming( moveContext, head, OperationEnum.MOVE, timingToken );
             
             if ( !moveContext.getSession().hasSessionTransaction() )
             {
-                transaction.commit();
+                commit( transaction );
             }
         }
         catch ( LdapException le )
@@ -1431,14 +1510,19 @@ public class DefaultOperationManager implements OperationManager
             unlockWrite();
         }
 
+        awaitDurability( moveContext, transaction );
+
         if ( IS_DEBUG )
         {
             OPERATION_LOG.debug( "<< MoveOperation successful" );
         }
 
+        long opDuration = System.nanoTime() - opStart;
+        operationLatencies.get( OperationEnum.MOVE ).record( opDuration );
+
         if ( IS_TIME )
         {
-            OPERATION_TIME.debug( "Move operation took {} ns", ( System.nanoTime() - opStart ) );
+            OPERATION_TIME.debug( "Move operation took {} ns", opDuration );
         }
     }
 
@@ -1453,12 +1537,7 @@ public class DefaultOperationManager implements OperationManager
             OPERATION_LOG.debug( ">> MoveAndRenameOperation : {}", moveAndRenameContext );
         }
 
-        long opStart = 0L;
-
-        if ( IS_TIME )
-        {
-            opStart = System.nanoTime();
-        }
+        long opStart = System.nanoTime();
 
         ensureStarted();
 
@@ -1565,11 +1644,13 @@ public class DefaultOperationManager implements OperationManager
             // Call the MoveAndRename method
             Interceptor head = directoryService.getInterceptor( moveAndRenameContext.getNextInterceptor() );
 
+            long timingToken = startTiming( moveAndRenameContext );
             head.moveAndRename( moveAndRenameContext );
+            stopTiming( moveAndRenameContext, head, OperationEnum.MOVE_AND_RENAME, timingToken );
 
             if ( !moveAndRenameContext.getSession().hasSessionTransaction() )
             {
-                transaction.commit();
+                commit( transaction );
             }
         }
         catch ( LdapException le )
@@ -1606,14 +1687,19 @@ public class DefaultOperationManager implements OperationManager
             unlockWrite();
         }
 
+        awaitDurability( moveAndRenameContext, transaction );
+
         if ( IS_DEBUG )
         {
             OPERATION_LOG.debug( "<< MoveAndRenameOperation successful" );
         }
 
+        long opDuration = System.nanoTime() - opStart;
+        operationLatencies.get( OperationEnum.MOVE_AND_RENAME ).record( opDuration );
+
         if ( IS_TIME )
         {
-            OPERATION_TIME.debug( "MoveAndRename operation took {} ns", ( System.nanoTime() - opStart ) );
+            OPERATION_TIME.debug( "MoveAndRename operation took {} ns", opDuration );
         }
     }
 
@@ -1628,12 +1714,7 @@ public class DefaultOperationManager implements OperationManager
             OPERATION_LOG.debug( ">> RenameOperation : {}", renameContext );
         }
 
-        long opStart = 0L;
-
-        if ( IS_TIME )
-        {
-            opStart = System.nanoTime();
-        }
+        long opStart = System.nanoTime();
 
         ensureStarted();
 
@@ -1781,11 +1862,13 @@ public class DefaultOperationManager implements OperationManager
 
                 renameContext.setTransaction( transaction );
 
+                long timingToken = startTiming( renameContext );
                 head.rename( renameContext );
+                stopTiming( renameContext, head, OperationEnum.RENAME, timingToken );
                 
                 if ( !renameContext.getSession().hasSessionTransaction() )
                 {
-                    transaction.commit();
+                    commit( transaction );
                 }
             }
             catch ( LdapException le )
@@ -1826,14 +1909,19 @@ public class DefaultOperationManager implements OperationManager
             unlockWrite();
         }
 
+        awaitDurability( renameContext, transaction );
+
         if ( IS_DEBUG )
         {
             OPERATION_LOG.debug( "<< RenameOperation successful" );
         }
 
+        long opDuration = System.nanoTime() - opStart;
+        operationLatencies.get( OperationEnum.RENAME ).record( opDuration );
+
         if ( IS_TIME )
         {
-            OPERATION_TIME.debug( "Rename operation took {} ns", ( System.nanoTime() - opStart ) );
+            OPERATION_TIME.debug( "Rename operation took {} ns", opDuration );
         }
     }
 
@@ -1848,12 +1936,7 @@ public class DefaultOperationManager implements OperationManager
             OPERATION_LOG.debug( ">> SearchOperation : {}", searchContext );
         }
 
-        long opStart = 0L;
-
-        if ( IS_TIME )
-        {
-            opStart = System.nanoTime();
-        }
+        long opStart = System.nanoTime();
 
         ensureStarted();
 
@@ -1926,7 +2009,9 @@ public class DefaultOperationManager implements OperationManager
     
             try
             {
+                long timingToken = startTiming( searchContext );
                 cursor = head.search( searchContext );
+                stopTiming( searchContext, head, OperationEnum.SEARCH, timingToken );
             }
             finally
             {
@@ -1943,9 +2028,12 @@ public class DefaultOperationManager implements OperationManager
             OPERATION_LOG.debug( "<< SearchOperation successful" );
         }
 
+        long opDuration = System.nanoTime() - opStart;
+        operationLatencies.get( OperationEnum.SEARCH ).record( opDuration );
+
         if ( IS_TIME )
         {
-            OPERATION_TIME.debug( "Search operation took {} ns", ( System.nanoTime() - opStart ) );
+            OPERATION_TIME.debug( "Search operation took {} ns", opDuration );
         }
 
         return cursor;
@@ -1962,28 +2050,67 @@ public class DefaultOperationManager implements OperationManager
             OPERATION_LOG.debug( ">> UnbindOperation : {}", unbindContext );
         }
 
-        long opStart = 0L;
-
-        if ( IS_TIME )
-        {
-            opStart = System.nanoTime();
-        }
+        long opStart = System.nanoTime();
 
         ensureStarted();
 
         // Call the Unbind method
         Interceptor head = directoryService.getInterceptor( unbindContext.getNextInterceptor() );
 
+        long timingToken = startTiming( unbindContext );
         head.unbind( unbindContext );
+        stopTiming( unbindContext, head, OperationEnum.UNBIND, timingToken );
 
         if ( IS_DEBUG )
         {
             OPERATION_LOG.debug( "<< UnbindOperation successful" );
         }
 
+        long opDuration = System.nanoTime() - opStart;
+        operationLatencies.get( OperationEnum.UNBIND ).record( opDuration );
+
         if ( IS_TIME )
         {
-            OPERATION_TIME.debug( "Unbind operation took {} ns", ( System.nanoTime() - opStart ) );
+            OPERATION_TIME.debug( "Unbind operation took {} ns", opDuration );
+        }
+    }
+
+
+    /**
+     * Commits a write transaction. Unless the operation is nested in another one, we
+     * don't wait for the changes to be written on disk : this is done by awaitDurability(),
+     * once the write lock has been released, so that the changes of the concurrent
+     * operations can be written on disk at once.
+     */
+    private void commit( PartitionTxn transaction ) throws IOException
+    {
+        if ( ( transaction instanceof PartitionWriteTxn ) && ( rwLock.getWriteHoldCount() == 1 ) )
+        {
+            ( ( PartitionWriteTxn ) transaction ).commitNoWait();
+        }
+        else
+        {
+            transaction.commit();
+        }
+    }
+
+
+    /**
+     * Waits until the changes committed by an operation have been written on disk. This
+     * must be called after the write lock has been released.
+     */
+    private void awaitDurability( OperationContext opContext, PartitionTxn transaction ) throws LdapException
+    {
+        if ( ( transaction instanceof PartitionWriteTxn ) && !opContext.getSession().hasSessionTransaction() )
+        {
+            try
+            {
+                ( ( PartitionWriteTxn ) transaction ).awaitDurability();
+            }
+            catch ( IOException ioe )
+            {
+                throw new LdapOtherException( ioe.getMessage(), ioe );
+            }
         }
     }
 
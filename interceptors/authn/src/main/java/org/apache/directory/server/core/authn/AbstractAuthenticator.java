@@ -26,7 +26,6 @@ import static org.apache.directory.api.ldap.model.constants.PasswordPolicySchema
 import static org.apache.directory.api.ldap.model.constants.PasswordPolicySchemaConstants.PWD_CHANGED_TIME_AT;
 import static org.apache.directory.api.ldap.model.constants.PasswordPolicySchemaConstants.PWD_END_TIME_AT;
 import static org.apache.directory.api.ldap.model.constants.PasswordPolicySchemaConstants.PWD_GRACE_USE_TIME_AT;
-import static org.apache.directory.api.ldap.model.constants.PasswordPolicySchemaConstants.PWD_LAST_SUCCESS_AT;
 import static org.apache.directory.api.ldap.model.constants.PasswordPolicySchemaConstants.PWD_START_TIME_AT;
 
 import java.io.IOException;
@@ -346,13 +345,14 @@ public abstract class AbstractAuthenticator implements Authenticator
 
         if ( pPolicyConfig.getPwdMaxIdle() > 0 )
         {
-            Attribute pwdLastSuccessTimeAttr = userEntry.get( PWD_LAST_SUCCESS_AT );
+            // The last success may not have been written to the entry yet
+            String pwdLastSuccessTime = authenticationInterceptor.getPwdLastSuccess( userEntry );
 
             // Let's be sure that the user has already logged in
-            if ( pwdLastSuccessTimeAttr != null )
+            if ( pwdLastSuccessTime != null )
             {
                 long time = pPolicyConfig.getPwdMaxIdle() * 1000L;
-                time += DateUtils.getDate( pwdLastSuccessTimeAttr.getString() ).getTime();
+                time += DateUtils.getDate( pwdLastSuccessTime ).getTime();
 
                 if ( directoryService.getTimeProvider().currentIimeMillis() >= time )
                 {
@@ -66,6 +66,7 @@ import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.exception.LdapNoPermissionException;
 import org.apache.directory.api.ldap.model.exception.LdapOperationException;
 import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.api.ldap.model.exception.LdapServiceUnavailableException;
 import org.apache.directory.api.ldap.model.exception.LdapUnwillingToPerformException;
 import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
 import org.apache.directory.api.ldap.model.name.Dn;
@@ -102,6 +103,7 @@ import org.apache.directory.server.core.api.interceptor.context.SearchOperationC
 import org.apache.directory.server.core.api.interceptor.context.UnbindOperationContext;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.core.authn.ppolicy.PasswordPolicyStateStore;
 import org.apache.directory.server.core.authn.ppolicy.PpolicyConfigContainer;
 import org.apache.directory.server.core.shared.DefaultCoreSession;
 import org.apache.directory.server.i18n.I18n;
@@ -155,6 +157,24 @@ public class AuthenticationInterceptor extends BaseInterceptor
     /** a container to hold all the ppolicies */
     private PpolicyConfigContainer pwdPolicyContainer;
 
+    /** The delay between two flushes of the password policy state, in ms. 0 means the state is written at each bind */
+    private long pwdPolicyStateFlushInterval = 0L;
+
+    /** The number of entries updated in a single transaction when flushing the password policy state */
+    private int pwdPolicyStateBatchSize = PasswordPolicyStateStore.DEFAULT_BATCH_SIZE;
+
+    /** The write-behind store for the password policy state, if enabled */
+    private volatile PasswordPolicyStateStore pwdPolicyStateStore;
+
+    /** The number of threads verifying the hashed passwords. 0 to verify them in the bind thread */
+    private int passwordVerificationThreads = 0;
+
+    /** The number of password verifications waiting for a thread before the binds are rejected */
+    private int passwordVerificationQueueSize = PasswordVerifier.DEFAULT_QUEUE_SIZE;
+
+    /** The pool verifying the hashed passwords, if enabled */
+    private volatile PasswordVerifier passwordVerifier;
+
 
     /**
      * Creates an authentication service interceptor.
@@ -187,6 +207,51 @@ public class AuthenticationInterceptor extends BaseInterceptor
         }
 
         loadPwdPolicyStateAttributeTypes();
+
+        startPwdPolicyStateStore();
+
+        startPasswordVerifier();
+    }
+
+
+    /**
+     * Creates the pool verifying the hashed passwords if it's enabled. A previous pool
+     * is stopped.
+     */
+    private synchronized void startPasswordVerifier()
+    {
+        if ( passwordVerifier != null )
+        {
+            passwordVerifier.stop();
+            passwordVerifier = null;
+        }
+
+        if ( passwordVerificationThreads > 0 )
+        {
+            passwordVerifier = new PasswordVerifier( passwordVerificationThreads, passwordVerificationQueueSize );
+        }
+    }
+
+
+    /**
+     * Creates the write-behind password policy state store if it's enabled. A previous
+     * store is stopped, and its pending updates are written.
+     */
+    private synchronized void startPwdPolicyStateStore()
+    {
+        if ( pwdPolicyStateStore != null )
+        {
+            pwdPolicyStateStore.stop();
+            pwdPolicyStateStore = null;
+        }
+
+        if ( pwdPolicyStateFlushInterval > 0 )
+        {
+            PasswordPolicyStateStore stateStore = new PasswordPolicyStateStore( directoryService, pwdLastSuccessAT,
+                pwdPolicyStateFlushInterval, pwdPolicyStateBatchSize );
+            stateStore.start();
+            pwdPolicyStateStore = stateStore;
+        }
     }
 
 
@@ -262,6 +327,18 @@ public class AuthenticationInterceptor extends BaseInterceptor
     @Override
     public void destroy()
     {
+        if ( pwdPolicyStateStore != null )
+        {
+            pwdPolicyStateStore.stop();
+            pwdPolicyStateStore = null;
+        }
+
+        if ( passwordVerifier != null )
+        {
+            passwordVerifier.stop();
+            passwordVerifier = null;
+        }
+
         authenticatorsMapByType.clear();
         Set<Authenticator> copy = new HashSet<>( authenticators );
         authenticators = new HashSet<>();
@@ -273,6 +350,152 @@ public class AuthenticationInterceptor extends BaseInterceptor
     }
 
 
+    /**
+     * @return The delay between two flushes of the password policy state, in milliseconds
+     */
+    public long getPwdPolicyStateFlushInterval()
+    {
+        return pwdPolicyStateFlushInterval;
+    }
+
+
+    /**
+     * Sets the delay between two flushes of the password policy state updated by the
+     * successful binds. When positive, the pwdLastSuccess values are kept in memory and
+     * written in batches, instead of being written at each bind. If the interceptor has
+     * already been initialized, the store is restarted.
+     *
+     * @param pwdPolicyStateFlushInterval The delay in milliseconds, 0 to disable the write-behind
+     */
+    public void setPwdPolicyStateFlushInterval( long pwdPolicyStateFlushInterval )
+    {
+        this.pwdPolicyStateFlushInterval = pwdPolicyStateFlushInterval;
+
+        if ( pwdLastSuccessAT != null )
+        {
+            startPwdPolicyStateStore();
+        }
+    }
+
+
+    /**
+     * @return The number of entries updated in a single transaction when flushing the password policy state
+     */
+    public int getPwdPolicyStateBatchSize()
+    {
+        return pwdPolicyStateBatchSize;
+    }
+
+
+    /**
+     * @param pwdPolicyStateBatchSize The number of entries updated in a single transaction when
+     * flushing the password policy state
+     */
+    public void setPwdPolicyStateBatchSize( int pwdPolicyStateBatchSize )
+    {
+        this.pwdPolicyStateBatchSize = pwdPolicyStateBatchSize;
+    }
+
+
+    /**
+     * @return The number of threads verifying the hashed passwords, 0 if they are verified by the bind thread
+     */
+    public int getPasswordVerificationThreads()
+    {
+        return passwordVerificationThreads;
+    }
+
+
+    /**
+     * Sets the number of threads dedicated to the verification of the hashed passwords.
+     * When positive, the hashed passwords are verified on this bounded pool instead of
+     * the thread processing the bind, and the binds are rejected with a <tt>busy</tt>
+     * error when the pool is saturated. If the interceptor has already been initialized,
+     * the pool is restarted.
+     *
+     * @param passwordVerificationThreads The number of threads, 0 to disable the pool
+     */
+    public void setPasswordVerificationThreads( int passwordVerificationThreads )
+    {
+        this.passwordVerificationThreads = passwordVerificationThreads;
+
+        if ( directoryService != null )
+        {
+            startPasswordVerifier();
+        }
+    }
+
+
+    /**
+     * @return The number of password verifications waiting for a thread before the binds are rejected
+     */
+    public int getPasswordVerificationQueueSize()
+    {
+        return passwordVerificationQueueSize;
+    }
+
+
+    /**
+     * @param passwordVerificationQueueSize The number of password verifications waiting for a
+     * thread before the binds are rejected
+     */
+    public void setPasswordVerificationQueueSize( int passwordVerificationQueueSize )
+    {
+        this.passwordVerificationQueueSize = passwordVerificationQueueSize;
+    }
+
+
+    /**
+     * @return The pool verifying the hashed passwords, or null if it's not enabled
+     */
+    public PasswordVerifier getPasswordVerifier()
+    {
+        return passwordVerifier;
+    }
+
+
+    /**
+     * @return The write-behind password policy state store, or null if it's not enabled
+     */
+    public PasswordPolicyStateStore getPwdPolicyStateStore()
+    {
+        return pwdPolicyStateStore;
+    }
+
+
+    /**
+     * Get the time of the last successful bind of a user, taking into account the value
+     * which may not have been flushed yet.
+     *
+     * @param userEntry The user entry
+     * @return The pwdLastSuccess value, or null if the user has never bound
+     * @throws LdapException If the value can't be read
+     */
+    public String getPwdLastSuccess( Entry userEntry ) throws LdapException
+    {
+        PasswordPolicyStateStore stateStore = pwdPolicyStateStore;
+
+        if ( stateStore != null )
+        {
+            String pending = stateStore.getLastSuccess( userEntry.getDn() );
+
+            if ( pending != null )
+            {
+                return pending;
+            }
+        }
+
+        Attribute pwdLastSuccessAttr = userEntry.get( pwdLastSuccessAT );
+
+        if ( pwdLastSuccessAttr == null )
+        {
+            return null;
+        }
+
+        return pwdLastSuccessAttr.getString();
+    }
+
+
     /**
      * Initializes the specified {@link Authenticator} and registers it to
      * this service.
@@ -595,6 +818,12 @@ public class AuthenticationInterceptor extends BaseInterceptor
             // authentication failed, try the next authenticator
             LOG.info( "Authenticator {} failed to authenticate: {}", authenticator, bindContext.getDn() );
         }
+        catch ( LdapServiceUnavailableException e )
+        {
+            // The password could not be verified because the server is overloaded :
+            // this is not an authentication failure
+            throw e;
+        }
         catch ( Exception e )
         {
             // Log other exceptions than LdapAuthenticationException
@@ -698,15 +927,24 @@ public class AuthenticationInterceptor extends BaseInterceptor
                         numDelay = maxDelay;
                     }
 
-                    try
+                    if ( bindContext.isResponseDelayDeferred() )
                     {
-                        Thread.sleep( numDelay * 1000L );
+                        // The caller will send the response once the delay has expired,
+                        // without holding the current thread
+                        bindContext.setResponseDelay( numDelay * 1000L );
                     }
-                    catch ( InterruptedException e )
+                    else
                     {
-                        LOG.warn(
-                            "Interrupted while delaying to send the failed authentication response for the user {}",
-                            bindDn, e );
+                        try
+                        {
+                            Thread.sleep( numDelay * 1000L );
+                        }
+                        catch ( InterruptedException e )
+                        {
+                            LOG.warn(
+                                "Interrupted while delaying to send the failed authentication response for the user {}",
+                                bindDn, e );
+                        }
                     }
                 }
 
@@ -732,11 +970,13 @@ public class AuthenticationInterceptor extends BaseInterceptor
         else if ( policyConfig != null )
         {
             List<Modification> mods = new ArrayList<>();
+            String lastSuccess = null;
 
             if ( policyConfig.getPwdMaxIdle() > 0 )
             {
+                lastSuccess = DateUtils.getGeneralizedTime( directoryService.getTimeProvider() );
                 Attribute pwdLastSuccesTimeAt = new DefaultAttribute( pwdLastSuccessAT );
-                pwdLastSuccesTimeAt.add( DateUtils.getGeneralizedTime( directoryService.getTimeProvider() ) );
+                pwdLastSuccesTimeAt.add( lastSuccess );
                 Modification pwdLastSuccesTimeMod = new DefaultModification( REPLACE_ATTRIBUTE, pwdLastSuccesTimeAt );
                 mods.add( pwdLastSuccesTimeMod );
             }
@@ -791,7 +1031,14 @@ public class AuthenticationInterceptor extends BaseInterceptor
                 }
             }
 
-            if ( !mods.isEmpty() )
+            PasswordPolicyStateStore stateStore = pwdPolicyStateStore;
+
+            if ( ( stateStore != null ) && ( lastSuccess != null ) && ( mods.size() == 1 ) )
+            {
+                // Only the last success time has to be updated : let the store write it later
+                stateStore.recordLastSuccess( userEntry.getDn(), lastSuccess );
+            }
+            else if ( !mods.isEmpty() )
             {
                 String csnVal = directoryService.getCSN().toString();
                 Modification csnMod = new DefaultModification( REPLACE_ATTRIBUTE, directoryService.getAtProvider()
@@ -805,6 +1052,12 @@ public class AuthenticationInterceptor extends BaseInterceptor
                 bindModCtx.setPushToEvtInterceptor( true );
                 
                 internalModify( bindContext, bindModCtx );
+
+                // The state has been written synchronously, it supersedes any pending value
+                if ( ( stateStore != null ) && ( lastSuccess != null ) )
+                {
+                    stateStore.discard( userEntry.getDn() );
+                }
             }
 
             if ( isPPolicyReqCtrlPresent )
@@ -860,6 +1113,13 @@ public class AuthenticationInterceptor extends BaseInterceptor
         checkPwdReset( deleteContext );
         next( deleteContext );
         invalidateAuthenticatorCaches( deleteContext.getDn() );
+
+        PasswordPolicyStateStore stateStore = pwdPolicyStateStore;
+
+        if ( stateStore != null )
+        {
+            stateStore.discard( deleteContext.getDn() );
+        }
     }
 
 
@@ -1334,6 +1594,13 @@ public class AuthenticationInterceptor extends BaseInterceptor
         checkPwdReset( moveContext );
         next( moveContext );
         invalidateAuthenticatorCaches( moveContext.getDn() );
+
+        PasswordPolicyStateStore stateStore = pwdPolicyStateStore;
+
+        if ( stateStore != null )
+        {
+            stateStore.move( moveContext.getDn(), moveContext.getNewDn() );
+        }
     }
 
 
@@ -1352,6 +1619,13 @@ public class AuthenticationInterceptor extends BaseInterceptor
         checkPwdReset( moveAndRenameContext );
         next( moveAndRenameContext );
         invalidateAuthenticatorCaches( moveAndRenameContext.getDn() );
+
+        PasswordPolicyStateStore stateStore = pwdPolicyStateStore;
+
+        if ( stateStore != null )
+        {
+            stateStore.move( moveAndRenameContext.getDn(), moveAndRenameContext.getNewDn() );
+        }
     }
 
 
@@ -1370,6 +1644,13 @@ public class AuthenticationInterceptor extends BaseInterceptor
         checkPwdReset( renameContext );
         next( renameContext );
         invalidateAuthenticatorCaches( renameContext.getDn() );
+
+        PasswordPolicyStateStore stateStore = pwdPolicyStateStore;
+
+        if ( stateStore != null )
+        {
+            stateStore.move( renameContext.getDn(), renameContext.getNewDn() );
+        }
     }
 
 
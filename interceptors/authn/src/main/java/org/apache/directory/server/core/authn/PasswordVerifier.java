@@ -0,0 +1,356 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.authn;
+
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.directory.api.ldap.model.constants.LdapSecurityConstants;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.api.ldap.model.exception.LdapServiceUnavailableException;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.password.PasswordUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Verifies the bind credentials against the hashed passwords on a dedicated, bounded pool
+ * of threads. Hashing a password with PKCS5S2, CRYPT or a salted SHA-2 is CPU intensive : a
+ * burst of binds would otherwise use all the threads processing the LDAP requests.
+ * <p>
+ * The calling thread waits for the result of its verification : the number of verifications in
+ * flight is bounded by the number of threads plus the queue size. Past this limit, the verification
+ * is rejected immediately with a <tt>busy</tt> error, instead of waiting. The clear text passwords
+ * are compared by the calling thread.
+ * <p>
+ * The number of verifications and their latency are recorded for each scheme.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class PasswordVerifier
+{
+    /** The logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( PasswordVerifier.class );
+
+    /** The default number of queued verifications : the binds are rejected when all the threads are busy */
+    public static final int DEFAULT_QUEUE_SIZE = 0;
+
+    /** The name used for the clear text passwords statistics */
+    private static final String PLAIN = "PLAIN";
+
+    /** The verification threads */
+    private final ThreadPoolExecutor executor;
+
+    /** The permits for the verifications in flight, either running or queued */
+    private final Semaphore inFlight;
+
+    /** The number of rejected verifications */
+    private final LongAdder rejected = new LongAdder();
+
+    /** The statistics, per scheme */
+    private final Map<String, SchemeStatistics> statistics = new ConcurrentHashMap<>();
+
+
+    /**
+     * The verification statistics for a scheme
+     */
+    public static final class SchemeStatistics
+    {
+        /** The number of verifications */
+        private final LongAdder count = new LongAdder();
+
+        /** The total time spent verifying, in nanoseconds */
+        private final LongAdder totalTime = new LongAdder();
+
+        /** The longest verification, in nanoseconds */
+        private final AtomicLong maxTime = new AtomicLong();
+
+
+        private void record( long time )
+        {
+            count.increment();
+            totalTime.add( time );
+
+            long max = maxTime.get();
+
+            while ( ( time > max ) && !maxTime.compareAndSet( max, time ) )
+            {
+                max = maxTime.get();
+            }
+        }
+
+
+        /**
+         * @return The number of verifications
+         */
+        public long getCount()
+        {
+            return count.sum();
+        }
+
+
+        /**
+         * @return The average verification time, in microseconds
+         */
+        public long getAverageLatency()
+        {
+            long nb = count.sum();
+
+            return nb == 0 ? 0L : totalTime.sum() / nb / 1000L;
+        }
+
+
+        /**
+         * @return The longest verification time, in microseconds
+         */
+        public long getMaxLatency()
+        {
+            return maxTime.get() / 1000L;
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString()
+        {
+            return getCount() + " verifications, average " + getAverageLatency() + " us, max " + getMaxLatency()
+                + " us";
+        }
+    }
+
+
+    /**
+     * Creates a new PasswordVerifier instance
+     *
+     * @param nbThreads The number of verification threads
+     * @param queueSize The number of verifications waiting for a thread before rejecting the new ones
+     */
+    public PasswordVerifier( int nbThreads, int queueSize )
+    {
+        inFlight = new Semaphore( nbThreads + Math.max( 0, queueSize ) );
+        executor = new ThreadPoolExecutor( nbThreads, nbThreads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>( Math.max( 1, queueSize ) ), new ThreadFactory()
+            {
+                private final AtomicInteger threadNumber = new AtomicInteger( 1 );
+
+
+                @Override
+                public Thread newThread( Runnable runnable )
+                {
+                    Thread thread = new Thread( runnable, "PasswordVerifier-" + threadNumber.getAndIncrement() );
+                    thread.setDaemon( true );
+
+                    return thread;
+                }
+            }, new ThreadPoolExecutor.AbortPolicy() );
+    }
+
+
+    /**
+     * Stop the verification threads. The pending verifications are still processed.
+     */
+    public void stop()
+    {
+        executor.shutdown();
+    }
+
+
+    /**
+     * Compare the given credentials with a stored password.
+     *
+     * @param credentials The credentials provided by the user
+     * @param storedPassword The stored password, possibly hashed
+     * @return <tt>true</tt> if the credentials match the stored password
+     * @throws LdapServiceUnavailableException If too many verifications are in flight
+     * @throws LdapException If the verification has been interrupted
+     */
+    public boolean compareCredentials( final byte[] credentials, final byte[] storedPassword ) throws LdapException
+    {
+        LdapSecurityConstants algorithm = PasswordUtil.findAlgorithm( storedPassword );
+
+        if ( algorithm == null )
+        {
+            // Clear text password, nothing to compute
+            long t0 = System.nanoTime();
+            boolean result = PasswordUtil.compareCredentials( credentials, storedPassword );
+            getStatistics( PLAIN ).record( System.nanoTime() - t0 );
+
+            return result;
+        }
+
+        // The calling thread is blocked until the verification is done : don't let it wait for
+        // a thread if they are all in use
+        if ( !inFlight.tryAcquire() )
+        {
+            rejected.increment();
+            LOG.info( "Too many pending password verifications, rejecting the bind" );
+
+            throw new LdapServiceUnavailableException( ResultCodeEnum.BUSY,
+                "Too many pending password verifications" );
+        }
+
+        final SchemeStatistics schemeStatistics = getStatistics( algorithm.getName() );
+        Future<Boolean> future = null;
+
+        try
+        {
+            future = executor.submit( new Callable<Boolean>()
+            {
+                @Override
+                public Boolean call()
+                {
+                    long t0 = System.nanoTime();
+                    boolean result = verify( credentials, storedPassword );
+                    schemeStatistics.record( System.nanoTime() - t0 );
+
+                    return result;
+                }
+            } );
+
+            return future.get();
+        }
+        catch ( RejectedExecutionException ree )
+        {
+            // The verifier has been stopped
+            throw new LdapServiceUnavailableException( ResultCodeEnum.BUSY, "The password verifier is stopped" );
+        }
+        catch ( InterruptedException ie )
+        {
+            future.cancel( true );
+            Thread.currentThread().interrupt();
+
+            throw new LdapOtherException( ie.getMessage(), ie );
+        }
+        catch ( ExecutionException ee )
+        {
+            throw new LdapOtherException( ee.getMessage(), ee.getCause() );
+        }
+        finally
+        {
+            inFlight.release();
+        }
+    }
+
+
+    /**
+     * Compares the credentials with a hashed password, on a verification thread
+     *
+     * @param credentials The credentials provided by the user
+     * @param storedPassword The stored hashed password
+     * @return <tt>true</tt> if the credentials match the stored password
+     */
+    boolean verify( byte[] credentials, byte[] storedPassword )
+    {
+        return PasswordUtil.compareCredentials( credentials, storedPassword );
+    }
+
+
+    private SchemeStatistics getStatistics( String scheme )
+    {
+        SchemeStatistics schemeStatistics = statistics.get( scheme );
+
+        if ( schemeStatistics == null )
+        {
+            schemeStatistics = new SchemeStatistics();
+            SchemeStatistics previous = statistics.putIfAbsent( scheme, schemeStatistics );
+
+            if ( previous != null )
+            {
+                schemeStatistics = previous;
+            }
+        }
+
+        return schemeStatistics;
+    }
+
+
+    /**
+     * @return The verification statistics, per scheme name (PLAIN for the clear text passwords)
+     */
+    public Map<String, SchemeStatistics> getStatistics()
+    {
+        return new TreeMap<>( statistics );
+    }
+
+
+    /**
+     * @return The number of verifications rejected because too many were in flight
+     */
+    public long getRejectedCount()
+    {
+        return rejected.sum();
+    }
+
+
+    /**
+     * @return The number of verifications waiting for a thread
+     */
+    public int getQueuedCount()
+    {
+        return executor.getQueue().size();
+    }
+
+
+    /**
+     * @return The number of verification threads
+     */
+    public int getNbThreads()
+    {
+        return executor.getMaximumPoolSize();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append( "PasswordVerifier[" ).append( getNbThreads() ).append( " threads, " );
+        sb.append( getQueuedCount() ).append( " queued, " ).append( getRejectedCount() ).append( " rejected]" );
+
+        for ( Map.Entry<String, SchemeStatistics> entry : getStatistics().entrySet() )
+        {
+            sb.append( "\n    " ).append( entry.getKey() ).append( " : " ).append( entry.getValue() );
+        }
+
+        return sb.toString();
+    }
+}
@@ -231,10 +231,24 @@ public class SimpleAuthenticator extends AbstractAuthenticator
             ppe = e;
         }
 
+        // The hashed passwords may be verified on a dedicated pool
+        PasswordVerifier passwordVerifier = getPasswordVerifier();
+
         // Now, compare the passwords.
         for ( byte[] storedPassword : storedPasswords )
         {
-            if ( PasswordUtil.compareCredentials( credentials, storedPassword ) )
+            boolean matches;
+
+            if ( passwordVerifier != null )
+            {
+                matches = passwordVerifier.compareCredentials( credentials, storedPassword );
+            }
+            else
+            {
+                matches = PasswordUtil.compareCredentials( credentials, storedPassword );
+            }
+
+            if ( matches )
             {
                 if ( ppe != null )
                 {
@@ -258,6 +272,23 @@ public class SimpleAuthenticator extends AbstractAuthenticator
     }
 
 
+    /**
+     * @return The pool verifying the hashed passwords, or null if they are verified by the current thread
+     */
+    private PasswordVerifier getPasswordVerifier()
+    {
+        AuthenticationInterceptor authenticationInterceptor = ( AuthenticationInterceptor ) getDirectoryService()
+            .getInterceptor( InterceptorEnum.AUTHENTICATION_INTERCEPTOR.getName() );
+
+        if ( authenticationInterceptor == null )
+        {
+            return null;
+        }
+
+        return authenticationInterceptor.getPasswordVerifier();
+    }
+
+
     /**
      * Local function which request the password from the backend
      * @param bindContext the Bind operation context
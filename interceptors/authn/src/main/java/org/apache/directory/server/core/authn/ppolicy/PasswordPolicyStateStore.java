@@ -0,0 +1,449 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+
+package org.apache.directory.server.core.authn.ppolicy;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.OperationManager;
+import org.apache.directory.server.core.api.interceptor.context.HasEntryOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.ModifyOperationContext;
+import org.apache.directory.server.core.api.partition.Partition;
+import org.apache.directory.server.core.api.partition.PartitionNexus;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A write-behind store for the password policy state updated by the successful binds.
+ * <p>
+ * Without it, each successful bind under a password policy with a pwdMaxIdle updates the
+ * user's pwdLastSuccess attribute, and a bind becomes a write transaction. Here, the last
+ * success time is kept in memory, coalesced per user, and periodically flushed to the
+ * entries in batches, each batch being applied in a single write transaction.
+ * <p>
+ * Only the pwdLastSuccess updates are deferred : the state used for the lockout decisions
+ * (pwdFailureTime, pwdAccountLockedTime, pwdGraceUseTime) is still written synchronously.
+ * The pending values are used by the authenticators when checking the pwdMaxIdle, so that
+ * a user is never considered as idle because its last success has not been flushed yet.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class PasswordPolicyStateStore
+{
+    /** The logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( PasswordPolicyStateStore.class );
+
+    /** The default number of entries updated in a single transaction */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    /** The DirectoryService instance */
+    private final DirectoryService directoryService;
+
+    /** The pwdLastSuccess AttributeType */
+    private final AttributeType pwdLastSuccessAT;
+
+    /** The delay between two flushes, in milliseconds */
+    private final long flushInterval;
+
+    /** The number of entries updated in a single transaction */
+    private final int batchSize;
+
+    /** The pending pwdLastSuccess values, per user */
+    private final ConcurrentMap<Dn, String> pendingLastSuccess = new ConcurrentHashMap<>();
+
+    /** The number of updates recorded */
+    private final AtomicLong recorded = new AtomicLong( 0L );
+
+    /** The number of entries written */
+    private final AtomicLong flushed = new AtomicLong( 0L );
+
+    /** The number of transactions committed */
+    private final AtomicLong batches = new AtomicLong( 0L );
+
+    /** The flushing thread */
+    private ScheduledExecutorService executor;
+
+
+    /**
+     * Creates a new instance of PasswordPolicyStateStore
+     *
+     * @param directoryService The DirectoryService instance
+     * @param pwdLastSuccessAT The pwdLastSuccess AttributeType
+     * @param flushInterval The delay between two flushes, in milliseconds
+     * @param batchSize The number of entries updated in a single transaction
+     */
+    public PasswordPolicyStateStore( DirectoryService directoryService, AttributeType pwdLastSuccessAT,
+        long flushInterval, int batchSize )
+    {
+        if ( ( flushInterval <= 0 ) || ( batchSize <= 0 ) )
+        {
+            throw new IllegalArgumentException( "The flush interval and the batch size must be positive" );
+        }
+
+        this.directoryService = directoryService;
+        this.pwdLastSuccessAT = pwdLastSuccessAT;
+        this.flushInterval = flushInterval;
+        this.batchSize = batchSize;
+    }
+
+
+    /**
+     * Starts the thread flushing the pending updates
+     */
+    public synchronized void start()
+    {
+        if ( executor != null )
+        {
+            return;
+        }
+
+        executor = Executors.newSingleThreadScheduledExecutor( new ThreadFactory()
+        {
+            @Override
+            public Thread newThread( Runnable runnable )
+            {
+                Thread thread = new Thread( runnable, "PasswordPolicyStateStore" );
+                thread.setDaemon( true );
+
+                return thread;
+            }
+        } );
+
+        executor.scheduleWithFixedDelay( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    flush();
+                }
+                catch ( Exception e )
+                {
+                    LOG.error( "Failed to flush the password policy state : {}", e.getMessage(), e );
+                }
+            }
+        }, flushInterval, flushInterval, TimeUnit.MILLISECONDS );
+    }
+
+
+    /**
+     * Stops the flushing thread, and writes the pending updates.
+     */
+    public void stop()
+    {
+        synchronized ( this )
+        {
+            if ( executor == null )
+            {
+                return;
+            }
+
+            executor.shutdown();
+
+            try
+            {
+                executor.awaitTermination( flushInterval * 2, TimeUnit.MILLISECONDS );
+            }
+            catch ( InterruptedException ie )
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            executor = null;
+        }
+
+        try
+        {
+            flush();
+        }
+        catch ( LdapException le )
+        {
+            LOG.error( "Failed to flush the password policy state on shutdown : {}", le.getMessage(), le );
+        }
+    }
+
+
+    /**
+     * Record the time of a successful bind. It replaces any pending value for this user.
+     *
+     * @param userDn The user Dn
+     * @param lastSuccess The successful bind time, as a generalized time
+     */
+    public void recordLastSuccess( Dn userDn, String lastSuccess )
+    {
+        pendingLastSuccess.put( userDn, lastSuccess );
+        recorded.incrementAndGet();
+    }
+
+
+    /**
+     * Get the pending successful bind time of a user
+     *
+     * @param userDn The user Dn
+     * @return The pending pwdLastSuccess value, or null if there is none
+     */
+    public String getLastSuccess( Dn userDn )
+    {
+        return pendingLastSuccess.get( userDn );
+    }
+
+
+    /**
+     * Drop the pending update of a user, either because it has been deleted or because its
+     * state has been written synchronously.
+     *
+     * @param userDn The user Dn
+     */
+    public void discard( Dn userDn )
+    {
+        pendingLastSuccess.remove( userDn );
+    }
+
+
+    /**
+     * Move the pending updates of the entries below a renamed or moved entry.
+     *
+     * @param oldDn The entry Dn before the move
+     * @param newDn The entry Dn after the move
+     */
+    public void move( Dn oldDn, Dn newDn ) throws LdapException
+    {
+        for ( Dn userDn : pendingLastSuccess.keySet() )
+        {
+            if ( userDn.isDescendantOf( oldDn ) || userDn.equals( oldDn ) )
+            {
+                String lastSuccess = pendingLastSuccess.remove( userDn );
+
+                if ( lastSuccess != null )
+                {
+                    pendingLastSuccess.putIfAbsent( newDn.add( userDn.getDescendantOf( oldDn ) ), lastSuccess );
+                }
+            }
+        }
+    }
+
+
+    /**
+     * @return The number of users with a pending update
+     */
+    public int getPendingCount()
+    {
+        return pendingLastSuccess.size();
+    }
+
+
+    /**
+     * @return The number of updates recorded so far
+     */
+    public long getRecordedCount()
+    {
+        return recorded.get();
+    }
+
+
+    /**
+     * @return The number of entries written so far
+     */
+    public long getFlushedCount()
+    {
+        return flushed.get();
+    }
+
+
+    /**
+     * @return The number of transactions committed so far
+     */
+    public long getBatchCount()
+    {
+        return batches.get();
+    }
+
+
+    /**
+     * Write all the pending updates to the entries, grouped by partition and in batches.
+     *
+     * @throws LdapException If a batch can't be written
+     */
+    public synchronized void flush() throws LdapException
+    {
+        if ( pendingLastSuccess.isEmpty() )
+        {
+            return;
+        }
+
+        PartitionNexus nexus = directoryService.getPartitionNexus();
+        Map<Partition, List<Dn>> byPartition = new HashMap<>();
+
+        for ( Dn userDn : pendingLastSuccess.keySet() )
+        {
+            Partition partition = nexus.getPartition( userDn );
+            List<Dn> userDns = byPartition.get( partition );
+
+            if ( userDns == null )
+            {
+                userDns = new ArrayList<>();
+                byPartition.put( partition, userDns );
+            }
+
+            userDns.add( userDn );
+        }
+
+        for ( Map.Entry<Partition, List<Dn>> entry : byPartition.entrySet() )
+        {
+            List<Dn> userDns = entry.getValue();
+
+            for ( int start = 0; start < userDns.size(); start += batchSize )
+            {
+                int end = Math.min( start + batchSize, userDns.size() );
+                applyBatch( entry.getKey(), userDns.subList( start, end ) );
+            }
+        }
+    }
+
+
+    /**
+     * Apply a batch of updates in a single write transaction. The values are removed from
+     * the pending map once committed, unless they have been replaced in the meantime.
+     */
+    private void applyBatch( Partition partition, List<Dn> userDns ) throws LdapException
+    {
+        PartitionNexus nexus = directoryService.getPartitionNexus();
+        CoreSession adminSession = directoryService.getAdminSession();
+        OperationManager operationManager = directoryService.getOperationManager();
+        Map<Dn, String> written = new HashMap<>();
+        List<Dn> missing = new ArrayList<>();
+
+        operationManager.lockWrite();
+
+        PartitionTxn transaction = null;
+
+        try
+        {
+            transaction = partition.beginWriteTransaction();
+
+            for ( Dn userDn : userDns )
+            {
+                String lastSuccess = pendingLastSuccess.get( userDn );
+
+                if ( lastSuccess == null )
+                {
+                    continue;
+                }
+
+                // The entry may have been deleted since the bind
+                HasEntryOperationContext hasEntryContext = new HasEntryOperationContext( adminSession, userDn );
+                hasEntryContext.setPartition( partition );
+                hasEntryContext.setTransaction( transaction );
+
+                if ( !partition.hasEntry( hasEntryContext ) )
+                {
+                    missing.add( userDn );
+                    continue;
+                }
+
+                List<Modification> mods = new ArrayList<>( 2 );
+                mods.add( new DefaultModification( ModificationOperation.REPLACE_ATTRIBUTE, pwdLastSuccessAT,
+                    lastSuccess ) );
+                mods.add( new DefaultModification( ModificationOperation.REPLACE_ATTRIBUTE,
+                    directoryService.getAtProvider().getEntryCSN(), directoryService.getCSN().toString() ) );
+
+                ModifyOperationContext modifyContext = new ModifyOperationContext( adminSession );
+                modifyContext.setDn( userDn );
+                modifyContext.setModItems( mods );
+                modifyContext.setPartition( partition );
+                modifyContext.setTransaction( transaction );
+                modifyContext.setPushToEvtInterceptor( true );
+
+                nexus.modify( modifyContext );
+                written.put( userDn, lastSuccess );
+            }
+
+            transaction.commit();
+        }
+        catch ( LdapException | IOException e )
+        {
+            try
+            {
+                if ( transaction != null )
+                {
+                    transaction.abort();
+                }
+            }
+            catch ( IOException ioe )
+            {
+                LOG.error( "Cannot abort the transaction : {}", ioe.getMessage() );
+            }
+
+            throw new LdapOtherException( e.getMessage(), e );
+        }
+        finally
+        {
+            operationManager.unlockWrite();
+        }
+
+        for ( Map.Entry<Dn, String> entry : written.entrySet() )
+        {
+            pendingLastSuccess.remove( entry.getKey(), entry.getValue() );
+        }
+
+        for ( Dn userDn : missing )
+        {
+            pendingLastSuccess.remove( userDn );
+        }
+
+        flushed.addAndGet( written.size() );
+        batches.incrementAndGet();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return "PasswordPolicyStateStore[pending: " + pendingLastSuccess.size() + ", recorded: " + recorded.get()
+            + ", flushed: " + flushed.get() + ", batches: " + batches.get() + "]";
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.authn;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.ldap.model.constants.LdapSecurityConstants;
+import org.apache.directory.api.ldap.model.exception.LdapServiceUnavailableException;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.password.PasswordUtil;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.server.core.authn.PasswordVerifier.SchemeStatistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Tests for the PasswordVerifier
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class PasswordVerifierTest
+{
+    private PasswordVerifier passwordVerifier;
+
+
+    @BeforeEach
+    public void init()
+    {
+        passwordVerifier = new PasswordVerifier( 2, 10 );
+    }
+
+
+    @AfterEach
+    public void stop()
+    {
+        passwordVerifier.stop();
+    }
+
+
+    @Test
+    public void testPlainPassword() throws Exception
+    {
+        byte[] stored = Strings.getBytesUtf8( "secret" );
+
+        assertTrue( passwordVerifier.compareCredentials( Strings.getBytesUtf8( "secret" ), stored ) );
+        assertFalse( passwordVerifier.compareCredentials( Strings.getBytesUtf8( "Secret" ), stored ) );
+
+        Map<String, SchemeStatistics> statistics = passwordVerifier.getStatistics();
+
+        assertEquals( 2L, statistics.get( "PLAIN" ).getCount() );
+    }
+
+
+    @Test
+    public void testHashedPasswords() throws Exception
+    {
+        LdapSecurityConstants[] algorithms = new LdapSecurityConstants[]
+            {
+                LdapSecurityConstants.HASH_METHOD_SSHA256,
+                LdapSecurityConstants.HASH_METHOD_SSHA512,
+                LdapSecurityConstants.HASH_METHOD_PKCS5S2
+            };
+
+        for ( LdapSecurityConstants algorithm : algorithms )
+        {
+            byte[] stored = PasswordUtil.createStoredPassword( Strings.getBytesUtf8( "secret" ), algorithm );
+
+            assertTrue( passwordVerifier.compareCredentials( Strings.getBytesUtf8( "secret" ), stored ) );
+            assertFalse( passwordVerifier.compareCredentials( Strings.getBytesUtf8( "wrong" ), stored ) );
+        }
+
+        Map<String, SchemeStatistics> statistics = passwordVerifier.getStatistics();
+
+        for ( LdapSecurityConstants algorithm : algorithms )
+        {
+            assertEquals( 2L, statistics.get( algorithm.getName() ).getCount() );
+        }
+
+        assertEquals( 0L, passwordVerifier.getRejectedCount() );
+    }
+
+
+    /**
+     * A verification is rejected with a busy error when all the threads are in use
+     */
+    @Test
+    public void testBusy() throws Exception
+    {
+        final CountDownLatch started = new CountDownLatch( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final PasswordVerifier blockingVerifier = new PasswordVerifier( 1, 0 )
+        {
+            @Override
+            boolean verify( byte[] credentials, byte[] storedPassword )
+            {
+                started.countDown();
+
+                try
+                {
+                    release.await();
+                }
+                catch ( InterruptedException ie )
+                {
+                    Thread.currentThread().interrupt();
+                }
+
+                return super.verify( credentials, storedPassword );
+            }
+        };
+
+        final byte[] stored = PasswordUtil.createStoredPassword( Strings.getBytesUtf8( "secret" ),
+            LdapSecurityConstants.HASH_METHOD_SSHA256 );
+        ExecutorService binder = Executors.newSingleThreadExecutor();
+
+        try
+        {
+            // A first bind uses the only verification thread
+            Future<Boolean> firstBind = binder.submit( new Callable<Boolean>()
+            {
+                @Override
+                public Boolean call() throws Exception
+                {
+                    return blockingVerifier.compareCredentials( Strings.getBytesUtf8( "secret" ), stored );
+                }
+            } );
+
+            assertTrue( started.await( 10L, TimeUnit.SECONDS ) );
+
+            // The second one is rejected at once
+            try
+            {
+                blockingVerifier.compareCredentials( Strings.getBytesUtf8( "secret" ), stored );
+                fail();
+            }
+            catch ( LdapServiceUnavailableException luae )
+            {
+                assertEquals( ResultCodeEnum.BUSY, luae.getResultCode() );
+            }
+
+            assertEquals( 1L, blockingVerifier.getRejectedCount() );
+
+            release.countDown();
+            assertTrue( firstBind.get( 10L, TimeUnit.SECONDS ) );
+
+            // The thread is available again
+            assertTrue( blockingVerifier.compareCredentials( Strings.getBytesUtf8( "secret" ), stored ) );
+            assertEquals( 1L, blockingVerifier.getRejectedCount() );
+        }
+        finally
+        {
+            release.countDown();
+            binder.shutdownNow();
+            blockingVerifier.stop();
+        }
+    }
+}
@@ -25,8 +25,10 @@ import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.naming.directory.SearchControls;
@@ -60,6 +62,7 @@ import org.apache.directory.server.core.api.DirectoryService;
 import org.apache.directory.server.core.api.InterceptorEnum;
 import org.apache.directory.server.core.api.LdapPrincipal;
 import org.apache.directory.server.core.api.entry.ClonedServerEntry;
+import org.apache.directory.server.core.api.entry.CopyOnWriteEntry;
 import org.apache.directory.server.core.api.entry.ServerEntryUtils;
 import org.apache.directory.server.core.api.filtering.EntryFilter;
 import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
@@ -1381,12 +1384,21 @@ public class AciAuthorizationInterceptor extends BaseInterceptor
          * values remaining then the entire attribute is removed.
          */
         List<AttributeType> attributeToRemove = new ArrayList<>();
+        Map<AttributeType, List<Value>> valuesToRemove = new HashMap<>();
 
-        for ( Attribute attribute : clonedEntry.getAttributes() )
+        // The entry is only read while checking the permissions : don't copy the attributes it
+        // shares with the partition cache, we will remove what's not allowed afterwards
+        Entry readEntry = clonedEntry;
+
+        if ( clonedEntry instanceof CopyOnWriteEntry )
+        {
+            readEntry = ( ( CopyOnWriteEntry ) clonedEntry ).getSharedEntry();
+        }
+
+        for ( Attribute attr : readEntry.getAttributes() )
         {
             // if attribute type scope access is not allowed then remove the attribute and continue
-            AttributeType attributeType = attribute.getAttributeType();
-            Attribute attr = clonedEntry.get( attributeType );
+            AttributeType attributeType = attr.getAttributeType();
 
             aciContext = new AciContext( schemaManager, opContext );
             aciContext.setUserGroupNames( userGroups );
@@ -1396,7 +1408,7 @@ public class AciAuthorizationInterceptor extends BaseInterceptor
             aciContext.setAttributeType( attributeType );
             aciContext.setMicroOperations( SEARCH_ATTRVAL_PERMS );
             aciContext.setAciTuples( tuples );
-            aciContext.setEntry( clonedEntry );
+            aciContext.setEntry( readEntry );
 
             if ( !engine.hasPermission( aciContext ) )
             {
@@ -1419,7 +1431,7 @@ public class AciAuthorizationInterceptor extends BaseInterceptor
                 aciContext.setAttrValue( value );
                 aciContext.setMicroOperations( SEARCH_ATTRVAL_PERMS );
                 aciContext.setAciTuples( tuples );
-                aciContext.setEntry( clonedEntry );
+                aciContext.setEntry( readEntry );
 
                 if ( !engine.hasPermission( aciContext ) )
                 {
@@ -1427,17 +1439,21 @@ public class AciAuthorizationInterceptor extends BaseInterceptor
                 }
             }
 
-            for ( Value value : valueToRemove )
+            if ( valueToRemove.size() == attr.size() )
             {
-                attr.remove( value );
+                attributeToRemove.add( attributeType );
             }
-
-            if ( attr.size() == 0 )
+            else if ( !valueToRemove.isEmpty() )
             {
-                attributeToRemove.add( attributeType );
+                valuesToRemove.put( attributeType, valueToRemove );
             }
         }
 
+        for ( Map.Entry<AttributeType, List<Value>> values : valuesToRemove.entrySet() )
+        {
+            clonedEntry.remove( values.getKey(), values.getValue().toArray( new Value[values.getValue().size()] ) );
+        }
+
         for ( AttributeType attributeType : attributeToRemove )
         {
             clonedEntry.removeAttributes( attributeType );
@@ -0,0 +1,595 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.directory.server.core.changelog;
+
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.filter.AndNode;
+import org.apache.directory.api.ldap.model.filter.EqualityNode;
+import org.apache.directory.api.ldap.model.filter.ExprNode;
+import org.apache.directory.api.ldap.model.filter.GreaterEqNode;
+import org.apache.directory.api.ldap.model.filter.LessEqNode;
+import org.apache.directory.api.ldap.model.filter.OrNode;
+import org.apache.directory.api.ldap.model.filter.ScopeNode;
+import org.apache.directory.api.ldap.model.filter.SimpleNode;
+import org.apache.directory.api.ldap.model.ldif.ChangeType;
+import org.apache.directory.api.ldap.model.ldif.LdifEntry;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.ObjectClass;
+import org.apache.directory.api.ldap.model.schema.SchemaObject;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.server.core.api.LdapPrincipal;
+import org.apache.directory.server.core.api.changelog.ChangeLogEvent;
+import org.apache.directory.server.core.api.changelog.ChangeLogSearchEngine;
+import org.apache.directory.server.core.api.changelog.RevisionOrder;
+import org.apache.directory.server.i18n.I18n;
+
+
+/**
+ * The search engine of the {@link FileChangeLogStore}. The searches on revisions,
+ * times, target Dn, principals and change types use the store indexes. The searches
+ * on the changed attributeTypes and objectClasses read all the events.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class FileChangeLogSearchEngine implements ChangeLogSearchEngine
+{
+    /** The attributes which can be used in a filter */
+    private static final String REVISION = "revision";
+    private static final String DATE = "date";
+    private static final String NDN = "ndn";
+    private static final String PRINCIPAL = "principal";
+    private static final String CHANGE_TYPE = "changetype";
+    private static final String ATTRIBUTE_TYPE = "attributetype";
+    private static final String OBJECT_CLASS = "objectclass";
+
+    /** The store */
+    private final FileChangeLogStore store;
+
+
+    /**
+     * A test applied to the events when there is no index
+     */
+    private interface EventMatcher
+    {
+        boolean matches( ChangeLogEvent event );
+    }
+
+
+    /**
+     * Creates a new instance of FileChangeLogSearchEngine.
+     *
+     * @param store The store to search
+     */
+    public FileChangeLogSearchEngine( FileChangeLogStore store )
+    {
+        this.store = store;
+    }
+
+
+    private void checkRevision( long revision )
+    {
+        if ( revision < 0 )
+        {
+            throw new IllegalArgumentException( I18n.err( I18n.ERR_239 ) );
+        }
+
+        if ( revision > store.getCurrentRevision() )
+        {
+            throw new IllegalArgumentException( I18n.err( I18n.ERR_240 ) );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long lookup( String generalizedTime ) throws Exception
+    {
+        return store.getRevision( FileChangeLogStore.parseTime( generalizedTime ) );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ChangeLogEvent lookup( long revision ) throws Exception
+    {
+        checkRevision( revision );
+
+        return store.read( revision );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cursor<ChangeLogEvent> find( RevisionOrder order ) throws Exception
+    {
+        return new RevisionCursor( store, store.getFirstRevision(), store.getCurrentRevision(), order );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cursor<ChangeLogEvent> findBefore( long revision, RevisionOrder order ) throws Exception
+    {
+        checkRevision( revision );
+
+        return new RevisionCursor( store, store.getFirstRevision(), revision, order );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cursor<ChangeLogEvent> findAfter( long revision, RevisionOrder order ) throws Exception
+    {
+        checkRevision( revision );
+
+        return new RevisionCursor( store, Math.max( revision, store.getFirstRevision() ),
+            store.getCurrentRevision(), order );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cursor<ChangeLogEvent> find( long startRevision, long endRevision, RevisionOrder order )
+        throws Exception
+    {
+        checkRevision( startRevision );
+        checkRevision( endRevision );
+
+        if ( startRevision > endRevision )
+        {
+            throw new IllegalArgumentException( "The start revision " + startRevision
+                + " is greater than the end revision " + endRevision );
+        }
+
+        return new RevisionCursor( store, Math.max( startRevision, store.getFirstRevision() ), endRevision,
+            order );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cursor<ChangeLogEvent> find( Dn dn, RevisionOrder order ) throws Exception
+    {
+        return new RevisionCursor( store, store.getRevisions( dn ), order );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cursor<ChangeLogEvent> find( Dn base, SearchScope scope, RevisionOrder order ) throws Exception
+    {
+        return new RevisionCursor( store, getScopeRevisions( base, scope ), order );
+    }
+
+
+    private long[] getScopeRevisions( Dn base, SearchScope scope )
+    {
+        switch ( scope )
+        {
+            case OBJECT:
+                return store.getRevisions( base );
+
+            case ONELEVEL:
+                return store.getRevisions( base, true );
+
+            default:
+                return FileChangeLogStore.union( store.getRevisions( base ), store.getRevisions( base, false ) );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cursor<ChangeLogEvent> find( LdapPrincipal principal, RevisionOrder order ) throws Exception
+    {
+        return new RevisionCursor( store, store.getPrincipalRevisions( principal.getDn() ), order );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cursor<ChangeLogEvent> find( ChangeType changeType, RevisionOrder order ) throws Exception
+    {
+        return new RevisionCursor( store, store.getChangeTypeRevisions( changeType.getChangeType() ), order );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cursor<ChangeLogEvent> find( AttributeType attributeType, RevisionOrder order ) throws Exception
+    {
+        return new RevisionCursor( store, scan( getAttributeTypeMatcher( attributeType ) ), order );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cursor<ChangeLogEvent> find( ObjectClass objectClass, RevisionOrder order ) throws Exception
+    {
+        return new RevisionCursor( store, scan( getObjectClassMatcher( objectClass ) ), order );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cursor<ChangeLogEvent> find( ExprNode filter, RevisionOrder order ) throws Exception
+    {
+        return new RevisionCursor( store, evaluate( filter ), order );
+    }
+
+
+    /**
+     * Computes the sorted revisions matching a filter
+     */
+    private long[] evaluate( ExprNode filter ) throws Exception
+    {
+        if ( filter instanceof AndNode )
+        {
+            long[] revisions = null;
+
+            for ( ExprNode child : ( ( AndNode ) filter ).getChildren() )
+            {
+                long[] childRevisions = evaluate( child );
+                revisions = ( revisions == null ) ? childRevisions : FileChangeLogStore.intersection( revisions,
+                    childRevisions );
+            }
+
+            return ( revisions == null ) ? new long[0] : revisions;
+        }
+
+        if ( filter instanceof OrNode )
+        {
+            long[] revisions = new long[0];
+
+            for ( ExprNode child : ( ( OrNode ) filter ).getChildren() )
+            {
+                revisions = FileChangeLogStore.union( revisions, evaluate( child ) );
+            }
+
+            return revisions;
+        }
+
+        if ( filter instanceof ScopeNode )
+        {
+            ScopeNode scopeNode = ( ScopeNode ) filter;
+
+            return getScopeRevisions( scopeNode.getBaseDn(), scopeNode.getScope() );
+        }
+
+        if ( ( filter instanceof EqualityNode ) || ( filter instanceof GreaterEqNode )
+            || ( filter instanceof LessEqNode ) )
+        {
+            return evaluate( ( SimpleNode<?> ) filter );
+        }
+
+        throw new UnsupportedOperationException( "Unsupported changelog filter : " + filter );
+    }
+
+
+    private long[] evaluate( SimpleNode<?> node ) throws Exception
+    {
+        String attribute = Strings.toLowerCaseAscii( node.getAttribute() );
+        String value = node.getValue().getString();
+        boolean isEquality = node instanceof EqualityNode;
+        boolean isGreater = node instanceof GreaterEqNode;
+
+        switch ( attribute )
+        {
+            case REVISION:
+                long revision = Long.parseLong( value );
+
+                if ( isEquality )
+                {
+                    return range( revision, revision );
+                }
+
+                return isGreater ? range( revision, store.getCurrentRevision() ) : range( store.getFirstRevision(),
+                    revision );
+
+            case DATE:
+                long time = FileChangeLogStore.parseTime( value );
+                long lastBefore = store.getRevision( time );
+                long lastStrictlyBefore = store.getRevision( time - 1 );
+
+                if ( isEquality )
+                {
+                    return range( lastStrictlyBefore + 1, lastBefore );
+                }
+
+                return isGreater ? range( lastStrictlyBefore + 1, store.getCurrentRevision() ) : range(
+                    store.getFirstRevision(), lastBefore );
+
+            case NDN:
+                checkEquality( isEquality, attribute );
+
+                return store.getRevisions( new Dn( value ) );
+
+            case PRINCIPAL:
+                checkEquality( isEquality, attribute );
+
+                return store.getPrincipalRevisions( new Dn( value ) );
+
+            case CHANGE_TYPE:
+                checkEquality( isEquality, attribute );
+
+                for ( ChangeType changeType : ChangeType.values() )
+                {
+                    if ( changeType.name().equalsIgnoreCase( value ) )
+                    {
+                        return store.getChangeTypeRevisions( changeType.getChangeType() );
+                    }
+                }
+
+                throw new IllegalArgumentException( "Unknown change type " + value );
+
+            case ATTRIBUTE_TYPE:
+                checkEquality( isEquality, attribute );
+
+                return scan( getAttributeTypeMatcher( store.getSchemaManager().lookupAttributeTypeRegistry( value ) ) );
+
+            case OBJECT_CLASS:
+                checkEquality( isEquality, attribute );
+
+                return scan( getObjectClassMatcher( store.getSchemaManager().lookupObjectClassRegistry( value ) ) );
+
+            default:
+                throw new UnsupportedOperationException( "Unsupported changelog filter attribute : " + attribute );
+        }
+    }
+
+
+    private void checkEquality( boolean isEquality, String attribute )
+    {
+        if ( !isEquality )
+        {
+            throw new UnsupportedOperationException( "Only the equality is supported on " + attribute );
+        }
+    }
+
+
+    /**
+     * @return The revisions of a range present in the store
+     */
+    private long[] range( long startRevision, long endRevision )
+    {
+        long start = Math.max( startRevision, store.getFirstRevision() );
+        long end = Math.min( endRevision, store.getCurrentRevision() );
+
+        if ( start > end )
+        {
+            return new long[0];
+        }
+
+        long[] revisions = new long[( int ) ( end - start + 1 )];
+
+        for ( int i = 0; i < revisions.length; i++ )
+        {
+            revisions[i] = start + i;
+        }
+
+        return revisions;
+    }
+
+
+    /**
+     * Reads all the events, and keeps the revisions of the matching ones
+     */
+    private long[] scan( EventMatcher matcher ) throws Exception
+    {
+        FileChangeLogStore.RevisionList revisions = new FileChangeLogStore.RevisionList();
+        long end = store.getCurrentRevision();
+
+        for ( long revision = store.getFirstRevision(); revision <= end; revision++ )
+        {
+            ChangeLogEvent event = store.read( revision );
+
+            if ( ( event != null ) && matcher.matches( event ) )
+            {
+                revisions.add( revision );
+            }
+        }
+
+        return revisions.toArray();
+    }
+
+
+    /**
+     * Tells if an attribute or objectClass id is one of the names or the OID of a schema object
+     */
+    private static boolean isNamed( String id, SchemaObject object )
+    {
+        if ( id == null )
+        {
+            return false;
+        }
+
+        if ( id.equalsIgnoreCase( object.getOid() ) )
+        {
+            return true;
+        }
+
+        for ( String name : object.getNames() )
+        {
+            if ( id.equalsIgnoreCase( name ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Tells if a change adds, modifies or deletes an attribute. The deleted entries are
+     * known from the reverse changes.
+     */
+    private EventMatcher getAttributeTypeMatcher( final AttributeType attributeType )
+    {
+        return new EventMatcher()
+        {
+            @Override
+            public boolean matches( ChangeLogEvent event )
+            {
+                if ( hasAttribute( event.getForwardLdif(), attributeType ) )
+                {
+                    return true;
+                }
+
+                for ( LdifEntry reverse : event.getReverseLdifs() )
+                {
+                    if ( reverse.isChangeAdd() && hasAttribute( reverse, attributeType ) )
+                    {
+                        return true;
+                    }
+                }
+
+                return false;
+            }
+        };
+    }
+
+
+    private static boolean hasAttribute( LdifEntry ldif, AttributeType attributeType )
+    {
+        if ( ldif.isChangeModify() )
+        {
+            for ( Modification modification : ldif.getModifications() )
+            {
+                if ( isNamed( modification.getAttribute().getId(), attributeType ) )
+                {
+                    return true;
+                }
+            }
+        }
+        else if ( ldif.isChangeAdd() && ( ldif.getEntry() != null ) )
+        {
+            for ( Attribute attribute : ldif.getEntry() )
+            {
+                if ( isNamed( attribute.getId(), attributeType ) )
+                {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Tells if a change adds or deletes an entry of an objectClass. The objectClasses
+     * of the modified entries are not known.
+     */
+    private EventMatcher getObjectClassMatcher( final ObjectClass objectClass )
+    {
+        return new EventMatcher()
+        {
+            @Override
+            public boolean matches( ChangeLogEvent event )
+            {
+                if ( hasObjectClass( event.getForwardLdif(), objectClass ) )
+                {
+                    return true;
+                }
+
+                for ( LdifEntry reverse : event.getReverseLdifs() )
+                {
+                    if ( hasObjectClass( reverse, objectClass ) )
+                    {
+                        return true;
+                    }
+                }
+
+                return false;
+            }
+        };
+    }
+
+
+    private static boolean hasObjectClass( LdifEntry ldif, ObjectClass objectClass )
+    {
+        if ( !ldif.isChangeAdd() || ( ldif.getEntry() == null ) )
+        {
+            return false;
+        }
+
+        Entry entry = ldif.getEntry();
+        Attribute objectClasses = entry.get( SchemaConstants.OBJECT_CLASS_AT );
+
+        if ( objectClasses == null )
+        {
+            return false;
+        }
+
+        for ( Value value : objectClasses )
+        {
+            if ( isNamed( value.getString(), objectClass ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return "FileChangeLogSearchEngine on " + store;
+    }
+}
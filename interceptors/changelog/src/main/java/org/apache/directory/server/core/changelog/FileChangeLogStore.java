@@ -0,0 +1,1530 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.directory.server.core.changelog;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
+import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.api.ldap.model.ldif.LdifEntry;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.name.Rdn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.util.DateUtils;
+import org.apache.directory.api.util.TimeProvider;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.LdapPrincipal;
+import org.apache.directory.server.core.api.changelog.ChangeLogEvent;
+import org.apache.directory.server.core.api.changelog.ChangeLogEventSerializer;
+import org.apache.directory.server.core.api.changelog.ChangeLogSearchEngine;
+import org.apache.directory.server.core.api.changelog.RevisionOrder;
+import org.apache.directory.server.core.api.changelog.SearchableChangeLogStore;
+import org.apache.directory.server.core.api.changelog.Tag;
+import org.apache.directory.server.core.api.changelog.TaggableChangeLogStore;
+import org.apache.directory.server.i18n.I18n;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A change log store that appends the events to files on disk. The events are
+ * written in segments : a segment file holds the events from a revision to the
+ * next segment first revision, and a new segment is started when the current
+ * one is larger than {@link #getSegmentSize()}. Each event is written as a record
+ * protected by a checksum, and the truncated record a crash may leave at the end
+ * of the last segment is dropped when the store is initialized.
+ * <p>
+ * The store keeps in memory the position and the time of each revision, and
+ * indexes the revisions by target Dn, by committer principal and by change type.
+ * These indexes are rebuilt from the records headers when the store is initialized,
+ * and the events are read from the disk only when they are returned.
+ * <p>
+ * The oldest segments are deleted when the store holds more than
+ * {@link #getMaxRevisions()} revisions, or events older than {@link #getMaxAge()}.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class FileChangeLogStore implements TaggableChangeLogStore, SearchableChangeLogStore
+{
+    /** The logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( FileChangeLogStore.class );
+
+    /** The name of the directory holding the store files, in the log directory */
+    public static final String CHANGELOG_DIR = "changelog";
+
+    /** The default segment size : 64 MB */
+    public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024L * 1024L;
+
+    private static final String SEGMENT_PREFIX = "changelog-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String TAG_FILE = "tags";
+
+    /** The size of a record header : the body length and its checksum */
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    /** The separator between the RDNs in the Dn index keys */
+    private static final char DN_SEPARATOR = '\u0000';
+
+    /** The maximum size of a segment file */
+    private long segmentSize = DEFAULT_SEGMENT_SIZE;
+
+    /** The maximum number of revisions kept in the store, 0 for no limit */
+    private long maxRevisions;
+
+    /** The maximum age of the events kept in the store, in milliseconds, 0 for no limit */
+    private long maxAge;
+
+    /** Tells if the segment is flushed to the disk after each event */
+    private boolean syncOnWrite = true;
+
+    /** The directory containing the segments */
+    private File directory;
+
+    /** The SchemaManager used to read the events */
+    private SchemaManager schemaManager;
+
+    private TimeProvider timeProvider = TimeProvider.DEFAULT;
+
+    /** The lock protecting the segments and the indexes */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** The segments, by first revision */
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+
+    /** The segment the events are appended to */
+    private Segment current;
+
+    /** An incremental number giving the current revision */
+    private long currentRevision;
+
+    /** The oldest revision present in the store */
+    private long firstRevision = 1L;
+
+    /** The time of the current revision */
+    private long lastTime;
+
+    /** The revisions per target Dn, the keys being the RDNs from the root */
+    private final TreeMap<String, RevisionList> dnIndex = new TreeMap<>();
+
+    /** The revisions per principal Dn */
+    private final Map<String, RevisionList> principalIndex = new HashMap<>();
+
+    /** The revisions per change type */
+    private final Map<Integer, RevisionList> changeTypeIndex = new HashMap<>();
+
+    /** The latest tag */
+    private Tag latest;
+
+    /** The tags, by revision */
+    private final TreeMap<Long, Tag> tags = new TreeMap<>();
+
+    /** The search engine */
+    private final FileChangeLogSearchEngine searchEngine = new FileChangeLogSearchEngine( this );
+
+
+    /**
+     * A growable array of sorted revisions
+     */
+    static final class RevisionList
+    {
+        private long[] values = new long[4];
+        private int size;
+
+
+        void add( long value )
+        {
+            if ( size == values.length )
+            {
+                values = Arrays.copyOf( values, size * 2 );
+            }
+
+            values[size++] = value;
+        }
+
+
+        long get( int index )
+        {
+            return values[index];
+        }
+
+
+        int size()
+        {
+            return size;
+        }
+
+
+        /**
+         * Removes the values lower than a minimum
+         */
+        void removeBelow( long min )
+        {
+            int from = Arrays.binarySearch( values, 0, size, min );
+
+            if ( from < 0 )
+            {
+                from = -from - 1;
+            }
+
+            if ( from > 0 )
+            {
+                System.arraycopy( values, from, values, 0, size - from );
+                size -= from;
+            }
+        }
+
+
+        long[] toArray()
+        {
+            return Arrays.copyOf( values, size );
+        }
+    }
+
+
+    /**
+     * A segment file, with the position and the time of each of its revisions
+     */
+    private static final class Segment
+    {
+        private final long firstRevision;
+        private final File file;
+        private FileChannel channel;
+        private long size;
+        private final RevisionList offsets = new RevisionList();
+        private final RevisionList times = new RevisionList();
+
+
+        private Segment( long firstRevision, File file )
+        {
+            this.firstRevision = firstRevision;
+            this.file = file;
+        }
+
+
+        private long getLastRevision()
+        {
+            return firstRevision + offsets.size() - 1;
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void init( DirectoryService service ) throws LdapException
+    {
+        schemaManager = service.getSchemaManager();
+        timeProvider = service.getTimeProvider();
+        directory = new File( service.getInstanceLayout().getLogDirectory(), CHANGELOG_DIR );
+
+        if ( !directory.exists() && !directory.mkdirs() )
+        {
+            throw new LdapOtherException( I18n.err( I18n.ERR_112_COULD_NOT_CREATE_DIRECTORY, directory ) );
+        }
+
+        lock.writeLock().lock();
+
+        try
+        {
+            loadTags();
+            loadSegments();
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+
+        LOG.info( "Opened the changelog store {} : revisions {} to {}", directory, firstRevision, currentRevision );
+    }
+
+
+    /**
+     * Reads the segments and rebuilds the indexes
+     */
+    private void loadSegments() throws IOException
+    {
+        File[] files = directory.listFiles();
+        TreeMap<Long, File> segmentFiles = new TreeMap<>();
+
+        if ( files != null )
+        {
+            for ( File file : files )
+            {
+                String name = file.getName();
+
+                if ( name.startsWith( SEGMENT_PREFIX ) && name.endsWith( SEGMENT_SUFFIX ) )
+                {
+                    String revision = name.substring( SEGMENT_PREFIX.length(),
+                        name.length() - SEGMENT_SUFFIX.length() );
+                    segmentFiles.put( Long.valueOf( revision ), file );
+                }
+            }
+        }
+
+        segments.clear();
+        current = null;
+        lastTime = 0L;
+        dnIndex.clear();
+        principalIndex.clear();
+        changeTypeIndex.clear();
+
+        for ( Map.Entry<Long, File> segmentFile : segmentFiles.entrySet() )
+        {
+            Segment segment = new Segment( segmentFile.getKey(), segmentFile.getValue() );
+            boolean isLast = segmentFile.getKey().equals( segmentFiles.lastKey() );
+
+            if ( ( current != null ) && ( current.getLastRevision() + 1 != segment.firstRevision ) )
+            {
+                throw new IOException( "The changelog segment " + segment.file + " does not follow the revision "
+                    + current.getLastRevision() );
+            }
+
+            loadSegment( segment, isLast );
+            segments.put( segment.firstRevision, segment );
+            current = segment;
+        }
+
+        if ( current == null )
+        {
+            current = createSegment( 1L );
+        }
+
+        firstRevision = segments.firstKey();
+        currentRevision = current.getLastRevision();
+    }
+
+
+    /**
+     * Reads the records headers of a segment, and indexes its revisions
+     */
+    private void loadSegment( Segment segment, boolean isLast ) throws IOException
+    {
+        segment.channel = FileChannel.open( segment.file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE );
+        long fileSize = segment.channel.size();
+        long position = 0L;
+        ByteBuffer header = ByteBuffer.allocate( RECORD_HEADER_SIZE );
+        CRC32 crc = new CRC32();
+
+        while ( position + RECORD_HEADER_SIZE <= fileSize )
+        {
+            header.clear();
+            readFully( segment.channel, header, position );
+            header.flip();
+            int length = header.getInt();
+            int checksum = header.getInt();
+
+            if ( ( length <= 0 ) || ( position + RECORD_HEADER_SIZE + length > fileSize ) )
+            {
+                break;
+            }
+
+            ByteBuffer body = ByteBuffer.allocate( length );
+            readFully( segment.channel, body, position + RECORD_HEADER_SIZE );
+            crc.reset();
+            crc.update( body.array(), 0, length );
+
+            if ( ( int ) crc.getValue() != checksum )
+            {
+                break;
+            }
+
+            DataInputStream in = new DataInputStream( new ByteArrayInputStream( body.array() ) );
+            long revision = in.readLong();
+
+            if ( revision != segment.firstRevision + segment.offsets.size() )
+            {
+                throw new IOException( "Unexpected revision " + revision + " in the changelog segment "
+                    + segment.file );
+            }
+
+            index( segment, position, revision, in.readLong(), in.readInt(), in.readUTF(), in.readUTF() );
+            position += RECORD_HEADER_SIZE + length;
+        }
+
+        if ( position < fileSize )
+        {
+            if ( !isLast )
+            {
+                throw new IOException( "The changelog segment " + segment.file + " is corrupted at " + position );
+            }
+
+            // The last record has not been completely written
+            LOG.warn( "Dropping the {} bytes of an incomplete record at the end of {}", fileSize - position,
+                segment.file );
+            segment.channel.truncate( position );
+        }
+
+        segment.size = position;
+    }
+
+
+    private static void readFully( FileChannel channel, ByteBuffer buffer, long position ) throws IOException
+    {
+        long pos = position;
+
+        while ( buffer.hasRemaining() )
+        {
+            int read = channel.read( buffer, pos );
+
+            if ( read < 0 )
+            {
+                throw new IOException( "Unexpected end of the changelog segment" );
+            }
+
+            pos += read;
+        }
+    }
+
+
+    private Segment createSegment( long revision ) throws IOException
+    {
+        String name = String.format( Locale.ROOT, "%s%020d%s", SEGMENT_PREFIX, revision, SEGMENT_SUFFIX );
+        File file = new File( directory, name );
+        Segment segment = new Segment( revision, file );
+        segment.channel = FileChannel.open( file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE );
+        segment.channel.truncate( 0L );
+        segments.put( revision, segment );
+
+        return segment;
+    }
+
+
+    /**
+     * Adds a revision to the indexes. Must be called with the write lock held.
+     */
+    private void index( Segment segment, long offset, long revision, long time, int changeType, String dnKey,
+        String principalKey )
+    {
+        // The times must be sorted to be searched : a clock going backward doesn't change the order
+        lastTime = Math.max( time, lastTime );
+
+        segment.offsets.add( offset );
+        segment.times.add( lastTime );
+
+        addToIndex( dnIndex, dnKey, revision );
+        addToIndex( principalIndex, principalKey, revision );
+        addToIndex( changeTypeIndex, changeType, revision );
+    }
+
+
+    private static <K> void addToIndex( Map<K, RevisionList> index, K key, long revision )
+    {
+        RevisionList revisions = index.get( key );
+
+        if ( revisions == null )
+        {
+            revisions = new RevisionList();
+            index.put( key, revisions );
+        }
+
+        revisions.add( revision );
+    }
+
+
+    /**
+     * Computes the key of a Dn in the Dn index : its normalized RDNs, from the root
+     */
+    String getDnKey( Dn dn )
+    {
+        if ( Dn.isNullOrEmpty( dn ) )
+        {
+            return "";
+        }
+
+        Dn normalized = dn;
+
+        if ( !dn.isSchemaAware() && ( schemaManager != null ) )
+        {
+            try
+            {
+                normalized = new Dn( schemaManager, dn );
+            }
+            catch ( LdapInvalidDnException lide )
+            {
+                LOG.debug( "Cannot normalize the Dn {} : {}", dn, lide.getMessage() );
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        List<Rdn> rdns = normalized.getRdns();
+
+        for ( int i = rdns.size() - 1; i >= 0; i-- )
+        {
+            sb.append( rdns.get( i ).getNormName() );
+
+            if ( i > 0 )
+            {
+                sb.append( DN_SEPARATOR );
+            }
+        }
+
+        return sb.toString();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ChangeLogEvent log( LdapPrincipal principal, LdifEntry forward, LdifEntry reverse )
+    {
+        List<LdifEntry> reverses = new ArrayList<>( 1 );
+        reverses.add( reverse );
+
+        return log( principal, forward, reverses );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ChangeLogEvent log( LdapPrincipal principal, LdifEntry forward, List<LdifEntry> reverses )
+    {
+        lock.writeLock().lock();
+
+        try
+        {
+            long revision = currentRevision + 1;
+            ChangeLogEvent event = new ChangeLogEvent( revision, DateUtils.getGeneralizedTime( timeProvider ),
+                principal, forward, reverses );
+
+            long time = DateUtils.getDate( event.getZuluTime() ).getTime();
+            int changeType = forward.getChangeType().getChangeType();
+            String dnKey = getDnKey( forward.getDn() );
+            String principalKey = ( principal == null ) ? "" : getDnKey( principal.getDn() );
+
+            append( event, time, changeType, dnKey, principalKey );
+
+            return event;
+        }
+        catch ( IOException ioe )
+        {
+            throw new UncheckedIOException( ioe );
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Writes an event at the end of the current segment. Must be called with the write lock held.
+     */
+    private void append( ChangeLogEvent event, long time, int changeType, String dnKey, String principalKey )
+        throws IOException
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        // Keep room for the record header
+        baos.write( new byte[RECORD_HEADER_SIZE] );
+
+        DataOutputStream header = new DataOutputStream( baos );
+        header.writeLong( event.getRevision() );
+        header.writeLong( time );
+        header.writeInt( changeType );
+        header.writeUTF( dnKey );
+        header.writeUTF( principalKey );
+        header.flush();
+
+        try ( ObjectOutputStream out = new ObjectOutputStream( baos ) )
+        {
+            ChangeLogEventSerializer.serialize( event, out );
+        }
+
+        byte[] record = baos.toByteArray();
+        int length = record.length - RECORD_HEADER_SIZE;
+        CRC32 crc = new CRC32();
+        crc.update( record, RECORD_HEADER_SIZE, length );
+
+        ByteBuffer buffer = ByteBuffer.wrap( record );
+        buffer.putInt( 0, length );
+        buffer.putInt( 4, ( int ) crc.getValue() );
+
+        long offset = current.size;
+
+        while ( buffer.hasRemaining() )
+        {
+            current.channel.write( buffer, offset + buffer.position() );
+        }
+
+        if ( syncOnWrite )
+        {
+            current.channel.force( false );
+        }
+
+        current.size += record.length;
+        index( current, offset, event.getRevision(), time, changeType, dnKey, principalKey );
+        currentRevision = event.getRevision();
+
+        if ( current.size >= segmentSize )
+        {
+            // Start a new segment, and delete the old ones if needed
+            current.channel.force( false );
+            current = createSegment( currentRevision + 1 );
+            trim();
+        }
+    }
+
+
+    /**
+     * Reads the event of a revision from the disk.
+     *
+     * @param revision The revision
+     * @return The event, or null if the revision has been trimmed or does not exist
+     * @throws LdapException If the event cannot be read
+     */
+    ChangeLogEvent read( long revision ) throws LdapException
+    {
+        Segment segment;
+        long offset;
+
+        lock.readLock().lock();
+
+        try
+        {
+            if ( ( revision < firstRevision ) || ( revision > currentRevision ) )
+            {
+                return null;
+            }
+
+            segment = segments.floorEntry( revision ).getValue();
+            offset = segment.offsets.get( ( int ) ( revision - segment.firstRevision ) );
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+
+        try
+        {
+            ByteBuffer header = ByteBuffer.allocate( RECORD_HEADER_SIZE );
+            readFully( segment.channel, header, offset );
+            header.flip();
+            ByteBuffer body = ByteBuffer.allocate( header.getInt() );
+            readFully( segment.channel, body, offset + RECORD_HEADER_SIZE );
+
+            InputStream bais = new ByteArrayInputStream( body.array() );
+            DataInputStream in = new DataInputStream( bais );
+
+            // Skip the indexed fields
+            in.readLong();
+            in.readLong();
+            in.readInt();
+            in.readUTF();
+            in.readUTF();
+
+            try ( ObjectInputStream ois = new ObjectInputStream( bais ) )
+            {
+                ChangeLogEvent event = ChangeLogEventSerializer.deserialize( schemaManager, ois );
+                event.getCommitterPrincipal().setSchemaManager( schemaManager );
+
+                return event;
+            }
+        }
+        catch ( ClosedChannelException cce )
+        {
+            // The segment has been trimmed meanwhile
+            return null;
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+    }
+
+
+    /**
+     * Deletes the oldest segments, if the store holds more than {@link #getMaxRevisions()}
+     * revisions or events older than {@link #getMaxAge()}. The current segment is never
+     * deleted, so the store may hold more revisions than the configured limits.
+     *
+     * @return The number of deleted revisions
+     * @throws LdapException If a segment cannot be deleted
+     */
+    public long trim() throws LdapException
+    {
+        lock.writeLock().lock();
+
+        try
+        {
+            long minRevision = firstRevision;
+
+            if ( maxRevisions > 0L )
+            {
+                minRevision = Math.max( minRevision, currentRevision - maxRevisions + 1 );
+            }
+
+            if ( maxAge > 0L )
+            {
+                // The first revision more recent than the limit
+                minRevision = Math.max( minRevision, getRevision( timeProvider.currentIimeMillis() - maxAge ) + 1 );
+            }
+
+            long nbTrimmed = 0L;
+            Iterator<Segment> iterator = segments.values().iterator();
+
+            while ( iterator.hasNext() )
+            {
+                Segment segment = iterator.next();
+
+                if ( ( segment == current ) || ( segment.getLastRevision() >= minRevision ) )
+                {
+                    break;
+                }
+
+                iterator.remove();
+                nbTrimmed += segment.offsets.size();
+
+                try
+                {
+                    segment.channel.close();
+                    Files.delete( segment.file.toPath() );
+                }
+                catch ( IOException ioe )
+                {
+                    throw new LdapOtherException( ioe.getMessage(), ioe );
+                }
+            }
+
+            if ( nbTrimmed > 0L )
+            {
+                firstRevision = segments.firstKey();
+                purgeIndex( dnIndex );
+                purgeIndex( principalIndex );
+                purgeIndex( changeTypeIndex );
+
+                // The tags need the revisions following them to be reverted to
+                tags.headMap( firstRevision - 1 ).clear();
+
+                LOG.info( "Trimmed {} revisions from the changelog store, the oldest revision is now {}", nbTrimmed,
+                    firstRevision );
+            }
+
+            return nbTrimmed;
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    private <K> void purgeIndex( Map<K, RevisionList> index )
+    {
+        Iterator<RevisionList> iterator = index.values().iterator();
+
+        while ( iterator.hasNext() )
+        {
+            RevisionList revisions = iterator.next();
+            revisions.removeBelow( firstRevision );
+
+            if ( revisions.size() == 0 )
+            {
+                iterator.remove();
+            }
+        }
+    }
+
+
+    /**
+     * Gets the revision in effect at a time : the last revision logged at or before this time.
+     *
+     * @param time The time, in milliseconds
+     * @return The revision, or the revision preceding the oldest revision of the store if
+     * all the revisions are more recent
+     */
+    long getRevision( long time )
+    {
+        lock.readLock().lock();
+
+        try
+        {
+            long revision = firstRevision - 1;
+
+            for ( Segment segment : segments.values() )
+            {
+                int size = segment.times.size();
+
+                if ( size == 0 )
+                {
+                    continue;
+                }
+
+                if ( segment.times.get( 0 ) > time )
+                {
+                    break;
+                }
+
+                // Find the last time lower or equal to the searched time
+                int low = 0;
+                int high = size - 1;
+
+                while ( low < high )
+                {
+                    int middle = ( low + high + 1 ) >>> 1;
+
+                    if ( segment.times.get( middle ) <= time )
+                    {
+                        low = middle;
+                    }
+                    else
+                    {
+                        high = middle - 1;
+                    }
+                }
+
+                revision = segment.firstRevision + low;
+            }
+
+            return revision;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Gets the revisions of the changes on an entry
+     *
+     * @param dn The entry Dn
+     * @return The sorted revisions
+     */
+    long[] getRevisions( Dn dn )
+    {
+        lock.readLock().lock();
+
+        try
+        {
+            return toArray( dnIndex.get( getDnKey( dn ) ) );
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Gets the revisions of the changes on the children or on the descendants of an entry
+     *
+     * @param base The base Dn
+     * @param oneLevel <tt>true</tt> for the children only
+     * @return The sorted revisions
+     */
+    long[] getRevisions( Dn base, boolean oneLevel )
+    {
+        String baseKey = getDnKey( base );
+        SortedMap<String, RevisionList> subtree;
+        int prefixLength;
+
+        lock.readLock().lock();
+
+        try
+        {
+            if ( baseKey.isEmpty() )
+            {
+                subtree = dnIndex;
+                prefixLength = 0;
+            }
+            else
+            {
+                subtree = dnIndex.subMap( baseKey + DN_SEPARATOR, baseKey + ( char ) ( DN_SEPARATOR + 1 ) );
+                prefixLength = baseKey.length() + 1;
+            }
+
+            RevisionList revisions = new RevisionList();
+
+            for ( Map.Entry<String, RevisionList> entry : subtree.entrySet() )
+            {
+                String key = entry.getKey();
+
+                if ( key.isEmpty() || ( oneLevel && ( key.indexOf( DN_SEPARATOR, prefixLength ) >= 0 ) ) )
+                {
+                    continue;
+                }
+
+                RevisionList entryRevisions = entry.getValue();
+
+                for ( int i = 0; i < entryRevisions.size(); i++ )
+                {
+                    revisions.add( entryRevisions.get( i ) );
+                }
+            }
+
+            // Each revision changes a single entry : the lists are disjoint
+            long[] result = revisions.toArray();
+            Arrays.sort( result );
+
+            return result;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Gets the revisions of the changes done by a principal
+     *
+     * @param principalDn The principal Dn
+     * @return The sorted revisions
+     */
+    long[] getPrincipalRevisions( Dn principalDn )
+    {
+        lock.readLock().lock();
+
+        try
+        {
+            return toArray( principalIndex.get( getDnKey( principalDn ) ) );
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Gets the revisions of the changes of a type
+     *
+     * @param changeType The change type ordinal
+     * @return The sorted revisions
+     */
+    long[] getChangeTypeRevisions( int changeType )
+    {
+        lock.readLock().lock();
+
+        try
+        {
+            return toArray( changeTypeIndex.get( changeType ) );
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    private static long[] toArray( RevisionList revisions )
+    {
+        if ( revisions == null )
+        {
+            return new long[0];
+        }
+
+        return revisions.toArray();
+    }
+
+
+    /**
+     * Merges two sorted arrays of revisions
+     */
+    static long[] union( long[] first, long[] second )
+    {
+        long[] result = new long[first.length + second.length];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+
+        while ( ( i < first.length ) || ( j < second.length ) )
+        {
+            long value;
+
+            if ( j == second.length || ( ( i < first.length ) && ( first[i] <= second[j] ) ) )
+            {
+                value = first[i++];
+
+                if ( ( j < second.length ) && ( second[j] == value ) )
+                {
+                    j++;
+                }
+            }
+            else
+            {
+                value = second[j++];
+            }
+
+            result[k++] = value;
+        }
+
+        return Arrays.copyOf( result, k );
+    }
+
+
+    /**
+     * Intersects two sorted arrays of revisions
+     */
+    static long[] intersection( long[] first, long[] second )
+    {
+        long[] result = new long[Math.min( first.length, second.length )];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+
+        while ( ( i < first.length ) && ( j < second.length ) )
+        {
+            if ( first[i] < second[j] )
+            {
+                i++;
+            }
+            else if ( first[i] > second[j] )
+            {
+                j++;
+            }
+            else
+            {
+                result[k++] = first[i];
+                i++;
+                j++;
+            }
+        }
+
+        return Arrays.copyOf( result, k );
+    }
+
+
+    /**
+     * @return The SchemaManager used to read the events
+     */
+    SchemaManager getSchemaManager()
+    {
+        return schemaManager;
+    }
+
+
+    /**
+     * @return The oldest revision present in the store
+     */
+    public long getFirstRevision()
+    {
+        lock.readLock().lock();
+
+        try
+        {
+            return firstRevision;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCurrentRevision()
+    {
+        lock.readLock().lock();
+
+        try
+        {
+            return currentRevision;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ChangeLogEvent lookup( long revision )
+    {
+        if ( revision < 0 )
+        {
+            throw new IllegalArgumentException( I18n.err( I18n.ERR_239 ) );
+        }
+
+        if ( revision > getCurrentRevision() )
+        {
+            throw new IllegalArgumentException( I18n.err( I18n.ERR_240 ) );
+        }
+
+        try
+        {
+            return read( revision );
+        }
+        catch ( LdapException le )
+        {
+            throw new IllegalStateException( le.getMessage(), le );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cursor<ChangeLogEvent> find()
+    {
+        return new RevisionCursor( this, getFirstRevision(), getCurrentRevision(), RevisionOrder.AscendingOrder );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cursor<ChangeLogEvent> findBefore( long revision )
+    {
+        return new RevisionCursor( this, getFirstRevision(), Math.min( revision, getCurrentRevision() ),
+            RevisionOrder.AscendingOrder );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cursor<ChangeLogEvent> findAfter( long revision )
+    {
+        return new RevisionCursor( this, Math.max( revision + 1, getFirstRevision() ), getCurrentRevision(),
+            RevisionOrder.AscendingOrder );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cursor<ChangeLogEvent> find( long startRevision, long endRevision )
+    {
+        return new RevisionCursor( this, Math.max( startRevision, getFirstRevision() ),
+            Math.min( endRevision, getCurrentRevision() ), RevisionOrder.AscendingOrder );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ChangeLogSearchEngine getChangeLogSearchEngine()
+    {
+        return searchEngine;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void sync() throws LdapException
+    {
+        lock.writeLock().lock();
+
+        try
+        {
+            current.channel.force( false );
+            saveTags();
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Flushes the current segment and closes the segment files
+     */
+    @Override
+    public void destroy() throws LdapException
+    {
+        sync();
+
+        lock.writeLock().lock();
+
+        try
+        {
+            for ( Segment segment : segments.values() )
+            {
+                segment.channel.close();
+            }
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    private void loadTags() throws IOException
+    {
+        File tagFile = new File( directory, TAG_FILE );
+        tags.clear();
+        latest = null;
+
+        if ( tagFile.exists() )
+        {
+            Properties props = new Properties();
+
+            try ( InputStream in = Files.newInputStream( tagFile.toPath() ) )
+            {
+                props.load( in );
+            }
+
+            for ( String key : props.stringPropertyNames() )
+            {
+                long revision = Long.parseLong( key );
+                String description = props.getProperty( key );
+                tags.put( revision, new Tag( revision, "null".equals( description ) ? null : description ) );
+            }
+
+            if ( !tags.isEmpty() )
+            {
+                latest = tags.lastEntry().getValue();
+            }
+        }
+    }
+
+
+    /**
+     * Writes the tags in a temporary file, and replaces the tags file with it
+     */
+    private void saveTags() throws IOException
+    {
+        Properties props = new Properties();
+
+        for ( Tag tag : tags.values() )
+        {
+            props.setProperty( String.valueOf( tag.getRevision() ),
+                tag.getDescription() == null ? "null" : tag.getDescription() );
+        }
+
+        File tagFile = new File( directory, TAG_FILE );
+        File tmpFile = new File( directory, TAG_FILE + ".tmp" );
+
+        try ( OutputStream out = Files.newOutputStream( tmpFile.toPath() ) )
+        {
+            props.store( out, null );
+        }
+
+        Files.move( tmpFile.toPath(), tagFile.toPath(), StandardCopyOption.REPLACE_EXISTING );
+    }
+
+
+    /**
+     * Adds a tag, and saves the tags. Must be called with the write lock held.
+     */
+    private Tag addTag( long revision, String description )
+    {
+        latest = new Tag( revision, description );
+        tags.put( revision, latest );
+
+        try
+        {
+            saveTags();
+        }
+        catch ( IOException ioe )
+        {
+            throw new UncheckedIOException( ioe );
+        }
+
+        return latest;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Tag tag( long revision )
+    {
+        return tag( revision, null );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Tag tag()
+    {
+        return tag( ( String ) null );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Tag tag( String description )
+    {
+        lock.writeLock().lock();
+
+        try
+        {
+            if ( ( latest != null ) && ( latest.getRevision() == currentRevision ) )
+            {
+                return latest;
+            }
+
+            return addTag( currentRevision, description );
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Tag tag( long revision, String description )
+    {
+        lock.writeLock().lock();
+
+        try
+        {
+            if ( tags.containsKey( revision ) )
+            {
+                return tags.get( revision );
+            }
+
+            return addTag( revision, description );
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Tag getLatest()
+    {
+        lock.readLock().lock();
+
+        try
+        {
+            return latest;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Tag removeTag( long revision )
+    {
+        lock.writeLock().lock();
+
+        try
+        {
+            Tag removed = tags.remove( revision );
+
+            if ( removed != null )
+            {
+                saveTags();
+            }
+
+            return removed;
+        }
+        catch ( IOException ioe )
+        {
+            throw new UncheckedIOException( ioe );
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Parses a generalized time
+     *
+     * @param generalizedTime The generalized time
+     * @return The time in milliseconds
+     * @throws ParseException If the time is not a valid generalized time
+     */
+    static long parseTime( String generalizedTime ) throws ParseException
+    {
+        try
+        {
+            return DateUtils.getDate( generalizedTime ).getTime();
+        }
+        catch ( RuntimeException re )
+        {
+            throw new ParseException( generalizedTime, 0 );
+        }
+    }
+
+
+    /**
+     * @return The maximum size of a segment file, in bytes
+     */
+    public long getSegmentSize()
+    {
+        return segmentSize;
+    }
+
+
+    /**
+     * @param segmentSize The maximum size of a segment file, in bytes
+     */
+    public void setSegmentSize( long segmentSize )
+    {
+        this.segmentSize = segmentSize;
+    }
+
+
+    /**
+     * @return The maximum number of revisions kept in the store, 0 if there is no limit
+     */
+    public long getMaxRevisions()
+    {
+        return maxRevisions;
+    }
+
+
+    /**
+     * @param maxRevisions The maximum number of revisions kept in the store, 0 for no limit
+     */
+    public void setMaxRevisions( long maxRevisions )
+    {
+        this.maxRevisions = maxRevisions;
+    }
+
+
+    /**
+     * @return The maximum age of the events kept in the store, in milliseconds, 0 if
+     * there is no limit
+     */
+    public long getMaxAge()
+    {
+        return maxAge;
+    }
+
+
+    /**
+     * @param maxAge The maximum age of the events kept in the store, in milliseconds,
+     * 0 for no limit
+     */
+    public void setMaxAge( long maxAge )
+    {
+        this.maxAge = maxAge;
+    }
+
+
+    /**
+     * @return <tt>true</tt> if the segment is flushed to the disk after each event
+     */
+    public boolean isSyncOnWrite()
+    {
+        return syncOnWrite;
+    }
+
+
+    /**
+     * @param syncOnWrite <tt>true</tt> to flush the segment to the disk after each event.
+     * Otherwise, the events are flushed when the store is synchronized.
+     */
+    public void setSyncOnWrite( boolean syncOnWrite )
+    {
+        this.syncOnWrite = syncOnWrite;
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        lock.readLock().lock();
+
+        try
+        {
+            return "FileChangeLogStore " + directory + " : revisions " + firstRevision + " to " + currentRevision
+                + " in " + segments.size() + " segments, latest tag : " + latest;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+}
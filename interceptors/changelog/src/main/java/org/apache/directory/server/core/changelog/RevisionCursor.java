@@ -0,0 +1,354 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.directory.server.core.changelog;
+
+
+import org.apache.directory.api.ldap.model.cursor.AbstractCursor;
+import org.apache.directory.api.ldap.model.cursor.CursorException;
+import org.apache.directory.api.ldap.model.cursor.InvalidCursorPositionException;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.server.core.api.changelog.ChangeLogEvent;
+import org.apache.directory.server.core.api.changelog.RevisionOrder;
+
+
+/**
+ * A Cursor over a set of revisions of a {@link FileChangeLogStore}. The events are
+ * read from the store when the Cursor reaches them, and the revisions trimmed from
+ * the store in the meantime are skipped.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class RevisionCursor extends AbstractCursor<ChangeLogEvent>
+{
+    /** The store the events are read from */
+    private final FileChangeLogStore store;
+
+    /** The sorted revisions, or null if the cursor is over a range of revisions */
+    private final long[] revisions;
+
+    /** The first revision of the range */
+    private final long startRevision;
+
+    /** The number of revisions */
+    private final int size;
+
+    /** Tells if the revisions are returned in ascending order */
+    private final boolean ascending;
+
+    /** The index of the current revision, or of the next one when no event is available */
+    private int position = 0;
+
+    /** The current event */
+    private ChangeLogEvent event;
+
+
+    /**
+     * Creates a Cursor over a range of revisions
+     *
+     * @param store The store the events are read from
+     * @param startRevision The first revision, inclusive
+     * @param endRevision The last revision, inclusive
+     * @param order The order in which the events are returned
+     */
+    public RevisionCursor( FileChangeLogStore store, long startRevision, long endRevision, RevisionOrder order )
+    {
+        this.store = store;
+        this.revisions = null;
+        this.startRevision = startRevision;
+        this.size = ( int ) Math.max( 0L, Math.min( Integer.MAX_VALUE, endRevision - startRevision + 1 ) );
+        this.ascending = order.isAscending();
+    }
+
+
+    /**
+     * Creates a Cursor over a set of revisions
+     *
+     * @param store The store the events are read from
+     * @param revisions The revisions, sorted in ascending order
+     * @param order The order in which the events are returned
+     */
+    public RevisionCursor( FileChangeLogStore store, long[] revisions, RevisionOrder order )
+    {
+        this.store = store;
+        this.revisions = revisions;
+        this.startRevision = 0L;
+        this.size = revisions.length;
+        this.ascending = order.isAscending();
+    }
+
+
+    /**
+     * @return The revision at a position, in the Cursor order
+     */
+    private long getRevision( int pos )
+    {
+        int index = ascending ? pos : size - 1 - pos;
+
+        if ( revisions == null )
+        {
+            return startRevision + index;
+        }
+
+        return revisions[index];
+    }
+
+
+    /**
+     * Moves to the next or to the previous event still present in the store
+     */
+    private boolean move( int step ) throws CursorException
+    {
+        checkNotClosed();
+
+        int candidate;
+
+        if ( event != null )
+        {
+            candidate = position + step;
+        }
+        else
+        {
+            // Between two revisions : position is the index of the next one
+            candidate = ( step > 0 ) ? position : position - 1;
+        }
+
+        event = null;
+
+        while ( ( candidate >= 0 ) && ( candidate < size ) )
+        {
+            try
+            {
+                event = store.read( getRevision( candidate ) );
+            }
+            catch ( LdapException le )
+            {
+                throw new CursorException( le.getMessage(), le );
+            }
+
+            if ( event != null )
+            {
+                position = candidate;
+
+                return true;
+            }
+
+            candidate += step;
+        }
+
+        position = ( step > 0 ) ? size : 0;
+
+        return false;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean available()
+    {
+        return event != null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void before( ChangeLogEvent element ) throws LdapException, CursorException
+    {
+        checkNotClosed();
+        position = findPosition( element.getRevision(), true );
+        event = null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void after( ChangeLogEvent element ) throws LdapException, CursorException
+    {
+        checkNotClosed();
+        position = findPosition( element.getRevision(), false );
+        event = null;
+    }
+
+
+    /**
+     * Finds the position of the first revision which is not before the given revision
+     * in the Cursor order. If the revision is present, returns its position if
+     * <tt>inclusive</tt> is true, the next position otherwise.
+     */
+    private int findPosition( long revision, boolean inclusive )
+    {
+        int low = 0;
+        int high = size;
+
+        while ( low < high )
+        {
+            int middle = ( low + high ) >>> 1;
+            long current = getRevision( middle );
+            boolean isBefore = ascending ? current < revision : current > revision;
+
+            if ( isBefore || ( !inclusive && ( current == revision ) ) )
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void beforeFirst() throws LdapException, CursorException
+    {
+        checkNotClosed();
+        position = 0;
+        event = null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterLast() throws LdapException, CursorException
+    {
+        checkNotClosed();
+        position = size;
+        event = null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean first() throws LdapException, CursorException
+    {
+        beforeFirst();
+
+        return next();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean last() throws LdapException, CursorException
+    {
+        afterLast();
+
+        return previous();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean previous() throws LdapException, CursorException
+    {
+        return move( -1 );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean next() throws LdapException, CursorException
+    {
+        return move( 1 );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ChangeLogEvent get() throws CursorException
+    {
+        checkNotClosed();
+
+        if ( event != null )
+        {
+            return event;
+        }
+
+        throw new InvalidCursorPositionException();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isBeforeFirst()
+    {
+        return ( event == null ) && ( position == 0 );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isAfterLast()
+    {
+        return ( event == null ) && ( position == size );
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString( String tabs )
+    {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append( tabs ).append( "RevisionCursor (" );
+        sb.append( available() ? "available)" : "absent)" );
+        sb.append( " : " ).append( size ).append( " revisions, " );
+        sb.append( ascending ? "ascending" : "descending" );
+
+        return sb.toString();
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return toString( "" );
+    }
+}
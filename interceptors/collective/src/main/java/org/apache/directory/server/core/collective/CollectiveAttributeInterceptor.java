@@ -20,6 +20,7 @@
 package org.apache.directory.server.core.collective;
 
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -322,6 +323,45 @@ public class CollectiveAttributeInterceptor extends BaseInterceptor
     }
 
 
+    /**
+     * Get the collective attributes held by a collectiveAttributeSubentry. They are
+     * read from the SubentryCache, which is maintained by the SubentryInterceptor. If
+     * the subentry is not cached, we fall back to a lookup of the subentry.
+     */
+    private List<Attribute> getCollectiveAttributes( FilteringOperationContext opContext, CoreSession session,
+        Dn subentryDn ) throws LdapException
+    {
+        List<Attribute> collectiveAttributes = directoryService.getSubentryCache().getCollectiveAttributes(
+            subentryDn );
+
+        if ( collectiveAttributes != null )
+        {
+            return collectiveAttributes;
+        }
+
+        LOG.debug( "The subentry {} is not cached, looking it up", subentryDn );
+
+        LookupOperationContext lookupContext = new LookupOperationContext( session, subentryDn,
+            SchemaConstants.ALL_ATTRIBUTES_ARRAY );
+        lookupContext.setPartition( opContext.getPartition() );
+        lookupContext.setTransaction( opContext.getTransaction() );
+
+        Entry subentry = directoryService.getPartitionNexus().lookup( lookupContext );
+        collectiveAttributes = new ArrayList<>();
+
+        for ( Attribute attribute : subentry.getAttributes() )
+        {
+            // Skip the attributes which are not collective
+            if ( attribute.getAttributeType().isCollective() )
+            {
+                collectiveAttributes.add( attribute );
+            }
+        }
+
+        return collectiveAttributes;
+    }
+
+
     /**
      * Adds the set of collective attributes requested in the returning attribute list
      * and contained in subentries referenced by the entry. Excludes collective
@@ -401,32 +441,9 @@ public class CollectiveAttributeInterceptor extends BaseInterceptor
 
             LOG.debug( "Applying subentries {}", subentryDn.getName() );
 
-            /*
-             * TODO - Instead of hitting disk here can't we leverage the
-             * SubentryService to get us cached sub-entries so we're not
-             * wasting time with a lookup here? It is ridiculous to waste
-             * time looking up this sub-entry.
-             */
-
-            LookupOperationContext lookupContext = new LookupOperationContext( session, subentryDn,
-                SchemaConstants.ALL_ATTRIBUTES_ARRAY );
-            lookupContext.setPartition( opContext.getPartition() );
-            lookupContext.setTransaction( opContext.getTransaction() );
-
-            Entry subentry = directoryService.getPartitionNexus().lookup( lookupContext );
-
-            //LOG.debug( "Fetched the subentry : {}", subentry.getDn().getName() );
-
-            for ( Attribute attribute : subentry.getAttributes() )
+            for ( Attribute subentryColAttr : getCollectiveAttributes( opContext, session, subentryDn ) )
             {
-                AttributeType attributeType = attribute.getAttributeType();
-
-                // Skip the attributes which are not collective
-                if ( !attributeType.isCollective() )
-                {
-                    //LOG.debug( "The {} subentry attribute is not collective", attributeType.getName() );
-                    continue;
-                }
+                AttributeType attributeType = subentryColAttr.getAttributeType();
 
                 /*
                  * Skip the addition of this collective attribute if it is excluded
@@ -450,7 +467,6 @@ public class CollectiveAttributeInterceptor extends BaseInterceptor
                     continue;
                 }
 
-                Attribute subentryColAttr = subentry.get( attributeType );
                 Attribute entryColAttr = entry.get( attributeType );
 
                 /*
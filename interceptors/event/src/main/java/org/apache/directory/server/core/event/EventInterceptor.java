@@ -121,122 +121,32 @@ public class EventInterceptor extends BaseInterceptor
     /**
      * Call the listener passing it the context.
      */
-    private void fire( final OperationContext opContext, EventType type, final DirectoryListener listener )
+    private void notify( OperationContext opContext, EventType type, DirectoryListener listener )
     {
         switch ( type )
         {
             case ADD:
-                if ( listener.isSynchronous() )
-                {
-                    listener.entryAdded( ( AddOperationContext ) opContext );
-                }
-                else
-                {
-                    executor.execute( new Runnable()
-                    {
-                        @Override
-                        public void run()
-                        {
-                            listener.entryAdded( ( AddOperationContext ) opContext );
-                        }
-                    } );
-                }
-
+                listener.entryAdded( ( AddOperationContext ) opContext );
                 break;
 
             case DELETE:
-                if ( listener.isSynchronous() )
-                {
-                    listener.entryDeleted( ( DeleteOperationContext ) opContext );
-                }
-                else
-                {
-                    executor.execute( new Runnable()
-                    {
-                        @Override
-                        public void run()
-                        {
-                            listener.entryDeleted( ( DeleteOperationContext ) opContext );
-                        }
-                    } );
-                }
-
+                listener.entryDeleted( ( DeleteOperationContext ) opContext );
                 break;
 
             case MODIFY:
-                if ( listener.isSynchronous() )
-                {
-                    listener.entryModified( ( ModifyOperationContext ) opContext );
-                }
-                else
-                {
-                    executor.execute( new Runnable()
-                    {
-                        @Override
-                        public void run()
-                        {
-                            listener.entryModified( ( ModifyOperationContext ) opContext );
-                        }
-                    } );
-                }
-
+                listener.entryModified( ( ModifyOperationContext ) opContext );
                 break;
 
             case MOVE:
-                if ( listener.isSynchronous() )
-                {
-                    listener.entryMoved( ( MoveOperationContext ) opContext );
-                }
-                else
-                {
-                    executor.execute( new Runnable()
-                    {
-                        @Override
-                        public void run()
-                        {
-                            listener.entryMoved( ( MoveOperationContext ) opContext );
-                        }
-                    } );
-                }
-
+                listener.entryMoved( ( MoveOperationContext ) opContext );
                 break;
 
             case RENAME:
-                if ( listener.isSynchronous() )
-                {
-                    listener.entryRenamed( ( RenameOperationContext ) opContext );
-                }
-                else
-                {
-                    executor.execute( new Runnable()
-                    {
-                        @Override
-                        public void run()
-                        {
-                            listener.entryRenamed( ( RenameOperationContext ) opContext );
-                        }
-                    } );
-                }
-
+                listener.entryRenamed( ( RenameOperationContext ) opContext );
                 break;
 
             case MOVE_AND_RENAME:
-                if ( listener.isSynchronous() )
-                {
-                    listener.entryMovedAndRenamed( ( MoveAndRenameOperationContext ) opContext );
-                }
-                else
-                {
-                    executor.execute( new Runnable()
-                    {
-                        @Override
-                        public void run()
-                        {
-                            listener.entryMovedAndRenamed( ( MoveAndRenameOperationContext ) opContext );
-                        }
-                    } );
-                }
-
+                listener.entryMovedAndRenamed( ( MoveAndRenameOperationContext ) opContext );
                 break;
 
             default:
@@ -245,6 +155,93 @@ public class EventInterceptor extends BaseInterceptor
     }
 
 
+    /**
+     * Tells if a registration is interested in an event type
+     */
+    private boolean isNotified( EventType type, int eventMask )
+    {
+        switch ( type )
+        {
+            case ADD:
+                return EventType.isAdd( eventMask );
+
+            case DELETE:
+                return EventType.isDelete( eventMask );
+
+            case MODIFY:
+                return EventType.isModify( eventMask );
+
+            case MOVE:
+                return EventType.isMove( eventMask );
+
+            case RENAME:
+                return EventType.isRename( eventMask );
+
+            case MOVE_AND_RENAME:
+                return EventType.isMoveAndRename( eventMask );
+
+            default:
+                throw new IllegalArgumentException( "Unexpected event type " + type );
+        }
+    }
+
+
+    /**
+     * Call the selected listeners passing them the context. The synchronous listeners are
+     * called immediately. The asynchronous ones are all called by a single task, in their
+     * registration order : a change selected by many listeners (typically many persistent
+     * searches) uses one thread of the pool and one slot of its queue, not one per listener.
+     */
+    private void fire( final OperationContext opContext, final EventType type, List<RegistrationEntry> selecting )
+    {
+        final List<DirectoryListener> asynchronousListeners = new ArrayList<>();
+
+        for ( RegistrationEntry registration : selecting )
+        {
+            if ( !isNotified( type, registration.getCriteria().getEventMask() ) )
+            {
+                continue;
+            }
+
+            DirectoryListener listener = registration.getListener();
+
+            if ( listener.isSynchronous() )
+            {
+                notify( opContext, type, listener );
+            }
+            else
+            {
+                asynchronousListeners.add( listener );
+            }
+        }
+
+        if ( asynchronousListeners.isEmpty() )
+        {
+            return;
+        }
+
+        executor.execute( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                for ( DirectoryListener listener : asynchronousListeners )
+                {
+                    try
+                    {
+                        notify( opContext, type, listener );
+                    }
+                    catch ( RuntimeException re )
+                    {
+                        // Don't let a failing listener prevent the others from being notified
+                        LOG.warn( "The listener {} has failed to process a {} event", listener, type, re );
+                    }
+                }
+            }
+        } );
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -260,13 +257,7 @@ public class EventInterceptor extends BaseInterceptor
             return;
         }
 
-        for ( final RegistrationEntry registration : selecting )
-        {
-            if ( EventType.isAdd( registration.getCriteria().getEventMask() ) )
-            {
-                fire( addContext, EventType.ADD, registration.getListener() );
-            }
-        }
+        fire( addContext, EventType.ADD, selecting );
     }
 
 
@@ -285,13 +276,7 @@ public class EventInterceptor extends BaseInterceptor
             return;
         }
 
-        for ( final RegistrationEntry registration : selecting )
-        {
-            if ( EventType.isDelete( registration.getCriteria().getEventMask() ) )
-            {
-                fire( deleteContext, EventType.DELETE, registration.getListener() );
-            }
-        }
+        fire( deleteContext, EventType.DELETE, selecting );
     }
 
 
@@ -326,13 +311,7 @@ public class EventInterceptor extends BaseInterceptor
         Entry alteredEntry = directoryService.getPartitionNexus().lookup( lookupContext );
         modifyContext.setAlteredEntry( alteredEntry );
 
-        for ( final RegistrationEntry registration : selecting )
-        {
-            if ( EventType.isModify( registration.getCriteria().getEventMask() ) )
-            {
-                fire( modifyContext, EventType.MODIFY, registration.getListener() );
-            }
-        }
+        fire( modifyContext, EventType.MODIFY, selecting );
     }
 
 
@@ -353,13 +332,7 @@ public class EventInterceptor extends BaseInterceptor
             return;
         }
 
-        for ( final RegistrationEntry registration : selecting )
-        {
-            if ( EventType.isMove( registration.getCriteria().getEventMask() ) )
-            {
-                fire( moveContext, EventType.MOVE, registration.getListener() );
-            }
-        }
+        fire( moveContext, EventType.MOVE, selecting );
     }
 
 
@@ -379,13 +352,7 @@ public class EventInterceptor extends BaseInterceptor
             return;
         }
 
-        for ( final RegistrationEntry registration : selecting )
-        {
-            if ( EventType.isMoveAndRename( registration.getCriteria().getEventMask() ) )
-            {
-                fire( moveAndRenameContext, EventType.MOVE_AND_RENAME, registration.getListener() );
-            }
-        }
+        fire( moveAndRenameContext, EventType.MOVE_AND_RENAME, selecting );
     }
 
 
@@ -416,13 +383,7 @@ public class EventInterceptor extends BaseInterceptor
         Entry alteredEntry = directoryService.getPartitionNexus().lookup( lookupContext );
         renameContext.setModifiedEntry( alteredEntry );
 
-        for ( final RegistrationEntry registration : selecting )
-        {
-            if ( EventType.isRename( registration.getCriteria().getEventMask() ) )
-            {
-                fire( renameContext, EventType.RENAME, registration.getListener() );
-            }
-        }
+        fire( renameContext, EventType.RENAME, selecting );
     }
 
 
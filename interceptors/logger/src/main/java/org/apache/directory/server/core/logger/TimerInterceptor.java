@@ -20,13 +20,13 @@
 package org.apache.directory.server.core.logger;
 
 
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.EnumMap;
+import java.util.Map;
 
 import org.apache.directory.api.ldap.model.constants.Loggers;
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.exception.LdapException;
-import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.OperationEnum;
 import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
 import org.apache.directory.server.core.api.interceptor.BaseInterceptor;
 import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
@@ -42,6 +42,7 @@ import org.apache.directory.server.core.api.interceptor.context.MoveOperationCon
 import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.UnbindOperationContext;
+import org.apache.directory.server.core.api.metrics.LatencyHistogram;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -49,10 +50,11 @@ import org.slf4j.LoggerFactory;
 /**
  * An interceptor used to log times to process each operation.
  * 
- * The way it works is that it gathers the time to process an operation
- * into a global counter, which is logged every 1000 operations (when
- * using the OPERATION_STATS logger). It's also possible to get the time for
- * each single operation if activating the OPERATION_TIME logger.
+ * The time spent in this interceptor and in the following ones is logged
+ * every 1000 operations (when using the OPERATION_STATS logger). It's also possible to
+ * get the time for each single operation if activating the OPERATION_TIME logger.
+ * The time spent in each interceptor on its own is published in the DirectoryService
+ * metrics when the monitor is enabled, without this interceptor.
  * 
  * Thos two loggers must be set to DEBUG.
  * 
@@ -70,57 +72,8 @@ public class TimerInterceptor extends BaseInterceptor
     private static final boolean IS_DEBUG_STATS = OPERATION_STATS.isDebugEnabled();
     private static final boolean IS_DEBUG_TIME = OPERATION_TIME.isDebugEnabled();
 
-    /** Stats for the add operation */
-    private static AtomicLong totalAdd = new AtomicLong( 0 );
-    private static AtomicInteger nbAddCalls = new AtomicInteger( 0 );
-
-    /** Stats for the bind operation */
-    private static AtomicLong totalBind = new AtomicLong( 0 );
-    private static AtomicInteger nbBindCalls = new AtomicInteger( 0 );
-
-    /** Stats for the compare operation */
-    private static AtomicLong totalCompare = new AtomicLong( 0 );
-    private static AtomicInteger nbCompareCalls = new AtomicInteger( 0 );
-
-    /** Stats for the delete operation */
-    private static AtomicLong totalDelete = new AtomicLong( 0 );
-    private static AtomicInteger nbDeleteCalls = new AtomicInteger( 0 );
-
-    /** Stats for the GetRootDse operation */
-    private static AtomicLong totalGetRootDse = new AtomicLong( 0 );
-    private static AtomicInteger nbGetRootDseCalls = new AtomicInteger( 0 );
-
-    /** Stats for the HasEntry operation */
-    private static AtomicLong totalHasEntry = new AtomicLong( 0 );
-    private static AtomicInteger nbHasEntryCalls = new AtomicInteger( 0 );
-
-    /** Stats for the lookup operation */
-    private static AtomicLong totalLookup = new AtomicLong( 0 );
-    private static AtomicInteger nbLookupCalls = new AtomicInteger( 0 );
-
-    /** Stats for the modify operation */
-    private static AtomicLong totalModify = new AtomicLong( 0 );
-    private static AtomicInteger nbModifyCalls = new AtomicInteger( 0 );
-
-    /** Stats for the move operation */
-    private static AtomicLong totalMove = new AtomicLong( 0 );
-    private static AtomicInteger nbMoveCalls = new AtomicInteger( 0 );
-
-    /** Stats for the moveAndRename operation */
-    private static AtomicLong totalMoveAndRename = new AtomicLong( 0 );
-    private static AtomicInteger nbMoveAndRenameCalls = new AtomicInteger( 0 );
-
-    /** Stats for the rename operation */
-    private static AtomicLong totalRename = new AtomicLong( 0 );
-    private static AtomicInteger nbRenameCalls = new AtomicInteger( 0 );
-
-    /** Stats for the search operation */
-    private static AtomicLong totalSearch = new AtomicLong( 0 );
-    private static AtomicInteger nbSearchCalls = new AtomicInteger( 0 );
-
-    /** Stats for the unbind operation */
-    private static AtomicLong totalUnbind = new AtomicLong( 0 );
-    private static AtomicInteger nbUnbindCalls = new AtomicInteger( 0 );
+    /** The time spent in each operation */
+    private final Map<OperationEnum, LatencyHistogram> latencies = new EnumMap<>( OperationEnum.class );
 
 
     /**
@@ -132,44 +85,37 @@ public class TimerInterceptor extends BaseInterceptor
     public TimerInterceptor( String name )
     {
         super( name );
-    }
-
 
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public void init( DirectoryService directoryService ) throws LdapException
-    {
+        for ( OperationEnum operation : OperationEnum.getOperations() )
+        {
+            latencies.put( operation, new LatencyHistogram() );
+        }
     }
 
 
     /**
-     * {@inheritDoc}
+     * Records the time spent in an operation, and logs it
      */
-    @Override
-    public void add( AddOperationContext addContext ) throws LdapException
+    private void record( OperationEnum operation, long delta )
     {
-        long t0 = System.nanoTime();
-        next( addContext );
-        long delta = System.nanoTime() - t0;
+        LatencyHistogram histogram = latencies.get( operation );
+        histogram.record( delta );
 
         if ( IS_DEBUG_STATS )
         {
-            nbAddCalls.incrementAndGet();
-            totalAdd.getAndAdd( delta );
+            long nbCalls = histogram.getCount();
 
-            if ( nbAddCalls.get() % 1000 == 0 )
+            if ( nbCalls % 1000 == 0 )
             {
-                long average = totalAdd.get() / ( nbAddCalls.get() * 1000 );
-                OPERATION_STATS.debug( "{} : Average add = {} microseconds, nb adds = {}", getName(), average,
-                    nbAddCalls.get() );
+                long average = histogram.snapshot().getMean() / 1000;
+                OPERATION_STATS.debug( "{} : Average {} = {} microseconds, nb {}s = {}", getName(),
+                    operation.getMethodName(), average, operation.getMethodName(), nbCalls );
             }
         }
 
         if ( IS_DEBUG_TIME )
         {
-            OPERATION_TIME.debug( "{} : Delta add = {}", getName(), delta );
+            OPERATION_TIME.debug( "{} : Delta {} = {}", getName(), operation.getMethodName(), delta );
         }
     }
 
@@ -178,29 +124,23 @@ public class TimerInterceptor extends BaseInterceptor
      * {@inheritDoc}
      */
     @Override
-    public void bind( BindOperationContext bindContext ) throws LdapException
+    public void add( AddOperationContext addContext ) throws LdapException
     {
         long t0 = System.nanoTime();
-        next( bindContext );
-        long delta = System.nanoTime() - t0;
-
-        if ( IS_DEBUG_STATS )
-        {
-            nbBindCalls.incrementAndGet();
-            totalBind.getAndAdd( delta );
+        next( addContext );
+        record( OperationEnum.ADD, System.nanoTime() - t0 );
+    }
 
-            if ( nbBindCalls.get() % 1000 == 0 )
-            {
-                long average = totalBind.get() / ( nbBindCalls.get() * 1000 );
-                OPERATION_STATS.debug( "{} : Average bind = {} microseconds, nb binds = {}", getName(), average,
-                    nbBindCalls.get() );
-            }
-        }
 
-        if ( IS_DEBUG_TIME )
-        {
-            OPERATION_TIME.debug( "{} : Delta bind = {}", getName(), delta );
-        }
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void bind( BindOperationContext bindContext ) throws LdapException
+    {
+        long t0 = System.nanoTime();
+        next( bindContext );
+        record( OperationEnum.BIND, System.nanoTime() - t0 );
     }
 
 
@@ -212,25 +152,7 @@ public class TimerInterceptor extends BaseInterceptor
     {
         long t0 = System.nanoTime();
         boolean compare = next( compareContext );
-        long delta = System.nanoTime() - t0;
-
-        if ( IS_DEBUG_STATS )
-        {
-            nbCompareCalls.incrementAndGet();
-            totalCompare.getAndAdd( delta );
-
-            if ( nbCompareCalls.get() % 1000 == 0 )
-            {
-                long average = totalCompare.get() / ( nbCompareCalls.get() * 1000 );
-                OPERATION_STATS.debug( "{} : Average compare = {} microseconds, nb compares = {}", getName(), average,
-                    nbCompareCalls.get() );
-            }
-        }
-
-        if ( IS_DEBUG_TIME )
-        {
-            OPERATION_TIME.debug( "{} : Delta compare = {}", getName(), delta );
-        }
+        record( OperationEnum.COMPARE, System.nanoTime() - t0 );
 
         return compare;
     }
@@ -244,25 +166,7 @@ public class TimerInterceptor extends BaseInterceptor
     {
         long t0 = System.nanoTime();
         next( deleteContext );
-        long delta = System.nanoTime() - t0;
-
-        if ( IS_DEBUG_STATS )
-        {
-            nbDeleteCalls.incrementAndGet();
-            totalDelete.getAndAdd( delta );
-
-            if ( nbDeleteCalls.get() % 1000 == 0 )
-            {
-                long average = totalDelete.get() / ( nbDeleteCalls.get() * 1000 );
-                OPERATION_STATS.debug( "{} : Average delete = {} microseconds, nb deletes = {}", getName(), average,
-                    nbDeleteCalls.get() );
-            }
-        }
-
-        if ( IS_DEBUG_TIME )
-        {
-            OPERATION_TIME.debug( "{} : Delta delete = {}", getName(), delta );
-        }
+        record( OperationEnum.DELETE, System.nanoTime() - t0 );
     }
 
 
@@ -274,25 +178,7 @@ public class TimerInterceptor extends BaseInterceptor
     {
         long t0 = System.nanoTime();
         Entry rootDse = next( getRootDseContext );
-        long delta = System.nanoTime() - t0;
-
-        if ( IS_DEBUG_STATS )
-        {
-            nbGetRootDseCalls.incrementAndGet();
-            totalGetRootDse.getAndAdd( delta );
-
-            if ( nbGetRootDseCalls.get() % 1000 == 0 )
-            {
-                long average = totalGetRootDse.get() / ( nbGetRootDseCalls.get() * 1000 );
-                OPERATION_STATS.debug( "{} : Average getRootDSE = {} microseconds, nb getRootDSEs = {}", getName(),
-                    average, nbGetRootDseCalls.get() );
-            }
-        }
-
-        if ( IS_DEBUG_TIME )
-        {
-            OPERATION_TIME.debug( "{} : Delta getRootDSE = {}", getName(), delta );
-        }
+        record( OperationEnum.GET_ROOT_DSE, System.nanoTime() - t0 );
 
         return rootDse;
     }
@@ -306,25 +192,7 @@ public class TimerInterceptor extends BaseInterceptor
     {
         long t0 = System.nanoTime();
         boolean hasEntry = next( hasEntryContext );
-        long delta = System.nanoTime() - t0;
-
-        if ( IS_DEBUG_STATS )
-        {
-            nbHasEntryCalls.incrementAndGet();
-            totalHasEntry.getAndAdd( delta );
-
-            if ( nbHasEntryCalls.get() % 1000 == 0 )
-            {
-                long average = totalHasEntry.get() / ( nbHasEntryCalls.get() * 1000 );
-                OPERATION_STATS.debug( "{} : Average hasEntry = {} microseconds, nb hasEntrys = {}", getName(), average,
-                    nbHasEntryCalls.get() );
-            }
-        }
-
-        if ( IS_DEBUG_TIME )
-        {
-            OPERATION_TIME.debug( "{} : Delta hasEntry = {}", getName(), delta );
-        }
+        record( OperationEnum.HAS_ENTRY, System.nanoTime() - t0 );
 
         return hasEntry;
     }
@@ -338,25 +206,7 @@ public class TimerInterceptor extends BaseInterceptor
     {
         long t0 = System.nanoTime();
         Entry entry = next( lookupContext );
-        long delta = System.nanoTime() - t0;
-
-        if ( IS_DEBUG_STATS )
-        {
-            nbLookupCalls.incrementAndGet();
-            totalLookup.getAndAdd( delta );
-
-            if ( nbLookupCalls.get() % 1000 == 0 )
-            {
-                long average = totalLookup.get() / ( nbLookupCalls.get() * 1000 );
-                OPERATION_STATS.debug( "{} : Average lookup = {} microseconds, nb lookups = {}", getName(), average,
-                    nbLookupCalls.get() );
-            }
-        }
-
-        if ( IS_DEBUG_TIME )
-        {
-            OPERATION_TIME.debug( "{} : Delta lookup = {}", getName(), delta );
-        }
+        record( OperationEnum.LOOKUP, System.nanoTime() - t0 );
 
         return entry;
     }
@@ -370,25 +220,7 @@ public class TimerInterceptor extends BaseInterceptor
     {
         long t0 = System.nanoTime();
         next( modifyContext );
-        long delta = System.nanoTime() - t0;
-
-        if ( IS_DEBUG_STATS )
-        {
-            nbModifyCalls.incrementAndGet();
-            totalModify.getAndAdd( delta );
-
-            if ( nbModifyCalls.get() % 1000 == 0 )
-            {
-                long average = totalModify.get() / ( nbModifyCalls.get() * 1000 );
-                OPERATION_STATS.debug( "{} : Average modify = {} microseconds, nb modifys = {}", getName(), average,
-                    nbModifyCalls.get() );
-            }
-        }
-
-        if ( IS_DEBUG_TIME )
-        {
-            OPERATION_TIME.debug( "{} : Delta modify = {}", getName(), delta );
-        }
+        record( OperationEnum.MODIFY, System.nanoTime() - t0 );
     }
 
 
@@ -400,25 +232,7 @@ public class TimerInterceptor extends BaseInterceptor
     {
         long t0 = System.nanoTime();
         next( moveContext );
-        long delta = System.nanoTime() - t0;
-
-        if ( IS_DEBUG_STATS )
-        {
-            nbMoveCalls.incrementAndGet();
-            totalMove.getAndAdd( delta );
-
-            if ( nbMoveCalls.get() % 1000 == 0 )
-            {
-                long average = totalMove.get() / ( nbMoveCalls.get() * 1000 );
-                OPERATION_STATS.debug( "{} : Average move = {} microseconds, nb moves = {}", getName(), average,
-                    nbMoveCalls.get() );
-            }
-        }
-
-        if ( IS_DEBUG_TIME )
-        {
-            OPERATION_TIME.debug( "{} : Delta move = {}", getName(), delta );
-        }
+        record( OperationEnum.MOVE, System.nanoTime() - t0 );
     }
 
 
@@ -430,26 +244,7 @@ public class TimerInterceptor extends BaseInterceptor
     {
         long t0 = System.nanoTime();
         next( moveAndRenameContext );
-        long delta = System.nanoTime() - t0;
-
-        if ( IS_DEBUG_STATS )
-        {
-            nbMoveAndRenameCalls.incrementAndGet();
-            totalMoveAndRename.getAndAdd( delta );
-
-            if ( nbMoveAndRenameCalls.get() % 1000 == 0 )
-            {
-                long average = totalMoveAndRename.get() / ( nbMoveAndRenameCalls.get() * 1000 );
-                OPERATION_STATS.debug(
-                    "{} : Average moveAndRename = {} microseconds, nb moveAndRenames = {}", getName(), average,
-                    nbMoveAndRenameCalls.get() );
-            }
-        }
-
-        if ( IS_DEBUG_TIME )
-        {
-            OPERATION_TIME.debug( "{} : Delta moveAndRename = {}", getName(), delta );
-        }
+        record( OperationEnum.MOVE_AND_RENAME, System.nanoTime() - t0 );
     }
 
 
@@ -461,25 +256,7 @@ public class TimerInterceptor extends BaseInterceptor
     {
         long t0 = System.nanoTime();
         next( renameContext );
-        long delta = System.nanoTime() - t0;
-
-        if ( IS_DEBUG_STATS )
-        {
-            nbRenameCalls.incrementAndGet();
-            totalRename.getAndAdd( delta );
-
-            if ( nbRenameCalls.get() % 1000 == 0 )
-            {
-                long average = totalRename.get() / ( nbRenameCalls.get() * 1000 );
-                OPERATION_STATS.debug( "{} : Average rename = {} microseconds, nb renames = {}", getName(), average,
-                    nbRenameCalls.get() );
-            }
-        }
-
-        if ( IS_DEBUG_TIME )
-        {
-            OPERATION_TIME.debug( "{} : Delta rename = {}", getName(), delta );
-        }
+        record( OperationEnum.RENAME, System.nanoTime() - t0 );
     }
 
 
@@ -491,24 +268,7 @@ public class TimerInterceptor extends BaseInterceptor
     {
         long t0 = System.nanoTime();
         EntryFilteringCursor cursor = next( searchContext );
-        long delta = System.nanoTime() - t0;
-
-        if ( IS_DEBUG_STATS )
-        {
-            nbSearchCalls.incrementAndGet();
-            totalSearch.getAndAdd( delta );
-
-            if ( nbSearchCalls.get() % 1000 == 0 )
-            {
-                long average = totalSearch.get() / ( nbSearchCalls.get() * 1000 );
-                OPERATION_STATS.debug( "{} : Average search = {} microseconds, nb searches = {}", getName(), average, nbSearchCalls.get() );
-            }
-        }
-
-        if ( IS_DEBUG_TIME )
-        {
-            OPERATION_TIME.debug( "{} : Delta search = {}", getName(), delta );
-        }
+        record( OperationEnum.SEARCH, System.nanoTime() - t0 );
 
         return cursor;
     }
@@ -522,24 +282,6 @@ public class TimerInterceptor extends BaseInterceptor
     {
         long t0 = System.nanoTime();
         next( unbindContext );
-        long delta = System.nanoTime() - t0;
-
-        if ( IS_DEBUG_STATS )
-        {
-            nbUnbindCalls.incrementAndGet();
-            totalUnbind.getAndAdd( delta );
-
-            if ( nbUnbindCalls.get() % 1000 == 0 )
-            {
-                long average = totalUnbind.get() / ( nbUnbindCalls.get() * 1000 );
-                OPERATION_STATS.debug( "{} : Average unbind = {} microseconds, nb unbinds = {}", getName(), average,
-                    nbUnbindCalls.get() );
-            }
-        }
-
-        if ( IS_DEBUG_TIME )
-        {
-            OPERATION_TIME.debug( "{} : Delta unbind = {}", getName(), delta );
-        }
+        record( OperationEnum.UNBIND, System.nanoTime() - t0 );
     }
 }
@@ -22,14 +22,14 @@ package org.apache.directory.server.core.number;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultAttribute;
 import org.apache.directory.api.ldap.model.entry.DefaultEntry;
 import org.apache.directory.api.ldap.model.entry.DefaultModification;
 import org.apache.directory.api.ldap.model.entry.Entry;
@@ -52,7 +52,14 @@ import org.slf4j.LoggerFactory;
 
 
 /**
- * An interceptor to increment any attribute with integer matching rule
+ * An interceptor to increment any attribute with integer matching rule.
+ * <p>
+ * The values are handed out from ranges reserved in the holder entry : the holder
+ * stores the highest reserved value for each attribute, and a new range of
+ * {@link #getReservationSize()} values is reserved with a single modification when
+ * the current one is exhausted. The values are then allocated in memory, without any
+ * lock. If the server crashes, the values which were reserved but not used are lost,
+ * but a value is never handed out twice.
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -64,10 +71,45 @@ public class NumberIncrementingInterceptor extends BaseInterceptor
     /** the DN of the holder entry */
     private Dn numberHolder;
     
-    /** a map of integer attribute and it's present value */
-    private Map<String, AtomicInteger> incMap = new HashMap<>();
-    
-    
+    /** The default number of values reserved at once */
+    public static final int DEFAULT_RESERVATION_SIZE = 1000;
+
+    /** a map of integer attribute and the range of values reserved for it */
+    private Map<String, ReservedRange> incMap = new ConcurrentHashMap<>();
+
+    /** The number of values reserved at once */
+    private int reservationSize = DEFAULT_RESERVATION_SIZE;
+
+    /** The partition containing the holder entry */
+    private Partition systemPartition;
+
+
+    /**
+     * @return The number of values reserved at once
+     */
+    public int getReservationSize()
+    {
+        return reservationSize;
+    }
+
+
+    /**
+     * Sets the number of values reserved at once in the holder entry. Using 1
+     * makes the holder entry being updated each time a value is handed out.
+     *
+     * @param reservationSize The number of values reserved at once
+     */
+    public void setReservationSize( int reservationSize )
+    {
+        if ( reservationSize < 1 )
+        {
+            throw new IllegalArgumentException( "The reservation size must be at least 1" );
+        }
+
+        this.reservationSize = reservationSize;
+    }
+
+
     @Override
     public void init( DirectoryService directoryService ) throws LdapException
     {
@@ -75,7 +117,7 @@ public class NumberIncrementingInterceptor extends BaseInterceptor
         
         numberHolder = new Dn( schemaManager, "ou=autoIncDataHolder,ou=system" );
         
-        Partition systemPartition = directoryService.getSystemPartition();
+        systemPartition = directoryService.getSystemPartition();
         
         LookupOperationContext lookupContext = new LookupOperationContext( directoryService.getAdminSession(), numberHolder, SchemaConstants.ALL_ATTRIBUTES_ARRAY ); 
         lookupContext.setPartition( systemPartition );
@@ -157,8 +199,10 @@ public class NumberIncrementingInterceptor extends BaseInterceptor
                 
                 if ( ( mr != null ) && SchemaConstants.INTEGER_MATCH_MR_OID.equals( mr.getOid() ) )
                 {
+                    // The stored value is the highest reserved one : the values which have been
+                    // reserved but not handed out before the server was stopped are skipped
                     int t = Integer.parseInt( at.getString() );
-                    incMap.put( at.getId(), new AtomicInteger( t ) );
+                    incMap.put( at.getId(), new ReservedRange( t ) );
                 }
             }
         }
@@ -182,55 +226,117 @@ public class NumberIncrementingInterceptor extends BaseInterceptor
 
         Entry entry = addContext.getEntry();
 
-        List<Attribute> lst = new ArrayList<>();
-        
-        for ( String oid : incMap.keySet() )
+        for ( Map.Entry<String, ReservedRange> incEntry : incMap.entrySet() )
         {
-            Attribute at = entry.get( oid );
-            if ( at != null )
+            Attribute at = entry.get( incEntry.getKey() );
+
+            if ( at == null )
             {
-                lst.add( at );
+                continue;
+            }
+
+            ReservedRange range = incEntry.getValue();
+            int value = range.next();
+
+            while ( value == ReservedRange.EXHAUSTED )
+            {
+                reserve( incEntry.getKey(), range );
+                value = range.next();
             }
-        }
-        
-        if ( lst.isEmpty() )
-        {
-            next( addContext );
-            return;
-        }
 
-        for ( Attribute at : lst )
-        {
-            int stored = incMap.get( at.getId() ).get();
             at.clear();
-            at.add( String.valueOf( stored + 1 ) );
+            at.add( String.valueOf( value ) );
         }
         
         // Ok, we are golden.
         next( addContext );
+    }
 
-        ModifyOperationContext bindModCtx = new ModifyOperationContext( directoryService.getAdminSession() );
-        bindModCtx.setDn( numberHolder );
-        bindModCtx.setPushToEvtInterceptor( true );
-
-        List<Modification> mods = new ArrayList<>();
 
-        for ( Attribute at : lst )
+    /**
+     * Reserve a new range of values for an attribute, storing the new highest reserved value
+     * in the holder entry. The reservation is committed before any value of the new range is
+     * handed out.
+     */
+    private void reserve( String id, ReservedRange range ) throws LdapException
+    {
+        synchronized ( range )
         {
-            AtomicInteger ai = incMap.get( at.getId() );
-            ai.set( ai.get() + 1 );
-            
+            // Another thread may already have reserved a new range
+            if ( !range.isExhausted() )
+            {
+                return;
+            }
+
+            int currentHigh = range.getHigh();
+
+            if ( currentHigh == Integer.MAX_VALUE )
+            {
+                throw new LdapOtherException( "All the values of " + id + " have been handed out" );
+            }
+
+            // Don't go past the highest integer value
+            int high = currentHigh + Math.min( reservationSize, Integer.MAX_VALUE - currentHigh );
+
+            ModifyOperationContext modifyContext = new ModifyOperationContext( directoryService.getAdminSession() );
+            modifyContext.setDn( numberHolder );
+            modifyContext.setPushToEvtInterceptor( true );
+            modifyContext.setPartition( systemPartition );
+
+            List<Modification> mods = new ArrayList<>();
             Modification mod = new DefaultModification();
             mod.setOperation( ModificationOperation.REPLACE_ATTRIBUTE );
-            mod.setAttribute( at );
-            
+            mod.setAttribute( new DefaultAttribute( id, schemaManager.lookupAttributeTypeRegistry( id ),
+                String.valueOf( high ) ) );
             mods.add( mod );
+            modifyContext.setModItems( mods );
+
+            PartitionTxn partitionTxn = null;
+
+            try
+            {
+                partitionTxn = systemPartition.beginWriteTransaction();
+                modifyContext.setTransaction( partitionTxn );
+
+                directoryService.getPartitionNexus().modify( modifyContext );
+                partitionTxn.commit();
+            }
+            catch ( LdapException le )
+            {
+                if ( partitionTxn != null )
+                {
+                    try
+                    {
+                        partitionTxn.abort();
+                    }
+                    catch ( IOException ioe )
+                    {
+                        throw new LdapOtherException( ioe.getMessage(), ioe );
+                    }
+                }
+
+                throw le;
+            }
+            catch ( IOException ioe )
+            {
+                if ( partitionTxn != null )
+                {
+                    try
+                    {
+                        partitionTxn.abort();
+                    }
+                    catch ( IOException ioe2 )
+                    {
+                        throw new LdapOtherException( ioe2.getMessage(), ioe2 );
+                    }
+                }
+
+                throw new LdapOtherException( ioe.getMessage(), ioe );
+            }
+
+            range.setHigh( high );
+
+            LOG.debug( "Reserved the {} values up to {} in {}", id, high, numberHolder );
         }
-        
-        bindModCtx.setModItems( mods );
-        
-        directoryService.getPartitionNexus().modify( bindModCtx );
-        
-        LOG.debug( "Successfully updated numeric attribute in {}", numberHolder );
     }
 }
@@ -0,0 +1,105 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.number;
+
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * A range of values reserved in the holder entry for a numeric attribute. The values
+ * are handed out without any lock, until the highest reserved value is reached.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+class ReservedRange
+{
+    /** The value returned by {@link #next()} when the range has been exhausted */
+    static final int EXHAUSTED = Integer.MIN_VALUE;
+
+    /** The last value handed out */
+    private final AtomicInteger current;
+
+    /** The highest reserved value */
+    private volatile int high;
+
+
+    /**
+     * Creates a new, exhausted, instance of ReservedRange.
+     *
+     * @param high The highest value reserved so far
+     */
+    ReservedRange( int high )
+    {
+        current = new AtomicInteger( high );
+        this.high = high;
+    }
+
+
+    /**
+     * @return The next value in the range, or {@link #EXHAUSTED} if a new range has to be reserved
+     */
+    int next()
+    {
+        while ( true )
+        {
+            int value = current.get();
+
+            if ( value >= high )
+            {
+                return EXHAUSTED;
+            }
+
+            if ( current.compareAndSet( value, value + 1 ) )
+            {
+                return value + 1;
+            }
+        }
+    }
+
+
+    /**
+     * @return <tt>true</tt> if all the reserved values have been handed out
+     */
+    boolean isExhausted()
+    {
+        return current.get() >= high;
+    }
+
+
+    /**
+     * @return The highest reserved value
+     */
+    int getHigh()
+    {
+        return high;
+    }
+
+
+    /**
+     * Extends the range. It must only be called once the new highest value has been stored.
+     *
+     * @param high The new highest reserved value
+     */
+    void setHigh( int high )
+    {
+        this.high = high;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.schema;
+
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.directory.api.ldap.model.schema.ObjectClass;
+
+
+/**
+ * The result of the schema checks which only depend on the ObjectClasses of an entry :
+ * the complete list of ObjectClasses (including the superiors), the MUST and allowed
+ * attributes, and the conflicting STRUCTURAL ObjectClasses. It is computed once for
+ * each set of ObjectClass OIDs, and shared by all the entries using this set, whatever
+ * the names used for their ObjectClasses.
+ * <p>
+ * Instances are immutable.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+final class SchemaCheckTemplate
+{
+    /** The ObjectClasses with all their superiors, except 'top' */
+    private final List<ObjectClass> objectClasses;
+
+    /** The OIDs of the MUST attributes */
+    private final Set<String> must;
+
+    /** The OIDs of the allowed attributes (MUST and MAY) */
+    private final Set<String> allowed;
+
+    /** Tells if the extensibleObject ObjectClass is present */
+    private final boolean hasExtensibleObject;
+
+    /** The unrelated STRUCTURAL ObjectClasses. There must be exactly one */
+    private final Set<ObjectClass> structuralObjectClasses;
+
+
+    /**
+     * Creates a new SchemaCheckTemplate instance
+     *
+     * @param objectClasses The ObjectClasses, except 'top'
+     * @param must The OIDs of the MUST attributes
+     * @param allowed The OIDs of the allowed attributes
+     * @param hasExtensibleObject Tells if the extensibleObject ObjectClass is present
+     * @param structuralObjectClasses The unrelated STRUCTURAL ObjectClasses
+     */
+    SchemaCheckTemplate( List<ObjectClass> objectClasses, Set<String> must, Set<String> allowed,
+        boolean hasExtensibleObject, Set<ObjectClass> structuralObjectClasses )
+    {
+        this.objectClasses = Collections.unmodifiableList( objectClasses );
+        this.must = Collections.unmodifiableSet( must );
+        this.allowed = Collections.unmodifiableSet( allowed );
+        this.hasExtensibleObject = hasExtensibleObject;
+        this.structuralObjectClasses = Collections.unmodifiableSet( structuralObjectClasses );
+    }
+
+
+    /**
+     * @return The ObjectClasses, except 'top'
+     */
+    List<ObjectClass> getObjectClasses()
+    {
+        return objectClasses;
+    }
+
+
+    /**
+     * @return The OIDs of the MUST attributes
+     */
+    Set<String> getMust()
+    {
+        return must;
+    }
+
+
+    /**
+     * @return The OIDs of the allowed attributes (MUST and MAY)
+     */
+    Set<String> getAllowed()
+    {
+        return allowed;
+    }
+
+
+    /**
+     * @return <tt>true</tt> if the extensibleObject ObjectClass is present
+     */
+    boolean hasExtensibleObject()
+    {
+        return hasExtensibleObject;
+    }
+
+
+    /**
+     * @return The unrelated STRUCTURAL ObjectClasses
+     */
+    Set<ObjectClass> getStructuralObjectClasses()
+    {
+        return structuralObjectClasses;
+    }
+}
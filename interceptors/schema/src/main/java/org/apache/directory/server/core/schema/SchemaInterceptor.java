@@ -27,6 +27,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.codec.Charsets;
@@ -80,10 +81,12 @@ import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
 import org.apache.directory.server.core.api.interceptor.BaseInterceptor;
 import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.CompareOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.DeleteOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.LookupOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.ModDnAva;
 import org.apache.directory.server.core.api.interceptor.context.ModifyOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.MoveAndRenameOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.MoveOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
 import org.apache.directory.server.core.api.partition.PartitionNexus;
@@ -138,6 +141,19 @@ public class SchemaInterceptor extends BaseInterceptor
     /** A map used to store all the objectClasses allowed attributes (may + must) */
     private Map<String, List<AttributeType>> allowed;
 
+    /** The default maximum number of schema check templates */
+    public static final int DEFAULT_SCHEMA_CHECK_TEMPLATE_CACHE_SIZE = 1024;
+
+    /** The maximum number of schema check templates. 0 disables the templates */
+    private int schemaCheckTemplateCacheSize = DEFAULT_SCHEMA_CHECK_TEMPLATE_CACHE_SIZE;
+
+    /**
+     * The schema check templates, per sorted list of ObjectClass values. The map is replaced
+     * when the schema is modified, so that a template computed with the previous schema is
+     * stored in the discarded map.
+     */
+    private volatile Map<List<String>, SchemaCheckTemplate> schemaCheckTemplates = new ConcurrentHashMap<>();
+
 
     /**
      * Creates a new instance of a SchemaInterceptor.
@@ -348,6 +364,50 @@ public class SchemaInterceptor extends BaseInterceptor
             ObjectClass objectClass = objectClasses.next();
             computeSuperior( objectClass );
         }
+
+        schemaCheckTemplates = new ConcurrentHashMap<>();
+    }
+
+
+    /**
+     * Discard all the schema check templates. This must be called when the schema
+     * is modified without going through this interceptor.
+     */
+    public void clearSchemaCheckTemplates()
+    {
+        schemaCheckTemplates = new ConcurrentHashMap<>();
+    }
+
+
+    /**
+     * @return The number of schema check templates currently cached
+     */
+    public int getSchemaCheckTemplateCount()
+    {
+        return schemaCheckTemplates.size();
+    }
+
+
+    /**
+     * @return The maximum number of schema check templates
+     */
+    public int getSchemaCheckTemplateCacheSize()
+    {
+        return schemaCheckTemplateCacheSize;
+    }
+
+
+    /**
+     * Set the maximum number of schema check templates, one for each distinct set
+     * of ObjectClasses. 0 disables the templates : the checks are computed for
+     * every entry.
+     *
+     * @param schemaCheckTemplateCacheSize The maximum number of schema check templates
+     */
+    public void setSchemaCheckTemplateCacheSize( int schemaCheckTemplateCacheSize )
+    {
+        this.schemaCheckTemplateCacheSize = Math.max( 0, schemaCheckTemplateCacheSize );
+        schemaCheckTemplates = new ConcurrentHashMap<>();
     }
 
 
@@ -967,26 +1027,47 @@ public class SchemaInterceptor extends BaseInterceptor
             objectClassAttr = new DefaultAttribute( directoryService.getAtProvider().getObjectClass() );
         }
 
-        List<ObjectClass> ocs = new ArrayList<>();
+        // Get the checks depending only on the ObjectClasses
+        List<String> objectClassOids = getObjectClassOids( objectClassAttr );
+        SchemaCheckTemplate template = getSchemaCheckTemplate( objectClassAttr.getAttributeType(), objectClassOids );
 
-        alterObjectClasses( objectClassAttr );
+        // Add 'top' and the missing superiors to the ObjectClasses, keeping the given values as is
+        List<String> objectClassValues = new ArrayList<>( objectClassAttr.size() );
 
-        // Now we can process the MUST and MAY attributes
-        Set<String> must = getAllMust( objectClassAttr );
-        Set<String> allAllowed = getAllAllowed( objectClassAttr, must );
+        for ( Value value : objectClassAttr )
+        {
+            objectClassValues.add( value.getString() );
+        }
 
-        boolean hasExtensibleObject = getObjectClasses( objectClassAttr, ocs );
+        objectClassAttr.clear();
+        objectClassAttr.add( SchemaConstants.TOP_OC );
+
+        for ( String objectClass : objectClassValues )
+        {
+            if ( !objectClass.equalsIgnoreCase( SchemaConstants.TOP_OC ) )
+            {
+                objectClassAttr.add( objectClass );
+            }
+        }
+
+        for ( ObjectClass objectClass : template.getObjectClasses() )
+        {
+            if ( !objectClassOids.contains( objectClass.getOid() ) )
+            {
+                objectClassAttr.add( objectClass.getName() );
+            }
+        }
 
         // As we now have all the ObjectClasses updated, we have
         // to check that we don't have conflicting ObjectClasses
-        assertObjectClasses( dn, ocs );
+        assertObjectClasses( dn, template.getStructuralObjectClasses() );
 
-        assertRequiredAttributesPresent( dn, entry, must );
+        assertRequiredAttributesPresent( dn, entry, template.getMust() );
         assertNumberOfAttributeValuesValid( entry );
 
-        if ( !hasExtensibleObject )
+        if ( !template.hasExtensibleObject() )
         {
-            assertAllAttributesAllowed( dn, entry, allAllowed );
+            assertAllAttributesAllowed( dn, entry, template.getAllowed() );
         }
 
         // Check the attributes values and transform them to String if necessary
@@ -999,6 +1080,100 @@ public class SchemaInterceptor extends BaseInterceptor
     }
 
 
+    /**
+     * Get the sorted OIDs of the ObjectClasses of an entry, except 'top'. The same
+     * ObjectClass may be given by its OID or by any of its names, in any case.
+     */
+    private List<String> getObjectClassOids( Attribute objectClassAttr ) throws LdapException
+    {
+        Set<String> oids = new TreeSet<>();
+
+        for ( Value value : objectClassAttr )
+        {
+            String ocName = value.getString();
+
+            if ( !ocName.equalsIgnoreCase( SchemaConstants.TOP_OC ) )
+            {
+                oids.add( schemaManager.lookupObjectClassRegistry( Strings.toLowerCaseAscii( ocName ) ).getOid() );
+            }
+        }
+
+        return new ArrayList<>( oids );
+    }
+
+
+    /**
+     * Get the schema check template associated with a set of ObjectClasses, computing it
+     * if it's not already cached.
+     */
+    private SchemaCheckTemplate getSchemaCheckTemplate( AttributeType objectClassAT, List<String> objectClassOids )
+        throws LdapException
+    {
+        // Read the map before computing the template : if the schema is modified meanwhile,
+        // the template will be stored in a map which has been discarded
+        Map<List<String>, SchemaCheckTemplate> templates = schemaCheckTemplates;
+        SchemaCheckTemplate template = templates.get( objectClassOids );
+
+        if ( template == null )
+        {
+            template = createSchemaCheckTemplate( objectClassAT, objectClassOids );
+
+            if ( schemaCheckTemplateCacheSize > 0 )
+            {
+                if ( templates.size() >= schemaCheckTemplateCacheSize )
+                {
+                    // Too many combinations of ObjectClasses, start again
+                    templates.clear();
+                }
+
+                templates.put( objectClassOids, template );
+            }
+        }
+
+        return template;
+    }
+
+
+    /**
+     * Compute the superiors, the MUST and allowed attributes, and the STRUCTURAL
+     * ObjectClasses of a set of ObjectClasses
+     */
+    private SchemaCheckTemplate createSchemaCheckTemplate( AttributeType objectClassAT, List<String> objectClassOids )
+        throws LdapException
+    {
+        Attribute objectClassAttr = new DefaultAttribute( objectClassAT );
+
+        for ( String oid : objectClassOids )
+        {
+            objectClassAttr.add( schemaManager.lookupObjectClassRegistry( oid ).getName() );
+        }
+
+        alterObjectClasses( objectClassAttr );
+
+        // Now we can process the MUST and MAY attributes
+        Set<String> must = getAllMust( objectClassAttr );
+        Set<String> allAllowed = getAllAllowed( objectClassAttr, must );
+
+        List<ObjectClass> ocs = new ArrayList<>();
+        boolean hasExtensibleObject = getObjectClasses( objectClassAttr, ocs );
+
+        return new SchemaCheckTemplate( ocs, must, allAllowed, hasExtensibleObject,
+            getStructuralObjectClasses( ocs ) );
+    }
+
+
+    /**
+     * Discard the schema check templates if an entry of the schema partition has been modified
+     */
+    private void schemaModified( Dn dn )
+    {
+        if ( dn.isDescendantOf( schemaBaseDn ) || dn.equals( subschemaSubentryDn ) )
+        {
+            schemaCheckTemplates = new ConcurrentHashMap<>();
+        }
+    }
+
+
     private void checkOcSuperior( Entry entry ) throws LdapException
     {
         // handle the m-supObjectClass meta attribute
@@ -1126,6 +1301,7 @@ public class SchemaInterceptor extends BaseInterceptor
                 next( addContext );
             }
 
+            schemaModified( name );
         }
         else
         {
@@ -1134,6 +1310,18 @@ public class SchemaInterceptor extends BaseInterceptor
     }
 
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void delete( DeleteOperationContext deleteContext ) throws LdapException
+    {
+        next( deleteContext );
+
+        schemaModified( deleteContext.getDn() );
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -1222,12 +1410,16 @@ public class SchemaInterceptor extends BaseInterceptor
             schemaSubEntryManager.modifySchemaSubentry( modifyContext, modifyContext
                 .hasRequestControl( Cascade.OID ) );
 
+            schemaModified( dn );
+
             return;
         }
 
         checkModifyEntry( modifyContext );
 
         next( modifyContext );
+
+        schemaModified( dn );
     }
 
     
@@ -1393,6 +1585,18 @@ public class SchemaInterceptor extends BaseInterceptor
     }
     
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void move( MoveOperationContext moveContext ) throws LdapException
+    {
+        next( moveContext );
+
+        schemaModified( moveContext.getDn() );
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -1418,6 +1622,8 @@ public class SchemaInterceptor extends BaseInterceptor
         check( moveAndRenameContext.getNewDn(), moveAndRenameContext.getModifiedEntry() );
 
         next( moveAndRenameContext );
+
+        schemaModified( entryDn );
     }
 
 
@@ -1476,6 +1682,8 @@ public class SchemaInterceptor extends BaseInterceptor
         check( renameContext.getNewDn(), entry );
 
         next( renameContext );
+
+        schemaModified( oldDn );
     }
 
 
@@ -1639,15 +1847,28 @@ public class SchemaInterceptor extends BaseInterceptor
     /**
      * Checks to see the presence of all required attributes within an entry.
      */
-    private void assertRequiredAttributesPresent( Dn dn, Entry entry, Set<String> must ) throws LdapException
+    private void assertRequiredAttributesPresent( Dn dn, Entry entry, Set<String> allMust ) throws LdapException
     {
+        // The entry attributes are all distinct, we just have to count the MUST ones
+        int nbMust = 0;
+
         for ( Attribute attribute : entry )
         {
-            must.remove( attribute.getAttributeType().getOid() );
+            if ( allMust.contains( attribute.getAttributeType().getOid() ) )
+            {
+                nbMust++;
+            }
         }
 
-        if ( !must.isEmpty() )
+        if ( nbMust < allMust.size() )
         {
+            Set<String> must = new HashSet<>( allMust );
+
+            for ( Attribute attribute : entry )
+            {
+                must.remove( attribute.getAttributeType().getOid() );
+            }
+
             // include AT names for better error reporting
             StringBuilder sb = new StringBuilder();
             sb.append( '[' );
@@ -1672,12 +1893,10 @@ public class SchemaInterceptor extends BaseInterceptor
 
 
     /**
-     * Checck that OC does not conflict :
-     * - we can't have more than one STRUCTURAL OC unless they are in the same
-     * inheritance tree
-     * - we must have at least one STRUCTURAL OC
+     * Get the STRUCTURAL ObjectClasses which are not a superior of another STRUCTURAL
+     * ObjectClass. A valid entry must have exactly one.
      */
-    private void assertObjectClasses( Dn dn, List<ObjectClass> ocs ) throws LdapException
+    private Set<ObjectClass> getStructuralObjectClasses( List<ObjectClass> ocs )
     {
         Set<ObjectClass> structuralObjectClasses = new HashSet<>();
 
@@ -1700,17 +1919,6 @@ public class SchemaInterceptor extends BaseInterceptor
             }
         }
 
-        // --------------------------------------------------------------------
-        // Throw an error if no STRUCTURAL objectClass are found.
-        // --------------------------------------------------------------------
-
-        if ( structuralObjectClasses.isEmpty() )
-        {
-            String message = I18n.err( I18n.ERR_60, dn );
-            LOG.error( message );
-            throw new LdapSchemaViolationException( ResultCodeEnum.OBJECT_CLASS_VIOLATION, message );
-        }
-
         // --------------------------------------------------------------------
         // Put all structural object classes into new remaining container and
         // start removing any which are superiors of others in the set.  What
@@ -1735,10 +1943,32 @@ public class SchemaInterceptor extends BaseInterceptor
             }
         }
 
+        return remaining;
+    }
+
+
+    /**
+     * Checck that OC does not conflict :
+     * - we can't have more than one STRUCTURAL OC unless they are in the same
+     * inheritance tree
+     * - we must have at least one STRUCTURAL OC
+     */
+    private void assertObjectClasses( Dn dn, Set<ObjectClass> structuralObjectClasses ) throws LdapException
+    {
+        // --------------------------------------------------------------------
+        // Throw an error if no STRUCTURAL objectClass are found.
+        // --------------------------------------------------------------------
+        if ( structuralObjectClasses.isEmpty() )
+        {
+            String message = I18n.err( I18n.ERR_60, dn );
+            LOG.error( message );
+            throw new LdapSchemaViolationException( ResultCodeEnum.OBJECT_CLASS_VIOLATION, message );
+        }
+
         // Like the highlander there can only be one :).
-        if ( remaining.size() > 1 )
+        if ( structuralObjectClasses.size() > 1 )
         {
-            String message = I18n.err( I18n.ERR_61, dn, remaining );
+            String message = I18n.err( I18n.ERR_61, dn, structuralObjectClasses );
             LOG.error( message );
             throw new LdapSchemaViolationException( ResultCodeEnum.OBJECT_CLASS_VIOLATION, message );
         }
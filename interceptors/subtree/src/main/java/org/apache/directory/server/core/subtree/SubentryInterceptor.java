@@ -21,6 +21,8 @@ package org.apache.directory.server.core.subtree;
 
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -76,6 +78,7 @@ import org.apache.directory.server.core.api.interceptor.context.RenameOperationC
 import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionNexus;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
 import org.apache.directory.server.core.api.subtree.SubentryCache;
 import org.apache.directory.server.core.api.subtree.SubtreeEvaluator;
 import org.apache.directory.server.i18n.I18n;
@@ -105,6 +108,15 @@ public class SubentryInterceptor extends BaseInterceptor
     /** A reference to the nexus for direct backend operations */
     private PartitionNexus nexus;
 
+    /** Tells if the entries selected by a subentry are updated in the background when it changes */
+    private boolean backgroundRetagging = false;
+
+    /** The number of entries updated in a single transaction by the background retagging */
+    private int retaggingBatchSize = SubentryRetagger.DEFAULT_BATCH_SIZE;
+
+    /** The background retagging processor, if enabled */
+    private SubentryRetagger retagger;
+
     /** An enum used for the entries update */
     private enum OperationEnum
     {
@@ -191,6 +203,35 @@ public class SubentryInterceptor extends BaseInterceptor
     }
 
 
+    /**
+     * SearchResultFilter used to expose the subentry references the background retagging
+     * jobs have not yet stored in the returned entries.
+     */
+    private class PendingMembershipFilter implements EntryFilter
+    {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean accept( SearchOperationContext searchContext, Entry entry ) throws LdapException
+        {
+            retagger.applyPendingMembership( searchContext, entry );
+
+            return true;
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString( String tabs )
+        {
+            return tabs + "PendingMembershipFilter";
+        }
+    }
+
+
     //-------------------------------------------------------------------------------------------
     // Interceptor initialization
     //-------------------------------------------------------------------------------------------
@@ -215,7 +256,7 @@ public class SubentryInterceptor extends BaseInterceptor
         SearchControls controls = new SearchControls();
         controls.setSearchScope( SearchControls.SUBTREE_SCOPE );
         controls.setReturningAttributes( new String[]
-            { SchemaConstants.SUBTREE_SPECIFICATION_AT, SchemaConstants.OBJECT_CLASS_AT } );
+            { SchemaConstants.SUBTREE_SPECIFICATION_AT, SchemaConstants.ALL_USER_ATTRIBUTES } );
 
         subentryOC = new Value( ocAt, SchemaConstants.SUBENTRY_OC );
 
@@ -264,6 +305,7 @@ public class SubentryInterceptor extends BaseInterceptor
                     newSubentry.setSubtreeSpecification( ss );
 
                     directoryService.getSubentryCache().addSubentry( subentryDn, newSubentry );
+                    updateCollectiveAttributes( subentryDn, subentry );
                 }
             }
             catch ( Exception e )
@@ -282,6 +324,80 @@ public class SubentryInterceptor extends BaseInterceptor
                 }
             }
         }
+
+        if ( backgroundRetagging )
+        {
+            retagger = new SubentryRetagger( directoryService, retaggingBatchSize );
+            retagger.resume( ssParser );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void destroy()
+    {
+        if ( retagger != null )
+        {
+            retagger.stop();
+        }
+    }
+
+
+    /**
+     * @return <tt>true</tt> if the entries selected by an added, modified, renamed or deleted subentry
+     * are updated in the background
+     */
+    public boolean isBackgroundRetagging()
+    {
+        return backgroundRetagging;
+    }
+
+
+    /**
+     * Enable or disable the background update of the entries selected by an added, modified, renamed
+     * or deleted subentry. It must be set before the interceptor is initialized.
+     *
+     * @param backgroundRetagging <tt>true</tt> to update the entries in the background
+     */
+    public void setBackgroundRetagging( boolean backgroundRetagging )
+    {
+        this.backgroundRetagging = backgroundRetagging;
+    }
+
+
+    /**
+     * @return The number of entries updated in a single transaction by the background retagging
+     */
+    public int getRetaggingBatchSize()
+    {
+        return retaggingBatchSize;
+    }
+
+
+    /**
+     * @param retaggingBatchSize The number of entries updated in a single transaction by the
+     * background retagging
+     */
+    public void setRetaggingBatchSize( int retaggingBatchSize )
+    {
+        this.retaggingBatchSize = retaggingBatchSize;
+    }
+
+
+    /**
+     * @return The active background retagging jobs, and the last completed ones
+     */
+    public List<SubentryRetaggingJob> getRetaggingJobs()
+    {
+        if ( retagger == null )
+        {
+            return Collections.emptyList();
+        }
+
+        return retagger.getJobs();
     }
 
 
@@ -326,6 +442,27 @@ public class SubentryInterceptor extends BaseInterceptor
     }
 
 
+    /**
+     * Update the collective attributes overlay associated with a subentry. If the
+     * subentry is a collectiveAttributeSubentry, its collective attributes are stored
+     * in the SubentryCache, otherwise they are removed from it.
+     */
+    private void updateCollectiveAttributes( Dn subentryDn, Entry subentry )
+    {
+        SubentryCache subentryCache = directoryService.getSubentryCache();
+
+        if ( ( subentry != null ) && subentry.contains( directoryService.getAtProvider().getObjectClass(),
+            SchemaConstants.COLLECTIVE_ATTRIBUTE_SUBENTRY_OC ) )
+        {
+            subentryCache.setCollectiveAttributes( subentryDn, subentry );
+        }
+        else
+        {
+            subentryCache.removeCollectiveAttributes( subentryDn );
+        }
+    }
+
+
     /**
      * Checks to see if subentries for the search and list operations should be
      * made visible based on the availability of the search request control
@@ -351,6 +488,47 @@ public class SubentryInterceptor extends BaseInterceptor
     }
 
 
+    /**
+     * Tells if some entries returned by an operation may have to be patched to reflect the
+     * pending background retagging jobs
+     */
+    private boolean hasPendingRetagging()
+    {
+        return ( retagger != null ) && retagger.hasActiveJobs();
+    }
+
+
+    /**
+     * Gets the subentry operational attributes types associated with the subentry roles
+     */
+    private List<AttributeType> getSubentryOperationalAttributeTypes( Subentry subentry )
+    {
+        List<AttributeType> attributeTypes = new ArrayList<>();
+
+        if ( subentry.isAccessControlAdminRole() )
+        {
+            attributeTypes.add( directoryService.getAtProvider().getAccessControlSubentries() );
+        }
+
+        if ( subentry.isSchemaAdminRole() )
+        {
+            attributeTypes.add( directoryService.getAtProvider().getSubschemaSubentry() );
+        }
+
+        if ( subentry.isCollectiveAdminRole() )
+        {
+            attributeTypes.add( directoryService.getAtProvider().getCollectiveAttributeSubentries() );
+        }
+
+        if ( subentry.isTriggersAdminRole() )
+        {
+            attributeTypes.add( directoryService.getAtProvider().getTriggerExecutionSubentries() );
+        }
+
+        return attributeTypes;
+    }
+
+
     /**
      * Update all the entries under an AP adding the
      */
@@ -430,6 +608,37 @@ public class SubentryInterceptor extends BaseInterceptor
     }
 
 
+    /**
+     * Replace the background jobs of a subentry whose SubtreeSpecification or Dn has been changed :
+     * the references to the old subentry are removed from the entries selected by the old
+     * SubtreeSpecification, then the references to the new subentry are added to the entries
+     * selected by the new one. The jobs are only started once the operation has been committed.
+     *
+     * @param opContext The operation modifying the subentry
+     * @param oldDn The subentry Dn before the operation
+     * @param oldEntry The subentry before the operation
+     * @param oldSs The SubtreeSpecification before the operation
+     * @param newDn The subentry Dn after the operation
+     * @param newSsStr The new SubtreeSpecification, or null if it has not been modified
+     * @param subentry The subentry after the operation
+     */
+    private void resubmitRetagging( OperationContext opContext, Dn oldDn, Entry oldEntry, SubtreeSpecification oldSs,
+        Dn newDn, String newSsStr, Subentry subentry ) throws LdapException
+    {
+        PartitionTxn transaction = opContext.getTransaction();
+        String oldSsStr = oldEntry.get( directoryService.getAtProvider().getSubtreeSpecification() ).getString();
+
+        // Stop adding references to the old subentry
+        retagger.cancel( transaction, oldDn );
+
+        retagger.submit( transaction, SubentryRetaggingJob.Operation.REMOVE, oldDn, oldSsStr, oldSs,
+            Arrays.asList( directoryService.getAtProvider().getSubentryOperationalAttributes() ) );
+        retagger.submit( transaction, SubentryRetaggingJob.Operation.ADD, newDn,
+            ( newSsStr == null ) ? oldSsStr : newSsStr, subentry.getSubtreeSpecification(),
+            getSubentryOperationalAttributeTypes( subentry ) );
+    }
+
+
     /**
      * Checks if the given Dn is a namingContext
      */
@@ -958,6 +1167,9 @@ public class SubentryInterceptor extends BaseInterceptor
             // Now inject the subentry into the backend
             next( addContext );
 
+            // The collective attributes can now be served from the cache
+            updateCollectiveAttributes( dn, entry );
+
             /* ----------------------------------------------------------------
              * Find the baseDn for the subentry and use that to search the tree
              * while testing each entry returned for inclusion within the
@@ -966,11 +1178,21 @@ public class SubentryInterceptor extends BaseInterceptor
              * operational attributes calculated above.
              * ----------------------------------------------------------------
              */
-            Dn baseDn = apDn;
-            baseDn = baseDn.add( subentry.getSubtreeSpecification().getBase() );
+            if ( retagger != null )
+            {
+                // The selected entries will be updated in the background
+                retagger.submit( addContext.getTransaction(), SubentryRetaggingJob.Operation.ADD, dn,
+                    entry.get( directoryService.getAtProvider().getSubtreeSpecification() ).getString(),
+                    subentry.getSubtreeSpecification(), getSubentryOperationalAttributeTypes( subentry ) );
+            }
+            else
+            {
+                Dn baseDn = apDn;
+                baseDn = baseDn.add( subentry.getSubtreeSpecification().getBase() );
 
-            updateEntries( addContext, OperationEnum.ADD, apDn, subentry.getSubtreeSpecification(),
-                baseDn, operationalAttributes );
+                updateEntries( addContext, OperationEnum.ADD, apDn, subentry.getSubtreeSpecification(),
+                    baseDn, operationalAttributes );
+            }
 
             // Store the newly modified entry into the context for later use in interceptor
             // just in case
@@ -1059,6 +1281,23 @@ public class SubentryInterceptor extends BaseInterceptor
              * attributes we remove from the entry in a modify operation.
              * ----------------------------------------------------------------
              */
+            if ( retagger != null )
+            {
+                // Stop adding references to this subentry
+                retagger.cancel( deleteContext.getTransaction(), dn );
+                directoryService.getSubentryCache().removeSubentry( dn );
+
+                next( deleteContext );
+
+                // The references will be removed in the background
+                retagger.submit( deleteContext.getTransaction(), SubentryRetaggingJob.Operation.REMOVE, dn,
+                    entry.get( directoryService.getAtProvider().getSubtreeSpecification() ).getString(),
+                    removedSubentry.getSubtreeSpecification(),
+                    Arrays.asList( directoryService.getAtProvider().getSubentryOperationalAttributes() ) );
+
+                return;
+            }
+
             Dn apDn = dn.getParent();
             Dn baseDn = apDn;
             baseDn = baseDn.add( removedSubentry.getSubtreeSpecification().getBase() );
@@ -1081,6 +1320,24 @@ public class SubentryInterceptor extends BaseInterceptor
     }
 
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Entry lookup( LookupOperationContext lookupContext ) throws LdapException
+    {
+        Entry entry = next( lookupContext );
+
+        // Expose the subentry references the background jobs have not stored yet
+        if ( ( entry != null ) && !lookupContext.isSyncreplLookup() && hasPendingRetagging() )
+        {
+            retagger.applyPendingMembership( lookupContext, entry );
+        }
+
+        return entry;
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -1141,6 +1398,17 @@ public class SubentryInterceptor extends BaseInterceptor
 
             next( modifyContext );
 
+            updateCollectiveAttributes( dn, modifyContext.getAlteredEntry() );
+
+            if ( retagger != null )
+            {
+                // The selected entries will be updated in the background
+                resubmitRetagging( modifyContext, dn, entry, ssOld, dn, subtreeMod.getAttribute().getString(),
+                    subentry );
+
+                return;
+            }
+
             // search for all entries selected by the old SS and remove references to subentry
             Dn apName = dn.getParent();
             Dn oldBaseDn = apName;
@@ -1245,7 +1513,12 @@ public class SubentryInterceptor extends BaseInterceptor
         {
             next( modifyContext );
 
-            if ( !containsSubentryOC )
+            if ( containsSubentryOC )
+            {
+                // The collective attributes of the subentry may have been modified
+                updateCollectiveAttributes( dn, modifyContext.getAlteredEntry() );
+            }
+            else
             {
                 Entry newEntry = modifyContext.getAlteredEntry();
 
@@ -1326,6 +1599,16 @@ public class SubentryInterceptor extends BaseInterceptor
 
             next( moveContext );
 
+            updateCollectiveAttributes( newName, entry );
+
+            if ( retagger != null )
+            {
+                // The selected entries will be updated in the background
+                resubmitRetagging( moveContext, oldDn, entry, ss, newName, null, subentry );
+
+                return;
+            }
+
             subentry = directoryService.getSubentryCache().getSubentry( newName );
 
             ExprNode filter = new PresenceNode( directoryService.getAtProvider().getObjectClass() );
@@ -1448,6 +1731,16 @@ public class SubentryInterceptor extends BaseInterceptor
 
             next( moveAndRenameContext );
 
+            updateCollectiveAttributes( newName, entry );
+
+            if ( retagger != null )
+            {
+                // The selected entries will be updated in the background
+                resubmitRetagging( moveAndRenameContext, oldDn, entry, ss, newName, null, subentry );
+
+                return;
+            }
+
             subentry = directoryService.getSubentryCache().getSubentry( newName );
 
             ExprNode filter = new PresenceNode( directoryService.getAtProvider().getObjectClass() );
@@ -1557,6 +1850,16 @@ public class SubentryInterceptor extends BaseInterceptor
             directoryService.getSubentryCache().addSubentry( newName, subentry );
             next( renameContext );
 
+            updateCollectiveAttributes( newName, entry );
+
+            if ( retagger != null )
+            {
+                // The selected entries will be updated in the background
+                resubmitRetagging( renameContext, oldDn, entry, ss, newName, null, subentry );
+
+                return;
+            }
+
             subentry = directoryService.getSubentryCache().getSubentry( newName );
             ExprNode filter = new PresenceNode( directoryService.getAtProvider().getObjectClass() );
             SearchControls controls = new SearchControls();
@@ -1645,6 +1948,12 @@ public class SubentryInterceptor extends BaseInterceptor
     {
         EntryFilteringCursor cursor = next( searchContext );
 
+        // Expose the subentry references the background jobs have not stored yet
+        if ( !searchContext.isSyncreplSearch() && hasPendingRetagging() )
+        {
+            cursor.addEntryFilter( new PendingMembershipFilter() );
+        }
+
         // object scope searches by default return subentries
         if ( searchContext.getScope() == SearchScope.OBJECT )
         {
@@ -0,0 +1,858 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.subtree;
+
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.naming.directory.SearchControls;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultAttribute;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.api.ldap.model.filter.ExprNode;
+import org.apache.directory.api.ldap.model.filter.ObjectClassNode;
+import org.apache.directory.api.ldap.model.message.AliasDerefMode;
+import org.apache.directory.api.ldap.model.message.controls.PagedResultsImpl;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.subtree.SubtreeSpecification;
+import org.apache.directory.api.ldap.model.subtree.SubtreeSpecificationParser;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.OperationManager;
+import org.apache.directory.server.core.api.entry.ClonedServerEntry;
+import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
+import org.apache.directory.server.core.api.interceptor.context.FilteringOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.LookupOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.ModifyOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
+import org.apache.directory.server.core.api.partition.Partition;
+import org.apache.directory.server.core.api.partition.PartitionNexus;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.core.api.partition.PartitionWriteTxn;
+import org.apache.directory.server.i18n.I18n;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Processes the {@link SubentryRetaggingJob}s in a background thread. The entries selected
+ * by a subentry are updated in batches, each batch being applied in its own write transaction,
+ * so that the write lock is only held for a short period of time. A job is only started once
+ * the operation which has submitted it has been committed.
+ * <p>
+ * After each batch, the job progress is stored as a checkpoint in the instance run directory,
+ * with the last entry examined. Jobs which have not been completed when the server stops are
+ * resumed on the next start, after this last entry. If this entry does not exist anymore, the
+ * whole subtree is scanned again : as the modifications are only computed for entries which
+ * are not yet up to date, the entries already processed are left untouched.
+ * <p>
+ * While a job is active, the entries returned to the clients are patched on the fly, so that
+ * they expose the subentry references they will have once the job has been completed.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SubentryRetagger
+{
+    /** The logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( SubentryRetagger.class );
+
+    /** The default number of entries modified in a single transaction */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /** The number of completed jobs we keep for monitoring */
+    private static final int MAX_COMPLETED_JOBS = 100;
+
+    /** The directory under the run directory where the checkpoints are stored */
+    private static final String CHECKPOINT_DIR = "subentry-retagging";
+
+    /** The checkpoint file extension */
+    private static final String CHECKPOINT_EXT = ".properties";
+
+    /** The checkpoint keys */
+    private static final String OPERATION_KEY = "operation";
+    private static final String SUBENTRY_KEY = "subentryDn";
+    private static final String SUBTREE_SPECIFICATION_KEY = "subtreeSpecification";
+    private static final String ATTRIBUTES_KEY = "operationalAttributes";
+    private static final String EXAMINED_KEY = "examined";
+    private static final String MODIFIED_KEY = "modified";
+    private static final String LAST_DN_KEY = "lastDn";
+
+    /** The DirectoryService instance */
+    private final DirectoryService directoryService;
+
+    /** The nexus */
+    private final PartitionNexus nexus;
+
+    /** The number of entries modified in a single transaction */
+    private final int batchSize;
+
+    /** The directory containing the checkpoints */
+    private final File checkpointDir;
+
+    /** The active jobs, in submission order */
+    private final List<SubentryRetaggingJob> activeJobs = new CopyOnWriteArrayList<>();
+
+    /** The last completed jobs */
+    private final Deque<SubentryRetaggingJob> completedJobs = new ConcurrentLinkedDeque<>();
+
+    /** The single thread executor processing the jobs, one after the other */
+    private final ExecutorService executor;
+
+
+    /**
+     * Creates a new instance of SubentryRetagger
+     *
+     * @param directoryService The DirectoryService instance
+     * @param batchSize The number of entries modified in a single transaction
+     */
+    public SubentryRetagger( DirectoryService directoryService, int batchSize )
+    {
+        this.directoryService = directoryService;
+        this.nexus = directoryService.getPartitionNexus();
+        this.batchSize = batchSize;
+
+        File runDir = directoryService.getInstanceLayout().getRunDirectory();
+        checkpointDir = new File( runDir, CHECKPOINT_DIR );
+
+        executor = Executors.newSingleThreadExecutor( new ThreadFactory()
+        {
+            @Override
+            public Thread newThread( Runnable runnable )
+            {
+                Thread thread = Executors.defaultThreadFactory().newThread( runnable );
+                thread.setName( "SubentryRetagger" );
+                thread.setDaemon( true );
+
+                return thread;
+            }
+        } );
+    }
+
+
+    /**
+     * Resume the jobs which were not completed when the server was stopped.
+     *
+     * @param ssParser The parser used to read the stored SubtreeSpecifications
+     */
+    public void resume( SubtreeSpecificationParser ssParser )
+    {
+        File[] checkpoints = checkpointDir.listFiles( ( dir, name ) -> name.endsWith( CHECKPOINT_EXT ) );
+
+        if ( checkpoints == null )
+        {
+            return;
+        }
+
+        for ( File checkpoint : checkpoints )
+        {
+            String name = checkpoint.getName();
+            String id = name.substring( 0, name.length() - CHECKPOINT_EXT.length() );
+            Properties properties = new Properties();
+
+            try ( InputStream in = new FileInputStream( checkpoint ) )
+            {
+                properties.load( in );
+
+                SubentryRetaggingJob.Operation operation = SubentryRetaggingJob.Operation.valueOf( properties
+                    .getProperty( OPERATION_KEY ) );
+                Dn subentryDn = directoryService.getDnFactory().create( properties.getProperty( SUBENTRY_KEY ) );
+                String ssStr = properties.getProperty( SUBTREE_SPECIFICATION_KEY );
+                SubtreeSpecification ss = ssParser.parse( ssStr );
+                List<AttributeType> attributeTypes = new ArrayList<>();
+
+                for ( String oid : properties.getProperty( ATTRIBUTES_KEY ).split( "," ) )
+                {
+                    attributeTypes.add( directoryService.getSchemaManager().lookupAttributeTypeRegistry( oid ) );
+                }
+
+                SubentryRetaggingJob job = new SubentryRetaggingJob( id, operation, subentryDn, ssStr, ss,
+                    attributeTypes );
+                String lastDn = properties.getProperty( LAST_DN_KEY );
+
+                if ( lastDn != null )
+                {
+                    job.resumeAfter( directoryService.getDnFactory().create( lastDn ),
+                        Long.parseLong( properties.getProperty( EXAMINED_KEY, "0" ) ),
+                        Long.parseLong( properties.getProperty( MODIFIED_KEY, "0" ) ) );
+                }
+
+                LOG.info( "Resuming {} (examined {} entries before the interruption)", job,
+                    properties.getProperty( EXAMINED_KEY ) );
+                schedule( job );
+            }
+            catch ( Exception e )
+            {
+                LOG.error( "Cannot resume the subentry retagging job stored in {}, it is discarded : {}", checkpoint,
+                    e.getMessage() );
+
+                if ( !checkpoint.delete() )
+                {
+                    LOG.warn( "Cannot delete the checkpoint {}", checkpoint );
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Submit a new job. When the subentry is modified within a write transaction, the job is only
+     * stored and scheduled once this transaction has been committed, so that nothing is left behind
+     * if it is aborted.
+     *
+     * @param transaction The transaction modifying the subentry, or null
+     * @param operation The operation to apply on the selected entries
+     * @param subentryDn The subentry Dn
+     * @param ssStr The subentry's SubtreeSpecification, as a String
+     * @param ss The parsed SubtreeSpecification
+     * @param operationalAttributes The subentry operational attributes to update
+     * @return The created job
+     * @throws LdapException If the checkpoint directory cannot be created
+     */
+    public SubentryRetaggingJob submit( PartitionTxn transaction, SubentryRetaggingJob.Operation operation,
+        Dn subentryDn, String ssStr, SubtreeSpecification ss, List<AttributeType> operationalAttributes )
+        throws LdapException
+    {
+        final SubentryRetaggingJob job = new SubentryRetaggingJob( UUID.randomUUID().toString(), operation,
+            subentryDn, ssStr, ss, operationalAttributes );
+
+        createCheckpointDir();
+
+        afterCommit( transaction, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    // Store the checkpoint first, so that the job is not lost if the server stops
+                    writeCheckpoint( job );
+                }
+                catch ( LdapException le )
+                {
+                    LOG.error( "Cannot store the checkpoint of {}, it won't be resumed if the server stops : {}",
+                        job, le.getMessage() );
+                }
+
+                schedule( job );
+
+                LOG.debug( "Submitted {}", job );
+            }
+        } );
+
+        return job;
+    }
+
+
+    /**
+     * Cancel the active jobs adding references to a subentry. The jobs removing the references
+     * to a subentry are left running, otherwise these references would remain in the entries
+     * selected by a former SubtreeSpecification. When the subentry is modified within a write
+     * transaction, the jobs are only cancelled once this transaction has been committed.
+     *
+     * @param transaction The transaction modifying the subentry, or null
+     * @param subentryDn The subentry Dn
+     */
+    public void cancel( PartitionTxn transaction, final Dn subentryDn )
+    {
+        afterCommit( transaction, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                for ( SubentryRetaggingJob job : activeJobs )
+                {
+                    if ( ( job.getOperation() == SubentryRetaggingJob.Operation.ADD )
+                        && job.getSubentryDn().equals( subentryDn ) )
+                    {
+                        LOG.debug( "Cancelling {}", job );
+                        job.cancel();
+                    }
+                }
+            }
+        } );
+    }
+
+
+    /**
+     * @return <tt>true</tt> if some jobs are pending or running
+     */
+    public boolean hasActiveJobs()
+    {
+        return !activeJobs.isEmpty();
+    }
+
+
+    /**
+     * @return The list of active jobs, and the last completed ones
+     */
+    public List<SubentryRetaggingJob> getJobs()
+    {
+        List<SubentryRetaggingJob> jobs = new ArrayList<>( activeJobs );
+        jobs.addAll( completedJobs );
+
+        return jobs;
+    }
+
+
+    /**
+     * Stops the background thread. The jobs which have not been completed will be resumed
+     * on the next start.
+     */
+    public void stop()
+    {
+        for ( SubentryRetaggingJob job : activeJobs )
+        {
+            LOG.info( "Interrupting {}", job );
+        }
+
+        executor.shutdownNow();
+    }
+
+
+    /**
+     * Patch an entry about to be returned so that it reflects the modifications the active jobs
+     * will apply on it.
+     *
+     * @param opContext The operation returning the entry
+     * @param entry The entry to patch
+     * @throws LdapException If the SubtreeSpecification evaluation failed
+     */
+    public void applyPendingMembership( FilteringOperationContext opContext, Entry entry ) throws LdapException
+    {
+        Dn dn = entry.getDn();
+
+        if ( !dn.isSchemaAware() )
+        {
+            dn = new Dn( directoryService.getSchemaManager(), dn );
+        }
+
+        // The SubtreeSpecification refinements have to be evaluated against the stored entry
+        Entry storedEntry = entry;
+
+        if ( entry instanceof ClonedServerEntry )
+        {
+            storedEntry = ( ( ClonedServerEntry ) entry ).getOriginalEntry();
+        }
+
+        for ( SubentryRetaggingJob job : activeJobs )
+        {
+            if ( !dn.isDescendantOf( job.getBaseDn() ) )
+            {
+                continue;
+            }
+
+            if ( !directoryService.getEvaluator().evaluate( job.getSubtreeSpecification(), job.getApDn(), dn,
+                storedEntry ) )
+            {
+                continue;
+            }
+
+            String subentryDnStr = job.getSubentryDn().getName();
+
+            for ( AttributeType attributeType : job.getOperationalAttributes() )
+            {
+                Attribute attribute = entry.get( attributeType );
+
+                if ( job.getOperation() == SubentryRetaggingJob.Operation.ADD )
+                {
+                    if ( attribute == null )
+                    {
+                        // Only inject the attribute if it has been requested
+                        if ( opContext.isAllOperationalAttributes()
+                            || opContext.contains( directoryService.getSchemaManager(), attributeType ) )
+                        {
+                            entry.put( new DefaultAttribute( attributeType, subentryDnStr ) );
+                        }
+                    }
+                    else
+                    {
+                        attribute.add( subentryDnStr );
+                    }
+                }
+                else if ( attribute != null )
+                {
+                    attribute.remove( subentryDnStr );
+
+                    if ( attribute.size() == 0 )
+                    {
+                        entry.removeAttributes( attributeType );
+                    }
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Run an action once a write transaction has been committed, or immediately
+     */
+    private void afterCommit( PartitionTxn transaction, Runnable action )
+    {
+        if ( transaction instanceof PartitionWriteTxn )
+        {
+            ( ( PartitionWriteTxn ) transaction ).onCommit( action );
+        }
+        else
+        {
+            action.run();
+        }
+    }
+
+
+    /**
+     * Add a job to the active jobs and schedule it
+     */
+    private void schedule( SubentryRetaggingJob job )
+    {
+        activeJobs.add( job );
+        executor.execute( () -> process( job ) );
+    }
+
+
+    /**
+     * Process a job : all the entries under the subtree base are examined, and the one selected
+     * by the SubtreeSpecification are updated, in batches. A resumed job restarts the scan after
+     * the last entry it processed.
+     */
+    private void process( SubentryRetaggingJob job )
+    {
+        if ( job.getState() == SubentryRetaggingJob.State.CANCELLED )
+        {
+            complete( job, SubentryRetaggingJob.State.CANCELLED, null );
+
+            return;
+        }
+
+        job.started();
+        LOG.info( "Starting {}", job );
+
+        try
+        {
+            Partition partition = nexus.getPartition( job.getBaseDn() );
+
+            if ( !scan( job, partition, job.getResumeDn() ) )
+            {
+                // The last processed entry has been deleted or moved meanwhile : we have to scan
+                // the whole subtree again, the entries which are already up to date won't be modified
+                LOG.info( "The last entry processed by {} is gone, restarting the scan from the beginning", job );
+                scan( job, partition, null );
+            }
+
+            if ( executor.isShutdown() )
+            {
+                // The server is stopping : the job will be resumed on the next start
+                LOG.info( "Interrupted {}", job );
+                activeJobs.remove( job );
+            }
+            else if ( job.getState() == SubentryRetaggingJob.State.CANCELLED )
+            {
+                complete( job, SubentryRetaggingJob.State.CANCELLED, null );
+            }
+            else
+            {
+                complete( job, SubentryRetaggingJob.State.COMPLETED, null );
+            }
+        }
+        catch ( Exception e )
+        {
+            if ( executor.isShutdown() )
+            {
+                // The server is stopping : the job will be resumed on the next start
+                LOG.info( "Interrupted {}", job );
+                activeJobs.remove( job );
+            }
+            else
+            {
+                LOG.error( "Failed {}", job, e );
+                complete( job, SubentryRetaggingJob.State.FAILED, e.getMessage() );
+            }
+        }
+    }
+
+
+    /**
+     * Scan the subtree of a job, updating the selected entries in batches. The entries are read
+     * in the order of their ID, and each batch is read in its own read transaction, which is closed
+     * before the batch is applied : the next batch is then read from a new transaction, after the
+     * last entry examined. When a resume Dn is given, the scan restarts after this entry.
+     *
+     * @return <tt>false</tt> if the resume Dn does not exist anymore
+     */
+    private boolean scan( SubentryRetaggingJob job, Partition partition, Dn resumeDn ) throws Exception
+    {
+        CoreSession adminSession = directoryService.getAdminSession();
+        String lastId = null;
+
+        if ( resumeDn != null )
+        {
+            lastId = getEntryId( partition, resumeDn );
+
+            if ( lastId == null )
+            {
+                return false;
+            }
+
+            // The entries up to this one have been processed before the interruption
+            job.skipped( job.getExamined() );
+        }
+
+        List<ModifyOperationContext> batch = new ArrayList<>( batchSize );
+        boolean done = false;
+
+        while ( !done )
+        {
+            EntryFilteringCursor cursor = null;
+            PartitionTxn readTxn = null;
+
+            try
+            {
+                ExprNode filter = ObjectClassNode.OBJECT_CLASS_NODE;
+                SearchControls controls = new SearchControls();
+                controls.setSearchScope( SearchControls.SUBTREE_SCOPE );
+                controls.setReturningAttributes( new String[]
+                    { SchemaConstants.ALL_OPERATIONAL_ATTRIBUTES, SchemaConstants.ALL_USER_ATTRIBUTES } );
+
+                SearchOperationContext searchContext = new SearchOperationContext( adminSession, job.getBaseDn(),
+                    filter, controls );
+                searchContext.setAliasDerefMode( AliasDerefMode.NEVER_DEREF_ALIASES );
+                searchContext.setPartition( partition );
+
+                // The subtree is read page after page, in the order of the entry IDs
+                searchContext.addRequestControl( new PagedResultsImpl() );
+                searchContext.setResumeAfterId( lastId );
+                readTxn = partition.beginReadTransaction();
+                searchContext.setTransaction( readTxn );
+
+                cursor = nexus.search( searchContext );
+                done = true;
+
+                while ( cursor.next() )
+                {
+                    if ( executor.isShutdown() )
+                    {
+                        // Don't apply the pending batch : the checkpoint already covers the committed entries
+                        return true;
+                    }
+
+                    if ( job.getState() == SubentryRetaggingJob.State.CANCELLED )
+                    {
+                        break;
+                    }
+
+                    Entry candidate = cursor.get();
+                    Dn candidateDn = candidate.getDn();
+
+                    if ( !candidateDn.isSchemaAware() )
+                    {
+                        candidateDn = new Dn( directoryService.getSchemaManager(), candidateDn );
+                    }
+
+                    job.examined( candidateDn );
+                    lastId = candidate.get( SchemaConstants.ENTRY_UUID_AT ).getString();
+
+                    if ( directoryService.getEvaluator().evaluate( job.getSubtreeSpecification(), job.getApDn(),
+                        candidateDn, candidate ) )
+                    {
+                        List<Modification> modifications = getModifications( job, candidate );
+
+                        if ( !modifications.isEmpty() )
+                        {
+                            ModifyOperationContext modifyContext = new ModifyOperationContext( adminSession,
+                                candidateDn, modifications );
+                            modifyContext.setPartition( partition );
+                            batch.add( modifyContext );
+                        }
+                    }
+
+                    if ( batch.size() >= batchSize )
+                    {
+                        // Release the read transaction, the next batch will be read after this entry
+                        done = false;
+                        break;
+                    }
+                }
+            }
+            finally
+            {
+                closeQuietly( cursor, readTxn );
+            }
+
+            applyBatch( job, partition, batch );
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Get the ID of an entry, or null if it does not exist
+     */
+    private String getEntryId( Partition partition, Dn dn ) throws Exception
+    {
+        try ( PartitionTxn readTxn = partition.beginReadTransaction() )
+        {
+            LookupOperationContext lookupContext = new LookupOperationContext( directoryService.getAdminSession(),
+                dn, SchemaConstants.ENTRY_UUID_AT );
+            lookupContext.setPartition( partition );
+            lookupContext.setTransaction( readTxn );
+
+            Entry entry = nexus.lookup( lookupContext );
+
+            if ( entry == null )
+            {
+                return null;
+            }
+
+            return entry.get( SchemaConstants.ENTRY_UUID_AT ).getString();
+        }
+    }
+
+
+    /**
+     * Compute the modifications to apply on a selected entry. Entries which are already up to date
+     * don't need any modification, which makes it possible to resume a job from scratch.
+     */
+    private List<Modification> getModifications( SubentryRetaggingJob job, Entry candidate )
+        throws LdapException
+    {
+        List<Modification> modifications = new ArrayList<>();
+        String subentryDnStr = job.getSubentryDn().getName();
+
+        for ( AttributeType attributeType : job.getOperationalAttributes() )
+        {
+            Attribute opAttr = candidate.get( attributeType );
+            boolean isTagged = ( opAttr != null ) && opAttr.contains( subentryDnStr );
+
+            if ( ( job.getOperation() == SubentryRetaggingJob.Operation.ADD ) && !isTagged )
+            {
+                modifications.add( new DefaultModification( ModificationOperation.ADD_ATTRIBUTE,
+                    new DefaultAttribute( attributeType, subentryDnStr ) ) );
+            }
+            else if ( ( job.getOperation() == SubentryRetaggingJob.Operation.REMOVE ) && isTagged )
+            {
+                modifications.add( new DefaultModification( ModificationOperation.REMOVE_ATTRIBUTE,
+                    new DefaultAttribute( attributeType, subentryDnStr ) ) );
+            }
+        }
+
+        return modifications;
+    }
+
+
+    /**
+     * Apply a batch of modifications in a single write transaction, and store the job checkpoint.
+     */
+    private void applyBatch( SubentryRetaggingJob job, Partition partition, List<ModifyOperationContext> batch )
+        throws LdapException
+    {
+        if ( job.getState() == SubentryRetaggingJob.State.CANCELLED )
+        {
+            // The subentry has been modified or deleted meanwhile
+            batch.clear();
+
+            return;
+        }
+
+        if ( batch.isEmpty() )
+        {
+            writeCheckpoint( job );
+
+            return;
+        }
+
+        OperationManager operationManager = directoryService.getOperationManager();
+        operationManager.lockWrite();
+
+        PartitionTxn transaction = null;
+
+        try
+        {
+            transaction = partition.beginWriteTransaction();
+
+            for ( ModifyOperationContext modifyContext : batch )
+            {
+                modifyContext.setTransaction( transaction );
+                nexus.modify( modifyContext );
+            }
+
+            transaction.commit();
+        }
+        catch ( LdapException | IOException e )
+        {
+            try
+            {
+                if ( transaction != null )
+                {
+                    transaction.abort();
+                }
+            }
+            catch ( IOException ioe )
+            {
+                LOG.error( "Cannot abort the transaction : {}", ioe.getMessage() );
+            }
+
+            throw new LdapOtherException( e.getMessage(), e );
+        }
+        finally
+        {
+            operationManager.unlockWrite();
+        }
+
+        job.committed( batch.size() );
+        batch.clear();
+        writeCheckpoint( job );
+
+        LOG.debug( "Progress of {}", job );
+    }
+
+
+    /**
+     * Mark a job as ended, and remove its checkpoint
+     */
+    private void complete( SubentryRetaggingJob job, SubentryRetaggingJob.State state, String error )
+    {
+        job.ended( state, error );
+        activeJobs.remove( job );
+        completedJobs.addFirst( job );
+
+        while ( completedJobs.size() > MAX_COMPLETED_JOBS )
+        {
+            completedJobs.removeLast();
+        }
+
+        File checkpoint = new File( checkpointDir, job.getId() + CHECKPOINT_EXT );
+
+        if ( checkpoint.exists() && !checkpoint.delete() )
+        {
+            LOG.warn( "Cannot delete the checkpoint {}", checkpoint );
+        }
+
+        LOG.info( "Ended {}", job );
+    }
+
+
+    /**
+     * Store the job progress on disk
+     */
+    private void writeCheckpoint( SubentryRetaggingJob job ) throws LdapException
+    {
+        createCheckpointDir();
+
+        Properties properties = new Properties();
+        properties.setProperty( OPERATION_KEY, job.getOperation().name() );
+        properties.setProperty( SUBENTRY_KEY, job.getSubentryDn().getName() );
+        properties.setProperty( SUBTREE_SPECIFICATION_KEY, job.getSubtreeSpecificationStr() );
+
+        StringBuilder attributes = new StringBuilder();
+
+        for ( AttributeType attributeType : job.getOperationalAttributes() )
+        {
+            if ( attributes.length() > 0 )
+            {
+                attributes.append( ',' );
+            }
+
+            attributes.append( attributeType.getOid() );
+        }
+
+        properties.setProperty( ATTRIBUTES_KEY, attributes.toString() );
+        properties.setProperty( EXAMINED_KEY, Long.toString( job.getExamined() ) );
+        properties.setProperty( MODIFIED_KEY, Long.toString( job.getModified() ) );
+
+        if ( job.getLastDn() != null )
+        {
+            properties.setProperty( LAST_DN_KEY, job.getLastDn().getName() );
+        }
+
+        File checkpoint = new File( checkpointDir, job.getId() + CHECKPOINT_EXT );
+
+        try ( OutputStream out = new FileOutputStream( checkpoint ) )
+        {
+            properties.store( out, "Subentry retagging checkpoint" );
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+    }
+
+
+    /**
+     * Create the directory containing the checkpoints, if it does not exist yet
+     */
+    private void createCheckpointDir() throws LdapException
+    {
+        if ( !checkpointDir.exists() && !checkpointDir.mkdirs() )
+        {
+            throw new LdapOtherException( I18n.err( I18n.ERR_112_COULD_NOT_CREATE_DIRECTORY, checkpointDir ) );
+        }
+    }
+
+
+    private void closeQuietly( EntryFilteringCursor cursor, PartitionTxn readTxn )
+    {
+        if ( cursor != null )
+        {
+            try
+            {
+                cursor.close();
+            }
+            catch ( Exception e )
+            {
+                LOG.error( I18n.err( I18n.ERR_168 ), e );
+            }
+        }
+
+        if ( readTxn != null )
+        {
+            try
+            {
+                readTxn.close();
+            }
+            catch ( IOException ioe )
+            {
+                LOG.error( "Cannot close the read transaction : {}", ioe.getMessage() );
+            }
+        }
+    }
+}
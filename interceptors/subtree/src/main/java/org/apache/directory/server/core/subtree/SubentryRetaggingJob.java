@@ -0,0 +1,395 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.subtree;
+
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.subtree.SubtreeSpecification;
+
+
+/**
+ * A job updating the subentry operational attributes of all the entries selected by
+ * a subentry's SubtreeSpecification, when this subentry has been added or deleted. A subentry
+ * whose SubtreeSpecification or Dn has been changed is handled by two jobs, removing the old
+ * references and adding the new ones.
+ * The job is processed in the background by the {@link SubentryRetagger}, in batches,
+ * and it exposes its progress so that it can be monitored.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SubentryRetaggingJob
+{
+    /** The type of update to apply on the selected entries */
+    public enum Operation
+    {
+        /** A reference to the subentry has to be added */
+        ADD,
+
+        /** The reference to the subentry has to be removed */
+        REMOVE
+    }
+
+    /** The job state */
+    public enum State
+    {
+        PENDING,
+        RUNNING,
+        COMPLETED,
+        CANCELLED,
+        FAILED
+    }
+
+    /** The job identifier, also used as the checkpoint name */
+    private final String id;
+
+    /** The operation to apply */
+    private final Operation operation;
+
+    /** The subentry Dn */
+    private final Dn subentryDn;
+
+    /** The subentry's SubtreeSpecification, as a String */
+    private final String subtreeSpecificationStr;
+
+    /** The parsed SubtreeSpecification */
+    private final SubtreeSpecification subtreeSpecification;
+
+    /** The subentry operational attributes to update */
+    private final List<AttributeType> operationalAttributes;
+
+    /** The job state */
+    private volatile State state = State.PENDING;
+
+    /** The number of entries examined so far */
+    private final AtomicLong examined = new AtomicLong( 0L );
+
+    /** The number of entries modified so far */
+    private final AtomicLong modified = new AtomicLong( 0L );
+
+    /** The number of batches committed so far */
+    private final AtomicLong batches = new AtomicLong( 0L );
+
+    /** The last entry examined */
+    private volatile Dn lastDn;
+
+    /** The last entry processed before the job was interrupted, if it has been resumed */
+    private volatile Dn resumeDn;
+
+    /** The number of entries skipped when the job has been resumed */
+    private final AtomicLong skipped = new AtomicLong( 0L );
+
+    /** The time the job has been started */
+    private volatile long startTime;
+
+    /** The time the job has ended */
+    private volatile long endTime;
+
+    /** The error which has stopped the job, if any */
+    private volatile String error;
+
+
+    /**
+     * Creates a new instance of SubentryRetaggingJob
+     *
+     * @param id The job identifier
+     * @param operation The operation to apply
+     * @param subentryDn The subentry Dn
+     * @param subtreeSpecificationStr The subentry's SubtreeSpecification
+     * @param subtreeSpecification The parsed SubtreeSpecification
+     * @param operationalAttributes The subentry operational attributes to update
+     */
+    public SubentryRetaggingJob( String id, Operation operation, Dn subentryDn, String subtreeSpecificationStr,
+        SubtreeSpecification subtreeSpecification, List<AttributeType> operationalAttributes )
+    {
+        this.id = id;
+        this.operation = operation;
+        this.subentryDn = subentryDn;
+        this.subtreeSpecificationStr = subtreeSpecificationStr;
+        this.subtreeSpecification = subtreeSpecification;
+        this.operationalAttributes = Collections.unmodifiableList( operationalAttributes );
+    }
+
+
+    /**
+     * @return The job identifier
+     */
+    public String getId()
+    {
+        return id;
+    }
+
+
+    /**
+     * @return The operation applied by this job
+     */
+    public Operation getOperation()
+    {
+        return operation;
+    }
+
+
+    /**
+     * @return The subentry Dn
+     */
+    public Dn getSubentryDn()
+    {
+        return subentryDn;
+    }
+
+
+    /**
+     * @return The AdministrativePoint Dn
+     */
+    public Dn getApDn()
+    {
+        return subentryDn.getParent();
+    }
+
+
+    /**
+     * @return The Dn of the top of the subtree selected by the SubtreeSpecification
+     */
+    public Dn getBaseDn()
+    {
+        return getApDn().add( subtreeSpecification.getBase() );
+    }
+
+
+    /**
+     * @return The SubtreeSpecification, as a String
+     */
+    public String getSubtreeSpecificationStr()
+    {
+        return subtreeSpecificationStr;
+    }
+
+
+    /**
+     * @return The SubtreeSpecification
+     */
+    public SubtreeSpecification getSubtreeSpecification()
+    {
+        return subtreeSpecification;
+    }
+
+
+    /**
+     * @return The subentry operational attributes to update
+     */
+    public List<AttributeType> getOperationalAttributes()
+    {
+        return operationalAttributes;
+    }
+
+
+    /**
+     * @return The job state
+     */
+    public State getState()
+    {
+        return state;
+    }
+
+
+    /**
+     * Tells if the job has not been completed yet, ie is pending or running.
+     *
+     * @return <tt>true</tt> if the job is still active
+     */
+    public boolean isActive()
+    {
+        return ( state == State.PENDING ) || ( state == State.RUNNING );
+    }
+
+
+    /**
+     * @return The number of entries examined so far
+     */
+    public long getExamined()
+    {
+        return examined.get();
+    }
+
+
+    /**
+     * @return The number of entries modified so far
+     */
+    public long getModified()
+    {
+        return modified.get();
+    }
+
+
+    /**
+     * @return The number of batches committed so far
+     */
+    public long getBatches()
+    {
+        return batches.get();
+    }
+
+
+    /**
+     * @return The last examined entry Dn
+     */
+    public Dn getLastDn()
+    {
+        return lastDn;
+    }
+
+
+    /**
+     * @return The last entry processed before the job was interrupted, or null if the job
+     * has not been resumed
+     */
+    public Dn getResumeDn()
+    {
+        return resumeDn;
+    }
+
+
+    /**
+     * @return The number of entries already processed before the interruption, and skipped
+     * when the job has been resumed
+     */
+    public long getSkipped()
+    {
+        return skipped.get();
+    }
+
+
+    /**
+     * @return The time the job has been started, or 0 if it's still pending
+     */
+    public long getStartTime()
+    {
+        return startTime;
+    }
+
+
+    /**
+     * @return The time the job has ended, or 0 if it's still active
+     */
+    public long getEndTime()
+    {
+        return endTime;
+    }
+
+
+    /**
+     * @return The error which has stopped the job, if any
+     */
+    public String getError()
+    {
+        return error;
+    }
+
+
+    /* No qualifier */ void started()
+    {
+        startTime = System.currentTimeMillis();
+        state = State.RUNNING;
+    }
+
+
+    /* No qualifier */ void examined( Dn dn )
+    {
+        examined.incrementAndGet();
+        lastDn = dn;
+    }
+
+
+    /* No qualifier */ void resumeAfter( Dn dn, long nbExamined, long nbModified )
+    {
+        resumeDn = dn;
+        lastDn = dn;
+        examined.set( nbExamined );
+        modified.set( nbModified );
+    }
+
+
+    /* No qualifier */ void skipped( long nbSkipped )
+    {
+        skipped.addAndGet( nbSkipped );
+    }
+
+
+    /* No qualifier */ void committed( int nbModified )
+    {
+        modified.addAndGet( nbModified );
+        batches.incrementAndGet();
+    }
+
+
+    /* No qualifier */ void ended( State endState, String endError )
+    {
+        endTime = System.currentTimeMillis();
+        error = endError;
+        state = endState;
+    }
+
+
+    /* No qualifier */ void cancel()
+    {
+        if ( isActive() )
+        {
+            state = State.CANCELLED;
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append( "SubentryRetaggingJob[" ).append( id ).append( "] " );
+        sb.append( operation ).append( ' ' ).append( subentryDn );
+        sb.append( ", state: " ).append( state );
+        sb.append( ", examined: " ).append( examined.get() );
+        sb.append( ", modified: " ).append( modified.get() );
+        sb.append( ", batches: " ).append( batches.get() );
+
+        if ( skipped.get() > 0L )
+        {
+            sb.append( ", skipped: " ).append( skipped.get() );
+        }
+
+        if ( lastDn != null )
+        {
+            sb.append( ", last: " ).append( lastDn );
+        }
+
+        if ( error != null )
+        {
+            sb.append( ", error: " ).append( error );
+        }
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,396 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.jdbm;
+
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.directory.api.ldap.model.cursor.Tuple;
+
+import jdbm.helper.Serializer;
+
+
+/**
+ * Sorts a stream of tuples which may not fit in memory. The tuples are buffered, and each
+ * time the buffer is full, it is sorted and written in a temporary file (a run). Once all the
+ * tuples have been added, the runs are merged, and the tuples are read back in the key order,
+ * then in the value order if a value comparator is given.
+ * <p>
+ * Tuples can be added by concurrent threads : the buffer is swapped under a lock, and the
+ * full buffer is sorted and written by the thread which filled it.
+ *
+ * @param <K> The key type
+ * @param <V> The value type
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+class ExternalSorter<K, V>
+{
+    /** The buffer size used to read and write the runs */
+    private static final int IO_BUFFER_SIZE = 64 * 1024;
+
+    /** The name of this sorter, used to name the runs */
+    private final String name;
+
+    /** The directory where the runs are written */
+    private final File tmpDir;
+
+    /** The maximum number of tuples kept in memory */
+    private final int bufferSize;
+
+    /** The comparator used to order the tuples */
+    private final Comparator<Tuple<K, V>> tupleComparator;
+
+    /** The key serializer */
+    private final Serializer keySerializer;
+
+    /** The value serializer */
+    private final Serializer valueSerializer;
+
+    /** The tuples not yet written in a run */
+    private List<Tuple<K, V>> buffer;
+
+    /** The runs written so far */
+    private final List<File> runs = new ArrayList<>();
+
+    /** The number of tuples added */
+    private long count;
+
+    /** The runs being merged */
+    private List<RunReader> readers;
+
+    /** The head of each run being merged, by order */
+    private PriorityQueue<RunReader> heads;
+
+    /** The tuples sorted in memory, when they all fitted in the buffer */
+    private List<Tuple<K, V>> sorted;
+
+    /** The position in the sorted tuples */
+    private int position;
+
+
+    /**
+     * Creates a new instance of ExternalSorter.
+     *
+     * @param name The sorter name
+     * @param tmpDir The directory where the runs will be written
+     * @param bufferSize The maximum number of tuples kept in memory
+     * @param keyComparator The key comparator
+     * @param valueComparator The value comparator. May be null if the order of the values doesn't matter
+     * @param keySerializer The key serializer
+     * @param valueSerializer The value serializer
+     */
+    ExternalSorter( String name, File tmpDir, int bufferSize, final Comparator<K> keyComparator,
+        final Comparator<V> valueComparator, Serializer keySerializer, Serializer valueSerializer )
+    {
+        this.name = name;
+        this.tmpDir = tmpDir;
+        this.bufferSize = bufferSize;
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+        buffer = new ArrayList<>( Math.min( bufferSize, 1024 ) );
+
+        tupleComparator = new Comparator<Tuple<K, V>>()
+        {
+            @Override
+            public int compare( Tuple<K, V> tuple1, Tuple<K, V> tuple2 )
+            {
+                int result = keyComparator.compare( tuple1.getKey(), tuple2.getKey() );
+
+                if ( ( result == 0 ) && ( valueComparator != null ) )
+                {
+                    result = valueComparator.compare( tuple1.getValue(), tuple2.getValue() );
+                }
+
+                return result;
+            }
+        };
+    }
+
+
+    /**
+     * Adds a tuple. The buffer is written in a run if it's full.
+     *
+     * @param key The key
+     * @param value The value
+     * @throws IOException If the run can't be written
+     */
+    void add( K key, V value ) throws IOException
+    {
+        List<Tuple<K, V>> full = null;
+
+        synchronized ( this )
+        {
+            buffer.add( new Tuple<K, V>( key, value ) );
+            count++;
+
+            if ( buffer.size() >= bufferSize )
+            {
+                full = buffer;
+                buffer = new ArrayList<>( Math.min( bufferSize, 1024 ) );
+            }
+        }
+
+        if ( full != null )
+        {
+            writeRun( full );
+        }
+    }
+
+
+    /**
+     * Sorts the tuples and writes them in a new run
+     */
+    private void writeRun( List<Tuple<K, V>> tuples ) throws IOException
+    {
+        Collections.sort( tuples, tupleComparator );
+
+        File run = File.createTempFile( name + "-", ".run", tmpDir );
+        run.deleteOnExit();
+
+        try ( DataOutputStream out = new DataOutputStream( new BufferedOutputStream(
+            new FileOutputStream( run ), IO_BUFFER_SIZE ) ) )
+        {
+            for ( Tuple<K, V> tuple : tuples )
+            {
+                byte[] key = keySerializer.serialize( tuple.getKey() );
+                byte[] value = valueSerializer.serialize( tuple.getValue() );
+
+                out.writeInt( key.length );
+                out.write( key );
+                out.writeInt( value.length );
+                out.write( value );
+            }
+        }
+
+        synchronized ( this )
+        {
+            runs.add( run );
+        }
+    }
+
+
+    /**
+     * @return The number of tuples added
+     */
+    synchronized long getCount()
+    {
+        return count;
+    }
+
+
+    /**
+     * @return The number of runs written so far
+     */
+    synchronized int getNbRuns()
+    {
+        return runs.size();
+    }
+
+
+    /**
+     * Prepares the sorted read of the tuples. No tuple can be added afterward.
+     *
+     * @throws IOException If the runs can't be read
+     */
+    synchronized void sort() throws IOException
+    {
+        if ( runs.isEmpty() )
+        {
+            // Everything fits in memory
+            Collections.sort( buffer, tupleComparator );
+            sorted = buffer;
+            buffer = null;
+            position = 0;
+
+            return;
+        }
+
+        if ( !buffer.isEmpty() )
+        {
+            writeRun( buffer );
+        }
+
+        buffer = null;
+        readers = new ArrayList<>( runs.size() );
+        heads = new PriorityQueue<>( runs.size(), new Comparator<RunReader>()
+        {
+            @Override
+            public int compare( RunReader reader1, RunReader reader2 )
+            {
+                return tupleComparator.compare( reader1.head, reader2.head );
+            }
+        } );
+
+        for ( File run : runs )
+        {
+            RunReader reader = new RunReader( run );
+            readers.add( reader );
+
+            if ( reader.next() )
+            {
+                heads.add( reader );
+            }
+        }
+    }
+
+
+    /**
+     * Returns the next tuple, by order. {@link #sort()} must have been called first.
+     *
+     * @return The next tuple, or null if all the tuples have been read
+     * @throws IOException If a run can't be read
+     */
+    Tuple<K, V> next() throws IOException
+    {
+        if ( sorted != null )
+        {
+            if ( position < sorted.size() )
+            {
+                return sorted.get( position++ );
+            }
+
+            return null;
+        }
+
+        RunReader reader = heads.poll();
+
+        if ( reader == null )
+        {
+            return null;
+        }
+
+        Tuple<K, V> tuple = reader.head;
+
+        if ( reader.next() )
+        {
+            heads.add( reader );
+        }
+
+        return tuple;
+    }
+
+
+    /**
+     * Releases the tuples, and deletes the runs.
+     */
+    synchronized void close()
+    {
+        if ( readers != null )
+        {
+            for ( RunReader reader : readers )
+            {
+                reader.close();
+            }
+
+            readers = null;
+        }
+
+        for ( File run : runs )
+        {
+            if ( !run.delete() )
+            {
+                run.deleteOnExit();
+            }
+        }
+
+        runs.clear();
+        sorted = null;
+        buffer = null;
+    }
+
+
+    /**
+     * Reads the tuples of a run, one at a time.
+     */
+    private class RunReader
+    {
+        /** The run content */
+        private DataInputStream in;
+
+        /** The last tuple read */
+        private Tuple<K, V> head;
+
+
+        RunReader( File run ) throws IOException
+        {
+            in = new DataInputStream( new BufferedInputStream( new FileInputStream( run ), IO_BUFFER_SIZE ) );
+        }
+
+
+        /**
+         * Reads the next tuple
+         *
+         * @return false if the run is exhausted
+         */
+        @SuppressWarnings("unchecked")
+        boolean next() throws IOException
+        {
+            int keyLength;
+
+            try
+            {
+                keyLength = in.readInt();
+            }
+            catch ( EOFException eofe )
+            {
+                close();
+
+                return false;
+            }
+
+            byte[] key = new byte[keyLength];
+            in.readFully( key );
+            byte[] value = new byte[in.readInt()];
+            in.readFully( value );
+
+            head = new Tuple<K, V>( ( K ) keySerializer.deserialize( key ), ( V ) valueSerializer.deserialize( value ) );
+
+            return true;
+        }
+
+
+        void close()
+        {
+            head = null;
+
+            try
+            {
+                in.close();
+            }
+            catch ( IOException ioe )
+            {
+                // Nothing we can do
+            }
+        }
+    }
+}
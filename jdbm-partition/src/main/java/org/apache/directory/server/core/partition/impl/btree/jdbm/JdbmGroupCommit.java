@@ -0,0 +1,346 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.jdbm;
+
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jdbm.RecordManager;
+import jdbm.recman.BaseRecordManager;
+import jdbm.recman.CacheRecordManager;
+
+
+/**
+ * Groups the log synchronizations of the concurrent write transactions of a JdbmPartition.
+ * <p>
+ * Each transaction is committed in the record manager as soon as the operation is done, while
+ * the partition is still locked : JDBM can only roll back the changes done since its last commit,
+ * so a commit can't be delayed without being exposed to the failure of another operation.
+ * Writing the log on disk is what is expensive, and it can be shared : a transaction gets a
+ * ticket when it is committed, and waits, once the partition has been unlocked, for the log to
+ * be written on disk up to this ticket.
+ * <p>
+ * The first waiting transaction leads the group : it waits for the other transactions to be
+ * committed during a bounded window (or until the group is full), then writes the log on disk
+ * once for all of them. A transaction is never acknowledged before its changes are on disk.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class JdbmGroupCommit
+{
+    /** The logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( JdbmGroupCommit.class );
+
+    /** The default maximum number of transactions in a group */
+    public static final int DEFAULT_MAX_GROUP_SIZE = 64;
+
+    /** The partition */
+    private final JdbmPartition partition;
+
+    /** The record manager */
+    private final RecordManager recordManager;
+
+    /** The time the leader waits for other transactions, in nanoseconds */
+    private final long window;
+
+    /** The maximum number of transactions written on disk at once */
+    private final int maxGroupSize;
+
+    /** The last ticket given to a committed transaction */
+    private long committed;
+
+    /** The last ticket written on disk */
+    private long durable;
+
+    /** Tells if a leader is currently writing the log */
+    private boolean flushing;
+
+    /** The last ticket which log synchronization has failed, and the failure */
+    private long failedUpTo;
+    private IOException failure;
+
+    /** The number of log synchronizations, and the number of transactions they have covered */
+    private long nbSyncs;
+    private long nbTransactions;
+
+
+    /**
+     * Creates a new JdbmGroupCommit instance
+     *
+     * @param partition The partition
+     * @param recordManager The partition record manager
+     * @param window The time the leader of a group waits for other transactions, in milliseconds
+     * @param maxGroupSize The maximum number of transactions in a group
+     */
+    public JdbmGroupCommit( JdbmPartition partition, RecordManager recordManager, long window, int maxGroupSize )
+    {
+        this.partition = partition;
+        this.recordManager = recordManager;
+        this.window = TimeUnit.MILLISECONDS.toNanos( window );
+        this.maxGroupSize = Math.max( 1, maxGroupSize );
+    }
+
+
+    /**
+     * Writes the record manager log on disk
+     *
+     * @param recordManager The record manager
+     * @throws IOException If the log can't be written
+     */
+    static void synchronizeLog( RecordManager recordManager ) throws IOException
+    {
+        BaseRecordManager baseRecordManager = null;
+
+        if ( recordManager instanceof CacheRecordManager )
+        {
+            baseRecordManager = ( ( BaseRecordManager ) ( ( CacheRecordManager ) recordManager ).getRecordManager() );
+        }
+        else
+        {
+            baseRecordManager = ( ( BaseRecordManager ) recordManager );
+        }
+
+        baseRecordManager.getTransactionManager().synchronizeLog();
+    }
+
+
+    /**
+     * Registers a transaction which has been committed in the record manager, but not written on disk.
+     *
+     * @return The transaction ticket
+     */
+    synchronized long committed()
+    {
+        committed++;
+
+        // Wake up the leader if the group is full
+        if ( flushing && ( committed - durable >= maxGroupSize ) )
+        {
+            notifyAll();
+        }
+
+        return committed;
+    }
+
+
+    /**
+     * @return The last ticket given to a committed transaction
+     */
+    synchronized long getCommitted()
+    {
+        return committed;
+    }
+
+
+    /**
+     * Records that the log has been written on disk up to the given ticket, by a direct
+     * synchronization.
+     *
+     * @param ticket The last ticket committed before the synchronization started
+     */
+    synchronized void markDurable( long ticket )
+    {
+        if ( ticket > durable )
+        {
+            durable = ticket;
+            notifyAll();
+        }
+    }
+
+
+    /**
+     * Waits until the log has been written on disk up to the given ticket. If no other transaction
+     * is writing the log, the current one leads the next group.
+     *
+     * @param ticket The transaction ticket
+     * @throws IOException If the log can't be written on disk
+     */
+    void awaitDurability( long ticket ) throws IOException
+    {
+        synchronized ( this )
+        {
+            while ( true )
+            {
+                if ( durable >= ticket )
+                {
+                    return;
+                }
+
+                if ( failedUpTo >= ticket )
+                {
+                    throw new IOException( failure.getMessage(), failure );
+                }
+
+                if ( !flushing )
+                {
+                    break;
+                }
+
+                waitFor( 0L );
+            }
+
+            // We are the leader : leave some time to the concurrent transactions to join the group
+            flushing = true;
+            long deadline = System.nanoTime() + window;
+
+            try
+            {
+                while ( committed - durable < maxGroupSize )
+                {
+                    long remaining = deadline - System.nanoTime();
+
+                    if ( remaining <= 0L )
+                    {
+                        break;
+                    }
+
+                    waitFor( remaining );
+                }
+            }
+            catch ( InterruptedIOException iioe )
+            {
+                // Write the log anyway, the waiting transactions depend on it
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        flush();
+    }
+
+
+    /**
+     * Writes the log on disk for all the transactions committed so far, the partition being locked
+     */
+    private void flush() throws IOException
+    {
+        long upTo = 0L;
+        IOException error = null;
+        ReadWriteLock rwLock = partition.getReadWriteLock();
+
+        if ( rwLock != null )
+        {
+            rwLock.writeLock().lock();
+        }
+
+        try
+        {
+            upTo = getCommitted();
+            synchronizeLog( recordManager );
+        }
+        catch ( IOException ioe )
+        {
+            error = ioe;
+        }
+        finally
+        {
+            if ( rwLock != null )
+            {
+                rwLock.writeLock().unlock();
+            }
+        }
+
+        synchronized ( this )
+        {
+            flushing = false;
+
+            if ( error == null )
+            {
+                nbSyncs++;
+                nbTransactions += Math.max( 0L, upTo - durable );
+                durable = Math.max( durable, upTo );
+            }
+            else
+            {
+                LOG.error( "Cannot write the log of the {} partition on disk", partition.getId(), error );
+                failedUpTo = upTo;
+                failure = error;
+            }
+
+            notifyAll();
+        }
+
+        if ( error != null )
+        {
+            throw error;
+        }
+    }
+
+
+    /**
+     * Waits on this instance monitor, which must be owned by the current thread
+     */
+    private void waitFor( long nanos ) throws InterruptedIOException
+    {
+        try
+        {
+            if ( nanos == 0L )
+            {
+                wait();
+            }
+            else
+            {
+                TimeUnit.NANOSECONDS.timedWait( this, nanos );
+            }
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException( ie.getMessage() );
+        }
+    }
+
+
+    /**
+     * @return The average number of transactions written on disk by a group log synchronization
+     */
+    public synchronized double getAverageGroupSize()
+    {
+        return nbSyncs == 0L ? 0d : ( double ) nbTransactions / nbSyncs;
+    }
+
+
+    /**
+     * @return The number of group log synchronizations
+     */
+    public synchronized long getNbSyncs()
+    {
+        return nbSyncs;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized String toString()
+    {
+        return "JdbmGroupCommit[" + partition.getId() + ", window " + TimeUnit.NANOSECONDS.toMillis( window )
+            + " ms, " + nbSyncs + " syncs, average group size "
+            + String.format( Locale.ROOT, "%.2f", getAverageGroupSize() ) + "]";
+    }
+}
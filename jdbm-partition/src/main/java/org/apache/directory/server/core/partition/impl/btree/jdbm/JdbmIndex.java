@@ -379,6 +379,8 @@ public class JdbmIndex<K> extends AbstractIndex<K, String>
         {
             reverse.put( partitionTxn, id, attrVal );
         }
+
+        keyAdded( partitionTxn, attrVal );
     }
 
 
@@ -396,6 +398,8 @@ public class JdbmIndex<K> extends AbstractIndex<K, String>
             {
                 reverse.remove( partitionTxn, id, attrVal );
             }
+
+            keyDropped( partitionTxn, attrVal );
         }
     }
 
@@ -418,7 +422,9 @@ public class JdbmIndex<K> extends AbstractIndex<K, String>
                     while ( values.next() )
                     {
                         // Remove the Key -> entryId from the index
-                        forward.remove( partitionTxn, values.get().getValue(), entryId );
+                        K key = values.get().getValue();
+                        forward.remove( partitionTxn, key, entryId );
+                        keyDropped( partitionTxn, key );
                     }
     
                     values.close();
@@ -433,6 +439,11 @@ public class JdbmIndex<K> extends AbstractIndex<K, String>
                 K key = reverse.get( partitionTxn, entryId );
 
                 forward.remove( partitionTxn, key );
+
+                if ( key != null )
+                {
+                    keyDropped( partitionTxn, key );
+                }
             }
 
             // Remove the id -> key from the reverse index
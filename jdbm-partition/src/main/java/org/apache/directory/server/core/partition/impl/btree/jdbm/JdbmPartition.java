@@ -57,6 +57,7 @@ import org.apache.directory.server.core.api.interceptor.context.MoveAndRenameOpe
 import org.apache.directory.server.core.api.interceptor.context.MoveOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.OperationContext;
 import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
+import org.apache.directory.server.core.api.metrics.MetricsRegistry;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionReadTxn;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
@@ -112,6 +113,15 @@ public class JdbmPartition extends AbstractBTreePartition
     /** the entry cache */
     private Cache< String, Entry > entryCache;
 
+    /** The time the log synchronizations wait for concurrent transactions, in ms. 0 to disable the group commit */
+    private long groupCommitWindow = 0L;
+
+    /** The maximum number of transactions written on disk by a single log synchronization */
+    private int groupCommitMaxSize = JdbmGroupCommit.DEFAULT_MAX_GROUP_SIZE;
+
+    /** The group commit coordinator, null if disabled */
+    private JdbmGroupCommit groupCommit;
+
 
     /**
      * Creates a store based on JDBM B+Trees.
@@ -535,7 +545,13 @@ public class JdbmPartition extends AbstractBTreePartition
                 buildUserIndex( beginReadTransaction(), indexToBuild );
             }
 
-            entryCache = Caffeine.newBuilder().maximumSize( cacheSize ).build();
+            entryCache = Caffeine.newBuilder().maximumSize( cacheSize ).recordStats().build();
+
+            if ( groupCommitWindow > 0L )
+            {
+                groupCommit = new JdbmGroupCommit( this, recMan, groupCommitWindow, groupCommitMaxSize );
+                LOG.info( "Grouping the log synchronizations of the {} partition within {} ms", id, groupCommitWindow );
+            }
 
             // Initialization of the context entry
             if ( ( suffixDn != null ) && ( contextEntry != null ) )
@@ -659,6 +675,59 @@ public class JdbmPartition extends AbstractBTreePartition
     }
 
 
+    /**
+     * @return The time the log synchronizations wait for concurrent transactions, in milliseconds
+     */
+    public long getGroupCommitWindow()
+    {
+        return groupCommitWindow;
+    }
+
+
+    /**
+     * Sets the time a log synchronization waits for the concurrent write transactions, so that
+     * their changes are written on disk at once. This is only used when syncOnWrite is set : an
+     * operation is still acknowledged once its changes are on disk, but the concurrent operations
+     * share the cost of the synchronization. Must be set before the partition is initialized.
+     *
+     * @param groupCommitWindow The delay in milliseconds. 0 to write the log for each transaction
+     */
+    public void setGroupCommitWindow( long groupCommitWindow )
+    {
+        this.groupCommitWindow = groupCommitWindow;
+    }
+
+
+    /**
+     * @return The maximum number of transactions written on disk by a single log synchronization
+     */
+    public int getGroupCommitMaxSize()
+    {
+        return groupCommitMaxSize;
+    }
+
+
+    /**
+     * Sets the maximum number of transactions written on disk by a single log synchronization.
+     * The synchronization doesn't wait for the end of the window once this number is reached.
+     *
+     * @param groupCommitMaxSize The maximum number of transactions in a group
+     */
+    public void setGroupCommitMaxSize( int groupCommitMaxSize )
+    {
+        this.groupCommitMaxSize = groupCommitMaxSize;
+    }
+
+
+    /**
+     * @return The group commit coordinator, or null if the group commit is disabled
+     */
+    public JdbmGroupCommit getGroupCommit()
+    {
+        return groupCommit;
+    }
+
+
     /**
      * This method is called when the synch thread is waking up, to write
      * the modified data.
@@ -678,19 +747,14 @@ public class JdbmPartition extends AbstractBTreePartition
             // Commit
             recMan.commit();
     
-            // And flush the journal
-            BaseRecordManager baseRecordManager = null;
-    
-            if ( recMan instanceof CacheRecordManager )
-            {
-                baseRecordManager = ( ( BaseRecordManager ) ( ( CacheRecordManager ) recMan ).getRecordManager() );
-            }
-            else
+            // And flush the journal, which also writes the transactions waiting for a group commit
+            long upTo = ( groupCommit != null ) ? groupCommit.getCommitted() : 0L;
+            JdbmGroupCommit.synchronizeLog( recMan );
+            
+            if ( groupCommit != null )
             {
-                baseRecordManager = ( ( BaseRecordManager ) recMan );
+                groupCommit.markDurable( upTo );
             }
-    
-            baseRecordManager.getTransactionManager().synchronizeLog();
         }
         catch ( IOException ioe )
         {
@@ -699,6 +763,23 @@ public class JdbmPartition extends AbstractBTreePartition
     }
 
 
+    /**
+     * Adds the alias indices of an alias entry written directly in the master table and in
+     * the RDN index, as the {@link JdbmPartitionBulkLoader} does.
+     *
+     * @param partitionTxn The transaction to use
+     * @param aliasId The alias entry ID
+     * @param aliasDn The alias entry Dn
+     * @param aliasTarget The aliased entry Dn
+     * @throws LdapException If the aliased entry can't be found
+     */
+    void buildAliasIndices( PartitionTxn partitionTxn, String aliasId, Dn aliasDn, Dn aliasTarget )
+        throws LdapException
+    {
+        addAliasIndices( partitionTxn, aliasId, aliasDn, aliasTarget );
+    }
+
+
     /**
      * Builds user defined indexes on a attributes by browsing all the entries present in master db
      * 
@@ -966,6 +1047,21 @@ public class JdbmPartition extends AbstractBTreePartition
     }
 
 
+    /**
+     * Registers the metrics of the caches, including the entry cache
+     */
+    @Override
+    public void registerMetrics( MetricsRegistry registry, String prefix )
+    {
+        super.registerMetrics( registry, prefix );
+
+        if ( entryCache != null )
+        {
+            registry.registerCache( prefix + "entryCache", entryCache );
+        }
+    }
+
+
     @Override
     public Entry lookupCache( String id )
     {
@@ -1002,6 +1098,6 @@ public class JdbmPartition extends AbstractBTreePartition
     @Override
     public PartitionWriteTxn beginWriteTransaction()
     {
-        return new JdbmPartitionWriteTxn( recMan, isSyncOnWrite() );
+        return new JdbmPartitionWriteTxn( recMan, isSyncOnWrite(), groupCommit );
     }
 }
@@ -0,0 +1,1207 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.jdbm;
+
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.csn.CsnFactory;
+import org.apache.directory.api.ldap.model.cursor.Tuple;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapNoSuchObjectException;
+import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.api.ldap.model.ldif.LdifEntry;
+import org.apache.directory.api.ldap.model.ldif.LdifReader;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.name.Rdn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.Normalizer;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.model.schema.comparators.UuidComparator;
+import org.apache.directory.api.ldap.schema.loader.LdifSchemaLoader;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.apache.directory.api.util.DateUtils;
+import org.apache.directory.api.util.TimeProvider;
+import org.apache.directory.api.util.exception.Exceptions;
+import org.apache.directory.server.constants.ApacheSchemaConstants;
+import org.apache.directory.server.constants.ServerDNConstants;
+import org.apache.directory.server.core.api.partition.Partition;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.core.shared.DefaultDnFactory;
+import org.apache.directory.server.xdbm.Index;
+import org.apache.directory.server.xdbm.ParentIdAndRdn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jdbm.helper.Serializer;
+
+
+/**
+ * Creates a JDBM partition from a LDIF file, offline. The entries don't go through the
+ * interceptor chain, nor through the partition add operation, which updates the B-trees one
+ * entry at a time, in random order, and updates the RDN index counters of all the ancestors.
+ * Instead :
+ * <ul>
+ * <li>the LDIF file is cut in chunks, parsed by concurrent threads. Each entry gets its ID (its
+ * entryUUID, generated if missing) and the operational attributes the server would have added</li>
+ * <li>the entries are sorted by Dn, parent first, with an external sort, so a single pass
+ * resolves the parent IDs and counts the children and descendants of each entry</li>
+ * <li>this pass produces the master table, RDN index and system and user indices tuples, which
+ * are sorted the same way, in the B-trees order</li>
+ * <li>each B-tree is then filled in key order, so that the insertions only ever touch its right
+ * edge</li>
+ * </ul>
+ * The memory used does not depend on the number of entries : each sorter keeps at most
+ * <em>sortBufferSize</em> tuples in memory, the rest being written in temporary files.
+ * <p>
+ * The LDIF file must contain the context entry. Entries which are outside of the suffix, which
+ * have no objectClass, which have no parent or which Dn is already used are rejected, and
+ * logged : when several records have the same Dn, the first one in the file is loaded, whatever
+ * the order the parsing threads complete in. The LDIF is not checked against the schema.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class JdbmPartitionBulkLoader
+{
+    /** The logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( JdbmPartitionBulkLoader.class );
+
+    /** The default number of tuples each sorter keeps in memory */
+    public static final int DEFAULT_SORT_BUFFER_SIZE = 100000;
+
+    /** The default number of entries parsed by a task */
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+
+    /** The default number of B-tree insertions between two commits */
+    public static final int DEFAULT_COMMIT_INTERVAL = 20000;
+
+    /** The default number of entries between two progress reports */
+    public static final int DEFAULT_PROGRESS_INTERVAL = 100000;
+
+    /** Separates the RDNs in the sort keys. Sorts before any other char, so the children follow their parent */
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    /** The schema manager */
+    private final SchemaManager schemaManager;
+
+    /** The partition ID */
+    private String partitionId;
+
+    /** The partition suffix */
+    private Dn suffixDn;
+
+    /** The directory the partition files are created in */
+    private File partitionDir;
+
+    /** The directory the temporary files are created in */
+    private File tmpDir;
+
+    /** The user indexed attributes */
+    private List<String> indexedAttributes = new ArrayList<>();
+
+    /** The number of threads parsing the LDIF file */
+    private int nbThreads = Runtime.getRuntime().availableProcessors();
+
+    /** The number of tuples each sorter keeps in memory */
+    private int sortBufferSize = DEFAULT_SORT_BUFFER_SIZE;
+
+    /** The number of B-tree insertions between two commits */
+    private int commitInterval = DEFAULT_COMMIT_INTERVAL;
+
+    /** The number of entries between two progress reports */
+    private int progressInterval = DEFAULT_PROGRESS_INTERVAL;
+
+    /** The creatorsName of the entries which don't have one */
+    private String creatorsName = ServerDNConstants.ADMIN_SYSTEM_DN;
+
+    /** The number of entries parsed */
+    private final AtomicLong nbParsed = new AtomicLong();
+
+    /** The number of entries stored in the partition */
+    private long nbLoaded;
+
+    /** The number of rejected entries */
+    private final AtomicLong nbRejected = new AtomicLong();
+
+    /** The first failure of a parsing thread */
+    private volatile Exception failure;
+
+    /** The greatest entryCSN, which is the partition contextCSN */
+    private String maxCsn;
+
+    /** The CSN factory used for the entries which don't have an entryCSN */
+    private final CsnFactory csnFactory = new CsnFactory( 0 );
+
+    /** The time the load started */
+    private long t0;
+
+    /** The attributes the loader uses */
+    private AttributeType objectClassAT;
+    private AttributeType entryUuidAT;
+    private AttributeType entryCsnAT;
+    private AttributeType entryDnAT;
+    private AttributeType administrativeRoleAT;
+    private AttributeType aliasedObjectNameAT;
+    private Normalizer objectClassNormalizer;
+
+
+    /**
+     * The tuples of an index, sorted in the forward and reverse tables order
+     */
+    private static class IndexSorters
+    {
+        private JdbmIndex<String> index;
+        private ExternalSorter<String, String> forward;
+        private ExternalSorter<String, String> reverse;
+    }
+
+
+    /**
+     * An entry, with the position of its record in the LDIF file
+     */
+    private static class LdifRecord
+    {
+        private final long position;
+        private final Entry entry;
+
+
+        private LdifRecord( long position, Entry entry )
+        {
+            this.position = position;
+            this.entry = entry;
+        }
+    }
+
+
+    /**
+     * Serializes the LDIF records : the position, followed by the serialized entry
+     */
+    private static class LdifRecordSerializer implements Serializer
+    {
+        private static final long serialVersionUID = 1L;
+
+        /** The entries serializer */
+        private final EntrySerializer entrySerializer;
+
+
+        private LdifRecordSerializer( SchemaManager schemaManager )
+        {
+            entrySerializer = new EntrySerializer( schemaManager );
+        }
+
+
+        @Override
+        public byte[] serialize( Object object ) throws IOException
+        {
+            LdifRecord ldifRecord = ( LdifRecord ) object;
+            byte[] entryBytes = entrySerializer.serialize( ldifRecord.entry );
+
+            return ByteBuffer.allocate( 8 + entryBytes.length ).putLong( ldifRecord.position ).put( entryBytes )
+                .array();
+        }
+
+
+        @Override
+        public Object deserialize( byte[] bytes ) throws IOException
+        {
+            long position = ByteBuffer.wrap( bytes ).getLong();
+            Entry entry = ( Entry ) entrySerializer.deserialize( Arrays.copyOfRange( bytes, 8, bytes.length ) );
+
+            return new LdifRecord( position, entry );
+        }
+    }
+
+
+    /**
+     * The order of the records with the same Dn : their position in the LDIF file
+     */
+    private static final Comparator<LdifRecord> POSITION_COMPARATOR = new Comparator<LdifRecord>()
+    {
+        @Override
+        public int compare( LdifRecord record1, LdifRecord record2 )
+        {
+            return Long.compare( record1.position, record2.position );
+        }
+    };
+
+
+    /**
+     * An entry of the RDN index waiting for the count of its descendants
+     */
+    private static class Frame
+    {
+        private String key;
+        private String id;
+        private ParentIdAndRdn parentIdAndRdn;
+    }
+
+
+    /**
+     * An alias, which indices are built once the RDN index is complete
+     */
+    private static class Alias
+    {
+        private String id;
+        private Dn dn;
+        private Dn target;
+    }
+
+
+    /**
+     * Creates a new instance of JdbmPartitionBulkLoader.
+     *
+     * @param schemaManager The schema manager
+     */
+    public JdbmPartitionBulkLoader( SchemaManager schemaManager )
+    {
+        this.schemaManager = schemaManager;
+    }
+
+
+    /**
+     * @param partitionId The ID of the partition to create
+     */
+    public void setPartitionId( String partitionId )
+    {
+        this.partitionId = partitionId;
+    }
+
+
+    /**
+     * @param suffixDn The suffix of the partition to create
+     */
+    public void setSuffixDn( Dn suffixDn )
+    {
+        this.suffixDn = suffixDn;
+    }
+
+
+    /**
+     * @param partitionDir The directory the partition files will be created in
+     */
+    public void setPartitionDir( File partitionDir )
+    {
+        this.partitionDir = partitionDir;
+    }
+
+
+    /**
+     * @param tmpDir The directory the temporary files will be created in. Defaults to the partition directory
+     */
+    public void setTmpDir( File tmpDir )
+    {
+        this.tmpDir = tmpDir;
+    }
+
+
+    /**
+     * Adds a user index
+     *
+     * @param attributeId The indexed attribute ID
+     */
+    public void addIndexedAttribute( String attributeId )
+    {
+        indexedAttributes.add( attributeId );
+    }
+
+
+    /**
+     * @param nbThreads The number of threads parsing the LDIF file
+     */
+    public void setNbThreads( int nbThreads )
+    {
+        this.nbThreads = Math.max( 1, nbThreads );
+    }
+
+
+    /**
+     * @param sortBufferSize The number of tuples each sorter keeps in memory
+     */
+    public void setSortBufferSize( int sortBufferSize )
+    {
+        this.sortBufferSize = Math.max( 1, sortBufferSize );
+    }
+
+
+    /**
+     * @param commitInterval The number of B-tree insertions between two commits
+     */
+    public void setCommitInterval( int commitInterval )
+    {
+        this.commitInterval = Math.max( 1, commitInterval );
+    }
+
+
+    /**
+     * @param progressInterval The number of entries between two progress reports
+     */
+    public void setProgressInterval( int progressInterval )
+    {
+        this.progressInterval = Math.max( 1, progressInterval );
+    }
+
+
+    /**
+     * @param creatorsName The creatorsName of the entries which don't have one
+     */
+    public void setCreatorsName( String creatorsName )
+    {
+        this.creatorsName = creatorsName;
+    }
+
+
+    /**
+     * @return The number of entries stored in the partition by the last load
+     */
+    public long getNbLoaded()
+    {
+        return nbLoaded;
+    }
+
+
+    /**
+     * @return The number of entries rejected by the last load
+     */
+    public long getNbRejected()
+    {
+        return nbRejected.get();
+    }
+
+
+    /**
+     * Loads the entries of a LDIF file in a new partition. The partition files must not exist.
+     *
+     * @param ldifFile The LDIF file
+     * @return The number of entries stored in the partition
+     * @throws LdapException If the partition can't be created or the LDIF file can't be read
+     */
+    public long load( File ldifFile ) throws LdapException
+    {
+        if ( ( partitionId == null ) || ( suffixDn == null ) || ( partitionDir == null ) )
+        {
+            throw new LdapOtherException( "The partition ID, suffix and directory must be set" );
+        }
+
+        if ( !suffixDn.isSchemaAware() )
+        {
+            suffixDn = new Dn( schemaManager, suffixDn );
+        }
+
+        if ( tmpDir == null )
+        {
+            tmpDir = partitionDir;
+        }
+
+        objectClassAT = schemaManager.getAttributeType( SchemaConstants.OBJECT_CLASS_AT );
+        entryUuidAT = schemaManager.getAttributeType( SchemaConstants.ENTRY_UUID_AT );
+        entryCsnAT = schemaManager.getAttributeType( SchemaConstants.ENTRY_CSN_AT );
+        entryDnAT = schemaManager.getAttributeType( SchemaConstants.ENTRY_DN_AT );
+        administrativeRoleAT = schemaManager.getAttributeType( SchemaConstants.ADMINISTRATIVE_ROLE_AT );
+        aliasedObjectNameAT = schemaManager.getAttributeType( SchemaConstants.ALIASED_OBJECT_NAME_AT );
+        objectClassNormalizer = objectClassAT.getEquality().getNormalizer();
+
+        nbParsed.set( 0L );
+        nbRejected.set( 0L );
+        nbLoaded = 0L;
+        failure = null;
+        maxCsn = null;
+        t0 = System.currentTimeMillis();
+
+        JdbmPartition partition = createPartition();
+
+        // The records with the same Dn are sorted by position, so the first one in the file is kept
+        ExternalSorter<String, LdifRecord> dnSorter = new ExternalSorter<>( partitionId + "-dn", tmpDir,
+            sortBufferSize, Comparator.<String>naturalOrder(), POSITION_COMPARATOR, StringSerializer.INSTANCE,
+            new LdifRecordSerializer( schemaManager ) );
+        List<ExternalSorter<?, ?>> sorters = new ArrayList<>();
+        sorters.add( dnSorter );
+
+        try
+        {
+            // Parse the entries, and sort them by Dn
+            parse( ldifFile, dnSorter );
+
+            // Resolve the parent IDs, and produce the tuples of all the B-trees
+            JdbmMasterTable master = ( JdbmMasterTable ) partition.getMasterTable();
+            ExternalSorter<String, Entry> masterSorter = new ExternalSorter<>( partitionId + "-master", tmpDir,
+                sortBufferSize, UuidComparator.INSTANCE, null, UuidSerializer.INSTANCE,
+                new EntrySerializer( schemaManager ) );
+            sorters.add( masterSorter );
+
+            JdbmRdnIndex rdnIdx = ( JdbmRdnIndex ) partition.getRdnIndex();
+            ParentIdAndRdnSerializer parentIdAndRdnSerializer = new ParentIdAndRdnSerializer( schemaManager );
+            ExternalSorter<ParentIdAndRdn, String> rdnForwardSorter = new ExternalSorter<>( partitionId + "-rdn",
+                tmpDir, sortBufferSize, rdnIdx.forward.getKeyComparator(), null, parentIdAndRdnSerializer,
+                UuidSerializer.INSTANCE );
+            ExternalSorter<String, ParentIdAndRdn> rdnReverseSorter = new ExternalSorter<>( partitionId + "-rdnr",
+                tmpDir, sortBufferSize, UuidComparator.INSTANCE, null, UuidSerializer.INSTANCE,
+                parentIdAndRdnSerializer );
+            sorters.add( rdnForwardSorter );
+            sorters.add( rdnReverseSorter );
+
+            IndexSorters objectClassSorters = createIndexSorters( partition.getObjectClassIndex(), sorters );
+            IndexSorters entryCsnSorters = createIndexSorters( partition.getEntryCsnIndex(), sorters );
+            IndexSorters adminRoleSorters = createIndexSorters( partition.getAdministrativeRoleIndex(), sorters );
+            IndexSorters presenceSorters = createIndexSorters( partition.getPresenceIndex(), sorters );
+            List<IndexSorters> userSorters = new ArrayList<>();
+            Iterator<String> userIndices = partition.getUserIndices();
+
+            while ( userIndices.hasNext() )
+            {
+                AttributeType attributeType = schemaManager.getAttributeType( userIndices.next() );
+                userSorters.add( createIndexSorters( partition.getUserIndex( attributeType ), sorters ) );
+            }
+
+            List<Alias> aliases = new ArrayList<>();
+
+            dnSorter.sort();
+            LOG.info( "Sorted {} entries by Dn in {} runs ({} ms)", dnSorter.getCount(), dnSorter.getNbRuns(),
+                elapsed() );
+
+            Frame[] stack = new Frame[16];
+            int top = -1;
+            String previousKey = null;
+            Tuple<String, LdifRecord> tuple;
+
+            while ( ( tuple = dnSorter.next() ) != null )
+            {
+                String key = tuple.getKey();
+                Entry entry = tuple.getValue().entry;
+
+                if ( key.equals( previousKey ) )
+                {
+                    reject( entry.getDn(), "an entry with the same Dn has already been loaded" );
+                    continue;
+                }
+
+                previousKey = key;
+
+                // The entries which aren't ancestors of this one are complete
+                while ( ( top >= 0 ) && !isAncestor( stack[top].key, key ) )
+                {
+                    complete( stack, top--, rdnForwardSorter, rdnReverseSorter );
+                }
+
+                String id = entry.get( entryUuidAT ).getString();
+                Dn dn = entry.getDn();
+                ParentIdAndRdn parentIdAndRdn;
+
+                if ( key.isEmpty() )
+                {
+                    // The context entry
+                    parentIdAndRdn = new ParentIdAndRdn( Partition.ROOT_ID, suffixDn.getRdns() );
+
+                    if ( maxCsn != null )
+                    {
+                        entry.put( SchemaConstants.CONTEXT_CSN_AT, maxCsn );
+                    }
+                }
+                else if ( ( top >= 0 ) && isParent( stack[top].key, key ) )
+                {
+                    Frame parent = stack[top];
+                    parentIdAndRdn = new ParentIdAndRdn( parent.id, dn.getRdn() );
+                    parent.parentIdAndRdn.setNbChildren( parent.parentIdAndRdn.getNbChildren() + 1 );
+                }
+                else
+                {
+                    reject( dn, "its parent entry does not exist" );
+                    continue;
+                }
+
+                Frame frame = new Frame();
+                frame.key = key;
+                frame.id = id;
+                frame.parentIdAndRdn = parentIdAndRdn;
+
+                if ( ++top == stack.length )
+                {
+                    Frame[] newStack = new Frame[stack.length * 2];
+                    System.arraycopy( stack, 0, newStack, 0, stack.length );
+                    stack = newStack;
+                }
+
+                stack[top] = frame;
+
+                // The index tuples
+                Attribute objectClass = entry.get( objectClassAT );
+
+                for ( Value value : objectClass )
+                {
+                    String normalizedOc = objectClassNormalizer.normalize( value.getString() );
+
+                    if ( !SchemaConstants.TOP_OC_OID.equals( normalizedOc ) )
+                    {
+                        addIndexTuple( objectClassSorters, normalizedOc, id );
+                    }
+                }
+
+                if ( objectClass.contains( SchemaConstants.ALIAS_OC ) )
+                {
+                    Alias alias = new Alias();
+                    alias.id = id;
+                    alias.dn = dn;
+                    alias.target = new Dn( schemaManager, entry.get( aliasedObjectNameAT ).getString() );
+                    aliases.add( alias );
+                }
+
+                addIndexTuple( entryCsnSorters, entry.get( entryCsnAT ).getString(), id );
+
+                if ( entry.containsAttribute( administrativeRoleAT ) )
+                {
+                    for ( Value value : entry.get( administrativeRoleAT ) )
+                    {
+                        addIndexTuple( adminRoleSorters, value.getString(), id );
+                    }
+
+                    addIndexTuple( presenceSorters, administrativeRoleAT.getOid(), id );
+                }
+
+                for ( IndexSorters userIndex : userSorters )
+                {
+                    Attribute attribute = entry.get( userIndex.index.getAttribute() );
+
+                    if ( attribute != null )
+                    {
+                        for ( Value value : attribute )
+                        {
+                            addIndexTuple( userIndex, value.getNormalized(), id );
+                        }
+
+                        addIndexTuple( presenceSorters, userIndex.index.getAttribute().getOid(), id );
+                    }
+                }
+
+                entry.put( ApacheSchemaConstants.ENTRY_PARENT_ID_AT, parentIdAndRdn.getParentId() );
+                masterSorter.add( id, entry );
+                nbLoaded++;
+            }
+
+            while ( top >= 0 )
+            {
+                complete( stack, top--, rdnForwardSorter, rdnReverseSorter );
+            }
+
+            dnSorter.close();
+
+            if ( rdnForwardSorter.getCount() == 0 )
+            {
+                throw new LdapNoSuchObjectException( "The LDIF file does not contain the context entry "
+                    + suffixDn.getName() );
+            }
+
+            LOG.info( "Resolved the hierarchy of {} entries, {} rejected ({} ms)", nbLoaded, nbRejected.get(),
+                elapsed() );
+
+            // Now, fill the B-trees
+            build( partition, "master table", masterSorter, master );
+            build( partition, "RDN index", rdnForwardSorter, rdnIdx.forward );
+            build( partition, "RDN reverse index", rdnReverseSorter, rdnIdx.reverse );
+            build( partition, objectClassSorters );
+            build( partition, entryCsnSorters );
+            build( partition, adminRoleSorters );
+            build( partition, presenceSorters );
+
+            for ( IndexSorters userIndex : userSorters )
+            {
+                build( partition, userIndex );
+            }
+
+            if ( !aliases.isEmpty() )
+            {
+                PartitionTxn partitionTxn = partition.beginWriteTransaction();
+
+                for ( Alias alias : aliases )
+                {
+                    partition.buildAliasIndices( partitionTxn, alias.id, alias.dn, alias.target );
+                }
+
+                partitionTxn.commit();
+                LOG.info( "Built the indices of {} aliases ({} ms)", aliases.size(), elapsed() );
+            }
+
+            partition.sync();
+            LOG.info( "Loaded {} entries in the {} partition, {} rejected, in {} ms", nbLoaded, partitionId,
+                nbRejected.get(), elapsed() );
+
+            return nbLoaded;
+        }
+        catch ( LdapException le )
+        {
+            throw le;
+        }
+        catch ( Exception e )
+        {
+            throw new LdapOtherException( e.getMessage(), e );
+        }
+        finally
+        {
+            for ( ExternalSorter<?, ?> sorter : sorters )
+            {
+                sorter.close();
+            }
+
+            partition.destroy( null );
+        }
+    }
+
+
+    /**
+     * Creates the partition, and checks it's empty
+     */
+    private JdbmPartition createPartition() throws LdapException
+    {
+        JdbmPartition partition = new JdbmPartition( schemaManager, new DefaultDnFactory( schemaManager, 1000 ) );
+        partition.setId( partitionId );
+        partition.setSuffixDn( suffixDn );
+        partition.setPartitionPath( partitionDir.toURI() );
+        partition.setSyncOnWrite( false );
+
+        for ( String attributeId : indexedAttributes )
+        {
+            JdbmIndex<?> index = new JdbmIndex<>( attributeId, false );
+            index.setWkDirPath( partitionDir.toURI() );
+            partition.addIndex( index );
+        }
+
+        partition.initialize();
+
+        long count;
+
+        try ( PartitionTxn partitionTxn = partition.beginReadTransaction() )
+        {
+            count = partition.count( partitionTxn );
+        }
+        catch ( IOException ioe )
+        {
+            partition.destroy( null );
+
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+
+        if ( count != 0L )
+        {
+            partition.destroy( null );
+
+            throw new LdapOtherException( "The partition " + partitionId + " in " + partitionDir + " is not empty" );
+        }
+
+        return partition;
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private IndexSorters createIndexSorters( Index<?, String> index, List<ExternalSorter<?, ?>> sorters )
+    {
+        IndexSorters indexSorters = new IndexSorters();
+        indexSorters.index = ( JdbmIndex<String> ) index;
+        String name = partitionId + "-" + index.getAttribute().getName();
+
+        indexSorters.forward = new ExternalSorter<>( name, tmpDir, sortBufferSize,
+            indexSorters.index.forward.getKeyComparator(), UuidComparator.INSTANCE, StringSerializer.INSTANCE,
+            UuidSerializer.INSTANCE );
+        sorters.add( indexSorters.forward );
+
+        if ( indexSorters.index.reverse != null )
+        {
+            indexSorters.reverse = new ExternalSorter<>( name + "r", tmpDir, sortBufferSize,
+                UuidComparator.INSTANCE, indexSorters.index.reverse.getValueComparator(), UuidSerializer.INSTANCE,
+                StringSerializer.INSTANCE );
+            sorters.add( indexSorters.reverse );
+        }
+
+        return indexSorters;
+    }
+
+
+    private void addIndexTuple( IndexSorters indexSorters, String key, String id ) throws IOException
+    {
+        indexSorters.forward.add( key, id );
+
+        if ( indexSorters.reverse != null )
+        {
+            indexSorters.reverse.add( id, key );
+        }
+    }
+
+
+    /**
+     * Parses the LDIF file with concurrent threads, and sorts the entries by Dn
+     */
+    private void parse( File ldifFile, final ExternalSorter<String, LdifRecord> dnSorter ) throws Exception
+    {
+        // The queue is bounded, the reading thread parses the chunks itself when it's full
+        ThreadPoolExecutor executor = new ThreadPoolExecutor( nbThreads, nbThreads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>( nbThreads * 2 ), new ThreadPoolExecutor.CallerRunsPolicy() );
+
+        LOG.info( "Parsing {} with {} threads", ldifFile, nbThreads );
+
+        try ( BufferedReader reader = Files.newBufferedReader( ldifFile.toPath(), StandardCharsets.UTF_8 ) )
+        {
+            StringBuilder chunk = new StringBuilder();
+            int nbRecords = 0;
+            long firstRecord = 0L;
+            boolean inRecord = false;
+            String line;
+
+            while ( ( ( line = reader.readLine() ) != null ) && ( failure == null ) )
+            {
+                if ( line.isEmpty() )
+                {
+                    if ( inRecord )
+                    {
+                        inRecord = false;
+                        nbRecords++;
+
+                        if ( nbRecords == DEFAULT_CHUNK_SIZE )
+                        {
+                            executor.execute( new ParseTask( chunk.toString(), firstRecord, dnSorter ) );
+                            firstRecord += nbRecords;
+                            chunk.setLength( 0 );
+                            nbRecords = 0;
+                            continue;
+                        }
+                    }
+                }
+                else if ( line.charAt( 0 ) != '#' )
+                {
+                    inRecord = true;
+                }
+
+                chunk.append( line ).append( '\n' );
+            }
+
+            if ( ( chunk.length() > 0 ) && ( failure == null ) )
+            {
+                executor.execute( new ParseTask( chunk.toString(), firstRecord, dnSorter ) );
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+            executor.awaitTermination( Long.MAX_VALUE, TimeUnit.MILLISECONDS );
+        }
+
+        if ( failure != null )
+        {
+            throw failure;
+        }
+
+        LOG.info( "Parsed {} entries ({} ms)", nbParsed.get(), elapsed() );
+    }
+
+
+    /**
+     * Parses a chunk of the LDIF file
+     */
+    private class ParseTask implements Runnable
+    {
+        private final String ldif;
+
+        /** The position of the first record of the chunk in the file */
+        private final long firstRecord;
+        private final ExternalSorter<String, LdifRecord> dnSorter;
+
+
+        ParseTask( String ldif, long firstRecord, ExternalSorter<String, LdifRecord> dnSorter )
+        {
+            this.ldif = ldif;
+            this.firstRecord = firstRecord;
+            this.dnSorter = dnSorter;
+        }
+
+
+        @Override
+        public void run()
+        {
+            if ( failure != null )
+            {
+                return;
+            }
+
+            try ( LdifReader reader = new LdifReader( schemaManager ) )
+            {
+                long position = firstRecord;
+
+                for ( LdifEntry ldifEntry : reader.parseLdif( ldif ) )
+                {
+                    position++;
+
+                    if ( !ldifEntry.isChangeAdd() && !ldifEntry.isLdifContent() )
+                    {
+                        reject( ldifEntry.getDn(), "only entries can be loaded" );
+                        continue;
+                    }
+
+                    prepare( new DefaultEntry( schemaManager, ldifEntry.getEntry() ), position, dnSorter );
+
+                    long parsed = nbParsed.incrementAndGet();
+
+                    if ( parsed % progressInterval == 0 )
+                    {
+                        long delta = Math.max( 1L, elapsed() );
+                        LOG.info( "Parsed {} entries ({} entries/s)", parsed, parsed * 1000L / delta );
+                    }
+                }
+            }
+            catch ( Exception e )
+            {
+                if ( failure == null )
+                {
+                    failure = e;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Adds the operational attributes the server would have added, and sorts the entry by Dn
+     */
+    private void prepare( Entry entry, long position, ExternalSorter<String, LdifRecord> dnSorter )
+        throws LdapException, IOException
+    {
+        Dn dn = entry.getDn();
+
+        if ( !dn.isSchemaAware() )
+        {
+            dn = new Dn( schemaManager, dn );
+            entry.setDn( dn );
+        }
+
+        if ( !dn.equals( suffixDn ) && !dn.isDescendantOf( suffixDn ) )
+        {
+            reject( dn, "it is not in the partition" );
+            return;
+        }
+
+        if ( !entry.containsAttribute( objectClassAT ) )
+        {
+            reject( dn, "it has no objectClass" );
+            return;
+        }
+
+        if ( !entry.containsAttribute( entryUuidAT ) )
+        {
+            entry.add( entryUuidAT, UUID.randomUUID().toString() );
+        }
+
+        if ( !entry.containsAttribute( entryCsnAT ) )
+        {
+            synchronized ( csnFactory )
+            {
+                entry.add( entryCsnAT, csnFactory.newInstance().toString() );
+            }
+        }
+
+        if ( !entry.containsAttribute( SchemaConstants.CREATORS_NAME_AT ) )
+        {
+            entry.add( SchemaConstants.CREATORS_NAME_AT, creatorsName );
+        }
+
+        if ( !entry.containsAttribute( SchemaConstants.CREATE_TIMESTAMP_AT ) )
+        {
+            entry.add( SchemaConstants.CREATE_TIMESTAMP_AT, DateUtils.getGeneralizedTime( TimeProvider.DEFAULT ) );
+        }
+
+        entry.removeAttributes( entryDnAT );
+
+        String csn = entry.get( entryCsnAT ).getString();
+
+        synchronized ( this )
+        {
+            if ( ( maxCsn == null ) || ( csn.compareTo( maxCsn ) > 0 ) )
+            {
+                maxCsn = csn;
+            }
+        }
+
+        dnSorter.add( getSortKey( dn ), new LdifRecord( position, entry ) );
+    }
+
+
+    /**
+     * The sort key of an entry : the normalized RDNs below the suffix, starting from the top.
+     * The context entry key is empty.
+     */
+    private String getSortKey( Dn dn ) throws LdapException
+    {
+        List<Rdn> rdns = dn.getDescendantOf( suffixDn ).getRdns();
+        StringBuilder key = new StringBuilder();
+
+        for ( int i = rdns.size() - 1; i >= 0; i-- )
+        {
+            key.append( rdns.get( i ).getNormName() );
+
+            if ( i > 0 )
+            {
+                key.append( KEY_SEPARATOR );
+            }
+        }
+
+        return key.toString();
+    }
+
+
+    private static boolean isAncestor( String ancestorKey, String key )
+    {
+        if ( ancestorKey.isEmpty() )
+        {
+            return !key.isEmpty();
+        }
+
+        return ( key.length() > ancestorKey.length() ) && ( key.charAt( ancestorKey.length() ) == KEY_SEPARATOR )
+            && key.startsWith( ancestorKey );
+    }
+
+
+    private static boolean isParent( String parentKey, String key )
+    {
+        return isAncestor( parentKey, key ) && ( key.indexOf( KEY_SEPARATOR, parentKey.length() + 1 ) == -1 );
+    }
+
+
+    /**
+     * All the descendants of an entry have been seen : its RDN index tuples are complete
+     */
+    private void complete( Frame[] stack, int position, ExternalSorter<ParentIdAndRdn, String> rdnForwardSorter,
+        ExternalSorter<String, ParentIdAndRdn> rdnReverseSorter ) throws IOException
+    {
+        Frame frame = stack[position];
+        stack[position] = null;
+
+        if ( position > 0 )
+        {
+            ParentIdAndRdn parent = stack[position - 1].parentIdAndRdn;
+            parent.setNbDescendants( parent.getNbDescendants() + frame.parentIdAndRdn.getNbDescendants() + 1 );
+        }
+
+        rdnForwardSorter.add( frame.parentIdAndRdn, frame.id );
+        rdnReverseSorter.add( frame.id, frame.parentIdAndRdn );
+    }
+
+
+    private void reject( Dn dn, String reason )
+    {
+        nbRejected.incrementAndGet();
+        LOG.warn( "Rejecting the entry {} : {}", dn, reason );
+    }
+
+
+    private void build( JdbmPartition partition, IndexSorters indexSorters ) throws Exception
+    {
+        String name = indexSorters.index.getAttribute().getName();
+
+        build( partition, name + " index", indexSorters.forward, indexSorters.index.forward );
+
+        if ( indexSorters.reverse != null )
+        {
+            build( partition, name + " reverse index", indexSorters.reverse, indexSorters.index.reverse );
+        }
+    }
+
+
+    /**
+     * Fills a B-tree with the sorted tuples. They are inserted in the B-tree order, and
+     * committed by batches.
+     */
+    private <K, V> void build( JdbmPartition partition, String name, ExternalSorter<K, V> sorter,
+        JdbmTable<K, V> table ) throws Exception
+    {
+        sorter.sort();
+
+        PartitionTxn partitionTxn = partition.beginWriteTransaction();
+        long count = 0L;
+        Tuple<K, V> tuple;
+
+        while ( ( tuple = sorter.next() ) != null )
+        {
+            table.put( partitionTxn, tuple.getKey(), tuple.getValue() );
+            count++;
+
+            if ( count % commitInterval == 0 )
+            {
+                partitionTxn.commit();
+                partitionTxn = partition.beginWriteTransaction();
+            }
+
+            if ( count % progressInterval == 0 )
+            {
+                LOG.info( "Inserted {} tuples in the {} ({} ms)", count, name, elapsed() );
+            }
+        }
+
+        partitionTxn.commit();
+        sorter.close();
+
+        LOG.info( "Built the {} : {} tuples ({} ms)", name, count, elapsed() );
+    }
+
+
+    private long elapsed()
+    {
+        return System.currentTimeMillis() - t0;
+    }
+
+
+    private static void usage()
+    {
+        System.out.println( "Usage : java " + JdbmPartitionBulkLoader.class.getName() + " <options>" );
+        System.out.println( "    -i <file>      : the LDIF file to load" );
+        System.out.println( "    -o <dir>       : the directory the partition files are created in" );
+        System.out.println( "    -id <id>       : the partition ID" );
+        System.out.println( "    -suffix <dn>   : the partition suffix" );
+        System.out.println( "    -index <attr>  : (optional, repeatable) an indexed attribute" );
+        System.out.println( "    -schema <dir>  : (optional) an extracted schema directory, defaults to the bundled schema" );
+        System.out.println( "    -tmp <dir>     : (optional) the directory the temporary files are created in" );
+        System.out.println( "    -threads <n>   : (optional) the number of parsing threads" );
+        System.out.println( "    -buffer <n>    : (optional) the number of tuples each sorter keeps in memory, default is "
+            + DEFAULT_SORT_BUFFER_SIZE );
+    }
+
+
+    /**
+     * Loads a LDIF file in a new JDBM partition.
+     *
+     * @param args The command line options
+     * @throws Exception If the load failed
+     */
+    public static void main( String[] args ) throws Exception
+    {
+        File ldifFile = null;
+        File outDir = null;
+        File schemaDir = null;
+        File tmpDir = null;
+        String id = null;
+        String suffix = null;
+        List<String> indexes = new ArrayList<>();
+        int threads = Runtime.getRuntime().availableProcessors();
+        int buffer = DEFAULT_SORT_BUFFER_SIZE;
+
+        for ( int i = 0; i < args.length - 1; i += 2 )
+        {
+            String value = args[i + 1];
+
+            switch ( args[i] )
+            {
+                case "-i":
+                    ldifFile = new File( value );
+                    break;
+
+                case "-o":
+                    outDir = new File( value );
+                    break;
+
+                case "-id":
+                    id = value;
+                    break;
+
+                case "-suffix":
+                    suffix = value;
+                    break;
+
+                case "-index":
+                    indexes.add( value );
+                    break;
+
+                case "-schema":
+                    schemaDir = new File( value );
+                    break;
+
+                case "-tmp":
+                    tmpDir = new File( value );
+                    break;
+
+                case "-threads":
+                    threads = Integer.parseInt( value );
+                    break;
+
+                case "-buffer":
+                    buffer = Integer.parseInt( value );
+                    break;
+
+                default:
+                    usage();
+                    return;
+            }
+        }
+
+        if ( ( ldifFile == null ) || ( outDir == null ) || ( id == null ) || ( suffix == null ) )
+        {
+            usage();
+            return;
+        }
+
+        SchemaManager schemaManager;
+
+        if ( schemaDir != null )
+        {
+            schemaManager = new DefaultSchemaManager( new LdifSchemaLoader( schemaDir ) );
+        }
+        else
+        {
+            schemaManager = new DefaultSchemaManager();
+        }
+
+        if ( !schemaManager.loadAllEnabled() )
+        {
+            System.out.println( "Cannot load the schema : " + Exceptions.printErrors( schemaManager.getErrors() ) );
+            return;
+        }
+
+        JdbmPartitionBulkLoader loader = new JdbmPartitionBulkLoader( schemaManager );
+        loader.setPartitionId( id );
+        loader.setSuffixDn( new Dn( schemaManager, suffix ) );
+        loader.setPartitionDir( outDir );
+        loader.setTmpDir( tmpDir );
+        loader.setNbThreads( threads );
+        loader.setSortBufferSize( buffer );
+
+        for ( String index : indexes )
+        {
+            loader.addIndexedAttribute( index );
+        }
+
+        long t0 = System.currentTimeMillis();
+        long loaded = loader.load( ldifFile );
+
+        System.out.println( "Loaded " + loaded + " entries, rejected " + loader.getNbRejected() + ", in "
+            + ( System.currentTimeMillis() - t0 ) + " ms" );
+    }
+}
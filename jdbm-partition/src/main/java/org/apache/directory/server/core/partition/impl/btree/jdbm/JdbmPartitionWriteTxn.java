@@ -24,8 +24,6 @@ import java.io.IOException;
 import org.apache.directory.server.core.api.partition.PartitionWriteTxn;
 
 import jdbm.RecordManager;
-import jdbm.recman.BaseRecordManager;
-import jdbm.recman.CacheRecordManager;
 
 /**
  * The JDBM partition write transaction
@@ -40,6 +38,12 @@ public class JdbmPartitionWriteTxn extends PartitionWriteTxn
     /** A flag used to flush data immediately or not */
     private boolean syncOnWrite = false;
     
+    /** The group commit coordinator, if the log synchronizations are grouped */
+    private JdbmGroupCommit groupCommit;
+    
+    /** The ticket of this transaction in the group commit, 0 if none */
+    private long ticket;
+    
     /**
      * Create an instance of JdbmPartitionWriteTxn
      * 
@@ -47,9 +51,23 @@ public class JdbmPartitionWriteTxn extends PartitionWriteTxn
      * @param syncOnWrite If we want to data to be flushed on each write
      */
     public JdbmPartitionWriteTxn( RecordManager recordManager, boolean syncOnWrite )
+    {
+        this( recordManager, syncOnWrite, null );
+    }
+    
+    
+    /**
+     * Create an instance of JdbmPartitionWriteTxn
+     * 
+     * @param recordManager The RecordManager instance
+     * @param syncOnWrite If we want to data to be flushed on each write
+     * @param groupCommit The group commit coordinator, or null if the log is written by each transaction
+     */
+    public JdbmPartitionWriteTxn( RecordManager recordManager, boolean syncOnWrite, JdbmGroupCommit groupCommit )
     {
         this.recordManager = recordManager;
         this.syncOnWrite = syncOnWrite;
+        this.groupCommit = groupCommit;
     }
     
     
@@ -62,21 +80,57 @@ public class JdbmPartitionWriteTxn extends PartitionWriteTxn
         recordManager.commit();
         
         // And flush the journal
-        BaseRecordManager baseRecordManager = null;
+        if ( syncOnWrite )
+        {
+            if ( groupCommit != null )
+            {
+                // The transactions committed so far are written on disk too
+                long upTo = groupCommit.getCommitted();
+                JdbmGroupCommit.synchronizeLog( recordManager );
+                groupCommit.markDurable( upTo );
+            }
+            else
+            {
+                JdbmGroupCommit.synchronizeLog( recordManager );
+            }
+        }
 
-        if ( recordManager instanceof CacheRecordManager )
+        committed();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void commitNoWait() throws IOException
+    {
+        if ( syncOnWrite && ( groupCommit != null ) )
         {
-            baseRecordManager = ( ( BaseRecordManager ) ( ( CacheRecordManager ) recordManager ).getRecordManager() );
+            recordManager.commit();
+            
+            // The journal will be flushed with the concurrent transactions
+            ticket = groupCommit.committed();
+            committed();
         }
         else
         {
-            baseRecordManager = ( ( BaseRecordManager ) recordManager );
+            commit();
         }
+    }
 
 
-        if ( syncOnWrite )
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void awaitDurability() throws IOException
+    {
+        if ( ticket != 0L )
         {
-            baseRecordManager.getTransactionManager().synchronizeLog();
+            long waited = ticket;
+            ticket = 0L;
+            groupCommit.awaitDurability( waited );
         }
     }
 
@@ -88,6 +142,8 @@ public class JdbmPartitionWriteTxn extends PartitionWriteTxn
     public void abort() throws IOException
     {
         recordManager.rollback();
+
+        aborted();
     }
 
 
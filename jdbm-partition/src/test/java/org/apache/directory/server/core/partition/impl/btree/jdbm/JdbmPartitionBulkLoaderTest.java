@@ -0,0 +1,273 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.jdbm;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.cursor.Tuple;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.extractor.SchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.extractor.impl.DefaultSchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.loader.LdifSchemaLoader;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.apache.directory.api.util.FileUtils;
+import org.apache.directory.api.util.exception.Exceptions;
+import org.apache.directory.server.constants.ApacheSchemaConstants;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.core.shared.DefaultDnFactory;
+import org.apache.directory.server.xdbm.ParentIdAndRdn;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Tests the JdbmPartitionBulkLoader : the loaded partition must be the one the add operations
+ * would have created.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class JdbmPartitionBulkLoaderTest
+{
+    private static SchemaManager schemaManager;
+
+    /** The temporary directory the files will be created in */
+    private static Path tempDir;
+
+    /** The number of persons in the LDIF file */
+    private static final int NB_PERSONS = 50;
+
+
+    @BeforeAll
+    public static void setup() throws Exception
+    {
+        tempDir = Files.createTempDirectory( JdbmPartitionBulkLoaderTest.class.getSimpleName() );
+
+        File schemaRepository = new File( tempDir.toFile(), "schema" );
+        SchemaLdifExtractor extractor = new DefaultSchemaLdifExtractor( tempDir.toFile() );
+        extractor.extractOrCopy( true );
+        schemaManager = new DefaultSchemaManager( new LdifSchemaLoader( schemaRepository ) );
+
+        if ( !schemaManager.loadAllEnabled() )
+        {
+            fail( "Schema load failed : " + Exceptions.printErrors( schemaManager.getErrors() ) );
+        }
+    }
+
+
+    @AfterAll
+    public static void cleanup() throws Exception
+    {
+        FileUtils.deleteDirectory( tempDir.toFile() );
+    }
+
+
+    /**
+     * Writes a LDIF file where the children come before their parents, with a few invalid entries
+     */
+    private File writeLdif() throws IOException
+    {
+        StringBuilder ldif = new StringBuilder();
+        ldif.append( "version: 1\n\n" );
+
+        for ( int i = NB_PERSONS - 1; i >= 0; i-- )
+        {
+            ldif.append( "dn: cn=user" ).append( i ).append( ",ou=people,dc=example,dc=com\n" );
+            ldif.append( "objectClass: top\n" );
+            ldif.append( "objectClass: person\n" );
+            ldif.append( "cn: user" ).append( i ).append( '\n' );
+            ldif.append( "sn: user" ).append( i ).append( "\n\n" );
+
+            if ( i == NB_PERSONS / 2 )
+            {
+                ldif.append( "dn: dc=example,dc=com\n" );
+                ldif.append( "objectClass: top\n" );
+                ldif.append( "objectClass: domain\n" );
+                ldif.append( "dc: example\n\n" );
+            }
+        }
+
+        ldif.append( "# The person's parent\n" );
+        ldif.append( "dn: ou=people,dc=example,dc=com\n" );
+        ldif.append( "objectClass: top\n" );
+        ldif.append( "objectClass: organizationalUnit\n" );
+        ldif.append( "ou: people\n\n" );
+
+        // An entry without parent
+        ldif.append( "dn: cn=orphan,ou=missing,dc=example,dc=com\n" );
+        ldif.append( "objectClass: person\n" );
+        ldif.append( "cn: orphan\n" );
+        ldif.append( "sn: orphan\n\n" );
+
+        // An entry already loaded, in another sort run
+        ldif.append( "dn: cn=user1,ou=people,dc=example,dc=com\n" );
+        ldif.append( "objectClass: person\n" );
+        ldif.append( "cn: user1\n" );
+        ldif.append( "sn: duplicate\n\n" );
+
+        // An entry outside of the partition
+        ldif.append( "dn: ou=other,dc=example,dc=org\n" );
+        ldif.append( "objectClass: organizationalUnit\n" );
+        ldif.append( "ou: other\n" );
+
+        File ldifFile = new File( tempDir.toFile(), "load.ldif" );
+        Files.write( ldifFile.toPath(), ldif.toString().getBytes( StandardCharsets.UTF_8 ) );
+
+        return ldifFile;
+    }
+
+
+    @Test
+    public void testLoad() throws Exception
+    {
+        File partitionDir = new File( tempDir.toFile(), "example" );
+        Dn suffixDn = new Dn( schemaManager, "dc=example,dc=com" );
+
+        JdbmPartitionBulkLoader loader = new JdbmPartitionBulkLoader( schemaManager );
+        loader.setPartitionId( "example" );
+        loader.setSuffixDn( suffixDn );
+        loader.setPartitionDir( partitionDir );
+        loader.addIndexedAttribute( SchemaConstants.CN_AT );
+        loader.setNbThreads( 3 );
+
+        // Force the sorters to write runs
+        loader.setSortBufferSize( 7 );
+        loader.setCommitInterval( 10 );
+
+        assertEquals( NB_PERSONS + 2L, loader.load( writeLdif() ) );
+        assertEquals( 3L, loader.getNbRejected() );
+
+        // Now, open the partition
+        JdbmPartition partition = new JdbmPartition( schemaManager, new DefaultDnFactory( schemaManager, 100 ) );
+        partition.setId( "example" );
+        partition.setSuffixDn( suffixDn );
+        partition.setPartitionPath( partitionDir.toURI() );
+        partition.setSyncOnWrite( false );
+        JdbmIndex<String> cnIndex = new JdbmIndex<>( SchemaConstants.CN_AT, false );
+        cnIndex.setWkDirPath( partitionDir.toURI() );
+        partition.addIndex( cnIndex );
+        partition.initialize();
+
+        PartitionTxn partitionTxn = partition.beginReadTransaction();
+
+        try
+        {
+            assertEquals( NB_PERSONS + 2L, partition.count( partitionTxn ) );
+
+            String suffixId = partition.getEntryId( partitionTxn, suffixDn );
+            String peopleId = partition.getEntryId( partitionTxn, new Dn( schemaManager, "ou=people,dc=example,dc=com" ) );
+            String userId = partition.getEntryId( partitionTxn,
+                new Dn( schemaManager, "cn=user7,ou=people,dc=example,dc=com" ) );
+
+            assertNotNull( suffixId );
+            assertNotNull( peopleId );
+            assertNotNull( userId );
+            assertNull( partition.getEntryId( partitionTxn,
+                new Dn( schemaManager, "cn=orphan,ou=missing,dc=example,dc=com" ) ) );
+
+            // The hierarchy
+            assertEquals( peopleId, partition.getParentId( partitionTxn, userId ) );
+            assertEquals( NB_PERSONS, partition.getChildCount( partitionTxn, peopleId ) );
+            assertEquals( 1L, partition.getChildCount( partitionTxn, suffixId ) );
+
+            ParentIdAndRdn suffix = partition.getRdnIndex().reverseLookup( partitionTxn, suffixId );
+            assertEquals( NB_PERSONS + 1, suffix.getNbDescendants() );
+
+            // The entries
+            Entry entry = partition.fetch( partitionTxn, userId );
+            assertEquals( "user7", entry.get( SchemaConstants.SN_AT ).getString() );
+            assertEquals( peopleId, entry.get( ApacheSchemaConstants.ENTRY_PARENT_ID_AT ).getString() );
+            assertNotNull( entry.get( SchemaConstants.ENTRY_CSN_AT ) );
+            assertNotNull( entry.get( SchemaConstants.CREATE_TIMESTAMP_AT ) );
+            assertNotNull( partition.fetch( partitionTxn, suffixId ).get( SchemaConstants.CONTEXT_CSN_AT ) );
+
+            // The first of the entries with the same Dn is kept, not the one at the end of the file
+            String user1Id = partition.getEntryId( partitionTxn,
+                new Dn( schemaManager, "cn=user1,ou=people,dc=example,dc=com" ) );
+            assertEquals( "user1", partition.fetch( partitionTxn, user1Id ).get( SchemaConstants.SN_AT ).getString() );
+
+            // The indices
+            assertEquals( userId, partition.getUserIndex( schemaManager.getAttributeType( SchemaConstants.CN_AT ) )
+                .forwardLookup( partitionTxn, "user7" ) );
+            assertEquals( ( long ) NB_PERSONS, partition.getObjectClassIndex().count( partitionTxn,
+                SchemaConstants.PERSON_OC_OID ) );
+            assertEquals( ( long ) NB_PERSONS, partition.getPresenceIndex().count( partitionTxn,
+                schemaManager.getAttributeType( SchemaConstants.CN_AT ).getOid() ) );
+            assertEquals( NB_PERSONS + 2L, partition.getEntryCsnIndex().count( partitionTxn ) );
+        }
+        finally
+        {
+            partition.destroy( partitionTxn );
+        }
+    }
+
+
+    @Test
+    public void testExternalSort() throws Exception
+    {
+        ExternalSorter<String, String> sorter = new ExternalSorter<>( "sort", tempDir.toFile(), 10,
+            Comparator.<String>naturalOrder(), Comparator.<String>naturalOrder(), StringSerializer.INSTANCE,
+            StringSerializer.INSTANCE );
+
+        for ( int i = 99; i >= 0; i-- )
+        {
+            sorter.add( Integer.toString( i % 10 ), Integer.toString( i ) );
+        }
+
+        assertEquals( 10, sorter.getNbRuns() );
+
+        sorter.sort();
+
+        String previous = null;
+        int count = 0;
+        Tuple<String, String> tuple;
+
+        while ( ( tuple = sorter.next() ) != null )
+        {
+            String current = tuple.getKey() + ":" + tuple.getValue();
+
+            if ( previous != null )
+            {
+                assertEquals( -1, Integer.signum( previous.compareTo( current ) ) );
+            }
+
+            previous = current;
+            count++;
+        }
+
+        assertEquals( 100, count );
+
+        sorter.close();
+    }
+}
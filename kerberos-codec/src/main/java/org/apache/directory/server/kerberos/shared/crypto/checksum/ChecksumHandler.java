@@ -23,6 +23,7 @@ package org.apache.directory.server.kerberos.shared.crypto.checksum;
 import java.util.Collections;
 import java.util.EnumMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.directory.server.kerberos.shared.crypto.encryption.Aes128CtsSha1Encryption;
 import org.apache.directory.server.kerberos.shared.crypto.encryption.Aes256CtsSha1Encryption;
@@ -57,6 +58,9 @@ public class ChecksumHandler
         DEFAULT_CHECKSUMS = Collections.unmodifiableMap( map );
     }
 
+    /** The checksum engines are stateless, so they are created once and shared */
+    private static final Map<ChecksumType, ChecksumEngine> ENGINES = new ConcurrentHashMap<>();
+
 
     /**
      * Calculate a checksum based on raw bytes and an (optional) key for keyed checksums.
@@ -115,6 +119,13 @@ public class ChecksumHandler
 
     private ChecksumEngine getEngine( ChecksumType checksumType ) throws KerberosException
     {
+        ChecksumEngine engine = ENGINES.get( checksumType );
+
+        if ( engine != null )
+        {
+            return engine;
+        }
+
         Class<?> clazz = DEFAULT_CHECKSUMS.get( checksumType );
 
         if ( clazz == null )
@@ -124,7 +135,10 @@ public class ChecksumHandler
 
         try
         {
-            return ( ChecksumEngine ) clazz.newInstance();
+            engine = ( ChecksumEngine ) clazz.newInstance();
+            ENGINES.put( checksumType, engine );
+
+            return engine;
         }
         catch ( IllegalAccessException iae )
         {
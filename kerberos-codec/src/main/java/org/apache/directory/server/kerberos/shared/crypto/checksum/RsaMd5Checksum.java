@@ -20,10 +20,11 @@
 package org.apache.directory.server.kerberos.shared.crypto.checksum;
 
 
+import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 
 import org.apache.directory.api.ldap.model.constants.LdapSecurityConstants;
+import org.apache.directory.server.kerberos.shared.crypto.encryption.CryptoCache;
 import org.apache.directory.server.kerberos.shared.crypto.encryption.KeyUsage;
 import org.apache.directory.shared.kerberos.crypto.checksum.ChecksumType;
 
@@ -43,10 +44,10 @@ class RsaMd5Checksum implements ChecksumEngine
     {
         try
         {
-            MessageDigest digester = MessageDigest.getInstance( LdapSecurityConstants.HASH_METHOD_MD5.getAlgorithm() );
+            MessageDigest digester = CryptoCache.getMessageDigest( LdapSecurityConstants.HASH_METHOD_MD5.getAlgorithm() );
             return digester.digest( data );
         }
-        catch ( NoSuchAlgorithmException nsae )
+        catch ( GeneralSecurityException nsae )
         {
             return null;
         }
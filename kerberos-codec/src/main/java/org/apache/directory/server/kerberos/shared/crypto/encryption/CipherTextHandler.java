@@ -25,6 +25,7 @@ import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.EnumMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.directory.api.asn1.Asn1Object;
 import org.apache.directory.api.asn1.EncoderException;
@@ -66,6 +67,9 @@ public class CipherTextHandler
         DEFAULT_CIPHERS = Collections.unmodifiableMap( map );
     }
 
+    /** The encryption engines are stateless, so they are created once and shared */
+    private static final Map<EncryptionType, EncryptionEngine> ENGINES = new ConcurrentHashMap<>();
+
 
     /**
      * Performs an encode and an encrypt.
@@ -126,6 +130,13 @@ public class CipherTextHandler
     {
         EncryptionType encryptionType = key.getKeyType();
 
+        EncryptionEngine engine = ENGINES.get( encryptionType );
+
+        if ( engine != null )
+        {
+            return engine;
+        }
+
         Class<?> clazz = DEFAULT_CIPHERS.get( encryptionType );
 
         if ( clazz == null )
@@ -135,7 +146,10 @@ public class CipherTextHandler
 
         try
         {
-            return ( EncryptionEngine ) clazz.newInstance();
+            engine = ( EncryptionEngine ) clazz.newInstance();
+            ENGINES.put( encryptionType, engine );
+
+            return engine;
         }
         catch ( IllegalAccessException iae )
         {
@@ -0,0 +1,300 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.kerberos.shared.crypto.encryption;
+
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+
+import org.apache.directory.shared.kerberos.codec.types.EncryptionType;
+
+
+/**
+ * Caches the JCA instances and the derived keys used by the encryption and checksum engines.
+ * <p>
+ * Looking up a Cipher, a Mac or a MessageDigest in the JCA providers is costly, so the
+ * instances are created once per thread and algorithm, and reused : they are always
+ * initialized before being used, and never shared between threads.
+ * <p>
+ * The usage keys (Ke, Ki, Kc) derived from a base key are the same for every message
+ * protected with this key and usage, so they are kept in a LRU cache bounded to
+ * {@link #MAX_DERIVED_KEYS} entries. The cached keys must not be modified by the callers.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public final class CryptoCache
+{
+    /** The maximum number of derived keys kept in memory */
+    public static final int MAX_DERIVED_KEYS = 4096;
+
+    /** The Cipher instances, per thread and transformation */
+    private static final ThreadLocal<Map<String, Cipher>> CIPHERS = new ThreadLocal<Map<String, Cipher>>()
+    {
+        @Override
+        protected Map<String, Cipher> initialValue()
+        {
+            return new HashMap<>();
+        }
+    };
+
+    /** The Mac instances, per thread and algorithm */
+    private static final ThreadLocal<Map<String, Mac>> MACS = new ThreadLocal<Map<String, Mac>>()
+    {
+        @Override
+        protected Map<String, Mac> initialValue()
+        {
+            return new HashMap<>();
+        }
+    };
+
+    /** The MessageDigest instances, per thread and algorithm */
+    private static final ThreadLocal<Map<String, MessageDigest>> DIGESTS = new ThreadLocal<Map<String, MessageDigest>>()
+    {
+        @Override
+        protected Map<String, MessageDigest> initialValue()
+        {
+            return new HashMap<>();
+        }
+    };
+
+    /** The derived keys, in LRU order */
+    private static final Map<DerivedKeyId, byte[]> DERIVED_KEYS = new LinkedHashMap<DerivedKeyId, byte[]>( 256,
+        0.75f, true )
+    {
+        private static final long serialVersionUID = 1L;
+
+
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<DerivedKeyId, byte[]> eldest )
+        {
+            return size() > MAX_DERIVED_KEYS;
+        }
+    };
+
+
+    /**
+     * The identifier of a derived key : the encryption type, the base key, the usage constant
+     * and the derivation parameters.
+     */
+    private static final class DerivedKeyId
+    {
+        private final EncryptionType encryptionType;
+        private final byte[] baseKey;
+        private final byte[] usage;
+        private final int n;
+        private final int k;
+        private final int hash;
+
+
+        private DerivedKeyId( EncryptionType encryptionType, byte[] baseKey, byte[] usage, int n, int k )
+        {
+            this.encryptionType = encryptionType;
+            this.baseKey = baseKey;
+            this.usage = usage;
+            this.n = n;
+            this.k = k;
+
+            int h = encryptionType.hashCode();
+            h = h * 31 + Arrays.hashCode( baseKey );
+            h = h * 31 + Arrays.hashCode( usage );
+            h = h * 31 + n;
+            hash = h * 31 + k;
+        }
+
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+
+        @Override
+        public boolean equals( Object obj )
+        {
+            if ( this == obj )
+            {
+                return true;
+            }
+
+            if ( !( obj instanceof DerivedKeyId ) )
+            {
+                return false;
+            }
+
+            DerivedKeyId that = ( DerivedKeyId ) obj;
+
+            return ( encryptionType == that.encryptionType ) && ( n == that.n ) && ( k == that.k )
+                && Arrays.equals( baseKey, that.baseKey ) && Arrays.equals( usage, that.usage );
+        }
+    }
+
+
+    private CryptoCache()
+    {
+    }
+
+
+    /**
+     * Get the Cipher associated with a transformation for the current thread. It has to be
+     * initialized before being used.
+     *
+     * @param transformation The transformation, like "AES/CTS/NoPadding"
+     * @return The Cipher instance
+     * @throws GeneralSecurityException If the transformation is not supported
+     */
+    public static Cipher getCipher( String transformation ) throws GeneralSecurityException
+    {
+        Map<String, Cipher> ciphers = CIPHERS.get();
+        Cipher cipher = ciphers.get( transformation );
+
+        if ( cipher == null )
+        {
+            cipher = Cipher.getInstance( transformation );
+            ciphers.put( transformation, cipher );
+        }
+
+        return cipher;
+    }
+
+
+    /**
+     * Get the Mac associated with an algorithm for the current thread. It has to be
+     * initialized before being used.
+     *
+     * @param algorithm The algorithm, like "HmacSHA1"
+     * @return The Mac instance
+     * @throws GeneralSecurityException If the algorithm is not supported
+     */
+    public static Mac getMac( String algorithm ) throws GeneralSecurityException
+    {
+        Map<String, Mac> macs = MACS.get();
+        Mac mac = macs.get( algorithm );
+
+        if ( mac == null )
+        {
+            mac = Mac.getInstance( algorithm );
+            macs.put( algorithm, mac );
+        }
+
+        return mac;
+    }
+
+
+    /**
+     * Get the MessageDigest associated with an algorithm for the current thread. It is reset
+     * before being returned.
+     *
+     * @param algorithm The algorithm, like "MD5"
+     * @return The MessageDigest instance
+     * @throws GeneralSecurityException If the algorithm is not supported
+     */
+    public static MessageDigest getMessageDigest( String algorithm ) throws GeneralSecurityException
+    {
+        Map<String, MessageDigest> digests = DIGESTS.get();
+        MessageDigest digest = digests.get( algorithm );
+
+        if ( digest == null )
+        {
+            digest = MessageDigest.getInstance( algorithm );
+            digests.put( algorithm, digest );
+        }
+        else
+        {
+            digest.reset();
+        }
+
+        return digest;
+    }
+
+
+    /**
+     * Get a derived key from the cache
+     *
+     * @param encryptionType The encryption type
+     * @param baseKey The base key
+     * @param usage The usage constant
+     * @param n The n-fold size
+     * @param k The key size
+     * @return The derived key, or null if it's not cached
+     */
+    static byte[] getDerivedKey( EncryptionType encryptionType, byte[] baseKey, byte[] usage, int n, int k )
+    {
+        DerivedKeyId id = new DerivedKeyId( encryptionType, baseKey, usage, n, k );
+
+        synchronized ( DERIVED_KEYS )
+        {
+            return DERIVED_KEYS.get( id );
+        }
+    }
+
+
+    /**
+     * Store a derived key in the cache. The base key and the usage are copied.
+     *
+     * @param encryptionType The encryption type
+     * @param baseKey The base key
+     * @param usage The usage constant
+     * @param n The n-fold size
+     * @param k The key size
+     * @param derivedKey The derived key
+     */
+    static void putDerivedKey( EncryptionType encryptionType, byte[] baseKey, byte[] usage, int n, int k,
+        byte[] derivedKey )
+    {
+        DerivedKeyId id = new DerivedKeyId( encryptionType, baseKey.clone(), usage.clone(), n, k );
+
+        synchronized ( DERIVED_KEYS )
+        {
+            DERIVED_KEYS.put( id, derivedKey );
+        }
+    }
+
+
+    /**
+     * @return The number of derived keys currently cached
+     */
+    public static int getDerivedKeyCount()
+    {
+        synchronized ( DERIVED_KEYS )
+        {
+            return DERIVED_KEYS.size();
+        }
+    }
+
+
+    /**
+     * Remove all the derived keys from the cache
+     */
+    public static void clearDerivedKeys()
+    {
+        synchronized ( DERIVED_KEYS )
+        {
+            DERIVED_KEYS.clear();
+        }
+    }
+}
@@ -22,7 +22,6 @@ package org.apache.directory.server.kerberos.shared.crypto.encryption;
 
 import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.security.spec.AlgorithmParameterSpec;
 
 import javax.crypto.Cipher;
@@ -76,10 +75,10 @@ class DesCbcMd5Encryption extends EncryptionEngine
     {
         try
         {
-            MessageDigest digester = MessageDigest.getInstance( LdapSecurityConstants.HASH_METHOD_MD5.getAlgorithm() );
+            MessageDigest digester = CryptoCache.getMessageDigest( LdapSecurityConstants.HASH_METHOD_MD5.getAlgorithm() );
             return digester.digest( data );
         }
-        catch ( NoSuchAlgorithmException nsae )
+        catch ( GeneralSecurityException nsae )
         {
             return null;
         }
@@ -154,7 +153,7 @@ class DesCbcMd5Encryption extends EncryptionEngine
     {
         try
         {
-            Cipher cipher = Cipher.getInstance( "DES/CBC/NoPadding" );
+            Cipher cipher = CryptoCache.getCipher( "DES/CBC/NoPadding" );
             SecretKey key = new SecretKeySpec( keyBytes, "DES" );
 
             AlgorithmParameterSpec paramSpec = new IvParameterSpec( iv );
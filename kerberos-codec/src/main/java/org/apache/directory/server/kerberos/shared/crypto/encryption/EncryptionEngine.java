@@ -61,6 +61,46 @@ public abstract class EncryptionEngine
     protected abstract byte[] calculateIntegrity( byte[] plainText, byte[] key, KeyUsage usage );
 
 
+    /**
+     * Derive a key from a base key and a usage constant.
+     *
+     * @param baseKey The base key
+     * @param usage The usage constant
+     * @param n The n-fold size, in bits
+     * @param k The key size, in bits
+     * @return The derived key
+     */
+    protected byte[] deriveKey( byte[] baseKey, byte[] usage, int n, int k )
+    {
+        return deriveRandom( baseKey, usage, n, k );
+    }
+
+
+    /**
+     * Get the key derived from a base key and a usage constant. The derived keys are
+     * cached, as the same keys are derived for each message, and must not be modified.
+     *
+     * @param baseKey The base key
+     * @param usage The usage constant
+     * @param n The n-fold size, in bits
+     * @param k The key size, in bits
+     * @return The derived key
+     */
+    protected byte[] getUsageKey( byte[] baseKey, byte[] usage, int n, int k )
+    {
+        EncryptionType encryptionType = getEncryptionType();
+        byte[] derivedKey = CryptoCache.getDerivedKey( encryptionType, baseKey, usage, n, k );
+
+        if ( derivedKey == null )
+        {
+            derivedKey = deriveKey( baseKey, usage, n, k );
+            CryptoCache.putDerivedKey( encryptionType, baseKey, usage, n, k, derivedKey );
+        }
+
+        return derivedKey;
+    }
+
+
     protected byte[] deriveRandom( byte[] key, byte[] usage, int n, int k )
     {
         byte[] nFoldedUsage = NFold.nFold( n, usage );
@@ -139,9 +139,7 @@ public class KerberosDecoder
      */
     public static EncryptedData decodeEncryptedData( byte[] data ) throws KerberosException
     {
-        ByteBuffer stream = ByteBuffer.allocate( data.length );
-        stream.put( data );
-        stream.flip();
+        ByteBuffer stream = ByteBuffer.wrap( data );
         
         // Allocate a EncryptedData Container
         Asn1Container encryptedDataContainer = new EncryptedDataContainer();
@@ -170,9 +168,7 @@ public class KerberosDecoder
      */
     public static PaEncTsEnc decodePaEncTsEnc( byte[] data ) throws KerberosException
     {
-        ByteBuffer stream = ByteBuffer.allocate( data.length );
-        stream.put( data );
-        stream.flip();
+        ByteBuffer stream = ByteBuffer.wrap( data );
         
         // Allocate a PaEncTsEnc Container
         Asn1Container paEncTsEncContainer = new PaEncTsEncContainer();
@@ -201,9 +197,7 @@ public class KerberosDecoder
      */
     public static EncApRepPart decodeEncApRepPart( byte[] data ) throws KerberosException
     {
-        ByteBuffer stream = ByteBuffer.allocate( data.length );
-        stream.put( data );
-        stream.flip();
+        ByteBuffer stream = ByteBuffer.wrap( data );
         
         // Allocate a EncApRepPart Container
         Asn1Container encApRepPartContainer = new EncApRepPartContainer( stream );
@@ -232,9 +226,7 @@ public class KerberosDecoder
      */
     public static EncKdcRepPart decodeEncKdcRepPart( byte[] data ) throws KerberosException
     {
-        ByteBuffer stream = ByteBuffer.allocate( data.length );
-        stream.put( data );
-        stream.flip();
+        ByteBuffer stream = ByteBuffer.wrap( data );
         
         // Allocate a EncKdcRepPart Container
         Asn1Container encKdcRepPartContainer = new EncKdcRepPartContainer( stream );
@@ -263,9 +255,7 @@ public class KerberosDecoder
      */
     public static EncKrbPrivPart decodeEncKrbPrivPart( byte[] data ) throws KerberosException
     {
-        ByteBuffer stream = ByteBuffer.allocate( data.length );
-        stream.put( data );
-        stream.flip();
+        ByteBuffer stream = ByteBuffer.wrap( data );
         
         // Allocate a EncKrbPrivPart Container
         Asn1Container encKrbPrivPartContainer = new EncKrbPrivPartContainer( stream );
@@ -294,9 +284,7 @@ public class KerberosDecoder
      */
     public static EncTicketPart decodeEncTicketPart( byte[] data ) throws KerberosException
     {
-        ByteBuffer stream = ByteBuffer.allocate( data.length );
-        stream.put( data );
-        stream.flip();
+        ByteBuffer stream = ByteBuffer.wrap( data );
         
         // Allocate a EncTicketPart Container
         Asn1Container encTicketPartContainer = new EncTicketPartContainer( stream );
@@ -325,9 +313,7 @@ public class KerberosDecoder
      */
     public static EncryptionKey decodeEncryptionKey( byte[] data ) throws KerberosException
     {
-        ByteBuffer stream = ByteBuffer.allocate( data.length );
-        stream.put( data );
-        stream.flip();
+        ByteBuffer stream = ByteBuffer.wrap( data );
         
         // Allocate a EncryptionKey Container
         Asn1Container encryptionKeyContainer = new EncryptionKeyContainer();
@@ -356,9 +342,7 @@ public class KerberosDecoder
      */
     public static PrincipalName decodePrincipalName( byte[] data ) throws KerberosException
     {
-        ByteBuffer stream = ByteBuffer.allocate( data.length );
-        stream.put( data );
-        stream.flip();
+        ByteBuffer stream = ByteBuffer.wrap( data );
         
         // Allocate a PrincipalName Container
         Asn1Container principalNameContainer = new PrincipalNameContainer();
@@ -387,9 +371,7 @@ public class KerberosDecoder
      */
     public static Ticket decodeTicket( byte[] data ) throws KerberosException
     {
-        ByteBuffer stream = ByteBuffer.allocate( data.length );
-        stream.put( data );
-        stream.flip();
+        ByteBuffer stream = ByteBuffer.wrap( data );
         
         // Allocate a Ticket Container
         Asn1Container ticketContainer = new TicketContainer( stream );
@@ -418,9 +400,7 @@ public class KerberosDecoder
      */
     public static Authenticator decodeAuthenticator( byte[] data ) throws KerberosException
     {
-        ByteBuffer stream = ByteBuffer.allocate( data.length );
-        stream.put( data );
-        stream.flip();
+        ByteBuffer stream = ByteBuffer.wrap( data );
         
         // Allocate a Authenticator Container
         Asn1Container authenticatorContainer = new AuthenticatorContainer( stream );
@@ -449,9 +429,7 @@ public class KerberosDecoder
      */
     public static AuthorizationData decodeAuthorizationData( byte[] data ) throws KerberosException
     {
-        ByteBuffer stream = ByteBuffer.allocate( data.length );
-        stream.put( data );
-        stream.flip();
+        ByteBuffer stream = ByteBuffer.wrap( data );
         
         // Allocate a AuthorizationData Container
         Asn1Container authorizationDataContainer = new AuthorizationDataContainer();
@@ -480,9 +458,7 @@ public class KerberosDecoder
      */
     public static ApRep decodeApRep( byte[] data ) throws KerberosException
     {
-        ByteBuffer stream = ByteBuffer.allocate( data.length );
-        stream.put( data );
-        stream.flip();
+        ByteBuffer stream = ByteBuffer.wrap( data );
         
         // Allocate a ApRep Container
         Asn1Container apRepContainer = new ApRepContainer( stream );
@@ -511,9 +487,7 @@ public class KerberosDecoder
      */
     public static ApReq decodeApReq( byte[] data ) throws KerberosException
     {
-        ByteBuffer stream = ByteBuffer.allocate( data.length );
-        stream.put( data );
-        stream.flip();
+        ByteBuffer stream = ByteBuffer.wrap( data );
         
         // Allocate a ApReq Container
         Asn1Container apReqContainer = new ApReqContainer( stream );
@@ -542,9 +516,7 @@ public class KerberosDecoder
      */
     public static KrbPriv decodeKrbPriv( byte[] data ) throws KerberosException
     {
-        ByteBuffer stream = ByteBuffer.allocate( data.length );
-        stream.put( data );
-        stream.flip();
+        ByteBuffer stream = ByteBuffer.wrap( data );
         
         // Allocate a KrbPriv Container
         Asn1Container krbPrivContainer = new KrbPrivContainer( stream );
@@ -573,9 +545,7 @@ public class KerberosDecoder
      */
     public static EncAsRepPart decodeEncAsRepPart( byte[] data ) throws KerberosException
     {
-        ByteBuffer stream = ByteBuffer.allocate( data.length );
-        stream.put( data );
-        stream.flip();
+        ByteBuffer stream = ByteBuffer.wrap( data );
         
         // Allocate a EncAsRepPart Container
         Asn1Container encAsRepPartContainer = new EncAsRepPartContainer( stream );
@@ -604,9 +574,7 @@ public class KerberosDecoder
      */
     public static EncTgsRepPart decodeEncTgsRepPart( byte[] data ) throws ChangePasswordException
     {
-        ByteBuffer stream = ByteBuffer.allocate( data.length );
-        stream.put( data );
-        stream.flip();
+        ByteBuffer stream = ByteBuffer.wrap( data );
         
         // Allocate a EncTgsRepPart Container
         Asn1Container encTgsRepPartContainer = new EncTgsRepPartContainer( stream );
@@ -0,0 +1,135 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.kerberos.shared.crypto.encryption;
+
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.server.kerberos.shared.crypto.checksum.ChecksumHandler;
+import org.apache.directory.shared.kerberos.codec.types.EncryptionType;
+import org.apache.directory.shared.kerberos.components.EncryptedData;
+import org.apache.directory.shared.kerberos.components.EncryptionKey;
+import org.apache.directory.shared.kerberos.crypto.checksum.ChecksumType;
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Measure the encryption, decryption and checksum throughput for all the supported
+ * encryption types, with the derived keys cached and when they are derived for each message.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class CipherTextHandlerPerfIT
+{
+    /** The number of messages per run */
+    private static final int NB_MESSAGES = 50000;
+
+    /** A message as big as a typical ticket */
+    private static final byte[] PLAIN_TEXT = new byte[512];
+
+
+    /**
+     * Encrypt, decrypt and checksum NB_MESSAGES messages, and return the number of messages per second
+     */
+    private long run( CipherTextHandler cipherTextHandler, ChecksumHandler checksumHandler, EncryptionKey key,
+        ChecksumType checksumType, boolean clearCache ) throws Exception
+    {
+        long t0 = System.nanoTime();
+
+        for ( int i = 0; i < NB_MESSAGES; i++ )
+        {
+            if ( clearCache )
+            {
+                CryptoCache.clearDerivedKeys();
+            }
+
+            EncryptedData encrypted = cipherTextHandler.encrypt( key, PLAIN_TEXT, KeyUsage.AS_REP_ENC_PART_WITH_CKEY );
+            byte[] decrypted = cipherTextHandler.decrypt( key, encrypted, KeyUsage.AS_REP_ENC_PART_WITH_CKEY );
+
+            checksumHandler.calculateChecksum( checksumType, decrypted, key.getKeyValue(),
+                KeyUsage.TGS_REQ_PA_TGS_REQ_PADATA_AP_REQ_TGS_SESS_KEY );
+        }
+
+        long delta = Math.max( 1L, ( System.nanoTime() - t0 ) / 1000000L );
+
+        return ( NB_MESSAGES * 1000L ) / delta;
+    }
+
+
+    private ChecksumType getChecksumType( EncryptionType encryptionType )
+    {
+        switch ( encryptionType )
+        {
+            case AES128_CTS_HMAC_SHA1_96:
+                return ChecksumType.HMAC_SHA1_96_AES128;
+
+            case AES256_CTS_HMAC_SHA1_96:
+                return ChecksumType.HMAC_SHA1_96_AES256;
+
+            case DES3_CBC_SHA1_KD:
+                return ChecksumType.HMAC_SHA1_DES3_KD;
+
+            case RC4_HMAC:
+                return ChecksumType.HMAC_MD5;
+
+            default:
+                return ChecksumType.RSA_MD5;
+        }
+    }
+
+
+    @Test
+    public void testCryptoPerf() throws Exception
+    {
+        byte[] header = Strings.getBytesUtf8( "A Kerberos message" );
+        System.arraycopy( header, 0, PLAIN_TEXT, 0, header.length );
+
+        CipherTextHandler cipherTextHandler = new CipherTextHandler();
+        ChecksumHandler checksumHandler = new ChecksumHandler();
+        Map<EncryptionType, EncryptionKey> keys = KerberosKeyFactory.getKerberosKeys( "hnelson@EXAMPLE.COM",
+            "secret" );
+
+        for ( Map.Entry<EncryptionType, EncryptionKey> entry : keys.entrySet() )
+        {
+            EncryptionKey key = entry.getValue();
+            ChecksumType checksumType = getChecksumType( entry.getKey() );
+
+            // Check that the cached instances produce the same results
+            EncryptedData encrypted = cipherTextHandler.encrypt( key, PLAIN_TEXT, KeyUsage.AS_REP_ENC_PART_WITH_CKEY );
+            assertArrayEquals( PLAIN_TEXT,
+                cipherTextHandler.decrypt( key, encrypted, KeyUsage.AS_REP_ENC_PART_WITH_CKEY ) );
+
+            // Warm up
+            run( cipherTextHandler, checksumHandler, key, checksumType, false );
+
+            long perSecondDerived = run( cipherTextHandler, checksumHandler, key, checksumType, true );
+            long perSecondCached = run( cipherTextHandler, checksumHandler, key, checksumType, false );
+
+            System.out.println( entry.getKey() + " : " + perSecondDerived + " messages/s with keys derived per message, "
+                + perSecondCached + " messages/s with cached keys" );
+        }
+
+        assertTrue( CryptoCache.getDerivedKeyCount() <= CryptoCache.MAX_DERIVED_KEYS );
+    }
+}
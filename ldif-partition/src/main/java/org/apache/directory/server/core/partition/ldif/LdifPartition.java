@@ -104,6 +104,9 @@ public class LdifPartition extends AbstractLdifPartition
     private static final boolean CREATE = Boolean.TRUE;
     private static final boolean DELETE = Boolean.FALSE;
 
+    /** An optional snapshot of the partition files, used instead of the LDIF files when valid */
+    private LdifSnapshot snapshot;
+
     /** A filter used to pick all the directories */
     private FileFilter dirFilter = new FileFilter()
     {
@@ -142,6 +145,18 @@ public class LdifPartition extends AbstractLdifPartition
     }
 
 
+    /**
+     * Set a snapshot of the partition LDIF files. It will be used to load the entries
+     * when the partition is initialized, if it still matches the LDIF files.
+     *
+     * @param snapshot The partition snapshot
+     */
+    public void setSnapshot( LdifSnapshot snapshot )
+    {
+        this.snapshot = snapshot;
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -175,7 +190,22 @@ public class LdifPartition extends AbstractLdifPartition
             // existing entries
             if ( suffixDirectory.exists() )
             {
-                loadEntries( partitionDir );
+                if ( isSnapshotValid( partitionDir ) )
+                {
+                    LOG.debug( "Loading the entries from the snapshot" );
+
+                    for ( Entry entry : snapshot.getEntries() )
+                    {
+                        loadEntry( entry );
+                    }
+                }
+                else
+                {
+                    loadEntries( partitionDir );
+                }
+                
+                // The snapshot is not needed anymore
+                snapshot = null;
             }
             else
             {
@@ -587,57 +617,7 @@ public class LdifPartition extends AbstractLdifPartition
                     LdifEntry ldifEntry = ldifEntries.get( 0 );
                     LOG.debug( "Adding entry {}", ldifEntry );
 
-                    Entry serverEntry = new DefaultEntry( schemaManager, ldifEntry.getEntry() );
-
-                    if ( !serverEntry.containsAttribute( SchemaConstants.ENTRY_CSN_AT ) )
-                    {
-                        serverEntry.put( SchemaConstants.ENTRY_CSN_AT, defaultCSNFactory.newInstance().toString() );
-                    }
-
-                    if ( !serverEntry.containsAttribute( SchemaConstants.ENTRY_UUID_AT ) )
-                    {
-                        serverEntry.put( SchemaConstants.ENTRY_UUID_AT, UUID.randomUUID().toString() );
-                    }
-
-                    // call add on the wrapped partition not on the self
-                    AddOperationContext addContext = new AddOperationContext( null, serverEntry );
-                    PartitionTxn partitionTxn = beginWriteTransaction();
-                    
-                    try
-                    {
-                        addContext.setTransaction( partitionTxn );
-                        addContext.setPartition( this );
-                    
-                        super.add( addContext );
-                        
-                        partitionTxn.commit();
-                    }
-                    catch ( LdapException le )
-                    {
-                        try
-                        {
-                            partitionTxn.abort();
-                        }
-                        catch ( IOException ioe )
-                        {
-                            throw new LdapOtherException( ioe.getMessage(), ioe );
-                        }
-                        
-                        throw le;
-                    }
-                    catch ( IOException ioe )
-                    {
-                        try
-                        {
-                            partitionTxn.abort();
-                        }
-                        catch ( IOException ioe2 )
-                        {
-                            throw new LdapOtherException( ioe2.getMessage(), ioe2 );
-                        }
-                        
-                        throw new LdapOtherException( ioe.getMessage(), ioe );
-                    }
+                    loadEntry( ldifEntry.getEntry() );
                 }
             }
 
@@ -661,6 +641,88 @@ public class LdifPartition extends AbstractLdifPartition
     }
 
 
+    /**
+     * Add an entry read from a LDIF file or from the snapshot to the wrapped partition
+     */
+    private void loadEntry( Entry entry ) throws LdapException
+    {
+        Entry serverEntry = new DefaultEntry( schemaManager, entry );
+
+        if ( !serverEntry.containsAttribute( SchemaConstants.ENTRY_CSN_AT ) )
+        {
+            serverEntry.put( SchemaConstants.ENTRY_CSN_AT, defaultCSNFactory.newInstance().toString() );
+        }
+
+        if ( !serverEntry.containsAttribute( SchemaConstants.ENTRY_UUID_AT ) )
+        {
+            serverEntry.put( SchemaConstants.ENTRY_UUID_AT, UUID.randomUUID().toString() );
+        }
+
+        // call add on the wrapped partition not on the self
+        AddOperationContext addContext = new AddOperationContext( null, serverEntry );
+        PartitionTxn partitionTxn = beginWriteTransaction();
+        
+        try
+        {
+            addContext.setTransaction( partitionTxn );
+            addContext.setPartition( this );
+        
+            super.add( addContext );
+            
+            partitionTxn.commit();
+        }
+        catch ( LdapException le )
+        {
+            try
+            {
+                partitionTxn.abort();
+            }
+            catch ( IOException ioe )
+            {
+                throw new LdapOtherException( ioe.getMessage(), ioe );
+            }
+            
+            throw le;
+        }
+        catch ( IOException ioe )
+        {
+            try
+            {
+                partitionTxn.abort();
+            }
+            catch ( IOException ioe2 )
+            {
+                throw new LdapOtherException( ioe2.getMessage(), ioe2 );
+            }
+            
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+    }
+
+
+    /**
+     * Tells if the snapshot can be used instead of the LDIF files
+     */
+    private boolean isSnapshotValid( File partitionDir )
+    {
+        if ( snapshot == null )
+        {
+            return false;
+        }
+
+        try
+        {
+            return snapshot.matches( partitionDir );
+        }
+        catch ( IOException ioe )
+        {
+            LOG.warn( "Cannot check the snapshot, loading the LDIF files : {}", ioe.getMessage() );
+
+            return false;
+        }
+    }
+
+
     /**
      * Create the file name from the entry Dn.
      */
@@ -0,0 +1,401 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.ldif;
+
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.ldif.LdifEntry;
+import org.apache.directory.api.ldap.model.ldif.LdifReader;
+import org.apache.directory.api.util.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A binary image of the entries stored in a LDIF partition directory, used to avoid
+ * parsing thousands of small LDIF files at startup (typically, the schema partition).
+ * <p>
+ * The entries are stored in the order the {@link LdifPartition} loads them (the entries
+ * of a directory, then its sub-directories), so that a parent is always stored before
+ * its children. They are not schema aware.
+ * <p>
+ * The snapshot contains a checksum computed on the names, sizes and modification dates of
+ * the LDIF files : a snapshot which does not match the LDIF directory anymore is ignored,
+ * and the LDIF files have to be read.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LdifSnapshot
+{
+    /** A logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( LdifSnapshot.class );
+
+    /** The magic number starting a snapshot file */
+    private static final int MAGIC = 0x4C534E50;
+
+    /** The snapshot format version. To be incremented when the format changes */
+    private static final int VERSION = 1;
+
+    /** The extension used for LDIF entry files */
+    private static final String LDIF_EXTN = ".ldif";
+
+    /** The checksum of the LDIF directory this snapshot has been built from */
+    private final long checksum;
+
+    /** The entries, parents first */
+    private final List<Entry> entries;
+
+    /** A filter used to pick all the directories */
+    private static final FileFilter DIR_FILTER = new FileFilter()
+    {
+        public boolean accept( File file )
+        {
+            return file.isDirectory();
+        }
+    };
+
+    /** A filter used to pick all the ldif entries */
+    private static final FileFilter ENTRY_FILTER = new FileFilter()
+    {
+        public boolean accept( File file )
+        {
+            return file.getName().endsWith( LDIF_EXTN ) && file.isFile();
+        }
+    };
+
+
+    /**
+     * Creates a new LdifSnapshot instance
+     *
+     * @param checksum The checksum of the LDIF directory
+     * @param entries The entries
+     */
+    private LdifSnapshot( long checksum, List<Entry> entries )
+    {
+        this.checksum = checksum;
+        this.entries = entries;
+    }
+
+
+    /**
+     * Build a snapshot by reading all the LDIF files stored in a partition directory
+     *
+     * @param partitionDir The partition directory
+     * @return The snapshot
+     * @throws LdapException If one of the LDIF files can't be parsed
+     * @throws IOException If the directory can't be read
+     */
+    public static LdifSnapshot create( File partitionDir ) throws LdapException, IOException
+    {
+        long checksum = computeChecksum( partitionDir );
+        List<Entry> entries = new ArrayList<>();
+
+        readEntries( partitionDir, entries );
+
+        return new LdifSnapshot( checksum, entries );
+    }
+
+
+    /**
+     * Read the entries of a directory, then recurse on its sub-directories
+     */
+    private static void readEntries( File entryDir, List<Entry> entries ) throws LdapException, IOException
+    {
+        File[] entryFiles = sort( entryDir.listFiles( ENTRY_FILTER ) );
+
+        // If we don't have ldif files, we won't have sub-directories
+        if ( entryFiles.length == 0 )
+        {
+            return;
+        }
+
+        try ( LdifReader ldifReader = new LdifReader() )
+        {
+            for ( File entryFile : entryFiles )
+            {
+                List<LdifEntry> ldifEntries = ldifReader.parseLdifFile( entryFile.getAbsolutePath() );
+
+                if ( ( ldifEntries != null ) && !ldifEntries.isEmpty() )
+                {
+                    // this ldif will have only one entry
+                    entries.add( ldifEntries.get( 0 ).getEntry() );
+                }
+            }
+        }
+
+        for ( File dir : sort( entryDir.listFiles( DIR_FILTER ) ) )
+        {
+            readEntries( dir, entries );
+        }
+    }
+
+
+    /**
+     * Read a snapshot file, and check that it matches the given LDIF directory.
+     *
+     * @param snapshotFile The snapshot file
+     * @param partitionDir The LDIF directory the snapshot has been built from
+     * @return The snapshot, or null if it does not exist, is corrupted or does not match the directory
+     */
+    public static LdifSnapshot read( File snapshotFile, File partitionDir )
+    {
+        if ( !snapshotFile.isFile() )
+        {
+            return null;
+        }
+
+        try ( FileChannel channel = FileChannel.open( snapshotFile.toPath(), StandardOpenOption.READ ) )
+        {
+            MappedByteBuffer buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+
+            try ( ObjectInputStream in = new ObjectInputStream( new ByteBufferInputStream( buffer ) ) )
+            {
+                if ( ( in.readInt() != MAGIC ) || ( in.readInt() != VERSION ) )
+                {
+                    LOG.info( "The snapshot {} has an unknown format, ignoring it", snapshotFile );
+
+                    return null;
+                }
+
+                long checksum = in.readLong();
+
+                if ( checksum != computeChecksum( partitionDir ) )
+                {
+                    LOG.info( "The snapshot {} does not match the content of {}, ignoring it", snapshotFile,
+                        partitionDir );
+
+                    return null;
+                }
+
+                int nbEntries = in.readInt();
+                List<Entry> entries = new ArrayList<>( nbEntries );
+
+                for ( int i = 0; i < nbEntries; i++ )
+                {
+                    Entry entry = new DefaultEntry();
+                    entry.readExternal( in );
+                    entries.add( entry );
+                }
+
+                return new LdifSnapshot( checksum, entries );
+            }
+        }
+        catch ( IOException | ClassNotFoundException | RuntimeException e )
+        {
+            LOG.warn( "Cannot read the snapshot {}, ignoring it : {}", snapshotFile, e.getMessage() );
+
+            return null;
+        }
+    }
+
+
+    /**
+     * Write the snapshot in a file. The file is first written in a temporary file
+     * which is then renamed, so that a crash never leaves a truncated snapshot.
+     *
+     * @param snapshotFile The file to write
+     * @throws IOException If the file can't be written
+     */
+    public void write( File snapshotFile ) throws IOException
+    {
+        File parent = snapshotFile.getAbsoluteFile().getParentFile();
+
+        if ( !parent.exists() && !parent.mkdirs() )
+        {
+            throw new IOException( "Cannot create the directory " + parent );
+        }
+
+        File tmpFile = new File( parent, snapshotFile.getName() + ".tmp" );
+
+        try ( OutputStream os = new BufferedOutputStream( Files.newOutputStream( tmpFile.toPath() ) );
+            ObjectOutputStream out = new ObjectOutputStream( os ) )
+        {
+            out.writeInt( MAGIC );
+            out.writeInt( VERSION );
+            out.writeLong( checksum );
+            out.writeInt( entries.size() );
+
+            for ( Entry entry : entries )
+            {
+                entry.writeExternal( out );
+            }
+        }
+
+        Files.move( tmpFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE );
+    }
+
+
+    /**
+     * Tells if this snapshot still matches the content of the LDIF directory
+     *
+     * @param partitionDir The LDIF directory
+     * @return <tt>true</tt> if the LDIF files haven't been modified since the snapshot was built
+     * @throws IOException If the directory can't be read
+     */
+    public boolean matches( File partitionDir ) throws IOException
+    {
+        return checksum == computeChecksum( partitionDir );
+    }
+
+
+    /**
+     * Compute the checksum of a LDIF directory. The files are not read, only their
+     * relative path, size and last modification date are used.
+     *
+     * @param partitionDir The LDIF directory
+     * @return The checksum
+     * @throws IOException If the directory can't be read
+     */
+    public static long computeChecksum( File partitionDir ) throws IOException
+    {
+        if ( !partitionDir.isDirectory() )
+        {
+            throw new IOException( "The directory " + partitionDir + " does not exist" );
+        }
+
+        CRC32 crc = new CRC32();
+        updateChecksum( crc, partitionDir, "" );
+
+        return crc.getValue();
+    }
+
+
+    private static void updateChecksum( CRC32 crc, File dir, String path )
+    {
+        for ( File file : sort( dir.listFiles() ) )
+        {
+            String filePath = path + '/' + file.getName();
+
+            if ( file.isDirectory() )
+            {
+                crc.update( Strings.getBytesUtf8( filePath ) );
+                updateChecksum( crc, file, filePath );
+            }
+            else if ( file.getName().endsWith( LDIF_EXTN ) )
+            {
+                crc.update( Strings.getBytesUtf8( filePath ) );
+                crc.update( Strings.getBytesUtf8( file.length() + ":" + file.lastModified() ) );
+            }
+        }
+    }
+
+
+    private static File[] sort( File[] files )
+    {
+        if ( files == null )
+        {
+            return new File[0];
+        }
+
+        Arrays.sort( files );
+
+        return files;
+    }
+
+
+    /**
+     * @return The checksum of the LDIF directory this snapshot has been built from
+     */
+    public long getChecksum()
+    {
+        return checksum;
+    }
+
+
+    /**
+     * @return The entries, parents first. They must not be modified.
+     */
+    public List<Entry> getEntries()
+    {
+        return Collections.unmodifiableList( entries );
+    }
+
+
+    /**
+     * An InputStream reading a ByteBuffer
+     */
+    private static class ByteBufferInputStream extends InputStream
+    {
+        private final ByteBuffer buffer;
+
+
+        ByteBufferInputStream( ByteBuffer buffer )
+        {
+            this.buffer = buffer;
+        }
+
+
+        @Override
+        public int read()
+        {
+            if ( !buffer.hasRemaining() )
+            {
+                return -1;
+            }
+
+            return buffer.get() & 0xFF;
+        }
+
+
+        @Override
+        public int read( byte[] bytes, int off, int len )
+        {
+            if ( !buffer.hasRemaining() )
+            {
+                return -1;
+            }
+
+            int nbRead = Math.min( len, buffer.remaining() );
+            buffer.get( bytes, off, nbRead );
+
+            return nbRead;
+        }
+
+
+        @Override
+        public int available()
+        {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.ldif;
+
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.registries.AbstractSchemaLoader;
+import org.apache.directory.api.ldap.model.schema.registries.Schema;
+import org.apache.directory.api.util.Strings;
+
+
+/**
+ * A SchemaLoader reading the schema entries from a {@link LdifSnapshot} of the schema
+ * partition, instead of parsing the LDIF files one by one. The snapshot contains the
+ * same entries as the files read by the LdifSchemaLoader.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LdifSnapshotSchemaLoader extends AbstractSchemaLoader
+{
+    /** The schema objects entries, per schema name and per container (comparators, attributetypes...) */
+    private final Map<String, Map<String, List<Entry>>> schemaObjects = new HashMap<>();
+
+
+    /**
+     * Creates a new LdifSnapshotSchemaLoader instance
+     *
+     * @param snapshot The schema partition snapshot
+     * @throws LdapException If one of the schema entries is invalid
+     */
+    public LdifSnapshotSchemaLoader( LdifSnapshot snapshot ) throws LdapException
+    {
+        for ( Entry entry : snapshot.getEntries() )
+        {
+            Dn dn = entry.getDn();
+
+            // The schema entries : cn=<schema>,ou=schema
+            if ( dn.size() == 2 )
+            {
+                Schema schema = getSchema( entry );
+                schemaMap.put( schema.getSchemaName(), schema );
+            }
+            // The schema objects : m-oid=<oid>,ou=<container>,cn=<schema>,ou=schema
+            else if ( dn.size() == 4 )
+            {
+                Dn containerDn = dn.getParent();
+                String container = Strings.toLowerCaseAscii( containerDn.getRdn().getValue() );
+                String schemaName = Strings.toLowerCaseAscii( containerDn.getParent().getRdn().getValue() );
+
+                Map<String, List<Entry>> containers = schemaObjects.get( schemaName );
+
+                if ( containers == null )
+                {
+                    containers = new HashMap<>();
+                    schemaObjects.put( schemaName, containers );
+                }
+
+                List<Entry> entries = containers.get( container );
+
+                if ( entries == null )
+                {
+                    entries = new ArrayList<>();
+                    containers.put( container, entries );
+                }
+
+                entries.add( entry );
+            }
+        }
+    }
+
+
+    /**
+     * Get a copy of the entries stored in a container of the given schemas
+     */
+    private List<Entry> getEntries( String container, Schema... schemas )
+    {
+        List<Entry> result = new ArrayList<>();
+
+        if ( schemas == null )
+        {
+            return result;
+        }
+
+        for ( Schema schema : schemas )
+        {
+            Map<String, List<Entry>> containers = schemaObjects.get( Strings.toLowerCaseAscii( schema
+                .getSchemaName() ) );
+
+            if ( containers == null )
+            {
+                continue;
+            }
+
+            List<Entry> entries = containers.get( container );
+
+            if ( entries != null )
+            {
+                for ( Entry entry : entries )
+                {
+                    result.add( entry.clone() );
+                }
+            }
+        }
+
+        return result;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Entry> loadComparators( Schema... schemas )
+    {
+        return getEntries( "comparators", schemas );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Entry> loadSyntaxCheckers( Schema... schemas )
+    {
+        return getEntries( "syntaxcheckers", schemas );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Entry> loadNormalizers( Schema... schemas )
+    {
+        return getEntries( "normalizers", schemas );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Entry> loadMatchingRules( Schema... schemas )
+    {
+        return getEntries( "matchingrules", schemas );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Entry> loadSyntaxes( Schema... schemas )
+    {
+        return getEntries( "syntaxes", schemas );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Entry> loadAttributeTypes( Schema... schemas )
+    {
+        return getEntries( "attributetypes", schemas );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Entry> loadMatchingRuleUses( Schema... schemas )
+    {
+        return getEntries( "matchingruleuse", schemas );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Entry> loadNameForms( Schema... schemas )
+    {
+        return getEntries( "nameforms", schemas );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Entry> loadDitContentRules( Schema... schemas )
+    {
+        return getEntries( "ditcontentrules", schemas );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Entry> loadDitStructureRules( Schema... schemas )
+    {
+        return getEntries( "ditstructurerules", schemas );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Entry> loadObjectClasses( Schema... schemas )
+    {
+        return getEntries( "objectclasses", schemas );
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.ldif;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.extractor.SchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.extractor.impl.DefaultSchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.loader.LdifSchemaLoader;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+/**
+ * Tests for the LdifSnapshot and the LdifSnapshotSchemaLoader
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LdifSnapshotTest
+{
+    @TempDir
+    public Path folder;
+
+    private File schemaDirectory;
+
+    private File snapshotFile;
+
+
+    @BeforeEach
+    public void extractSchema() throws Exception
+    {
+        SchemaLdifExtractor extractor = new DefaultSchemaLdifExtractor( folder.toFile() );
+        extractor.extractOrCopy( true );
+
+        schemaDirectory = new File( folder.toFile(), "schema" );
+        snapshotFile = new File( folder.toFile(), "cache/schema.snapshot" );
+    }
+
+
+    @Test
+    public void testWriteAndReadSnapshot() throws Exception
+    {
+        LdifSnapshot snapshot = LdifSnapshot.create( schemaDirectory );
+
+        assertFalse( snapshot.getEntries().isEmpty() );
+
+        snapshot.write( snapshotFile );
+
+        LdifSnapshot read = LdifSnapshot.read( snapshotFile, schemaDirectory );
+
+        assertNotNull( read );
+        assertEquals( snapshot.getChecksum(), read.getChecksum() );
+        assertEquals( snapshot.getEntries().size(), read.getEntries().size() );
+
+        for ( int i = 0; i < snapshot.getEntries().size(); i++ )
+        {
+            Entry expected = snapshot.getEntries().get( i );
+            Entry entry = read.getEntries().get( i );
+
+            assertEquals( expected.getDn(), entry.getDn() );
+            assertEquals( expected, entry );
+        }
+
+        // The parents are stored before their children
+        assertEquals( "ou=schema", read.getEntries().get( 0 ).getDn().getName() );
+    }
+
+
+    @Test
+    public void testSnapshotInvalidatedByLdifChange() throws Exception
+    {
+        LdifSnapshot.create( schemaDirectory ).write( snapshotFile );
+
+        assertNotNull( LdifSnapshot.read( snapshotFile, schemaDirectory ) );
+
+        // Modify a schema file
+        File coreSchema = new File( schemaDirectory, "ou=schema/cn=core.ldif" );
+        Files.write( coreSchema.toPath(), Files.readAllBytes( coreSchema.toPath() ) );
+        coreSchema.setLastModified( coreSchema.lastModified() + 1000L );
+
+        assertNull( LdifSnapshot.read( snapshotFile, schemaDirectory ) );
+    }
+
+
+    @Test
+    public void testCorruptedSnapshot() throws Exception
+    {
+        LdifSnapshot.create( schemaDirectory ).write( snapshotFile );
+
+        byte[] bytes = Files.readAllBytes( snapshotFile.toPath() );
+        byte[] truncated = new byte[bytes.length / 2];
+        System.arraycopy( bytes, 0, truncated, 0, truncated.length );
+        Files.write( snapshotFile.toPath(), truncated );
+
+        assertNull( LdifSnapshot.read( snapshotFile, schemaDirectory ) );
+        assertNull( LdifSnapshot.read( new File( folder.toFile(), "missing" ), schemaDirectory ) );
+    }
+
+
+    @Test
+    public void testLoadSchemaFromSnapshot() throws Exception
+    {
+        SchemaManager ldifSchemaManager = new DefaultSchemaManager( new LdifSchemaLoader( schemaDirectory ) );
+        assertTrue( ldifSchemaManager.loadAllEnabled() );
+
+        LdifSnapshot.create( schemaDirectory ).write( snapshotFile );
+        LdifSnapshot snapshot = LdifSnapshot.read( snapshotFile, schemaDirectory );
+
+        SchemaManager snapshotSchemaManager = new DefaultSchemaManager( new LdifSnapshotSchemaLoader( snapshot ) );
+        assertTrue( snapshotSchemaManager.loadAllEnabled() );
+        assertTrue( snapshotSchemaManager.getErrors().isEmpty() );
+
+        assertEquals( ldifSchemaManager.getEnabled().size(), snapshotSchemaManager.getEnabled().size() );
+        assertEquals( ldifSchemaManager.getAttributeTypeRegistry().size(),
+            snapshotSchemaManager.getAttributeTypeRegistry().size() );
+        assertEquals( ldifSchemaManager.getObjectClassRegistry().size(),
+            snapshotSchemaManager.getObjectClassRegistry().size() );
+        assertEquals( ldifSchemaManager.getMatchingRuleRegistry().size(),
+            snapshotSchemaManager.getMatchingRuleRegistry().size() );
+        assertEquals( ldifSchemaManager.getComparatorRegistry().size(),
+            snapshotSchemaManager.getComparatorRegistry().size() );
+    }
+}
@@ -344,6 +344,8 @@ public class MavibotIndex<K> extends AbstractIndex<K, String>
         {
             reverse.put( partitionTxn, id, attrVal );
         }
+
+        keyAdded( partitionTxn, attrVal );
     }
 
 
@@ -362,6 +364,8 @@ public class MavibotIndex<K> extends AbstractIndex<K, String>
             {
                 reverse.remove( partitionTxn, id, attrVal );
             }
+
+            keyDropped( partitionTxn, attrVal );
         }
     }
 
@@ -384,7 +388,9 @@ public class MavibotIndex<K> extends AbstractIndex<K, String>
                     while ( values.next() )
                     {
                         // Remove the Key -> entryId from the index
-                        forward.remove( partitionTxn, values.get().getValue(), entryId );
+                        K key = values.get().getValue();
+                        forward.remove( partitionTxn, key, entryId );
+                        keyDropped( partitionTxn, key );
                     }
     
                     values.close();
@@ -399,6 +405,11 @@ public class MavibotIndex<K> extends AbstractIndex<K, String>
                 K key = reverse.get( partitionTxn, entryId );
 
                 forward.remove( partitionTxn, key );
+
+                if ( key != null )
+                {
+                    keyDropped( partitionTxn, key );
+                }
             }
 
             // Remove the id -> key from the reverse index
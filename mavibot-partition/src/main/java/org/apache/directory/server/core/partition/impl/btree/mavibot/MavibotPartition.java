@@ -51,6 +51,7 @@ import org.apache.directory.server.core.api.interceptor.context.MoveAndRenameOpe
 import org.apache.directory.server.core.api.interceptor.context.MoveOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.OperationContext;
 import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
+import org.apache.directory.server.core.api.metrics.MetricsRegistry;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionReadTxn;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
@@ -229,7 +230,7 @@ public class MavibotPartition extends AbstractBTreePartition
                         deleteUnusedIndexFiles( allIndices, allIndexDbFiles );
             */
 
-            entryCache = Caffeine.newBuilder().maximumSize( cacheSize ).build();
+            entryCache = Caffeine.newBuilder().maximumSize( cacheSize ).recordStats().build();
 
             // We are done !
             initialized = true;
@@ -438,6 +439,21 @@ public class MavibotPartition extends AbstractBTreePartition
     }
 
 
+    /**
+     * Registers the metrics of the caches, including the entry cache
+     */
+    @Override
+    public void registerMetrics( MetricsRegistry registry, String prefix )
+    {
+        super.registerMetrics( registry, prefix );
+
+        if ( entryCache != null )
+        {
+            registry.registerCache( prefix + "entryCache", entryCache );
+        }
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -59,6 +59,9 @@ public class MinaKerberosDecoder extends CumulativeProtocolDecoder
     public boolean doDecode( IoSession session, IoBuffer in, ProtocolDecoderOutput out ) throws Exception
     {
         ByteBuffer incomingBuf = in.buf();
+        
+        // Tells if the PDU has been fully received in the incoming buffer
+        boolean complete = false;
 
         KerberosMessageContainer krbMsgContainer = ( KerberosMessageContainer ) session
             .getAttribute( KERBEROS_MESSAGE_CONTAINER );
@@ -92,10 +95,24 @@ public class MinaKerberosDecoder extends CumulativeProtocolDecoder
                     krbMsgContainer.setTcpLength( len );
                     incomingBuf.mark();
                     
-                    ByteBuffer tmp = ByteBuffer.allocate( len );
-                    tmp.put( incomingBuf );
-                    
-                    krbMsgContainer.setStream( tmp );
+                    if ( incomingBuf.remaining() >= len )
+                    {
+                        // The whole PDU has been received : decode it from a view on the
+                        // received buffer, there is no need to copy it
+                        ByteBuffer slice = incomingBuf.slice();
+                        slice.limit( len );
+                        incomingBuf.position( incomingBuf.position() + len );
+                        
+                        krbMsgContainer.setStream( slice );
+                        complete = true;
+                    }
+                    else
+                    {
+                        ByteBuffer tmp = ByteBuffer.allocate( len );
+                        tmp.put( incomingBuf );
+                        
+                        krbMsgContainer.setStream( tmp );
+                    }
                 }
                 else
                 {
@@ -107,6 +124,7 @@ public class MinaKerberosDecoder extends CumulativeProtocolDecoder
             else // UDP
             {
                 krbMsgContainer.setStream( incomingBuf );
+                complete = true;
             }
         }
         else // must be a fragmented TCP stream, copy the incomingBuf into the existing buffer of the container
@@ -125,7 +143,7 @@ public class MinaKerberosDecoder extends CumulativeProtocolDecoder
             krbMsgContainer.getStream().put( incomingBuf );
         }
 
-        if ( krbMsgContainer.isTCP() )
+        if ( !complete && krbMsgContainer.isTCP() )
         {
             int curLen = krbMsgContainer.getStream().position();
             if ( curLen < krbMsgContainer.getTcpLength() )
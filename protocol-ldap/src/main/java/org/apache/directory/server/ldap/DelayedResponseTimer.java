@@ -0,0 +1,369 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap;
+
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A hashed timer wheel used to send responses after a delay, without holding the
+ * thread which has processed the request. It is typically used to delay the failed
+ * bind responses when the password policy pwdMinDelay is set.
+ * <p>
+ * The wheel is a circular array of buckets, each one covering a tick. A single thread
+ * advances the wheel at each tick, and runs the tasks which have expired. Scheduling
+ * and cancelling a task are constant time operations, the price being a precision
+ * bounded by the tick duration.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class DelayedResponseTimer
+{
+    /** The logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( DelayedResponseTimer.class );
+
+    /** The default tick duration, in milliseconds */
+    public static final long DEFAULT_TICK_DURATION = 100L;
+
+    /** The default number of buckets in the wheel */
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    /**
+     * A task scheduled in the wheel.
+     */
+    public static final class Timeout
+    {
+        /** The task to run */
+        private final Runnable task;
+
+        /** The tick at which the task expires */
+        private final long deadlineTick;
+
+        /** The number of full wheel rotations to wait for before the task expires */
+        private long remainingRounds;
+
+        /** Tells if the task has been cancelled */
+        private volatile boolean cancelled;
+
+        /** Tells if the task has been run */
+        private volatile boolean expired;
+
+
+        private Timeout( Runnable task, long deadlineTick )
+        {
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+
+        /**
+         * Cancel the task. It will not be run, and will be removed from the wheel
+         * the next time its bucket is processed.
+         */
+        public void cancel()
+        {
+            cancelled = true;
+        }
+
+
+        /**
+         * @return <tt>true</tt> if the task has been cancelled
+         */
+        public boolean isCancelled()
+        {
+            return cancelled;
+        }
+
+
+        /**
+         * @return <tt>true</tt> if the task has been run, or is being run
+         */
+        public boolean isExpired()
+        {
+            return expired;
+        }
+    }
+
+    /** The tick duration, in milliseconds */
+    private final long tickDuration;
+
+    /** The wheel buckets, only accessed by the timer thread */
+    private final List<List<Timeout>> wheel;
+
+    /** The tasks scheduled since the last tick */
+    private final Queue<Timeout> newTimeouts = new ConcurrentLinkedQueue<>();
+
+    /** The number of tasks waiting to be run */
+    private final AtomicInteger pending = new AtomicInteger( 0 );
+
+    /** The time the timer has been started, in nanoseconds */
+    private volatile long startTime;
+
+    /** The current tick */
+    private long tick;
+
+    /** The thread advancing the wheel */
+    private Thread worker;
+
+    /** Tells if the timer is running */
+    private volatile boolean running;
+
+
+    /**
+     * Creates a new instance of DelayedResponseTimer with the default tick duration and wheel size
+     */
+    public DelayedResponseTimer()
+    {
+        this( DEFAULT_TICK_DURATION, DEFAULT_WHEEL_SIZE );
+    }
+
+
+    /**
+     * Creates a new instance of DelayedResponseTimer
+     *
+     * @param tickDuration The tick duration, in milliseconds
+     * @param wheelSize The number of buckets in the wheel
+     */
+    public DelayedResponseTimer( long tickDuration, int wheelSize )
+    {
+        if ( ( tickDuration <= 0 ) || ( wheelSize <= 0 ) )
+        {
+            throw new IllegalArgumentException( "The tick duration and the wheel size must be positive" );
+        }
+
+        this.tickDuration = tickDuration;
+        wheel = new ArrayList<>( wheelSize );
+
+        for ( int i = 0; i < wheelSize; i++ )
+        {
+            wheel.add( new ArrayList<Timeout>() );
+        }
+    }
+
+
+    /**
+     * Starts the thread advancing the wheel
+     */
+    public synchronized void start()
+    {
+        if ( running )
+        {
+            return;
+        }
+
+        running = true;
+        startTime = System.nanoTime();
+        tick = 0L;
+
+        worker = new Thread( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                advance();
+            }
+        }, "DelayedResponseTimer" );
+
+        worker.setDaemon( true );
+        worker.start();
+    }
+
+
+    /**
+     * Stops the timer. The pending tasks are discarded.
+     */
+    public synchronized void stop()
+    {
+        if ( !running )
+        {
+            return;
+        }
+
+        running = false;
+        worker.interrupt();
+
+        try
+        {
+            worker.join( tickDuration * 10 );
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        for ( List<Timeout> bucket : wheel )
+        {
+            bucket.clear();
+        }
+
+        newTimeouts.clear();
+        pending.set( 0 );
+    }
+
+
+    /**
+     * Schedule a task to be run after a delay
+     *
+     * @param task The task to run
+     * @param delay The delay, in milliseconds
+     * @return The handle which can be used to cancel the task
+     */
+    public Timeout schedule( Runnable task, long delay )
+    {
+        long elapsed = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - startTime );
+
+        // Round up, so that a task is never run before its delay has expired
+        long deadlineTick = ( elapsed + delay + tickDuration - 1 ) / tickDuration;
+        Timeout timeout = new Timeout( task, deadlineTick );
+
+        pending.incrementAndGet();
+        newTimeouts.add( timeout );
+
+        return timeout;
+    }
+
+
+    /**
+     * @return The number of tasks waiting to be run
+     */
+    public int getPending()
+    {
+        return pending.get();
+    }
+
+
+    /**
+     * @return <tt>true</tt> if the timer has been started
+     */
+    public boolean isRunning()
+    {
+        return running;
+    }
+
+
+    /**
+     * The timer thread loop : wait for the next tick, then move the newly scheduled
+     * tasks into their buckets and run the tasks which have expired.
+     */
+    private void advance()
+    {
+        while ( running )
+        {
+            long deadline = ( tick + 1 ) * tickDuration;
+            long sleepTime = deadline - TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - startTime );
+
+            if ( sleepTime > 0 )
+            {
+                try
+                {
+                    Thread.sleep( sleepTime );
+                }
+                catch ( InterruptedException ie )
+                {
+                    if ( !running )
+                    {
+                        return;
+                    }
+                }
+
+                continue;
+            }
+
+            tick++;
+            transferNewTimeouts();
+            expire( wheel.get( ( int ) ( tick % wheel.size() ) ) );
+        }
+    }
+
+
+    /**
+     * Move the newly scheduled tasks into the bucket associated with their deadline
+     */
+    private void transferNewTimeouts()
+    {
+        Timeout timeout = newTimeouts.poll();
+
+        while ( timeout != null )
+        {
+            if ( timeout.isCancelled() )
+            {
+                pending.decrementAndGet();
+            }
+            else
+            {
+                // A task which should already have expired is run on this tick
+                long deadlineTick = Math.max( timeout.deadlineTick, tick );
+                timeout.remainingRounds = ( deadlineTick - tick ) / wheel.size();
+                wheel.get( ( int ) ( deadlineTick % wheel.size() ) ).add( timeout );
+            }
+
+            timeout = newTimeouts.poll();
+        }
+    }
+
+
+    /**
+     * Run the expired tasks of a bucket
+     */
+    private void expire( List<Timeout> bucket )
+    {
+        Iterator<Timeout> iterator = bucket.iterator();
+
+        while ( iterator.hasNext() )
+        {
+            Timeout timeout = iterator.next();
+
+            if ( timeout.isCancelled() )
+            {
+                iterator.remove();
+                pending.decrementAndGet();
+            }
+            else if ( timeout.remainingRounds <= 0 )
+            {
+                iterator.remove();
+                pending.decrementAndGet();
+                timeout.expired = true;
+
+                try
+                {
+                    timeout.task.run();
+                }
+                catch ( Exception e )
+                {
+                    LOG.warn( "A delayed task has failed : {}", e.getMessage(), e );
+                }
+            }
+            else
+            {
+                timeout.remainingRounds--;
+            }
+        }
+    }
+}
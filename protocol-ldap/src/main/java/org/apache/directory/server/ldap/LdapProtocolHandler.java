@@ -132,6 +132,19 @@ class LdapProtocolHandler extends DemuxingIoHandler
         // Abandon all the requests
         ldapSession.abandonAllOutstandingRequests();
 
+        // Don't send the delayed responses on a closed session
+        ldapSession.cancelDelayedResponses();
+
+        // Release the cursors of the pending paged searches
+        try
+        {
+            ldapSession.closeAllPagedSearches();
+        }
+        catch ( Exception e )
+        {
+            LOG.warn( "Failed to close the paged searches of the session {}", ldapSession );
+        }
+
         if ( !ldapSession.getIoSession().isClosing() || ldapSession.getIoSession().isConnected() )
         {
             try
@@ -23,12 +23,14 @@ package org.apache.directory.server.ldap;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import javax.net.ssl.KeyManagerFactory;
 
@@ -49,6 +51,7 @@ import org.apache.directory.api.ldap.model.message.DeleteResponse;
 import org.apache.directory.api.ldap.model.message.ExtendedRequest;
 import org.apache.directory.api.ldap.model.message.ExtendedResponse;
 import org.apache.directory.api.ldap.model.message.IntermediateResponse;
+import org.apache.directory.api.ldap.model.message.MessageTypeEnum;
 import org.apache.directory.api.ldap.model.message.ModifyDnRequest;
 import org.apache.directory.api.ldap.model.message.ModifyDnResponse;
 import org.apache.directory.api.ldap.model.message.ModifyRequest;
@@ -59,12 +62,19 @@ import org.apache.directory.api.ldap.model.message.SearchResultEntry;
 import org.apache.directory.api.ldap.model.message.SearchResultReference;
 import org.apache.directory.api.ldap.model.message.UnbindRequest;
 import org.apache.directory.api.ldap.model.message.extended.NoticeOfDisconnect;
+import org.apache.directory.api.util.Strings;
 import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.interceptor.context.SearchBudget;
+import org.apache.directory.server.core.api.metrics.Gauge;
+import org.apache.directory.server.core.api.metrics.LatencyHistogram;
+import org.apache.directory.server.core.api.metrics.MetricsRegistry;
 import org.apache.directory.server.core.api.partition.PartitionNexus;
 import org.apache.directory.server.core.security.CertificateUtil;
 import org.apache.directory.server.i18n.I18n;
 import org.apache.directory.server.ldap.handlers.LdapRequestHandler;
 import org.apache.directory.server.ldap.handlers.LdapResponseHandler;
+import org.apache.directory.server.ldap.handlers.PersistentSearchFanOut;
+import org.apache.directory.server.ldap.handlers.controls.PagedSearchRegistry;
 import org.apache.directory.server.ldap.handlers.extended.StartTlsHandler;
 import org.apache.directory.server.ldap.handlers.request.AbandonRequestHandler;
 import org.apache.directory.server.ldap.handlers.request.AddRequestHandler;
@@ -251,6 +261,34 @@ public class LdapServer extends DirectoryBackedService
     /** the time interval between subsequent pings to each replication provider */
     private int pingerSleepTime;
 
+    /** The timer used to send the delayed responses without holding a thread */
+    private DelayedResponseTimer delayedResponseTimer;
+
+    /** The registry of the open paged search contexts */
+    private final PagedSearchRegistry pagedSearchRegistry = new PagedSearchRegistry();
+
+    /** The maximum number of candidates a search can examine, 0 for no limit */
+    private long maxCandidatesExamined = SearchBudget.NO_LIMIT;
+
+    /** The number of searches stopped by their budget */
+    private final SearchBudget.Statistics searchBudgetStatistics = new SearchBudget.Statistics();
+
+    /** The encoder of the persistent search notifications, created on first use */
+    private volatile PersistentSearchFanOut persistentSearchFanOut;
+
+    /** The maximum number of messages waiting to be written to a session with persistent searches */
+    private int maxPendingNotifications = PersistentSearchFanOut.DEFAULT_MAX_PENDING_NOTIFICATIONS;
+
+    /** Tells if the requests are processed on virtual threads, when the JVM supports them */
+    private boolean useVirtualThreads;
+
+    /** The executors running the requests on virtual threads */
+    private final List<SessionOrderedExecutor> virtualThreadExecutors = new ArrayList<>();
+
+    /** The time spent handling each type of request, filled when the server is started */
+    private volatile Map<MessageTypeEnum, LatencyHistogram> requestLatencies =
+        new EnumMap<>( MessageTypeEnum.class );
+
     /**
      * the list of cipher suites to be used in LDAPS and StartTLS
      * @deprecated See the {@link TcpTransport} class that contains this list
@@ -438,9 +476,15 @@ public class LdapServer extends DirectoryBackedService
 
         nexus.registerSupportedSaslMechanisms( saslMechanismHandlers.keySet() );
 
+        // Start the timer used to delay the failed bind responses
+        delayedResponseTimer = new DelayedResponseTimer();
+        delayedResponseTimer.start();
+
         // Install the replication handler if we have one
         startReplicationProducer();
 
+        registerMetrics();
+
         for ( Transport transport : transports )
         {
             if ( !( transport instanceof TcpTransport ) )
@@ -466,9 +510,9 @@ public class LdapServer extends DirectoryBackedService
 
             // Now inject an ExecutorFilter for the write operations
             // We use the same number of thread than the number of IoProcessor
-            // (NOTE : this has to be double checked)
+            // (NOTE : this has to be double checked), unless the requests run on virtual threads
             ( ( DefaultIoFilterChainBuilder ) chain ).addLast( "executor", new ExecutorFilter(
-                new UnorderedThreadPoolExecutor( transport.getNbThreads() ), IoEventType.MESSAGE_RECEIVED ) );
+                createRequestExecutor( transport ), IoEventType.MESSAGE_RECEIVED ) );
 
             /*
             // Trace all the incoming and outgoing message to the console
@@ -502,6 +546,199 @@ public class LdapServer extends DirectoryBackedService
     }
 
 
+    /**
+     * Registers the histograms of the requests, named after their type, like <em>ldap.searchRequest</em>,
+     * and the gauges of the sessions, the paged and persistent searches, the search budgets and the
+     * virtual thread executors
+     */
+    private void registerMetrics()
+    {
+        MetricsRegistry metricsRegistry = getDirectoryService().getMetricsRegistry();
+
+        if ( metricsRegistry == null )
+        {
+            return;
+        }
+
+        Map<MessageTypeEnum, LatencyHistogram> latencies = new EnumMap<>( MessageTypeEnum.class );
+
+        for ( MessageTypeEnum messageType : MessageTypeEnum.values() )
+        {
+            String typeName = messageType.name();
+
+            if ( typeName.endsWith( "_REQUEST" ) )
+            {
+                StringBuilder name = new StringBuilder( MetricsRegistry.LDAP_PREFIX );
+                boolean upper = false;
+
+                for ( char c : Strings.toLowerCaseAscii( typeName ).toCharArray() )
+                {
+                    if ( c == '_' )
+                    {
+                        upper = true;
+                    }
+                    else
+                    {
+                        name.append( upper ? Character.toUpperCase( c ) : c );
+                        upper = false;
+                    }
+                }
+
+                latencies.put( messageType, metricsRegistry.getHistogram( name.toString() ) );
+            }
+        }
+
+        requestLatencies = latencies;
+
+        for ( String gauge : ServerGauge.NAMES )
+        {
+            metricsRegistry.registerGauge( MetricsRegistry.LDAP_PREFIX + gauge, new ServerGauge( this, gauge ) );
+        }
+    }
+
+
+    /**
+     * Records the time spent handling a request
+     *
+     * @param messageType The request type
+     * @param nanos The time spent, in nanoseconds
+     */
+    public void recordRequestLatency( MessageTypeEnum messageType, long nanos )
+    {
+        LatencyHistogram histogram = requestLatencies.get( messageType );
+
+        if ( histogram != null )
+        {
+            histogram.record( nanos );
+        }
+    }
+
+
+    /**
+     * A gauge reading one of the LdapServer counters
+     */
+    private static final class ServerGauge implements Gauge
+    {
+        /** The published gauges */
+        private static final String SESSIONS = "sessions";
+        private static final String PAGED_SEARCH_CONTEXTS = "pagedSearch.contexts";
+        private static final String PAGED_SEARCH_PEAK_CONTEXTS = "pagedSearch.peakContexts";
+        private static final String PAGED_SEARCH_EVICTED = "pagedSearch.evicted";
+        private static final String PAGED_SEARCH_RESUMED = "pagedSearch.resumed";
+        private static final String PAGED_SEARCH_MEMORY = "pagedSearch.estimatedMemory";
+        private static final String BUDGET_CANDIDATES = "searchBudget.candidateLimitExceeded";
+        private static final String BUDGET_TIME = "searchBudget.timeLimitExceeded";
+        private static final String BUDGET_ABANDONED = "searchBudget.abandoned";
+        private static final String PSEARCH_ENCODED = "persistentSearch.encoded";
+        private static final String PSEARCH_SENT = "persistentSearch.sent";
+        private static final String PSEARCH_OVERFLOWS = "persistentSearch.overflows";
+        private static final String VIRTUAL_THREADS_RUNNING = "virtualThreads.running";
+        private static final String VIRTUAL_THREADS_EXECUTED = "virtualThreads.executed";
+
+        /** All the published gauges */
+        private static final String[] NAMES =
+            {
+                SESSIONS, PAGED_SEARCH_CONTEXTS, PAGED_SEARCH_PEAK_CONTEXTS, PAGED_SEARCH_EVICTED,
+                PAGED_SEARCH_RESUMED, PAGED_SEARCH_MEMORY, BUDGET_CANDIDATES, BUDGET_TIME, BUDGET_ABANDONED,
+                PSEARCH_ENCODED, PSEARCH_SENT, PSEARCH_OVERFLOWS, VIRTUAL_THREADS_RUNNING, VIRTUAL_THREADS_EXECUTED
+        };
+
+        /** The server whose counters are read */
+        private final LdapServer server;
+
+        /** The gauge name */
+        private final String name;
+
+
+        private ServerGauge( LdapServer server, String name )
+        {
+            this.server = server;
+            this.name = name;
+        }
+
+
+        @Override
+        public long getValue()
+        {
+            PagedSearchRegistry pagedSearchRegistry = server.pagedSearchRegistry;
+            SearchBudget.Statistics searchBudgetStatistics = server.searchBudgetStatistics;
+            PersistentSearchFanOut fanOut = server.persistentSearchFanOut;
+
+            switch ( name )
+            {
+                case SESSIONS:
+                    long nbSessions = 0L;
+
+                    for ( Transport transport : server.getTransports() )
+                    {
+                        if ( ( transport instanceof TcpTransport ) && ( transport.getAcceptor() != null ) )
+                        {
+                            nbSessions += transport.getAcceptor().getManagedSessionCount();
+                        }
+                    }
+
+                    return nbSessions;
+
+                case PAGED_SEARCH_CONTEXTS:
+                    return pagedSearchRegistry.getNbContexts();
+
+                case PAGED_SEARCH_PEAK_CONTEXTS:
+                    return pagedSearchRegistry.getPeakContexts();
+
+                case PAGED_SEARCH_EVICTED:
+                    return pagedSearchRegistry.getNbEvicted();
+
+                case PAGED_SEARCH_RESUMED:
+                    return pagedSearchRegistry.getNbResumed();
+
+                case PAGED_SEARCH_MEMORY:
+                    return pagedSearchRegistry.getEstimatedMemory();
+
+                case BUDGET_CANDIDATES:
+                    return searchBudgetStatistics.getNbCandidateLimitExceeded();
+
+                case BUDGET_TIME:
+                    return searchBudgetStatistics.getNbTimeLimitExceeded();
+
+                case BUDGET_ABANDONED:
+                    return searchBudgetStatistics.getNbAbandoned();
+
+                case PSEARCH_ENCODED:
+                    return ( fanOut == null ) ? 0L : fanOut.getNbEncoded();
+
+                case PSEARCH_SENT:
+                    return ( fanOut == null ) ? 0L : fanOut.getNbSent();
+
+                case PSEARCH_OVERFLOWS:
+                    return ( fanOut == null ) ? 0L : fanOut.getNbOverflows();
+
+                case VIRTUAL_THREADS_RUNNING:
+                    long nbRunning = 0L;
+
+                    for ( SessionOrderedExecutor executor : new ArrayList<>( server.virtualThreadExecutors ) )
+                    {
+                        nbRunning += executor.getNbRunning();
+                    }
+
+                    return nbRunning;
+
+                case VIRTUAL_THREADS_EXECUTED:
+                    long nbExecuted = 0L;
+
+                    for ( SessionOrderedExecutor executor : new ArrayList<>( server.virtualThreadExecutors ) )
+                    {
+                        nbExecuted += executor.getNbExecuted();
+                    }
+
+                    return nbExecuted;
+
+                default:
+                    return 0L;
+            }
+        }
+    }
+
+
     /**
      * Install the replication handler if we have one
      */
@@ -515,12 +752,46 @@ public class LdapServer extends DirectoryBackedService
     }
 
 
+    /**
+     * Creates the executor processing the requests received on a transport : a pool of
+     * nbThreads threads, or a virtual thread per request if it has been requested and if
+     * the JVM supports them.
+     */
+    private Executor createRequestExecutor( Transport transport )
+    {
+        if ( useVirtualThreads )
+        {
+            SessionOrderedExecutor executor = SessionOrderedExecutor.newVirtualThreadExecutor();
+
+            if ( executor != null )
+            {
+                LOG.info( "The requests received on {} are processed on virtual threads", transport );
+                virtualThreadExecutors.add( executor );
+
+                return executor;
+            }
+
+            LOG.warn( "The virtual threads are not supported by this JVM, the requests received on {} are "
+                + "processed by a pool of {} threads", transport, transport.getNbThreads() );
+        }
+
+        return new UnorderedThreadPoolExecutor( transport.getNbThreads() );
+    }
+
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void stop()
     {
+        MetricsRegistry metricsRegistry = getDirectoryService().getMetricsRegistry();
+
+        if ( metricsRegistry != null )
+        {
+            metricsRegistry.unregisterAll( MetricsRegistry.LDAP_PREFIX );
+        }
+
         try
         {
             for ( Transport transport : transports )
@@ -589,6 +860,19 @@ public class LdapServer extends DirectoryBackedService
             LOG.warn( "Failed to sent NoD.", e );
         }
 
+        if ( delayedResponseTimer != null )
+        {
+            delayedResponseTimer.stop();
+            delayedResponseTimer = null;
+        }
+
+        for ( SessionOrderedExecutor executor : virtualThreadExecutors )
+        {
+            executor.shutdown();
+        }
+
+        virtualThreadExecutors.clear();
+
         started = false;
         LOG.info( "Ldap service stopped." );
     }
@@ -918,6 +1202,38 @@ public class LdapServer extends DirectoryBackedService
     }
 
 
+    /**
+     * Sets the maximum number of candidates a non administrator search can examine. A search
+     * rejecting most of its candidates is stopped with an adminLimitExceeded error when it
+     * reaches this limit.
+     *
+     * @param maxCandidatesExamined The maximum number of examined candidates, 0 for no limit
+     */
+    public void setMaxCandidatesExamined( long maxCandidatesExamined )
+    {
+        this.maxCandidatesExamined = maxCandidatesExamined;
+    }
+
+
+    /**
+     * @return The maximum number of candidates a non administrator search can examine, 0 for no limit
+     */
+    public long getMaxCandidatesExamined()
+    {
+        return maxCandidatesExamined;
+    }
+
+
+    /**
+     * @return The number of searches stopped while examining their candidates, because they
+     * were out of time, had examined too many candidates, or were abandoned
+     */
+    public SearchBudget.Statistics getSearchBudgetStatistics()
+    {
+        return searchBudgetStatistics;
+    }
+
+
     /**
      * Gets the {@link ExtendedOperationHandler}s.
      *
@@ -1635,6 +1951,113 @@ public class LdapServer extends DirectoryBackedService
     }
 
 
+    /**
+     * @return The registry of the open paged search contexts
+     */
+    public PagedSearchRegistry getPagedSearchRegistry()
+    {
+        return pagedSearchRegistry;
+    }
+
+
+    /**
+     * Sets the maximum number of paged search contexts kept open by all the sessions. Above
+     * this number, the least recently used idle contexts are closed, and the clients resume
+     * their search from the cookie.
+     *
+     * @param maxPagedSearchContexts The maximum number of open paged search contexts
+     */
+    public void setMaxPagedSearchContexts( int maxPagedSearchContexts )
+    {
+        pagedSearchRegistry.setMaxContexts( maxPagedSearchContexts );
+    }
+
+
+    /**
+     * @return The maximum number of open paged search contexts
+     */
+    public int getMaxPagedSearchContexts()
+    {
+        return pagedSearchRegistry.getMaxContexts();
+    }
+
+
+    /**
+     * @return The encoder of the notifications sent to the persistent searches
+     */
+    public synchronized PersistentSearchFanOut getPersistentSearchFanOut()
+    {
+        if ( persistentSearchFanOut == null )
+        {
+            persistentSearchFanOut = new PersistentSearchFanOut( getDirectoryService().getLdapCodecService() );
+            persistentSearchFanOut.setMaxPendingNotifications( maxPendingNotifications );
+        }
+
+        return persistentSearchFanOut;
+    }
+
+
+    /**
+     * @return The maximum number of messages waiting to be written to a session before its
+     * persistent searches are terminated
+     */
+    public synchronized int getMaxPendingNotifications()
+    {
+        return maxPendingNotifications;
+    }
+
+
+    /**
+     * Sets the maximum number of messages waiting to be written to a session before its
+     * persistent searches are terminated with an adminLimitExceeded result. This bounds the
+     * memory used by the clients which do not read their notifications.
+     *
+     * @param maxPendingNotifications The maximum number of pending messages
+     */
+    public synchronized void setMaxPendingNotifications( int maxPendingNotifications )
+    {
+        this.maxPendingNotifications = maxPendingNotifications;
+
+        if ( persistentSearchFanOut != null )
+        {
+            persistentSearchFanOut.setMaxPendingNotifications( maxPendingNotifications );
+        }
+    }
+
+
+    /**
+     * @return <tt>true</tt> if the requests are processed on virtual threads, when the JVM
+     * supports them
+     */
+    public boolean isUseVirtualThreads()
+    {
+        return useVirtualThreads;
+    }
+
+
+    /**
+     * Process each request on its own virtual thread instead of a pool of nbThreads
+     * threads per transport. The requests of a session keep their ordering. This is
+     * ignored if the JVM does not support the virtual threads, and must be set before
+     * the server is started.
+     *
+     * @param useVirtualThreads <tt>true</tt> to process the requests on virtual threads
+     */
+    public void setUseVirtualThreads( boolean useVirtualThreads )
+    {
+        this.useVirtualThreads = useVirtualThreads;
+    }
+
+
+    /**
+     * @return The timer used to send the delayed responses, or null if the server is not started
+     */
+    public DelayedResponseTimer getDelayedResponseTimer()
+    {
+        return delayedResponseTimer;
+    }
+
+
     public void setReplConsumers( List<ReplicationConsumer> replConsumers )
     {
         this.replConsumers = replConsumers;
@@ -96,6 +96,9 @@ public class LdapSession
     /** A map containing all the paged search context */
     private Map<Integer, PagedSearchContext> pagedSearchContexts;
 
+    /** The responses which are waiting to be sent by the DelayedResponseTimer */
+    private Map<Runnable, DelayedResponseTimer.Timeout> delayedResponses;
+
 
     /**
      * Creates a new instance of LdapSession associated with the underlying
@@ -112,6 +115,7 @@ public class LdapSession
         bindStatus = BindStatus.ANONYMOUS;
         saslProperties = new HashMap<>();
         pagedSearchContexts = new ConcurrentHashMap<>();
+        delayedResponses = new ConcurrentHashMap<>();
     }
 
 
@@ -509,6 +513,63 @@ public class LdapSession
     }
 
 
+    /**
+     * Write a response after a delay, without holding the current thread. If there
+     * is no timer, or if the delay is not positive, the response is written immediately.
+     * The response is dropped if the session has been closed in the meantime.
+     *
+     * @param timer The timer used to delay the response
+     * @param response The response to write
+     * @param delay The delay, in milliseconds
+     */
+    public void writeDelayed( DelayedResponseTimer timer, final Object response, long delay )
+    {
+        if ( ( timer == null ) || !timer.isRunning() || ( delay <= 0 ) )
+        {
+            ioSession.write( response );
+
+            return;
+        }
+
+        Runnable task = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                delayedResponses.remove( this );
+
+                if ( ioSession.isConnected() && !ioSession.isClosing() )
+                {
+                    ioSession.write( response );
+                }
+            }
+        };
+
+        DelayedResponseTimer.Timeout timeout = timer.schedule( task, delay );
+        delayedResponses.put( task, timeout );
+
+        // The task may have been run before we stored it
+        if ( timeout.isExpired() )
+        {
+            delayedResponses.remove( task );
+        }
+    }
+
+
+    /**
+     * Cancel all the responses waiting to be sent, typically when the session is closed.
+     */
+    public void cancelDelayedResponses()
+    {
+        for ( DelayedResponseTimer.Timeout timeout : delayedResponses.values() )
+        {
+            timeout.cancel();
+        }
+
+        delayedResponses.clear();
+    }
+
+
     /**
      * Add a new Paged Search context into the stored context. If some
      * context with the same id already exists, it will be closed and
@@ -518,8 +579,19 @@ public class LdapSession
      */
     public void addPagedSearchContext( PagedSearchContext context )
     {
+        context.setSession( this );
         PagedSearchContext oldContext = pagedSearchContexts.put( context.getCookieValue(), context );
 
+        if ( ldapServer != null )
+        {
+            if ( oldContext != null )
+            {
+                ldapServer.getPagedSearchRegistry().unregister( oldContext );
+            }
+
+            ldapServer.getPagedSearchRegistry().register( context );
+        }
+
         if ( oldContext != null )
         {
             // ??? Very unlikely to happen ...
@@ -548,7 +620,26 @@ public class LdapSession
      */
     public PagedSearchContext removePagedSearchContext( int contextId )
     {
-        return pagedSearchContexts.remove( contextId );
+        PagedSearchContext context = pagedSearchContexts.remove( contextId );
+
+        if ( ( context != null ) && ( ldapServer != null ) )
+        {
+            ldapServer.getPagedSearchRegistry().unregister( context );
+        }
+
+        return context;
+    }
+
+
+    /**
+     * Remove a Paged Search context evicted by the PagedSearchRegistry. Its cursor is
+     * closed by the registry.
+     *
+     * @param context The evicted context
+     */
+    public void evictPagedSearchContext( PagedSearchContext context )
+    {
+        pagedSearchContexts.remove( context.getCookieValue(), context );
     }
 
 
@@ -561,6 +652,11 @@ public class LdapSession
     {
         for ( Map.Entry<Integer, PagedSearchContext> entry : pagedSearchContexts.entrySet() )
         {
+            if ( ldapServer != null )
+            {
+                ldapServer.getPagedSearchRegistry().unregister( entry.getValue() );
+            }
+
             Cursor<Entry> cursor = entry.getValue().getCursor();
 
             if ( cursor != null )
@@ -568,6 +664,8 @@ public class LdapSession
                 cursor.close();
             }
         }
+
+        pagedSearchContexts.clear();
     }
 
     /**
@@ -577,7 +675,36 @@ public class LdapSession
      */
     public PagedSearchContext getPagedSearchContext( int contextId )
     {
-        return pagedSearchContexts.get( contextId );
+        PagedSearchContext context = pagedSearchContexts.get( contextId );
+
+        if ( ( context != null ) && ( ldapServer != null ) )
+        {
+            ldapServer.getPagedSearchRegistry().touch( context );
+        }
+
+        return context;
+    }
+
+
+    /**
+     * Get the paged search context associated with an ID, and mark it in use so that it
+     * is not evicted while its next page is read. It must then be released by the
+     * PagedSearchRegistry.
+     *
+     * @param contextId The id for the context we want to get
+     * @return The associated context, or null if it does not exist or has been evicted
+     */
+    public PagedSearchContext acquirePagedSearchContext( int contextId )
+    {
+        PagedSearchContext context = pagedSearchContexts.get( contextId );
+
+        if ( ( context != null ) && ( ldapServer != null )
+            && !ldapServer.getPagedSearchRegistry().acquire( context ) )
+        {
+            return null;
+        }
+
+        return context;
     }
 
 
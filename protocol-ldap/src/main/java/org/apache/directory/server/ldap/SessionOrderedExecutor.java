@@ -0,0 +1,366 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap;
+
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.directory.api.ldap.model.message.BindRequest;
+import org.apache.directory.api.ldap.model.message.ExtendedRequest;
+import org.apache.directory.api.ldap.model.message.UnbindRequest;
+import org.apache.mina.core.session.AttributeKey;
+import org.apache.mina.core.session.IoEvent;
+import org.apache.mina.core.session.IoSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * An executor running each received LDAP request in its own task, typically on a virtual
+ * thread, while keeping the ordering of the requests of a session :
+ * <ul>
+ *   <li>the requests of a session are started in the order they have been received</li>
+ *   <li>a Bind, an Unbind or an Extended request (StartTLS, transactions...) only starts
+ *   when all the previous requests of its session are completed, and the following requests
+ *   wait for it to complete</li>
+ *   <li>the other requests of a session run concurrently, so that an Abandon request is
+ *   processed while the search it abandons is running</li>
+ * </ul>
+ * This is the ordering the UnorderedThreadPoolExecutor gives when its pool is large enough,
+ * plus the serialization RFC 4511 expects around the Bind and the StartTLS operations. A
+ * request blocking its thread (password policy, slow disk, replication...) does not prevent
+ * the other sessions from being served, as no pool has to be sized.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SessionOrderedExecutor implements Executor
+{
+    /** The logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( SessionOrderedExecutor.class );
+
+    /** The session attribute holding the session queue */
+    private static final AttributeKey SESSION_QUEUE = new AttributeKey( SessionOrderedExecutor.class, "queue" );
+
+    /** The executor running the tasks */
+    private final ExecutorService taskExecutor;
+
+    /** The number of running tasks */
+    private final AtomicInteger nbRunning = new AtomicInteger();
+
+    /** The number of tasks which have been run */
+    private final AtomicLong nbExecuted = new AtomicLong();
+
+
+    /**
+     * A task waiting in its session queue
+     */
+    private static final class PendingTask
+    {
+        /** The task to run */
+        private final Runnable task;
+
+        /** Tells if the task must run alone in its session */
+        private final boolean exclusive;
+
+
+        private PendingTask( Runnable task, boolean exclusive )
+        {
+            this.task = task;
+            this.exclusive = exclusive;
+        }
+    }
+
+
+    /**
+     * The requests of a session, waiting to be started
+     */
+    private final class SessionQueue
+    {
+        /** The tasks waiting to be started */
+        private final Queue<PendingTask> pending = new ArrayDeque<>();
+
+        /** The number of running tasks in this session */
+        private int running;
+
+        /** Tells if an exclusive task is running */
+        private boolean exclusiveRunning;
+
+
+        /**
+         * Queues a task, and starts all the tasks which can be started
+         */
+        private void offer( Runnable task, boolean exclusive )
+        {
+            List<PendingTask> startable;
+
+            synchronized ( this )
+            {
+                pending.add( new PendingTask( task, exclusive ) );
+                startable = poll();
+            }
+
+            start( startable );
+        }
+
+
+        /**
+         * Called when a task is completed : starts the tasks which were waiting for it
+         */
+        private void completed( boolean exclusive )
+        {
+            List<PendingTask> startable;
+
+            synchronized ( this )
+            {
+                running--;
+
+                if ( exclusive )
+                {
+                    exclusiveRunning = false;
+                }
+
+                startable = poll();
+            }
+
+            start( startable );
+        }
+
+
+        /**
+         * Removes the tasks which can be started from the queue. Must be called while holding
+         * the queue lock.
+         */
+        private List<PendingTask> poll()
+        {
+            List<PendingTask> startable = null;
+
+            while ( !exclusiveRunning && !pending.isEmpty() )
+            {
+                PendingTask head = pending.peek();
+
+                if ( head.exclusive && ( running > 0 ) )
+                {
+                    break;
+                }
+
+                pending.poll();
+                running++;
+                exclusiveRunning = head.exclusive;
+
+                if ( startable == null )
+                {
+                    startable = new ArrayList<>( 1 );
+                }
+
+                startable.add( head );
+            }
+
+            return startable;
+        }
+
+
+        /**
+         * Starts the given tasks, out of the queue lock
+         */
+        private void start( List<PendingTask> startable )
+        {
+            if ( startable == null )
+            {
+                return;
+            }
+
+            for ( final PendingTask pendingTask : startable )
+            {
+                try
+                {
+                    taskExecutor.execute( new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            nbRunning.incrementAndGet();
+
+                            try
+                            {
+                                pendingTask.task.run();
+                            }
+                            finally
+                            {
+                                nbRunning.decrementAndGet();
+                                nbExecuted.incrementAndGet();
+                                completed( pendingTask.exclusive );
+                            }
+                        }
+                    } );
+                }
+                catch ( RejectedExecutionException ree )
+                {
+                    // The executor has been shut down, the server is stopping
+                    LOG.debug( "Dropping a request, the executor has been shut down" );
+
+                    synchronized ( this )
+                    {
+                        running--;
+
+                        if ( pendingTask.exclusive )
+                        {
+                            exclusiveRunning = false;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Creates a new instance of SessionOrderedExecutor.
+     *
+     * @param taskExecutor The executor running the tasks. It must not limit the number of
+     * concurrent tasks, as the requests of a session may wait for each other
+     */
+    public SessionOrderedExecutor( ExecutorService taskExecutor )
+    {
+        this.taskExecutor = taskExecutor;
+    }
+
+
+    /**
+     * Creates an executor running each request on a new virtual thread.
+     *
+     * @return The executor, or null if the JVM does not support the virtual threads
+     */
+    public static SessionOrderedExecutor newVirtualThreadExecutor()
+    {
+        try
+        {
+            // The server is built for Java 8 : the virtual threads executor is created by reflection
+            ExecutorService virtualThreadExecutor = ( ExecutorService ) Executors.class
+                .getMethod( "newVirtualThreadPerTaskExecutor" ).invoke( null );
+
+            return new SessionOrderedExecutor( virtualThreadExecutor );
+        }
+        catch ( ReflectiveOperationException | RuntimeException e )
+        {
+            LOG.debug( "The virtual threads are not available", e );
+
+            return null;
+        }
+    }
+
+
+    /**
+     * @return <tt>true</tt> if the JVM supports the virtual threads
+     */
+    public static boolean isVirtualThreadAvailable()
+    {
+        try
+        {
+            Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" );
+
+            return true;
+        }
+        catch ( NoSuchMethodException nsme )
+        {
+            return false;
+        }
+    }
+
+
+    /**
+     * Tells if a request must run alone in its session
+     *
+     * @param message The received message
+     * @return <tt>true</tt> for a Bind, an Unbind or an Extended request
+     */
+    private static boolean isExclusive( Object message )
+    {
+        return ( message instanceof BindRequest ) || ( message instanceof UnbindRequest )
+            || ( message instanceof ExtendedRequest );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute( Runnable task )
+    {
+        if ( !( task instanceof IoEvent ) )
+        {
+            taskExecutor.execute( task );
+
+            return;
+        }
+
+        IoEvent event = ( IoEvent ) task;
+        IoSession session = event.getSession();
+        SessionQueue queue = ( SessionQueue ) session.getAttribute( SESSION_QUEUE );
+
+        if ( queue == null )
+        {
+            queue = new SessionQueue();
+            SessionQueue oldQueue = ( SessionQueue ) session.setAttributeIfAbsent( SESSION_QUEUE, queue );
+
+            if ( oldQueue != null )
+            {
+                queue = oldQueue;
+            }
+        }
+
+        queue.offer( task, isExclusive( event.getParameter() ) );
+    }
+
+
+    /**
+     * Stops accepting new requests. The running requests are not interrupted.
+     */
+    public void shutdown()
+    {
+        taskExecutor.shutdown();
+    }
+
+
+    /**
+     * @return The number of running requests
+     */
+    public int getNbRunning()
+    {
+        return nbRunning.get();
+    }
+
+
+    /**
+     * @return The number of requests which have been run
+     */
+    public long getNbExecuted()
+    {
+        return nbExecuted.get();
+    }
+}
@@ -192,7 +192,7 @@ public abstract class LdapRequestHandler<T extends Request> implements MessageHa
         // only if it's not a BindRequest
         if ( message instanceof BindRequest )
         {
-            handle( ldapSession, message );
+            timedHandle( ldapSession, message );
         }
         else
         {
@@ -206,7 +206,7 @@ public abstract class LdapRequestHandler<T extends Request> implements MessageHa
             if ( ldapSession.isAuthenticated() )
             {
                 coreSession = ldapSession.getCoreSession();
-                handle( ldapSession, message );
+                timedHandle( ldapSession, message );
                 return;
             }
 
@@ -221,11 +221,22 @@ public abstract class LdapRequestHandler<T extends Request> implements MessageHa
                 return;
             }
 
-            handle( ldapSession, message );
+            timedHandle( ldapSession, message );
         }
     }
 
 
+    /**
+     * Handles a message, and records the time spent in the server metrics
+     */
+    private void timedHandle( LdapSession ldapSession, T message ) throws Exception
+    {
+        long start = System.nanoTime();
+        handle( ldapSession, message );
+        ldapServer.recordRequestLatency( message.getType(), System.nanoTime() - start );
+    }
+
+
     /**
      * Handle a Ldap message associated with a session
      *
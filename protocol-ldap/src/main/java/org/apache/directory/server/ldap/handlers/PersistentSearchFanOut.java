@@ -0,0 +1,340 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap.handlers;
+
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.directory.api.asn1.EncoderException;
+import org.apache.directory.api.asn1.util.Asn1Buffer;
+import org.apache.directory.api.ldap.codec.api.LdapApiService;
+import org.apache.directory.api.ldap.codec.api.LdapEncoder;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.message.SearchResultEntry;
+import org.apache.directory.api.ldap.model.message.SearchResultEntryImpl;
+import org.apache.directory.api.ldap.model.message.controls.ChangeType;
+import org.apache.directory.api.ldap.model.message.controls.EntryChange;
+import org.apache.directory.api.ldap.model.message.controls.EntryChangeImpl;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.server.core.api.interceptor.context.ChangeOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.MoveOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
+import org.apache.mina.core.buffer.IoBuffer;
+
+
+/**
+ * Builds the SearchResultEntry PDUs sent to the persistent searches. When a change is
+ * selected by many persistent searches, the searches asking for the same attributes
+ * and for the same controls get the same PDU : its body (the protocolOp and the controls)
+ * is encoded once, and only the LDAPMessage header holding the message ID is built for
+ * each search.
+ * <p>
+ * The PDUs are written as IoBuffers, which are not encoded again by the codec filter.
+ * The MINA write queue of each session is used as a bounded queue : a persistent search
+ * whose client does not read its notifications fast enough is terminated when more than
+ * {@link #getMaxPendingNotifications()} messages are waiting to be written.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class PersistentSearchFanOut
+{
+    /** The default maximum number of messages waiting to be written to a session */
+    public static final int DEFAULT_MAX_PENDING_NOTIFICATIONS = 10000;
+
+    /** The number of changes for which the encoded bodies are kept */
+    private static final int MAX_CACHED_CHANGES = 32;
+
+    /** The LDAP codec */
+    private final LdapApiService codec;
+
+    /** The encoded bodies of the last changes, per projection */
+    private final Map<ChangeOperationContext, Map<String, byte[]>> cache =
+        new LinkedHashMap<ChangeOperationContext, Map<String, byte[]>>()
+        {
+            private static final long serialVersionUID = 1L;
+
+
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<ChangeOperationContext, Map<String, byte[]>> eldest )
+            {
+                return size() > MAX_CACHED_CHANGES;
+            }
+        };
+
+    /** The maximum number of messages waiting to be written to a session */
+    private volatile int maxPendingNotifications = DEFAULT_MAX_PENDING_NOTIFICATIONS;
+
+    /** The number of encoded bodies */
+    private final AtomicLong nbEncoded = new AtomicLong();
+
+    /** The number of sent notifications */
+    private final AtomicLong nbSent = new AtomicLong();
+
+    /** The number of persistent searches terminated because their client was too slow */
+    private final AtomicLong nbOverflows = new AtomicLong();
+
+
+    /**
+     * Creates a new instance of PersistentSearchFanOut.
+     *
+     * @param codec The LDAP codec used to encode the notifications
+     */
+    public PersistentSearchFanOut( LdapApiService codec )
+    {
+        this.codec = codec;
+    }
+
+
+    /**
+     * Builds the PDU notifying a persistent search of a change.
+     *
+     * @param listener The persistent search to notify
+     * @param opContext The change
+     * @param type The type of change
+     * @param objectName The Dn of the changed entry
+     * @param entry The changed entry, which is not modified
+     * @return The encoded SearchResultEntry
+     * @throws EncoderException If the entry cannot be encoded
+     */
+    public IoBuffer encode( PersistentSearchListener listener, ChangeOperationContext opContext, ChangeType type,
+        Dn objectName, Entry entry ) throws EncoderException
+    {
+        String projection = listener.getProjection();
+        byte[] body = null;
+
+        synchronized ( cache )
+        {
+            Map<String, byte[]> bodies = cache.get( opContext );
+
+            if ( bodies != null )
+            {
+                body = bodies.get( projection );
+            }
+        }
+
+        if ( body == null )
+        {
+            body = encodeBody( listener, opContext, type, objectName, entry );
+            nbEncoded.incrementAndGet();
+
+            synchronized ( cache )
+            {
+                Map<String, byte[]> bodies = cache.get( opContext );
+
+                if ( bodies == null )
+                {
+                    bodies = new HashMap<>();
+                    cache.put( opContext, bodies );
+                }
+
+                bodies.put( projection, body );
+            }
+        }
+
+        nbSent.incrementAndGet();
+
+        return wrap( listener.getMessageId(), body );
+    }
+
+
+    /**
+     * Encodes the SearchResultEntry sent to a persistent search, and removes its
+     * LDAPMessage header.
+     */
+    private byte[] encodeBody( PersistentSearchListener listener, ChangeOperationContext opContext, ChangeType type,
+        Dn objectName, Entry entry ) throws EncoderException
+    {
+        SearchResultEntry respEntry = new SearchResultEntryImpl( 1 );
+        respEntry.setObjectName( objectName );
+        respEntry.setEntry( listener.filterEntry( entry ) );
+
+        if ( listener.isReturnECs() )
+        {
+            EntryChange ecControl = new EntryChangeImpl();
+            ecControl.setChangeType( type );
+
+            if ( opContext.getChangeLogEvent() != null )
+            {
+                ecControl.setChangeNumber( opContext.getChangeLogEvent().getRevision() );
+            }
+
+            if ( opContext instanceof RenameOperationContext || opContext instanceof MoveOperationContext )
+            {
+                ecControl.setPreviousDn( opContext.getDn() );
+            }
+
+            respEntry.addControl( ecControl );
+        }
+
+        return removeHeader( LdapEncoder.encodeMessage( new Asn1Buffer(), codec, respEntry ) );
+    }
+
+
+    /**
+     * Removes the LDAPMessage SEQUENCE tag and length, and the messageID, from an encoded message
+     */
+    static byte[] removeHeader( ByteBuffer encoded )
+    {
+        // Skip the LDAPMessage SEQUENCE tag and length
+        int pos = encoded.position() + 1;
+        int lengthByte = encoded.get( pos ) & 0xFF;
+        pos += ( lengthByte < 0x80 ) ? 1 : 1 + ( lengthByte & 0x7F );
+
+        // Skip the messageID INTEGER
+        pos += 2 + ( encoded.get( pos + 1 ) & 0xFF );
+
+        byte[] body = new byte[encoded.limit() - pos];
+
+        for ( int i = 0; i < body.length; i++ )
+        {
+            body[i] = encoded.get( pos + i );
+        }
+
+        return body;
+    }
+
+
+    /**
+     * Adds the LDAPMessage header to an encoded body
+     */
+    static IoBuffer wrap( int messageId, byte[] body )
+    {
+        // The messageID INTEGER, in the minimal two's complement form
+        int idLength = 1;
+
+        while ( ( idLength < 4 ) && ( ( messageId >> ( 8 * idLength - 1 ) ) != 0 ) )
+        {
+            idLength++;
+        }
+
+        int contentLength = 2 + idLength + body.length;
+        int lengthLength = 1;
+
+        if ( contentLength >= 0x80 )
+        {
+            for ( int l = contentLength; l != 0; l >>>= 8 )
+            {
+                lengthLength++;
+            }
+        }
+
+        IoBuffer buffer = IoBuffer.allocate( 1 + lengthLength + contentLength );
+        buffer.put( ( byte ) 0x30 );
+
+        if ( contentLength < 0x80 )
+        {
+            buffer.put( ( byte ) contentLength );
+        }
+        else
+        {
+            buffer.put( ( byte ) ( 0x80 | ( lengthLength - 1 ) ) );
+
+            for ( int i = lengthLength - 2; i >= 0; i-- )
+            {
+                buffer.put( ( byte ) ( contentLength >>> ( 8 * i ) ) );
+            }
+        }
+
+        buffer.put( ( byte ) 0x02 );
+        buffer.put( ( byte ) idLength );
+
+        for ( int i = idLength - 1; i >= 0; i-- )
+        {
+            buffer.put( ( byte ) ( messageId >>> ( 8 * i ) ) );
+        }
+
+        buffer.put( body );
+        buffer.flip();
+
+        return buffer;
+    }
+
+
+    /**
+     * Counts a persistent search terminated because its client was too slow
+     */
+    void overflow()
+    {
+        nbOverflows.incrementAndGet();
+    }
+
+
+    /**
+     * @return The maximum number of messages waiting to be written to a session before
+     * its persistent searches are terminated
+     */
+    public int getMaxPendingNotifications()
+    {
+        return maxPendingNotifications;
+    }
+
+
+    /**
+     * @param maxPendingNotifications The maximum number of messages waiting to be written
+     * to a session before its persistent searches are terminated
+     */
+    public void setMaxPendingNotifications( int maxPendingNotifications )
+    {
+        this.maxPendingNotifications = maxPendingNotifications;
+    }
+
+
+    /**
+     * @return The number of encoded SearchResultEntry bodies
+     */
+    public long getNbEncoded()
+    {
+        return nbEncoded.get();
+    }
+
+
+    /**
+     * @return The number of notifications sent to the persistent searches
+     */
+    public long getNbSent()
+    {
+        return nbSent.get();
+    }
+
+
+    /**
+     * @return The number of persistent searches terminated because their client did not
+     * read the notifications fast enough
+     */
+    public long getNbOverflows()
+    {
+        return nbOverflows.get();
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return "PersistentSearchFanOut : " + nbSent + " notifications sent, " + nbEncoded + " encoded, "
+            + nbOverflows + " overflows";
+    }
+}
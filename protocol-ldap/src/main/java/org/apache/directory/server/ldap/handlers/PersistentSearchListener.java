@@ -20,17 +20,22 @@
 package org.apache.directory.server.ldap.handlers;
 
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.directory.api.asn1.EncoderException;
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.message.AbandonListener;
 import org.apache.directory.api.ldap.model.message.AbandonableRequest;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
 import org.apache.directory.api.ldap.model.message.SearchRequest;
-import org.apache.directory.api.ldap.model.message.SearchResultEntry;
-import org.apache.directory.api.ldap.model.message.SearchResultEntryImpl;
+import org.apache.directory.api.ldap.model.message.SearchResultDone;
+import org.apache.directory.api.ldap.model.message.SearchResultDoneImpl;
 import org.apache.directory.api.ldap.model.message.controls.ChangeType;
-import org.apache.directory.api.ldap.model.message.controls.EntryChange;
-import org.apache.directory.api.ldap.model.message.controls.EntryChangeImpl;
 import org.apache.directory.api.ldap.model.message.controls.PersistentSearch;
+import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.api.util.Strings;
 import org.apache.directory.server.core.api.entry.ClonedServerEntry;
@@ -45,6 +50,7 @@ import org.apache.directory.server.core.api.interceptor.context.MoveAndRenameOpe
 import org.apache.directory.server.core.api.interceptor.context.MoveOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
 import org.apache.directory.server.ldap.LdapSession;
+import org.apache.mina.core.session.IoSession;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -71,6 +77,15 @@ public class PersistentSearchListener implements DirectoryListener, AbandonListe
     private LookupOperationContext filterCtx;
     private SchemaManager schemaManager;
 
+    /** The shared encoder of the notifications */
+    private final PersistentSearchFanOut fanOut;
+
+    /** The returned attributes and controls : the searches with the same projection get the same PDUs */
+    private final String projection;
+
+    /** Set when the search has been terminated */
+    private volatile boolean terminated;
+
     public PersistentSearchListener( LdapSession session, SearchRequest req )
     {
         this.session = session;
@@ -80,6 +95,34 @@ public class PersistentSearchListener implements DirectoryListener, AbandonListe
         
         filterCtx = new LookupOperationContext( session.getCoreSession(), req.getAttributes().toArray( Strings.EMPTY_STRING_ARRAY ) );
         schemaManager = session.getCoreSession().getDirectoryService().getSchemaManager();
+        fanOut = session.getLdapServer().getPersistentSearchFanOut();
+        projection = computeProjection( req, psearchControl );
+    }
+
+
+    /**
+     * Computes the key identifying the returned attributes and the controls of a search
+     */
+    private static String computeProjection( SearchRequest req, PersistentSearch psearchControl )
+    {
+        List<String> attributes = new ArrayList<>();
+
+        for ( String attribute : req.getAttributes() )
+        {
+            attributes.add( Strings.toLowerCaseAscii( Strings.trim( attribute ) ) );
+        }
+
+        Collections.sort( attributes );
+
+        StringBuilder sb = new StringBuilder();
+        sb.append( psearchControl.isReturnECs() ? "ec" : "-" );
+
+        for ( String attribute : attributes )
+        {
+            sb.append( ' ' ).append( attribute );
+        }
+
+        return sb.toString();
     }
 
     
@@ -92,6 +135,8 @@ public class PersistentSearchListener implements DirectoryListener, AbandonListe
 
     public void abandon()
     {
+        terminated = true;
+
         // must abandon the operation 
         session.getCoreSession().getDirectoryService().getEventService().removeListener( this );
 
@@ -116,25 +161,30 @@ public class PersistentSearchListener implements DirectoryListener, AbandonListe
     }
 
 
-    private void setECResponseControl( SearchResultEntry response, ChangeOperationContext opContext, ChangeType type )
+    /**
+     * @return The key identifying the returned attributes and the controls of this search
+     */
+    String getProjection()
     {
-        if ( psearchControl.isReturnECs() )
-        {
-            EntryChange ecControl = new EntryChangeImpl();
-            ecControl.setChangeType( type );
+        return projection;
+    }
+
 
-            if ( opContext.getChangeLogEvent() != null )
-            {
-                ecControl.setChangeNumber( opContext.getChangeLogEvent().getRevision() );
-            }
+    /**
+     * @return The message ID of the persistent search
+     */
+    int getMessageId()
+    {
+        return req.getMessageId();
+    }
 
-            if ( opContext instanceof RenameOperationContext || opContext instanceof MoveOperationContext )
-            {
-                ecControl.setPreviousDn( opContext.getDn() );
-            }
 
-            response.addControl( ecControl );
-        }
+    /**
+     * @return <tt>true</tt> if the EntryChange control is returned with the entries
+     */
+    boolean isReturnECs()
+    {
+        return psearchControl.isReturnECs();
     }
 
 
@@ -145,21 +195,10 @@ public class PersistentSearchListener implements DirectoryListener, AbandonListe
             return;
         }
 
-        SearchResultEntry respEntry = new SearchResultEntryImpl( req.getMessageId() );
-        respEntry.setObjectName( addContext.getDn() );
-        
-        // the entry needs to be cloned cause addContext.getEntry() will only contain
-        // the user provided values and all the operational attributes added during
-        // Partition.add() will be applied in the cloned entry present inside it
-        // if we don't clone then the attributes will not be filtered
-        // e.x the operational attributes will also be sent even when a user requests
-        // user attributes only
-        Entry entry = new ClonedServerEntry( addContext.getEntry() );
-        filterEntry( entry );
-        respEntry.setEntry( entry );
-        
-        setECResponseControl( respEntry, addContext, ChangeType.ADD );
-        session.getIoSession().write( respEntry );
+        // addContext.getEntry() will only contain the user provided values and all the
+        // operational attributes added during Partition.add() : the entry is filtered
+        // in a copy, otherwise the attributes would not be filtered for the other listeners
+        notify( addContext, ChangeType.ADD, addContext.getDn(), addContext.getEntry() );
     }
 
 
@@ -170,12 +209,7 @@ public class PersistentSearchListener implements DirectoryListener, AbandonListe
             return;
         }
 
-        SearchResultEntry respEntry = new SearchResultEntryImpl( req.getMessageId() );
-        respEntry.setObjectName( deleteContext.getDn() );
-        filterEntry( deleteContext.getEntry() );
-        respEntry.setEntry( deleteContext.getEntry() );
-        setECResponseControl( respEntry, deleteContext, ChangeType.DELETE );
-        session.getIoSession().write( respEntry );
+        notify( deleteContext, ChangeType.DELETE, deleteContext.getDn(), deleteContext.getEntry() );
     }
 
 
@@ -186,15 +220,7 @@ public class PersistentSearchListener implements DirectoryListener, AbandonListe
             return;
         }
 
-        SearchResultEntry respEntry = new SearchResultEntryImpl( req.getMessageId() );
-        respEntry.setObjectName( modifyContext.getDn() );
-        
-        Entry entry = new ClonedServerEntry( modifyContext.getAlteredEntry() );
-        filterEntry( entry );
-        respEntry.setEntry( entry );
-
-        setECResponseControl( respEntry, modifyContext, ChangeType.MODIFY );
-        session.getIoSession().write( respEntry );
+        notify( modifyContext, ChangeType.MODIFY, modifyContext.getDn(), modifyContext.getAlteredEntry() );
     }
 
 
@@ -205,15 +231,7 @@ public class PersistentSearchListener implements DirectoryListener, AbandonListe
             return;
         }
 
-        SearchResultEntry respEntry = new SearchResultEntryImpl( req.getMessageId() );
-        respEntry.setObjectName( moveContext.getNewDn() );
-        
-        Entry entry = new ClonedServerEntry( moveContext.getModifiedEntry() );
-        filterEntry( entry );
-        respEntry.setEntry( entry );
-        
-        setECResponseControl( respEntry, moveContext, ChangeType.MODDN );
-        session.getIoSession().write( respEntry );
+        notify( moveContext, ChangeType.MODDN, moveContext.getNewDn(), moveContext.getModifiedEntry() );
     }
 
 
@@ -230,35 +248,74 @@ public class PersistentSearchListener implements DirectoryListener, AbandonListe
             return;
         }
 
-        SearchResultEntry respEntry = new SearchResultEntryImpl( req.getMessageId() );
-        respEntry.setObjectName( renameContext.getModifiedEntry().getDn() );
-        
-        Entry entry = new ClonedServerEntry( renameContext.getModifiedEntry() );
-        filterEntry( entry );
-        respEntry.setEntry( entry );
-        
-        setECResponseControl( respEntry, renameContext, ChangeType.MODDN );
-        session.getIoSession().write( respEntry );
+        notify( renameContext, ChangeType.MODDN, renameContext.getModifiedEntry().getDn(),
+            renameContext.getModifiedEntry() );
+    }
+
+
+    /**
+     * Sends a change to the client, unless it has too many notifications waiting to be
+     * written. In this case, the persistent search is terminated.
+     */
+    private void notify( ChangeOperationContext opContext, ChangeType type, Dn objectName, Entry entry )
+    {
+        if ( terminated )
+        {
+            return;
+        }
+
+        IoSession ioSession = session.getIoSession();
+
+        if ( ioSession.getScheduledWriteMessages() > fanOut.getMaxPendingNotifications() )
+        {
+            LOG.warn( "The client of the persistent search {} does not read its notifications, terminating it",
+                req.getMessageId() );
+            fanOut.overflow();
+            abandon();
+
+            SearchResultDone done = new SearchResultDoneImpl( req.getMessageId() );
+            done.getLdapResult().setResultCode( ResultCodeEnum.ADMIN_LIMIT_EXCEEDED );
+            done.getLdapResult().setDiagnosticMessage( "Too many pending notifications" );
+            ioSession.write( done );
+
+            return;
+        }
+
+        try
+        {
+            ioSession.write( fanOut.encode( this, opContext, type, objectName, entry ) );
+        }
+        catch ( EncoderException ee )
+        {
+            // shouldn't happen, if it does then blow up
+            throw new RuntimeException( ee );
+        }
     }
     
     
     /**
-     * A convenient method to filter the contents of an entry
+     * A convenient method to filter the contents of an entry. The entry is not modified,
+     * its filtered copy is returned.
      * 
      * @see ServerEntryUtils#filterContents(SchemaManager, org.apache.directory.server.core.api.interceptor.context.FilteringOperationContext, Entry)
      * 
-     * @param entry
+     * @param entry The entry to filter
+     * @return The filtered copy of the entry
      */
-    private void filterEntry( Entry entry )
+    Entry filterEntry( Entry entry )
     {
+        Entry filtered = new ClonedServerEntry( entry );
+
         try
         {
-            ServerEntryUtils.filterContents( schemaManager, filterCtx, entry );
+            ServerEntryUtils.filterContents( schemaManager, filterCtx, filtered );
         }
         catch ( LdapException e )
         {
             // shouldn't happen, if it does then blow up
             throw new RuntimeException( e );
         }
+
+        return filtered;
     }
-}
\ No newline at end of file
+}
@@ -25,6 +25,7 @@ import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.message.AbandonListener;
 import org.apache.directory.api.ldap.model.message.AbandonableRequest;
 import org.apache.directory.server.core.api.event.DirectoryListener;
+import org.apache.directory.server.core.api.interceptor.context.SearchBudget;
 import org.apache.directory.server.ldap.LdapServer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,6 +43,7 @@ public class SearchAbandonListener implements AbandonListener
     private final LdapServer ldapServer;
     private Cursor<Entry> cursor;
     private DirectoryListener listener;
+    private SearchBudget budget;
 
 
     public SearchAbandonListener( LdapServer ldapServer, Cursor<Entry> cursor, DirectoryListener listener )
@@ -69,8 +71,21 @@ public class SearchAbandonListener implements AbandonListener
     }
 
 
+    public SearchAbandonListener( LdapServer ldapServer, SearchBudget budget )
+    {
+        this( ldapServer, null, null );
+        this.budget = budget;
+    }
+
+
     public void requestAbandoned( AbandonableRequest req )
     {
+        if ( budget != null )
+        {
+            // Stop the thread examining the candidates
+            budget.abandon();
+        }
+
         if ( listener != null )
         {
             ldapServer.getDirectoryService().getEventService().removeListener( listener );
@@ -20,13 +20,16 @@
 package org.apache.directory.server.ldap.handlers.controls;
 
 
+import java.nio.ByteBuffer;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
 
-import org.apache.directory.api.asn1.ber.tlv.BerValue;
 import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.entry.Attribute;
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.message.SearchRequest;
@@ -34,6 +37,8 @@ import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.api.ldap.model.schema.AttributeType;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.api.util.Strings;
+import org.apache.directory.server.core.api.entry.ClonedServerEntry;
+import org.apache.directory.server.core.api.interceptor.context.SearchBudget;
 import org.apache.directory.server.ldap.LdapSession;
 
 
@@ -41,6 +46,15 @@ import org.apache.directory.server.ldap.LdapSession;
  * The structure which stores the informations relative to the pagedSearch control.
  * They are associated to a cookie, stored into the session and associated to an
  * instance of this class.
+ * <p>
+ * The cookie also describes the position reached in the search : the number of returned
+ * entries, a hash of the search request, the ID of the last returned entry and a hash of
+ * its Dn. When the context is not in the session anymore (the client has reconnected, or
+ * the context has been evicted), the search is started again right after the last returned
+ * ID : the partitions return the entries in the ID order, so the search goes on with the
+ * next entry even if the last returned one has been deleted meanwhile. When the entries
+ * are not returned in the ID order (a search from the RootDSE, or a sorted search), the new
+ * cursor is moved past the entry with the same Dn.
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -61,6 +75,108 @@ public class PagedSearchContext
     /** The associated cursor for the current search request */
     private Cursor<Entry> cursor;
 
+    /** The cookie format version */
+    private static final byte COOKIE_VERSION = 2;
+
+    /** The cookie header length : version, context ID, position, request hash, Dn hash and ID length */
+    private static final int COOKIE_HEADER_LENGTH = 1 + 4 + 4 + 8 + 8 + 2;
+
+    /** The CRC length, at the end of the cookie */
+    private static final int CRC_LENGTH = 4;
+
+    /** The rough memory footprint of a cursor stack and its read transaction */
+    private static final long CURSOR_FOOTPRINT = 4096L;
+
+    /** The hash of the search request, used to check a resumed search is the same */
+    private long requestHash;
+
+    /** The hash of the last returned entry Dn, 0 if no entry has been returned */
+    private long lastDnHash;
+
+    /** The ID of the last returned entry, null if no entry has been returned */
+    private String lastId;
+
+    /** The session this context is stored in */
+    private LdapSession session;
+
+    /** Tells if a page is being read */
+    private volatile boolean inUse;
+
+    /** The budget of the search, restarted for each page */
+    private SearchBudget budget;
+
+
+    /**
+     * The position stored in a cookie
+     */
+    public static final class ResumePoint
+    {
+        /** The ID of the context which has created the cookie */
+        private final int contextId;
+
+        /** The number of entries returned when the cookie was created */
+        private final int position;
+
+        /** The hash of the search request */
+        private final long requestHash;
+
+        /** The hash of the last returned entry Dn */
+        private final long lastDnHash;
+
+        /** The ID of the last returned entry */
+        private final String lastId;
+
+
+        private ResumePoint( int contextId, int position, long requestHash, long lastDnHash, String lastId )
+        {
+            this.contextId = contextId;
+            this.position = position;
+            this.requestHash = requestHash;
+            this.lastDnHash = lastDnHash;
+            this.lastId = lastId;
+        }
+
+
+        /**
+         * @return The ID of the context which has created the cookie
+         */
+        public int getContextId()
+        {
+            return contextId;
+        }
+
+
+        /**
+         * @return The number of entries returned when the cookie was created
+         */
+        public int getPosition()
+        {
+            return position;
+        }
+
+
+        /**
+         * @return The ID of the last returned entry, null if it is unknown
+         */
+        public String getLastId()
+        {
+            return lastId;
+        }
+
+
+        /**
+         * Tells if the cookie has been created for the same search request
+         *
+         * @param request The search request
+         * @param schemaManager The SchemaManager
+         * @return <tt>true</tt> if the request is the same
+         */
+        public boolean isSameRequest( SearchRequest request, SchemaManager schemaManager )
+        {
+            return requestHash == computeRequestHash( request, schemaManager );
+        }
+    }
+
 
     /**
      * Creates a new instance of this class, storing the SearchRequest into it.
@@ -68,16 +184,29 @@ public class PagedSearchContext
      * @param searchRequest The SearchRequest
      */
     public PagedSearchContext( SearchRequest searchRequest )
+    {
+        this( searchRequest, null );
+    }
+
+
+    /**
+     * Creates a new instance of this class, storing the SearchRequest into it.
+     *
+     * @param searchRequest The SearchRequest
+     * @param schemaManager The SchemaManager used to normalize the request in the cookie
+     */
+    public PagedSearchContext( SearchRequest searchRequest, SchemaManager schemaManager )
     {
         previousSearchRequest = searchRequest;
         currentPosition = 0;
+        requestHash = computeRequestHash( searchRequest, schemaManager );
 
         // We compute a key for this cookie. It combines the search request
         // and some time seed, in order to avoid possible collisions, as
         // a user may send more than one PagedSearch on the same session.
         cookieValue = new AtomicInteger( searchRequest.getMessageId() << 16 );
 
-        cookie = BerValue.getBytes( cookieValue.get() );
+        cookie = buildCookie();
     }
 
 
@@ -90,10 +219,292 @@ public class PagedSearchContext
      */
     public byte[] getCookie()
     {
+        cookie = buildCookie();
+
         return cookie;
     }
 
 
+    /**
+     * Encodes the context ID and the current position
+     */
+    private byte[] buildCookie()
+    {
+        byte[] idBytes = lastId == null ? new byte[0] : Strings.getBytesUtf8( lastId );
+        int length = COOKIE_HEADER_LENGTH + idBytes.length + CRC_LENGTH;
+
+        ByteBuffer buffer = ByteBuffer.allocate( length );
+        buffer.put( COOKIE_VERSION );
+        buffer.putInt( cookieValue.get() );
+        buffer.putInt( currentPosition );
+        buffer.putLong( requestHash );
+        buffer.putLong( lastDnHash );
+        buffer.putShort( ( short ) idBytes.length );
+        buffer.put( idBytes );
+
+        CRC32 crc = new CRC32();
+        crc.update( buffer.array(), 0, length - CRC_LENGTH );
+        buffer.putInt( ( int ) crc.getValue() );
+
+        return buffer.array();
+    }
+
+
+    /**
+     * Decodes a cookie
+     *
+     * @param cookie The cookie sent by the client
+     * @return The position stored in the cookie, or null if the cookie is invalid
+     */
+    public static ResumePoint parseCookie( byte[] cookie )
+    {
+        if ( ( cookie == null ) || ( cookie.length < COOKIE_HEADER_LENGTH + CRC_LENGTH )
+            || ( cookie[0] != COOKIE_VERSION ) )
+        {
+            return null;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update( cookie, 0, cookie.length - CRC_LENGTH );
+        ByteBuffer buffer = ByteBuffer.wrap( cookie );
+
+        if ( buffer.getInt( cookie.length - CRC_LENGTH ) != ( int ) crc.getValue() )
+        {
+            return null;
+        }
+
+        buffer.position( 1 );
+        int contextId = buffer.getInt();
+        int position = buffer.getInt();
+        long requestHash = buffer.getLong();
+        long lastDnHash = buffer.getLong();
+        int idLength = buffer.getShort();
+
+        if ( ( position < 0 ) || ( idLength != cookie.length - COOKIE_HEADER_LENGTH - CRC_LENGTH ) )
+        {
+            return null;
+        }
+
+        String lastId = null;
+
+        if ( idLength > 0 )
+        {
+            byte[] idBytes = new byte[idLength];
+            buffer.get( idBytes );
+            lastId = Strings.utf8ToString( idBytes );
+        }
+
+        return new ResumePoint( contextId, position, requestHash, lastDnHash, lastId );
+    }
+
+
+    /**
+     * Associates a new cursor on the same search with this context, at the position stored in
+     * a cookie. When the new search has been restarted after the last returned ID, the cursor
+     * is used as is. Otherwise, it is moved past the entry having the same Dn as the last
+     * returned one, so that the entries added or deleted since then do not shift the position.
+     *
+     * @param newCursor The cursor, before the first entry
+     * @param resumePoint The position stored in the cookie
+     * @param positioned <tt>true</tt> if the search has been restarted after the last returned ID
+     * @return <tt>false</tt> if the cursor is not positioned and the last returned entry can't
+     * be found anymore
+     * @throws Exception If the cursor can't be read
+     */
+    public boolean resume( Cursor<Entry> newCursor, ResumePoint resumePoint, boolean positioned ) throws Exception
+    {
+        if ( !positioned && ( resumePoint.lastDnHash != 0L ) )
+        {
+            boolean found = false;
+
+            while ( newCursor.next() )
+            {
+                if ( hashDn( newCursor.get().getDn() ) == resumePoint.lastDnHash )
+                {
+                    found = true;
+                    break;
+                }
+            }
+
+            if ( !found )
+            {
+                return false;
+            }
+        }
+
+        cursor = newCursor;
+        currentPosition = resumePoint.position;
+        lastDnHash = resumePoint.lastDnHash;
+        lastId = resumePoint.lastId;
+
+        return true;
+    }
+
+
+    /**
+     * Remembers the last entry returned to the client
+     *
+     * @param entry The returned entry
+     */
+    public void setLastReturnedEntry( Entry entry )
+    {
+        lastDnHash = hashDn( entry.getDn() );
+
+        // The entryUUID may not have been requested : read it from the stored entry
+        Entry storedEntry = entry;
+
+        if ( entry instanceof ClonedServerEntry )
+        {
+            storedEntry = ( ( ClonedServerEntry ) entry ).getOriginalEntry();
+        }
+
+        Attribute entryUuid = storedEntry.get( SchemaConstants.ENTRY_UUID_AT );
+        lastId = entryUuid == null ? null : entryUuid.getString();
+    }
+
+
+    private static long hashDn( Dn dn )
+    {
+        long hash = hash( dn.getNormName() );
+
+        // 0 means no entry
+        return hash == 0L ? 1L : hash;
+    }
+
+
+    /**
+     * Computes a hash of the parts of the request which must not change between two pages
+     */
+    private static long computeRequestHash( SearchRequest request, SchemaManager schemaManager )
+    {
+        StringBuilder sb = new StringBuilder();
+
+        Dn base = request.getBase();
+
+        if ( ( schemaManager != null ) && !base.isSchemaAware() )
+        {
+            try
+            {
+                base = new Dn( schemaManager, base );
+            }
+            catch ( LdapException le )
+            {
+                // Use the user provided Dn
+            }
+        }
+
+        sb.append( base.getNormName() ).append( '|' );
+        sb.append( request.getScope() ).append( '|' );
+        sb.append( request.getDerefAliases() ).append( '|' );
+        sb.append( request.getTypesOnly() ).append( '|' );
+        sb.append( request.getSizeLimit() ).append( '|' );
+        sb.append( request.getFilter() ).append( '|' );
+
+        Set<String> attributes = new TreeSet<>();
+
+        if ( request.getAttributes() != null )
+        {
+            for ( String attribute : request.getAttributes() )
+            {
+                attributes.add( Strings.toLowerCaseAscii( attribute ) );
+            }
+        }
+
+        sb.append( attributes );
+
+        return hash( sb.toString() );
+    }
+
+
+    /**
+     * A 64 bits FNV-1a hash
+     */
+    private static long hash( String value )
+    {
+        long hash = 0xcbf29ce484222325L;
+
+        for ( byte b : Strings.getBytesUtf8( value ) )
+        {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+
+        return hash;
+    }
+
+
+    /**
+     * @return The session this context is stored in
+     */
+    public LdapSession getSession()
+    {
+        return session;
+    }
+
+
+    /**
+     * @param session The session this context is stored in
+     */
+    public void setSession( LdapSession session )
+    {
+        this.session = session;
+    }
+
+
+    /**
+     * @return <tt>true</tt> if a page is being read, the context must not be evicted
+     */
+    public boolean isInUse()
+    {
+        return inUse;
+    }
+
+
+    /**
+     * @param inUse Tells if a page is being read
+     */
+    public void setInUse( boolean inUse )
+    {
+        this.inUse = inUse;
+    }
+
+
+    /**
+     * @return The budget of the search, restarted for each page
+     */
+    public SearchBudget getBudget()
+    {
+        return budget;
+    }
+
+
+    /**
+     * @param budget The budget of the search
+     */
+    public void setBudget( SearchBudget budget )
+    {
+        this.budget = budget;
+    }
+
+
+    /**
+     * @return A rough estimation of the memory held by this context and its cursor
+     */
+    public long getEstimatedSize()
+    {
+        long size = CURSOR_FOOTPRINT;
+
+        size += 2L * previousSearchRequest.getBase().getName().length();
+
+        if ( previousSearchRequest.getFilter() != null )
+        {
+            size += 2L * previousSearchRequest.getFilter().toString().length();
+        }
+
+        return size;
+    }
+
+
     public int getCookieValue()
     {
         return cookieValue.get();
@@ -108,7 +519,8 @@ public class PagedSearchContext
      */
     public byte[] getNewCookie()
     {
-        cookie = BerValue.getBytes( cookieValue.incrementAndGet() );
+        cookieValue.incrementAndGet();
+        cookie = buildCookie();
 
         return cookie;
     }
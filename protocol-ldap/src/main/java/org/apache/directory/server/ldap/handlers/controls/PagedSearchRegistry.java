@@ -0,0 +1,302 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.ldap.handlers.controls;
+
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.server.ldap.LdapSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Keeps track of the paged search contexts opened in all the sessions. When there are too
+ * many of them, the least recently used idle contexts are closed and removed from their
+ * session : the client can still resume the search with its cookie, at the price of a new
+ * search. The registry also gives some statistics about the open contexts.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class PagedSearchRegistry
+{
+    /** The logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( PagedSearchRegistry.class );
+
+    /** The default maximum number of open contexts */
+    public static final int DEFAULT_MAX_CONTEXTS = 1000;
+
+    /** The maximum number of open contexts */
+    private volatile int maxContexts = DEFAULT_MAX_CONTEXTS;
+
+    /** The open contexts, the least recently used first */
+    private final Map<PagedSearchContext, Boolean> contexts = new LinkedHashMap<>( 16, 0.75f, true );
+
+    /** The highest number of open contexts */
+    private int peakContexts;
+
+    /** The number of evicted contexts */
+    private long nbEvicted;
+
+    /** The number of searches resumed from a cookie */
+    private long nbResumed;
+
+
+    /**
+     * @return The maximum number of open contexts
+     */
+    public int getMaxContexts()
+    {
+        return maxContexts;
+    }
+
+
+    /**
+     * @param maxContexts The maximum number of open contexts. When exceeded, the least
+     * recently used idle contexts are closed
+     */
+    public void setMaxContexts( int maxContexts )
+    {
+        this.maxContexts = Math.max( 1, maxContexts );
+    }
+
+
+    /**
+     * Registers a new context, evicting the least recently used idle ones if needed. The new
+     * context is in use : it must be released once its first page has been read.
+     *
+     * @param context The added context
+     */
+    public void register( PagedSearchContext context )
+    {
+        List<PagedSearchContext> evicted = new ArrayList<>();
+
+        synchronized ( contexts )
+        {
+            context.setInUse( true );
+            contexts.put( context, Boolean.TRUE );
+            Iterator<PagedSearchContext> iterator = contexts.keySet().iterator();
+
+            while ( ( contexts.size() > maxContexts ) && iterator.hasNext() )
+            {
+                PagedSearchContext eldest = iterator.next();
+
+                if ( ( eldest != context ) && !eldest.isInUse() )
+                {
+                    iterator.remove();
+                    evicted.add( eldest );
+                }
+            }
+
+            nbEvicted += evicted.size();
+            peakContexts = Math.max( peakContexts, contexts.size() );
+        }
+
+        // Close the evicted contexts out of the lock
+        for ( PagedSearchContext eldest : evicted )
+        {
+            LOG.debug( "Evicting the paged search context {}", eldest );
+            LdapSession session = eldest.getSession();
+
+            if ( session != null )
+            {
+                session.evictPagedSearchContext( eldest );
+            }
+
+            Cursor<Entry> cursor = eldest.getCursor();
+
+            if ( cursor != null )
+            {
+                try
+                {
+                    cursor.close();
+                }
+                catch ( Exception e )
+                {
+                    LOG.warn( "Cannot close the cursor of the evicted paged search context {}", eldest, e );
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Marks a context as the most recently used
+     *
+     * @param context The used context
+     */
+    public void touch( PagedSearchContext context )
+    {
+        synchronized ( contexts )
+        {
+            contexts.get( context );
+        }
+    }
+
+
+    /**
+     * Marks a context as the most recently used, and in use, so that it is not evicted
+     * until it is released. This is done while holding the lock used to evict the contexts.
+     *
+     * @param context The used context
+     * @return <tt>false</tt> if the context has been evicted meanwhile
+     */
+    public boolean acquire( PagedSearchContext context )
+    {
+        synchronized ( contexts )
+        {
+            if ( contexts.get( context ) == null )
+            {
+                return false;
+            }
+
+            context.setInUse( true );
+
+            return true;
+        }
+    }
+
+
+    /**
+     * Releases a context once its page has been read : it can be evicted again
+     *
+     * @param context The used context
+     */
+    public void release( PagedSearchContext context )
+    {
+        synchronized ( contexts )
+        {
+            context.setInUse( false );
+        }
+    }
+
+
+    /**
+     * Forgets a context which has been removed from its session
+     *
+     * @param context The removed context
+     */
+    public void unregister( PagedSearchContext context )
+    {
+        synchronized ( contexts )
+        {
+            contexts.remove( context );
+        }
+    }
+
+
+    /**
+     * Counts a search resumed from a cookie
+     */
+    public void resumed()
+    {
+        synchronized ( contexts )
+        {
+            nbResumed++;
+        }
+    }
+
+
+    /**
+     * @return The number of open contexts
+     */
+    public int getNbContexts()
+    {
+        synchronized ( contexts )
+        {
+            return contexts.size();
+        }
+    }
+
+
+    /**
+     * @return The highest number of open contexts
+     */
+    public int getPeakContexts()
+    {
+        synchronized ( contexts )
+        {
+            return peakContexts;
+        }
+    }
+
+
+    /**
+     * @return The number of contexts evicted because there were too many open contexts
+     */
+    public long getNbEvicted()
+    {
+        synchronized ( contexts )
+        {
+            return nbEvicted;
+        }
+    }
+
+
+    /**
+     * @return The number of searches resumed from a cookie, their context being gone
+     */
+    public long getNbResumed()
+    {
+        synchronized ( contexts )
+        {
+            return nbResumed;
+        }
+    }
+
+
+    /**
+     * @return A rough estimation of the memory held by the open contexts and their cursors
+     */
+    public long getEstimatedMemory()
+    {
+        long memory = 0L;
+
+        synchronized ( contexts )
+        {
+            for ( PagedSearchContext context : contexts.keySet() )
+            {
+                memory += context.getEstimatedSize();
+            }
+        }
+
+        return memory;
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        synchronized ( contexts )
+        {
+            return "PagedSearchRegistry : " + contexts.size() + " open contexts (peak " + peakContexts + ", max "
+                + maxContexts + "), " + nbEvicted + " evicted, " + nbResumed + " resumed";
+        }
+    }
+}
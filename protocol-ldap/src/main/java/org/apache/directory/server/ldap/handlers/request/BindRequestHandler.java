@@ -30,6 +30,7 @@ import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.exception.LdapAuthenticationException;
 import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
+import org.apache.directory.api.ldap.model.exception.LdapServiceUnavailableException;
 import org.apache.directory.api.ldap.model.exception.LdapUnwillingToPerformException;
 import org.apache.directory.api.ldap.model.message.BindRequest;
 import org.apache.directory.api.ldap.model.message.BindResponse;
@@ -134,6 +135,10 @@ public class BindRequestHandler extends LdapRequestHandler<BindRequest>
         bindContext.setIoSession( ldapSession.getIoSession() );
         bindContext.setInterceptors( directoryService.getInterceptors( OperationEnum.BIND ) );
 
+        // A failed bind response will be delayed by the server timer instead of
+        // holding this thread when the password policy requires a delay
+        bindContext.setResponseDelayDeferred( true );
+
         // Stores the request controls into the operation context
         LdapProtocolUtils.setRequestControls( bindContext, bindRequest );
 
@@ -245,6 +250,12 @@ public class BindRequestHandler extends LdapRequestHandler<BindRequest>
                 code = ResultCodeEnum.INVALID_DN_SYNTAX;
                 result.setResultCode( code );
             }
+            else if ( e instanceof LdapServiceUnavailableException )
+            {
+                // The server is too busy to verify the credentials
+                code = ( ( LdapServiceUnavailableException ) e ).getResultCode();
+                result.setResultCode( code );
+            }
             else
             {
                 code = ResultCodeEnum.INVALID_CREDENTIALS;
@@ -279,8 +290,16 @@ public class BindRequestHandler extends LdapRequestHandler<BindRequest>
             // Before writing the response, be sure the session is set to anonymous
             ldapSession.setAnonymous();
 
-            // Write the response
-            ldapSession.getIoSession().write( bindResponse );
+            // Write the response, possibly delayed by the password policy
+            if ( bindContext.getResponseDelay() > 0 )
+            {
+                ldapSession.writeDelayed( ldapServer.getDelayedResponseTimer(), bindResponse,
+                    bindContext.getResponseDelay() );
+            }
+            else
+            {
+                ldapSession.getIoSession().write( bindResponse );
+            }
         }
         finally
         {
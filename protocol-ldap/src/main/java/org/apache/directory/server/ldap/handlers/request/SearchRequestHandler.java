@@ -63,6 +63,7 @@ import org.apache.directory.api.ldap.model.message.controls.ManageDsaIT;
 import org.apache.directory.api.ldap.model.message.controls.PagedResults;
 import org.apache.directory.api.ldap.model.message.controls.PagedResultsImpl;
 import org.apache.directory.api.ldap.model.message.controls.PersistentSearch;
+import org.apache.directory.api.ldap.model.message.controls.SortRequest;
 import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.api.ldap.model.schema.AttributeType;
 import org.apache.directory.api.ldap.model.url.LdapUrl;
@@ -70,9 +71,11 @@ import org.apache.directory.api.util.Strings;
 import org.apache.directory.server.core.api.DirectoryService;
 import org.apache.directory.server.core.api.ReferralManager;
 import org.apache.directory.server.core.api.entry.ClonedServerEntry;
+import org.apache.directory.server.core.api.entry.CopyOnWriteEntry;
 import org.apache.directory.server.core.api.event.EventType;
 import org.apache.directory.server.core.api.event.NotificationCriteria;
 import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
+import org.apache.directory.server.core.api.interceptor.context.SearchBudget;
 import org.apache.directory.server.core.api.partition.PartitionNexus;
 import org.apache.directory.server.i18n.I18n;
 import org.apache.directory.server.ldap.LdapSession;
@@ -341,6 +344,52 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
     }
 
 
+    /**
+     * Computes the time limit of the search budget, in milliseconds : the smallest of the
+     * request and server time limits, the server limit being ignored for the administrators.
+     */
+    private long getBudgetTimeLimit( LdapSession session, SearchRequest req )
+    {
+        long requestLimit = req.getTimeLimit();
+        long serverLimit = ldapServer.getMaxTimeLimit();
+
+        if ( session.getCoreSession().isAnAdministrator() || ( serverLimit == NO_TIME_LIMIT ) )
+        {
+            return requestLimit * 1000L;
+        }
+
+        if ( requestLimit == NO_TIME_LIMIT )
+        {
+            return serverLimit * 1000L;
+        }
+
+        return min( requestLimit, serverLimit ) * 1000L;
+    }
+
+
+    /**
+     * Creates the budget of a search. It is checked while the candidates are read, so that a
+     * search which rejects most of its candidates stops when it is out of time, when it has
+     * examined too many candidates, or when it is abandoned. The administrators are not
+     * limited in the number of examined candidates.
+     */
+    private SearchBudget createBudget( LdapSession session, SearchRequest req )
+    {
+        long maxCandidates = SearchBudget.NO_LIMIT;
+
+        if ( !session.getCoreSession().isAnAdministrator() )
+        {
+            maxCandidates = ldapServer.getMaxCandidatesExamined();
+        }
+
+        SearchBudget budget = new SearchBudget( getBudgetTimeLimit( session, req ), maxCandidates,
+            ldapServer.getSearchBudgetStatistics() );
+        req.addAbandonListener( new SearchAbandonListener( ldapServer, budget ) );
+
+        return budget;
+    }
+
+
     /**
      * Return the server size limit
      */
@@ -447,11 +496,20 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
             LOG.debug( "using <{},{}> for size limit", sizeLimit, pagedLimit );
         }
 
-        int cookieValue = 0;
+        int cookieValue = pagedContext.getCookieValue();
 
         int count = pagedContext.getCurrentPosition();
         int pageCount = 0;
 
+        // Each page has its own budget
+        SearchBudget budget = pagedContext.getBudget();
+
+        if ( budget != null )
+        {
+            budget.restart( getBudgetTimeLimit( session, req ) );
+            req.addAbandonListener( new SearchAbandonListener( ldapServer, budget ) );
+        }
+
         while ( ( count < sizeLimit ) && ( pageCount < pagedLimit ) && cursor.next() )
         {
             if ( session.getIoSession().isClosing() )
@@ -461,6 +519,7 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
 
             Entry entry = cursor.get();
             session.getIoSession().write( generateResponse( session, req, entry ) );
+            pagedContext.setLastReturnedEntry( entry );
             count++;
             pageCount++;
         }
@@ -482,7 +541,6 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
             // That means we don't have anymore entry
             // If we are here, it means we have returned all the entries
             // We have to remove the cookie from the session
-            cookieValue = pagedContext.getCookieValue();
             PagedSearchContext psCookie = session.removePagedSearchContext( cookieValue );
 
             // Close the cursor if there is one
@@ -510,10 +568,11 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
                 // We stop here. We have to add a ResponseControl
                 // DO NOT WRITE THE RESPONSE - JUST RETURN IT
                 ldapResult.setResultCode( ResultCodeEnum.SUCCESS );
-                req.getResultResponse().addControl( pagedResultsControl );
 
-                // Stores the cursor current position
+                // Stores the cursor current position, and return it in the cookie
                 pagedContext.incrementCurrentPosition( pageCount );
+                pagedResultsControl.setCookie( pagedContext.getCookie() );
+                req.getResultResponse().addControl( pagedResultsControl );
             }
             else
             {
@@ -537,22 +596,25 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
         PagedResults pagedSearchControl = ( PagedResults ) req.getControls().get( PagedResults.OID );
         byte[] cookie = pagedSearchControl.getCookie();
 
-        if ( !Strings.isEmpty( cookie ) )
+        PagedSearchContext.ResumePoint resumePoint = PagedSearchContext.parseCookie( cookie );
+
+        if ( resumePoint != null )
         {
             // If the cookie is not null, we have to destroy the associated
             // cursor stored into the session (if any)
-            int cookieValue = pagedSearchControl.getCookieValue();
-            PagedSearchContext psCookie = session.removePagedSearchContext( cookieValue );
-            pagedSearchControl.setCookie( psCookie.getCookie() );
+            PagedSearchContext psCookie = session.removePagedSearchContext( resumePoint.getContextId() );
             pagedSearchControl.setSize( 0 );
             pagedSearchControl.setCritical( true );
 
-            // Close the cursor
-            Cursor<Entry> cursor = psCookie.getCursor();
-
-            if ( cursor != null )
+            // Close the cursor. The context may have been evicted already
+            if ( psCookie != null )
             {
-                cursor.close();
+                Cursor<Entry> cursor = psCookie.getCursor();
+
+                if ( cursor != null )
+                {
+                    cursor.close();
+                }
             }
         }
         else
@@ -587,6 +649,54 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
     }
 
 
+    /**
+     * Starts again a paged search whose context is not in the session anymore, right after
+     * the last entry returned to the client. The partitions can skip the entries up to the
+     * last returned ID, unless the search starts from the RootDSE, which spans all the
+     * partitions, or the entries are sorted : in this case, the new cursor is moved past the
+     * last returned entry.
+     *
+     * @return The new context, or null if the cookie does not match the request, or if the
+     * last returned entry can't be found anymore
+     */
+    private PagedSearchContext resumePagedSearch( LdapSession session, SearchRequest req,
+        PagedSearchContext.ResumePoint resumePoint ) throws Exception
+    {
+        if ( !resumePoint.isSameRequest( req, session.getCoreSession().getDirectoryService().getSchemaManager() ) )
+        {
+            return null;
+        }
+
+        String resumeAfterId = null;
+
+        if ( !req.getBase().isEmpty() && !req.getControls().containsKey( SortRequest.OID ) )
+        {
+            resumeAfterId = resumePoint.getLastId();
+        }
+
+        SearchBudget budget = createBudget( session, req );
+        Cursor<Entry> cursor = session.getCoreSession().search( req, budget, resumeAfterId );
+        cursor.beforeFirst();
+
+        PagedSearchContext pagedContext = new PagedSearchContext( req, session.getCoreSession()
+            .getDirectoryService().getSchemaManager() );
+        pagedContext.setBudget( budget );
+
+        if ( !pagedContext.resume( cursor, resumePoint, resumeAfterId != null ) )
+        {
+            cursor.close();
+
+            return null;
+        }
+
+        LOG.debug( "Resumed the paged search {} at the position {}", pagedContext, resumePoint.getPosition() );
+        session.addPagedSearchContext( pagedContext );
+        ldapServer.getPagedSearchRegistry().resumed();
+
+        return pagedContext;
+    }
+
+
     /**
      * Handle a Paged Search request.
      */
@@ -635,7 +745,8 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
         if ( Strings.isEmpty( cookie ) )
         {
             // No cursor : do a search.
-            cursor = session.getCoreSession().search( req );
+            SearchBudget budget = createBudget( session, req );
+            cursor = session.getCoreSession().search( req, budget );
 
             // Position the cursor at the beginning
             cursor.beforeFirst();
@@ -671,7 +782,8 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
             else
             {
                 // Case 2 : create the context
-                pagedContext = new PagedSearchContext( req );
+                pagedContext = new PagedSearchContext( req, session.getCoreSession().getDirectoryService()
+                    .getSchemaManager() );
 
                 session.addPagedSearchContext( pagedContext );
                 cookie = pagedContext.getCookie();
@@ -682,14 +794,26 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
 
                 // And stores the cursor into the session
                 pagedContext.setCursor( cursor );
+                pagedContext.setBudget( budget );
             }
         }
         else
         {
             // We have a cookie
             // Either case 3, 4 or 5
-            int cookieValue = pagedSearchControl.getCookieValue();
-            pagedContext = session.getPagedSearchContext( cookieValue );
+            PagedSearchContext.ResumePoint resumePoint = PagedSearchContext.parseCookie( cookie );
+
+            if ( resumePoint != null )
+            {
+                // The context must not be evicted while we read the page
+                pagedContext = session.acquirePagedSearchContext( resumePoint.getContextId() );
+
+                if ( pagedContext == null )
+                {
+                    // The context is gone : resume the search from the cookie position
+                    pagedContext = resumePagedSearch( session, req, resumePoint );
+                }
+            }
 
             if ( pagedContext == null )
             {
@@ -726,7 +850,8 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
                 }
 
                 // Now create a new context and stores it into the session
-                pagedContext = new PagedSearchContext( req );
+                pagedContext = new PagedSearchContext( req, session.getCoreSession().getDirectoryService()
+                    .getSchemaManager() );
 
                 session.addPagedSearchContext( pagedContext );
 
@@ -762,6 +887,11 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
                 }
             }
         }
+        finally
+        {
+            // The context has been acquired or registered in use : it can be evicted again
+            ldapServer.getPagedSearchRegistry().release( pagedContext );
+        }
 
         return ( SearchResultDone ) req.getResultResponse();
     }
@@ -794,7 +924,7 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
         // A normal search
         // Check that we have a cursor or not.
         // No cursor : do a search.
-        Cursor<Entry> cursor = session.getCoreSession().search( req );
+        Cursor<Entry> cursor = session.getCoreSession().search( req, createBudget( session, req ) );
 
         // register the request in the session
         session.registerSearchRequest( req, cursor );
@@ -915,7 +1045,17 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
             // The entry is not a referral, or the ManageDsaIt decorator is set
             SearchResultEntry respEntry;
             respEntry = new SearchResultEntryImpl( req.getMessageId() );
-            respEntry.setEntry( entry );
+
+            // The entry is only read from now on : no need to copy the attributes it shares with the cache
+            if ( entry instanceof CopyOnWriteEntry )
+            {
+                respEntry.setEntry( ( ( CopyOnWriteEntry ) entry ).getSharedEntry() );
+            }
+            else
+            {
+                respEntry.setEntry( entry );
+            }
+
             respEntry.setObjectName( entry.getDn() );
 
             // Filter the userPassword if the server mandate to do so
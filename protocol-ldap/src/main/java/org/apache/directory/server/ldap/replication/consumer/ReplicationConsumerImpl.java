@@ -25,6 +25,7 @@ import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.collections4.map.LRUMap;
 import org.apache.directory.api.ldap.extras.controls.SynchronizationModeEnum;
@@ -88,6 +89,9 @@ import org.apache.directory.server.core.api.interceptor.context.ModifyOperationC
 import org.apache.directory.server.core.api.interceptor.context.MoveAndRenameOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.MoveOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
+import org.apache.directory.server.core.api.metrics.Gauge;
+import org.apache.directory.server.core.api.metrics.LatencyHistogram;
+import org.apache.directory.server.core.api.metrics.MetricsRegistry;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
 import org.apache.directory.server.ldap.LdapProtocolUtils;
@@ -166,6 +170,12 @@ public class ReplicationConsumerImpl implements ConnectionClosedEventListener, R
 
     private static final Map<String, Object> UUID_LOCK_MAP = new LRUMap( 1000 );
 
+    /** The delay between a change on the provider and its application here, if metrics are recorded */
+    private LatencyHistogram lagHistogram;
+
+    /** The delay of the last applied change, in milliseconds */
+    private volatile long lastLagMillis;
+
 
     /**
      * @return the config
@@ -199,10 +209,64 @@ public class ReplicationConsumerImpl implements ConnectionClosedEventListener, R
         Attribute ridAttr = new DefaultAttribute( adsDsReplicaIdAT );
         ridMod = new DefaultModification( ModificationOperation.REPLACE_ATTRIBUTE, ridAttr );
 
+        MetricsRegistry metricsRegistry = directoryService.getMetricsRegistry();
+
+        if ( metricsRegistry != null )
+        {
+            lagHistogram = metricsRegistry.getHistogram( getMetricsPrefix() + "lag" );
+            metricsRegistry.registerGauge( getMetricsPrefix() + "lastLagMillis", new Gauge()
+            {
+                @Override
+                public long getValue()
+                {
+                    return lastLagMillis;
+                }
+            } );
+        }
+
         prepareSyncSearchRequest();
     }
 
 
+    /**
+     * @return The prefix of this consumer metrics
+     */
+    private String getMetricsPrefix()
+    {
+        return MetricsRegistry.REPLICATION_PREFIX + "consumer." + getId() + '.';
+    }
+
+
+    /**
+     * Records the delay between the last change of an entry on the provider, and now
+     */
+    private void recordLag( Entry remoteEntry )
+    {
+        if ( lagHistogram == null )
+        {
+            return;
+        }
+
+        Attribute entryCsn = remoteEntry.get( SchemaConstants.ENTRY_CSN_AT );
+
+        if ( entryCsn == null )
+        {
+            return;
+        }
+
+        try
+        {
+            long lag = System.currentTimeMillis() - new Csn( entryCsn.getString() ).getTimestamp();
+            lastLagMillis = lag;
+            lagHistogram.record( TimeUnit.MILLISECONDS.toNanos( lag ) );
+        }
+        catch ( LdapException | IllegalArgumentException e )
+        {
+            CONSUMER_LOG.debug( "Cannot read the entryCSN of {}", remoteEntry.getDn(), e );
+        }
+    }
+
+
     /**
      * Connect to the remote server. Note that a SyncRepl consumer will be connected to only
      * one remote server
@@ -459,6 +523,11 @@ public class ReplicationConsumerImpl implements ConnectionClosedEventListener, R
                 {
                     storeCookie();
                 }
+
+                if ( state != SyncStateTypeEnum.PRESENT )
+                {
+                    recordLag( remoteEntry );
+                }
             }
         }
         catch ( Exception e )
@@ -716,6 +785,12 @@ public class ReplicationConsumerImpl implements ConnectionClosedEventListener, R
         {
             disconnect();
         }
+
+        if ( lagHistogram != null )
+        {
+            directoryService.getMetricsRegistry().unregisterAll( getMetricsPrefix() );
+            lagHistogram = null;
+        }
     }
 
 
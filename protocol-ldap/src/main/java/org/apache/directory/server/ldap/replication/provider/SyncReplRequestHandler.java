@@ -94,6 +94,8 @@ import org.apache.directory.server.core.api.event.NotificationCriteria;
 import org.apache.directory.server.core.api.interceptor.context.DeleteOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.ModifyOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.OperationContext;
+import org.apache.directory.server.core.api.metrics.Gauge;
+import org.apache.directory.server.core.api.metrics.MetricsRegistry;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
 import org.apache.directory.server.i18n.I18n;
@@ -117,6 +119,9 @@ public class SyncReplRequestHandler implements ReplicationRequestHandler
     /** A logger for the replication provider */
     private static final Logger PROVIDER_LOG = LoggerFactory.getLogger( Loggers.PROVIDER_LOG.getName() );
 
+    /** The prefix of the provider metrics */
+    private static final String PROVIDER_METRICS_PREFIX = MetricsRegistry.REPLICATION_PREFIX + "provider.";
+
     /** Tells if the replication handler is already started */
     private boolean initialized = false;
 
@@ -216,6 +221,8 @@ public class SyncReplRequestHandler implements ReplicationRequestHandler
 
             dirService.getEventService().addListener( cledListener, criteria );
 
+            registerMetrics();
+
             CountDownLatch latch = new CountDownLatch( 1 );
 
             consumerInfoUpdateThread = new Thread( createConsumerInfoUpdateTask( latch ) );
@@ -277,10 +284,62 @@ public class SyncReplRequestHandler implements ReplicationRequestHandler
         // flush the dirty repos
         storeReplicaInfo();
 
+        if ( dirService.getMetricsRegistry() != null )
+        {
+            dirService.getMetricsRegistry().unregisterAll( PROVIDER_METRICS_PREFIX );
+        }
+
         initialized = false;
     }
 
 
+    /**
+     * Registers the gauges of the number of consumers, and of the number of events waiting
+     * in their logs
+     */
+    private void registerMetrics()
+    {
+        MetricsRegistry metricsRegistry = dirService.getMetricsRegistry();
+
+        if ( metricsRegistry == null )
+        {
+            return;
+        }
+
+        metricsRegistry.registerGauge( PROVIDER_METRICS_PREFIX + "consumers", new Gauge()
+        {
+            @Override
+            public long getValue()
+            {
+                return replicaLogMap.size();
+            }
+        } );
+
+        metricsRegistry.registerGauge( PROVIDER_METRICS_PREFIX + "pendingEvents", new Gauge()
+        {
+            @Override
+            public long getValue()
+            {
+                long nbEvents = 0L;
+
+                for ( ReplicaEventLog log : replicaLogMap.values() )
+                {
+                    try
+                    {
+                        nbEvents += log.count();
+                    }
+                    catch ( RuntimeException re )
+                    {
+                        // The log is being closed, skip it
+                    }
+                }
+
+                return nbEvents;
+            }
+        } );
+    }
+
+
     /**
      * Process the incoming search request sent by a remote server when trying to replicate.
      *
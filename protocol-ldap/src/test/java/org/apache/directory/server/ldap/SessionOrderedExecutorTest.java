@@ -0,0 +1,180 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.ldap.model.message.BindRequestImpl;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IoEvent;
+import org.apache.mina.core.session.IoEventType;
+import org.apache.mina.core.session.IoSession;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Tests the ordering of the requests of a session in the SessionOrderedExecutor.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SessionOrderedExecutorTest
+{
+    /** The executor under test, running the tasks on platform threads */
+    private SessionOrderedExecutor executor;
+
+    /** The names of the events, in the order they have been run */
+    private List<String> trace;
+
+
+    /**
+     * An event recording its name when it is run, and waiting for a latch
+     */
+    private class TracedEvent extends IoEvent
+    {
+        private final String name;
+        private final CountDownLatch latch;
+
+
+        private TracedEvent( IoSession session, Object message, String name, CountDownLatch latch )
+        {
+            super( IoEventType.MESSAGE_RECEIVED, session, message );
+            this.name = name;
+            this.latch = latch;
+        }
+
+
+        @Override
+        public void fire()
+        {
+            trace.add( name + " start" );
+
+            if ( latch != null )
+            {
+                try
+                {
+                    latch.countDown();
+                    latch.await( 5, TimeUnit.SECONDS );
+                }
+                catch ( InterruptedException ie )
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            trace.add( name + " end" );
+        }
+    }
+
+
+    @BeforeEach
+    public void init()
+    {
+        executor = new SessionOrderedExecutor( Executors.newCachedThreadPool() );
+        trace = Collections.synchronizedList( new ArrayList<String>() );
+    }
+
+
+    @AfterEach
+    public void shutdown()
+    {
+        executor.shutdown();
+    }
+
+
+    private void waitForCompletion( int nbEvents ) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 10000L;
+
+        while ( ( executor.getNbExecuted() < nbEvents ) && ( System.currentTimeMillis() < deadline ) )
+        {
+            Thread.sleep( 10L );
+        }
+
+        assertEquals( nbEvents, executor.getNbExecuted() );
+    }
+
+
+    @Test
+    public void testConcurrentSearches() throws Exception
+    {
+        IoSession session = new DummySession();
+
+        // Each search waits for the other one to be started : they must run concurrently
+        CountDownLatch latch = new CountDownLatch( 2 );
+        long t0 = System.currentTimeMillis();
+
+        executor.execute( new TracedEvent( session, new SearchRequestImpl(), "search1", latch ) );
+        executor.execute( new TracedEvent( session, new SearchRequestImpl(), "search2", latch ) );
+
+        waitForCompletion( 2 );
+
+        assertTrue( System.currentTimeMillis() - t0 < 5000L );
+        assertEquals( 4, trace.size() );
+    }
+
+
+    @Test
+    public void testExclusiveBind() throws Exception
+    {
+        IoSession session = new DummySession();
+        IoSession otherSession = new DummySession();
+
+        // The search waits for the other session search, the bind must wait for it
+        CountDownLatch latch = new CountDownLatch( 2 );
+
+        executor.execute( new TracedEvent( session, new SearchRequestImpl(), "search1", latch ) );
+        executor.execute( new TracedEvent( session, new BindRequestImpl(), "bind", null ) );
+        executor.execute( new TracedEvent( session, new SearchRequestImpl(), "search2", null ) );
+
+        // A request in another session is not blocked by the bind
+        executor.execute( new TracedEvent( otherSession, new SearchRequestImpl(), "other", latch ) );
+
+        waitForCompletion( 4 );
+
+        List<String> sessionTrace = new ArrayList<>();
+
+        for ( String event : trace )
+        {
+            if ( !event.startsWith( "other" ) )
+            {
+                sessionTrace.add( event );
+            }
+        }
+
+        assertEquals( "search1 start", sessionTrace.get( 0 ) );
+        assertEquals( "search1 end", sessionTrace.get( 1 ) );
+        assertEquals( "bind start", sessionTrace.get( 2 ) );
+        assertEquals( "bind end", sessionTrace.get( 3 ) );
+        assertEquals( "search2 start", sessionTrace.get( 4 ) );
+        assertEquals( "search2 end", sessionTrace.get( 5 ) );
+    }
+}
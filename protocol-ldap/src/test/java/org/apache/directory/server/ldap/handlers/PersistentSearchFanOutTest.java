@@ -0,0 +1,110 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap.handlers;
+
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.nio.ByteBuffer;
+
+import org.apache.directory.api.asn1.util.Asn1Buffer;
+import org.apache.directory.api.ldap.codec.api.LdapApiService;
+import org.apache.directory.api.ldap.codec.api.LdapApiServiceFactory;
+import org.apache.directory.api.ldap.codec.api.LdapEncoder;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.message.SearchResultEntry;
+import org.apache.directory.api.ldap.model.message.SearchResultEntryImpl;
+import org.apache.directory.api.ldap.model.message.controls.ChangeType;
+import org.apache.directory.api.ldap.model.message.controls.EntryChange;
+import org.apache.directory.api.ldap.model.message.controls.EntryChangeImpl;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Tests that the notifications built from a shared body are the same as the
+ * notifications encoded for each persistent search.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class PersistentSearchFanOutTest
+{
+    private static final LdapApiService CODEC = LdapApiServiceFactory.getSingleton();
+
+
+    private SearchResultEntry createResponse( int messageId, int nbValues ) throws Exception
+    {
+        Entry entry = new DefaultEntry( "cn=test,ou=system",
+            "objectClass: top",
+            "objectClass: person",
+            "cn: test",
+            "sn: test" );
+
+        for ( int i = 0; i < nbValues; i++ )
+        {
+            entry.add( "description", "A long description of the test entry, number " + i );
+        }
+
+        SearchResultEntry response = new SearchResultEntryImpl( messageId );
+        response.setObjectName( entry.getDn() );
+        response.setEntry( entry );
+
+        EntryChange ecControl = new EntryChangeImpl();
+        ecControl.setChangeType( ChangeType.MODIFY );
+        ecControl.setChangeNumber( 42L );
+        response.addControl( ecControl );
+
+        return response;
+    }
+
+
+    private byte[] toBytes( ByteBuffer buffer )
+    {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get( bytes );
+
+        return bytes;
+    }
+
+
+    @Test
+    public void testSharedBody() throws Exception
+    {
+        int[] messageIds = { 1, 127, 128, 255, 32768, 70000, Integer.MAX_VALUE };
+
+        // A short entry, and entries needing a 2 and 3 bytes length
+        for ( int nbValues : new int[] { 0, 10, 2000 } )
+        {
+            byte[] body = PersistentSearchFanOut.removeHeader(
+                LdapEncoder.encodeMessage( new Asn1Buffer(), CODEC, createResponse( 1, nbValues ) ) );
+
+            for ( int messageId : messageIds )
+            {
+                byte[] expected = toBytes(
+                    LdapEncoder.encodeMessage( new Asn1Buffer(), CODEC, createResponse( messageId, nbValues ) ) );
+                IoBuffer pdu = PersistentSearchFanOut.wrap( messageId, body );
+
+                assertArrayEquals( expected, toBytes( pdu.buf() ), "messageId " + messageId + ", " + nbValues
+                    + " values" );
+            }
+        }
+    }
+}
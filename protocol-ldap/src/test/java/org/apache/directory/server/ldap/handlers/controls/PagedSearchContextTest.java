@@ -0,0 +1,196 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap.handlers.controls;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.cursor.ListCursor;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.server.ldap.LdapServer;
+import org.apache.directory.server.ldap.LdapSession;
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Tests the paged search cookies, and the eviction of the paged search contexts.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class PagedSearchContextTest
+{
+    private SearchRequest createRequest( int messageId, String filter ) throws Exception
+    {
+        SearchRequest request = new SearchRequestImpl();
+        request.setMessageId( messageId );
+        request.setBase( new Dn( "ou=system" ) );
+        request.setScope( SearchScope.SUBTREE );
+        request.setFilter( filter );
+        request.addAttributes( "cn", "sn" );
+
+        return request;
+    }
+
+
+    private List<Entry> createEntries( int nbEntries ) throws Exception
+    {
+        List<Entry> entries = new ArrayList<>();
+
+        for ( int i = 0; i < nbEntries; i++ )
+        {
+            entries.add( new DefaultEntry( "cn=user" + i + ",ou=system", "entryUUID: " + Strings.getUUID( i ) ) );
+        }
+
+        return entries;
+    }
+
+
+    @Test
+    public void testCookie() throws Exception
+    {
+        PagedSearchContext context = new PagedSearchContext( createRequest( 3, "(cn=*)" ) );
+        context.incrementCurrentPosition( 10 );
+        context.setLastReturnedEntry( createEntries( 10 ).get( 9 ) );
+
+        PagedSearchContext.ResumePoint resumePoint = PagedSearchContext.parseCookie( context.getCookie() );
+
+        assertNotNull( resumePoint );
+        assertEquals( context.getCookieValue(), resumePoint.getContextId() );
+        assertEquals( 10, resumePoint.getPosition() );
+        assertEquals( Strings.getUUID( 9 ), resumePoint.getLastId() );
+        assertTrue( resumePoint.isSameRequest( createRequest( 5, "(cn=*)" ), null ) );
+        assertFalse( resumePoint.isSameRequest( createRequest( 5, "(sn=*)" ), null ) );
+
+        // Invalid cookies
+        assertNull( PagedSearchContext.parseCookie( Strings.getBytesUtf8( "test" ) ) );
+
+        byte[] cookie = context.getCookie();
+        cookie[6]++;
+        assertNull( PagedSearchContext.parseCookie( cookie ) );
+    }
+
+
+    @Test
+    public void testResume() throws Exception
+    {
+        List<Entry> entries = createEntries( 20 );
+        PagedSearchContext context = new PagedSearchContext( createRequest( 1, "(cn=*)" ) );
+        context.incrementCurrentPosition( 8 );
+        context.setLastReturnedEntry( entries.get( 7 ) );
+        byte[] cookie = context.getCookie();
+
+        // An entry before the last returned one has been deleted
+        entries.remove( 2 );
+
+        PagedSearchContext resumed = new PagedSearchContext( createRequest( 2, "(cn=*)" ) );
+        ListCursor<Entry> cursor = new ListCursor<>( entries );
+        cursor.beforeFirst();
+
+        assertTrue( resumed.resume( cursor, PagedSearchContext.parseCookie( cookie ), false ) );
+        assertEquals( 8, resumed.getCurrentPosition() );
+        assertTrue( cursor.next() );
+        assertEquals( "cn=user8,ou=system", cursor.get().getDn().getName() );
+
+        // The last returned entry has been deleted
+        entries.remove( 6 );
+        cursor = new ListCursor<>( entries );
+        cursor.beforeFirst();
+
+        assertFalse( new PagedSearchContext( createRequest( 3, "(cn=*)" ) ).resume( cursor,
+            PagedSearchContext.parseCookie( cookie ), false ) );
+
+        // The search has been restarted after the last returned ID : the cursor is used as is
+        cursor = new ListCursor<>( entries.subList( 6, entries.size() ) );
+        cursor.beforeFirst();
+        resumed = new PagedSearchContext( createRequest( 4, "(cn=*)" ) );
+
+        assertTrue( resumed.resume( cursor, PagedSearchContext.parseCookie( cookie ), true ) );
+        assertEquals( 8, resumed.getCurrentPosition() );
+        assertTrue( cursor.next() );
+        assertEquals( "cn=user8,ou=system", cursor.get().getDn().getName() );
+
+        // The new cookie still references the last returned entry
+        assertEquals( Strings.getUUID( 7 ), PagedSearchContext.parseCookie( resumed.getCookie() ).getLastId() );
+    }
+
+
+    @Test
+    public void testEviction() throws Exception
+    {
+        LdapServer ldapServer = new LdapServer();
+        ldapServer.setMaxPagedSearchContexts( 2 );
+        PagedSearchRegistry registry = ldapServer.getPagedSearchRegistry();
+
+        LdapSession session = new LdapSession( null );
+        session.setLdapServer( ldapServer );
+
+        PagedSearchContext context1 = new PagedSearchContext( createRequest( 1, "(cn=*)" ) );
+        PagedSearchContext context2 = new PagedSearchContext( createRequest( 2, "(cn=*)" ) );
+        PagedSearchContext context3 = new PagedSearchContext( createRequest( 3, "(cn=*)" ) );
+
+        // The new contexts are in use until their first page has been read
+        session.addPagedSearchContext( context1 );
+        assertTrue( context1.isInUse() );
+        registry.release( context1 );
+        session.addPagedSearchContext( context2 );
+        registry.release( context2 );
+
+        // Use the first context : the second one is now the least recently used
+        assertSame( context1, session.acquirePagedSearchContext( context1.getCookieValue() ) );
+        assertTrue( context1.isInUse() );
+        registry.release( context1 );
+        assertFalse( context1.isInUse() );
+
+        session.addPagedSearchContext( context3 );
+        registry.release( context3 );
+
+        assertEquals( 2, registry.getNbContexts() );
+        assertEquals( 1L, registry.getNbEvicted() );
+        assertNull( session.acquirePagedSearchContext( context2.getCookieValue() ) );
+        assertFalse( registry.acquire( context2 ) );
+        assertTrue( registry.getEstimatedMemory() > 0L );
+
+        // A context being read is not evicted
+        assertSame( context1, session.acquirePagedSearchContext( context1.getCookieValue() ) );
+        assertSame( context3, session.acquirePagedSearchContext( context3.getCookieValue() ) );
+        session.addPagedSearchContext( context2 );
+
+        assertEquals( 3, registry.getNbContexts() );
+        assertEquals( 3, registry.getPeakContexts() );
+
+        session.closeAllPagedSearches();
+
+        assertEquals( 0, registry.getNbContexts() );
+    }
+}
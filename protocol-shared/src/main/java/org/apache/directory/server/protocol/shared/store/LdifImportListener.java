@@ -0,0 +1,58 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.protocol.shared.store;
+
+
+import org.apache.directory.api.ldap.model.name.Dn;
+
+
+/**
+ * Receives the outcome of the entries imported by a ParallelLdifFileLoader.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public interface LdifImportListener
+{
+    /**
+     * Called when an entry has been added and committed.
+     *
+     * @param recordNumber The position of the entry in the LDIF file, starting at 0
+     * @param dn The entry Dn
+     */
+    void entryAdded( long recordNumber, Dn dn );
+
+
+    /**
+     * Called when an entry can't be added.
+     *
+     * @param recordNumber The position of the entry in the LDIF file, starting at 0
+     * @param dn The entry Dn, null if the record can't be parsed
+     * @param cause The reason why the entry has been rejected
+     */
+    void entryFailed( long recordNumber, Dn dn, Exception cause );
+
+
+    /**
+     * Called each time the added entries have been committed.
+     *
+     * @param checkpoint The position of the first record the import would restart from
+     */
+    void committed( long checkpoint );
+}
@@ -0,0 +1,888 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.protocol.shared.store;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapEntryAlreadyExistsException;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapNoSuchObjectException;
+import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.api.ldap.model.exception.LdapSchemaViolationException;
+import org.apache.directory.api.ldap.model.exception.LdapUnwillingToPerformException;
+import org.apache.directory.api.ldap.model.ldif.LdifEntry;
+import org.apache.directory.api.ldap.model.ldif.LdifReader;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.ObjectClass;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.OperationManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Imports the entries of a LDIF file into a running server, through the core API, using
+ * several threads :
+ * <ul>
+ * <li>a thread parses the LDIF file</li>
+ * <li>a pool of threads normalizes the entries, and checks them against the schema</li>
+ * <li>the calling thread waits for <em>batchSize</em> prepared entries, then adds them in the
+ * file order, in a session transaction</li>
+ * </ul>
+ * The server write lock is only held while a batch of prepared entries is added and committed
+ * or rolled back : the operations of the other clients are never mixed with a batch, but they
+ * don't wait for the parsing. A small <em>batchSize</em> keeps this wait short.
+ * <p>
+ * An entry whose parent does not exist yet is kept aside until its parent is added, so the
+ * children may come before their parents in the file. If an add fails, the whole transaction
+ * is rolled back, and its entries are added again one by one, so that only the faulty entries
+ * are rejected. Each rejected entry is reported to the {@link LdifImportListener}.
+ * <p>
+ * When a checkpoint file is given, the position of the first record not yet committed is
+ * written in it after each commit. An interrupted import started again with the same file
+ * restarts from this position. The entries found already existing are skipped.
+ * <p>
+ * Only the entries and the add records are imported, the other records are rejected. The
+ * given session must not be used by anyone else during the import.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ParallelLdifFileLoader
+{
+    /** The logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( ParallelLdifFileLoader.class );
+
+    /** The default number of entries added in a transaction */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    /** The default maximum number of entries waiting for their parent */
+    public static final int DEFAULT_MAX_DEFERRED = 100000;
+
+    /** The number of entry Dns remembered as existing parents */
+    private static final int KNOWN_DNS_SIZE = 10000;
+
+    /** The session used to add the entries */
+    private final CoreSession coreSession;
+
+    /** The OperationManager, which lock is held during a transaction */
+    private final OperationManager operationManager;
+
+    /** The schema manager */
+    private final SchemaManager schemaManager;
+
+    /** The LDIF file */
+    private final File ldif;
+
+    /** The number of threads preparing the entries */
+    private int nbThreads = Runtime.getRuntime().availableProcessors();
+
+    /** The number of entries added in a transaction */
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    /** The maximum number of entries waiting for their parent */
+    private int maxDeferred = DEFAULT_MAX_DEFERRED;
+
+    /** The file storing the position the import restarts from, may be null */
+    private File checkpointFile;
+
+    /** The listener notified of the outcome of each entry */
+    private LdifImportListener listener;
+
+    /** The number of entries added */
+    private long nbAdded;
+
+    /** The number of entries skipped because they already exist */
+    private long nbSkipped;
+
+    /** The number of rejected entries */
+    private long nbFailed;
+
+    /** The first failure of the parsing thread */
+    private volatile Exception parseFailure;
+
+    /** Set when the import is stopped */
+    private volatile boolean stopped;
+
+    /** The entries added in the current transaction */
+    private List<Prepared> batch = new ArrayList<>();
+
+    /** The entries waiting for their parent, by parent normalized Dn */
+    private Map<String, List<Prepared>> deferred = new HashMap<>();
+
+    /** The record numbers of the entries waiting for their parent */
+    private TreeSet<Long> deferredRecords = new TreeSet<>();
+
+    /** The Dns recently added or found existing, the most recently used last */
+    private Map<String, Boolean> knownDns;
+
+    /** The position of the next record to read from the pipeline */
+    private long nextRecord;
+
+    /** The objectClass AttributeType */
+    private AttributeType objectClassAT;
+
+
+    /**
+     * An entry ready to be added
+     */
+    private static class Prepared
+    {
+        private long recordNumber;
+        private Dn dn;
+        private Entry entry;
+        private Exception error;
+    }
+
+
+    /**
+     * Creates a new instance of ParallelLdifFileLoader.
+     *
+     * @param coreSession The session used to add the entries
+     * @param ldif The LDIF file to import
+     */
+    public ParallelLdifFileLoader( CoreSession coreSession, File ldif )
+    {
+        this.coreSession = coreSession;
+        this.operationManager = coreSession.getDirectoryService().getOperationManager();
+        this.schemaManager = coreSession.getDirectoryService().getSchemaManager();
+        this.ldif = ldif;
+    }
+
+
+    /**
+     * @param nbThreads The number of threads normalizing and checking the entries
+     */
+    public void setNbThreads( int nbThreads )
+    {
+        this.nbThreads = Math.max( 1, nbThreads );
+    }
+
+
+    /**
+     * @param batchSize The number of entries added in a transaction. 1 to commit each entry
+     */
+    public void setBatchSize( int batchSize )
+    {
+        this.batchSize = Math.max( 1, batchSize );
+    }
+
+
+    /**
+     * @param maxDeferred The maximum number of entries waiting for their parent
+     */
+    public void setMaxDeferred( int maxDeferred )
+    {
+        this.maxDeferred = maxDeferred;
+    }
+
+
+    /**
+     * @param checkpointFile The file storing the position the import restarts from
+     */
+    public void setCheckpointFile( File checkpointFile )
+    {
+        this.checkpointFile = checkpointFile;
+    }
+
+
+    /**
+     * @param listener The listener notified of the outcome of each entry
+     */
+    public void setListener( LdifImportListener listener )
+    {
+        this.listener = listener;
+    }
+
+
+    /**
+     * @return The number of entries added by the last import
+     */
+    public long getNbAdded()
+    {
+        return nbAdded;
+    }
+
+
+    /**
+     * @return The number of entries skipped by the last import because they already existed
+     */
+    public long getNbSkipped()
+    {
+        return nbSkipped;
+    }
+
+
+    /**
+     * @return The number of entries rejected by the last import
+     */
+    public long getNbFailed()
+    {
+        return nbFailed;
+    }
+
+
+    /**
+     * Imports the LDIF file.
+     *
+     * @return The number of entries added
+     * @throws LdapException If the LDIF file can't be read, or the transactions can't be committed
+     */
+    public long execute() throws LdapException
+    {
+        nbAdded = 0L;
+        nbSkipped = 0L;
+        nbFailed = 0L;
+        parseFailure = null;
+        stopped = false;
+        batch.clear();
+        deferred.clear();
+        deferredRecords.clear();
+        objectClassAT = schemaManager.getAttributeType( SchemaConstants.OBJECT_CLASS_AT );
+        knownDns = new LinkedHashMap<String, Boolean>( KNOWN_DNS_SIZE, 0.75f, true )
+        {
+            private static final long serialVersionUID = 1L;
+
+
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<String, Boolean> eldest )
+            {
+                return size() > KNOWN_DNS_SIZE;
+            }
+        };
+
+        final long start = readCheckpoint();
+        nextRecord = start;
+
+        if ( start > 0L )
+        {
+            LOG.info( "Restarting the import of {} from the record {}", ldif, start );
+        }
+
+        final ExecutorService workers = Executors.newFixedThreadPool( nbThreads );
+        final BlockingQueue<Future<Prepared>> pipeline = new ArrayBlockingQueue<>( nbThreads * 4 );
+        final Future<Prepared> end = new FutureTask<>( new Callable<Prepared>()
+        {
+            @Override
+            public Prepared call()
+            {
+                return null;
+            }
+        } );
+
+        Thread parser = new Thread( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                parse( start, workers, pipeline, end );
+            }
+        }, "LdifImport-parser" );
+
+        parser.start();
+
+        try
+        {
+            List<Prepared> preparedBatch = new ArrayList<>( batchSize );
+            boolean ended = false;
+
+            while ( !ended )
+            {
+                // Wait for a full batch of prepared entries before taking the write lock
+                Future<Prepared> future = pipeline.take();
+
+                if ( future == end )
+                {
+                    ended = true;
+                }
+                else
+                {
+                    preparedBatch.add( future.get() );
+                }
+
+                if ( ended || ( preparedBatch.size() >= batchSize ) )
+                {
+                    applyBatch( preparedBatch );
+                    preparedBatch.clear();
+                }
+            }
+
+            if ( parseFailure != null )
+            {
+                throw new LdapOtherException( parseFailure.getMessage(), parseFailure );
+            }
+
+            // The entries still waiting have no parent
+            for ( List<Prepared> children : deferred.values() )
+            {
+                for ( Prepared child : children )
+                {
+                    failed( child, new LdapNoSuchObjectException( "The parent of " + child.dn + " does not exist" ) );
+                }
+            }
+
+            deferred.clear();
+            deferredRecords.clear();
+            writeCheckpoint( nextRecord );
+
+            LOG.info( "Imported {} : {} entries added, {} skipped, {} rejected", ldif, nbAdded, nbSkipped, nbFailed );
+
+            return nbAdded;
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+
+            throw new LdapOtherException( ie.getMessage(), ie );
+        }
+        catch ( ExecutionException ee )
+        {
+            throw new LdapOtherException( ee.getMessage(), ee.getCause() );
+        }
+        finally
+        {
+            stopped = true;
+            pipeline.clear();
+            parser.interrupt();
+            workers.shutdownNow();
+
+            if ( coreSession.hasSessionTransaction() )
+            {
+                try
+                {
+                    endTransaction( false );
+                }
+                catch ( LdapException le )
+                {
+                    LOG.error( "Cannot roll back the import transaction", le );
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Reads the LDIF file, and hands the records to the workers. Runs in its own thread.
+     */
+    private void parse( long start, ExecutorService workers, BlockingQueue<Future<Prepared>> pipeline,
+        Future<Prepared> end )
+    {
+        try ( InputStream in = Files.newInputStream( ldif.toPath() );
+            LdifReader reader = new LdifReader( in ) )
+        {
+            long recordNumber = 0L;
+
+            for ( final LdifEntry ldifEntry : reader )
+            {
+                if ( stopped )
+                {
+                    return;
+                }
+
+                if ( recordNumber >= start )
+                {
+                    final long number = recordNumber;
+
+                    pipeline.put( workers.submit( new Callable<Prepared>()
+                    {
+                        @Override
+                        public Prepared call()
+                        {
+                            return prepare( number, ldifEntry );
+                        }
+                    } ) );
+                }
+
+                recordNumber++;
+            }
+        }
+        catch ( InterruptedException ie )
+        {
+            return;
+        }
+        catch ( Exception e )
+        {
+            parseFailure = e;
+        }
+
+        try
+        {
+            pipeline.put( end );
+        }
+        catch ( InterruptedException ie )
+        {
+            // The import has been stopped
+        }
+    }
+
+
+    /**
+     * Normalizes the entry, and checks it against the schema. Runs in a worker thread.
+     */
+    private Prepared prepare( long recordNumber, LdifEntry ldifEntry )
+    {
+        Prepared prepared = new Prepared();
+        prepared.recordNumber = recordNumber;
+        prepared.dn = ldifEntry.getDn();
+
+        try
+        {
+            if ( !ldifEntry.isLdifContent() && !ldifEntry.isChangeAdd() )
+            {
+                throw new LdapUnwillingToPerformException( ResultCodeEnum.UNWILLING_TO_PERFORM,
+                    "Only the entries can be imported" );
+            }
+
+            Entry entry = new DefaultEntry( schemaManager, ldifEntry.getEntry() );
+            prepared.dn = entry.getDn();
+
+            if ( !prepared.dn.isSchemaAware() )
+            {
+                prepared.dn = new Dn( schemaManager, prepared.dn );
+                entry.setDn( prepared.dn );
+            }
+
+            check( entry );
+            prepared.entry = entry;
+        }
+        catch ( Exception e )
+        {
+            prepared.error = e;
+        }
+
+        return prepared;
+    }
+
+
+    /**
+     * Checks that the objectClasses exist, that the mandatory attributes are present, and that
+     * the single valued attributes have a single value. The SchemaInterceptor checks the entry
+     * again, this early check lets the faulty entries fail before they are in a transaction.
+     */
+    private void check( Entry entry ) throws LdapException
+    {
+        Attribute objectClass = entry.get( objectClassAT );
+
+        if ( objectClass == null )
+        {
+            throw new LdapSchemaViolationException( ResultCodeEnum.OBJECT_CLASS_VIOLATION,
+                "The entry " + entry.getDn() + " has no objectClass" );
+        }
+
+        Set<ObjectClass> objectClasses = new HashSet<>();
+        Deque<ObjectClass> toVisit = new ArrayDeque<>();
+
+        for ( Value value : objectClass )
+        {
+            toVisit.add( schemaManager.lookupObjectClassRegistry( value.getString() ) );
+        }
+
+        while ( !toVisit.isEmpty() )
+        {
+            ObjectClass oc = toVisit.poll();
+
+            if ( objectClasses.add( oc ) && ( oc.getSuperiors() != null ) )
+            {
+                toVisit.addAll( oc.getSuperiors() );
+            }
+        }
+
+        for ( ObjectClass oc : objectClasses )
+        {
+            for ( AttributeType must : oc.getMustAttributeTypes() )
+            {
+                if ( !entry.containsAttribute( must ) )
+                {
+                    throw new LdapSchemaViolationException( ResultCodeEnum.OBJECT_CLASS_VIOLATION,
+                        "The entry " + entry.getDn() + " has no " + must.getName() + " attribute" );
+                }
+            }
+        }
+
+        for ( Attribute attribute : entry )
+        {
+            if ( attribute.getAttributeType().isSingleValued() && ( attribute.size() > 1 ) )
+            {
+                throw new LdapSchemaViolationException( ResultCodeEnum.CONSTRAINT_VIOLATION,
+                    "The attribute " + attribute.getUpId() + " of " + entry.getDn() + " must have a single value" );
+            }
+        }
+    }
+
+
+    /**
+     * Adds a batch of prepared entries in a transaction, and commits it. The write lock is
+     * taken when the first entry is added, and released by the commit.
+     */
+    private void applyBatch( List<Prepared> preparedBatch ) throws LdapException
+    {
+        for ( Prepared prepared : preparedBatch )
+        {
+            nextRecord = prepared.recordNumber + 1;
+
+            if ( prepared.error != null )
+            {
+                failed( prepared, prepared.error );
+            }
+            else
+            {
+                apply( prepared );
+            }
+        }
+
+        commit();
+    }
+
+
+    /**
+     * Adds an entry, or keeps it aside if its parent does not exist yet. The entries waiting
+     * for the added entries are added next.
+     */
+    private void apply( Prepared first ) throws LdapException
+    {
+        Deque<Prepared> toAdd = new ArrayDeque<>();
+        toAdd.add( first );
+
+        while ( !toAdd.isEmpty() )
+        {
+            Prepared prepared = toAdd.poll();
+
+            if ( !hasParent( prepared.dn ) )
+            {
+                defer( prepared );
+                continue;
+            }
+
+            if ( !coreSession.hasSessionTransaction() )
+            {
+                beginTransaction();
+            }
+
+            batch.add( prepared );
+
+            try
+            {
+                coreSession.add( prepared.entry.clone() );
+            }
+            catch ( LdapException le )
+            {
+                // The transaction has been aborted : add its entries again, one by one
+                replay( le );
+                toAdd.addAll( released( prepared ) );
+
+                continue;
+            }
+
+            knownDns.put( prepared.dn.getNormName(), Boolean.TRUE );
+            toAdd.addAll( released( prepared ) );
+        }
+    }
+
+
+    /**
+     * Rolls back the current transaction, and adds its entries again, each in its own transaction
+     */
+    private void replay( LdapException cause ) throws LdapException
+    {
+        LOG.debug( "Adding the {} entries of the aborted transaction one by one : {}", batch.size(),
+            cause.getMessage() );
+
+        endTransaction( false );
+
+        // The entries are now added outside of the write lock, each in its own transaction
+        for ( Prepared prepared : batch )
+        {
+            try
+            {
+                coreSession.add( prepared.entry.clone() );
+                knownDns.put( prepared.dn.getNormName(), Boolean.TRUE );
+                added( prepared );
+            }
+            catch ( LdapEntryAlreadyExistsException leaee )
+            {
+                // Already imported by a previous run
+                nbSkipped++;
+                knownDns.put( prepared.dn.getNormName(), Boolean.TRUE );
+            }
+            catch ( LdapException le )
+            {
+                knownDns.remove( prepared.dn.getNormName() );
+                failed( prepared, le );
+            }
+        }
+
+        batch.clear();
+        checkpoint();
+    }
+
+
+    /**
+     * @return The entries which were waiting for the given entry
+     */
+    private List<Prepared> released( Prepared parent )
+    {
+        List<Prepared> children = deferred.remove( parent.dn.getNormName() );
+
+        if ( children == null )
+        {
+            return new ArrayList<>();
+        }
+
+        for ( Prepared child : children )
+        {
+            deferredRecords.remove( child.recordNumber );
+        }
+
+        return children;
+    }
+
+
+    private void defer( Prepared prepared )
+    {
+        if ( deferredRecords.size() >= maxDeferred )
+        {
+            failed( prepared, new LdapNoSuchObjectException( "The parent of " + prepared.dn
+                + " does not exist, and too many entries are waiting for their parent" ) );
+
+            return;
+        }
+
+        String parentDn = prepared.dn.getParent().getNormName();
+        List<Prepared> children = deferred.get( parentDn );
+
+        if ( children == null )
+        {
+            children = new ArrayList<>();
+            deferred.put( parentDn, children );
+        }
+
+        children.add( prepared );
+        deferredRecords.add( prepared.recordNumber );
+    }
+
+
+    /**
+     * Tells if the parent of an entry exists. A context entry has no parent to check.
+     */
+    private boolean hasParent( Dn dn ) throws LdapException
+    {
+        Dn parentDn = dn.getParent();
+
+        if ( parentDn.isEmpty() || knownDns.containsKey( parentDn.getNormName() ) )
+        {
+            return true;
+        }
+
+        try
+        {
+            if ( coreSession.getDirectoryService().getPartitionNexus().getPartition( dn ).getSuffixDn().equals( dn ) )
+            {
+                return true;
+            }
+        }
+        catch ( LdapException le )
+        {
+            // No partition : let the add fail
+            return true;
+        }
+
+        if ( coreSession.exists( parentDn ) )
+        {
+            knownDns.put( parentDn.getNormName(), Boolean.TRUE );
+
+            return true;
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Commits the current transaction
+     */
+    private void commit() throws LdapException
+    {
+        if ( !coreSession.hasSessionTransaction() )
+        {
+            return;
+        }
+
+        endTransaction( true );
+
+        for ( Prepared prepared : batch )
+        {
+            added( prepared );
+        }
+
+        batch.clear();
+        checkpoint();
+    }
+
+
+    /**
+     * Takes the write lock, and starts a session transaction
+     */
+    private void beginTransaction()
+    {
+        operationManager.lockWrite();
+        coreSession.beginSessionTransaction();
+    }
+
+
+    /**
+     * Commits or rolls back the session transaction, then releases the write lock
+     */
+    private void endTransaction( boolean commit ) throws LdapException
+    {
+        try
+        {
+            coreSession.endSessionTransaction( commit );
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+        finally
+        {
+            operationManager.unlockWrite();
+        }
+    }
+
+
+    /**
+     * Stores the position of the first record which is neither committed nor rejected
+     */
+    private void checkpoint() throws LdapException
+    {
+        long checkpoint = nextRecord;
+
+        if ( !deferredRecords.isEmpty() )
+        {
+            checkpoint = Math.min( checkpoint, deferredRecords.first() );
+        }
+
+        writeCheckpoint( checkpoint );
+    }
+
+
+    private void added( Prepared prepared )
+    {
+        nbAdded++;
+
+        if ( listener != null )
+        {
+            listener.entryAdded( prepared.recordNumber, prepared.dn );
+        }
+    }
+
+
+    private void failed( Prepared prepared, Exception cause )
+    {
+        nbFailed++;
+
+        if ( listener != null )
+        {
+            listener.entryFailed( prepared.recordNumber, prepared.dn, cause );
+        }
+        else
+        {
+            LOG.warn( "Could not import the entry {} (record {}) : {}", prepared.dn, prepared.recordNumber,
+                cause.getMessage() );
+        }
+    }
+
+
+    private long readCheckpoint() throws LdapException
+    {
+        if ( ( checkpointFile == null ) || !checkpointFile.exists() )
+        {
+            return 0L;
+        }
+
+        try
+        {
+            String content = new String( Files.readAllBytes( checkpointFile.toPath() ), StandardCharsets.UTF_8 );
+
+            return Long.parseLong( content.trim() );
+        }
+        catch ( IOException | NumberFormatException e )
+        {
+            throw new LdapOtherException( "Cannot read the checkpoint file " + checkpointFile, e );
+        }
+    }
+
+
+    private void writeCheckpoint( long checkpoint ) throws LdapException
+    {
+        if ( listener != null )
+        {
+            listener.committed( checkpoint );
+        }
+
+        if ( checkpointFile == null )
+        {
+            return;
+        }
+
+        File tmp = new File( checkpointFile.getPath() + ".tmp" );
+
+        try
+        {
+            Files.write( tmp.toPath(), Long.toString( checkpoint ).getBytes( StandardCharsets.UTF_8 ) );
+            Files.move( tmp.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE );
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapOtherException( "Cannot write the checkpoint file " + checkpointFile, ioe );
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.operations.search;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.directory.api.ldap.model.cursor.EntryCursor;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.util.Network;
+import org.apache.directory.ldap.client.api.LdapConnection;
+import org.apache.directory.ldap.client.api.LdapNetworkConnection;
+import org.apache.directory.server.core.annotations.CreateDS;
+import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
+import org.apache.directory.server.core.api.interceptor.BaseInterceptor;
+import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
+import org.apache.directory.server.core.integ.AbstractLdapTestUnit;
+import org.apache.directory.server.core.integ.FrameworkRunner;
+import org.apache.directory.server.ldap.LdapServer;
+import org.apache.directory.server.ldap.SessionOrderedExecutor;
+import org.apache.directory.server.protocol.shared.transport.TcpTransport;
+import org.apache.mina.util.AvailablePortFinder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Compare the throughput and the latency of the server when some requests block their
+ * thread, with the requests processed by a pool of threads, and on virtual threads.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(FrameworkRunner.class)
+@CreateDS(enableChangeLog = false, name = "BlockingRequestPerfTest")
+public class BlockingRequestPerfIT extends AbstractLdapTestUnit
+{
+    /** The number of sessions sending blocking searches */
+    private static final int NB_BLOCKING_SESSIONS = 50;
+
+    /** The number of blocking searches per session */
+    private static final int NB_BLOCKING_SEARCHES = 10;
+
+    /** The time a blocking search holds its thread, in milliseconds */
+    private static final long BLOCKING_TIME = 20L;
+
+    /** The number of lookups measured meanwhile */
+    private static final int NB_LOOKUPS = 200;
+
+    /** The number of threads in the pool */
+    private static final int NB_THREADS = 4;
+
+    /** The time after which a client gives up, in milliseconds */
+    private static final long CLIENT_TIMEOUT = 60000L;
+
+    /** The base of the blocking searches */
+    private static final String BLOCKING_BASE = "ou=groups,ou=system";
+
+
+    /**
+     * An interceptor simulating a blocking I/O on the searches under BLOCKING_BASE
+     */
+    private static class BlockingInterceptor extends BaseInterceptor
+    {
+        private BlockingInterceptor()
+        {
+            super( "blockingInterceptor" );
+        }
+
+
+        @Override
+        public EntryFilteringCursor search( SearchOperationContext searchContext ) throws LdapException
+        {
+            if ( BLOCKING_BASE.equalsIgnoreCase( searchContext.getDn().getName() ) )
+            {
+                try
+                {
+                    Thread.sleep( BLOCKING_TIME );
+                }
+                catch ( InterruptedException ie )
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            return next( searchContext );
+        }
+    }
+
+
+    @Test
+    public void testBlockingRequests() throws Exception
+    {
+        getService().addFirst( new BlockingInterceptor() );
+
+        try
+        {
+            run( false );
+
+            if ( SessionOrderedExecutor.isVirtualThreadAvailable() )
+            {
+                run( true );
+            }
+            else
+            {
+                System.out.println( "The virtual threads are not supported by this JVM" );
+            }
+        }
+        finally
+        {
+            getService().remove( "blockingInterceptor" );
+        }
+    }
+
+
+    private void run( boolean useVirtualThreads ) throws Exception
+    {
+        final int port = AvailablePortFinder.getNextAvailable( 1024 );
+        LdapServer server = new LdapServer();
+        server.setDirectoryService( getService() );
+        server.setTransports( new TcpTransport( port, NB_THREADS ) );
+        server.setUseVirtualThreads( useVirtualThreads );
+        server.start();
+
+        try
+        {
+            final AtomicInteger nbSearches = new AtomicInteger();
+            final AtomicReference<Exception> clientFailure = new AtomicReference<>();
+            List<Thread> clients = new ArrayList<>();
+
+            for ( int i = 0; i < NB_BLOCKING_SESSIONS; i++ )
+            {
+                clients.add( new Thread( new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        try ( LdapConnection connection = new LdapNetworkConnection( Network.LOOPBACK_HOSTNAME, port ) )
+                        {
+                            connection.setTimeOut( CLIENT_TIMEOUT );
+                            connection.bind( "uid=admin,ou=system", "secret" );
+
+                            for ( int j = 0; j < NB_BLOCKING_SEARCHES; j++ )
+                            {
+                                try ( EntryCursor cursor = connection.search( BLOCKING_BASE, "(objectClass=*)",
+                                    SearchScope.OBJECT ) )
+                                {
+                                    while ( cursor.next() )
+                                    {
+                                        cursor.get();
+                                    }
+                                }
+
+                                nbSearches.incrementAndGet();
+                            }
+                        }
+                        catch ( Exception e )
+                        {
+                            // Keep the first failure, the test fails on it
+                            clientFailure.compareAndSet( null, e );
+                        }
+                    }
+                } ) );
+            }
+
+            LdapConnection connection = new LdapNetworkConnection( Network.LOOPBACK_HOSTNAME, port );
+            connection.bind( "uid=admin,ou=system", "secret" );
+
+            long t0 = System.currentTimeMillis();
+
+            for ( Thread client : clients )
+            {
+                client.start();
+            }
+
+            // Measure the lookups while the blocking searches are running
+            long[] latencies = new long[NB_LOOKUPS];
+
+            for ( int i = 0; i < NB_LOOKUPS; i++ )
+            {
+                long start = System.nanoTime();
+                Entry entry = connection.lookup( "ou=system" );
+                latencies[i] = System.nanoTime() - start;
+
+                assertNotNull( entry );
+            }
+
+            for ( Thread client : clients )
+            {
+                client.join( CLIENT_TIMEOUT );
+                assertFalse( "A client is still running", client.isAlive() );
+            }
+
+            if ( clientFailure.get() != null )
+            {
+                throw new AssertionError( "A blocking search failed", clientFailure.get() );
+            }
+
+            long t1 = System.currentTimeMillis();
+
+            connection.close();
+
+            assertEquals( NB_BLOCKING_SESSIONS * NB_BLOCKING_SEARCHES, nbSearches.get() );
+
+            Arrays.sort( latencies );
+
+            System.out.println( ( useVirtualThreads ? "Virtual threads" : "Pool of " + NB_THREADS + " threads" )
+                + " : " + nbSearches.get() + " blocking searches in " + ( t1 - t0 ) + " ms ("
+                + ( nbSearches.get() * 1000L / Math.max( 1L, t1 - t0 ) ) + " per second), lookup latency p50 "
+                + ( latencies[NB_LOOKUPS / 2] / 1000L ) + " us, p99 "
+                + ( latencies[NB_LOOKUPS * 99 / 100] / 1000L ) + " us" );
+        }
+        finally
+        {
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.operations.search;
+
+
+import static org.apache.directory.server.core.integ.IntegrationUtils.getAdminNetworkConnection;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.message.Response;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.apache.directory.api.ldap.model.message.SearchResultEntry;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.message.controls.PersistentSearch;
+import org.apache.directory.api.ldap.model.message.controls.PersistentSearchImpl;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.util.Network;
+import org.apache.directory.ldap.client.api.LdapConnection;
+import org.apache.directory.ldap.client.api.LdapNetworkConnection;
+import org.apache.directory.ldap.client.api.future.SearchFuture;
+import org.apache.directory.server.annotations.CreateLdapServer;
+import org.apache.directory.server.annotations.CreateTransport;
+import org.apache.directory.server.core.annotations.ApplyLdifs;
+import org.apache.directory.server.core.annotations.CreateDS;
+import org.apache.directory.server.core.integ.AbstractLdapTestUnit;
+import org.apache.directory.server.core.integ.FrameworkRunner;
+import org.apache.directory.server.ldap.handlers.PersistentSearchFanOut;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Measure the time it takes to notify 1000 persistent searches of a series of changes.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(FrameworkRunner.class)
+@CreateLdapServer(transports =
+    {
+        @CreateTransport(protocol = "LDAP") })
+@CreateDS(enableChangeLog = false, name = "PersistentSearchFanOutPerfTest")
+@ApplyLdifs(
+    {
+        "dn: cn=fanout,ou=system",
+        "objectClass: person",
+        "objectClass: top",
+        "cn: fanout",
+        "sn: fanout" })
+public class PersistentSearchFanOutPerfIT extends AbstractLdapTestUnit
+{
+    /** The number of connections */
+    private static final int NB_CONNECTIONS = 10;
+
+    /** The number of persistent searches per connection */
+    private static final int NB_SEARCHES = 100;
+
+    /** The number of changes */
+    private static final int NB_CHANGES = 100;
+
+
+    @Test
+    public void testFanOut() throws Exception
+    {
+        List<LdapConnection> connections = new ArrayList<>();
+        List<SearchFuture> futures = new ArrayList<>();
+
+        for ( int i = 0; i < NB_CONNECTIONS; i++ )
+        {
+            LdapConnection connection = new LdapNetworkConnection( Network.LOOPBACK_HOSTNAME, getLdapServer()
+                .getPort() );
+            connection.setTimeOut( 0L );
+            connection.bind( "uid=admin,ou=system", "secret" );
+            connections.add( connection );
+
+            for ( int j = 0; j < NB_SEARCHES; j++ )
+            {
+                SearchRequest searchRequest = new SearchRequestImpl();
+                searchRequest.setBase( new Dn( "ou=system" ) );
+                searchRequest.setFilter( "(objectClass=person)" );
+                searchRequest.setScope( SearchScope.SUBTREE );
+
+                // Two different projections
+                if ( j % 2 == 0 )
+                {
+                    searchRequest.addAttributes( "cn", "description" );
+                }
+                else
+                {
+                    searchRequest.addAttributes( "*" );
+                }
+
+                PersistentSearch persistentSearch = new PersistentSearchImpl();
+                persistentSearch.setChangesOnly( true );
+                persistentSearch.setReturnECs( true );
+                searchRequest.addControl( persistentSearch );
+
+                futures.add( connection.searchAsync( searchRequest ) );
+            }
+        }
+
+        // Wait for the searches to be registered
+        long deadline = System.currentTimeMillis() + 30000L;
+
+        while ( ( getService().getEventService().getRegistrationEntries().size() < NB_CONNECTIONS * NB_SEARCHES )
+            && ( System.currentTimeMillis() < deadline ) )
+        {
+            Thread.sleep( 10L );
+        }
+
+        assertEquals( NB_CONNECTIONS * NB_SEARCHES, getService().getEventService().getRegistrationEntries().size() );
+
+        LdapConnection adminConnection = getAdminNetworkConnection( getLdapServer() );
+        PersistentSearchFanOut fanOut = getLdapServer().getPersistentSearchFanOut();
+        long nbEncoded = fanOut.getNbEncoded();
+
+        long t0 = System.currentTimeMillis();
+
+        for ( int i = 0; i < NB_CHANGES; i++ )
+        {
+            adminConnection.modify( new Dn( "cn=fanout,ou=system" ), new DefaultModification(
+                ModificationOperation.REPLACE_ATTRIBUTE, "description", "change " + i ) );
+        }
+
+        long t1 = System.currentTimeMillis();
+
+        for ( SearchFuture future : futures )
+        {
+            for ( int i = 0; i < NB_CHANGES; i++ )
+            {
+                Response response = future.get( 60, TimeUnit.SECONDS );
+
+                assertNotNull( response );
+                assertTrue( response instanceof SearchResultEntry );
+            }
+        }
+
+        long t2 = System.currentTimeMillis();
+        long nbNotifications = ( long ) NB_CONNECTIONS * NB_SEARCHES * NB_CHANGES;
+
+        System.out.println( NB_CHANGES + " changes done in " + ( t1 - t0 ) + " ms" );
+        System.out.println( nbNotifications + " notifications to " + ( NB_CONNECTIONS * NB_SEARCHES )
+            + " persistent searches received in " + ( t2 - t0 ) + " ms ("
+            + ( nbNotifications * 1000L / Math.max( 1L, t2 - t0 ) ) + " per second)" );
+        System.out.println( "Encoded bodies : " + ( fanOut.getNbEncoded() - nbEncoded ) + ", " + fanOut );
+
+        // The bodies are shared by the searches with the same projection
+        assertTrue( fanOut.getNbEncoded() - nbEncoded <= 2L * NB_CHANGES );
+
+        adminConnection.close();
+
+        for ( LdapConnection connection : connections )
+        {
+            connection.close();
+        }
+    }
+}
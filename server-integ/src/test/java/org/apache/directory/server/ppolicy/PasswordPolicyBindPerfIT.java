@@ -0,0 +1,167 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ppolicy;
+
+
+import static org.apache.directory.server.core.integ.IntegrationUtils.getAdminNetworkConnection;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import org.apache.directory.api.ldap.model.constants.PasswordPolicySchemaConstants;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.util.Network;
+import org.apache.directory.ldap.client.api.LdapConnection;
+import org.apache.directory.ldap.client.api.LdapNetworkConnection;
+import org.apache.directory.server.annotations.CreateLdapServer;
+import org.apache.directory.server.annotations.CreateTransport;
+import org.apache.directory.server.core.annotations.CreateDS;
+import org.apache.directory.server.core.api.InterceptorEnum;
+import org.apache.directory.server.core.api.authn.ppolicy.PasswordPolicyConfiguration;
+import org.apache.directory.server.core.authn.AuthenticationInterceptor;
+import org.apache.directory.server.core.authn.ppolicy.PasswordPolicyStateStore;
+import org.apache.directory.server.core.authn.ppolicy.PpolicyConfigContainer;
+import org.apache.directory.server.core.integ.AbstractLdapTestUnit;
+import org.apache.directory.server.core.integ.FrameworkRunner;
+import org.apache.directory.server.core.integ.IntegrationUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Compare the bind throughput under a password policy with a pwdMaxIdle, when the
+ * pwdLastSuccess attribute is written at each bind, and when it's written behind.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(FrameworkRunner.class)
+@CreateLdapServer(transports =
+    {
+        @CreateTransport(protocol = "LDAP") })
+@CreateDS(enableChangeLog = false, name = "PasswordPolicyBindPerfTest")
+public class PasswordPolicyBindPerfIT extends AbstractLdapTestUnit
+{
+    /** The number of users */
+    private static final int NB_USERS = 100;
+
+    /** The number of binds per run */
+    private static final int NB_BINDS = 20000;
+
+    private AuthenticationInterceptor authenticationInterceptor;
+
+
+    /**
+     * Set a PasswordPolicy which requires the last success time to be stored
+     */
+    @Before
+    public void setPwdPolicy() throws LdapException
+    {
+        PasswordPolicyConfiguration policyConfig = new PasswordPolicyConfiguration();
+
+        policyConfig.setPwdMaxIdle( 3600 );
+        policyConfig.setPwdLockout( true );
+        policyConfig.setPwdMaxFailure( 3 );
+
+        PpolicyConfigContainer policyContainer = new PpolicyConfigContainer();
+        Dn defaultPolicyDn = new Dn( ldapServer.getDirectoryService().getSchemaManager(), "cn=default" );
+        policyContainer.addPolicy( defaultPolicyDn, policyConfig );
+        policyContainer.setDefaultPolicyDn( defaultPolicyDn );
+
+        authenticationInterceptor = ( AuthenticationInterceptor ) getService()
+            .getInterceptor( InterceptorEnum.AUTHENTICATION_INTERCEPTOR.getName() );
+
+        authenticationInterceptor.setPwdPolicies( policyContainer );
+    }
+
+
+    @After
+    public void closeConnections()
+    {
+        authenticationInterceptor.setPwdPolicyStateFlushInterval( 0L );
+        IntegrationUtils.closeConnections();
+    }
+
+
+    /**
+     * Bind NB_BINDS times, cycling over the users, and return the number of binds per second
+     */
+    private long bind( LdapConnection connection ) throws Exception
+    {
+        long t0 = System.currentTimeMillis();
+
+        for ( int i = 0; i < NB_BINDS; i++ )
+        {
+            connection.bind( "cn=user" + ( i % NB_USERS ) + ",ou=system", "secret" );
+        }
+
+        long t1 = System.currentTimeMillis();
+        long delta = Math.max( 1L, t1 - t0 );
+
+        return ( NB_BINDS * 1000L ) / delta;
+    }
+
+
+    @Test
+    public void testBindPerf() throws Exception
+    {
+        LdapConnection adminConnection = getAdminNetworkConnection( getLdapServer() );
+
+        for ( int i = 0; i < NB_USERS; i++ )
+        {
+            adminConnection.add( new DefaultEntry(
+                "cn=user" + i + ",ou=system",
+                "ObjectClass: top",
+                "ObjectClass: person",
+                "cn: user" + i,
+                "sn: user" + i,
+                "userPassword: secret" ) );
+        }
+
+        LdapConnection connection = new LdapNetworkConnection( Network.LOOPBACK_HOSTNAME, ldapServer.getPort() );
+
+        // Warm up
+        bind( connection );
+
+        long perSecondSync = bind( connection );
+
+        authenticationInterceptor.setPwdPolicyStateFlushInterval( 1000L );
+        PasswordPolicyStateStore stateStore = authenticationInterceptor.getPwdPolicyStateStore();
+
+        long perSecondWriteBehind = bind( connection );
+
+        System.out.println( "Binds per second, state written at each bind : " + perSecondSync );
+        System.out.println( "Binds per second, state written behind : " + perSecondWriteBehind );
+        System.out.println( stateStore );
+
+        // All the pending values are written when the store is stopped
+        authenticationInterceptor.setPwdPolicyStateFlushInterval( 0L );
+        assertEquals( 0, stateStore.getPendingCount() );
+
+        Entry user = adminConnection.lookup( "cn=user0,ou=system", "+" );
+        assertNotNull( user.get( PasswordPolicySchemaConstants.PWD_LAST_SUCCESS_AT ) );
+
+        connection.close();
+        adminConnection.close();
+    }
+}
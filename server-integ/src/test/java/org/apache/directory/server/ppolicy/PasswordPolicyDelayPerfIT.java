@@ -0,0 +1,188 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ppolicy;
+
+
+import static org.apache.directory.server.core.integ.IntegrationUtils.getAdminNetworkConnection;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.message.BindRequest;
+import org.apache.directory.api.ldap.model.message.BindRequestImpl;
+import org.apache.directory.api.ldap.model.message.BindResponse;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.util.Network;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.ldap.client.api.LdapConnection;
+import org.apache.directory.ldap.client.api.LdapNetworkConnection;
+import org.apache.directory.ldap.client.api.future.BindFuture;
+import org.apache.directory.server.annotations.CreateLdapServer;
+import org.apache.directory.server.annotations.CreateTransport;
+import org.apache.directory.server.core.annotations.CreateDS;
+import org.apache.directory.server.core.api.InterceptorEnum;
+import org.apache.directory.server.core.api.authn.ppolicy.PasswordPolicyConfiguration;
+import org.apache.directory.server.core.authn.AuthenticationInterceptor;
+import org.apache.directory.server.core.authn.ppolicy.PpolicyConfigContainer;
+import org.apache.directory.server.core.integ.AbstractLdapTestUnit;
+import org.apache.directory.server.core.integ.FrameworkRunner;
+import org.apache.directory.server.core.integ.IntegrationUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Check that the failed bind responses delayed by the password policy pwdMinDelay
+ * don't hold the server threads : a password spraying attack must not prevent
+ * the legitimate requests from being processed.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(FrameworkRunner.class)
+@CreateLdapServer(transports =
+    {
+        @CreateTransport(protocol = "LDAP", nbThreads = 2) })
+@CreateDS(enableChangeLog = false, name = "PasswordPolicyDelayPerfTest")
+public class PasswordPolicyDelayPerfIT extends AbstractLdapTestUnit
+{
+    /** The number of concurrent failed binds */
+    private static final int NB_BAD_BINDS = 50;
+
+    /** The delay applied on each failed bind, in seconds */
+    private static final int DELAY = 2;
+
+
+    /**
+     * Set a PasswordPolicy delaying the failed binds
+     */
+    @Before
+    public void setPwdPolicy() throws LdapException
+    {
+        PasswordPolicyConfiguration policyConfig = new PasswordPolicyConfiguration();
+
+        policyConfig.setPwdLockout( false );
+        policyConfig.setPwdMinDelay( DELAY );
+        policyConfig.setPwdMaxDelay( DELAY );
+
+        PpolicyConfigContainer policyContainer = new PpolicyConfigContainer();
+        Dn defaultPolicyDn = new Dn( ldapServer.getDirectoryService().getSchemaManager(), "cn=default" );
+        policyContainer.addPolicy( defaultPolicyDn, policyConfig );
+        policyContainer.setDefaultPolicyDn( defaultPolicyDn );
+
+        AuthenticationInterceptor authenticationInterceptor = ( AuthenticationInterceptor ) getService()
+            .getInterceptor( InterceptorEnum.AUTHENTICATION_INTERCEPTOR.getName() );
+
+        authenticationInterceptor.setPwdPolicies( policyContainer );
+    }
+
+
+    @After
+    public void closeConnections()
+    {
+        IntegrationUtils.closeConnections();
+    }
+
+
+    /**
+     * Send many failed binds at the same time, and measure the time it takes to
+     * process an admin lookup meanwhile.
+     */
+    @Test
+    public void testPasswordSpraying() throws Exception
+    {
+        LdapConnection adminConnection = getAdminNetworkConnection( getLdapServer() );
+
+        Entry userEntry = new DefaultEntry(
+            "cn=sprayed,ou=system",
+            "ObjectClass: top",
+            "ObjectClass: person",
+            "cn: sprayed",
+            "sn: sprayed_sn",
+            "userPassword: secret" );
+
+        adminConnection.add( userEntry );
+
+        List<LdapNetworkConnection> connections = new ArrayList<>();
+        List<BindFuture> futures = new ArrayList<>();
+
+        for ( int i = 0; i < NB_BAD_BINDS; i++ )
+        {
+            LdapNetworkConnection connection = new LdapNetworkConnection( Network.LOOPBACK_HOSTNAME,
+                ldapServer.getPort() );
+            connection.setTimeOut( 0L );
+            connection.connect();
+            connections.add( connection );
+        }
+
+        long t0 = System.currentTimeMillis();
+
+        for ( LdapNetworkConnection connection : connections )
+        {
+            BindRequest bindRequest = new BindRequestImpl();
+            bindRequest.setDn( userEntry.getDn() );
+            bindRequest.setCredentials( Strings.getBytesUtf8( "badPassword" ) );
+
+            futures.add( connection.bindAsync( bindRequest ) );
+        }
+
+        // The lookup should not wait for the delayed responses to be sent
+        long t1 = System.currentTimeMillis();
+        Entry entry = adminConnection.lookup( "ou=system" );
+        long t2 = System.currentTimeMillis();
+
+        assertNotNull( entry );
+
+        for ( BindFuture future : futures )
+        {
+            BindResponse bindResponse = future.get( 60, TimeUnit.SECONDS );
+
+            assertNotNull( bindResponse );
+            assertEquals( ResultCodeEnum.INVALID_CREDENTIALS, bindResponse.getLdapResult().getResultCode() );
+        }
+
+        long t3 = System.currentTimeMillis();
+
+        System.out.println( "Admin lookup during " + NB_BAD_BINDS + " failed binds : " + ( t2 - t1 ) + " ms" );
+        System.out.println( "All the failed bind responses received after : " + ( t3 - t0 ) + " ms" );
+
+        // The failed binds are still delayed...
+        assertTrue( ( t3 - t0 ) >= DELAY * 1000L );
+
+        // ... but the lookup is not
+        assertTrue( ( t2 - t1 ) < DELAY * 1000L );
+
+        for ( LdapNetworkConnection connection : connections )
+        {
+            connection.close();
+        }
+
+        adminConnection.close();
+    }
+}
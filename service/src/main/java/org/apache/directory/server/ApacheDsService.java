@@ -76,6 +76,8 @@ import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.schema.SchemaPartition;
 import org.apache.directory.server.core.partition.impl.btree.AbstractBTreePartition;
 import org.apache.directory.server.core.partition.ldif.LdifPartition;
+import org.apache.directory.server.core.partition.ldif.LdifSnapshot;
+import org.apache.directory.server.core.partition.ldif.LdifSnapshotSchemaLoader;
 import org.apache.directory.server.core.security.CertificateUtil;
 import org.apache.directory.server.core.shared.DefaultDnFactory;
 import org.apache.directory.server.i18n.I18n;
@@ -122,6 +124,21 @@ public class ApacheDsService
     /** The SchemaManager instance */
     private SchemaManager schemaManager;
 
+    /** The name of the schema partition snapshot file, in the cache directory */
+    private static final String SCHEMA_SNAPSHOT_FILE = "schema.snapshot";
+
+    /** The schema partition directory */
+    private File schemaPartitionDirectory;
+
+    /** The schema partition snapshot file */
+    private File schemaSnapshotFile;
+
+    /** The schema partition snapshot, if a valid one has been found at startup */
+    private LdifSnapshot schemaSnapshot;
+
+    /** The checksum of the schema partition snapshot used at startup, if any */
+    private Long schemaSnapshotChecksum;
+
     /** The configuration partition */
     private LdifPartition configPartition;
 
@@ -177,9 +194,15 @@ public class ApacheDsService
 
         LOG.info( "using partition dir {}", partitionsDir.getAbsolutePath() );
 
+        long startTime = System.currentTimeMillis();
+
         initSchemaManager( instanceLayout );
         DnFactory bootstrapDnFactory = new DefaultDnFactory( schemaManager, 100 );
         initSchemaLdifPartition( instanceLayout, bootstrapDnFactory );
+
+        long schemaTime = System.currentTimeMillis();
+        LOG.info( "SchemaManager initialized in {} milliseconds", schemaTime - startTime );
+
         initConfigPartition( instanceLayout, bootstrapDnFactory );
 
         // Read the configuration
@@ -187,6 +210,9 @@ public class ApacheDsService
 
         ConfigBean configBean = cpReader.readConfig();
 
+        long configTime = System.currentTimeMillis();
+        LOG.info( "Configuration read in {} milliseconds", configTime - schemaTime );
+
         DirectoryServiceBean directoryServiceBean = configBean.getDirectoryServiceBean();
 
         /*
@@ -203,6 +229,7 @@ public class ApacheDsService
 
         // Initialize the DirectoryService now
         DirectoryService directoryService = initDirectoryService( instanceLayout, directoryServiceBean, dnFactory );
+        long directoryServiceTime = System.currentTimeMillis();
 
         // start the LDAP server
         LdapServerBean ldapServerBean = directoryServiceBean.getLdapServerBean();
@@ -259,6 +286,11 @@ public class ApacheDsService
         criteria.setScope( SearchScope.SUBTREE );
         
         directoryService.getEventService().addListener( configListener, criteria );
+
+        long endTime = System.currentTimeMillis();
+        LOG.info( "ApacheDS started in {} milliseconds (schema : {} ms, configuration : {} ms, "
+            + "DirectoryService : {} ms, servers : {} ms)", endTime - startTime, schemaTime - startTime,
+            configTime - schemaTime, directoryServiceTime - configTime, endTime - directoryServiceTime );
     }
 
 
@@ -294,14 +326,16 @@ public class ApacheDsService
 
 
     /**
-     * Initialize the schema Manager by loading the schema LDIF files
+     * Initialize the schema Manager by loading the schema snapshot if it's still valid,
+     * or the schema LDIF files
      * 
      * @param instanceLayout the instance layout
      * @throws Exception in case of any problems while extracting and writing the schema files
      */
     private void initSchemaManager( InstanceLayout instanceLayout ) throws Exception
     {
-        File schemaPartitionDirectory = new File( instanceLayout.getPartitionsDirectory(), "schema" );
+        schemaPartitionDirectory = new File( instanceLayout.getPartitionsDirectory(), "schema" );
+        schemaSnapshotFile = new File( instanceLayout.getCacheDirectory(), SCHEMA_SNAPSHOT_FILE );
 
         // Extract the schema on disk (a brand new one) and load the registries
         if ( schemaPartitionDirectory.exists() )
@@ -315,7 +349,44 @@ public class ApacheDsService
             isSchemaPartitionFirstExtraction = true;
         }
 
-        SchemaLoader loader = new LdifSchemaLoader( schemaPartitionDirectory );
+        if ( !isSchemaPartitionFirstExtraction )
+        {
+            schemaSnapshot = LdifSnapshot.read( schemaSnapshotFile, schemaPartitionDirectory );
+        }
+
+        if ( schemaSnapshot != null )
+        {
+            LOG.info( "Loading the schema from the snapshot {}", schemaSnapshotFile );
+
+            if ( loadSchemaManager( new LdifSnapshotSchemaLoader( schemaSnapshot ) ).isEmpty() )
+            {
+                schemaSnapshotChecksum = schemaSnapshot.getChecksum();
+
+                return;
+            }
+
+            LOG.warn( "The schema snapshot {} can't be loaded, loading the schema LDIF files", schemaSnapshotFile );
+            schemaSnapshot = null;
+        }
+
+        List<Throwable> errors = loadSchemaManager( new LdifSchemaLoader( schemaPartitionDirectory ) );
+
+        if ( !errors.isEmpty() )
+        {
+            throw new Exception( I18n.err( I18n.ERR_317, Exceptions.printErrors( errors ) ) );
+        }
+    }
+
+
+    /**
+     * Create the SchemaManager and load all the enabled schemas
+     *
+     * @param loader The SchemaLoader to use
+     * @return The errors met while loading the schemas
+     * @throws Exception If the schemas can't be loaded
+     */
+    private List<Throwable> loadSchemaManager( SchemaLoader loader ) throws Exception
+    {
         schemaManager = new DefaultSchemaManager( loader.getAllSchemas() );
         
         // We have to load the schema now, otherwise we won't be able
@@ -323,11 +394,41 @@ public class ApacheDsService
         // and normalize their suffix Dn
         schemaManager.loadAllEnabled();
 
-        List<Throwable> errors = schemaManager.getErrors();
+        return schemaManager.getErrors();
+    }
 
-        if ( !errors.isEmpty() )
+
+    /**
+     * Write a snapshot of the schema partition, if the schema LDIF files have been modified
+     * since the last snapshot has been written, or if there is no snapshot yet.
+     */
+    private void writeSchemaSnapshot()
+    {
+        if ( ( schemaPartitionDirectory == null ) || !schemaPartitionDirectory.exists() )
         {
-            throw new Exception( I18n.err( I18n.ERR_317, Exceptions.printErrors( errors ) ) );
+            return;
+        }
+
+        try
+        {
+            if ( ( schemaSnapshotChecksum != null )
+                && ( schemaSnapshotChecksum == LdifSnapshot.computeChecksum( schemaPartitionDirectory ) ) )
+            {
+                // The snapshot is still valid
+                return;
+            }
+
+            long t0 = System.currentTimeMillis();
+            LdifSnapshot snapshot = LdifSnapshot.create( schemaPartitionDirectory );
+            snapshot.write( schemaSnapshotFile );
+            schemaSnapshotChecksum = snapshot.getChecksum();
+
+            LOG.info( "Schema snapshot {} written in {} milliseconds", schemaSnapshotFile,
+                System.currentTimeMillis() - t0 );
+        }
+        catch ( Exception e )
+        {
+            LOG.warn( "Cannot write the schema snapshot {} : {}", schemaSnapshotFile, e.getMessage() );
         }
     }
 
@@ -339,11 +440,13 @@ public class ApacheDsService
      */
     private void initSchemaLdifPartition( InstanceLayout instanceLayout, DnFactory dnFactory )
     {
-        File schemaPartitionDirectory = new File( instanceLayout.getPartitionsDirectory(), "schema" );
-
         // Init the LdifPartition
         schemaLdifPartition = new LdifPartition( schemaManager, dnFactory );
         schemaLdifPartition.setPartitionPath( schemaPartitionDirectory.toURI() );
+
+        // The entries will be read from the snapshot if it's still valid
+        schemaLdifPartition.setSnapshot( schemaSnapshot );
+        schemaSnapshot = null;
     }
 
 
@@ -669,6 +772,9 @@ public class ApacheDsService
         {
             directoryService.shutdown();
         }
+
+        // The schema files have been cleanly written, we can take a snapshot of them
+        writeSchemaSnapshot();
     }
 
     private static final String BANNER_LDAP = "           _                     _          ____  ____   \n"
@@ -31,7 +31,11 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -68,6 +72,7 @@ import org.apache.directory.api.util.exception.MultiException;
 import org.apache.directory.server.constants.ApacheSchemaConstants;
 import org.apache.directory.server.core.api.DnFactory;
 import org.apache.directory.server.core.api.entry.ClonedServerEntry;
+import org.apache.directory.server.core.api.entry.CopyOnWriteEntry;
 import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
 import org.apache.directory.server.core.api.filtering.EntryFilteringCursorImpl;
 import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
@@ -82,15 +87,19 @@ import org.apache.directory.server.core.api.interceptor.context.OperationContext
 import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.UnbindOperationContext;
+import org.apache.directory.server.core.api.metrics.MetricsRegistry;
+import org.apache.directory.server.core.api.metrics.MetricsSource;
 import org.apache.directory.server.core.api.partition.AbstractPartition;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
 import org.apache.directory.server.core.api.partition.PartitionWriteTxn;
 import org.apache.directory.server.core.api.partition.Subordinates;
 import org.apache.directory.server.i18n.I18n;
+import org.apache.directory.server.xdbm.HierarchyLabels;
 import org.apache.directory.server.xdbm.Index;
 import org.apache.directory.server.xdbm.IndexEntry;
 import org.apache.directory.server.xdbm.IndexNotFoundException;
+import org.apache.directory.server.xdbm.IndexStatistics;
 import org.apache.directory.server.xdbm.MasterTable;
 import org.apache.directory.server.xdbm.ParentIdAndRdn;
 import org.apache.directory.server.xdbm.Store;
@@ -109,7 +118,7 @@ import com.github.benmanes.caffeine.cache.Caffeine;
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
-public abstract class AbstractBTreePartition extends AbstractPartition implements Store
+public abstract class AbstractBTreePartition extends AbstractPartition implements Store, MetricsSource
 {
     /** static logger */
     private static final Logger LOG = LoggerFactory.getLogger( AbstractBTreePartition.class );
@@ -123,6 +132,12 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     /** Tells if the Optimizer is enabled */
     protected boolean optimizerEnabled = true;
 
+    /** The delay between two checks of the user index statistics, in seconds. 0 to disable the statistics */
+    protected long indexStatisticsRefreshInterval = 0L;
+
+    /** The thread refreshing the stale index statistics */
+    private ScheduledExecutorService indexStatisticsExecutor;
+
     /** The default cache size is set to 10 000 objects */
     public static final int DEFAULT_CACHE_SIZE = 10000;
 
@@ -135,6 +150,12 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     /** The ParentIdAndRdn cache */
     protected Cache<String, ParentIdAndRdn> piarCache;
 
+    /** Tells if the entries are labelled with their position in the tree */
+    protected boolean hierarchyLabelsEnabled = false;
+
+    /** The hierarchy labels, null if they are not enabled */
+    private HierarchyLabels hierarchyLabels;
+
     /** true if we sync disks on every write operation */
     protected AtomicBoolean isSyncOnWrite = new AtomicBoolean( true );
 
@@ -328,6 +349,55 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     }
 
 
+    /**
+     * @return The delay between two checks of the user index statistics, in seconds. 0 if
+     * the statistics are not computed
+     */
+    public long getIndexStatisticsRefreshInterval()
+    {
+        return indexStatisticsRefreshInterval;
+    }
+
+
+    /**
+     * Sets the delay between two checks of the user index statistics. The statistics of
+     * an index are computed again when too many keys have been added or removed since
+     * the last computation. They are used by the optimizer to estimate the number of
+     * candidates for range and substring filters.
+     *
+     * @param indexStatisticsRefreshInterval The delay in seconds. 0 to disable the statistics
+     */
+    public void setIndexStatisticsRefreshInterval( long indexStatisticsRefreshInterval )
+    {
+        this.indexStatisticsRefreshInterval = indexStatisticsRefreshInterval;
+    }
+
+
+    /**
+     * @return <tt>true</tt> if the entries are labelled with their position in the tree
+     */
+    public boolean isHierarchyLabelsEnabled()
+    {
+        return hierarchyLabelsEnabled;
+    }
+
+
+    /**
+     * Enables the hierarchy labels. The label of an entry is derived from the label of its
+     * parent, so that the subtree and one level scopes are checked without reading the Rdn
+     * index. The labels are kept in memory, and built from the Rdn index when a search first
+     * needs them. They are updated along with the Rdn index, and built again when a
+     * write transaction is aborted.
+     *
+     * @param hierarchyLabelsEnabled <tt>true</tt> to label the entries
+     */
+    public void setHierarchyLabelsEnabled( boolean hierarchyLabelsEnabled )
+    {
+        checkInitialized( "hierarchyLabelsEnabled" );
+        this.hierarchyLabelsEnabled = hierarchyLabelsEnabled;
+    }
+
+
     /**
      * Sets the path in which this Partition stores data. This may be an URL to
      * a file or directory, or an JDBC URL.
@@ -543,10 +613,22 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         // don't reset initialized flag
         initialized = false;
 
+        if ( indexStatisticsExecutor != null )
+        {
+            indexStatisticsExecutor.shutdownNow();
+            indexStatisticsExecutor = null;
+        }
+
         aliasCache.invalidateAll();
         piarCache.invalidateAll();
         entryDnCache.invalidateAll();
 
+        if ( hierarchyLabels != null )
+        {
+            hierarchyLabels.invalidate();
+            hierarchyLabels = null;
+        }
+
         MultiException errors = new MultiException( I18n.err( I18n.ERR_577 ) );
 
         for ( Index<?, String> index : userIndices.values() )
@@ -630,13 +712,116 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         setupUserIndices();
 
         aliasCache = Caffeine.newBuilder().maximumSize( cacheSize ).expireAfterAccess( Duration.ofMinutes( 20 ) )
-            .build();
+            .recordStats().build();
 
         piarCache = Caffeine.newBuilder().maximumSize( cacheSize * 3L )
-            .expireAfterAccess( Duration.ofMinutes( 20 ) ).build();
+            .expireAfterAccess( Duration.ofMinutes( 20 ) ).recordStats().build();
 
         entryDnCache = Caffeine.newBuilder().maximumSize( cacheSize ).expireAfterAccess( Duration.ofMinutes( 20 ) )
-            .build();
+            .recordStats().build();
+
+        if ( hierarchyLabelsEnabled )
+        {
+            hierarchyLabels = new HierarchyLabels( this );
+        }
+
+        if ( indexStatisticsRefreshInterval > 0L )
+        {
+            startIndexStatisticsRefresh();
+        }
+    }
+
+
+    /**
+     * Start the thread computing the user index statistics, and computing them again when
+     * they are stale. The first computation is done once the partition has been initialized.
+     */
+    private void startIndexStatisticsRefresh()
+    {
+        indexStatisticsExecutor = Executors.newSingleThreadScheduledExecutor( new ThreadFactory()
+        {
+            @Override
+            public Thread newThread( Runnable runnable )
+            {
+                Thread thread = new Thread( runnable, "IndexStatistics-" + getId() );
+                thread.setDaemon( true );
+
+                return thread;
+            }
+        } );
+
+        indexStatisticsExecutor.scheduleWithFixedDelay( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if ( !initialized )
+                {
+                    return;
+                }
+
+                try
+                {
+                    refreshIndexStatistics( false );
+                }
+                catch ( Exception e )
+                {
+                    LOG.warn( "Cannot compute the index statistics for partition {} : {}", getId(), e.getMessage() );
+                }
+            }
+        }, 1L, indexStatisticsRefreshInterval, TimeUnit.SECONDS );
+    }
+
+
+    /**
+     * Compute the statistics of the user indices.
+     *
+     * @param force If <tt>false</tt>, only the missing or stale statistics are computed
+     * @throws LdapException If an index can't be read
+     */
+    @SuppressWarnings("unchecked")
+    public void refreshIndexStatistics( boolean force ) throws LdapException
+    {
+        for ( Index<?, String> index : userIndices.values() )
+        {
+            IndexStatistics statistics = index.getStatistics();
+
+            if ( !force && ( statistics != null ) && !statistics.isStale() )
+            {
+                continue;
+            }
+
+            long t0 = System.currentTimeMillis();
+
+            // The index must not be modified while we scan it
+            ReadWriteLock lock = rwLock;
+
+            if ( lock != null )
+            {
+                lock.readLock().lock();
+            }
+
+            try ( PartitionTxn partitionTxn = beginReadTransaction() )
+            {
+                statistics = IndexStatistics.build( partitionTxn, ( Index<Object, String> ) index,
+                    IndexStatistics.DEFAULT_NB_BUCKETS );
+                index.setStatistics( statistics );
+            }
+            catch ( IOException ioe )
+            {
+                throw new LdapOtherException( ioe.getMessage(), ioe );
+            }
+            finally
+            {
+                if ( lock != null )
+                {
+                    lock.readLock().unlock();
+                }
+            }
+
+            LOG.debug( "Computed the statistics of index {} in partition {} in {} ms : {}", index.getAttributeId(),
+                getId(), System.currentTimeMillis() - t0, statistics );
+        }
     }
 
 
@@ -915,6 +1100,12 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
                 // Update the PIAR cache at the same time
                 updatePiarCache( parentIdAndRdn, id, ADD_CACHE );
 
+                if ( hierarchyLabels != null )
+                {
+                    invalidateHierarchyLabelsOnAbort( partitionTxn );
+                    hierarchyLabels.entryAdded( parentId, id );
+                }
+
                 // Update the parent's nbChildren and nbDescendants values
                 if ( parentId != Partition.ROOT_ID )
                 {
@@ -1152,6 +1343,12 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
                 updatePiarCache( parent, id, DEL_CACHE );
 
                 entryDnCache.invalidate( id );
+
+                if ( hierarchyLabels != null )
+                {
+                    invalidateHierarchyLabelsOnAbort( partitionTxn );
+                    hierarchyLabels.entryDeleted( id );
+                }
                 
                 Attribute csn = entry.get( entryCsnAT );
                 // can be null while doing subentry deletion
@@ -1337,21 +1534,11 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
             {
                 entry.setDn( dn );
 
-                entry = new ClonedServerEntry( entry );
+                // The cached entry is shared : its attributes are only copied when modified
+                entry = new CopyOnWriteEntry( entry );
 
                 // Replace the entry's DN with the provided one
-                Attribute entryDnAt = entry.get( entryDnAT );
-                Value dnValue = new Value( entryDnAT, dn.getName(), dn.getNormName() );
-
-                if ( entryDnAt == null )
-                {
-                    entry.add( entryDnAT, dnValue );
-                }
-                else
-                {
-                    entryDnAt.clear();
-                    entryDnAt.add( dnValue );
-                }
+                entry.put( entryDnAT, new Value( entryDnAT, dn.getName(), dn.getNormName() ) );
 
                 return entry;
             }
@@ -1374,7 +1561,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
                 // always store original entry in the cache
                 addToCache( id, entry );
 
-                entry = new ClonedServerEntry( entry );
+                entry = new CopyOnWriteEntry( entry );
 
                 if ( !entry.containsAttribute( entryDnAT ) )
                 {
@@ -2090,6 +2277,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         }
         catch ( Exception e )
         {
+            invalidateHierarchyLabels();
             throw new LdapOperationErrorException( e.getMessage(), e );
         }
     }
@@ -2151,6 +2339,12 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         rdnIdx.add( partitionTxn, movedEntry, entryId );
         updatePiarCache( movedEntry, entryId, ADD_CACHE );
 
+        if ( hierarchyLabels != null )
+        {
+            invalidateHierarchyLabelsOnAbort( partitionTxn );
+            hierarchyLabels.entryMoved( entryId, newParentId );
+        }
+
         updateRdnIdx( partitionTxn, newParentId, ADD_CHILD, movedEntry.getNbDescendants() );
 
         /*
@@ -2237,12 +2431,15 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         }
         catch ( LdapException le )
         {
+            invalidateHierarchyLabels();
+
             // In case we get an LdapException, just rethrow it as is to
             // avoid having it lost
             throw le;
         }
         catch ( Exception e )
         {
+            invalidateHierarchyLabels();
             throw new LdapOperationErrorException( e.getMessage(), e );
         }
     }
@@ -2328,6 +2525,12 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         rdnIdx.add( partitionTxn, movedEntry, entryId );
         updatePiarCache( movedEntry, entryId, ADD_CACHE );
 
+        if ( hierarchyLabels != null )
+        {
+            invalidateHierarchyLabelsOnAbort( partitionTxn );
+            hierarchyLabels.entryMoved( entryId, newParentId );
+        }
+
         updateRdnIdx( partitionTxn, newParentId, ADD_CHILD, movedEntry.getNbDescendants() );
 
         // Process the modified indexes now
@@ -3765,6 +3968,73 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     {
         return aliasCache;
     }
+
+
+    /**
+     * Registers the hits, misses and size of the alias, parent id and Rdn, and entry Dn caches.
+     * The partition must be initialized.
+     */
+    @Override
+    public void registerMetrics( MetricsRegistry registry, String prefix )
+    {
+        if ( aliasCache != null )
+        {
+            registry.registerCache( prefix + "aliasCache", aliasCache );
+        }
+
+        if ( piarCache != null )
+        {
+            registry.registerCache( prefix + "piarCache", piarCache );
+        }
+
+        if ( entryDnCache != null )
+        {
+            registry.registerCache( prefix + "dnCache", entryDnCache );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public HierarchyLabels getHierarchyLabels()
+    {
+        return hierarchyLabels;
+    }
+
+
+    /**
+     * Forgets the hierarchy labels after a failed move : they will be built again from
+     * the Rdn index
+     */
+    private void invalidateHierarchyLabels()
+    {
+        if ( hierarchyLabels != null )
+        {
+            hierarchyLabels.invalidate();
+        }
+    }
+
+
+    /**
+     * The hierarchy labels are updated in memory before the changes are committed : forget
+     * them if the transaction is aborted, so that they are built again from the Rdn index
+     */
+    private void invalidateHierarchyLabelsOnAbort( PartitionTxn partitionTxn )
+    {
+        if ( partitionTxn instanceof PartitionWriteTxn )
+        {
+            ( ( PartitionWriteTxn ) partitionTxn ).onAbort( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    invalidateHierarchyLabels();
+                }
+            } );
+        }
+    }
     
     
     /**
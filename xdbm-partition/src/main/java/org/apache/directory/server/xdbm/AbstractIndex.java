@@ -23,6 +23,8 @@ package org.apache.directory.server.xdbm;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.core.api.partition.PartitionWriteTxn;
 import org.apache.directory.server.i18n.I18n;
 
 
@@ -52,6 +54,9 @@ public abstract class AbstractIndex<K, E> implements Index<K, E>
     /** A counter used to differ the commit on disk after N operations */
     protected AtomicInteger commitNumber;
 
+    /** The statistics used by the optimizer, if computed */
+    protected volatile IndexStatistics statistics;
+
 
     /**
      * Creates a new instance of AbstractIndex.
@@ -162,4 +167,92 @@ public abstract class AbstractIndex<K, E> implements Index<K, E>
     {
         return withReverse;
     }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IndexStatistics getStatistics()
+    {
+        return statistics;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setStatistics( IndexStatistics statistics )
+    {
+        this.statistics = statistics;
+    }
+
+
+    /**
+     * Updates the statistics, if any, when a key has been added to the index. Within a write
+     * transaction, the statistics are only updated once the transaction has been committed.
+     *
+     * @param partitionTxn The transaction the key has been added in
+     * @param attrVal The added key
+     */
+    protected void keyAdded( PartitionTxn partitionTxn, final K attrVal )
+    {
+        final IndexStatistics currentStatistics = statistics;
+
+        if ( currentStatistics == null )
+        {
+            return;
+        }
+
+        if ( partitionTxn instanceof PartitionWriteTxn )
+        {
+            ( ( PartitionWriteTxn ) partitionTxn ).onCommit( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    currentStatistics.added( attrVal );
+                }
+            } );
+        }
+        else
+        {
+            currentStatistics.added( attrVal );
+        }
+    }
+
+
+    /**
+     * Updates the statistics, if any, when a key has been removed from the index. Within a write
+     * transaction, the statistics are only updated once the transaction has been committed.
+     *
+     * @param partitionTxn The transaction the key has been removed in
+     * @param attrVal The removed key
+     */
+    protected void keyDropped( PartitionTxn partitionTxn, final K attrVal )
+    {
+        final IndexStatistics currentStatistics = statistics;
+
+        if ( currentStatistics == null )
+        {
+            return;
+        }
+
+        if ( partitionTxn instanceof PartitionWriteTxn )
+        {
+            ( ( PartitionWriteTxn ) partitionTxn ).onCommit( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    currentStatistics.dropped( attrVal );
+                }
+            } );
+        }
+        else
+        {
+            currentStatistics.dropped( attrVal );
+        }
+    }
 }
@@ -0,0 +1,489 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.xdbm;
+
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.cursor.CursorException;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.server.core.api.partition.Partition;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A path label for each entry of a partition, derived from the Rdn index. The label of an
+ * entry is the label of its parent followed by a separator and an ordinal allocated to the
+ * entry, like <tt>/0/4/1a</tt>. An entry is then a descendant of another one if the label of
+ * the latter is a prefix of its label, and the whole subtree of an entry is a range of labels :
+ * the scope checks are comparisons instead of a walk up the Rdn index, and the subtree of an
+ * entry is a range scan instead of a depth-first walk of the Rdn index.
+ * <p>
+ * The labels are kept in memory, and maintained when the entries are added, deleted or
+ * moved. A rename does not change them. They are built from the Rdn index when first used,
+ * and built again after {@link #invalidate()} has been called. The methods return null when
+ * the labels don't know an entry, in which case the caller falls back to the Rdn index.
+ * <p>
+ * The readers don't lock : a relabelling in progress is detected with an optimistic read stamp.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class HierarchyLabels
+{
+    /** The logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( HierarchyLabels.class );
+
+    /** The labels separator */
+    private static final char SEPARATOR = '/';
+
+    /** The character following the separator, used to build the upper bound of a subtree range */
+    private static final char AFTER_SEPARATOR = SEPARATOR + 1;
+
+    /** The store the labels are derived from */
+    private final Store store;
+
+    /** The label of each entry ID */
+    private final Map<String, String> labels = new ConcurrentHashMap<>();
+
+    /** The entry IDs, sorted by label */
+    private final ConcurrentSkipListMap<String, String> ids = new ConcurrentSkipListMap<>();
+
+    /** The lock protecting the updates */
+    private final StampedLock lock = new StampedLock();
+
+    /** The next allocated ordinal */
+    private long nextOrdinal;
+
+    /** Tells if the labels have been built */
+    private volatile boolean valid;
+
+    /** The number of times the labels have been built */
+    private final AtomicLong nbBuilds = new AtomicLong();
+
+
+    /**
+     * Creates a new instance of HierarchyLabels.
+     *
+     * @param store The store the labels are derived from
+     */
+    public HierarchyLabels( Store store )
+    {
+        this.store = store;
+    }
+
+
+    /**
+     * Builds the labels from the Rdn index if needed
+     */
+    private void ensureValid( PartitionTxn partitionTxn ) throws LdapException
+    {
+        if ( valid )
+        {
+            return;
+        }
+
+        long stamp = lock.writeLock();
+
+        try
+        {
+            if ( !valid )
+            {
+                build( partitionTxn );
+                valid = true;
+            }
+        }
+        finally
+        {
+            lock.unlockWrite( stamp );
+        }
+    }
+
+
+    /**
+     * Reads the Rdn index and computes the label of each entry. Must be called with the
+     * write lock held.
+     */
+    private void build( PartitionTxn partitionTxn ) throws LdapException
+    {
+        labels.clear();
+        ids.clear();
+        nextOrdinal = 0L;
+
+        Map<String, String> parents = new HashMap<>();
+
+        try ( Cursor<IndexEntry<ParentIdAndRdn, String>> cursor = store.getRdnIndex().forwardCursor( partitionTxn ) )
+        {
+            while ( cursor.next() )
+            {
+                IndexEntry<ParentIdAndRdn, String> indexEntry = cursor.get();
+                parents.put( indexEntry.getId(), indexEntry.getKey().getParentId() );
+            }
+        }
+        catch ( CursorException | IOException e )
+        {
+            throw new LdapOtherException( e.getMessage(), e );
+        }
+
+        // Label the entries, their ancestors first
+        Deque<String> stack = new ArrayDeque<>();
+
+        for ( String id : parents.keySet() )
+        {
+            String current = id;
+
+            while ( ( current != null ) && !labels.containsKey( current ) )
+            {
+                stack.push( current );
+                String parentId = parents.get( current );
+                current = Partition.ROOT_ID.equals( parentId ) ? null : parentId;
+            }
+
+            while ( !stack.isEmpty() )
+            {
+                String child = stack.pop();
+                String parentId = parents.get( child );
+                String parentLabel = Partition.ROOT_ID.equals( parentId ) ? "" : labels.get( parentId );
+
+                if ( parentLabel == null )
+                {
+                    // An orphan entry : it won't have a label
+                    LOG.warn( "The entry {} has no parent {} in the Rdn index", child, parentId );
+                    stack.clear();
+
+                    break;
+                }
+
+                put( child, newLabel( parentLabel ) );
+            }
+        }
+
+        nbBuilds.incrementAndGet();
+        LOG.debug( "Built {} hierarchy labels", labels.size() );
+    }
+
+
+    /**
+     * Allocates a label for a child of the given parent label
+     */
+    private String newLabel( String parentLabel )
+    {
+        return parentLabel + SEPARATOR + Long.toString( nextOrdinal++, Character.MAX_RADIX );
+    }
+
+
+    private void put( String id, String label )
+    {
+        labels.put( id, label );
+        ids.put( label, id );
+    }
+
+
+    /**
+     * Tells if a label is the label of a descendant of an ancestor label
+     */
+    private static boolean isPrefix( String ancestorLabel, String label )
+    {
+        return ( label.length() > ancestorLabel.length() ) && label.startsWith( ancestorLabel )
+            && ( label.charAt( ancestorLabel.length() ) == SEPARATOR );
+    }
+
+
+    /**
+     * Tells if an entry is a descendant of another entry.
+     *
+     * @param partitionTxn The transaction to use if the labels have to be built
+     * @param ancestorId The ancestor entry ID
+     * @param id The entry ID
+     * @return <tt>true</tt> if the entry is a descendant of the ancestor (but not the ancestor
+     * itself), or null if one of the entries has no label
+     * @throws LdapException If the labels can't be built
+     */
+    public Boolean isDescendant( PartitionTxn partitionTxn, String ancestorId, String id ) throws LdapException
+    {
+        ensureValid( partitionTxn );
+
+        long stamp = lock.tryOptimisticRead();
+        String ancestorLabel = labels.get( ancestorId );
+        String label = labels.get( id );
+
+        if ( !lock.validate( stamp ) )
+        {
+            // The labels are being updated : wait for the update to be completed
+            stamp = lock.readLock();
+
+            try
+            {
+                ancestorLabel = labels.get( ancestorId );
+                label = labels.get( id );
+            }
+            finally
+            {
+                lock.unlockRead( stamp );
+            }
+        }
+
+        if ( ( ancestorLabel == null ) || ( label == null ) )
+        {
+            return null;
+        }
+
+        return isPrefix( ancestorLabel, label );
+    }
+
+
+    /**
+     * Tells if an entry is a child of another entry.
+     *
+     * @param partitionTxn The transaction to use if the labels have to be built
+     * @param parentId The parent entry ID
+     * @param id The entry ID
+     * @return <tt>true</tt> if the entry is a child of the parent, or null if one of the
+     * entries has no label
+     * @throws LdapException If the labels can't be built
+     */
+    public Boolean isChild( PartitionTxn partitionTxn, String parentId, String id ) throws LdapException
+    {
+        ensureValid( partitionTxn );
+
+        long stamp = lock.tryOptimisticRead();
+        String parentLabel = labels.get( parentId );
+        String label = labels.get( id );
+
+        if ( !lock.validate( stamp ) )
+        {
+            stamp = lock.readLock();
+
+            try
+            {
+                parentLabel = labels.get( parentId );
+                label = labels.get( id );
+            }
+            finally
+            {
+                lock.unlockRead( stamp );
+            }
+        }
+
+        if ( ( parentLabel == null ) || ( label == null ) )
+        {
+            return null;
+        }
+
+        return isPrefix( parentLabel, label ) && ( label.indexOf( SEPARATOR, parentLabel.length() + 1 ) < 0 );
+    }
+
+
+    /**
+     * Gets the IDs of an entry and of all its descendants, with a range scan on the labels.
+     *
+     * @param partitionTxn The transaction to use if the labels have to be built
+     * @param baseId The subtree base ID
+     * @return The IDs of the base and of its descendants, or null if the base has no label
+     * @throws LdapException If the labels can't be built
+     */
+    public List<String> getSubtree( PartitionTxn partitionTxn, String baseId ) throws LdapException
+    {
+        ensureValid( partitionTxn );
+
+        long stamp = lock.readLock();
+
+        try
+        {
+            String baseLabel = labels.get( baseId );
+
+            if ( baseLabel == null )
+            {
+                return null;
+            }
+
+            Map<String, String> subtree = ids.subMap( baseLabel + SEPARATOR, true, baseLabel + AFTER_SEPARATOR, false );
+            List<String> subtreeIds = new ArrayList<>( subtree.size() + 1 );
+            subtreeIds.add( baseId );
+            subtreeIds.addAll( subtree.values() );
+
+            return subtreeIds;
+        }
+        finally
+        {
+            lock.unlockRead( stamp );
+        }
+    }
+
+
+    /**
+     * Labels an added entry
+     *
+     * @param parentId The parent ID, or ROOT_ID for the context entry
+     * @param id The added entry ID
+     */
+    public void entryAdded( String parentId, String id )
+    {
+        long stamp = lock.writeLock();
+
+        try
+        {
+            if ( !valid )
+            {
+                return;
+            }
+
+            String parentLabel = Partition.ROOT_ID.equals( parentId ) ? "" : labels.get( parentId );
+
+            if ( parentLabel == null )
+            {
+                // Should not happen : build the labels again on the next use
+                valid = false;
+
+                return;
+            }
+
+            put( id, newLabel( parentLabel ) );
+        }
+        finally
+        {
+            lock.unlockWrite( stamp );
+        }
+    }
+
+
+    /**
+     * Removes the label of a deleted entry
+     *
+     * @param id The deleted entry ID
+     */
+    public void entryDeleted( String id )
+    {
+        long stamp = lock.writeLock();
+
+        try
+        {
+            String label = labels.remove( id );
+
+            if ( label != null )
+            {
+                ids.remove( label );
+            }
+        }
+        finally
+        {
+            lock.unlockWrite( stamp );
+        }
+    }
+
+
+    /**
+     * Labels again a moved entry and all its descendants
+     *
+     * @param id The moved entry ID
+     * @param newParentId The new parent ID
+     */
+    public void entryMoved( String id, String newParentId )
+    {
+        long stamp = lock.writeLock();
+
+        try
+        {
+            if ( !valid )
+            {
+                return;
+            }
+
+            String oldLabel = labels.get( id );
+            String newParentLabel = labels.get( newParentId );
+
+            if ( ( oldLabel == null ) || ( newParentLabel == null ) )
+            {
+                valid = false;
+
+                return;
+            }
+
+            String newLabel = newLabel( newParentLabel );
+            Map<String, String> subtree = ids.subMap( oldLabel + SEPARATOR, true, oldLabel + AFTER_SEPARATOR, false );
+            List<Map.Entry<String, String>> descendants = new ArrayList<>( subtree.entrySet() );
+
+            ids.remove( oldLabel );
+            put( id, newLabel );
+
+            for ( Map.Entry<String, String> descendant : descendants )
+            {
+                String descendantLabel = newLabel + descendant.getKey().substring( oldLabel.length() );
+                ids.remove( descendant.getKey() );
+                put( descendant.getValue(), descendantLabel );
+            }
+        }
+        finally
+        {
+            lock.unlockWrite( stamp );
+        }
+    }
+
+
+    /**
+     * Forgets all the labels : they will be built again from the Rdn index on the next use
+     */
+    public void invalidate()
+    {
+        long stamp = lock.writeLock();
+
+        try
+        {
+            valid = false;
+            labels.clear();
+            ids.clear();
+        }
+        finally
+        {
+            lock.unlockWrite( stamp );
+        }
+    }
+
+
+    /**
+     * @return The number of labelled entries
+     */
+    public int size()
+    {
+        return labels.size();
+    }
+
+
+    /**
+     * @return The number of times the labels have been built from the Rdn index
+     */
+    public long getNbBuilds()
+    {
+        return nbBuilds.get();
+    }
+}
@@ -345,4 +345,21 @@ public interface Index<K, E>
      * @return true if the index has a reverse table
      */
     boolean hasReverse();
+
+
+    /**
+     * Gets the statistics used to estimate the scan counts on this index.
+     *
+     * @return The index statistics, or null if they haven't been computed
+     */
+    IndexStatistics getStatistics();
+
+
+    /**
+     * Sets the statistics used to estimate the scan counts on this index. They will be
+     * updated each time a key is added to or removed from the index.
+     *
+     * @param statistics The index statistics, or null to stop using them
+     */
+    void setStatistics( IndexStatistics statistics );
 }
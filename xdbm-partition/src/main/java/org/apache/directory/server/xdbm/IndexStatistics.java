@@ -0,0 +1,484 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.xdbm;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.cursor.CursorException;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.MatchingRule;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+
+
+/**
+ * Statistics about the content of an index, used by the optimizer to estimate the
+ * number of candidates of a filter when the index can't give an exact count cheaply.
+ * <p>
+ * The statistics are computed by a full scan of the forward index :
+ * <ul>
+ *   <li>the number of distinct keys, and the number of &lt;key, id&gt; pairs</li>
+ *   <li>the duplicate distribution : the average and the maximum number of ids per key</li>
+ *   <li>an equi-depth histogram : the keys are split in buckets containing roughly the
+ *   same number of pairs, each bucket being bounded by its highest key</li>
+ * </ul>
+ * The bounds of the histogram are fixed once computed, but the bucket counts are updated
+ * each time a pair is added to or removed from the index. Once too many modifications
+ * have been applied, the statistics are stale and should be computed again.
+ * <p>
+ * An estimate is never 0 : a count of 0 makes the search skip the index, and the
+ * histogram can't tell that a key is absent.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class IndexStatistics
+{
+    /** The default number of buckets in the histogram */
+    public static final int DEFAULT_NB_BUCKETS = 64;
+
+    /** The ratio of modified pairs after which the statistics are stale */
+    private static final double STALE_RATIO = 0.2d;
+
+    /** The minimal number of modifications before the statistics are stale */
+    private static final long MIN_STALE_MODIFICATIONS = 100L;
+
+    /** The comparator used to order the keys in the index */
+    private final Comparator<Object> comparator;
+
+    /** The highest key of each bucket */
+    private final Object[] bounds;
+
+    /** The number of pairs in each bucket. The last one counts the keys above the highest bound */
+    private final AtomicLongArray bucketCounts;
+
+    /** The current number of pairs */
+    private final AtomicLong count;
+
+    /** The number of pairs when the statistics were computed */
+    private final long initialCount;
+
+    /** The number of distinct keys when the statistics were computed */
+    private final long keyCount;
+
+    /** The highest number of ids for a single key */
+    private final long maxDuplicates;
+
+    /** The number of pairs added or removed since the statistics were computed */
+    private final AtomicLong modifications = new AtomicLong();
+
+    /** The date the statistics were computed */
+    private final long creationTime;
+
+
+    /**
+     * Creates a new IndexStatistics instance
+     */
+    private IndexStatistics( Comparator<Object> comparator, Object[] bounds, long[] counts, long initialCount,
+        long keyCount, long maxDuplicates )
+    {
+        this.comparator = comparator;
+        this.bounds = bounds;
+        this.bucketCounts = new AtomicLongArray( counts );
+        this.count = new AtomicLong( initialCount );
+        this.initialCount = initialCount;
+        this.keyCount = keyCount;
+        this.maxDuplicates = maxDuplicates;
+        creationTime = System.currentTimeMillis();
+    }
+
+
+    /**
+     * Computes the statistics of an index, by scanning its forward table.
+     *
+     * @param partitionTxn The transaction to use
+     * @param index The index to scan
+     * @param nbBuckets The number of buckets in the histogram
+     * @return The index statistics
+     * @throws LdapException If the index can't be read
+     */
+    public static <K> IndexStatistics build( PartitionTxn partitionTxn, Index<K, String> index, int nbBuckets )
+        throws LdapException
+    {
+        Comparator<Object> comparator = getComparator( index.getAttribute() );
+        long total = index.count( partitionTxn );
+        long depth = Math.max( 1L, ( total + nbBuckets - 1 ) / Math.max( 1, nbBuckets ) );
+
+        List<Object> bounds = new ArrayList<>();
+        List<Long> counts = new ArrayList<>();
+        long nbPairs = 0L;
+        long keyCount = 0L;
+        long maxDuplicates = 0L;
+        long duplicates = 0L;
+        long inBucket = 0L;
+        Object currentKey = null;
+
+        Cursor<IndexEntry<K, String>> cursor = index.forwardCursor( partitionTxn );
+
+        try
+        {
+            cursor.beforeFirst();
+
+            while ( cursor.next() )
+            {
+                Object key = cursor.get().getKey();
+
+                if ( ( keyCount == 0L ) || ( comparator.compare( key, currentKey ) != 0 ) )
+                {
+                    if ( keyCount > 0L )
+                    {
+                        maxDuplicates = Math.max( maxDuplicates, duplicates );
+
+                        // Close the bucket on a key boundary, so that a key is never split
+                        if ( inBucket >= depth )
+                        {
+                            bounds.add( currentKey );
+                            counts.add( inBucket );
+                            inBucket = 0L;
+                        }
+                    }
+
+                    keyCount++;
+                    currentKey = key;
+                    duplicates = 0L;
+                }
+
+                duplicates++;
+                inBucket++;
+                nbPairs++;
+            }
+
+            if ( keyCount > 0L )
+            {
+                maxDuplicates = Math.max( maxDuplicates, duplicates );
+                bounds.add( currentKey );
+                counts.add( inBucket );
+            }
+        }
+        catch ( CursorException e )
+        {
+            throw new LdapOtherException( e.getMessage(), e );
+        }
+        finally
+        {
+            try
+            {
+                cursor.close();
+            }
+            catch ( IOException ioe )
+            {
+                throw new LdapOtherException( ioe.getMessage(), ioe );
+            }
+        }
+
+        // One more bucket for the keys added above the highest bound
+        long[] bucketCounts = new long[counts.size() + 1];
+
+        for ( int i = 0; i < counts.size(); i++ )
+        {
+            bucketCounts[i] = counts.get( i );
+        }
+
+        return new IndexStatistics( comparator, bounds.toArray(), bucketCounts, nbPairs, keyCount, maxDuplicates );
+    }
+
+
+    /**
+     * Get the comparator used to order the keys, the same way the index does
+     */
+    @SuppressWarnings(
+        { "unchecked", "rawtypes" })
+    private static Comparator<Object> getComparator( AttributeType attributeType )
+    {
+        MatchingRule mr = attributeType.getEquality();
+
+        if ( mr == null )
+        {
+            mr = attributeType.getOrdering();
+        }
+
+        if ( mr == null )
+        {
+            mr = attributeType.getSubstring();
+        }
+
+        return ( Comparator ) mr.getLdapComparator();
+    }
+
+
+    /**
+     * Find the bucket a key belongs to : the first bucket which highest key is above or
+     * equal to the given key, or the last bucket if the key is above all the bounds.
+     */
+    private int getBucket( Object key )
+    {
+        int low = 0;
+        int high = bounds.length;
+
+        while ( low < high )
+        {
+            int middle = ( low + high ) >>> 1;
+
+            if ( comparator.compare( bounds[middle], key ) < 0 )
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+
+    private long getBucketCount( int bucket )
+    {
+        return Math.max( 0L, bucketCounts.get( bucket ) );
+    }
+
+
+    /**
+     * We don't know where the key is in its bucket : presume half of it is selected
+     */
+    private long getHalfBucketCount( int bucket )
+    {
+        return ( getBucketCount( bucket ) + 1L ) / 2L;
+    }
+
+
+    /**
+     * The estimated counts are at least 1, so that the candidates are always read from the index
+     */
+    private long estimate( long result )
+    {
+        return Math.max( 1L, result );
+    }
+
+
+    /**
+     * Updates the statistics when a pair is added to the index
+     *
+     * @param key The added key
+     */
+    public void added( Object key )
+    {
+        if ( key != null )
+        {
+            bucketCounts.incrementAndGet( getBucket( key ) );
+        }
+
+        count.incrementAndGet();
+        modifications.incrementAndGet();
+    }
+
+
+    /**
+     * Updates the statistics when a pair is removed from the index
+     *
+     * @param key The removed key
+     */
+    public void dropped( Object key )
+    {
+        if ( key != null )
+        {
+            bucketCounts.decrementAndGet( getBucket( key ) );
+        }
+
+        count.decrementAndGet();
+        modifications.incrementAndGet();
+    }
+
+
+    /**
+     * Estimates the number of pairs which key is above or equal to the given key
+     *
+     * @param key The key
+     * @return The estimated number of pairs, at least 1
+     */
+    public long greaterOrEqualCount( Object key )
+    {
+        int bucket = getBucket( key );
+        long result = getHalfBucketCount( bucket );
+
+        for ( int i = bucket + 1; i < bucketCounts.length(); i++ )
+        {
+            result += getBucketCount( i );
+        }
+
+        return estimate( result );
+    }
+
+
+    /**
+     * Estimates the number of pairs which key is below or equal to the given key
+     *
+     * @param key The key
+     * @return The estimated number of pairs, at least 1
+     */
+    public long lessOrEqualCount( Object key )
+    {
+        int bucket = getBucket( key );
+        long result = getHalfBucketCount( bucket );
+
+        for ( int i = 0; i < bucket; i++ )
+        {
+            result += getBucketCount( i );
+        }
+
+        return estimate( result );
+    }
+
+
+    /**
+     * Estimates the number of pairs which key is between the two given keys
+     *
+     * @param lowKey The lowest key, included
+     * @param highKey The highest key, excluded
+     * @return The estimated number of pairs, at least 1
+     */
+    public long rangeCount( Object lowKey, Object highKey )
+    {
+        int lowBucket = getBucket( lowKey );
+        int highBucket = getBucket( highKey );
+
+        if ( lowBucket >= highBucket )
+        {
+            return estimate( getHalfBucketCount( lowBucket ) );
+        }
+
+        long result = getHalfBucketCount( lowBucket ) + getHalfBucketCount( highBucket );
+
+        for ( int i = lowBucket + 1; i < highBucket; i++ )
+        {
+            result += getBucketCount( i );
+        }
+
+        return estimate( result );
+    }
+
+
+    /**
+     * @return The current number of pairs in the index
+     */
+    public long getCount()
+    {
+        return Math.max( 0L, count.get() );
+    }
+
+
+    /**
+     * @return The estimated number of distinct keys. The number computed when the statistics
+     * were built is scaled to the current number of pairs.
+     */
+    public long getKeyCount()
+    {
+        if ( initialCount == 0L )
+        {
+            return getCount();
+        }
+
+        return Math.max( 1L, ( long ) ( keyCount * ( ( double ) getCount() / initialCount ) ) );
+    }
+
+
+    /**
+     * @return The average number of ids per key
+     */
+    public double getAverageDuplicates()
+    {
+        return keyCount == 0L ? 0d : ( double ) initialCount / keyCount;
+    }
+
+
+    /**
+     * @return The highest number of ids for a single key, when the statistics were built
+     */
+    public long getMaxDuplicates()
+    {
+        return maxDuplicates;
+    }
+
+
+    /**
+     * @return The number of buckets in the histogram
+     */
+    public int getNbBuckets()
+    {
+        return bounds.length;
+    }
+
+
+    /**
+     * @return The number of pairs added or removed since the statistics were built
+     */
+    public long getModifications()
+    {
+        return modifications.get();
+    }
+
+
+    /**
+     * @return The date the statistics were built
+     */
+    public long getCreationTime()
+    {
+        return creationTime;
+    }
+
+
+    /**
+     * Tells if the index has been modified too much since the statistics were computed
+     *
+     * @return <tt>true</tt> if the statistics should be computed again
+     */
+    public boolean isStale()
+    {
+        return modifications.get() > Math.max( MIN_STALE_MODIFICATIONS, ( long ) ( initialCount * STALE_RATIO ) );
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append( "pairs=" ).append( getCount() );
+        sb.append( ", keys=" ).append( getKeyCount() );
+        sb.append( ", avgDups=" ).append( String.format( Locale.ROOT, "%.2f", getAverageDuplicates() ) );
+        sb.append( ", maxDups=" ).append( maxDuplicates );
+        sb.append( ", buckets=" ).append( bounds.length );
+        sb.append( ", modifications=" ).append( modifications.get() );
+
+        return sb.toString();
+    }
+}
@@ -486,4 +486,11 @@ public interface Store
      * @return The cache
      */
     Cache< String, Dn > getAliasCache();
+
+
+    /**
+     * @return The hierarchy labels used to check the scope of the entries, or null if they
+     * are not enabled for this store
+     */
+    HierarchyLabels getHierarchyLabels();
 }
@@ -132,6 +132,8 @@ public class AvlIndex<K> extends AbstractIndex<K, String>
         {
             reverse.put( partitionTxn, id, attrVal );
         }
+
+        keyAdded( partitionTxn, attrVal );
     }
 
 
@@ -188,6 +190,7 @@ public class AvlIndex<K> extends AbstractIndex<K, String>
                     {
                         Tuple<String, K> tuple = cursor.get();
                         forward.remove( partitionTxn, tuple.getValue(), id );
+                        keyDropped( partitionTxn, tuple.getValue() );
                     }
     
                     cursor.close();
@@ -201,6 +204,11 @@ public class AvlIndex<K> extends AbstractIndex<K, String>
             {
                 K key = reverse.get( partitionTxn, id );
                 forward.remove( partitionTxn, key );
+
+                if ( key != null )
+                {
+                    keyDropped( partitionTxn, key );
+                }
             }
 
             reverse.remove( partitionTxn, id );
@@ -220,6 +228,8 @@ public class AvlIndex<K> extends AbstractIndex<K, String>
         {
             reverse.remove( partitionTxn, id, attrVal );
         }
+
+        keyDropped( partitionTxn, attrVal );
     }
 
 
@@ -23,9 +23,11 @@ package org.apache.directory.server.xdbm.search;
 import java.util.Set;
 
 import org.apache.directory.api.ldap.model.cursor.SetCursor;
+import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.filter.ExprNode;
 import org.apache.directory.api.ldap.model.message.AliasDerefMode;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.core.api.interceptor.context.SearchBudget;
 import org.apache.directory.server.xdbm.IndexEntry;
 
 
@@ -56,6 +58,9 @@ public class PartitionSearchResult
     /** The SchemaManager */
     private SchemaManager schemaManager;
 
+    /** The time and candidates the search may consume, null if unlimited */
+    private SearchBudget budget;
+
 
     /**
      * Create a PartitionSearchResult instance
@@ -185,6 +190,30 @@ public class PartitionSearchResult
     }
 
 
+    /**
+     * @param budget The time and candidates the search may consume
+     */
+    public void setBudget( SearchBudget budget )
+    {
+        this.budget = budget;
+    }
+
+
+    /**
+     * Checks, from time to time, that the search is neither abandoned nor out of time. Called
+     * by the loops reading the partition indexes.
+     *
+     * @throws LdapException If the time limit is exceeded, or if the search has been abandoned
+     */
+    public void tick() throws LdapException
+    {
+        if ( budget != null )
+        {
+            budget.tick();
+        }
+    }
+
+
     /**
      * @see Object#toString()
      */
@@ -77,7 +77,8 @@ public interface SearchEngine
 
     /**
      * Conducts a search on a database. It returns a set of UUID we found for the 
-     * given filter.
+     * given filter. For a paged search, or a search restarted after a given entry, the UUIDs
+     * are ordered, and start after the search context resume ID, if any.
      * 
      * @param partitionTxn The transaction to use
      * @param schemaManager The SchemaManager instance
@@ -26,6 +26,7 @@ import org.apache.directory.api.ldap.model.filter.ScopeNode;
 import org.apache.directory.api.ldap.model.message.SearchScope;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
 import org.apache.directory.server.i18n.I18n;
+import org.apache.directory.server.xdbm.HierarchyLabels;
 import org.apache.directory.server.xdbm.IndexEntry;
 import org.apache.directory.server.xdbm.ParentIdAndRdn;
 import org.apache.directory.server.xdbm.Store;
@@ -94,8 +95,32 @@ public class OneLevelScopeEvaluator<E> implements Evaluator<ScopeNode>
     @Override
     public boolean evaluate( PartitionTxn partitionTxn, IndexEntry<?, String> indexEntry ) throws LdapException
     {
-        ParentIdAndRdn parent = db.getRdnIndex().reverseLookup( partitionTxn, indexEntry.getId() );
-        boolean isChild = parent.getParentId().equals( baseId );
+        HierarchyLabels hierarchyLabels = db.getHierarchyLabels();
+        Boolean isLabelledChild = null;
+
+        if ( hierarchyLabels != null )
+        {
+            isLabelledChild = hierarchyLabels.isChild( partitionTxn, baseId, indexEntry.getId() );
+
+            if ( !dereferencing && Boolean.FALSE.equals( isLabelledChild ) )
+            {
+                // Reject the candidates out of the scope without fetching them
+                return false;
+            }
+        }
+
+        boolean isChild;
+
+        if ( isLabelledChild != null )
+        {
+            isChild = isLabelledChild;
+        }
+        else
+        {
+            ParentIdAndRdn parent = db.getRdnIndex().reverseLookup( partitionTxn, indexEntry.getId() );
+            isChild = parent.getParentId().equals( baseId );
+        }
+
         Entry entry = indexEntry.getEntry();
 
         // Fetch the entry
@@ -25,11 +25,10 @@ import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.filter.ScopeNode;
 import org.apache.directory.api.ldap.model.message.SearchScope;
 import org.apache.directory.api.ldap.model.name.Dn;
-import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
 import org.apache.directory.server.i18n.I18n;
+import org.apache.directory.server.xdbm.HierarchyLabels;
 import org.apache.directory.server.xdbm.IndexEntry;
-import org.apache.directory.server.xdbm.ParentIdAndRdn;
 import org.apache.directory.server.xdbm.Store;
 import org.apache.directory.server.xdbm.search.Evaluator;
 
@@ -94,35 +93,19 @@ public class SubtreeScopeEvaluator implements Evaluator<ScopeNode>
 
 
     /**
-     * Tells if a candidate is a descendant of the base ID. We have to fetch all 
-     * the parentIdAndRdn up to the baseId. If we terminate on the context entry without 
-     * having found the baseId, then the candidate is not a descendant.
+     * Tells if a candidate is a descendant of the base ID, using the hierarchy labels of
+     * the store. Returns null if the store has no labels, or if they don't know the candidate.
      */
-    private boolean isDescendant( PartitionTxn partitionTxn, String candidateId ) throws LdapException
+    private Boolean isDescendant( PartitionTxn partitionTxn, String candidateId ) throws LdapException
     {
-        String tmp = candidateId;
+        HierarchyLabels hierarchyLabels = db.getHierarchyLabels();
 
-        while ( true )
+        if ( hierarchyLabels == null )
         {
-            ParentIdAndRdn parentIdAndRdn = db.getRdnIndex().reverseLookup( partitionTxn, tmp );
-
-            if ( parentIdAndRdn == null )
-            {
-                return false;
-            }
-
-            tmp = parentIdAndRdn.getParentId();
-
-            if ( tmp.equals( Partition.ROOT_ID ) )
-            {
-                return false;
-            }
-
-            if ( tmp.equals( baseId ) )
-            {
-                return true;
-            }
+            return null;
         }
+
+        return hierarchyLabels.isDescendant( partitionTxn, baseId, candidateId );
     }
 
 
@@ -135,6 +118,17 @@ public class SubtreeScopeEvaluator implements Evaluator<ScopeNode>
         String id = indexEntry.getId();
         Entry entry = indexEntry.getEntry();
 
+        if ( ( entry == null ) && !baseIsContextEntry && !isDereferencing() && !baseId.equals( id ) )
+        {
+            // Reject the candidates out of the subtree without fetching them
+            Boolean isDescendant = isDescendant( partitionTxn, id );
+
+            if ( Boolean.FALSE.equals( isDescendant ) )
+            {
+                return false;
+            }
+        }
+
         // Fetch the entry
         if ( null == entry )
         {
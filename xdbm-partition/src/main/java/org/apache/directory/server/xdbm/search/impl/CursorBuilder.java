@@ -21,12 +21,14 @@ package org.apache.directory.server.xdbm.search.impl;
 
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import java.util.regex.Pattern;
 
 import org.apache.directory.api.ldap.model.cursor.Cursor;
 import org.apache.directory.api.ldap.model.cursor.CursorException;
+import org.apache.directory.api.ldap.model.cursor.ListCursor;
 import org.apache.directory.api.ldap.model.entry.Value;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.exception.LdapOtherException;
@@ -182,6 +184,8 @@ public class CursorBuilder
 
         while ( cursor.next() )
         {
+            searchResult.tick();
+
             IndexEntry<T, String> indexEntry = cursor.get();
 
             String uuid = indexEntry.getId();
@@ -236,6 +240,8 @@ public class CursorBuilder
             // And loop on it
             while ( userIdxCursor.next() )
             {
+                searchResult.tick();
+
                 IndexEntry<T, String> indexEntry = userIdxCursor.get();
 
                 String uuid = indexEntry.getId();
@@ -288,6 +294,8 @@ public class CursorBuilder
             // And loop on it
             while ( userIdxCursor.next() )
             {
+                searchResult.tick();
+
                 indexEntry = userIdxCursor.get();
 
                 String uuid = indexEntry.getId();
@@ -340,6 +348,8 @@ public class CursorBuilder
             // And loop on it
             while ( userIdxCursor.previous() )
             {
+                searchResult.tick();
+
                 indexEntry = userIdxCursor.get();
 
                 String uuid = indexEntry.getId();
@@ -387,6 +397,8 @@ public class CursorBuilder
             // And loop on it
             while ( presenceCursor.next() )
             {
+                searchResult.tick();
+
                 IndexEntry<String, String> indexEntry = presenceCursor.get();
 
                 String uuid = indexEntry.getId();
@@ -435,6 +447,8 @@ public class CursorBuilder
         // And loop on it
         while ( scopeCursor.next() )
         {
+            searchResult.tick();
+
             IndexEntry<String, String> indexEntry = scopeCursor.get();
 
             String uuid = indexEntry.getId();
@@ -511,26 +525,55 @@ public class CursorBuilder
 
         int nbResults = 0;
 
-        // We use the RdnIndex to get all the entries from a starting point
-        // and below up to the number of descendant
         String baseId = node.getBaseId();
-        ParentIdAndRdn parentIdAndRdn = db.getRdnIndex().reverseLookup( partitionTxn, baseId );
-        IndexEntry<ParentIdAndRdn, String> startingPos = new IndexEntry<>();
+        Cursor<IndexEntry<String, String>> scopeCursor = null;
+
+        // The hierarchy labels give all the entries from a starting point with a range scan
+        if ( db.getHierarchyLabels() != null )
+        {
+            List<String> subtree = db.getHierarchyLabels().getSubtree( partitionTxn, baseId );
+
+            if ( subtree != null )
+            {
+                List<IndexEntry<String, String>> indexEntries = new ArrayList<>( subtree.size() );
 
-        startingPos.setKey( parentIdAndRdn );
-        startingPos.setId( baseId );
+                for ( String id : subtree )
+                {
+                    IndexEntry<String, String> indexEntry = new IndexEntry<>();
+                    indexEntry.setKey( baseId );
+                    indexEntry.setId( id );
+                    indexEntries.add( indexEntry );
+                }
+
+                scopeCursor = new ListCursor<>( indexEntries );
+            }
+        }
+
+        if ( scopeCursor == null )
+        {
+            // We use the RdnIndex to get all the entries from a starting point
+            // and below up to the number of descendant
+            ParentIdAndRdn parentIdAndRdn = db.getRdnIndex().reverseLookup( partitionTxn, baseId );
+            IndexEntry<ParentIdAndRdn, String> startingPos = new IndexEntry<>();
+
+            startingPos.setKey( parentIdAndRdn );
+            startingPos.setId( baseId );
+
+            Cursor<IndexEntry<ParentIdAndRdn, String>> rdnCursor = new SingletonIndexCursor<>( partitionTxn, 
+                startingPos );
+            String parentId = parentIdAndRdn.getParentId();
 
-        Cursor<IndexEntry<ParentIdAndRdn, String>> rdnCursor = new SingletonIndexCursor<>( partitionTxn, 
-            startingPos );
-        String parentId = parentIdAndRdn.getParentId();
+            scopeCursor = new DescendantCursor( partitionTxn, db, baseId, parentId, rdnCursor );
+        }
 
-        Cursor<IndexEntry<String, String>> scopeCursor = new DescendantCursor( partitionTxn, db, baseId, parentId, rdnCursor );
         Set<String> candidateSet = searchResult.getCandidateSet();
 
         // Fetch all the UUIDs if we have an index
         // And loop on it
         while ( scopeCursor.next() )
         {
+            searchResult.tick();
+
             IndexEntry<String, String> indexEntry = scopeCursor.get();
 
             String uuid = indexEntry.getId();
@@ -679,6 +722,8 @@ public class CursorBuilder
             // And loop on it
             while ( cursor.next() )
             {
+                searchResult.tick();
+
                 indexEntry = cursor.get();
 
                 String key = indexEntry.getKey();
@@ -45,18 +45,22 @@ import org.apache.directory.api.ldap.model.filter.PresenceNode;
 import org.apache.directory.api.ldap.model.filter.ScopeNode;
 import org.apache.directory.api.ldap.model.filter.SimpleNode;
 import org.apache.directory.api.ldap.model.filter.SubstringNode;
+import org.apache.directory.api.ldap.model.schema.MatchingRule;
 import org.apache.directory.api.util.Strings;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
 import org.apache.directory.server.i18n.I18n;
 import org.apache.directory.server.xdbm.Index;
 import org.apache.directory.server.xdbm.IndexNotFoundException;
+import org.apache.directory.server.xdbm.IndexStatistics;
 import org.apache.directory.server.xdbm.Store;
 import org.apache.directory.server.xdbm.search.Optimizer;
 
 
 /**
- * Optimizer that annotates the filter using scan counts.
+ * Optimizer that annotates the filter using scan counts. The counts are exact when the
+ * index can provide them, otherwise they are estimated using the index statistics, if
+ * they have been computed.
  * 
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -66,6 +70,20 @@ public class DefaultOptimizer implements Optimizer
     
     /* Package protected*/ static final String COUNT_ANNOTATION = "count"; 
 
+    /* Package protected*/ static final String ESTIMATE_ANNOTATION = "estimate";
+
+    /** The count has been computed using the index content */
+    private static final String INDEX_COUNT = "index count";
+
+    /** The count has been estimated using the index statistics histogram */
+    private static final String HISTOGRAM = "histogram";
+
+    /** The count is a guess made by the index */
+    private static final String INDEX_GUESS = "index guess";
+
+    /** There is no index to compute the count */
+    private static final String NO_INDEX = "no index";
+
     /** the database this optimizer operates on */
     private final Store db;
     private String contextEntryId;
@@ -320,16 +338,7 @@ public class DefaultOptimizer implements Optimizer
         {
             Index<V, String> idx = ( Index<V, String> ) db.getIndex( node.getAttributeType() );
 
-            String normalizedKey;
-            
-            if ( node.getValue().isSchemaAware() )
-            {
-                normalizedKey = node.getValue().getNormalized();
-            }
-            else
-            {
-                normalizedKey = node.getAttributeType().getEquality().getNormalizer().normalize( node.getValue().getString() );
-            }
+            String normalizedKey = getNormalizedKey( node );
             
             Cursor<String> result = idx.forwardValueCursor( partitionTxn, ( V ) normalizedKey );
             Set<String> values = new HashSet<>();
@@ -348,6 +357,7 @@ public class DefaultOptimizer implements Optimizer
             }
 
             result.close();
+            node.set( ESTIMATE_ANNOTATION, INDEX_COUNT );
 
             if ( nbFound < 100 )
             {
@@ -366,10 +376,36 @@ public class DefaultOptimizer implements Optimizer
         }
 
         // count for non-indexed attribute is unknown so we presume da worst
+        node.set( ESTIMATE_ANNOTATION, NO_INDEX );
+
         return Long.MAX_VALUE;
     }
 
 
+    /**
+     * Get the normalized form of the value of a SimpleNode, which is the form used as a key
+     * in the indexes
+     */
+    private <V> String getNormalizedKey( SimpleNode<V> node ) throws LdapException
+    {
+        if ( node.getValue().isSchemaAware() )
+        {
+            return node.getValue().getNormalized();
+        }
+        else
+        {
+            MatchingRule mr = node.getAttributeType().getEquality();
+
+            if ( mr == null )
+            {
+                return node.getValue().getString();
+            }
+
+            return mr.getNormalizer().normalize( node.getValue().getString() );
+        }
+    }
+
+
     /**
      * Gets a scan count of the nodes that satisfy the greater or less than test
      * specified by the node.
@@ -385,6 +421,26 @@ public class DefaultOptimizer implements Optimizer
         if ( db.hasIndexOn( node.getAttributeType() ) )
         {
             Index<V, String> idx = ( Index<V, String> ) db.getIndex( node.getAttributeType() );
+            IndexStatistics statistics = idx.getStatistics();
+
+            if ( ( statistics != null ) && node.getValue().isHumanReadable() )
+            {
+                // The index keys are the normalized values
+                String normalizedKey = getNormalizedKey( node );
+
+                node.set( ESTIMATE_ANNOTATION, HISTOGRAM );
+
+                if ( isGreaterThan )
+                {
+                    return statistics.greaterOrEqualCount( normalizedKey );
+                }
+                else
+                {
+                    return statistics.lessOrEqualCount( normalizedKey );
+                }
+            }
+
+            node.set( ESTIMATE_ANNOTATION, INDEX_GUESS );
 
             if ( isGreaterThan )
             {
@@ -397,6 +453,8 @@ public class DefaultOptimizer implements Optimizer
         }
 
         // count for non-indexed attribute is unknown so we presume da worst
+        node.set( ESTIMATE_ANNOTATION, NO_INDEX );
+
         return Long.MAX_VALUE;
     }
 
@@ -422,16 +480,33 @@ public class DefaultOptimizer implements Optimizer
             if ( Strings.isEmpty( initial ) )
             {
                 // Not a (attr=ABC*) filter : full index scan
+                node.set( ESTIMATE_ANNOTATION, INDEX_COUNT );
+
                 return idx.count( partitionTxn );
             }
-            else
+
+            IndexStatistics statistics = idx.getStatistics();
+
+            char last = initial.charAt( initial.length() - 1 );
+
+            if ( ( statistics != null ) && ( last != Character.MAX_VALUE ) )
             {
-                return idx.greaterThanCount( partitionTxn, initial );
+                // The selected keys are all the keys between ABC and ABD
+                String upper = initial.substring( 0, initial.length() - 1 ) + ( char ) ( last + 1 );
+                node.set( ESTIMATE_ANNOTATION, HISTOGRAM );
+
+                return statistics.rangeCount( initial, upper );
             }
+
+            node.set( ESTIMATE_ANNOTATION, INDEX_GUESS );
+
+            return idx.greaterThanCount( partitionTxn, initial );
         }
         else
         {
             // count for non-indexed attribute is unknown so we presume da worst
+            node.set( ESTIMATE_ANNOTATION, NO_INDEX );
+
             return Long.MAX_VALUE;
         }
     }
@@ -451,9 +526,13 @@ public class DefaultOptimizer implements Optimizer
         if ( db.hasIndexOn( node.getAttributeType() ) )
         {
             Index<?, ?> idx = db.getIndex( node.getAttributeType() );
+            node.set( ESTIMATE_ANNOTATION, INDEX_COUNT );
+
             return idx.count( partitionTxn );
         }
 
+        node.set( ESTIMATE_ANNOTATION, NO_INDEX );
+
         return Long.MAX_VALUE;
     }
 
@@ -472,6 +551,7 @@ public class DefaultOptimizer implements Optimizer
              || node.getAttributeType().getOid().equals( SchemaConstants.ADMINISTRATIVE_ROLE_AT_OID ) )
         {
             Index<String, String> presenceIndex = db.getPresenceIndex();
+            node.set( ESTIMATE_ANNOTATION, INDEX_COUNT );
 
             return presenceIndex.count( partitionTxn, node.getAttributeType().getOid() );
         }
@@ -480,9 +560,13 @@ public class DefaultOptimizer implements Optimizer
         {
             // the system indices (objectClass, entryUUID and entryCSN) are maintained for
             // each entry, so we could just return the database count
+            node.set( ESTIMATE_ANNOTATION, INDEX_COUNT );
+
             return db.count( partitionTxn );
         }
 
+        node.set( ESTIMATE_ANNOTATION, NO_INDEX );
+
         return Long.MAX_VALUE;
     }
 
@@ -520,4 +604,167 @@ public class DefaultOptimizer implements Optimizer
                 throw new IllegalArgumentException( I18n.err( I18n.ERR_713 ) );
         }
     }
+
+
+    /**
+     * Describes how a filter annotated by this optimizer will be evaluated. Each node is
+     * listed with its scan count and the way the count has been computed. For each AND
+     * node, the child driving the evaluation is flagged : its candidates are fetched from
+     * the index, the other children being evaluated against each candidate.
+     *
+     * @param node The annotated filter
+     * @return The evaluation plan, one line per node
+     */
+    public static String explain( ExprNode node )
+    {
+        StringBuilder sb = new StringBuilder();
+
+        explain( sb, node, "", false );
+
+        return sb.toString();
+    }
+
+
+    private static void explain( StringBuilder sb, ExprNode node, String tabs, boolean driving )
+    {
+        sb.append( tabs );
+
+        switch ( node.getAssertionType() )
+        {
+            case AND:
+            case OR:
+            case NOT:
+                sb.append( node.getAssertionType() );
+                break;
+
+            case SCOPE:
+                ScopeNode scopeNode = ( ScopeNode ) node;
+                sb.append( "scope " ).append( scopeNode.getScope() ).append( " on '" );
+                sb.append( scopeNode.getBaseDn() ).append( '\'' );
+                break;
+
+            case EQUALITY:
+            case APPROXIMATE:
+            case GREATEREQ:
+            case LESSEQ:
+                SimpleNode<?> simpleNode = ( SimpleNode<?> ) node;
+                sb.append( '(' ).append( simpleNode.getAttribute() );
+
+                switch ( node.getAssertionType() )
+                {
+                    case APPROXIMATE:
+                        sb.append( "~=" );
+                        break;
+
+                    case GREATEREQ:
+                        sb.append( ">=" );
+                        break;
+
+                    case LESSEQ:
+                        sb.append( "<=" );
+                        break;
+
+                    default:
+                        sb.append( '=' );
+                        break;
+                }
+
+                sb.append( simpleNode.getValue() ).append( ')' );
+                break;
+
+            case PRESENCE:
+                sb.append( '(' ).append( ( ( PresenceNode ) node ).getAttribute() ).append( "=*)" );
+                break;
+
+            case SUBSTRING:
+                SubstringNode substringNode = ( SubstringNode ) node;
+                sb.append( '(' ).append( substringNode.getAttribute() ).append( '=' );
+
+                if ( substringNode.getInitial() != null )
+                {
+                    sb.append( substringNode.getInitial() );
+                }
+
+                sb.append( '*' );
+
+                if ( substringNode.getAny() != null )
+                {
+                    for ( String any : substringNode.getAny() )
+                    {
+                        sb.append( any ).append( '*' );
+                    }
+                }
+
+                if ( substringNode.getFinal() != null )
+                {
+                    sb.append( substringNode.getFinal() );
+                }
+
+                sb.append( ')' );
+                break;
+
+            default:
+                sb.append( node );
+                break;
+        }
+
+        Long count = ( Long ) node.get( COUNT_ANNOTATION );
+
+        sb.append( " count=" );
+
+        if ( count == null )
+        {
+            sb.append( "?" );
+        }
+        else if ( count == Long.MAX_VALUE )
+        {
+            sb.append( "unbounded" );
+        }
+        else
+        {
+            sb.append( count );
+        }
+
+        Object estimate = node.get( ESTIMATE_ANNOTATION );
+
+        if ( estimate != null )
+        {
+            sb.append( " (" ).append( estimate ).append( ')' );
+        }
+
+        if ( driving )
+        {
+            sb.append( " <- driving" );
+        }
+
+        sb.append( '\n' );
+
+        if ( node instanceof BranchNode )
+        {
+            List<ExprNode> children = ( ( BranchNode ) node ).getChildren();
+            int drivingChild = -1;
+
+            if ( node instanceof AndNode )
+            {
+                // The CursorBuilder iterates on the first child with the lowest count
+                long minCount = Long.MAX_VALUE;
+
+                for ( int i = 0; i < children.size(); i++ )
+                {
+                    Long childCount = ( Long ) children.get( i ).get( COUNT_ANNOTATION );
+
+                    if ( ( childCount != null ) && ( ( drivingChild == -1 ) || ( childCount < minCount ) ) )
+                    {
+                        minCount = childCount;
+                        drivingChild = i;
+                    }
+                }
+            }
+
+            for ( int i = 0; i < children.size(); i++ )
+            {
+                explain( sb, children.get( i ), tabs + "  ", i == drivingChild );
+            }
+        }
+    }
 }
@@ -20,8 +20,11 @@
 package org.apache.directory.server.xdbm.search.impl;
 
 
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.NavigableSet;
 import java.util.Set;
+import java.util.TreeSet;
 
 import org.apache.directory.api.ldap.model.cursor.Cursor;
 import org.apache.directory.api.ldap.model.cursor.CursorException;
@@ -35,6 +38,7 @@ import org.apache.directory.api.ldap.model.filter.ObjectClassNode;
 import org.apache.directory.api.ldap.model.filter.ScopeNode;
 import org.apache.directory.api.ldap.model.message.AliasDerefMode;
 import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.message.controls.PagedResults;
 import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
@@ -64,6 +68,16 @@ public class DefaultSearchEngine implements SearchEngine
     /** The logger */
     private static final Logger LOG = LoggerFactory.getLogger( DefaultSearchEngine.class );
 
+    /** Orders the candidates by ID, so that a search can be restarted after a given entry */
+    private static final Comparator<IndexEntry<String, String>> ID_ORDER = new Comparator<IndexEntry<String, String>>()
+    {
+        @Override
+        public int compare( IndexEntry<String, String> indexEntry1, IndexEntry<String, String> indexEntry2 )
+        {
+            return indexEntry1.getId().compareTo( indexEntry2.getId() );
+        }
+    };
+
     /** the Optimizer used by this DefaultSearchEngine */
     private final Optimizer optimizer;
 
@@ -128,7 +142,19 @@ public class DefaultSearchEngine implements SearchEngine
 
         // Prepare the instance containing the search result
         PartitionSearchResult searchResult = new PartitionSearchResult( schemaManager );
-        Set<IndexEntry<String, String>> resultSet = new HashSet<>();
+        searchResult.setBudget( searchContext.getBudget() );
+        String resumeAfterId = searchContext.getResumeAfterId();
+        Set<IndexEntry<String, String>> resultSet;
+
+        if ( ( resumeAfterId != null ) || searchContext.hasRequestControl( PagedResults.OID ) )
+        {
+            // The search may be restarted after a given entry : order the candidates
+            resultSet = new TreeSet<>( ID_ORDER );
+        }
+        else
+        {
+            resultSet = new HashSet<>();
+        }
 
         // Check that we have an entry, otherwise we can immediately get out
         if ( baseId == null )
@@ -243,6 +269,12 @@ public class DefaultSearchEngine implements SearchEngine
 
         // Annotate the node with the optimizer and return search enumeration.
         optimizer.annotate( partitionTxn, root );
+
+        if ( LOG.isDebugEnabled() && ( optimizer instanceof DefaultOptimizer ) )
+        {
+            LOG.debug( "Search plan for filter {} :\n{}", filter, DefaultOptimizer.explain( root ) );
+        }
+
         Evaluator<? extends ExprNode> evaluator = evaluatorBuilder.build( partitionTxn, root );
 
         Set<String> uuidSet = new HashSet<>();
@@ -271,6 +303,8 @@ public class DefaultSearchEngine implements SearchEngine
             {
                 while ( cursor.next() )
                 {
+                    searchResult.tick();
+
                     IndexEntry<String, String> indexEntry = cursor.get();
     
                     // Here, the indexEntry contains a <UUID, Entry> tuple. Convert it to <UUID, UUID>
@@ -289,7 +323,19 @@ public class DefaultSearchEngine implements SearchEngine
         }
 
         searchResult.setEvaluator( evaluator );
-        searchResult.setResultSet( resultSet );
+
+        if ( resumeAfterId != null )
+        {
+            // Skip the candidates up to the last entry returned by a previous search
+            IndexEntry<String, String> resumePoint = new IndexEntry<>();
+            resumePoint.setId( resumeAfterId );
+            searchResult.setResultSet(
+                ( ( NavigableSet<IndexEntry<String, String>> ) resultSet ).tailSet( resumePoint, false ) );
+        }
+        else
+        {
+            searchResult.setResultSet( resultSet );
+        }
 
         return searchResult;
     }
@@ -0,0 +1,317 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.xdbm;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.extractor.SchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.extractor.impl.DefaultSchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.loader.LdifSchemaLoader;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.apache.directory.api.util.exception.Exceptions;
+import org.apache.directory.server.core.api.partition.Partition;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.core.partition.impl.avl.AvlPartition;
+import org.apache.directory.server.xdbm.impl.avl.AvlIndex;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
+
+
+/**
+ * Tests that the {@link HierarchyLabels} give the same answers as the Rdn index, when
+ * they are built and after the entries have been added, moved and deleted.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@Execution(ExecutionMode.SAME_THREAD)
+public class HierarchyLabelsTest
+{
+    private static SchemaManager schemaManager;
+
+    private AvlPartition partition;
+
+    private PartitionTxn txn;
+
+
+    @BeforeAll
+    public static void init() throws Exception
+    {
+        String workingDirectory = System.getProperty( "workingDirectory" );
+
+        if ( workingDirectory == null )
+        {
+            String path = HierarchyLabelsTest.class.getResource( "" ).getPath();
+            int targetPos = path.indexOf( "target" );
+            workingDirectory = path.substring( 0, targetPos + 6 );
+        }
+
+        File schemaRepository = new File( workingDirectory, "schema" );
+        SchemaLdifExtractor extractor = new DefaultSchemaLdifExtractor( new File( workingDirectory ) );
+        extractor.extractOrCopy( true );
+        LdifSchemaLoader loader = new LdifSchemaLoader( schemaRepository );
+        schemaManager = new DefaultSchemaManager( loader );
+
+        boolean loaded = schemaManager.loadAllEnabled();
+
+        if ( !loaded )
+        {
+            fail( "Schema load failed : " + Exceptions.printErrors( schemaManager.getErrors() ) );
+        }
+    }
+
+
+    @BeforeEach
+    public void createStore() throws Exception
+    {
+        StoreUtils.createdExtraAttributes( schemaManager );
+
+        partition = new AvlPartition( schemaManager, null );
+        partition.setId( "example" );
+        partition.setSyncOnWrite( false );
+        partition.setHierarchyLabelsEnabled( true );
+        partition.addIndex( new AvlIndex<String>( SchemaConstants.OU_AT_OID ) );
+        partition.addIndex( new AvlIndex<String>( SchemaConstants.CN_AT_OID ) );
+        partition.setSuffixDn( new Dn( schemaManager, "o=Good Times Co." ) );
+        partition.initialize();
+
+        StoreUtils.loadExampleData( partition, schemaManager );
+        txn = new MockPartitionWriteTxn();
+    }
+
+
+    @AfterEach
+    public void destroyStore() throws Exception
+    {
+        partition.destroy( null );
+    }
+
+
+    private String getId( String dn ) throws Exception
+    {
+        return partition.getEntryId( txn, new Dn( schemaManager, dn ) );
+    }
+
+
+    private List<String> getIds() throws Exception
+    {
+        List<String> ids = new ArrayList<>();
+
+        try ( Cursor<IndexEntry<ParentIdAndRdn, String>> cursor = partition.getRdnIndex().forwardCursor( txn ) )
+        {
+            while ( cursor.next() )
+            {
+                ids.add( cursor.get().getId() );
+            }
+        }
+
+        return ids;
+    }
+
+
+    /**
+     * Walks up the Rdn index from an entry to the root
+     */
+    private boolean isDescendant( String ancestorId, String id ) throws Exception
+    {
+        String parentId = partition.getRdnIndex().reverseLookup( txn, id ).getParentId();
+
+        while ( !Partition.ROOT_ID.equals( parentId ) )
+        {
+            if ( parentId.equals( ancestorId ) )
+            {
+                return true;
+            }
+
+            parentId = partition.getRdnIndex().reverseLookup( txn, parentId ).getParentId();
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Checks the labels against the Rdn index, for every couple of entries
+     */
+    private void assertConsistent() throws Exception
+    {
+        HierarchyLabels labels = partition.getHierarchyLabels();
+        List<String> ids = getIds();
+
+        for ( String ancestorId : ids )
+        {
+            Set<String> subtree = new HashSet<>();
+            subtree.add( ancestorId );
+
+            for ( String id : ids )
+            {
+                boolean expected = isDescendant( ancestorId, id );
+                boolean isChild = partition.getRdnIndex().reverseLookup( txn, id ).getParentId().equals( ancestorId );
+
+                assertEquals( expected, labels.isDescendant( txn, ancestorId, id ) );
+                assertEquals( isChild, labels.isChild( txn, ancestorId, id ) );
+
+                if ( expected )
+                {
+                    subtree.add( id );
+                }
+            }
+
+            List<String> labelledSubtree = labels.getSubtree( txn, ancestorId );
+
+            assertEquals( subtree.size(), labelledSubtree.size() );
+            assertEquals( subtree, new HashSet<>( labelledSubtree ) );
+        }
+
+        assertEquals( ids.size(), labels.size() );
+    }
+
+
+    @Test
+    public void testBuild() throws Exception
+    {
+        HierarchyLabels labels = partition.getHierarchyLabels();
+        assertNotNull( labels );
+        assertEquals( 0L, labels.getNbBuilds() );
+
+        assertConsistent();
+        assertEquals( 1L, labels.getNbBuilds() );
+
+        String salesId = getId( "ou=Sales,o=Good Times Co." );
+        assertEquals( 3, labels.getSubtree( txn, salesId ).size() );
+        assertEquals( salesId, labels.getSubtree( txn, salesId ).get( 0 ) );
+        assertNull( labels.getSubtree( txn, "unknown" ) );
+        assertNull( labels.isDescendant( txn, salesId, "unknown" ) );
+    }
+
+
+    @Test
+    public void testAddMoveDelete() throws Exception
+    {
+        HierarchyLabels labels = partition.getHierarchyLabels();
+        assertConsistent();
+
+        // Add a subtree under ou=Sales
+        Dn dn = new Dn( schemaManager, "ou=Europe,ou=Sales,o=Good Times Co." );
+        Entry entry = new DefaultEntry( schemaManager, dn,
+            "objectClass: top",
+            "objectClass: organizationalUnit",
+            "ou: Europe" );
+        StoreUtils.injectEntryInStore( partition, entry, 12 );
+
+        dn = new Dn( schemaManager, "cn=Jean Dupont,ou=Europe,ou=Sales,o=Good Times Co." );
+        entry = new DefaultEntry( schemaManager, dn,
+            "objectClass: top",
+            "objectClass: person",
+            "cn: Jean Dupont",
+            "sn: Dupont" );
+        StoreUtils.injectEntryInStore( partition, entry, 13 );
+
+        assertConsistent();
+
+        // Move ou=Sales and its descendants under ou=Engineering
+        Dn salesDn = new Dn( schemaManager, "ou=Sales,o=Good Times Co." );
+        Dn newSuperior = new Dn( schemaManager, "ou=Engineering,o=Good Times Co." );
+        Dn newDn = new Dn( schemaManager, "ou=Sales,ou=Engineering,o=Good Times Co." );
+        partition.move( txn, salesDn, newSuperior, newDn, null );
+
+        String engineeringId = getId( "ou=Engineering,o=Good Times Co." );
+        String leafId = getId( "cn=Jean Dupont,ou=Europe,ou=Sales,ou=Engineering,o=Good Times Co." );
+        assertTrue( labels.isDescendant( txn, engineeringId, leafId ) );
+        assertConsistent();
+
+        // Delete the added leaf
+        partition.delete( txn, leafId );
+
+        assertNull( labels.isDescendant( txn, engineeringId, leafId ) );
+        assertConsistent();
+
+        // The labels have been maintained, not built again
+        assertEquals( 1L, labels.getNbBuilds() );
+    }
+
+
+    @Test
+    public void testInvalidate() throws Exception
+    {
+        HierarchyLabels labels = partition.getHierarchyLabels();
+        assertConsistent();
+
+        labels.invalidate();
+        assertEquals( 0, labels.size() );
+
+        // An entry added while the labels are invalid is labelled by the next build
+        Dn dn = new Dn( schemaManager, "ou=Marketing,o=Good Times Co." );
+        Entry entry = new DefaultEntry( schemaManager, dn,
+            "objectClass: top",
+            "objectClass: organizationalUnit",
+            "ou: Marketing" );
+        StoreUtils.injectEntryInStore( partition, entry, 12 );
+
+        assertConsistent();
+        assertEquals( 2L, labels.getNbBuilds() );
+    }
+
+
+    @Test
+    public void testAbort() throws Exception
+    {
+        HierarchyLabels labels = partition.getHierarchyLabels();
+
+        Dn dn = new Dn( schemaManager, "ou=Marketing,o=Good Times Co." );
+        Entry entry = new DefaultEntry( schemaManager, dn,
+            "objectClass: top",
+            "objectClass: organizationalUnit",
+            "ou: Marketing" );
+        StoreUtils.injectEntryInStore( partition, entry, 12 );
+
+        assertConsistent();
+        assertEquals( 1L, labels.getNbBuilds() );
+
+        // The labels updated by an aborted transaction are forgotten
+        MockPartitionWriteTxn abortedTxn = new MockPartitionWriteTxn();
+        partition.delete( abortedTxn, getId( "ou=Marketing,o=Good Times Co." ) );
+        abortedTxn.abort();
+
+        assertEquals( 0, labels.size() );
+        assertConsistent();
+        assertEquals( 2L, labels.getNbBuilds() );
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.xdbm;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.File;
+import java.util.Locale;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.extractor.SchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.extractor.impl.DefaultSchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.loader.LdifSchemaLoader;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.api.util.exception.Exceptions;
+import org.apache.directory.server.xdbm.impl.avl.AvlIndex;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
+
+
+/**
+ * Tests the IndexStatistics histograms and their incremental updates.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@Execution(ExecutionMode.SAME_THREAD)
+public class IndexStatisticsTest
+{
+    private static SchemaManager schemaManager;
+    private AvlIndex<String> idx;
+    private MockPartitionReadTxn mockTxn;
+    private int nextId;
+
+
+    @BeforeAll
+    public static void init() throws Exception
+    {
+        String workingDirectory = System.getProperty( "workingDirectory" );
+
+        if ( workingDirectory == null )
+        {
+            String path = IndexStatisticsTest.class.getResource( "" ).getPath();
+            int targetPos = path.indexOf( "target" );
+            workingDirectory = path.substring( 0, targetPos + 6 );
+        }
+
+        File schemaRepository = new File( workingDirectory, "schema" );
+        SchemaLdifExtractor extractor = new DefaultSchemaLdifExtractor( new File( workingDirectory ) );
+        extractor.extractOrCopy( true );
+        LdifSchemaLoader loader = new LdifSchemaLoader( schemaRepository );
+        schemaManager = new DefaultSchemaManager( loader );
+
+        boolean loaded = schemaManager.loadAllEnabled();
+
+        if ( !loaded )
+        {
+            fail( "Schema load failed : " + Exceptions.printErrors( schemaManager.getErrors() ) );
+        }
+    }
+
+
+    @BeforeEach
+    public void setup() throws Exception
+    {
+        mockTxn = new MockPartitionReadTxn();
+        idx = new AvlIndex<>( SchemaConstants.UID_AT_OID );
+        idx.init( schemaManager, schemaManager.lookupAttributeTypeRegistry( SchemaConstants.UID_AT_OID ) );
+        nextId = 1;
+
+        // 1000 distinct keys, k0500 being present 11 times
+        for ( int i = 0; i < 1000; i++ )
+        {
+            add( getKey( i ) );
+        }
+
+        for ( int i = 0; i < 10; i++ )
+        {
+            add( getKey( 500 ) );
+        }
+    }
+
+
+    @AfterEach
+    public void teardown() throws Exception
+    {
+        idx.close( mockTxn );
+    }
+
+
+    private String getKey( int i )
+    {
+        return String.format( Locale.ROOT, "k%04d", i );
+    }
+
+
+    private void add( String key ) throws Exception
+    {
+        idx.add( mockTxn, key, Strings.getUUID( nextId++ ) );
+    }
+
+
+    private void assertEstimate( long expected, long estimate, long tolerance )
+    {
+        assertTrue( Math.abs( expected - estimate ) <= tolerance,
+            "Estimated " + estimate + " instead of " + expected );
+    }
+
+
+    @Test
+    public void testBuild() throws Exception
+    {
+        IndexStatistics statistics = IndexStatistics.build( mockTxn, idx, 10 );
+
+        assertEquals( 1010L, statistics.getCount() );
+        assertEquals( 1000L, statistics.getKeyCount() );
+        assertEquals( 11L, statistics.getMaxDuplicates() );
+        assertEquals( 10, statistics.getNbBuckets() );
+        assertFalse( statistics.isStale() );
+
+        // An estimate is at most off by one bucket (101 pairs)
+        assertEstimate( 100L, statistics.greaterOrEqualCount( "k0900" ), 101L );
+        assertEstimate( 200L, statistics.lessOrEqualCount( "k0199" ), 101L );
+        assertEstimate( 100L, statistics.rangeCount( "k01", "k02" ), 101L );
+
+        // An estimate is never 0, even when no key is selected
+        assertEquals( 1L, statistics.greaterOrEqualCount( "z" ) );
+    }
+
+
+    @Test
+    public void testIncrementalUpdates() throws Exception
+    {
+        idx.setStatistics( IndexStatistics.build( mockTxn, idx, 10 ) );
+        IndexStatistics statistics = idx.getStatistics();
+
+        // Add keys above the highest bound
+        for ( int i = 2000; i < 2050; i++ )
+        {
+            add( getKey( i ) );
+        }
+
+        assertEquals( 1060L, statistics.getCount() );
+        assertEstimate( 50L, statistics.greaterOrEqualCount( "k1500" ), 25L );
+        assertFalse( statistics.isStale() );
+
+        // Remove the keys below k0100
+        for ( int i = 0; i < 100; i++ )
+        {
+            idx.drop( mockTxn, getKey( i ), Strings.getUUID( i + 1 ) );
+        }
+
+        assertEquals( 960L, statistics.getCount() );
+        assertEstimate( 0L, statistics.lessOrEqualCount( "k0050" ), 1L );
+
+        // Now, we have modified more than 20% of the index
+        for ( int i = 3000; i < 3100; i++ )
+        {
+            add( getKey( i ) );
+        }
+
+        assertTrue( statistics.isStale() );
+    }
+
+
+    @Test
+    public void testUpdatesOnCommit() throws Exception
+    {
+        idx.setStatistics( IndexStatistics.build( mockTxn, idx, 10 ) );
+        IndexStatistics statistics = idx.getStatistics();
+
+        // The aborted changes are not applied
+        MockPartitionWriteTxn writeTxn = new MockPartitionWriteTxn();
+        idx.add( writeTxn, getKey( 2000 ), Strings.getUUID( nextId++ ) );
+        idx.drop( writeTxn, getKey( 0 ), Strings.getUUID( 1 ) );
+
+        assertEquals( 1010L, statistics.getCount() );
+
+        writeTxn.abort();
+
+        assertEquals( 1010L, statistics.getCount() );
+        assertEquals( 0L, statistics.getModifications() );
+
+        // The committed ones are
+        writeTxn = new MockPartitionWriteTxn();
+        idx.add( writeTxn, getKey( 2001 ), Strings.getUUID( nextId++ ) );
+        idx.add( writeTxn, getKey( 2002 ), Strings.getUUID( nextId++ ) );
+
+        assertEquals( 1010L, statistics.getCount() );
+
+        writeTxn.commit();
+
+        assertEquals( 1012L, statistics.getCount() );
+        assertEquals( 2L, statistics.getModifications() );
+    }
+}
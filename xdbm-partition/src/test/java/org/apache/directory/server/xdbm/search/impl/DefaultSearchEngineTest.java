@@ -0,0 +1,226 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.xdbm.search.impl;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.filter.ObjectClassNode;
+import org.apache.directory.api.ldap.model.message.AliasDerefMode;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.message.controls.PagedResultsImpl;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.extractor.SchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.extractor.impl.DefaultSchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.loader.LdifSchemaLoader;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.apache.directory.api.util.FileUtils;
+import org.apache.directory.api.util.exception.Exceptions;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.LdapPrincipal;
+import org.apache.directory.server.core.api.MockCoreSession;
+import org.apache.directory.server.core.api.MockDirectoryService;
+import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.core.partition.impl.avl.AvlPartition;
+import org.apache.directory.server.xdbm.IndexEntry;
+import org.apache.directory.server.xdbm.StoreUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
+
+
+/**
+ * Tests the order of the candidates returned by the DefaultSearchEngine, and the restart of
+ * a search after a given entry.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@Execution(ExecutionMode.SAME_THREAD)
+public class DefaultSearchEngineTest
+{
+    private static SchemaManager schemaManager;
+
+    private AvlPartition partition;
+
+    private CoreSession session;
+
+    private File wkdir;
+
+
+    @BeforeAll
+    public static void setup() throws Exception
+    {
+        // setup the standard registries
+        String workingDirectory = System.getProperty( "workingDirectory" );
+
+        if ( workingDirectory == null )
+        {
+            String path = DefaultSearchEngineTest.class.getResource( "" ).getPath();
+            int targetPos = path.indexOf( "target" );
+            workingDirectory = path.substring( 0, targetPos + 6 );
+        }
+
+        File schemaRepository = new File( workingDirectory, "schema" );
+        SchemaLdifExtractor extractor = new DefaultSchemaLdifExtractor( new File( workingDirectory ) );
+        extractor.extractOrCopy( true );
+        LdifSchemaLoader loader = new LdifSchemaLoader( schemaRepository );
+        schemaManager = new DefaultSchemaManager( loader );
+
+        boolean loaded = schemaManager.loadAllEnabled();
+
+        if ( !loaded )
+        {
+            fail( "Schema load failed : " + Exceptions.printErrors( schemaManager.getErrors() ) );
+        }
+
+        loaded = schemaManager.loadWithDeps( "collective" );
+
+        if ( !loaded )
+        {
+            fail( "Schema load failed : " + Exceptions.printErrors( schemaManager.getErrors() ) );
+        }
+    }
+
+
+    @BeforeEach
+    public void createStore() throws Exception
+    {
+        MockDirectoryService directoryService = new MockDirectoryService();
+
+        // setup the working directory for the store
+        wkdir = File.createTempFile( getClass().getSimpleName(), "db" );
+        wkdir.delete();
+        wkdir = new File( wkdir.getParentFile(), getClass().getSimpleName() );
+        wkdir.mkdirs();
+
+        StoreUtils.createdExtraAttributes( schemaManager );
+
+        // initialize the store
+        partition = new AvlPartition( schemaManager, directoryService.getDnFactory() );
+        partition.setId( "example" );
+        partition.setCacheSize( 10 );
+        partition.setPartitionPath( wkdir.toURI() );
+        partition.setSyncOnWrite( false );
+        partition.setSuffixDn( new Dn( schemaManager, "o=Good Times Co." ) );
+        partition.initialize();
+
+        StoreUtils.loadExampleData( partition, schemaManager );
+
+        directoryService.setSchemaManager( schemaManager );
+        session = new MockCoreSession( new LdapPrincipal(), directoryService );
+    }
+
+
+    @AfterEach
+    public void destroyStore() throws Exception
+    {
+        if ( partition != null )
+        {
+            partition.destroy( null );
+        }
+
+        partition = null;
+
+        if ( wkdir != null )
+        {
+            FileUtils.deleteDirectory( wkdir );
+        }
+
+        wkdir = null;
+    }
+
+
+    /**
+     * @return The IDs of the candidates of a paged subtree search, starting after the given ID
+     */
+    private List<String> search( String resumeAfterId ) throws Exception
+    {
+        SearchOperationContext searchContext = new SearchOperationContext( session, partition.getSuffixDn(),
+            SearchScope.SUBTREE, ObjectClassNode.OBJECT_CLASS_NODE, "*" );
+        searchContext.setAliasDerefMode( AliasDerefMode.NEVER_DEREF_ALIASES );
+        searchContext.setResumeAfterId( resumeAfterId );
+
+        if ( resumeAfterId == null )
+        {
+            // The first page of a paged search
+            searchContext.addRequestControl( new PagedResultsImpl() );
+        }
+
+        List<String> ids = new ArrayList<>();
+
+        try ( PartitionTxn partitionTxn = partition.beginReadTransaction() )
+        {
+            Cursor<IndexEntry<String, String>> cursor = partition.getSearchEngine().computeResult( partitionTxn,
+                schemaManager, searchContext ).getResultSet();
+            cursor.beforeFirst();
+
+            while ( cursor.next() )
+            {
+                ids.add( cursor.get().getId() );
+            }
+
+            cursor.close();
+        }
+
+        return ids;
+    }
+
+
+    @Test
+    public void testCandidatesInIdOrder() throws Exception
+    {
+        List<String> ids = search( null );
+
+        assertTrue( ids.size() > 3 );
+
+        for ( int i = 1; i < ids.size(); i++ )
+        {
+            assertTrue( ids.get( i - 1 ).compareTo( ids.get( i ) ) < 0 );
+        }
+    }
+
+
+    @Test
+    public void testResumeAfterId() throws Exception
+    {
+        List<String> ids = search( null );
+
+        // Restart after the third entry
+        assertEquals( ids.subList( 3, ids.size() ), search( ids.get( 2 ) ) );
+
+        // Restart after an entry which does not exist anymore : the search goes on with the next one
+        assertEquals( ids.subList( 3, ids.size() ), search( ids.get( 2 ) + "a" ) );
+
+        // Restart after the last entry
+        assertTrue( search( ids.get( ids.size() - 1 ) ).isEmpty() );
+    }
+}